@@ -18,25 +18,51 @@
  */
 package org.apache.bookkeeper.common.util;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Controller for tracking the amount of memory used for some task.
+ *
+ * <p>A controller can have a parent controller, which limits the memory used by all its children: the memory
+ * reserved in a controller is also reserved in its parent.
  */
 public class MemoryLimitController {
 
     private final long memoryLimit;
+    private final MemoryLimitController parent;
+    private final List<MemoryLimitController> children = new CopyOnWriteArrayList<>();
     private final AtomicLong currentUsage = new AtomicLong();
     private final ReentrantLock mutex = new ReentrantLock(false);
     private final Condition condition = mutex.newCondition();
 
     public MemoryLimitController(long memoryLimitBytes) {
+        this(memoryLimitBytes, null);
+    }
+
+    public MemoryLimitController(long memoryLimitBytes, MemoryLimitController parent) {
         this.memoryLimit = memoryLimitBytes;
+        this.parent = parent;
+        if (parent != null) {
+            parent.children.add(this);
+        }
     }
 
     public boolean tryReserveMemory(long size) {
+        if (!tryReserveLocalMemory(size)) {
+            return false;
+        }
+        if (parent != null && !parent.tryReserveMemory(size)) {
+            releaseLocalMemory(size);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean tryReserveLocalMemory(long size) {
         while (true) {
             long current = currentUsage.get();
             long newUsage = current + size;
@@ -67,20 +93,63 @@ public class MemoryLimitController {
         }
     }
 
+    /**
+     * Reserve memory which is already in use, even if it is over the limit.
+     *
+     * @return false if the usage is now over the limit of this controller or of one of its parents
+     */
+    public boolean forceReserveMemory(long size) {
+        long newUsage = currentUsage.addAndGet(size);
+        boolean underLimit = memoryLimit <= 0 || newUsage <= memoryLimit;
+        if (parent != null && !parent.forceReserveMemory(size)) {
+            underLimit = false;
+        }
+        return underLimit;
+    }
+
     public void releaseMemory(long size) {
+        releaseLocalMemory(size);
+        if (parent != null) {
+            parent.releaseMemory(size);
+        }
+    }
+
+    private void releaseLocalMemory(long size) {
         long newUsage = currentUsage.addAndGet(-size);
         if (newUsage + size > memoryLimit && newUsage <= memoryLimit) {
             // We just crossed the limit. Now we have more space
-            mutex.lock();
-            try {
-                condition.signalAll();
-            } finally {
-                mutex.unlock();
-            }
+            signalWaiters();
+        }
+    }
+
+    private void signalWaiters() {
+        mutex.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            mutex.unlock();
+        }
+        // the waiters of the children may be waiting for this controller
+        for (MemoryLimitController child : children) {
+            child.signalWaiters();
         }
     }
 
+    /**
+     * @return whether the usage of this controller and of its parents is under the given ratio of their limits
+     */
+    public boolean isUsageUnder(double ratioOfLimit) {
+        if (memoryLimit > 0 && currentUsage.get() > memoryLimit * ratioOfLimit) {
+            return false;
+        }
+        return parent == null || parent.isUsageUnder(ratioOfLimit);
+    }
+
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
     public long currentUsage() {
         return currentUsage.get();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.common.util;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.common.collections.BusyWait;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.jctools.queues.MessagePassingQueue;
+import org.jctools.queues.MpscArrayQueue;
+import org.jctools.queues.MpscUnboundedArrayQueue;
+
+/**
+ * Implements a single thread executor fed by a lock-free multiple producers single consumer queue.
+ *
+ * <p>The thread drains the queue in batches of up to {@link #MAX_BATCH_SIZE} tasks. When the queue is empty, the
+ * thread parks until a producer wakes it up. With busy wait enabled, it first spins for a while on the queue, to
+ * avoid paying for parking and unparking under a steady load.
+ *
+ * <p>Tasks are executed in a safe manner: if there are exceptions they are logged and the executor will
+ * proceed with the next tasks.
+ */
+@Slf4j
+public class MpscSingleThreadExecutor extends AbstractExecutorService implements ExecutorService, Runnable {
+    static final int MAX_BATCH_SIZE = 128;
+    private static final int SPIN_ITERATIONS = 1 << 14;
+    private static final int UNBOUNDED_QUEUE_CHUNK_SIZE = 1024;
+
+    private final MessagePassingQueue<Runnable> queue;
+    private final Thread runner;
+    private final boolean enableBusyWait;
+
+    private final LongAdder tasksCount = new LongAdder();
+    private final LongAdder tasksCompleted = new LongAdder();
+    private final LongAdder tasksRejected = new LongAdder();
+    private final LongAdder tasksFailed = new LongAdder();
+
+    enum State {
+        Running,
+        Shutdown,
+        Terminated
+    }
+
+    private volatile State state;
+    // set by the runner before parking, the producers only unpark it when it is set
+    private volatile boolean waiting = false;
+
+    private final CountDownLatch startLatch;
+
+    public MpscSingleThreadExecutor(ThreadFactory tf) {
+        this(tf, 0, false);
+    }
+
+    /**
+     * @param tf the factory of the thread
+     * @param maxQueueCapacity the maximum number of queued tasks, the tasks are rejected once it is reached. 0 for
+     *                         no limit.
+     * @param enableBusyWait whether to spin on the queue before parking
+     */
+    @SneakyThrows
+    @SuppressFBWarnings(value = {"SC_START_IN_CTOR"})
+    public MpscSingleThreadExecutor(ThreadFactory tf, int maxQueueCapacity, boolean enableBusyWait) {
+        if (maxQueueCapacity > 0) {
+            this.queue = new MpscArrayQueue<>(maxQueueCapacity);
+        } else {
+            this.queue = new MpscUnboundedArrayQueue<>(UNBOUNDED_QUEUE_CHUNK_SIZE);
+        }
+        this.enableBusyWait = enableBusyWait;
+        this.runner = tf.newThread(this);
+        this.state = State.Running;
+        this.startLatch = new CountDownLatch(1);
+        this.runner.start();
+
+        // Ensure the runner is already fully working by the time the constructor is done
+        this.startLatch.await();
+    }
+
+    @Override
+    public void run() {
+        try {
+            startLatch.countDown();
+
+            while (state == State.Running) {
+                if (queue.drain(this::safeRunTask, MAX_BATCH_SIZE) == 0) {
+                    waitForTasks();
+                }
+            }
+
+            // Clear the queue in orderly shutdown
+            queue.drain(this::safeRunTask);
+        } catch (Throwable t) {
+            log.error("Exception in executor: {}", t.getMessage(), t);
+            throw t;
+        } finally {
+            state = State.Terminated;
+        }
+    }
+
+    private void waitForTasks() {
+        if (enableBusyWait) {
+            for (int i = 0; i < SPIN_ITERATIONS; i++) {
+                if (!queue.isEmpty() || state != State.Running) {
+                    return;
+                }
+                BusyWait.onSpinWait();
+            }
+        }
+
+        waiting = true;
+        // check again after publishing the flag, a producer which didn't see it has already made its task visible
+        if (queue.isEmpty() && state == State.Running) {
+            LockSupport.park(this);
+        }
+        waiting = false;
+    }
+
+    private void safeRunTask(Runnable r) {
+        try {
+            r.run();
+            tasksCompleted.increment();
+        } catch (Throwable t) {
+            tasksFailed.increment();
+            log.error("Error while running task: {}", t.getMessage(), t);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        state = State.Shutdown;
+        LockSupport.unpark(runner);
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        this.state = State.Shutdown;
+        this.runner.interrupt();
+        LockSupport.unpark(runner);
+        List<Runnable> remainingTasks = new ArrayList<>();
+        queue.drain(remainingTasks::add);
+        return remainingTasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return state != State.Running;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return state == State.Terminated;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        runner.join(unit.toMillis(timeout));
+        return !runner.isAlive();
+    }
+
+    public long getQueuedTasksCount() {
+        return queue.size();
+    }
+
+    public long getSubmittedTasksCount() {
+        return tasksCount.sum();
+    }
+
+    public long getCompletedTasksCount() {
+        return tasksCompleted.sum();
+    }
+
+    public long getRejectedTasksCount() {
+        return tasksRejected.sum();
+    }
+
+    public long getFailedTasksCount() {
+        return tasksFailed.sum();
+    }
+
+    @Override
+    public void execute(Runnable r) {
+        if (state != State.Running) {
+            throw new RejectedExecutionException("Executor is shutting down");
+        }
+
+        if (!queue.offer(r)) {
+            tasksRejected.increment();
+            throw new ExecutorRejectedException("Executor queue is full");
+        }
+        tasksCount.increment();
+        if (waiting) {
+            LockSupport.unpark(runner);
+        }
+    }
+
+    public void registerMetrics(StatsLogger statsLogger) {
+        StatsLogger threadStatsLogger = statsLogger.scopeLabel("thread", runner.getName());
+        threadStatsLogger.registerGauge("thread_executor_queue", new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return getQueuedTasksCount();
+            }
+        });
+        threadStatsLogger.registerGauge("thread_executor_tasks_completed", new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return getCompletedTasksCount();
+            }
+        });
+        threadStatsLogger.registerGauge("thread_executor_tasks_rejected", new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return getRejectedTasksCount();
+            }
+        });
+        threadStatsLogger.registerGauge("thread_executor_tasks_failed", new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return getFailedTasksCount();
+            }
+        });
+    }
+
+    private static class ExecutorRejectedException extends RejectedExecutionException {
+
+        private ExecutorRejectedException(String msg) {
+            super(msg);
+        }
+
+        @Override
+        public Throwable fillInStackTrace() {
+            // Avoid the stack traces to be generated for this exception, the bounded queue can reject many tasks
+            // under bursts
+            return this;
+        }
+    }
+}
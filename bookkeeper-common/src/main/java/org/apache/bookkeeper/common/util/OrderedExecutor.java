@@ -75,6 +75,8 @@ public class OrderedExecutor implements ExecutorService {
     final boolean enableBusyWait;
     // we only want thread-scoped metrics on the server-side where it can be explicitly enabled
     final boolean enableThreadScopedMetrics;
+    // the factory passed to the constructor, before the threads are named
+    final ThreadFactory threadFactory;
 
     public static Builder newBuilder() {
         return new Builder();
@@ -90,6 +92,12 @@ public class OrderedExecutor implements ExecutorService {
             if (null == threadFactory) {
                 threadFactory = new DefaultThreadFactory("bookkeeper-ordered-safe-executor");
             }
+            if (enableWorkStealing) {
+                return new WorkStealingOrderedExecutor(name, numThreads, threadFactory, statsLogger,
+                                           traceTaskExecution, preserveMdcForTaskExecution,
+                                           warnTimeMicroSec, maxTasksInQueue, enableBusyWait,
+                                           enableThreadScopedMetrics);
+            }
             return new OrderedExecutor(name, numThreads, threadFactory, statsLogger,
                                            traceTaskExecution, preserveMdcForTaskExecution,
                                            warnTimeMicroSec, maxTasksInQueue, enableBusyWait,
@@ -111,6 +119,7 @@ public class OrderedExecutor implements ExecutorService {
         protected int maxTasksInQueue = NO_TASK_LIMIT;
         protected boolean enableBusyWait = false;
         protected boolean enableThreadScopedMetrics = false;
+        protected boolean enableWorkStealing = false;
 
         public AbstractBuilder<T> name(String name) {
             this.name = name;
@@ -162,6 +171,15 @@ public class OrderedExecutor implements ExecutorService {
             return this;
         }
 
+        /**
+         * Let the ordering keys without in-flight tasks move to less loaded threads, see
+         * {@link WorkStealingOrderedExecutor}. Not supported by the {@link OrderedScheduler}.
+         */
+        public AbstractBuilder<T> enableWorkStealing(boolean enableWorkStealing) {
+            this.enableWorkStealing = enableWorkStealing;
+            return this;
+        }
+
         @SuppressWarnings("unchecked")
         public T build() {
             if (null == threadFactory) {
@@ -384,6 +402,7 @@ public class OrderedExecutor implements ExecutorService {
         this.warnTimeMicroSec = warnTimeMicroSec;
         this.enableBusyWait = enableBusyWait;
         this.enableThreadScopedMetrics = enableThreadScopedMetrics;
+        this.threadFactory = threadFactory;
         name = baseName;
         threads = new ExecutorService[numThreads];
         threadIds = new long[numThreads];
@@ -428,6 +447,9 @@ public class OrderedExecutor implements ExecutorService {
             if (thread instanceof SingleThreadExecutor) {
                 SingleThreadExecutor ste = (SingleThreadExecutor) thread;
                 ste.registerMetrics(statsLogger);
+            } else if (thread instanceof MpscSingleThreadExecutor) {
+                MpscSingleThreadExecutor ste = (MpscSingleThreadExecutor) thread;
+                ste.registerMetrics(statsLogger);
             } else if (thread instanceof ThreadPoolExecutor) {
                 ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) thread;
                 // Register gauges
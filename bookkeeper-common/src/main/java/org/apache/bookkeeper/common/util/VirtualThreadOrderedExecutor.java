@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.common.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+
+/**
+ * An {@link OrderedExecutor} running each task on its own virtual thread, for tasks blocking on IO.
+ *
+ * <p>The tasks without ordering key, submitted with {@link #execute(Runnable)}, are started right away. The threads
+ * of the {@link OrderedExecutor} are replaced by ordering lanes for the other tasks: the tasks of a lane are queued
+ * and started one after the other, so the tasks with the same ordering key are still executed in order. There only
+ * need to be a few lanes, as a lane runs a single task at a time.
+ *
+ * <p>The number of tasks running at the same time is limited by a semaphore: the admitted tasks block their
+ * virtual thread, not a platform thread, when waiting for a permit or for IO. The max number of tasks in queue
+ * bounds all the tasks submitted and not yet completed, over all the lanes.
+ *
+ * <p>Virtual threads require JDK 21, they are looked up by reflection, see {@link #isSupported()}. Any other
+ * thread factory can be passed to the builder, in which case a new thread of this factory is used per task.
+ */
+@Slf4j
+public class VirtualThreadOrderedExecutor extends OrderedExecutor {
+
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = lookupVirtualThreadFactory();
+
+    /**
+     * @return a new builder; {@link Builder#maxConcurrency(int)} must be set first, as the other setters return
+     *         the parent builder.
+     */
+    public static Builder newVirtualThreadBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * @return whether the JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * A builder class for a VirtualThreadOrderedExecutor.
+     */
+    public static class Builder extends AbstractBuilder<OrderedExecutor> {
+        private int maxConcurrency = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * The maximum number of tasks running at the same time.
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        @Override
+        public VirtualThreadOrderedExecutor build() {
+            checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+            ThreadFactory factory = threadFactory;
+            if (null == factory) {
+                if (!isSupported()) {
+                    throw new UnsupportedOperationException("Virtual threads are not supported by this JVM");
+                }
+                factory = VIRTUAL_THREAD_FACTORY;
+            }
+            // the busy wait and the thread scoped metrics are bound to long living threads
+            return new VirtualThreadOrderedExecutor(name, numThreads, new AdmissionThreadFactory(factory,
+                    maxConcurrency, maxTasksInQueue), statsLogger, traceTaskExecution, preserveMdcForTaskExecution,
+                    warnTimeMicroSec, maxTasksInQueue);
+        }
+    }
+
+    private final AdmissionThreadFactory admission;
+    // Unordered tasks submitted and not yet completed
+    private final AtomicInteger pendingUnorderedTasks = new AtomicInteger();
+    private volatile boolean shutdown = false;
+
+    private VirtualThreadOrderedExecutor(String baseName, int numLanes, AdmissionThreadFactory admission,
+                                         StatsLogger statsLogger, boolean traceTaskExecution,
+                                         boolean preserveMdcForTaskExecution, long warnTimeMicroSec,
+                                         int maxTasksInQueue) {
+        super(baseName, numLanes, admission, statsLogger, traceTaskExecution, preserveMdcForTaskExecution,
+                warnTimeMicroSec, maxTasksInQueue, false, false);
+        this.admission = admission;
+        // the parent constructor has run a task on each lane to get its thread id, the task may not be accounted
+        // as completed yet and must not count against the bound of the first submitted tasks
+        while (admission.pendingTasks.get() > 0) {
+            Thread.yield();
+        }
+
+        statsLogger.scope(name).registerGauge("virtual_threads_running", new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return admission.maxConcurrency - admission.permits.availablePermits();
+            }
+        });
+        statsLogger.scope(name).registerGauge("virtual_threads_waiting_admission", new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return admission.permits.getQueueLength();
+            }
+        });
+        statsLogger.scope(name).registerGauge("virtual_threads_pending_tasks", new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return admission.pendingTasks.get();
+            }
+        });
+    }
+
+    @Override
+    protected ExecutorService createSingleThreadExecutor(ThreadFactory factory) {
+        // called by the parent constructor, the admission is only reachable through the parent fields
+        return new Lane(factory, (AdmissionThreadFactory) threadFactory);
+    }
+
+    public int getMaxConcurrency() {
+        return admission.maxConcurrency;
+    }
+
+    /**
+     * Run a task without ordering guarantee, on a new thread.
+     */
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor is shutting down");
+        }
+        admission.acquirePendingTask();
+        pendingUnorderedTasks.incrementAndGet();
+        Runnable task = timedRunnable(command);
+        try {
+            admission.newThread(() -> {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    log.error("Error while running task: {}", t.getMessage(), t);
+                } finally {
+                    admission.releasePendingTask();
+                    if (pendingUnorderedTasks.decrementAndGet() == 0 && shutdown) {
+                        synchronized (this) {
+                            notifyAll();
+                        }
+                    }
+                }
+            }).start();
+        } catch (Throwable t) {
+            admission.releasePendingTask();
+            pendingUnorderedTasks.decrementAndGet();
+            throw new RejectedExecutionException("Failed to start a thread", t);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        super.shutdown();
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        return super.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown && super.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && pendingUnorderedTasks.get() == 0 && super.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        if (!super.awaitTermination(timeout, unit)) {
+            return false;
+        }
+        synchronized (this) {
+            while (!isTerminated()) {
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+            }
+        }
+        return true;
+    }
+
+    private static ThreadFactory lookupVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates the threads running the tasks once a permit is acquired, and bounds the tasks submitted and not yet
+     * completed.
+     */
+    private static class AdmissionThreadFactory implements ThreadFactory {
+        private final ThreadFactory delegate;
+        private final int maxConcurrency;
+        private final Semaphore permits;
+        private final int maxPendingTasks;
+        // Tasks submitted and not yet completed, over all the lanes and the unordered tasks
+        private final AtomicInteger pendingTasks = new AtomicInteger();
+
+        AdmissionThreadFactory(ThreadFactory delegate, int maxConcurrency, int maxPendingTasks) {
+            this.delegate = delegate;
+            this.maxConcurrency = maxConcurrency;
+            this.permits = new Semaphore(maxConcurrency);
+            this.maxPendingTasks = maxPendingTasks;
+        }
+
+        void acquirePendingTask() {
+            if (pendingTasks.incrementAndGet() > maxPendingTasks && maxPendingTasks > 0) {
+                pendingTasks.decrementAndGet();
+                throw new RejectedExecutionException("Executor queue is full");
+            }
+        }
+
+        void releasePendingTask() {
+            pendingTasks.decrementAndGet();
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return delegate.newThread(() -> {
+                permits.acquireUninterruptibly();
+                try {
+                    r.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * Queues the tasks of an ordering key and starts a new thread for each one, once the previous one is done.
+     */
+    private class Lane extends AbstractExecutorService {
+        private final ThreadFactory factory;
+        private final AdmissionThreadFactory admission;
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        // set while a thread of the lane is started or running
+        private final AtomicBoolean running = new AtomicBoolean();
+        private volatile boolean laneShutdown = false;
+
+        Lane(ThreadFactory factory, AdmissionThreadFactory admission) {
+            this.factory = factory;
+            this.admission = admission;
+        }
+
+        @Override
+        public void execute(Runnable r) {
+            if (laneShutdown) {
+                throw new RejectedExecutionException("Executor is shutting down");
+            }
+            admission.acquirePendingTask();
+            queue.add(() -> {
+                try {
+                    r.run();
+                } finally {
+                    admission.releasePendingTask();
+                }
+            });
+            if (running.compareAndSet(false, true)) {
+                startNext();
+            }
+        }
+
+        private void startNext() {
+            while (true) {
+                Runnable task = queue.poll();
+                if (task == null) {
+                    running.set(false);
+                    // a task may have been queued after the poll, while the lane still looked running
+                    if (!queue.isEmpty() && running.compareAndSet(false, true)) {
+                        continue;
+                    }
+                    if (laneShutdown) {
+                        synchronized (this) {
+                            notifyAll();
+                        }
+                    }
+                    return;
+                }
+                try {
+                    factory.newThread(() -> {
+                        try {
+                            task.run();
+                        } catch (Throwable t) {
+                            log.error("Error while running task: {}", t.getMessage(), t);
+                        } finally {
+                            startNext();
+                        }
+                    }).start();
+                    return;
+                } catch (Throwable t) {
+                    // the task never runs, the lane goes on with the next one rather than staying stuck
+                    admission.releasePendingTask();
+                    log.error("Failed to start a thread, dropping a task of the lane: {}", t.getMessage(), t);
+                }
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            laneShutdown = true;
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown();
+            List<Runnable> remainingTasks = new ArrayList<>();
+            Runnable task;
+            while ((task = queue.poll()) != null) {
+                remainingTasks.add(task);
+            }
+            return remainingTasks;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return laneShutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return laneShutdown && !running.get() && queue.isEmpty();
+        }
+
+        @Override
+        public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+            while (!isTerminated()) {
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.common.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.StatsLogger;
+
+/**
+ * An {@link OrderedExecutor} which doesn't pin the ordering keys to a thread.
+ *
+ * <p>The ordering keys are hashed into {@link #NUM_STRIPES} stripes, each one tracking the thread it is currently
+ * assigned to and the number of its tasks which are queued or running. The tasks of a stripe with in-flight tasks
+ * go to the same thread, which keeps them ordered. Once all the tasks of a stripe are completed, the next task may
+ * be placed on any thread: it goes to the least loaded of the thread the key hashes to and of a random thread, so
+ * that hot keys colliding on a thread get spread over the idle threads.
+ *
+ * <p>The threads are {@link MpscSingleThreadExecutor}s, with lock-free queues drained in batches, spinning before
+ * parking when busy wait is enabled.
+ *
+ * <p>{@link #chooseThread(long)}, {@link #chooseThread(Object)} and {@link #getThreadID(long)} keep the fixed
+ * mapping of the keys to the threads: the tasks submitted directly to these threads are not ordered with the
+ * tasks submitted with {@link #executeOrdered(long, Runnable)}.
+ */
+public class WorkStealingOrderedExecutor extends OrderedExecutor {
+    static final int NUM_STRIPES = 4096;
+
+    // (owner thread << 32) | number of in-flight tasks, for each stripe
+    private final AtomicLongArray stripes = new AtomicLongArray(NUM_STRIPES);
+    // number of in-flight ordered tasks, for each thread
+    private final AtomicIntegerArray pendingTasks;
+    private final Counter rebalancedTasks;
+
+    protected WorkStealingOrderedExecutor(String baseName, int numThreads, ThreadFactory threadFactory,
+                                          StatsLogger statsLogger, boolean traceTaskExecution,
+                                          boolean preserveMdcForTaskExecution, long warnTimeMicroSec,
+                                          int maxTasksInQueue, boolean enableBusyWait,
+                                          boolean enableThreadScopedMetrics) {
+        super(baseName, numThreads, threadFactory, statsLogger, traceTaskExecution, preserveMdcForTaskExecution,
+                warnTimeMicroSec, maxTasksInQueue, enableBusyWait, enableThreadScopedMetrics);
+        this.pendingTasks = new AtomicIntegerArray(numThreads);
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            stripes.set(i, ((long) (i % numThreads)) << 32);
+        }
+        this.rebalancedTasks = statsLogger.scope(name).getCounter("rebalanced_tasks");
+    }
+
+    @Override
+    protected ExecutorService createSingleThreadExecutor(ThreadFactory factory) {
+        return new MpscSingleThreadExecutor(factory, maxTasksInQueue, enableBusyWait);
+    }
+
+    @Override
+    public void executeOrdered(Object orderingKey, Runnable r) {
+        if (null == orderingKey) {
+            execute(r);
+        } else {
+            executeOrdered((long) orderingKey.hashCode(), r);
+        }
+    }
+
+    @Override
+    public void executeOrdered(int orderingKey, Runnable r) {
+        executeOrdered((long) orderingKey, r);
+    }
+
+    @Override
+    public void executeOrdered(long orderingKey, Runnable r) {
+        if (threads.length == 1) {
+            threads[0].execute(r);
+            return;
+        }
+
+        final int stripe = stripeIdx(orderingKey);
+        final int threadIdx = acquire(stripe, chooseThreadIdx(orderingKey, threads.length));
+        try {
+            threads[threadIdx].execute(() -> {
+                try {
+                    r.run();
+                } finally {
+                    release(stripe, threadIdx);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release(stripe, threadIdx);
+            throw e;
+        }
+    }
+
+    /**
+     * Pick the less loaded of two random threads, without ordering guarantee.
+     */
+    @Override
+    public ExecutorService chooseThread() {
+        if (threads.length == 1) {
+            return threads[0];
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(threads.length);
+        int second = random.nextInt(threads.length);
+        return threads[pendingTasks.get(second) < pendingTasks.get(first) ? second : first];
+    }
+
+    /**
+     * Assign the stripe to a thread, if it has no in-flight task, and count a new in-flight task.
+     *
+     * @return the index of the thread the task must be executed on
+     */
+    private int acquire(int stripe, int homeIdx) {
+        while (true) {
+            long current = stripes.get(stripe);
+            int owner = (int) (current >>> 32);
+            int inflight = (int) current;
+            int target = owner;
+            if (inflight == 0) {
+                target = homeIdx;
+                int candidate = ThreadLocalRandom.current().nextInt(threads.length);
+                if (pendingTasks.get(candidate) < pendingTasks.get(homeIdx)) {
+                    target = candidate;
+                }
+            }
+            if (stripes.compareAndSet(stripe, current, ((long) target << 32) | (inflight + 1))) {
+                pendingTasks.incrementAndGet(target);
+                if (inflight == 0 && target != homeIdx) {
+                    // only the tasks moving the stripe away from the thread of the key, not the ones following it
+                    rebalancedTasks.inc();
+                }
+                return target;
+            }
+        }
+    }
+
+    private void release(int stripe, int threadIdx) {
+        pendingTasks.decrementAndGet(threadIdx);
+        // the owner can't change while the stripe has in-flight tasks, only the count has to be decremented
+        stripes.decrementAndGet(stripe);
+    }
+
+    static int stripeIdx(long orderingKey) {
+        long h = orderingKey * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 52) & (NUM_STRIPES - 1);
+    }
+}
@@ -0,0 +1,144 @@
+package org.apache.bookkeeper.common.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MpscSingleThreadExecutorTest {
+
+    private MpscSingleThreadExecutor executor;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Runnable await(CountDownLatch latch) {
+        return () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    @Test
+    public void testTasksRunInOrder() throws Exception {
+        for (boolean busyWait : new boolean[] { false, true }) {
+            executor = new MpscSingleThreadExecutor(Thread::new, 0, busyWait);
+            List<Integer> executed = new CopyOnWriteArrayList<>();
+            CountDownLatch done = new CountDownLatch(1000);
+            for (int i = 0; i < 1000; i++) {
+                int task = i;
+                executor.execute(() -> {
+                    executed.add(task);
+                    done.countDown();
+                });
+            }
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 1000; i++) {
+                Assert.assertEquals(i, executed.get(i).intValue());
+            }
+            Assert.assertEquals(1000, executor.getSubmittedTasksCount());
+            executor.shutdown();
+            Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testRejectWhenQueueFull() throws Exception {
+        executor = new MpscSingleThreadExecutor(Thread::new, 4, false);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            await(release).run();
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // the runner is blocked, the queue holds up to 4 tasks
+        CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(done::countDown);
+        }
+        try {
+            executor.execute(done::countDown);
+            Assert.fail("the task should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        Assert.assertEquals(1, executor.getRejectedTasksCount());
+        Assert.assertEquals(4, executor.getQueuedTasksCount());
+        Assert.assertEquals(5, executor.getSubmittedTasksCount());
+
+        release.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        // the queue accepts tasks again once drained
+        CountDownLatch accepted = new CountDownLatch(1);
+        executor.execute(accepted::countDown);
+        Assert.assertTrue(accepted.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdownDrainsTheQueue() throws Exception {
+        executor = new MpscSingleThreadExecutor(Thread::new, 0, false);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(await(release));
+        CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            executor.execute(done::countDown);
+        }
+        executor.execute(() -> {
+            throw new RuntimeException("task failure");
+        });
+
+        executor.shutdown();
+        Assert.assertTrue(executor.isShutdown());
+        try {
+            executor.execute(done::countDown);
+            Assert.fail("the task should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        Assert.assertFalse(executor.awaitTermination(100, TimeUnit.MILLISECONDS));
+
+        // the queued tasks still run, despite the failing one
+        release.countDown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertTrue(executor.isTerminated());
+        Assert.assertEquals(0, done.getCount());
+        Assert.assertEquals(11, executor.getCompletedTasksCount());
+        Assert.assertEquals(1, executor.getFailedTasksCount());
+    }
+
+    @Test
+    public void testShutdownNowReturnsTheQueuedTasks() throws Exception {
+        executor = new MpscSingleThreadExecutor(Thread::new, 0, false);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            await(release).run();
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        AtomicInteger executed = new AtomicInteger();
+        executor.execute(executed::incrementAndGet);
+        executor.execute(executed::incrementAndGet);
+
+        // the running task is interrupted, the queued tasks are either returned or drained by the exiting runner
+        List<Runnable> remaining = executor.shutdownNow();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(2, remaining.size() + executed.get());
+        Assert.assertEquals(1 + executed.get(), executor.getCompletedTasksCount());
+    }
+}
@@ -0,0 +1,199 @@
+package org.apache.bookkeeper.common.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VirtualThreadOrderedExecutorTest {
+
+    private OrderedExecutor executor;
+
+    // The tests run with platform threads, virtual threads are not available before JDK 21
+    private OrderedExecutor newExecutor(int numLanes, int maxConcurrency, int maxPendingTasks) {
+        return newExecutor(numLanes, maxConcurrency, maxPendingTasks, Thread::new);
+    }
+
+    private OrderedExecutor newExecutor(int numLanes, int maxConcurrency, int maxPendingTasks,
+                                        ThreadFactory threadFactory) {
+        executor = VirtualThreadOrderedExecutor.newVirtualThreadBuilder()
+                .maxConcurrency(maxConcurrency)
+                .numThreads(numLanes)
+                .threadFactory(threadFactory)
+                .name("test-virtual-threads")
+                .maxTasksInQueue(maxPendingTasks)
+                .build();
+        return executor;
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testOrderedTasksRunInOrder() throws Exception {
+        OrderedExecutor executor = newExecutor(2, 16, 0);
+        List<Integer> executed = new CopyOnWriteArrayList<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            int task = i;
+            executor.executeOrdered(1L, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                executed.add(task);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, maxRunning.get());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i, executed.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testUnorderedTasksRunUpToMaxConcurrency() throws Exception {
+        // far fewer lanes than permits, the unordered tasks don't go through the lanes
+        OrderedExecutor executor = newExecutor(1, 8, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(16);
+        for (int i = 0; i < 16; i++) {
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (running.get() < 8 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(8, running.get());
+
+        release.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(8, maxRunning.get());
+    }
+
+    @Test
+    public void testPendingTasksBoundOverAllLanes() throws Exception {
+        OrderedExecutor executor = newExecutor(4, 16, 3);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        Runnable blockingTask = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        };
+        executor.executeOrdered(0L, blockingTask);
+        executor.executeOrdered(1L, blockingTask);
+        executor.execute(blockingTask);
+        try {
+            executor.executeOrdered(2L, blockingTask);
+            Assert.fail("The pending tasks bound is shared by all the lanes");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        try {
+            executor.execute(blockingTask);
+            Assert.fail("The pending tasks bound applies to the unordered tasks");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        release.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        CountDownLatch accepted = new CountDownLatch(1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            try {
+                executor.executeOrdered(2L, accepted::countDown);
+                break;
+            } catch (RejectedExecutionException e) {
+                // the completed tasks may not be accounted yet
+                Assert.assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+        }
+        Assert.assertTrue(accepted.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAwaitTerminationOfUnorderedTasks() throws Exception {
+        OrderedExecutor executor = newExecutor(2, 4, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.shutdown();
+        Assert.assertFalse(executor.isTerminated());
+        Assert.assertFalse(executor.awaitTermination(100, TimeUnit.MILLISECONDS));
+        try {
+            executor.execute(() -> { });
+            Assert.fail("The executor is shut down");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        release.countDown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertTrue(executor.isTerminated());
+    }
+
+    @Test
+    public void testThreadCreationFailure() throws Exception {
+        AtomicBoolean fail = new AtomicBoolean();
+        OrderedExecutor executor = newExecutor(1, 4, 1, r -> {
+            if (fail.get()) {
+                throw new IllegalStateException("no more threads");
+            }
+            return new Thread(r);
+        });
+        fail.set(true);
+        AtomicInteger executed = new AtomicInteger();
+        // the ordered task is dropped, the unordered one rejected
+        executor.executeOrdered(1L, executed::incrementAndGet);
+        try {
+            executor.execute(executed::incrementAndGet);
+            Assert.fail("The thread of the task can't be created");
+        } catch (RejectedExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        // the lane isn't left running and the pending tasks are released, despite the bound of a single task
+        fail.set(false);
+        CountDownLatch done = new CountDownLatch(1);
+        executor.executeOrdered(1L, done::countDown);
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, executed.get());
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+}
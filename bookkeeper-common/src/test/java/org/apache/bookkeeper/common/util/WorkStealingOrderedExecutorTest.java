@@ -0,0 +1,224 @@
+package org.apache.bookkeeper.common.util;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkStealingOrderedExecutorTest {
+
+    private Counter rebalancedTasks;
+    private StatsLogger statsLogger;
+    private OrderedExecutor executor;
+
+    @Before
+    public void setUp() {
+        rebalancedTasks = mock(Counter.class);
+        statsLogger = spy(NullStatsLogger.INSTANCE);
+        doReturn(statsLogger).when(statsLogger).scope(anyString());
+        doReturn(rebalancedTasks).when(statsLogger).getCounter("rebalanced_tasks");
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private OrderedExecutor newExecutor(int numThreads, int maxTasksInQueue) {
+        executor = OrderedExecutor.newBuilder()
+                .name("test-work-stealing")
+                .numThreads(numThreads)
+                .maxTasksInQueue(maxTasksInQueue)
+                .statsLogger(statsLogger)
+                .enableWorkStealing(true)
+                .build();
+        Assert.assertTrue(executor instanceof WorkStealingOrderedExecutor);
+        return executor;
+    }
+
+    private static Runnable await(CountDownLatch latch) {
+        return () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    // the keys running on the same thread as the given key, in distinct stripes
+    private List<Long> keysOnThreadOf(long key, int count) {
+        ExecutorService home = executor.chooseThread(key);
+        Set<Integer> stripes = new HashSet<>();
+        stripes.add(WorkStealingOrderedExecutor.stripeIdx(key));
+        List<Long> keys = new ArrayList<>();
+        for (long k = key + 1; keys.size() < count; k++) {
+            if (executor.chooseThread(k) == home && stripes.add(WorkStealingOrderedExecutor.stripeIdx(k))) {
+                keys.add(k);
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    public void testOrderingUnderStealing() throws Exception {
+        OrderedExecutor executor = newExecutor(4, 0);
+        // all the keys hash to the same thread, they are spread over the others
+        List<Long> keys = keysOnThreadOf(0L, 32);
+        Map<Long, List<Integer>> executed = new ConcurrentHashMap<>();
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        int tasksPerKey = 500;
+        CountDownLatch done = new CountDownLatch(keys.size() * tasksPerKey);
+        for (int i = 0; i < tasksPerKey; i++) {
+            for (long key : keys) {
+                int task = i;
+                executor.executeOrdered(key, () -> {
+                    executed.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(task);
+                    threads.add(Thread.currentThread());
+                    if (task % 50 == 0) {
+                        // let the queues build up, for the stripes to be moved
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    done.countDown();
+                });
+            }
+        }
+        Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        for (long key : keys) {
+            List<Integer> tasks = executed.get(key);
+            Assert.assertEquals(tasksPerKey, tasks.size());
+            for (int i = 0; i < tasksPerKey; i++) {
+                Assert.assertEquals("out of order task for key " + key, i, tasks.get(i).intValue());
+            }
+        }
+        Assert.assertTrue(threads.size() > 1);
+    }
+
+    @Test
+    public void testCountOnlyTheMovedStripes() throws Exception {
+        OrderedExecutor executor = newExecutor(2, 0);
+        // the home thread of the keys is blocked, the new keys may move to the idle thread
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Thread> homeThread = new AtomicReference<>();
+        executor.executeOrdered(0L, () -> {
+            homeThread.set(Thread.currentThread());
+            blocked.countDown();
+            await(release).run();
+        });
+        Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        List<Long> keys = keysOnThreadOf(0L, 20);
+        Map<Long, List<Thread>> threads = new ConcurrentHashMap<>();
+        CountDownLatch completed = new CountDownLatch(keys.size() * 3);
+        for (int i = 0; i < 3; i++) {
+            for (long key : keys) {
+                executor.executeOrdered(key, () -> {
+                    threads.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(Thread.currentThread());
+                    await(release).run();
+                    completed.countDown();
+                });
+            }
+        }
+        release.countDown();
+        Assert.assertTrue(completed.await(10, TimeUnit.SECONDS));
+
+        // the tasks following the first one of a key stay on its thread and aren't counted
+        int moved = 0;
+        for (long key : keys) {
+            List<Thread> keyThreads = threads.get(key);
+            Assert.assertEquals(1, new HashSet<>(keyThreads).size());
+            if (keyThreads.get(0) != homeThread.get()) {
+                moved++;
+            }
+        }
+        Assert.assertTrue(moved > 0);
+        verify(rebalancedTasks, times(moved)).inc();
+    }
+
+    @Test
+    public void testRejectWhenQueueFull() throws Exception {
+        OrderedExecutor executor = newExecutor(2, 4);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.executeOrdered(0L, () -> {
+            started.countDown();
+            await(release).run();
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // the tasks of a key with in-flight tasks can't move to the idle thread
+        CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            executor.executeOrdered(0L, done::countDown);
+        }
+        try {
+            executor.executeOrdered(0L, done::countDown);
+            Assert.fail("the task should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        // the rejected task isn't counted in flight, the key moves again once its tasks are completed
+        release.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        CountDownLatch accepted = new CountDownLatch(1);
+        executor.executeOrdered(0L, accepted::countDown);
+        Assert.assertTrue(accepted.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdownDrainsTheQueues() throws Exception {
+        OrderedExecutor executor = newExecutor(4, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.executeOrdered(0L, await(release));
+        List<Integer> executed = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int task = i;
+            executor.executeOrdered(0L, () -> executed.add(task));
+        }
+
+        executor.shutdown();
+        try {
+            executor.executeOrdered(0L, () -> executed.add(-1));
+            Assert.fail("the task should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        release.countDown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(100, executed.size());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i, executed.get(i).intValue());
+        }
+    }
+}
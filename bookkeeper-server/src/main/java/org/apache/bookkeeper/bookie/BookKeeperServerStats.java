@@ -70,6 +70,13 @@ public interface BookKeeperServerStats {
     String GET_BOOKIE_INFO = "GET_BOOKIE_INFO";
     String GET_LIST_OF_ENTRIES_OF_LEDGER = "GET_LIST_OF_ENTRIES_OF_LEDGER";
     String GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST = "GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST";
+    String COPY_LEDGER_FRAGMENT = "COPY_LEDGER_FRAGMENT";
+    String COPY_LEDGER_FRAGMENT_REQUEST = "COPY_LEDGER_FRAGMENT_REQUEST";
+
+    // Ledger metadata batching Stats
+    String LEDGER_METADATA_BATCH_SCOPE = "ledger_metadata_batch";
+    String LEDGER_METADATA_BATCH_SIZE = "LEDGER_METADATA_BATCH_SIZE";
+    String LEDGER_METADATA_BATCH_FALLBACKS = "LEDGER_METADATA_BATCH_FALLBACKS";
 
     // Ensemble Stats
     String WATCHER_SCOPE = "bookie_watcher";
@@ -318,6 +318,15 @@ public class BookieImpl implements Bookie {
         return getLedgerDirsManager().getTotalFreeSpace(ledgerDirsManager.getAllLedgerDirs());
     }
 
+    @Override
+    public int getJournalQueueLength() {
+        int length = 0;
+        for (Journal journal : journals) {
+            length += journal.getJournalQueueLength();
+        }
+        return length;
+    }
+
     public static File getCurrentDirectory(File dir) {
         return new File(dir, BookKeeperConstants.CURRENT_DIR);
     }
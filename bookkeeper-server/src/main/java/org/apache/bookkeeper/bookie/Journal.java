@@ -54,6 +54,7 @@ import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.proto.BookieRequestHandler;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.RequestTrace;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.OpStatsLogger;
@@ -304,6 +305,8 @@ public class Journal implements CheckpointSource {
         Object ctx;
         long enqueueTime;
         boolean ackBeforeSync;
+        // the trace of the request of the entry, null if it is not traced
+        RequestTrace trace;
 
         OpStatsLogger journalAddEntryStats;
         Counter callbackTime;
@@ -321,6 +324,12 @@ public class Journal implements CheckpointSource {
             qe.enqueueTime = enqueueTime;
             qe.journalAddEntryStats = journalAddEntryStats;
             qe.callbackTime = callbackTime;
+            if (cb instanceof RequestTrace.Carrier) {
+                qe.trace = ((RequestTrace.Carrier) cb).getRequestTrace();
+                if (qe.trace != null) {
+                    qe.trace.mark(RequestTrace.Stage.JOURNAL_ENQUEUED, enqueueTime);
+                }
+            }
             return qe;
         }
 
@@ -331,6 +340,9 @@ public class Journal implements CheckpointSource {
                 LOG.debug("Acknowledge Ledger: {}, Entry: {}", ledgerId, entryId);
             }
             journalAddEntryStats.registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueTime), TimeUnit.NANOSECONDS);
+            if (trace != null) {
+                trace.mark(RequestTrace.Stage.JOURNAL_SYNCED, startTime);
+            }
             cb.writeComplete(0, ledgerId, entryId, null, ctx);
             callbackTime.addLatency(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
             recycle();
@@ -359,6 +371,7 @@ public class Journal implements CheckpointSource {
             this.ctx = null;
             this.journalAddEntryStats = null;
             this.callbackTime = null;
+            this.trace = null;
             recyclerHandle.recycle(this);
         }
     }
@@ -1096,9 +1109,13 @@ public class Journal implements CheckpointSource {
                         }
                         journalFlushWatcher.reset().start();
                         bc.flush();
+                        long flushedNanos = MathUtils.nowInNano();
 
                         for (int i = 0; i < toFlush.size(); i++) {
                             QueueEntry entry = toFlush.get(i);
+                            if (entry != null && entry.trace != null) {
+                                entry.trace.mark(RequestTrace.Stage.JOURNAL_WRITTEN, flushedNanos);
+                            }
                             if (entry != null && (!syncData || entry.ackBeforeSync)) {
                                 toFlush.set(i, null);
                                 numEntriesToFlush--;
@@ -1176,6 +1193,9 @@ public class Journal implements CheckpointSource {
                 journalStats.getJournalQueueSize().dec();
                 journalStats.getJournalQueueStats()
                         .registerSuccessfulEvent(MathUtils.elapsedNanos(qe.enqueueTime), TimeUnit.NANOSECONDS);
+                if (qe.trace != null) {
+                    qe.trace.mark(RequestTrace.Stage.JOURNAL_DEQUEUED);
+                }
 
                 if ((qe.entryId == BookieImpl.METAENTRY_ID_LEDGER_EXPLICITLAC)
                         && (journalFormatVersionToWrite < JournalChannel.V6)) {
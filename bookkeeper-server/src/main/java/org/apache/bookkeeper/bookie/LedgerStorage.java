@@ -82,6 +82,20 @@ public interface LedgerStorage {
      */
     boolean entryExists(long ledgerId, long entryId) throws IOException, BookieException;
 
+    long NO_ENTRY_CHECKSUM = -1L;
+    long MISMATCHED_ENTRY_CHECKSUM = -2L;
+
+    /**
+     * Get the CRC32C digest of an entry, verified in background when the entry was added.
+     *
+     * @return the digest as an unsigned int, {@link #MISMATCHED_ENTRY_CHECKSUM} if the entry of a CRC32C ledger
+     *         didn't match its digest, or {@link #NO_ENTRY_CHECKSUM} if the storage doesn't keep the digests or
+     *         the entry wasn't verified
+     */
+    default long getEntryChecksum(long ledgerId, long entryId) throws IOException {
+        return NO_ENTRY_CHECKSUM;
+    }
+
     /**
      * Fenced the ledger id in ledger storage.
      *
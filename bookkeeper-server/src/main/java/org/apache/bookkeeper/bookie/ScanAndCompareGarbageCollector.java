@@ -144,7 +144,7 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
             // Iterate over all the ledger on the metadata store
             long zkOpTimeoutMs = this.conf.getZkTimeout() * 2;
             LedgerRangeIterator ledgerRangeIterator = ledgerManager
-                    .getLedgerRanges(zkOpTimeoutMs);
+                    .getLedgerRanges(zkOpTimeoutMs, conf.getLedgerRangeScanParallelism());
             Set<Long> ledgersInMetadata = null;
             long start;
             long end = -1;
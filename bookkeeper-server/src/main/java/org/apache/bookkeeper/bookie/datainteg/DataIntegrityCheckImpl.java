@@ -46,6 +46,7 @@ import org.apache.bookkeeper.bookie.LedgerStorage;
 import org.apache.bookkeeper.bookie.LedgerStorage.StorageState;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.BookKeeperAdmin;
+import org.apache.bookkeeper.client.api.DigestType;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.meta.LedgerManager;
@@ -496,7 +497,7 @@ public class DataIntegrityCheckImpl implements DataIntegrityCheck {
         return Flowable.rangeLong(0, lastKnownEntry + 1)
             .subscribeOn(scheduler, false)
             .flatMapMaybe((entryId) -> {
-                    return maybeCopyEntry(writeSets, bookieIndices, ledgerId, entryId, batch)
+                    return maybeCopyEntry(writeSets, bookieIndices, metadata, ledgerId, entryId, batch)
                         .doOnError((t) -> {
                                 firstError.compareAndSet(null, t);
                                 errorCount.incrementAndGet();
@@ -525,9 +526,10 @@ public class DataIntegrityCheckImpl implements DataIntegrityCheck {
      * @return the number of bytes copied.
      */
     Maybe<Long> maybeCopyEntry(WriteSets writeSets, NavigableMap<Long, Integer> bookieIndices,
-                                     long ledgerId, long entryId, EntryCopier.Batch batch) {
+                               LedgerMetadata metadata, long ledgerId, long entryId, EntryCopier.Batch batch) {
         try {
-            if (isEntryMissing(writeSets, bookieIndices, ledgerId, entryId)) {
+            if (isEntryMissing(writeSets, bookieIndices, ledgerId, entryId)
+                    || isEntryCorrupted(metadata, ledgerId, entryId)) {
                 return Maybe.fromCompletionStage(batch.copyFromAvailable(entryId));
             } else {
                 return Maybe.empty();
@@ -548,6 +550,19 @@ public class DataIntegrityCheckImpl implements DataIntegrityCheck {
             && !ledgerStorage.entryExists(ledgerId, entryId);
     }
 
+    /**
+     * Check whether a stored entry of a CRC32C ledger didn't match its digest when it was added, from the digests
+     * index of the storage. The entry itself is not read.
+     */
+    boolean isEntryCorrupted(LedgerMetadata metadata, long ledgerId, long entryId) throws IOException {
+        if (metadata.getDigestType() != DigestType.CRC32C
+                || ledgerStorage.getEntryChecksum(ledgerId, entryId) != LedgerStorage.MISMATCHED_ENTRY_CHECKSUM) {
+            return false;
+        }
+        log.error("Event: {}, ledger: {}, entry: {}", Events.ENTRY_CHECKSUM_MISMATCH, ledgerId, entryId);
+        return true;
+    }
+
     static boolean ensemblesContainBookie(LedgerMetadata metadata, BookieId bookieId) {
         return metadata.getAllEnsembles().values().stream()
             .anyMatch(ensemble -> ensemble.contains(bookieId));
@@ -43,10 +43,12 @@ import java.util.stream.IntStream;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.bookie.LedgerStorage;
 import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.DigestType;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieClient;
 import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
 
 /**
  * Implementation for the EntryCopier interface. Handles the reading of entries
@@ -189,6 +191,16 @@ public class EntryCopierImpl implements EntryCopier {
                                 firstException.isPresent() ? firstException : Optional.of(exception);
                             fetchRetryLoop(entryId, attempt + 1,
                                            ensemble, writeSet, promise, firstException1);
+                        } else if (metadata.getDigestType() == DigestType.CRC32C
+                                && DigestManager.verifyCrc32cDigest(buffer) == DigestManager.NO_CRC32C_DIGEST) {
+                            log.warn("Event: {}, ledger: {}, entry: {}, bookie: {}",
+                                    Events.COPIED_ENTRY_CHECKSUM_MISMATCH, ledgerId, entryId, bookie);
+                            ReferenceCountUtil.release(buffer);
+                            notifyBookieError(bookie);
+                            Optional<Throwable> firstException1 = firstException.isPresent()
+                                ? firstException : Optional.of(new BKException.BKDigestMatchException());
+                            fetchRetryLoop(entryId, attempt + 1,
+                                           ensemble, writeSet, promise, firstException1);
                         } else {
                             promise.complete(buffer);
                         }
@@ -231,5 +231,15 @@ enum Events {
      * This event is annotated with the number of entries copied, the number of errors
      * and the total number of bytes copied for the ledger.
      */
-    LEDGER_CHECK_AND_COPY_END
+    LEDGER_CHECK_AND_COPY_END,
+    /**
+     * An entry stored locally didn't match its CRC32C digest when it was added.
+     * The entry is copied again from the other bookies.
+     */
+    ENTRY_CHECKSUM_MISMATCH,
+    /**
+     * An entry read from another bookie to be copied locally doesn't match its CRC32C digest.
+     * The entry is read from the next bookie of its write set.
+     */
+    COPIED_ENTRY_CHECKSUM_MISMATCH
 }
@@ -60,6 +60,7 @@ import org.apache.bookkeeper.bookie.storage.directentrylogger.EntryLogIdsImpl;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.bookie.storage.ldb.SingleDirectoryDbLedgerStorage.LedgerLoggerProcessor;
 import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
@@ -101,6 +102,23 @@ public class DbLedgerStorage implements LedgerStorage {
     private static final long DEFAULT_READ_CACHE_MAX_SIZE_MB =
         (long) (0.25 * PlatformDependent.estimateMaxDirectMemory()) / MB;
 
+    static final String LEDGER_ENTRY_FILTER_ENABLED = "dbStorage_ledgerEntryFilterEnabled";
+    static final String LEDGER_ENTRY_FILTER_EXPECTED_KEYS = "dbStorage_ledgerEntryFilterExpectedKeys";
+    static final String LEDGER_ENTRY_FILTER_RANGE_BITS = "dbStorage_ledgerEntryFilterRangeBits";
+    static final long DEFAULT_LEDGER_ENTRY_FILTER_EXPECTED_KEYS = 1024 * 1024;
+    // Group entries in ranges of 4096 entry ids
+    static final int DEFAULT_LEDGER_ENTRY_FILTER_RANGE_BITS = 12;
+
+    static final String OFF_HEAP_CACHE_INDEXES_ENABLED = "dbStorage_offHeapCacheIndexesEnabled";
+    static final String OFF_HEAP_CACHE_INDEXES_HUGE_PAGES_PATH = "dbStorage_offHeapCacheIndexesHugePagesPath";
+
+    static final String ENTRY_CHECKSUM_VERIFICATION_ENABLED = "dbStorage_entryChecksumVerificationEnabled";
+    static final String ENTRY_CHECKSUM_VERIFICATION_THREADS = "dbStorage_entryChecksumVerificationThreads";
+    static final String ENTRY_CHECKSUM_VERIFICATION_MAX_QUEUE_SIZE =
+            "dbStorage_entryChecksumVerificationMaxQueueSize";
+    static final int DEFAULT_ENTRY_CHECKSUM_VERIFICATION_THREADS = 1;
+    static final int DEFAULT_ENTRY_CHECKSUM_VERIFICATION_MAX_QUEUE_SIZE = 10000;
+
     static final String READ_AHEAD_CACHE_BATCH_SIZE = "dbStorage_readAheadCacheBatchSize";
     static final String READ_AHEAD_CACHE_BATCH_BYTES_SIZE = "dbStorage_readAheadCacheBatchBytesSize";
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE = 100;
@@ -301,6 +319,13 @@ public class DbLedgerStorage implements LedgerStorage {
         ledgerStorageList.forEach(s -> s.setCheckpointer(checkpointer));
     }
 
+    /**
+     * Charge the entries read ahead to a memory budget, and stop reading ahead while it is exceeded.
+     */
+    public void setReadAheadMemoryLimiter(MemoryLimitController readAheadMemoryLimiter) {
+        ledgerStorageList.forEach(s -> s.setReadAheadMemoryLimiter(readAheadMemoryLimiter));
+    }
+
     @Override
     public void start() {
         ledgerStorageList.forEach(LedgerStorage::start);
@@ -330,6 +355,11 @@ public class DbLedgerStorage implements LedgerStorage {
         return getLedgerStorage(ledgerId).entryExists(ledgerId, entryId);
     }
 
+    @Override
+    public long getEntryChecksum(long ledgerId, long entryId) throws IOException {
+        return getLedgerStorage(ledgerId).getEntryChecksum(ledgerId, entryId);
+    }
+
     @Override
     public boolean setFenced(long ledgerId) throws IOException {
         return getLedgerStorage(ledgerId).setFenced(ledgerId);
@@ -52,6 +52,7 @@ class DbLedgerStorageStats {
     private static final String WRITE_CACHE_MISSES = "write-cache-misses";
     private static final String READ_CACHE_HITS = "read-cache-hits";
     private static final String READ_CACHE_MISSES = "read-cache-misses";
+    private static final String LEDGER_ENTRY_FILTER_NEGATIVES = "ledger-entry-filter-negatives";
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
     private static final String READAHEAD_TIME = "readahead-time";
@@ -119,6 +120,12 @@ class DbLedgerStorageStats {
         parent = READ_ENTRY
     )
     private final Counter readCacheMissCounter;
+    @StatsDoc(
+        name = LEDGER_ENTRY_FILTER_NEGATIVES,
+        help = "number of location index lookups skipped because the ledger entry filter excluded the entry",
+        parent = READ_ENTRY
+    )
+    private final Counter ledgerEntryFilterNegativeCounter;
     @StatsDoc(
         name = READAHEAD_BATCH_COUNT,
         help = "the distribution of num of entries to read in one readahead batch"
@@ -207,6 +214,7 @@ class DbLedgerStorageStats {
         readFromEntryLogTime = stats.getThreadScopedCounter(READ_ENTRYLOG_TIME);
         readCacheHitCounter = stats.getCounter(READ_CACHE_HITS);
         readCacheMissCounter = stats.getCounter(READ_CACHE_MISSES);
+        ledgerEntryFilterNegativeCounter = stats.getCounter(LEDGER_ENTRY_FILTER_NEGATIVES);
         writeCacheHitCounter = stats.getCounter(WRITE_CACHE_HITS);
         writeCacheMissCounter = stats.getCounter(WRITE_CACHE_MISSES);
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
@@ -0,0 +1,224 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+import org.apache.bookkeeper.bookie.LedgerStorage;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maintains an index of the CRC32C digests of the entries, verified when the entries are added.
+ *
+ * <p>The digests are verified in a dedicated thread pool, off the write path, and the verified digests are
+ * written to the index along with the entry locations, when the write cache is flushed.
+ *
+ * <p>The bookies don't know the digest type of the ledgers, so a ledger is only known to use CRC32C once one of
+ * its entries matched. The mismatching entries of such ledgers are corrupted and are indexed with
+ * {@link LedgerStorage#MISMATCHED_ENTRY_CHECKSUM}, while the entries of the other ledgers, which likely use
+ * another digest type, are neither indexed nor counted as failures.
+ */
+public class EntryChecksumIndex implements Closeable {
+
+    private final KeyValueStorage checksumsDb;
+    private final ThreadPoolExecutor verifier;
+    private final ConcurrentLinkedQueue<VerifiedChecksum> pendingChecksums = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
+    // Ledgers with at least one entry matching its CRC32C digest since the bookie started
+    private final ConcurrentLongHashSet crc32cLedgers = ConcurrentLongHashSet.newBuilder().build();
+    private final LongPredicate ledgerExists;
+    private final EntryChecksumIndexStats stats;
+
+    /**
+     * @param ledgerExists whether a ledger still exists, the digests of the deleted ledgers are not indexed
+     */
+    public EntryChecksumIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
+            StatsLogger stats, int numThreads, int maxQueueSize, LongPredicate ledgerExists) throws IOException {
+        // Small values read only by the data integrity check, no need for the tuning of the locations index
+        checksumsDb = storageFactory.newKeyValueStorage(basePath, "checksums", DbConfigType.Default, conf);
+        this.ledgerExists = ledgerExists;
+        verifier = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueueSize), new DefaultThreadFactory("db-storage-checksum"));
+        this.stats = new EntryChecksumIndexStats(stats);
+    }
+
+    /**
+     * Verify the digest of an added entry in background.
+     *
+     * <p>The entry is skipped if too many entries are already waiting to be verified.
+     */
+    public void verifyAsync(long ledgerId, long entryId, ByteBuf entry) {
+        ByteBuf retainedEntry = entry.retainedDuplicate();
+        try {
+            verifier.execute(() -> verify(ledgerId, entryId, retainedEntry));
+        } catch (RejectedExecutionException e) {
+            retainedEntry.release();
+            stats.getSkippedEntriesCounter().inc();
+        }
+    }
+
+    private void verify(long ledgerId, long entryId, ByteBuf entry) {
+        long startTimeNanos = MathUtils.nowInNano();
+        long checksum;
+        try {
+            checksum = DigestManager.verifyCrc32cDigest(entry);
+        } finally {
+            entry.release();
+        }
+        if (checksum == DigestManager.NO_CRC32C_DIGEST) {
+            if (!crc32cLedgers.contains(ledgerId)) {
+                // Most likely a ledger using another digest type
+                stats.getOtherDigestEntriesCounter().inc();
+                return;
+            }
+            log.warn("Entry {}@{} of a CRC32C ledger doesn't match its digest", ledgerId, entryId);
+            pendingChecksums.add(new VerifiedChecksum(ledgerId, entryId, LedgerStorage.MISMATCHED_ENTRY_CHECKSUM));
+            stats.getVerifyEntryChecksumStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            return;
+        }
+        crc32cLedgers.add(ledgerId);
+        pendingChecksums.add(new VerifiedChecksum(ledgerId, entryId, checksum));
+        stats.getVerifyEntryChecksumStats()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Write the digests verified so far to the index.
+     *
+     * <p>The digests of the ledgers deleted meanwhile are dropped, the verifications can complete after the
+     * ledger was removed from the index.
+     */
+    public synchronized void flush() throws IOException {
+        if (pendingChecksums.isEmpty()) {
+            return;
+        }
+        try (Batch batch = checksumsDb.newBatch()) {
+            VerifiedChecksum verified;
+            while ((verified = pendingChecksums.poll()) != null) {
+                if (deletedLedgers.contains(verified.ledgerId) || !ledgerExists.test(verified.ledgerId)) {
+                    continue;
+                }
+                LongPairWrapper key = LongPairWrapper.get(verified.ledgerId, verified.entryId);
+                LongWrapper value = LongWrapper.get(verified.checksum);
+                try {
+                    batch.put(key.array, value.array);
+                } finally {
+                    key.recycle();
+                    value.recycle();
+                }
+            }
+            batch.flush();
+        }
+    }
+
+    /**
+     * @return the verified digest of the entry, {@link LedgerStorage#MISMATCHED_ENTRY_CHECKSUM} if it didn't match
+     *         its digest, or {@link LedgerStorage#NO_ENTRY_CHECKSUM} if it is not indexed
+     */
+    public long getChecksum(long ledgerId, long entryId) throws IOException {
+        LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
+        LongWrapper value = LongWrapper.get();
+        try {
+            if (checksumsDb.get(key.array, value.array) < 0) {
+                return LedgerStorage.NO_ENTRY_CHECKSUM;
+            }
+            return value.getValue();
+        } finally {
+            key.recycle();
+            value.recycle();
+        }
+    }
+
+    public void delete(long ledgerId) {
+        deletedLedgers.add(ledgerId);
+        crc32cLedgers.remove(ledgerId);
+    }
+
+    public synchronized void removeDeletedLedgers() throws IOException {
+        Set<Long> ledgersToDelete = deletedLedgers.items();
+        if (ledgersToDelete.isEmpty()) {
+            return;
+        }
+
+        LongPairWrapper firstKeyWrapper = LongPairWrapper.get(-1, -1);
+        LongPairWrapper lastKeyWrapper = LongPairWrapper.get(-1, -1);
+        try (Batch batch = checksumsDb.newBatch()) {
+            for (long ledgerId : ledgersToDelete) {
+                firstKeyWrapper.set(ledgerId, 0);
+                lastKeyWrapper.set(ledgerId, Long.MAX_VALUE);
+                batch.deleteRange(firstKeyWrapper.array, lastKeyWrapper.array);
+            }
+            batch.flush();
+            for (long ledgerId : ledgersToDelete) {
+                deletedLedgers.remove(ledgerId);
+            }
+        } finally {
+            firstKeyWrapper.recycle();
+            lastKeyWrapper.recycle();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        verifier.shutdown();
+        try {
+            if (!verifier.awaitTermination(1, TimeUnit.SECONDS)) {
+                log.warn("Entries were still waiting for their digest to be verified");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        checksumsDb.close();
+    }
+
+    private static final class VerifiedChecksum {
+        final long ledgerId;
+        final long entryId;
+        final long checksum;
+
+        VerifiedChecksum(long ledgerId, long entryId, long checksum) {
+            this.ledgerId = ledgerId;
+            this.entryId = entryId;
+            this.checksum = checksum;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(EntryChecksumIndex.class);
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+
+import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * A umbrella class for entry checksum index stats.
+ */
+@StatsDoc(
+    name = BOOKIE_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Entry checksum index stats"
+)
+@Getter
+class EntryChecksumIndexStats {
+
+    private static final String VERIFY_ENTRY_CHECKSUM = "verify-entry-checksum";
+    private static final String SKIPPED_ENTRIES = "checksum-skipped-entries";
+    private static final String OTHER_DIGEST_ENTRIES = "checksum-other-digest-entries";
+
+    @StatsDoc(
+        name = VERIFY_ENTRY_CHECKSUM,
+        help = "operation stats of verifying the CRC32C digest of the added entries, failed when an entry of a"
+            + " ledger known to use CRC32C doesn't match its digest"
+    )
+    private final OpStatsLogger verifyEntryChecksumStats;
+
+    @StatsDoc(
+        name = SKIPPED_ENTRIES,
+        help = "the number of added entries not verified because the verification queue was full"
+    )
+    private final Counter skippedEntriesCounter;
+
+    @StatsDoc(
+        name = OTHER_DIGEST_ENTRIES,
+        help = "the number of added entries not matching a CRC32C digest, in ledgers with no entry matching so far"
+            + " which likely use another digest type"
+    )
+    private final Counter otherDigestEntriesCounter;
+
+    EntryChecksumIndexStats(StatsLogger statsLogger) {
+        verifyEntryChecksumStats = statsLogger.getOpStatsLogger(VERIFY_ENTRY_CHECKSUM);
+        skippedEntriesCounter = statsLogger.getCounter(SKIPPED_ENTRIES);
+        otherDigestEntriesCounter = statsLogger.getCounter(OTHER_DIGEST_ENTRIES);
+    }
+
+}
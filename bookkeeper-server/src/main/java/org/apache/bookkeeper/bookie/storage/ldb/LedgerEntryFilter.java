@@ -0,0 +1,274 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Probabilistic filter over the (ledgerId, entry range) pairs that are present in the entry location index of a
+ * single ledger directory.
+ *
+ * <p>Entries are grouped in ranges of {@code 2^rangeBits} entry ids and each range of each ledger is recorded in a
+ * bloom filter when its entries are flushed into the location index. A negative answer from
+ * {@link #mightContain(long, long)} means that the location index is guaranteed not to hold the entry, so the
+ * RocksDB lookup can be skipped. A positive answer might be a false positive.
+ *
+ * <p>Bloom filters do not support removal, so deleted ledgers are dropped by periodically rebuilding the filter from
+ * the ledger metadata index and the location index. Until the first rebuild after a restart has completed, the filter
+ * answers positively for everything.
+ */
+class LedgerEntryFilter {
+
+    private static final int BITS_PER_KEY = 10;
+    private static final int NUM_HASHES = 7;
+
+    private final int rangeBits;
+    private final long minExpectedKeys;
+
+    // Filter consulted by readers, null until the first build is complete
+    private volatile BloomFilter current;
+
+    // Filter being rebuilt, it receives all the keys added during the rebuild
+    private volatile BloomFilter rebuilding;
+
+    // Guards the swap of current/rebuilding filters against concurrent additions
+    private final StampedLock swapLock = new StampedLock();
+
+    private final AtomicBoolean rebuildInProgress = new AtomicBoolean(false);
+    private final AtomicLong deletedLedgersSinceRebuild = new AtomicLong();
+
+    LedgerEntryFilter(long expectedKeys, int rangeBits) {
+        this.minExpectedKeys = Math.max(expectedKeys, 1024);
+        this.rangeBits = rangeBits;
+    }
+
+    boolean isReady() {
+        return current != null;
+    }
+
+    /**
+     * Check whether the location index might contain the given entry.
+     *
+     * @return false if the entry is definitely not present in the location index
+     */
+    boolean mightContain(long ledgerId, long entryId) {
+        BloomFilter filter = current;
+        if (filter == null) {
+            return true;
+        }
+
+        return filter.mightContain(ledgerId, entryId >>> rangeBits);
+    }
+
+    /**
+     * Record that the given entry has been inserted in the location index.
+     */
+    void add(long ledgerId, long entryId) {
+        long rangeId = entryId >>> rangeBits;
+
+        long stamp = swapLock.tryOptimisticRead();
+        addToFilters(ledgerId, rangeId);
+        if (!swapLock.validate(stamp)) {
+            // Filters were swapped while adding, repeat with the lock held to be sure the key
+            // ends up in the filter that gets published
+            stamp = swapLock.readLock();
+            try {
+                addToFilters(ledgerId, rangeId);
+            } finally {
+                swapLock.unlockRead(stamp);
+            }
+        }
+    }
+
+    private void addToFilters(long ledgerId, long rangeId) {
+        BloomFilter filter = current;
+        if (filter != null) {
+            filter.put(ledgerId, rangeId);
+        }
+
+        filter = rebuilding;
+        if (filter != null) {
+            filter.put(ledgerId, rangeId);
+        }
+    }
+
+    /**
+     * Record a ledger deletion.
+     *
+     * @return true if enough ledgers were deleted since the last rebuild that the filter should be rebuilt
+     */
+    boolean ledgerDeleted() {
+        BloomFilter filter = current;
+        long deleted = deletedLedgersSinceRebuild.incrementAndGet();
+        return filter != null && deleted * 4 > filter.approximateKeys();
+    }
+
+    boolean isSaturated() {
+        BloomFilter filter = current;
+        return filter != null && filter.approximateKeys() > filter.expectedKeys();
+    }
+
+    /**
+     * Rebuild the filter from the ledgers present in the ledger metadata index and the last entries recorded in the
+     * location index.
+     *
+     * <p>This is a potentially long running operation and must not be invoked from a critical thread.
+     */
+    void rebuild(LedgerMetadataIndex ledgerIndex, EntryLocationIndex entryLocationIndex) throws IOException {
+        if (!rebuildInProgress.compareAndSet(false, true)) {
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        try {
+            BloomFilter previous = current;
+            long expectedKeys = minExpectedKeys;
+            if (previous != null) {
+                expectedKeys = Math.max(expectedKeys, 2 * previous.approximateKeys());
+            }
+            BloomFilter newFilter = new BloomFilter(expectedKeys);
+
+            long stamp = swapLock.writeLock();
+            try {
+                rebuilding = newFilter;
+                deletedLedgersSinceRebuild.set(0);
+            } finally {
+                swapLock.unlockWrite(stamp);
+            }
+
+            long ledgersCount = 0;
+            for (long ledgerId : ledgerIndex.getActiveLedgersInRange(0, Long.MAX_VALUE)) {
+                long lastEntryId;
+                try {
+                    lastEntryId = entryLocationIndex.getLastEntryInLedger(ledgerId);
+                } catch (Bookie.NoEntryException e) {
+                    // Ledger has no entries flushed into the location index yet
+                    continue;
+                }
+
+                for (long rangeId = 0; rangeId <= (lastEntryId >>> rangeBits); rangeId++) {
+                    newFilter.put(ledgerId, rangeId);
+                }
+                ++ledgersCount;
+            }
+
+            stamp = swapLock.writeLock();
+            try {
+                current = newFilter;
+                rebuilding = null;
+            } finally {
+                swapLock.unlockWrite(stamp);
+            }
+
+            log.info("Rebuilt ledger entry filter with {} ledgers in {} ms", ledgersCount,
+                    (System.nanoTime() - startTime) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            long stamp = swapLock.writeLock();
+            try {
+                rebuilding = null;
+            } finally {
+                swapLock.unlockWrite(stamp);
+            }
+            throw e;
+        } finally {
+            rebuildInProgress.set(false);
+        }
+    }
+
+    /**
+     * Lock-free bloom filter over pairs of longs.
+     */
+    private static class BloomFilter {
+        private final AtomicLongArray bits;
+        private final long numBits;
+        private final long expectedKeys;
+        private final AtomicLong approximateKeys = new AtomicLong();
+
+        BloomFilter(long expectedKeys) {
+            this.expectedKeys = expectedKeys;
+            long words = Math.max(1, (expectedKeys * BITS_PER_KEY + 63) / 64);
+            this.bits = new AtomicLongArray((int) Math.min(words, Integer.MAX_VALUE - 8));
+            this.numBits = (long) bits.length() * 64;
+        }
+
+        long expectedKeys() {
+            return expectedKeys;
+        }
+
+        long approximateKeys() {
+            return approximateKeys.get();
+        }
+
+        void put(long k1, long k2) {
+            long h1 = mix(k1 * 0x9E3779B97F4A7C15L + k2);
+            long h2 = mix(h1 ^ k2);
+            boolean changed = false;
+            for (int i = 0; i < NUM_HASHES; i++) {
+                long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+                int idx = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long word = bits.get(idx);
+                while ((word & mask) == 0) {
+                    if (bits.compareAndSet(idx, word, word | mask)) {
+                        changed = true;
+                        break;
+                    }
+                    word = bits.get(idx);
+                }
+            }
+
+            if (changed) {
+                approximateKeys.incrementAndGet();
+            }
+        }
+
+        boolean mightContain(long k1, long k2) {
+            long h1 = mix(k1 * 0x9E3779B97F4A7C15L + k2);
+            long h2 = mix(h1 ^ k2);
+            for (int i = 0; i < NUM_HASHES; i++) {
+                long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long mix(long h) {
+            // Murmur3 64 bits finalizer
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb93e53a6c5b3L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerEntryFilter.class);
+}
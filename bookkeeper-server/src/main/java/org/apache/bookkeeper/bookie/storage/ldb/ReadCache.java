@@ -31,8 +31,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.apache.bookkeeper.util.collections.LongLongPairHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,7 +54,7 @@ public class ReadCache implements Closeable {
     private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
     private final List<ByteBuf> cacheSegments;
-    private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
+    private final List<LongLongPairHashMap> cacheIndexes;
 
     private int currentSegmentIdx;
     private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
@@ -66,7 +68,19 @@ public class ReadCache implements Closeable {
         this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
 
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, Supplier<LongLongPairHashMap> indexFactory) {
+        this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE, indexFactory);
+    }
+
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, ReadCache::newOnHeapIndex);
+    }
+
+    /**
+     * @param indexFactory the factory of the indexes of the segments, which may be stored off heap
+     */
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize,
+                     Supplier<LongLongPairHashMap> indexFactory) {
         this.allocator = allocator;
         int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
         segmentSize = (int) (maxCacheSize / segmentsCount);
@@ -76,17 +90,21 @@ public class ReadCache implements Closeable {
 
         for (int i = 0; i < segmentsCount; i++) {
             cacheSegments.add(Unpooled.directBuffer(segmentSize, segmentSize));
-            ConcurrentLongLongPairHashMap concurrentLongLongPairHashMap = ConcurrentLongLongPairHashMap.newBuilder()
-                    .expectedItems(4096)
-                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
-                    .build();
-            cacheIndexes.add(concurrentLongLongPairHashMap);
+            cacheIndexes.add(indexFactory.get());
         }
     }
 
+    private static LongLongPairHashMap newOnHeapIndex() {
+        return ConcurrentLongLongPairHashMap.newBuilder()
+                .expectedItems(4096)
+                .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                .build();
+    }
+
     @Override
     public void close() {
         cacheSegments.forEach(ReferenceCountUtil::safeRelease);
+        cacheIndexes.forEach(LongLongPairHashMap::close);
     }
 
     public void put(long ledgerId, long entryId, ByteBuf entry) {
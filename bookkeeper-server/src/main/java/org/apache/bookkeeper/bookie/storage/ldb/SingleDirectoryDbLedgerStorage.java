@@ -48,6 +48,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
 import org.apache.bookkeeper.bookie.BookieException;
@@ -68,6 +69,7 @@ import org.apache.bookkeeper.bookie.StateManager;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorageDataFormats.LedgerData;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
@@ -78,6 +80,9 @@ import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.ThreadRegistry;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentOffHeapLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.LongLongPairHashMap;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang.mutable.MutableLong;
 import org.slf4j.Logger;
@@ -97,6 +102,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private final ConcurrentLongHashMap<TransientLedgerInfo> transientLedgerInfoCache;
 
+    // Optional filter used to skip location index lookups for entries that are not stored in this directory
+    private final LedgerEntryFilter ledgerEntryFilter;
+    private final EntryChecksumIndex entryChecksumIndex;
+
     private final GarbageCollectorThread gcThread;
 
     // Write cache where all new entries are inserted into
@@ -141,6 +150,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
     private final long maxReadAheadBytesSize;
+    private volatile MemoryLimitController readAheadMemoryLimiter;
 
     private final Counter flushExecutorTime;
     private final boolean singleLedgerDirs;
@@ -172,9 +182,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 .scopeLabel("ledgerDir", ledgerBaseDir)
                 .scopeLabel("indexDir", indexBaseDir);
 
+        Supplier<LongLongPairHashMap> cacheIndexFactory = newCacheIndexFactory(conf);
+
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2, cacheIndexFactory);
+        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2, cacheIndexFactory);
         this.singleLedgerDirs = conf.getLedgerDirs().length == 1;
 
         readCacheMaxSize = readCacheSize;
@@ -188,13 +200,37 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
+        readCache = new ReadCache(allocator, readCacheMaxSize, cacheIndexFactory);
 
         ledgerIndex = new LedgerMetadataIndex(conf,
                 KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
         entryLocationIndex = new EntryLocationIndex(conf,
                 KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
 
+        if (conf.getBoolean(DbLedgerStorage.LEDGER_ENTRY_FILTER_ENABLED, false)) {
+            ledgerEntryFilter = new LedgerEntryFilter(
+                    conf.getLong(DbLedgerStorage.LEDGER_ENTRY_FILTER_EXPECTED_KEYS,
+                            DbLedgerStorage.DEFAULT_LEDGER_ENTRY_FILTER_EXPECTED_KEYS),
+                    conf.getInt(DbLedgerStorage.LEDGER_ENTRY_FILTER_RANGE_BITS,
+                            DbLedgerStorage.DEFAULT_LEDGER_ENTRY_FILTER_RANGE_BITS));
+            // The filter is not consulted until the first build is complete, so we can do it in background
+            cleanupExecutor.execute(this::rebuildLedgerEntryFilter);
+        } else {
+            ledgerEntryFilter = null;
+        }
+
+        if (conf.getBoolean(DbLedgerStorage.ENTRY_CHECKSUM_VERIFICATION_ENABLED, false)) {
+            entryChecksumIndex = new EntryChecksumIndex(conf,
+                    KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger,
+                    conf.getInt(DbLedgerStorage.ENTRY_CHECKSUM_VERIFICATION_THREADS,
+                            DbLedgerStorage.DEFAULT_ENTRY_CHECKSUM_VERIFICATION_THREADS),
+                    conf.getInt(DbLedgerStorage.ENTRY_CHECKSUM_VERIFICATION_MAX_QUEUE_SIZE,
+                            DbLedgerStorage.DEFAULT_ENTRY_CHECKSUM_VERIFICATION_MAX_QUEUE_SIZE),
+                    this::isLedgerIndexed);
+        } else {
+            entryChecksumIndex = null;
+        }
+
         transientLedgerInfoCache = ConcurrentLongHashMap.<TransientLedgerInfo>newBuilder()
                 .expectedItems(16 * 1024)
                 .concurrencyLevel(Runtime.getRuntime().availableProcessors() * 2)
@@ -247,6 +283,33 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     @Override
     public void setCheckpointer(Checkpointer checkpointer) { }
 
+    private void rebuildLedgerEntryFilter() {
+        try {
+            ledgerEntryFilter.rebuild(ledgerIndex, entryLocationIndex);
+        } catch (Throwable t) {
+            log.warn("Failed to rebuild ledger entry filter", t);
+        }
+    }
+
+    private static Supplier<LongLongPairHashMap> newCacheIndexFactory(ServerConfiguration conf) {
+        int concurrencyLevel = 2 * Runtime.getRuntime().availableProcessors();
+        if (!conf.getBoolean(DbLedgerStorage.OFF_HEAP_CACHE_INDEXES_ENABLED, false)) {
+            return () -> ConcurrentLongLongPairHashMap.newBuilder()
+                    .expectedItems(4096)
+                    .concurrencyLevel(concurrencyLevel)
+                    .build();
+        }
+
+        String hugePagesPath = conf.getString(DbLedgerStorage.OFF_HEAP_CACHE_INDEXES_HUGE_PAGES_PATH, null);
+        log.info("Storing the write and read cache indexes off heap{}",
+                hugePagesPath != null ? ", backed by huge pages from " + hugePagesPath : "");
+        return () -> ConcurrentOffHeapLongLongPairHashMap.newBuilder()
+                .expectedItems(4096)
+                .concurrencyLevel(concurrencyLevel)
+                .hugePagesPath(hugePagesPath)
+                .build();
+    }
+
     /**
      * Evict all the ledger info object that were not used recently.
      */
@@ -346,6 +409,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
             ledgerIndex.close();
             entryLocationIndex.close();
+            if (entryChecksumIndex != null) {
+                entryChecksumIndex.close();
+            }
 
             writeCache.close();
             writeCacheBeingFlushed.close();
@@ -402,6 +468,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return true;
         }
 
+        if (ledgerEntryFilter != null && !ledgerEntryFilter.mightContain(ledgerId, entryId)) {
+            dbLedgerStorageStats.getLedgerEntryFilterNegativeCounter().inc();
+            throwIfLimbo(ledgerId);
+            return false;
+        }
+
         // Read from main storage
         long entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
         if (entryLocation != 0) {
@@ -414,6 +486,22 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return false;
     }
 
+    private boolean isLedgerIndexed(long ledgerId) {
+        try {
+            return ledgerIndex.get(ledgerId).getExists();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public long getEntryChecksum(long ledgerId, long entryId) throws IOException {
+        if (entryChecksumIndex == null) {
+            return NO_ENTRY_CHECKSUM;
+        }
+        return entryChecksumIndex.getChecksum(ledgerId, entryId);
+    }
+
     @Override
     public boolean isFenced(long ledgerId) throws IOException, BookieException {
         boolean isFenced = ledgerIndex.get(ledgerId).getFenced();
@@ -500,6 +588,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // after successfully insert the entry, update LAC and notify the watchers
         updateCachedLacIfNeeded(ledgerId, lac);
 
+        if (entryChecksumIndex != null && entryId >= 0) {
+            entryChecksumIndex.verifyAsync(ledgerId, entryId, entry);
+        }
+
         recordSuccessfulEvent(dbLedgerStorageStats.getAddEntryStats(), startTime);
         return entryId;
     }
@@ -619,6 +711,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         dbLedgerStorageStats.getReadCacheMissCounter().inc();
 
+        if (ledgerEntryFilter != null && !ledgerEntryFilter.mightContain(ledgerId, entryId)) {
+            dbLedgerStorageStats.getLedgerEntryFilterNegativeCounter().inc();
+            throwIfLimbo(ledgerId);
+            throw new NoEntryException(ledgerId, entryId);
+        }
+
         // Read from main storage
         long entryLocation;
         long locationIndexStartNano = MathUtils.nowInNano();
@@ -652,19 +750,29 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return entry;
     }
 
+    void setReadAheadMemoryLimiter(MemoryLimitController readAheadMemoryLimiter) {
+        this.readAheadMemoryLimiter = readAheadMemoryLimiter;
+    }
+
     private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation) {
         long readAheadStartNano = MathUtils.nowInNano();
         int count = 0;
         long size = 0;
+        final MemoryLimitController memoryLimiter = readAheadMemoryLimiter;
 
         try {
             long firstEntryLogId = (firstEntryLocation >> 32);
             long currentEntryLogId = firstEntryLogId;
             long currentEntryLocation = firstEntryLocation;
 
-            while (chargeReadAheadCache(count, size) && currentEntryLogId == firstEntryLogId) {
+            while (chargeReadAheadCache(count, size) && currentEntryLogId == firstEntryLogId
+                    && (memoryLimiter == null || memoryLimiter.isUsageUnder(1.0))) {
                 ByteBuf entry = entryLogger.readEntry(orginalLedgerId,
                         firstEntryId, currentEntryLocation);
+                final int entrySize = entry.readableBytes();
+                if (memoryLimiter != null) {
+                    memoryLimiter.forceReserveMemory(entrySize);
+                }
 
                 try {
                     long currentEntryLedgerId = entry.getLong(0);
@@ -686,6 +794,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                     currentEntryLogId = currentEntryLocation >> 32;
                 } finally {
                     ReferenceCountUtil.release(entry);
+                    if (memoryLimiter != null) {
+                        memoryLimiter.releaseMemory(entrySize);
+                    }
                 }
             }
         } catch (Exception e) {
@@ -836,6 +947,19 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                         MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
             }
 
+            if (entryChecksumIndex != null) {
+                entryChecksumIndex.flush();
+            }
+
+            if (ledgerEntryFilter != null) {
+                // Entries need to be added to the filter only once they are visible in the location index, and
+                // before they get discarded from the write cache
+                writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> ledgerEntryFilter.add(ledgerId, entryId));
+                if (ledgerEntryFilter.isSaturated()) {
+                    cleanupExecutor.execute(this::rebuildLedgerEntryFilter);
+                }
+            }
+
             long ledgerIndexStartTime = MathUtils.nowInNano();
             ledgerIndex.flush();
             recordSuccessfulEvent(dbLedgerStorageStats.getFlushLedgerIndexStats(), ledgerIndexStartTime);
@@ -870,6 +994,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
                         entryLocationIndex.removeOffsetFromDeletedLedgers();
                         ledgerIndex.removeDeletedLedgers();
+                        if (entryChecksumIndex != null) {
+                            entryChecksumIndex.removeDeletedLedgers();
+                        }
                     } catch (Throwable t) {
                         log.warn("Failed to cleanup db indexes", t);
                     }
@@ -930,6 +1057,14 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         entryLocationIndex.delete(ledgerId);
         ledgerIndex.delete(ledgerId);
+        if (entryChecksumIndex != null) {
+            entryChecksumIndex.delete(ledgerId);
+        }
+
+        if (ledgerEntryFilter != null && ledgerEntryFilter.ledgerDeleted()) {
+            // Deleted ledgers can only be dropped from the filter by rebuilding it
+            cleanupExecutor.execute(this::rebuildLedgerEntryFilter);
+        }
 
         for (int i = 0, size = ledgerDeletionListeners.size(); i < size; i++) {
             LedgerDeletionListener listener = ledgerDeletionListeners.get(i);
@@ -1092,6 +1227,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             try (LedgerEntryPage lep = page.getLEP()) {
                 lep.getEntries((entryId, location) -> {
                     entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
+                    if (ledgerEntryFilter != null) {
+                        ledgerEntryFilter.add(ledgerId, entryId);
+                    }
                     numberOfEntries.increment();
                     return true;
                 });
@@ -30,11 +30,13 @@ import java.io.IOException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.apache.bookkeeper.util.collections.LongLongPairHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,10 +61,7 @@ public class WriteCache implements Closeable {
         void accept(long ledgerId, long entryId, ByteBuf entry) throws IOException;
     }
 
-    private final ConcurrentLongLongPairHashMap index = ConcurrentLongLongPairHashMap.newBuilder()
-            .expectedItems(4096)
-            .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
-            .build();
+    private final LongLongPairHashMap index;
 
     private final ConcurrentLongLongHashMap lastEntryMap = ConcurrentLongLongHashMap.newBuilder()
             .expectedItems(4096)
@@ -86,11 +85,23 @@ public class WriteCache implements Closeable {
     private final ByteBufAllocator allocator;
 
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize) {
+        this(allocator, maxCacheSize, WriteCache::newOnHeapIndex);
+    }
+
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, Supplier<LongLongPairHashMap> indexFactory) {
         // Default maxSegmentSize set to 1Gb
-        this(allocator, maxCacheSize, 1 * 1024 * 1024 * 1024);
+        this(allocator, maxCacheSize, 1 * 1024 * 1024 * 1024, indexFactory);
     }
 
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, WriteCache::newOnHeapIndex);
+    }
+
+    /**
+     * @param indexFactory the factory of the index of the entries, which may be stored off heap
+     */
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize,
+                      Supplier<LongLongPairHashMap> indexFactory) {
         checkArgument(maxSegmentSize > 0);
 
         long alignedMaxSegmentSize = alignToPowerOfTwo(maxSegmentSize);
@@ -113,6 +124,15 @@ public class WriteCache implements Closeable {
 
         int lastSegmentSize = (int) (maxCacheSize % maxSegmentSize);
         cacheSegments[segmentsCount - 1] = Unpooled.directBuffer(lastSegmentSize, lastSegmentSize);
+
+        this.index = indexFactory.get();
+    }
+
+    private static LongLongPairHashMap newOnHeapIndex() {
+        return ConcurrentLongLongPairHashMap.newBuilder()
+                .expectedItems(4096)
+                .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                .build();
     }
 
     public void clear() {
@@ -129,6 +149,7 @@ public class WriteCache implements Closeable {
         for (ByteBuf buf : cacheSegments) {
             buf.release();
         }
+        index.close();
     }
 
     public boolean put(long ledgerId, long entryId, ByteBuf entry) {
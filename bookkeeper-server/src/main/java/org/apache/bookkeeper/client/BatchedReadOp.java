@@ -158,6 +158,7 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
                 return false;
             }
             if (!complete.getAndSet(true)) {
+                long verifyStartNanos = MathUtils.nowInNano();
                 for (int i = 0; i < bufList.size(); i++) {
                     ByteBuf buffer = bufList.getBuffer(i);
                     ByteBuf content;
@@ -165,6 +166,8 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
                         content = lh.macManager.verifyDigestAndReturnData(eId + i, buffer);
                     } catch (BKException.BKDigestMatchException e) {
                         clientCtx.getClientStats().getReadOpDmCounter().inc();
+                        clientCtx.getClientStats().getReadOpDigestVerifyLogger()
+                                .registerFailedEvent(MathUtils.elapsedNanos(verifyStartNanos), TimeUnit.NANOSECONDS);
                         logErrorAndReattemptRead(bookieIndex, host, "Mac mismatch",
                                 BKException.Code.DigestMatchException);
                         return false;
@@ -179,6 +182,8 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
                     entryImpl.setEntryBuf(content);
                     entries.add(entryImpl);
                 }
+                clientCtx.getClientStats().getReadOpDigestVerifyLogger()
+                        .registerSuccessfulEvent(MathUtils.elapsedNanos(verifyStartNanos), TimeUnit.NANOSECONDS);
                 writeSet.recycle();
                 return true;
             } else {
@@ -22,6 +22,7 @@ package org.apache.bookkeeper.client;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WATCHER_SCOPE;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.ENSEMBLE_POOL_SCOPE;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
@@ -138,6 +139,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
     final LedgerManagerFactory ledgerManagerFactory;
     final LedgerManager ledgerManager;
     final LedgerIdGenerator ledgerIdGenerator;
+    final EnsemblePool ensemblePool;
 
     // Ensemble Placement Policy
     final EnsemblePlacementPolicy placementPolicy;
@@ -536,6 +538,15 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         this.ledgerManager = new CleanupLedgerManager(ledgerManagerFactory.newLedgerManager());
         this.ledgerIdGenerator = ledgerManagerFactory.newLedgerIdGenerator();
 
+        if (conf.isEnsemblePoolEnabled()) {
+            LOG.info("Ensemble pool enabled");
+            this.ensemblePool = new EnsemblePool(conf, this.bookieWatcher, this.placementPolicy,
+                    this.ledgerIdGenerator, this.scheduler, this.statsLogger.scope(ENSEMBLE_POOL_SCOPE));
+            this.bookieWatcher.setEnsemblePool(this.ensemblePool);
+        } else {
+            this.ensemblePool = null;
+        }
+
         this.bookieQuarantineRatio = conf.getBookieQuarantineRatio();
         scheduleBookieHealthCheckIfEnabled(conf);
     }
@@ -558,6 +569,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         ledgerManagerFactory = null;
         ledgerManager = null;
         ledgerIdGenerator = null;
+        ensemblePool = null;
         featureProvider = null;
         eventLoopGroup = null;
         bookieWatcher = null;
@@ -663,6 +675,15 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         return ledgerIdGenerator;
     }
 
+    /**
+     * Get the pool of precomputed ensembles and ledger ids.
+     *
+     * @return the ensemble pool, or null if it is not enabled
+     */
+    EnsemblePool getEnsemblePool() {
+        return ensemblePool;
+    }
+
     @VisibleForTesting
     ReentrantReadWriteLock getCloseLock() {
         return closeLock;
@@ -1444,6 +1465,10 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
             closeLock.writeLock().unlock();
         }
 
+        if (ensemblePool != null) {
+            ensemblePool.close();
+        }
+
         // Close bookie client so all pending bookie requests would be failed
         // which will reject any incoming bookie requests.
         bookieClient.close();
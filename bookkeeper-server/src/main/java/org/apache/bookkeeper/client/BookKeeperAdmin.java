@@ -76,6 +76,7 @@ import org.apache.bookkeeper.meta.LedgerAuditorManager;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
 import org.apache.bookkeeper.meta.LedgerManagerFactory;
+import org.apache.bookkeeper.meta.LedgerMetadataSerDe;
 import org.apache.bookkeeper.meta.LedgerUnderreplicationManager;
 import org.apache.bookkeeper.meta.MetadataBookieDriver;
 import org.apache.bookkeeper.meta.UnderreplicatedLedger;
@@ -93,6 +94,7 @@ import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
 import org.apache.bookkeeper.util.IOUtils;
+import org.apache.bookkeeper.versioning.Versioned;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.zookeeper.AsyncCallback;
 import org.apache.zookeeper.KeeperException;
@@ -1173,12 +1175,34 @@ public class BookKeeperAdmin implements AutoCloseable {
 
         Set<BookieId> targetBookieSet = Sets.newHashSet();
         targetBookieSet.addAll(targetBookieAddresses.values());
-        asyncRecoverLedgerFragment(lh, ledgerFragment, cb, targetBookieSet, onReadEntryFailureCallback);
+        // the fragment is recovered once its source bookies have capacity for it, from the worker thread of the
+        // ledger rather than from the thread releasing the capacity
+        CompletableFuture<RecoverySourceScheduler.Reservation> reservation =
+                lfr.reserveRecoverySources(ledgerFragment, targetBookieSet);
+        reservation.whenCompleteAsync((sourcesReservation, cause) -> {
+            if (cause != null) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            if (sourcesReservation != null) {
+                result.whenComplete((value, throwable) -> sourcesReservation.close());
+            }
+            try {
+                asyncRecoverLedgerFragment(lh, ledgerFragment, cb, targetBookieSet, onReadEntryFailureCallback);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cb.processResult(BKException.Code.InterruptedException, null, null);
+            }
+        }, bkc.getMainWorkerPool().chooseThread(lh.getId()));
 
         try {
             SyncCallbackUtils.waitForResult(result);
         } catch (BKException err) {
             throw BKException.create(bkc.getReturnRc(err.getCode()));
+        } catch (InterruptedException e) {
+            // give up the reservation if the fragment is still waiting for it
+            reservation.cancel(false);
+            throw e;
         }
     }
 
@@ -1488,6 +1512,65 @@ public class BookKeeperAdmin implements AutoCloseable {
         return lh.getLedgerMetadata();
     }
 
+    /**
+     * Rewrite the metadata of all the ledgers in the given metadata format version.
+     *
+     * <p>The metadata is read and written back with a conditional update, a ledger whose metadata is
+     * concurrently modified is read again, and a ledger deleted meanwhile is skipped. Only the ledgers
+     * whose metadata is stored in another format version are rewritten.
+     *
+     * <p>The clients and bookies reading the ledger metadata must support the target format version. Only the
+     * protobuf based format versions, 3 and above, can be targeted: the text formats of versions 1 and 2 do not
+     * store the creation token and the custom metadata of the ledgers, which would be lost.
+     *
+     * @param targetVersion the metadata format version to migrate to
+     * @return the number of ledgers whose metadata was rewritten
+     */
+    public long migrateLedgerMetadataFormat(int targetVersion) throws BKException, InterruptedException, IOException {
+        checkArgument(targetVersion >= LedgerMetadataSerDe.METADATA_FORMAT_VERSION_3
+                && targetVersion <= LedgerMetadataSerDe.MAXIMUM_METADATA_FORMAT_VERSION,
+                "Cannot migrate the ledger metadata to format version %s, expected between %s and %s",
+                targetVersion, LedgerMetadataSerDe.METADATA_FORMAT_VERSION_3,
+                LedgerMetadataSerDe.MAXIMUM_METADATA_FORMAT_VERSION);
+        LedgerManager ledgerManager = bkc.getLedgerManager();
+        long numMigrated = 0;
+        for (Long ledgerId : listLedgers()) {
+            if (migrateLedgerMetadataFormat(ledgerManager, ledgerId, targetVersion)) {
+                numMigrated++;
+            }
+        }
+        LOG.info("Migrated the metadata of {} ledgers to format version {}", numMigrated, targetVersion);
+        return numMigrated;
+    }
+
+    private boolean migrateLedgerMetadataFormat(LedgerManager ledgerManager, long ledgerId, int targetVersion)
+            throws BKException, InterruptedException {
+        while (true) {
+            Versioned<LedgerMetadata> metadata;
+            try {
+                metadata = FutureUtils.result(ledgerManager.readLedgerMetadata(ledgerId), BKException.HANDLER);
+            } catch (BKException.BKNoSuchLedgerExistsOnMetadataServerException e) {
+                return false;
+            }
+            if (metadata.getValue().getMetadataFormatVersion() == targetVersion) {
+                return false;
+            }
+            // the builder does not copy the creation token
+            LedgerMetadata newMetadata = LedgerMetadataBuilder.from(metadata.getValue())
+                    .withMetadataFormatVersion(targetVersion)
+                    .withCToken(metadata.getValue().getCToken()).build();
+            try {
+                FutureUtils.result(ledgerManager.writeLedgerMetadata(ledgerId, newMetadata, metadata.getVersion()),
+                        BKException.HANDLER);
+                return true;
+            } catch (BKException.BKMetadataVersionException e) {
+                LOG.info("Metadata of ledger {} modified concurrently, retrying its migration", ledgerId);
+            } catch (BKException.BKNoSuchLedgerExistsOnMetadataServerException e) {
+                return false;
+            }
+        }
+    }
+
     private LedgerUnderreplicationManager getUnderreplicationManager()
             throws CompatibilityException, UnavailableException, InterruptedException {
         if (underreplicationManager == null) {
@@ -53,6 +53,7 @@ public interface BookKeeperClientStats {
     String READ_OP = "READ_ENTRY";
     // Corrupted entry (Digest Mismatch/ Under Replication) detected during ReadEntry
     String READ_OP_DM = "READ_ENTRY_DM";
+    String READ_OP_DIGEST_VERIFY = "READ_ENTRY_DIGEST_VERIFY";
     String WRITE_LAC_OP = "WRITE_LAC";
     String READ_LAC_OP = "READ_LAC";
     String READ_LAST_CONFIRMED_AND_ENTRY = "READ_LAST_CONFIRMED_AND_ENTRY";
@@ -65,6 +66,15 @@ public interface BookKeeperClientStats {
     String SPECULATIVE_READ_COUNT = "SPECULATIVE_READ_COUNT";
     String READ_REQUESTS_REORDERED = "READ_REQUESTS_REORDERED";
     String GET_LIST_OF_ENTRIES_OF_LEDGER_OP = "GET_LIST_OF_ENTRIES_OF_LEDGER";
+    String COPY_LEDGER_FRAGMENT_OP = "COPY_LEDGER_FRAGMENT";
+
+    // ensemble pool stats
+    String ENSEMBLE_POOL_SCOPE = "ensemble_pool";
+    String ENSEMBLE_POOL_HITS = "ENSEMBLE_POOL_HITS";
+    String ENSEMBLE_POOL_MISSES = "ENSEMBLE_POOL_MISSES";
+    String ENSEMBLE_POOL_INVALIDATIONS = "ENSEMBLE_POOL_INVALIDATIONS";
+    String LEDGER_ID_POOL_HITS = "LEDGER_ID_POOL_HITS";
+    String LEDGER_ID_POOL_MISSES = "LEDGER_ID_POOL_MISSES";
 
     // per channel stats
     String CHANNEL_SCOPE = "per_channel_bookie_client";
@@ -83,6 +93,7 @@ public interface BookKeeperClientStats {
     String CHANNEL_START_TLS_OP = "START_TLS";
     String CHANNEL_TIMEOUT_START_TLS_OP = "TIMEOUT_START_TLS";
     String TIMEOUT_GET_LIST_OF_ENTRIES_OF_LEDGER = "TIMEOUT_GET_LIST_OF_ENTRIES_OF_LEDGER";
+    String TIMEOUT_COPY_LEDGER_FRAGMENT = "TIMEOUT_COPY_LEDGER_FRAGMENT";
 
     String NETTY_EXCEPTION_CNT = "NETTY_EXCEPTION_CNT";
     String CLIENT_CHANNEL_WRITE_WAIT = "CLIENT_CHANNEL_WRITE_WAIT";
@@ -97,6 +108,10 @@ public interface BookKeeperClientStats {
 
     // placementpolicy stats
     String NUM_WRITABLE_BOOKIES_IN_DEFAULT_RACK = "NUM_WRITABLE_BOOKIES_IN_DEFAULT_RACK";
+    String RACK_RESOLUTION_LATENCY = "RACK_RESOLUTION_LATENCY";
+    String RACK_RESOLUTION_BATCH_SIZE = "RACK_RESOLUTION_BATCH_SIZE";
+    String RACK_RESOLUTION_CACHE_MISSES = "RACK_RESOLUTION_CACHE_MISSES";
+    String RACK_RESOLUTION_STALE_HITS = "RACK_RESOLUTION_STALE_HITS";
     String WRITE_DELAYED_DUE_TO_NOT_ENOUGH_FAULT_DOMAINS = "WRITE_DELAYED_DUE_TO_NOT_ENOUGH_FAULT_DOMAINS";
     String WRITE_DELAYED_DUE_TO_NOT_ENOUGH_FAULT_DOMAINS_LATENCY =
             "WRITE_DELAYED_DUE_TO_NOT_ENOUGH_FAULT_DOMAINS_LATENCY";
@@ -119,6 +134,7 @@ public interface BookKeeperClientStats {
     OpStatsLogger getRecoverAddCountLogger();
     OpStatsLogger getRecoverReadCountLogger();
     Counter getReadOpDmCounter();
+    OpStatsLogger getReadOpDigestVerifyLogger();
     Counter getAddOpUrCounter();
     Counter getSpeculativeReadCounter();
     Counter getEnsembleBookieDistributionCounter(String bookie);
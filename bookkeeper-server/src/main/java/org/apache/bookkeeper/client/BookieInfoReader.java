@@ -53,6 +53,10 @@ public class BookieInfoReader {
     private final ScheduledExecutorService scheduler;
     private final BookKeeper bk;
     private final ClientConfiguration conf;
+    private final long requestedFlags;
+    private final boolean loadWeighted;
+    // smoothed load terms of the bookies (add rate, read rate, journal queue length), guarded by this
+    private final Map<BookieId, double[]> smoothedLoads = new HashMap<>();
 
     /**
      * A class represents the information (e.g. disk usage, load) of a bookie.
@@ -62,12 +66,35 @@ public class BookieInfoReader {
     public static class BookieInfo implements WeightedObject {
         private final long freeDiskSpace;
         private final long totalDiskSpace;
+        // -1 if the bookie didn't report its load
+        private final int journalQueueLength;
+        private final double addRate;
+        private final double readRate;
+        private final double diskUtilization;
+        // bitwise OR of the GetBookieInfoResponse.Feature served by the bookie, 0 if not reported
+        private final long features;
+        private final long weight;
         public BookieInfo() {
             this(0L, 0L);
         }
         public BookieInfo(long totalDiskSpace, long freeDiskSpace) {
+            this(totalDiskSpace, freeDiskSpace, -1, 0.0, 0.0, 0.0);
+        }
+        public BookieInfo(long totalDiskSpace, long freeDiskSpace, int journalQueueLength,
+                          double addRate, double readRate, double diskUtilization) {
+            this(totalDiskSpace, freeDiskSpace, journalQueueLength, addRate, readRate, diskUtilization, 0L,
+                 freeDiskSpace);
+        }
+        private BookieInfo(long totalDiskSpace, long freeDiskSpace, int journalQueueLength,
+                           double addRate, double readRate, double diskUtilization, long features, long weight) {
             this.totalDiskSpace = totalDiskSpace;
             this.freeDiskSpace = freeDiskSpace;
+            this.journalQueueLength = journalQueueLength;
+            this.addRate = addRate;
+            this.readRate = readRate;
+            this.diskUtilization = diskUtilization;
+            this.features = features;
+            this.weight = weight;
         }
         public long getFreeDiskSpace() {
             return freeDiskSpace;
@@ -75,13 +102,53 @@ public class BookieInfoReader {
         public long getTotalDiskSpace() {
             return totalDiskSpace;
         }
+        public boolean hasLoad() {
+            return journalQueueLength >= 0;
+        }
+        public int getJournalQueueLength() {
+            return journalQueueLength;
+        }
+        public double getAddRate() {
+            return addRate;
+        }
+        public double getReadRate() {
+            return readRate;
+        }
+        public double getDiskUtilization() {
+            return diskUtilization;
+        }
+        public long getFeatures() {
+            return features;
+        }
+        public boolean hasFeature(BookkeeperProtocol.GetBookieInfoResponse.Feature feature) {
+            return (features & feature.getNumber()) != 0;
+        }
+        /**
+         * Copy of this info with the given features served by the bookie.
+         */
+        public BookieInfo withFeatures(long features) {
+            return new BookieInfo(totalDiskSpace, freeDiskSpace, journalQueueLength, addRate, readRate,
+                diskUtilization, features, weight);
+        }
+        /**
+         * Copy of this info with the given weight in place of the free disk space.
+         */
+        BookieInfo withWeight(long weight) {
+            return new BookieInfo(totalDiskSpace, freeDiskSpace, journalQueueLength, addRate, readRate,
+                diskUtilization, features, weight);
+        }
         @Override
         public long getWeight() {
-            return freeDiskSpace;
+            return weight;
         }
         @Override
         public String toString() {
-            return "FreeDiskSpace: " + this.freeDiskSpace + " TotalDiskCapacity: " + this.totalDiskSpace;
+            String info = "FreeDiskSpace: " + this.freeDiskSpace + " TotalDiskCapacity: " + this.totalDiskSpace;
+            if (hasLoad()) {
+                info += " JournalQueueLength: " + journalQueueLength + " AddRate: " + addRate
+                    + " ReadRate: " + readRate + " DiskUtilization: " + diskUtilization;
+            }
+            return info;
         }
     }
 
@@ -231,6 +298,10 @@ public class BookieInfoReader {
         this.bk = bk;
         this.conf = conf;
         this.scheduler = scheduler;
+        this.loadWeighted = conf.getLoadWeightBasedPlacementEnabled();
+        this.requestedFlags = loadWeighted
+            ? GET_BOOKIE_INFO_REQUEST_FLAGS | BookkeeperProtocol.GetBookieInfoRequest.Flags.LOAD_VALUE
+            : GET_BOOKIE_INFO_REQUEST_FLAGS;
     }
 
     public void start() {
@@ -259,7 +330,16 @@ public class BookieInfoReader {
                     }
                 }
             }
-        }, 0, conf.getGetBookieInfoIntervalSeconds(), TimeUnit.SECONDS);
+        }, 0, getPollIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    private int getPollIntervalSeconds() {
+        if (loadWeighted) {
+            // the load changes much faster than the disk usage
+            return Math.max(1, Math.min(conf.getGetBookieInfoIntervalSeconds(),
+                conf.getLoadWeightPollIntervalSeconds()));
+        }
+        return conf.getGetBookieInfoIntervalSeconds();
     }
 
     private void submitTask() {
@@ -326,8 +406,6 @@ public class BookieInfoReader {
         }
 
         BookieClient bkc = bk.getBookieClient();
-        final long requested = BookkeeperProtocol.GetBookieInfoRequest.Flags.TOTAL_DISK_CAPACITY_VALUE
-                               | BookkeeperProtocol.GetBookieInfoRequest.Flags.FREE_DISK_SPACE_VALUE;
         totalSent = 0;
         completedCnt = 0;
         errorCnt = 0;
@@ -336,7 +414,7 @@ public class BookieInfoReader {
             LOG.debug("Getting bookie info for: {}", toScan);
         }
         for (BookieId b : toScan) {
-            bkc.getBookieInfo(b, requested,
+            bkc.getBookieInfo(b, requestedFlags,
                     new GetBookieInfoCallback() {
                         void processReadInfoComplete(int rc, BookieInfo bInfo, Object ctx) {
                             synchronized (BookieInfoReader.this) {
@@ -381,7 +459,11 @@ public class BookieInfoReader {
     }
 
     void onExit() {
-        bk.placementPolicy.updateBookieInfo(bookieInfoMap.getBookieMap());
+        if (loadWeighted) {
+            bk.placementPolicy.updateBookieInfo(applyLoadWeights(bookieInfoMap.getBookieMap()));
+        } else {
+            bk.placementPolicy.updateBookieInfo(bookieInfoMap.getBookieMap());
+        }
         if (errorCnt > 0) {
             if (LOG.isInfoEnabled()) {
                 LOG.info("Rescheduling in {}s due to errors", conf.getGetBookieInfoIntervalSeconds());
@@ -396,6 +478,78 @@ public class BookieInfoReader {
         }
     }
 
+    /**
+     * Weight the bookies by their free disk space and their projected load.
+     *
+     * <p>The load terms of a bookie, its add rate, read rate and journal queue length, are smoothed across the
+     * polls. Each term is normalized by its average over the bookies, since request rates and queue lengths are
+     * not commensurable, and the projected load of a bookie is the mean of its normalized terms. The weight of
+     * a bookie with the average load is its free disk space, and it decreases as its load grows relative to the
+     * average. The bookies which didn't report their load keep their free disk space.
+     */
+    synchronized Map<BookieId, BookieInfo> applyLoadWeights(Map<BookieId, BookieInfo> infos) {
+        double smoothing = Math.min(1.0, Math.max(0.0, conf.getLoadWeightSmoothingFactor()));
+        double factor = Math.max(0.0, conf.getLoadWeightBasedPlacementFactor());
+        smoothedLoads.keySet().retainAll(infos.keySet());
+        double[] totalTerms = new double[3];
+        int numLoads = 0;
+        for (Map.Entry<BookieId, BookieInfo> e : infos.entrySet()) {
+            BookieInfo info = e.getValue();
+            if (!info.hasLoad()) {
+                smoothedLoads.remove(e.getKey());
+                continue;
+            }
+            double[] terms = { info.getAddRate(), info.getReadRate(), info.getJournalQueueLength() };
+            double[] previous = smoothedLoads.get(e.getKey());
+            for (int i = 0; i < terms.length; i++) {
+                if (null != previous) {
+                    terms[i] = smoothing * terms[i] + (1.0 - smoothing) * previous[i];
+                }
+                totalTerms[i] += terms[i];
+            }
+            smoothedLoads.put(e.getKey(), terms);
+            numLoads++;
+        }
+        if (numLoads == 0) {
+            return infos;
+        }
+        Map<BookieId, Double> loads = new HashMap<>(numLoads);
+        double totalLoad = 0.0;
+        for (Map.Entry<BookieId, double[]> e : smoothedLoads.entrySet()) {
+            double load = 0.0;
+            int numTerms = 0;
+            for (int i = 0; i < totalTerms.length; i++) {
+                if (totalTerms[i] > 0.0) {
+                    // the term relative to its average over the bookies
+                    load += e.getValue()[i] * numLoads / totalTerms[i];
+                    numTerms++;
+                }
+            }
+            load = numTerms == 0 ? 0.0 : load / numTerms;
+            loads.put(e.getKey(), load);
+            totalLoad += load;
+        }
+        if (totalLoad <= 0.0) {
+            return infos;
+        }
+        double averageLoad = totalLoad / numLoads;
+        Map<BookieId, BookieInfo> weighted = new HashMap<>(infos.size());
+        for (Map.Entry<BookieId, BookieInfo> e : infos.entrySet()) {
+            BookieInfo info = e.getValue();
+            Double load = loads.get(e.getKey());
+            if (null == load) {
+                weighted.put(e.getKey(), info);
+            } else {
+                double loadWeight = (1.0 + factor) / (1.0 + factor * load / averageLoad);
+                weighted.put(e.getKey(), info.withWeight((long) (info.getFreeDiskSpace() * loadWeight)));
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Load weighted bookie info (average load {}) : {}", averageLoad, weighted);
+        }
+        return weighted;
+    }
+
     Map<BookieId, BookieInfo> getBookieInfo() throws BKException, InterruptedException {
         BookieClient bkc = bk.getBookieClient();
         final AtomicInteger totalSent = new AtomicInteger();
@@ -403,8 +557,6 @@ public class BookieInfoReader {
         final ConcurrentMap<BookieId, BookieInfo> map =
             new ConcurrentHashMap<BookieId, BookieInfo>();
         final CountDownLatch latch = new CountDownLatch(1);
-        long requested = BookkeeperProtocol.GetBookieInfoRequest.Flags.TOTAL_DISK_CAPACITY_VALUE
-                         | BookkeeperProtocol.GetBookieInfoRequest.Flags.FREE_DISK_SPACE_VALUE;
 
         Collection<BookieId> bookies;
         bookies = bk.bookieWatcher.getBookies();
@@ -414,7 +566,7 @@ public class BookieInfoReader {
         }
         totalSent.set(bookies.size());
         for (BookieId b : bookies) {
-            bkc.getBookieInfo(b, requested, new GetBookieInfoCallback() {
+            bkc.getBookieInfo(b, requestedFlags, new GetBookieInfoCallback() {
                         @Override
                         public void getBookieInfoComplete(int rc, BookieInfo bInfo, Object ctx) {
                             BookieId b = (BookieId) ctx;
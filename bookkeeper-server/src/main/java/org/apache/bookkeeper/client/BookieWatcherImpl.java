@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
@@ -111,6 +112,11 @@ class BookieWatcherImpl implements BookieWatcher {
 
     private final BookieAddressResolver bookieAddressResolver;
 
+    // notified after the placement policy learnt about bookie changes
+    private final List<Runnable> bookiesChangedListeners = new CopyOnWriteArrayList<>();
+
+    private volatile EnsemblePool ensemblePool = null;
+
     public BookieWatcherImpl(ClientConfiguration conf,
                              EnsemblePlacementPolicy placementPolicy,
                              RegistrationClient registrationClient,
@@ -188,12 +194,48 @@ class BookieWatcherImpl implements BookieWatcher {
         return !readOnlyBookies.contains(id) && !writableBookies.contains(id);
     }
 
+    /**
+     * Whether the given bookie can be chosen for a new ensemble, i.e. it is writable and not quarantined.
+     */
+    boolean isBookieAvailableForNewEnsemble(BookieId id) {
+        return writableBookies.contains(id) && quarantinedBookies.getIfPresent(id) == null;
+    }
+
+    /**
+     * Get a copy of the bookies currently quarantined.
+     */
+    Set<BookieId> getQuarantinedBookies() {
+        return new HashSet<>(quarantinedBookies.asMap().keySet());
+    }
+
+    /**
+     * Set the pool of precomputed ensembles used by {@link #newEnsemble}, null to always compute the ensembles.
+     */
+    void setEnsemblePool(EnsemblePool ensemblePool) {
+        this.ensemblePool = ensemblePool;
+    }
+
+    /**
+     * Register a listener notified every time the writable or read only bookies change,
+     * once the placement policy has been updated.
+     */
+    void registerBookiesChangedListener(Runnable listener) {
+        bookiesChangedListeners.add(listener);
+    }
+
+    private void notifyBookiesChanged() {
+        for (Runnable listener : bookiesChangedListeners) {
+            listener.run();
+        }
+    }
+
     // this callback is already not executed in zookeeper thread
     private synchronized void processWritableBookiesChanged(Set<BookieId> newBookieAddrs) {
         // Update watcher outside ZK callback thread, to avoid deadlock in case some other
         // component is trying to do a blocking ZK operation
         this.writableBookies = newBookieAddrs;
         placementPolicy.onClusterChanged(newBookieAddrs, readOnlyBookies);
+        notifyBookiesChanged();
         // we don't need to close clients here, because:
         // a. the dead bookies will be removed from topology, which will not be used in new ensemble.
         // b. the read sequence will be reordered based on znode availability, so most of the reads
@@ -213,6 +255,7 @@ class BookieWatcherImpl implements BookieWatcher {
     private synchronized void processReadOnlyBookiesChanged(Set<BookieId> readOnlyBookies) {
         this.readOnlyBookies = readOnlyBookies;
         placementPolicy.onClusterChanged(writableBookies, readOnlyBookies);
+        notifyBookiesChanged();
     }
 
     /**
@@ -261,6 +304,18 @@ class BookieWatcherImpl implements BookieWatcher {
         int ackQuorumSize, Map<String, byte[]> customMetadata)
             throws BKNotEnoughBookiesException {
         long startTime = MathUtils.nowInNano();
+        // take a precomputed ensemble, unless the custom metadata might drive the placement
+        EnsemblePool pool = ensemblePool;
+        if (pool != null && (customMetadata == null || customMetadata.isEmpty())) {
+            List<BookieId> pooledEnsemble = pool.pollEnsemble(ensembleSize, writeQuorumSize, ackQuorumSize);
+            if (pooledEnsemble != null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Using pooled ensemble {} for new ledger", pooledEnsemble);
+                }
+                newEnsembleTimer.registerSuccessfulEvent(MathUtils.nowInNano() - startTime, TimeUnit.NANOSECONDS);
+                return pooledEnsemble;
+            }
+        }
         EnsemblePlacementPolicy.PlacementResult<List<BookieId>> newEnsembleResponse;
         List<BookieId> socketAddresses;
         PlacementPolicyAdherence isEnsembleAdheringToPlacementPolicy;
@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.apache.bookkeeper.client.BookKeeperClientStats.ENSEMBLE_POOL_HITS;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.ENSEMBLE_POOL_INVALIDATIONS;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.ENSEMBLE_POOL_MISSES;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.ENSEMBLE_POOL_SCOPE;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.LEDGER_ID_POOL_HITS;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.LEDGER_ID_POOL_MISSES;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.client.BKException.BKNotEnoughBookiesException;
+import org.apache.bookkeeper.client.EnsemblePlacementPolicy.PlacementPolicyAdherence;
+import org.apache.bookkeeper.client.EnsemblePlacementPolicy.PlacementResult;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerIdGenerator;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of ensembles and ledger ids computed in the background, so that a ledger creation
+ * only needs to write the ledger metadata.
+ *
+ * <p>The pool learns the shapes (ensemble size, write quorum size and ack quorum size) of the
+ * ledgers created by the client, and keeps up to {@code ensemblePoolSize} placement policy compliant
+ * ensembles for each of them. The pooled ensembles are dropped whenever the writable bookies change.
+ * An ensemble is checked again against the writable and quarantined bookies, and against the placement policy
+ * to catch rack changes, before being handed out by {@link BookieWatcherImpl#newEnsemble}, which accounts it
+ * as any other new ensemble.
+ *
+ * <p>Ledger ids can also be reserved in advance through the {@link LedgerIdGenerator}. A generated ledger id
+ * cannot be given back, so the reserved ids that are not used before the client is closed are skipped: the
+ * reservation is disabled by default.
+ */
+@StatsDoc(
+    name = ENSEMBLE_POOL_SCOPE,
+    help = "Ensemble pool related stats"
+)
+class EnsemblePool implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EnsemblePool.class);
+
+    private final BookieWatcherImpl bookieWatcher;
+    private final EnsemblePlacementPolicy placementPolicy;
+    private final LedgerIdGenerator ledgerIdGenerator;
+    private final ExecutorService executor;
+    private final int poolSize;
+    private final int maxShapes;
+    private final int numLedgerIds;
+
+    private final Map<EnsembleShape, Queue<List<BookieId>>> ensembles = new ConcurrentHashMap<>();
+    private final Queue<Long> ledgerIds = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger numLedgerIdsRequested = new AtomicInteger();
+    // bumped on bookie changes, so that the ensembles computed on the previous topology are not pooled
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicBoolean refillScheduled = new AtomicBoolean(false);
+    private volatile boolean closed = false;
+
+    @StatsDoc(
+        name = ENSEMBLE_POOL_HITS,
+        help = "The number of ledger creations that used a pooled ensemble"
+    )
+    private final Counter ensembleHits;
+    @StatsDoc(
+        name = ENSEMBLE_POOL_MISSES,
+        help = "The number of ledger creations that computed their ensemble"
+    )
+    private final Counter ensembleMisses;
+    @StatsDoc(
+        name = ENSEMBLE_POOL_INVALIDATIONS,
+        help = "The number of times the pooled ensembles were dropped because of bookie changes"
+    )
+    private final Counter invalidations;
+    @StatsDoc(
+        name = LEDGER_ID_POOL_HITS,
+        help = "The number of ledger creations that used a reserved ledger id"
+    )
+    private final Counter ledgerIdHits;
+    @StatsDoc(
+        name = LEDGER_ID_POOL_MISSES,
+        help = "The number of ledger creations that generated their ledger id"
+    )
+    private final Counter ledgerIdMisses;
+
+    /**
+     * Ensemble size, write quorum size and ack quorum size of a ledger.
+     */
+    private static final class EnsembleShape {
+        final int ensembleSize;
+        final int writeQuorumSize;
+        final int ackQuorumSize;
+
+        EnsembleShape(int ensembleSize, int writeQuorumSize, int ackQuorumSize) {
+            this.ensembleSize = ensembleSize;
+            this.writeQuorumSize = writeQuorumSize;
+            this.ackQuorumSize = ackQuorumSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof EnsembleShape)) {
+                return false;
+            }
+            EnsembleShape other = (EnsembleShape) o;
+            return ensembleSize == other.ensembleSize
+                && writeQuorumSize == other.writeQuorumSize
+                && ackQuorumSize == other.ackQuorumSize;
+        }
+
+        @Override
+        public int hashCode() {
+            return (ensembleSize * 31 + writeQuorumSize) * 31 + ackQuorumSize;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + ensembleSize + ", " + writeQuorumSize + ", " + ackQuorumSize + ")";
+        }
+    }
+
+    EnsemblePool(ClientConfiguration conf,
+                 BookieWatcherImpl bookieWatcher,
+                 EnsemblePlacementPolicy placementPolicy,
+                 LedgerIdGenerator ledgerIdGenerator,
+                 ExecutorService executor,
+                 StatsLogger statsLogger) {
+        this.bookieWatcher = bookieWatcher;
+        this.placementPolicy = placementPolicy;
+        this.ledgerIdGenerator = ledgerIdGenerator;
+        this.executor = executor;
+        this.poolSize = conf.getEnsemblePoolSize();
+        this.maxShapes = conf.getEnsemblePoolMaxShapes();
+        this.numLedgerIds = conf.getEnsemblePoolLedgerIds();
+        this.ensembleHits = statsLogger.getCounter(ENSEMBLE_POOL_HITS);
+        this.ensembleMisses = statsLogger.getCounter(ENSEMBLE_POOL_MISSES);
+        this.invalidations = statsLogger.getCounter(ENSEMBLE_POOL_INVALIDATIONS);
+        this.ledgerIdHits = statsLogger.getCounter(LEDGER_ID_POOL_HITS);
+        this.ledgerIdMisses = statsLogger.getCounter(LEDGER_ID_POOL_MISSES);
+
+        bookieWatcher.registerBookiesChangedListener(this::onBookiesChanged);
+        scheduleRefill();
+    }
+
+    /**
+     * Take a pooled ensemble of the given shape.
+     *
+     * @return the ensemble, or null if no ensemble of this shape is pooled
+     */
+    List<BookieId> pollEnsemble(int ensembleSize, int writeQuorumSize, int ackQuorumSize) {
+        if (closed) {
+            return null;
+        }
+        EnsembleShape shape = new EnsembleShape(ensembleSize, writeQuorumSize, ackQuorumSize);
+        Queue<List<BookieId>> queue = ensembles.get(shape);
+        if (queue == null && ensembles.size() < maxShapes) {
+            queue = ensembles.computeIfAbsent(shape, s -> new ConcurrentLinkedQueue<>());
+        }
+        List<BookieId> ensemble = null;
+        if (queue != null) {
+            while ((ensemble = queue.poll()) != null && !isUsable(ensemble, shape)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Discarding pooled ensemble {} with unavailable bookies or not adhering to"
+                            + " the placement policy", ensemble);
+                }
+            }
+            scheduleRefill();
+        }
+        if (ensemble == null) {
+            ensembleMisses.inc();
+        } else {
+            ensembleHits.inc();
+        }
+        return ensemble;
+    }
+
+    /**
+     * Take a reserved ledger id.
+     *
+     * @return the ledger id, or -1 if no ledger id is reserved
+     */
+    long pollLedgerId() {
+        Long ledgerId = ledgerIds.poll();
+        if (numLedgerIds > 0) {
+            scheduleRefill();
+        }
+        if (ledgerId == null) {
+            ledgerIdMisses.inc();
+            return -1L;
+        }
+        ledgerIdHits.inc();
+        return ledgerId;
+    }
+
+    private boolean isUsable(List<BookieId> ensemble, EnsembleShape shape) {
+        for (BookieId bookie : ensemble) {
+            if (!bookieWatcher.isBookieAvailableForNewEnsemble(bookie)) {
+                return false;
+            }
+        }
+        // the racks of the bookies might have changed since the ensemble was computed
+        return placementPolicy.isEnsembleAdheringToPlacementPolicy(ensemble, shape.writeQuorumSize,
+                shape.ackQuorumSize) != PlacementPolicyAdherence.FAIL;
+    }
+
+    private void onBookiesChanged() {
+        generation.incrementAndGet();
+        for (Queue<List<BookieId>> queue : ensembles.values()) {
+            queue.clear();
+        }
+        invalidations.inc();
+        scheduleRefill();
+    }
+
+    private void scheduleRefill() {
+        if (closed || !refillScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::refill);
+        } catch (RejectedExecutionException ree) {
+            refillScheduled.set(false);
+            LOG.warn("Failed to schedule the refill of the ensemble pool", ree);
+        }
+    }
+
+    private void refill() {
+        refillScheduled.set(false);
+        if (closed) {
+            return;
+        }
+        refillLedgerIds();
+        for (Map.Entry<EnsembleShape, Queue<List<BookieId>>> e : ensembles.entrySet()) {
+            refillEnsembles(e.getKey(), e.getValue());
+        }
+    }
+
+    private void refillEnsembles(EnsembleShape shape, Queue<List<BookieId>> queue) {
+        int missing = poolSize - queue.size();
+        for (int i = 0; i < missing && !closed; i++) {
+            long gen = generation.get();
+            PlacementResult<List<BookieId>> result;
+            try {
+                result = placementPolicy.newEnsemble(shape.ensembleSize, shape.writeQuorumSize,
+                        shape.ackQuorumSize, Collections.emptyMap(),
+                        bookieWatcher.getQuarantinedBookies());
+            } catch (BKNotEnoughBookiesException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Not enough bookies to pool ensembles of shape {}", shape);
+                }
+                return;
+            }
+            // only pool the ensembles that are compliant with the placement policy, the other
+            // creations compute their ensemble and take care of the non compliant placements
+            if (result.getAdheringToPolicy() == PlacementPolicyAdherence.FAIL) {
+                return;
+            }
+            if (gen != generation.get()) {
+                // the bookies changed while computing the ensemble, a new refill is scheduled
+                return;
+            }
+            queue.offer(result.getResult());
+        }
+    }
+
+    private void refillLedgerIds() {
+        int missing = numLedgerIds - ledgerIds.size() - numLedgerIdsRequested.get();
+        for (int i = 0; i < missing && !closed; i++) {
+            numLedgerIdsRequested.incrementAndGet();
+            ledgerIdGenerator.generateLedgerId((rc, ledgerId) -> {
+                numLedgerIdsRequested.decrementAndGet();
+                if (BKException.Code.OK == rc) {
+                    ledgerIds.offer(ledgerId);
+                    if (closed) {
+                        skipReservedLedgerIds();
+                    }
+                } else {
+                    LOG.warn("Failed to reserve a ledger id for the ensemble pool : {}",
+                            BKException.getMessage(rc));
+                }
+            });
+        }
+    }
+
+    private void skipReservedLedgerIds() {
+        Long ledgerId;
+        while ((ledgerId = ledgerIds.poll()) != null) {
+            LOG.info("Skipping ledger id {} reserved by the ensemble pool", ledgerId);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        ensembles.clear();
+        skipReservedLedgerIds();
+    }
+}
@@ -191,6 +191,15 @@ class LedgerCreateOp {
     }
 
     void generateLedgerIdAndCreateLedger(LedgerMetadataBuilder metadataBuilder) {
+        // use a ledger id reserved in advance if any
+        EnsemblePool ensemblePool = bk.getEnsemblePool();
+        if (ensemblePool != null) {
+            long reservedLedgerId = ensemblePool.pollLedgerId();
+            if (reservedLedgerId >= 0) {
+                createLedgerWithGeneratedId(reservedLedgerId, metadataBuilder);
+                return;
+            }
+        }
         // generate a ledgerId
         final LedgerIdGenerator ledgerIdGenerator = bk.getLedgerIdGenerator();
         ledgerIdGenerator.generateLedgerId(new GenericCallback<Long>() {
@@ -200,15 +209,19 @@ class LedgerCreateOp {
                     createComplete(rc, null);
                     return;
                 }
-                LedgerCreateOp.this.ledgerId = ledgerId;
-                LedgerCreateOp.this.metadata = metadataBuilder.withId(ledgerId).build();
-                // create a ledger with metadata
-                bk.getLedgerManager().createLedgerMetadata(ledgerId, metadata)
-                    .whenComplete((written, exception) -> metadataCallback(written, exception, metadataBuilder));
+                createLedgerWithGeneratedId(ledgerId, metadataBuilder);
             }
         });
     }
 
+    private void createLedgerWithGeneratedId(long ledgerId, LedgerMetadataBuilder metadataBuilder) {
+        this.ledgerId = ledgerId;
+        this.metadata = metadataBuilder.withId(ledgerId).build();
+        // create a ledger with metadata
+        bk.getLedgerManager().createLedgerMetadata(ledgerId, metadata)
+            .whenComplete((written, exception) -> metadataCallback(written, exception, metadataBuilder));
+    }
+
     /**
      * Initiates the operation to return LedgerHandleAdv.
      */
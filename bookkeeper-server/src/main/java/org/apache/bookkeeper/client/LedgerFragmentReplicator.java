@@ -20,18 +20,27 @@
 package org.apache.bookkeeper.client;
 
 import static org.apache.bookkeeper.client.LedgerHandle.INVALID_ENTRY_ID;
+import static org.apache.bookkeeper.replication.ReplicationStats.DIRECT_COPY_LATENCY;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_BYTES_READ;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_BYTES_WRITTEN;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_ENTRIES_READ;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_ENTRIES_WRITTEN;
 import static org.apache.bookkeeper.replication.ReplicationStats.READ_DATA_LATENCY;
+import static org.apache.bookkeeper.replication.ReplicationStats.RECOVERY_SOURCES_OUTSTANDING;
+import static org.apache.bookkeeper.replication.ReplicationStats.RECOVERY_SOURCE_ADMISSION_WAIT;
+import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATION_BYTES_IN_FLIGHT;
 import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATION_WORKER_SCOPE;
 import static org.apache.bookkeeper.replication.ReplicationStats.WRITE_DATA_LATENCY;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.util.ReferenceCounted;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -39,24 +48,32 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import org.apache.bookkeeper.client.AsyncCallback.ReadCallback;
 import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.MultiCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoResponse;
 import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
 import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.zookeeper.AsyncCallback;
@@ -106,11 +123,32 @@ public class LedgerFragmentReplicator {
             help = "The distribution of latency of write entries by the replicator"
     )
     private final OpStatsLogger writeDataLatency;
+    @StatsDoc(
+            name = DIRECT_COPY_LATENCY,
+            help = "The distribution of latency of fragments copied directly between bookies by the replicator"
+    )
+    private final OpStatsLogger directCopyLatency;
+    @StatsDoc(
+            name = RECOVERY_SOURCE_ADMISSION_WAIT,
+            help = "The distribution of time fragments waited for recovery capacity on their source bookies"
+    )
+    private final OpStatsLogger recoverySourceAdmissionWait;
 
     protected Throttler replicationThrottle = null;
 
+    protected BytesInFlightLimiter bytesInFlightLimiter = null;
+
+    protected RecoverySourceScheduler sourceScheduler = null;
+
     private AtomicInteger averageEntrySize;
 
+    // whether the bookies advertise the direct copy of ledger fragments. The entries expire, so that the bookies
+    // that cannot be probed or are upgraded later are probed again
+    private final Cache<BookieId, Boolean> directCopySupport = CacheBuilder.newBuilder()
+            .expireAfterWrite(DIRECT_COPY_SUPPORT_EXPIRY_SECONDS, TimeUnit.SECONDS)
+            .build();
+    private static final long DIRECT_COPY_SUPPORT_EXPIRY_SECONDS = 600;
+
     private static final int INITIAL_AVERAGE_ENTRY_SIZE = 1024;
     private static final double AVERAGE_ENTRY_SIZE_RATIO = 0.8;
     private ClientConfiguration conf;
@@ -124,9 +162,43 @@ public class LedgerFragmentReplicator {
         numBytesWritten = this.statsLogger.getOpStatsLogger(NUM_BYTES_WRITTEN);
         readDataLatency = this.statsLogger.getOpStatsLogger(READ_DATA_LATENCY);
         writeDataLatency = this.statsLogger.getOpStatsLogger(WRITE_DATA_LATENCY);
+        directCopyLatency = this.statsLogger.getOpStatsLogger(DIRECT_COPY_LATENCY);
         if (conf.getReplicationRateByBytes() > 0) {
             this.replicationThrottle = new Throttler(conf.getReplicationRateByBytes());
         }
+        if (conf.getReplicationMaxBytesInFlight() > 0) {
+            this.bytesInFlightLimiter = new BytesInFlightLimiter(conf.getReplicationMaxBytesInFlight(),
+                    bkc.getMainWorkerPool());
+            this.statsLogger.registerGauge(REPLICATION_BYTES_IN_FLIGHT, new Gauge<Long>() {
+                @Override
+                public Long getDefaultValue() {
+                    return 0L;
+                }
+
+                @Override
+                public Long getSample() {
+                    return bytesInFlightLimiter.getBytesInFlight();
+                }
+            });
+        }
+        recoverySourceAdmissionWait = this.statsLogger.getOpStatsLogger(RECOVERY_SOURCE_ADMISSION_WAIT);
+        if (conf.isReplicationSourceSchedulingEnabled()) {
+            this.sourceScheduler = new RecoverySourceScheduler(bkc.getPlacementPolicy(),
+                    conf.getReplicationMaxOutstandingFragmentsPerBookie(),
+                    conf.getReplicationMaxBytesPerSecondPerBookie(), recoverySourceAdmissionWait,
+                    bkc.getScheduler(), bkc.getMainWorkerPool());
+            this.statsLogger.registerGauge(RECOVERY_SOURCES_OUTSTANDING, new Gauge<Integer>() {
+                @Override
+                public Integer getDefaultValue() {
+                    return 0;
+                }
+
+                @Override
+                public Integer getSample() {
+                    return sourceScheduler.getTotalOutstanding();
+                }
+            });
+        }
         averageEntrySize = new AtomicInteger(INITIAL_AVERAGE_ENTRY_SIZE);
         this.conf = conf;
     }
@@ -171,6 +243,53 @@ public class LedgerFragmentReplicator {
             return;
         }
 
+        if (conf.isReplicationDirectCopyEnabled() && canCopyDirectly(lh, lf, newBookies)) {
+            final long startId = startEntryId;
+            final long endId = endEntryId;
+            checkDirectCopySupport(newBookies, supported -> bkc.getMainWorkerPool().executeOrdered(lh.getId(),
+                    failOnInterrupt(ledgerFragmentMcb, () -> {
+                        if (supported) {
+                            directCopyLedgerFragment(lh, lf, startId, endId, ledgerFragmentMcb, newBookies,
+                                    onReadEntryFailureCallback);
+                        } else {
+                            replicateFragmentEntries(lh, lf, startId, endId, ledgerFragmentMcb, newBookies,
+                                    onReadEntryFailureCallback);
+                        }
+                    })));
+            return;
+        }
+
+        replicateFragmentEntries(lh, lf, startEntryId, endEntryId, ledgerFragmentMcb, newBookies,
+                onReadEntryFailureCallback);
+    }
+
+    private void replicateFragmentEntries(final LedgerHandle lh,
+            final LedgerFragment lf,
+            final long startEntryId,
+            final long endEntryId,
+            final AsyncCallback.VoidCallback ledgerFragmentMcb,
+            final Set<BookieId> newBookies,
+            final BiConsumer<Long, Long> onReadEntryFailureCallback) throws InterruptedException {
+        if (sourceScheduler != null) {
+            // reads are spread over the surviving bookies of the ensemble, they are issued once the bookies
+            // have the bandwidth for them
+            sourceScheduler.acquireBandwidth(getRecoverySources(lf, newBookies),
+                    (long) averageEntrySize.get() * (endEntryId - startEntryId + 1), lh.getId(),
+                    failOnInterrupt(ledgerFragmentMcb, () -> readAndWriteFragmentEntries(lh, lf, startEntryId,
+                            endEntryId, ledgerFragmentMcb, newBookies, onReadEntryFailureCallback)));
+        } else {
+            readAndWriteFragmentEntries(lh, lf, startEntryId, endEntryId, ledgerFragmentMcb, newBookies,
+                    onReadEntryFailureCallback);
+        }
+    }
+
+    private void readAndWriteFragmentEntries(final LedgerHandle lh,
+            final LedgerFragment lf,
+            final long startEntryId,
+            final long endEntryId,
+            final AsyncCallback.VoidCallback ledgerFragmentMcb,
+            final Set<BookieId> newBookies,
+            final BiConsumer<Long, Long> onReadEntryFailureCallback) throws InterruptedException {
         /*
          * Now asynchronously replicate all of the entries for the ledger
          * fragment that were on the dead bookie.
@@ -208,6 +327,265 @@ public class LedgerFragmentReplicator {
 
     }
 
+    private interface InterruptibleTask {
+        void run() throws InterruptedException;
+    }
+
+    private static Runnable failOnInterrupt(AsyncCallback.VoidCallback ledgerFragmentMcb, InterruptibleTask task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                ledgerFragmentMcb.processResult(BKException.Code.InterruptedException, null, null);
+            }
+        };
+    }
+
+    /**
+     * Reserve room for one more recovery on the bookies the fragment is going to be read from. The returned
+     * future completes once all of them have capacity, the reservation must be closed once the fragment is
+     * replicated.
+     *
+     * @return the future reservation, completed with null if recovery source scheduling is disabled
+     */
+    CompletableFuture<RecoverySourceScheduler.Reservation> reserveRecoverySources(LedgerFragment lf,
+                                                                                  Set<BookieId> newBookies) {
+        if (sourceScheduler == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return sourceScheduler.reserve(getRecoverySources(lf, newBookies));
+    }
+
+    private boolean canCopyDirectly(LedgerHandle lh, LedgerFragment lf, Set<BookieId> newBookies) {
+        // every bookie of the ensemble holds every entry only when ensemble and write quorum sizes are the same
+        if (lh.getLedgerMetadata().getEnsembleSize() != lh.getLedgerMetadata().getWriteQuorumSize()) {
+            return false;
+        }
+        for (BookieId bookie : newBookies) {
+            if (Boolean.FALSE.equals(directCopySupport.getIfPresent(bookie))) {
+                return false;
+            }
+        }
+        return !getRecoverySources(lf, newBookies).isEmpty();
+    }
+
+    /**
+     * Check whether all the given bookies advertise the direct copy of ledger fragments in their bookie info.
+     * The bookies not probed recently are asked for their features, a bookie that cannot be probed is considered
+     * as not supporting direct copy until its entry expires.
+     */
+    private void checkDirectCopySupport(Set<BookieId> bookies, Consumer<Boolean> cb) {
+        List<BookieId> unknownBookies = new ArrayList<>(bookies.size());
+        for (BookieId bookie : bookies) {
+            Boolean supported = directCopySupport.getIfPresent(bookie);
+            if (supported == null) {
+                unknownBookies.add(bookie);
+            } else if (!supported) {
+                cb.accept(false);
+                return;
+            }
+        }
+        if (unknownBookies.isEmpty()) {
+            cb.accept(true);
+            return;
+        }
+
+        final AtomicInteger pendingBookies = new AtomicInteger(unknownBookies.size());
+        final AtomicBoolean allSupported = new AtomicBoolean(true);
+        for (final BookieId bookie : unknownBookies) {
+            bkc.getBookieClient().getBookieInfo(bookie, GetBookieInfoRequest.Flags.FEATURES_VALUE,
+                    (rc, bInfo, ctx) -> {
+                        boolean supported = rc == BKException.Code.OK
+                                && bInfo.hasFeature(GetBookieInfoResponse.Feature.DIRECT_FRAGMENT_COPY);
+                        if (!supported) {
+                            LOG.info("Bookie {} does not serve direct copies of ledger fragments (rc: {}),"
+                                    + " replicating to it in the regular way", bookie, rc);
+                            allSupported.set(false);
+                        }
+                        directCopySupport.put(bookie, supported);
+                        if (pendingBookies.decrementAndGet() == 0) {
+                            cb.accept(allSupported.get());
+                        }
+                    }, null);
+        }
+    }
+
+    private static List<BookieId> getRecoverySources(LedgerFragment lf, Set<BookieId> newBookies) {
+        Set<BookieId> replacedBookies = lf.getAddresses();
+        List<BookieId> sources = new ArrayList<>(lf.getEnsemble().size());
+        for (BookieId bookie : lf.getEnsemble()) {
+            if (!replacedBookies.contains(bookie) && !newBookies.contains(bookie) && !sources.contains(bookie)) {
+                sources.add(bookie);
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Ask the new bookies to copy the entries of the fragment directly from the surviving replicas, and verify
+     * that the entries are available on them once the copy is done. The entries are not transferred through the
+     * replicator.
+     *
+     * <p>The entries already stored on a new bookie are not copied again, so that a fragment whose copy timed out
+     * is not copied from scratch when it is retried. The remaining entries are copied in ranges of at most
+     * rereplicationEntryBatchSize entries, one request at a time.
+     */
+    void directCopyLedgerFragment(final LedgerHandle lh,
+                                  final LedgerFragment lf,
+                                  final long startEntryId,
+                                  final long endEntryId,
+                                  final AsyncCallback.VoidCallback ledgerFragmentMcb,
+                                  final Set<BookieId> newBookies,
+                                  final BiConsumer<Long, Long> onReadEntryFailureCallback)
+            throws InterruptedException {
+        final long ledgerId = lh.getId();
+        final int entriesToCopyCnt = (int) (endEntryId - startEntryId + 1);
+        List<BookieId> candidates = getRecoverySources(lf, newBookies);
+        final List<BookieId> sources = sourceScheduler != null
+                ? sourceScheduler.orderSources(candidates, newBookies) : candidates;
+
+        if (replicationThrottle != null) {
+            // entries do not flow through the replicator, throttle on the estimated size of the fragment
+            replicationThrottle.acquire(averageEntrySize.get() * entriesToCopyCnt);
+        }
+        if (sourceScheduler != null) {
+            // the new bookies read from the first source, as long as it is available
+            sourceScheduler.acquireBandwidth(sources.subList(0, 1),
+                    (long) averageEntrySize.get() * entriesToCopyCnt * newBookies.size(), ledgerId,
+                    () -> copyLedgerFragmentToBookies(lh, startEntryId, endEntryId, sources, ledgerFragmentMcb,
+                            newBookies, onReadEntryFailureCallback));
+        } else {
+            copyLedgerFragmentToBookies(lh, startEntryId, endEntryId, sources, ledgerFragmentMcb, newBookies,
+                    onReadEntryFailureCallback);
+        }
+    }
+
+    private void copyLedgerFragmentToBookies(final LedgerHandle lh,
+                                             final long startEntryId,
+                                             final long endEntryId,
+                                             final List<BookieId> sources,
+                                             final AsyncCallback.VoidCallback ledgerFragmentMcb,
+                                             final Set<BookieId> newBookies,
+                                             final BiConsumer<Long, Long> onReadEntryFailureCallback) {
+        final long ledgerId = lh.getId();
+        final long startTime = MathUtils.nowInNano();
+        final AtomicInteger pendingBookies = new AtomicInteger(newBookies.size());
+        final AtomicInteger firstError = new AtomicInteger(BKException.Code.OK);
+        final AtomicLong copiedEntries = new AtomicLong(0);
+
+        final BiConsumer<BookieId, Integer> onBookieDone = (bookie, rc) -> {
+            if (rc != BKException.Code.OK) {
+                firstError.compareAndSet(BKException.Code.OK, rc);
+            }
+            if (pendingBookies.decrementAndGet() > 0) {
+                return;
+            }
+
+            int result = firstError.get();
+            if (result == BKException.Code.OK) {
+                directCopyLatency.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            } else {
+                directCopyLatency.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                if (result == BKException.Code.NoSuchEntryException
+                        || result == BKException.Code.NoSuchLedgerExistsException) {
+                    onReadEntryFailureCallback.accept(ledgerId, startEntryId);
+                }
+            }
+            numEntriesWritten.addCount(copiedEntries.get());
+            ledgerFragmentMcb.processResult(result, null, null);
+        };
+
+        for (final BookieId bookie : newBookies) {
+            bkc.getBookieClient().getListOfEntriesOfLedger(bookie, ledgerId)
+                    .whenComplete((availability, throwable) -> {
+                        // a bookie that does not know the ledger yet fails the request, copy all the entries
+                        Deque<long[]> ranges = getMissingEntryRanges(
+                                throwable == null ? availability : null, startEntryId, endEntryId,
+                                bkc.getConf().getRereplicationEntryBatchSize());
+                        copyNextRange(bookie, lh, ranges, sources, startEntryId, endEntryId, copiedEntries,
+                                onBookieDone);
+                    });
+        }
+    }
+
+    /**
+     * Split the entries [startEntryId, endEntryId] that are not available on a bookie into ranges of at most
+     * batchSize entries.
+     */
+    static Deque<long[]> getMissingEntryRanges(AvailabilityOfEntriesOfLedger availability,
+                                               long startEntryId, long endEntryId, long batchSize) {
+        Deque<long[]> ranges = new ArrayDeque<>();
+        long rangeStart = INVALID_ENTRY_ID;
+        for (long entryId = startEntryId; entryId <= endEntryId; entryId++) {
+            boolean missing = availability == null || !availability.isEntryAvailable(entryId);
+            if (missing && rangeStart == INVALID_ENTRY_ID) {
+                rangeStart = entryId;
+            }
+            boolean rangeFull = rangeStart != INVALID_ENTRY_ID && batchSize > 0
+                    && entryId - rangeStart + 1 >= batchSize;
+            if (rangeStart != INVALID_ENTRY_ID && (!missing || rangeFull)) {
+                ranges.add(new long[] {rangeStart, missing ? entryId : entryId - 1});
+                rangeStart = INVALID_ENTRY_ID;
+            }
+        }
+        if (rangeStart != INVALID_ENTRY_ID) {
+            ranges.add(new long[] {rangeStart, endEntryId});
+        }
+        return ranges;
+    }
+
+    private void copyNextRange(BookieId bookie, LedgerHandle lh, Deque<long[]> ranges, List<BookieId> sources,
+                               long startEntryId, long endEntryId, AtomicLong copiedEntries,
+                               BiConsumer<BookieId, Integer> onBookieDone) {
+        final long ledgerId = lh.getId();
+        final long[] range = ranges.poll();
+        if (range == null) {
+            verifyDirectCopy(bookie, ledgerId, startEntryId, endEntryId, onBookieDone);
+            return;
+        }
+        bkc.getBookieClient().copyLedgerFragment(bookie, ledgerId, lh.getLedgerKey(), range[0], range[1],
+                sources, conf.getReplicationDirectCopyBatchEntries(),
+                (rc, lid, lastCopiedEntryId, ctx) -> {
+                    if (rc != BKException.Code.OK) {
+                        LOG.error("Failed to copy entries {} - {} of ledger {} to bookie {}, last copied {}",
+                                range[0], range[1], ledgerId, bookie, lastCopiedEntryId, BKException.create(rc));
+                        onBookieDone.accept(bookie, rc);
+                    } else if (lastCopiedEntryId != range[1]) {
+                        LOG.error("Bookie {} copied entries of ledger {} up to {}, expected up to {}",
+                                bookie, ledgerId, lastCopiedEntryId, range[1]);
+                        onBookieDone.accept(bookie, BKException.Code.LedgerRecoveryException);
+                    } else {
+                        copiedEntries.addAndGet(range[1] - range[0] + 1);
+                        copyNextRange(bookie, lh, ranges, sources, startEntryId, endEntryId, copiedEntries,
+                                onBookieDone);
+                    }
+                }, null);
+    }
+
+    private void verifyDirectCopy(BookieId bookie, long ledgerId, long startEntryId, long endEntryId,
+                                  BiConsumer<BookieId, Integer> onBookieDone) {
+        bkc.getBookieClient().getListOfEntriesOfLedger(bookie, ledgerId)
+                .whenComplete((availability, throwable) -> {
+                    if (throwable != null) {
+                        LOG.error("Failed to verify the entries of ledger {} copied to bookie {}",
+                                ledgerId, bookie, throwable);
+                        onBookieDone.accept(bookie, BKException.getExceptionCode(throwable,
+                                BKException.Code.LedgerRecoveryException));
+                        return;
+                    }
+                    for (long entryId = startEntryId; entryId <= endEntryId; entryId++) {
+                        if (!availability.isEntryAvailable(entryId)) {
+                            LOG.error("Entry {} of ledger {} is missing on bookie {} after direct copy",
+                                    entryId, ledgerId, bookie);
+                            onBookieDone.accept(bookie, BKException.Code.LedgerRecoveryException);
+                            return;
+                        }
+                    }
+                    onBookieDone.accept(bookie, BKException.Code.OK);
+                });
+    }
+
     /**
      * This method replicate a ledger fragment which is a contiguous portion of
      * a ledger that was stored in an ensemble that included the failed bookie.
@@ -361,6 +739,9 @@ public class LedgerFragmentReplicator {
             replicationThrottle.acquire(averageEntrySize.get());
         }
 
+        // bytes accounted in the in-flight limiter for this entry, released once the entry is written or failed
+        final long bytesInFlight = averageEntrySize.get();
+
         final WriteCallback multiWriteCallback = new WriteCallback() {
             @Override
             public void writeComplete(int rc, long ledgerId, long entryId, BookieId addr, Object ctx) {
@@ -368,6 +749,7 @@ public class LedgerFragmentReplicator {
                     LOG.error("BK error writing entry for ledgerId: {}, entryId: {}, bookie: {}",
                             ledgerId, entryId, addr, BKException.create(rc));
                     if (completed.compareAndSet(false, true)) {
+                        releaseBytesInFlight(bytesInFlight);
                         ledgerFragmentEntryMcb.processResult(rc, null, null);
                     }
                 } else {
@@ -380,69 +762,73 @@ public class LedgerFragmentReplicator {
                                 ledgerId, entryId, addr);
                     }
                     if (numCompleted.incrementAndGet() == newBookies.size() && completed.compareAndSet(false, true)) {
+                        releaseBytesInFlight(bytesInFlight);
                         ledgerFragmentEntryMcb.processResult(rc, null, null);
                     }
                 }
             }
         };
 
-        long startReadEntryTime = MathUtils.nowInNano();
         /*
          * Read the ledger entry using the LedgerHandle. This will allow us to
          * read the entry from one of the other replicated bookies other than
          * the dead one.
          */
-        lh.asyncReadEntries(entryId, entryId, new ReadCallback() {
-            @Override
-            public void readComplete(int rc, LedgerHandle lh,
-                    Enumeration<LedgerEntry> seq, Object ctx) {
-                if (rc != BKException.Code.OK) {
-                    LOG.error("BK error reading ledger entry: " + entryId,
-                            BKException.create(rc));
-                    onReadEntryFailureCallback.accept(ledgerId, entryId);
-                    ledgerFragmentEntryMcb.processResult(rc, null, null);
-                    return;
-                }
+        acquireBytesInFlight(bytesInFlight, lh.getId(), () -> {
+            long startReadEntryTime = MathUtils.nowInNano();
+            lh.asyncReadEntries(entryId, entryId, new ReadCallback() {
+                @Override
+                public void readComplete(int rc, LedgerHandle lh,
+                        Enumeration<LedgerEntry> seq, Object ctx) {
+                    if (rc != BKException.Code.OK) {
+                        LOG.error("BK error reading ledger entry: " + entryId,
+                                BKException.create(rc));
+                        releaseBytesInFlight(bytesInFlight);
+                        onReadEntryFailureCallback.accept(ledgerId, entryId);
+                        ledgerFragmentEntryMcb.processResult(rc, null, null);
+                        return;
+                    }
+
+                    readDataLatency.registerSuccessfulEvent(MathUtils.elapsedNanos(startReadEntryTime),
+                            TimeUnit.NANOSECONDS);
 
-                readDataLatency.registerSuccessfulEvent(MathUtils.elapsedNanos(startReadEntryTime),
-                        TimeUnit.NANOSECONDS);
-
-                /*
-                 * Now that we've read the ledger entry, write it to the new
-                 * bookie we've selected.
-                 */
-                LedgerEntry entry = seq.nextElement();
-                byte[] data = entry.getEntry();
-                final long dataLength = data.length;
-                numEntriesRead.inc();
-                numBytesRead.registerSuccessfulValue(dataLength);
-
-                ReferenceCounted toSend = lh.getDigestManager()
-                        .computeDigestAndPackageForSending(entryId,
-                                lh.getLastAddConfirmed(), entry.getLength(),
-                                Unpooled.wrappedBuffer(data, 0, data.length),
-                                lh.getLedgerKey(),
-                                BookieProtocol.FLAG_RECOVERY_ADD
-                                );
-                if (replicationThrottle != null) {
-                    if (toSend instanceof ByteBuf) {
-                        updateAverageEntrySize(((ByteBuf) toSend).readableBytes());
-                    } else if (toSend instanceof ByteBufList) {
-                        updateAverageEntrySize(((ByteBufList) toSend).readableBytes());
+                    /*
+                     * Now that we've read the ledger entry, write it to the new
+                     * bookie we've selected.
+                     */
+                    LedgerEntry entry = seq.nextElement();
+                    byte[] data = entry.getEntry();
+                    final long dataLength = data.length;
+                    numEntriesRead.inc();
+                    numBytesRead.registerSuccessfulValue(dataLength);
+
+                    ReferenceCounted toSend = lh.getDigestManager()
+                            .computeDigestAndPackageForSending(entryId,
+                                    lh.getLastAddConfirmed(), entry.getLength(),
+                                    Unpooled.wrappedBuffer(data, 0, data.length),
+                                    lh.getLedgerKey(),
+                                    BookieProtocol.FLAG_RECOVERY_ADD
+                                    );
+                    if (replicationThrottle != null || bytesInFlightLimiter != null) {
+                        if (toSend instanceof ByteBuf) {
+                            updateAverageEntrySize(((ByteBuf) toSend).readableBytes());
+                        } else if (toSend instanceof ByteBufList) {
+                            updateAverageEntrySize(((ByteBufList) toSend).readableBytes());
+                        }
                     }
+                    for (BookieId newBookie : newBookies) {
+                        long startWriteEntryTime = MathUtils.nowInNano();
+                        bkc.getBookieClient().addEntry(newBookie, lh.getId(),
+                                lh.getLedgerKey(), entryId, toSend,
+                                multiWriteCallback, dataLength, BookieProtocol.FLAG_RECOVERY_ADD,
+                                false, WriteFlag.NONE);
+                        writeDataLatency.registerSuccessfulEvent(
+                               MathUtils.elapsedNanos(startWriteEntryTime), TimeUnit.NANOSECONDS);
+                    }
+                    toSend.release();
                 }
-                for (BookieId newBookie : newBookies) {
-                    long startWriteEntryTime = MathUtils.nowInNano();
-                    bkc.getBookieClient().addEntry(newBookie, lh.getId(),
-                            lh.getLedgerKey(), entryId, toSend,
-                            multiWriteCallback, dataLength, BookieProtocol.FLAG_RECOVERY_ADD,
-                            false, WriteFlag.NONE);
-                    writeDataLatency.registerSuccessfulEvent(
-                           MathUtils.elapsedNanos(startWriteEntryTime), TimeUnit.NANOSECONDS);
-                }
-                toSend.release();
-            }
-        }, null);
+            }, null);
+        });
     }
 
     void batchRecoverLedgerFragmentEntry(final long startEntryId,
@@ -461,19 +847,40 @@ public class LedgerFragmentReplicator {
             replicationThrottle.acquire(maxBytesToReplicate);
         }
 
-        lh.asyncBatchReadEntries(startEntryId, entriesToReplicateCnt, maxBytesToReplicate,
-            new ReadCallback() {
+        long estimatedBatchBytes = (long) averageEntrySize.get() * entriesToReplicateCnt;
+        if (bytesInFlightLimiter != null) {
+            // bound the size of the batch so that reading it does not exceed the bytes in flight limit
+            estimatedBatchBytes = Math.min(estimatedBatchBytes, bytesInFlightLimiter.getMaxBytesInFlight());
+            if (maxBytesToReplicate == -1 || maxBytesToReplicate > estimatedBatchBytes) {
+                maxBytesToReplicate = (int) Math.min(estimatedBatchBytes, Integer.MAX_VALUE);
+            }
+        }
+        final long batchBytesInFlight = estimatedBatchBytes;
+        final int batchMaxBytes = maxBytesToReplicate;
+
+        // the batch is read only once there is room for it in the bytes in flight limit, and the next batch
+        // is requested as soon as the writes of this batch are issued, so reads and writes are pipelined
+        acquireBytesInFlight(batchBytesInFlight, lh.getId(), () -> lh.asyncBatchReadEntries(startEntryId,
+            entriesToReplicateCnt, batchMaxBytes, new ReadCallback() {
                 @Override
                 public void readComplete(int rc, LedgerHandle lh, Enumeration<LedgerEntry> seq, Object ctx) {
                     if (rc != BKException.Code.OK) {
                         LOG.error("BK error reading ledger entries: {} - {}",
                                 startEntryId, endEntryId, BKException.create(rc));
+                        releaseBytesInFlight(batchBytesInFlight);
                         onReadEntryFailureCallback.accept(lh.getId(), startEntryId);
                         for (int i = 0; i < entriesToReplicateCnt; i++) {
                             ledgerFragmentMcb.processResult(rc, null, null);
                         }
                         return;
                     }
+                    // one extra pending count is held while the writes are being issued
+                    AtomicInteger pendingEntries = new AtomicInteger(1);
+                    Runnable entryDone = () -> {
+                        if (pendingEntries.decrementAndGet() == 0) {
+                            releaseBytesInFlight(batchBytesInFlight);
+                        }
+                    };
                     long lastEntryId = startEntryId;
                     while (seq.hasMoreElements()) {
                         LedgerEntry entry = seq.nextElement();
@@ -489,7 +896,7 @@ public class LedgerFragmentReplicator {
                                         Unpooled.wrappedBuffer(data, 0, data.length),
                                         lh.getLedgerKey(),
                                         BookieProtocol.FLAG_RECOVERY_ADD);
-                        if (replicationThrottle != null) {
+                        if (replicationThrottle != null || bytesInFlightLimiter != null) {
                             if (toSend instanceof ByteBuf) {
                                 updateAverageEntrySize(((ByteBuf) toSend).readableBytes());
                             } else if (toSend instanceof ByteBufList) {
@@ -498,6 +905,7 @@ public class LedgerFragmentReplicator {
                         }
                         AtomicInteger numCompleted = new AtomicInteger(0);
                         AtomicBoolean completed = new AtomicBoolean(false);
+                        pendingEntries.incrementAndGet();
 
                         WriteCallback multiWriteCallback = new WriteCallback() {
                             @Override
@@ -506,6 +914,7 @@ public class LedgerFragmentReplicator {
                                     LOG.error("BK error writing entry for ledgerId: {}, entryId: {}, bookie: {}",
                                             ledgerId, entryId, addr, BKException.create(rc));
                                     if (completed.compareAndSet(false, true)) {
+                                        entryDone.run();
                                         ledgerFragmentMcb.processResult(rc, null, null);
                                     }
                                 } else {
@@ -519,6 +928,7 @@ public class LedgerFragmentReplicator {
                                     }
                                     if (numCompleted.incrementAndGet() == newBookies.size()
                                             && completed.compareAndSet(false, true)) {
+                                        entryDone.run();
                                         ledgerFragmentMcb.processResult(rc, null, null);
                                     }
                                 }
@@ -536,6 +946,7 @@ public class LedgerFragmentReplicator {
                         }
                         toSend.release();
                     }
+                    entryDone.run();
                     if (lastEntryId != endEntryId) {
                         try {
                             batchRecoverLedgerFragmentEntry(lastEntryId + 1, endEntryId, lh,
@@ -548,7 +959,7 @@ public class LedgerFragmentReplicator {
                         }
                     }
                 }
-            }, null);
+            }, null));
     }
 
     private void updateAverageEntrySize(int toSendSize) {
@@ -556,6 +967,20 @@ public class LedgerFragmentReplicator {
                 + (1 - AVERAGE_ENTRY_SIZE_RATIO) * toSendSize));
     }
 
+    private void acquireBytesInFlight(long bytes, long ledgerId, Runnable action) {
+        if (bytesInFlightLimiter != null) {
+            bytesInFlightLimiter.acquire(bytes, ledgerId, action);
+        } else {
+            action.run();
+        }
+    }
+
+    private void releaseBytesInFlight(long bytes) {
+        if (bytesInFlightLimiter != null) {
+            bytesInFlightLimiter.release(bytes);
+        }
+    }
+
     /**
      * Callback for recovery of a single ledger fragment. Once the fragment has
      * had all entries replicated, update the ensemble in zookeeper. Once
@@ -655,4 +1080,81 @@ public class LedgerFragmentReplicator {
             rateLimiter.acquire(permits);
         }
     }
+
+    /**
+     * Bounds the number of bytes that have been read for re-replication and are not yet written
+     * to the new bookies, across all the fragments replicated by this replicator.
+     *
+     * <p>The limiter never blocks the caller: actions that do not fit in the limit are queued, in
+     * order, and handed to the executor, ordered by ledger, once the bytes released make room for
+     * them. This is required since reads are issued from the callbacks of the writes of previous
+     * entries, and the releasing thread is a bookie client thread which must not issue the reads.
+     */
+    static class BytesInFlightLimiter {
+        private final long maxBytesInFlight;
+        private final OrderedExecutor executor;
+        private final ArrayDeque<PendingAcquire> pendingAcquires = new ArrayDeque<>();
+        private long bytesInFlight = 0;
+
+        BytesInFlightLimiter(long maxBytesInFlight, OrderedExecutor executor) {
+            this.maxBytesInFlight = maxBytesInFlight;
+            this.executor = executor;
+        }
+
+        long getMaxBytesInFlight() {
+            return maxBytesInFlight;
+        }
+
+        synchronized long getBytesInFlight() {
+            return bytesInFlight;
+        }
+
+        void acquire(long bytes, long ledgerId, Runnable action) {
+            synchronized (this) {
+                if (!pendingAcquires.isEmpty() || !fits(bytes)) {
+                    pendingAcquires.add(new PendingAcquire(bytes, ledgerId, action));
+                    return;
+                }
+                bytesInFlight += bytes;
+            }
+            action.run();
+        }
+
+        void release(long bytes) {
+            List<PendingAcquire> acquiresToRun = null;
+            synchronized (this) {
+                bytesInFlight -= bytes;
+                while (!pendingAcquires.isEmpty() && fits(pendingAcquires.peek().bytes)) {
+                    PendingAcquire pending = pendingAcquires.poll();
+                    bytesInFlight += pending.bytes;
+                    if (acquiresToRun == null) {
+                        acquiresToRun = new ArrayList<>();
+                    }
+                    acquiresToRun.add(pending);
+                }
+            }
+            if (acquiresToRun != null) {
+                for (PendingAcquire pending : acquiresToRun) {
+                    executor.executeOrdered(pending.ledgerId, pending.action);
+                }
+            }
+        }
+
+        private boolean fits(long bytes) {
+            // always let a single request through, even if it is bigger than the limit
+            return bytesInFlight == 0 || bytesInFlight + bytes <= maxBytesInFlight;
+        }
+
+        private static class PendingAcquire {
+            final long bytes;
+            final long ledgerId;
+            final Runnable action;
+
+            PendingAcquire(long bytes, long ledgerId, Runnable action) {
+                this.bytes = bytes;
+                this.ledgerId = ledgerId;
+                this.action = action;
+            }
+        }
+    }
 }
@@ -34,6 +34,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallbackWithLatency;
 import org.apache.bookkeeper.client.api.WriteFlag;
@@ -48,13 +49,20 @@ import org.slf4j.LoggerFactory;
  * bookies, it sees if its at the head of the pending adds queue, and if yes,
  * sends ack back to the application. If a bookie fails, a replacement is made
  * and placed at the same position in the ensemble. The pending adds are then
- * rereplicated.
+ * rereplicated. A bookie rejecting the write because it has too many requests
+ * is not failed: the write is sent to it again after a backoff, a few times,
+ * before the bookie is replaced.
  *
  *
  */
 class PendingAddOp implements WriteCallback {
     private static final Logger LOG = LoggerFactory.getLogger(PendingAddOp.class);
 
+    // Backoff of the writes rejected by a bookie with too many requests, doubled on each retry
+    private static final long TOO_MANY_REQUESTS_BACKOFF_MS = 10;
+    private static final long TOO_MANY_REQUESTS_MAX_BACKOFF_MS = 1000;
+    private static final int TOO_MANY_REQUESTS_MAX_RETRIES = 10;
+
     ByteBuf payload;
     ReferenceCounted toSend;
     AddCallbackWithLatency cb;
@@ -80,6 +88,7 @@ class PendingAddOp implements WriteCallback {
     EnumSet<WriteFlag> writeFlags;
     boolean allowFailFast = false;
     List<BookieId> ensemble;
+    int tooManyRequestsRetries;
 
     @SuppressFBWarnings("IS2_INCONSISTENT_SYNC")
     static PendingAddOp create(LedgerHandle lh, ClientContext clientCtx,
@@ -107,6 +116,7 @@ class PendingAddOp implements WriteCallback {
         op.allowFailFast = false;
         op.qwcLatency = 0;
         op.writeFlags = writeFlags;
+        op.tooManyRequestsRetries = 0;
 
         if (op.addEntrySuccessBookies == null) {
             op.addEntrySuccessBookies = new HashSet<>();
@@ -225,6 +235,45 @@ class PendingAddOp implements WriteCallback {
         sendWriteRequest(ensemble, bookieIndex);
     }
 
+    /**
+     * Send the write to a bookie which rejected it with too many requests again, after a backoff.
+     *
+     * @return false if the write can't be retried and the bookie has to be handled as failed
+     */
+    private boolean scheduleWriteRetry(int bookieIndex, BookieId addr) {
+        if (callbackTriggered || tooManyRequestsRetries >= TOO_MANY_REQUESTS_MAX_RETRIES) {
+            return false;
+        }
+        long backoffMs = Math.min(TOO_MANY_REQUESTS_BACKOFF_MS << tooManyRequestsRetries,
+                TOO_MANY_REQUESTS_MAX_BACKOFF_MS);
+        ++tooManyRequestsRetries;
+        // the op is not recycled while the retry is pending
+        ++pendingWriteRequests;
+        try {
+            clientCtx.getScheduler().scheduleOrdered(lh.ledgerId, () -> retryWriteRequest(bookieIndex, addr),
+                    backoffMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            --pendingWriteRequests;
+            return false;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Too many requests on bookie {} for entry ({}, {}), retrying in {} ms",
+                    addr, lh.ledgerId, entryId, backoffMs);
+        }
+        return true;
+    }
+
+    private synchronized void retryWriteRequest(int bookieIndex, BookieId addr) {
+        --pendingWriteRequests;
+        // the entry may have been sent to a replacement of the bookie, or no longer be needed once the callback
+        // is triggered, the payload being released
+        if (callbackTriggered || !ensemble.get(bookieIndex).equals(addr)) {
+            maybeRecycle();
+            return;
+        }
+        sendWriteRequest(ensemble, bookieIndex);
+    }
+
     /**
      * Initiate the add operation.
      */
@@ -279,6 +328,11 @@ class PendingAddOp implements WriteCallback {
             addEntrySuccessBookies.add(ensemble.get(bookieIndex));
         }
 
+        if (BKException.Code.TooManyRequestsException == rc && scheduleWriteRetry(bookieIndex, addr)) {
+            // the bookie sheds load, it is not replaced
+            return;
+        }
+
         if (completed) {
             if (rc != BKException.Code.OK) {
                 // Got an error after satisfying AQ. This means we are under replicated at the create itself.
@@ -495,6 +549,7 @@ class PendingAddOp implements WriteCallback {
         hasRun = false;
         allowFailFast = false;
         writeFlags = null;
+        tooManyRequestsRetries = 0;
         addEntrySuccessBookies.clear();
         writeDelayedStartTime = -1;
 
@@ -193,16 +193,17 @@ public class RackawareEnsemblePlacementPolicy extends RackawareEnsemblePlacement
     }
 
     @Override
-    public BookieNode selectFromNetworkLocation(
+    BookieNode selectFromNetworkLocation(
             String networkLoc,
             Set<Node> excludeBookies,
             Predicate<BookieNode> predicate,
             Ensemble<BookieNode> ensemble,
-            boolean fallbackToRandom)
+            boolean fallbackToRandom,
+            TopologySnapshot snapshot)
             throws BKException.BKNotEnoughBookiesException {
         try {
             return super.selectFromNetworkLocation(networkLoc, excludeBookies, predicate, ensemble,
-                    fallbackToRandom);
+                    fallbackToRandom, snapshot);
         } catch (BKException.BKNotEnoughBookiesException bnebe) {
             if (slave == null) {
                 throw bnebe;
@@ -214,15 +215,17 @@ public class RackawareEnsemblePlacementPolicy extends RackawareEnsemblePlacement
     }
 
     @Override
-    public BookieNode selectFromNetworkLocation(
+    BookieNode selectFromNetworkLocation(
             Set<String> excludeRacks,
             Set<Node> excludeBookies,
             Predicate<BookieNode> predicate,
             Ensemble<BookieNode> ensemble,
-            boolean fallbackToRandom)
+            boolean fallbackToRandom,
+            TopologySnapshot snapshot)
                     throws BKException.BKNotEnoughBookiesException {
         try {
-            return super.selectFromNetworkLocation(excludeRacks, excludeBookies, predicate, ensemble, fallbackToRandom);
+            return super.selectFromNetworkLocation(excludeRacks, excludeBookies, predicate, ensemble, fallbackToRandom,
+                    snapshot);
         } catch (BKException.BKNotEnoughBookiesException bnebe) {
             if (slave == null) {
                 throw bnebe;
@@ -234,17 +237,18 @@ public class RackawareEnsemblePlacementPolicy extends RackawareEnsemblePlacement
     }
 
     @Override
-    public BookieNode selectFromNetworkLocation(
+    BookieNode selectFromNetworkLocation(
             String networkLoc,
             Set<String> excludeRacks,
             Set<Node> excludeBookies,
             Predicate<BookieNode> predicate,
             Ensemble<BookieNode> ensemble,
-            boolean fallbackToRandom)
+            boolean fallbackToRandom,
+            TopologySnapshot snapshot)
             throws BKNotEnoughBookiesException {
         try {
             return super.selectFromNetworkLocation(networkLoc, excludeRacks, excludeBookies, predicate, ensemble,
-                    fallbackToRandom);
+                    fallbackToRandom, snapshot);
         } catch (BKException.BKNotEnoughBookiesException bnebe) {
             if (slave == null) {
                 throw bnebe;
@@ -47,12 +47,12 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.apache.bookkeeper.client.BKException.BKNotEnoughBookiesException;
-import org.apache.bookkeeper.client.BookieInfoReader.BookieInfo;
 import org.apache.bookkeeper.client.WeightedRandomSelection.WeightedObject;
 import org.apache.bookkeeper.common.util.ReflectionUtils;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.conf.Configurable;
 import org.apache.bookkeeper.feature.FeatureProvider;
+import org.apache.bookkeeper.net.AsyncCachedDNSToSwitchMapping;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieNode;
 import org.apache.bookkeeper.net.DNSToSwitchMapping;
@@ -135,6 +135,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     protected Gauge<Integer> numWritableBookiesInDefaultRack;
 
     private String defaultRack = NetworkTopology.DEFAULT_RACK;
+    private AsyncCachedDNSToSwitchMapping asyncDnsResolver = null;
 
     RackawareEnsemblePlacementPolicyImpl() {
         this(false);
@@ -214,12 +215,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
 
             @Override
             public Integer getSample() {
-                rwLock.readLock().lock();
-                try {
-                    return topology.countNumOfAvailableNodes(getDefaultRack(), Collections.emptySet());
-                } finally {
-                    rwLock.readLock().unlock();
-                }
+                return topologySnapshot.getLeaves(getDefaultRack()).size();
             }
         };
         this.statsLogger.registerGauge(NUM_WRITABLE_BOOKIES_IN_DEFAULT_RACK, numWritableBookiesInDefaultRack);
@@ -236,7 +232,9 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
 
         // create the network topology
         if (stabilizePeriodSeconds > 0) {
-            this.topology = new StabilizeNetworkTopology(timer, stabilizePeriodSeconds);
+            StabilizeNetworkTopology stabilizeTopology = new StabilizeNetworkTopology(timer, stabilizePeriodSeconds);
+            stabilizeTopology.setNodeRemovedListener(this::republishTopologySnapshot);
+            this.topology = stabilizeTopology;
         } else {
             this.topology = new NetworkTopologyImpl();
         }
@@ -324,6 +322,20 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                 }
             }
         }
+        if (conf.isAsyncRackResolutionEnabled()) {
+            // resolve the racks off the placement path, the bookies are in the default rack until then
+            asyncDnsResolver = new AsyncCachedDNSToSwitchMapping(
+                    dnsResolver,
+                    this::getDefaultRack,
+                    conf.getAsyncRackResolutionCacheFile(),
+                    conf.getAsyncRackResolutionRefreshIntervalSeconds(),
+                    conf.getAsyncRackResolutionBatchSize(),
+                    // the bookies of the default rack are not placeable when the racks are enforced
+                    conf.getEnforceMinNumRacksPerWriteQuorum(),
+                    statsLogger);
+            asyncDnsResolver.setRackChangeListener(this::onNetworkLocationsChanged);
+            dnsResolver = asyncDnsResolver;
+        }
         slowBookies = CacheBuilder.newBuilder()
             .expireAfterWrite(conf.getBookieFailureHistoryExpirationMSec(), TimeUnit.MILLISECONDS)
             .build(new CacheLoader<BookieId, Long>() {
@@ -350,18 +362,27 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
 
     @Override
     public void uninitalize() {
-        // do nothing
+        if (null != asyncDnsResolver) {
+            asyncDnsResolver.close();
+        }
+    }
+
+    @Override
+    protected TopologySnapshot newTopologySnapshot() {
+        return TopologySnapshot.build(knownBookies, topology, isWeighted ? bookieInfoMap : null, maxWeightMultiple);
     }
 
-    /*
-     * this method should be called in readlock scope of 'rwLock'
-     */
     protected Set<BookieId> addDefaultRackBookiesIfMinNumRacksIsEnforced(
             Set<BookieId> excludeBookies) {
+        return addDefaultRackBookiesIfMinNumRacksIsEnforced(excludeBookies, topologySnapshot);
+    }
+
+    private Set<BookieId> addDefaultRackBookiesIfMinNumRacksIsEnforced(
+            Set<BookieId> excludeBookies, TopologySnapshot snapshot) {
         Set<BookieId> comprehensiveExclusionBookiesSet;
         if (enforceMinNumRacksPerWriteQuorum) {
             Set<BookieId> bookiesInDefaultRack = null;
-            Set<Node> defaultRackLeaves = topology.getLeaves(getDefaultRack());
+            List<Node> defaultRackLeaves = snapshot.getLeaves(getDefaultRack());
             for (Node node : defaultRackLeaves) {
                 if (node instanceof BookieNode) {
                     if (bookiesInDefaultRack == null) {
@@ -390,16 +411,12 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     public PlacementResult<List<BookieId>> newEnsemble(int ensembleSize, int writeQuorumSize,
             int ackQuorumSize, Map<String, byte[]> customMetadata, Set<BookieId> excludeBookies)
             throws BKNotEnoughBookiesException {
-        rwLock.readLock().lock();
-        try {
-            Set<BookieId> comprehensiveExclusionBookiesSet = addDefaultRackBookiesIfMinNumRacksIsEnforced(
-                    excludeBookies);
-            PlacementResult<List<BookieId>> newEnsembleResult = newEnsembleInternal(ensembleSize,
-                    writeQuorumSize, ackQuorumSize, comprehensiveExclusionBookiesSet, null, null);
-            return newEnsembleResult;
-        } finally {
-            rwLock.readLock().unlock();
-        }
+        // no lock needed, the whole placement reads the same topology snapshot
+        TopologySnapshot snapshot = topologySnapshot;
+        Set<BookieId> comprehensiveExclusionBookiesSet = addDefaultRackBookiesIfMinNumRacksIsEnforced(
+                excludeBookies, snapshot);
+        return newEnsembleInternal(ensembleSize, writeQuorumSize, ackQuorumSize, comprehensiveExclusionBookiesSet,
+                null, null, snapshot);
     }
 
     @Override
@@ -426,76 +443,83 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             Set<BookieId> excludeBookies,
             Ensemble<BookieNode> parentEnsemble,
             Predicate<BookieNode> parentPredicate) throws BKNotEnoughBookiesException {
-        rwLock.readLock().lock();
-        try {
-            Set<Node> excludeNodes = convertBookiesToNodes(excludeBookies);
-            int minNumRacksPerWriteQuorumForThisEnsemble = Math.min(writeQuorumSize, minNumRacksPerWriteQuorum);
-            RRTopologyAwareCoverageEnsemble ensemble =
-                    new RRTopologyAwareCoverageEnsemble(
-                            ensembleSize,
-                            writeQuorumSize,
-                            ackQuorumSize,
-                            RACKNAME_DISTANCE_FROM_LEAVES,
-                            parentEnsemble,
-                            parentPredicate,
-                            minNumRacksPerWriteQuorumForThisEnsemble);
-            BookieNode prevNode = null;
-            int numRacks = topology.getNumOfRacks();
-            // only one rack, use the random algorithm.
-            if (numRacks < 2) {
-                if (enforceMinNumRacksPerWriteQuorum && (minNumRacksPerWriteQuorumForThisEnsemble > 1)) {
-                    LOG.error("Only one rack available and minNumRacksPerWriteQuorum is enforced, so giving up");
-                    throw new BKNotEnoughBookiesException();
-                }
-                List<BookieNode> bns = selectRandom(ensembleSize, excludeNodes, TruePredicate.INSTANCE,
-                        ensemble);
-                ArrayList<BookieId> addrs = new ArrayList<BookieId>(ensembleSize);
-                for (BookieNode bn : bns) {
-                    addrs.add(bn.getAddr());
-                }
-                return PlacementResult.of(addrs, PlacementPolicyAdherence.FAIL);
+        return newEnsembleInternal(ensembleSize, writeQuorumSize, ackQuorumSize, excludeBookies, parentEnsemble,
+                parentPredicate, topologySnapshot);
+    }
+
+    private PlacementResult<List<BookieId>> newEnsembleInternal(
+            int ensembleSize,
+            int writeQuorumSize,
+            int ackQuorumSize,
+            Set<BookieId> excludeBookies,
+            Ensemble<BookieNode> parentEnsemble,
+            Predicate<BookieNode> parentPredicate,
+            TopologySnapshot snapshot) throws BKNotEnoughBookiesException {
+        Set<Node> excludeNodes = convertBookiesToNodes(excludeBookies);
+        int minNumRacksPerWriteQuorumForThisEnsemble = Math.min(writeQuorumSize, minNumRacksPerWriteQuorum);
+        RRTopologyAwareCoverageEnsemble ensemble =
+                new RRTopologyAwareCoverageEnsemble(
+                        ensembleSize,
+                        writeQuorumSize,
+                        ackQuorumSize,
+                        RACKNAME_DISTANCE_FROM_LEAVES,
+                        parentEnsemble,
+                        parentPredicate,
+                        minNumRacksPerWriteQuorumForThisEnsemble);
+        BookieNode prevNode = null;
+        int numRacks = snapshot.getNumOfRacks();
+        // only one rack, use the random algorithm.
+        if (numRacks < 2) {
+            if (enforceMinNumRacksPerWriteQuorum && (minNumRacksPerWriteQuorumForThisEnsemble > 1)) {
+                LOG.error("Only one rack available and minNumRacksPerWriteQuorum is enforced, so giving up");
+                throw new BKNotEnoughBookiesException();
             }
-            //Choose different rack nodes.
-            String curRack = null;
-            for (int i = 0; i < ensembleSize; i++) {
-                if (null == prevNode) {
-                    if ((null == localNode) || defaultRack.equals(localNode.getNetworkLocation())) {
-                        curRack = NodeBase.ROOT;
-                    } else {
-                        curRack = localNode.getNetworkLocation();
-                    }
+            List<BookieNode> bns = selectRandomInternal(null, ensembleSize, excludeNodes, TruePredicate.INSTANCE,
+                    ensemble, snapshot);
+            ArrayList<BookieId> addrs = new ArrayList<BookieId>(ensembleSize);
+            for (BookieNode bn : bns) {
+                addrs.add(bn.getAddr());
+            }
+            return PlacementResult.of(addrs, PlacementPolicyAdherence.FAIL);
+        }
+        //Choose different rack nodes.
+        String curRack = null;
+        for (int i = 0; i < ensembleSize; i++) {
+            if (null == prevNode) {
+                if ((null == localNode) || defaultRack.equals(localNode.getNetworkLocation())) {
+                    curRack = NodeBase.ROOT;
                 } else {
-                    if (!curRack.startsWith("~")) {
-                        curRack = "~" + prevNode.getNetworkLocation();
-                    } else {
-                        curRack = curRack + NetworkTopologyImpl.NODE_SEPARATOR + prevNode.getNetworkLocation();
-                    }
+                    curRack = localNode.getNetworkLocation();
                 }
-                boolean firstBookieInTheEnsemble = (null == prevNode);
-                try {
-                    prevNode = selectRandomFromRack(curRack, excludeNodes, ensemble, ensemble);
-                } catch (BKNotEnoughBookiesException e) {
-                    if (!curRack.equals(NodeBase.ROOT)) {
-                        curRack = NodeBase.ROOT;
-                        prevNode = selectFromNetworkLocation(curRack, excludeNodes, ensemble, ensemble,
-                                !enforceMinNumRacksPerWriteQuorum || firstBookieInTheEnsemble);
-                    } else {
-                        throw e;
-                    }
+            } else {
+                if (!curRack.startsWith("~")) {
+                    curRack = "~" + prevNode.getNetworkLocation();
+                } else {
+                    curRack = curRack + NetworkTopologyImpl.NODE_SEPARATOR + prevNode.getNetworkLocation();
                 }
             }
-            List<BookieId> bookieList = ensemble.toList();
-            if (ensembleSize != bookieList.size()) {
-                LOG.error("Not enough {} bookies are available to form an ensemble : {}.",
-                          ensembleSize, bookieList);
-                throw new BKNotEnoughBookiesException();
+            boolean firstBookieInTheEnsemble = (null == prevNode);
+            try {
+                prevNode = selectRandomFromRack(curRack, excludeNodes, ensemble, ensemble, snapshot);
+            } catch (BKNotEnoughBookiesException e) {
+                if (!curRack.equals(NodeBase.ROOT)) {
+                    curRack = NodeBase.ROOT;
+                    prevNode = selectFromNetworkLocation(curRack, excludeNodes, ensemble, ensemble,
+                            !enforceMinNumRacksPerWriteQuorum || firstBookieInTheEnsemble, snapshot);
+                } else {
+                    throw e;
+                }
             }
-            return PlacementResult.of(bookieList,
-                                      isEnsembleAdheringToPlacementPolicy(
-                                              bookieList, writeQuorumSize, ackQuorumSize));
-        } finally {
-            rwLock.readLock().unlock();
         }
+        List<BookieId> bookieList = ensemble.toList();
+        if (ensembleSize != bookieList.size()) {
+            LOG.error("Not enough {} bookies are available to form an ensemble : {}.",
+                      ensembleSize, bookieList);
+            throw new BKNotEnoughBookiesException();
+        }
+        return PlacementResult.of(bookieList,
+                                  isEnsembleAdheringToPlacementPolicy(
+                                          bookieList, writeQuorumSize, ackQuorumSize));
     }
 
     @Override
@@ -503,68 +527,66 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             Map<String, byte[]> customMetadata, List<BookieId> currentEnsemble,
             BookieId bookieToReplace, Set<BookieId> excludeBookies)
             throws BKNotEnoughBookiesException {
-        rwLock.readLock().lock();
-        try {
-            excludeBookies = addDefaultRackBookiesIfMinNumRacksIsEnforced(excludeBookies);
-            excludeBookies.addAll(currentEnsemble);
-
-            Set<Node> ensembleNodes = new HashSet<>();
-            Set<Node> excludeNodes = new HashSet<>();
-            BookieNode bn = knownBookies.get(bookieToReplace);
-            if (null == bn) {
-                bn = createBookieNode(bookieToReplace);
-            }
-            for (BookieId bookieId : currentEnsemble) {
-                if (bookieId.equals(bookieToReplace)) {
-                    continue;
-                }
-                ensembleNodes.add(convertBookieToNode(bookieId));
+        // no lock needed, the whole placement reads the same topology snapshot
+        TopologySnapshot snapshot = topologySnapshot;
+        excludeBookies = addDefaultRackBookiesIfMinNumRacksIsEnforced(excludeBookies, snapshot);
+        excludeBookies.addAll(currentEnsemble);
+
+        Set<Node> ensembleNodes = new HashSet<>();
+        Set<Node> excludeNodes = new HashSet<>();
+        BookieNode bn = snapshot.getBookie(bookieToReplace);
+        if (null == bn) {
+            bn = createBookieNode(bookieToReplace);
+        }
+        for (BookieId bookieId : currentEnsemble) {
+            if (bookieId.equals(bookieToReplace)) {
+                continue;
             }
-            for (BookieId bookieId : excludeBookies) {
-                if (bookieId.equals(bookieToReplace)) {
-                    excludeNodes.add(bn);
-                    continue;
-                }
-                excludeNodes.add(convertBookieToNode(bookieId));
+            ensembleNodes.add(convertBookieToNode(bookieId));
+        }
+        for (BookieId bookieId : excludeBookies) {
+            if (bookieId.equals(bookieToReplace)) {
+                excludeNodes.add(bn);
+                continue;
             }
+            excludeNodes.add(convertBookieToNode(bookieId));
+        }
 
-            excludeNodes.addAll(ensembleNodes);
-            excludeNodes.add(bn);
-            ensembleNodes.remove(bn);
+        excludeNodes.addAll(ensembleNodes);
+        excludeNodes.add(bn);
+        ensembleNodes.remove(bn);
 
-            Set<String> networkLocationsToBeExcluded = getNetworkLocations(ensembleNodes);
+        Set<String> networkLocationsToBeExcluded = getNetworkLocations(ensembleNodes);
 
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Try to choose a new bookie to replace {} from ensemble {}, excluding {}.",
-                    bookieToReplace, ensembleNodes, excludeNodes);
-            }
-            // pick a candidate from same rack to replace
-            BookieNode candidate = selectFromNetworkLocation(
-                    bn.getNetworkLocation(),
-                    networkLocationsToBeExcluded,
-                    excludeNodes,
-                    TruePredicate.INSTANCE,
-                    EnsembleForReplacementWithNoConstraints.INSTANCE,
-                    !enforceMinNumRacksPerWriteQuorum);
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Bookie {} is chosen to replace bookie {}.", candidate, bn);
-            }
-            BookieId candidateAddr = candidate.getAddr();
-            List<BookieId> newEnsemble = new ArrayList<BookieId>(currentEnsemble);
-            if (currentEnsemble.isEmpty()) {
-                /*
-                 * in testing code there are test cases which would pass empty
-                 * currentEnsemble
-                 */
-                newEnsemble.add(candidateAddr);
-            } else {
-                newEnsemble.set(currentEnsemble.indexOf(bookieToReplace), candidateAddr);
-            }
-            return PlacementResult.of(candidateAddr,
-                    isEnsembleAdheringToPlacementPolicy(newEnsemble, writeQuorumSize, ackQuorumSize));
-        } finally {
-            rwLock.readLock().unlock();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Try to choose a new bookie to replace {} from ensemble {}, excluding {}.",
+                bookieToReplace, ensembleNodes, excludeNodes);
+        }
+        // pick a candidate from same rack to replace
+        BookieNode candidate = selectFromNetworkLocation(
+                bn.getNetworkLocation(),
+                networkLocationsToBeExcluded,
+                excludeNodes,
+                TruePredicate.INSTANCE,
+                EnsembleForReplacementWithNoConstraints.INSTANCE,
+                !enforceMinNumRacksPerWriteQuorum,
+                snapshot);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Bookie {} is chosen to replace bookie {}.", candidate, bn);
         }
+        BookieId candidateAddr = candidate.getAddr();
+        List<BookieId> newEnsemble = new ArrayList<BookieId>(currentEnsemble);
+        if (currentEnsemble.isEmpty()) {
+            /*
+             * in testing code there are test cases which would pass empty
+             * currentEnsemble
+             */
+            newEnsemble.add(candidateAddr);
+        } else {
+            newEnsemble.set(currentEnsemble.indexOf(bookieToReplace), candidateAddr);
+        }
+        return PlacementResult.of(candidateAddr,
+                isEnsembleAdheringToPlacementPolicy(newEnsemble, writeQuorumSize, ackQuorumSize));
     }
 
     @Override
@@ -575,9 +597,21 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             Ensemble<BookieNode> ensemble,
             boolean fallbackToRandom)
             throws BKNotEnoughBookiesException {
+        return selectFromNetworkLocation(networkLoc, excludeBookies, predicate, ensemble, fallbackToRandom,
+                topologySnapshot);
+    }
+
+    BookieNode selectFromNetworkLocation(
+            String networkLoc,
+            Set<Node> excludeBookies,
+            Predicate<BookieNode> predicate,
+            Ensemble<BookieNode> ensemble,
+            boolean fallbackToRandom,
+            TopologySnapshot snapshot)
+            throws BKNotEnoughBookiesException {
         // select one from local rack
         try {
-            return selectRandomFromRack(networkLoc, excludeBookies, predicate, ensemble);
+            return selectRandomFromRack(networkLoc, excludeBookies, predicate, ensemble, snapshot);
         } catch (BKNotEnoughBookiesException e) {
             if (!fallbackToRandom) {
                 LOG.error(
@@ -589,9 +623,9 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             LOG.warn("Failed to choose a bookie from network location {}, "
                     + "the bookies in the network location are {}, excluded bookies {}, "
                     + "current ensemble {}, fallback to choose bookie randomly from the cluster.",
-                     networkLoc, topology.getLeaves(networkLoc), excludeBookies, ensemble);
+                     networkLoc, snapshot.getLeaves(networkLoc), excludeBookies, ensemble);
             // randomly choose one from whole cluster, ignore the provided predicate.
-            return selectRandom(1, excludeBookies, predicate, ensemble).get(0);
+            return selectRandomInternal(null, 1, excludeBookies, predicate, ensemble, snapshot).get(0);
         }
     }
 
@@ -603,9 +637,21 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                                                    Ensemble<BookieNode> ensemble,
                                                    boolean fallbackToRandom)
             throws BKNotEnoughBookiesException {
+        return selectFromNetworkLocation(networkLoc, excludeRacks, excludeBookies, predicate, ensemble,
+                fallbackToRandom, topologySnapshot);
+    }
+
+    BookieNode selectFromNetworkLocation(String networkLoc,
+                                         Set<String> excludeRacks,
+                                         Set<Node> excludeBookies,
+                                         Predicate<BookieNode> predicate,
+                                         Ensemble<BookieNode> ensemble,
+                                         boolean fallbackToRandom,
+                                         TopologySnapshot snapshot)
+            throws BKNotEnoughBookiesException {
         // first attempt to select one from local rack
         try {
-            return selectRandomFromRack(networkLoc, excludeBookies, predicate, ensemble);
+            return selectRandomFromRack(networkLoc, excludeBookies, predicate, ensemble, snapshot);
         } catch (BKNotEnoughBookiesException e) {
             /*
              * there is no enough bookie from local rack, select bookies from
@@ -615,8 +661,9 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             LOG.warn("Failed to choose a bookie node from network location {}, "
                     + "the bookies in the network location are {}, excluded bookies {}, "
                     + "current ensemble {}, fallback to choose bookie randomly from the cluster.",
-                networkLoc, topology.getLeaves(networkLoc), excludeBookies, ensemble);
-            return selectFromNetworkLocation(excludeRacks, excludeBookies, predicate, ensemble, fallbackToRandom);
+                networkLoc, snapshot.getLeaves(networkLoc), excludeBookies, ensemble);
+            return selectFromNetworkLocation(excludeRacks, excludeBookies, predicate, ensemble, fallbackToRandom,
+                    snapshot);
         }
     }
 
@@ -633,8 +680,19 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                                                    Ensemble<BookieNode> ensemble,
                                                    boolean fallbackToRandom)
             throws BKNotEnoughBookiesException {
+        return selectFromNetworkLocation(excludeRacks, excludeBookies, predicate, ensemble, fallbackToRandom,
+                topologySnapshot);
+    }
 
-        List<BookieNode> knownNodes = new ArrayList<>(knownBookies.values());
+    BookieNode selectFromNetworkLocation(Set<String> excludeRacks,
+                                         Set<Node> excludeBookies,
+                                         Predicate<BookieNode> predicate,
+                                         Ensemble<BookieNode> ensemble,
+                                         boolean fallbackToRandom,
+                                         TopologySnapshot snapshot)
+            throws BKNotEnoughBookiesException {
+
+        List<BookieNode> knownNodes = snapshot.getKnownBookies();
         Set<Node> fullExclusionBookiesList = new HashSet<Node>(excludeBookies);
         for (BookieNode knownNode : knownNodes) {
             if (excludeRacks.contains(knownNode.getNetworkLocation())) {
@@ -643,7 +701,8 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         }
 
         try {
-            return selectRandomInternal(knownNodes, 1, fullExclusionBookiesList, predicate, ensemble).get(0);
+            return selectRandomInternal(knownNodes, 1, fullExclusionBookiesList, predicate, ensemble, snapshot)
+                    .get(0);
         } catch (BKNotEnoughBookiesException e) {
             if (!fallbackToRandom) {
                 LOG.error(
@@ -656,11 +715,12 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             LOG.warn("Failed to choose a bookie: excluded {}, fallback to choose bookie randomly from the cluster.",
                     excludeBookies);
             // randomly choose one from whole cluster
-            return selectRandom(1, excludeBookies, predicate, ensemble).get(0);
+            return selectRandomInternal(null, 1, excludeBookies, predicate, ensemble, snapshot).get(0);
         }
     }
 
-    private WeightedRandomSelection<BookieNode> prepareForWeightedSelection(List<Node> leaves) {
+    private WeightedRandomSelection<BookieNode> prepareForWeightedSelection(List<Node> leaves,
+                                                                           TopologySnapshot snapshot) {
         // create a map of bookieNode->freeDiskSpace for this rack. The assumption is that
         // the number of nodes in a rack is of the order of 40, so it shouldn't be too bad
         // to build it every time during a ledger creation
@@ -670,11 +730,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                 continue;
             }
             BookieNode bookie = (BookieNode) n;
-            if (this.bookieInfoMap.containsKey(bookie)) {
-                rackMap.put(bookie, this.bookieInfoMap.get(bookie));
-            } else {
-                rackMap.put(bookie, new BookieInfo());
-            }
+            rackMap.put(bookie, snapshot.getWeight(bookie));
         }
         if (rackMap.size() == 0) {
             return null;
@@ -701,15 +757,24 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
      */
     protected BookieNode selectRandomFromRack(String netPath, Set<Node> excludeBookies, Predicate<BookieNode> predicate,
             Ensemble<BookieNode> ensemble) throws BKNotEnoughBookiesException {
+        return selectRandomFromRack(netPath, excludeBookies, predicate, ensemble, topologySnapshot);
+    }
+
+    private BookieNode selectRandomFromRack(String netPath, Set<Node> excludeBookies,
+            Predicate<BookieNode> predicate, Ensemble<BookieNode> ensemble, TopologySnapshot snapshot)
+            throws BKNotEnoughBookiesException {
         WeightedRandomSelection<BookieNode> wRSelection = null;
-        List<Node> leaves = new ArrayList<Node>(topology.getLeaves(netPath));
+        List<Node> leaves = snapshot.getFreeLeaves(netPath);
         if (!this.isWeighted) {
             Collections.shuffle(leaves);
         } else {
             if (CollectionUtils.subtract(leaves, excludeBookies).size() < 1) {
                 throw new BKNotEnoughBookiesException();
             }
-            wRSelection = prepareForWeightedSelection(leaves);
+            wRSelection = snapshot.getWeightedSelection(netPath);
+            if (wRSelection == null) {
+                wRSelection = prepareForWeightedSelection(leaves, snapshot);
+            }
             if (wRSelection == null) {
                 throw new BKNotEnoughBookiesException();
             }
@@ -776,11 +841,21 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                                                     Predicate<BookieNode> predicate,
                                                     Ensemble<BookieNode> ensemble)
         throws BKNotEnoughBookiesException {
+        return selectRandomInternal(bookiesToSelectFrom, numBookies, excludeBookies, predicate, ensemble,
+                topologySnapshot);
+    }
+
+    private List<BookieNode> selectRandomInternal(List<BookieNode> bookiesToSelectFrom,
+                                                  int numBookies,
+                                                  Set<Node> excludeBookies,
+                                                  Predicate<BookieNode> predicate,
+                                                  Ensemble<BookieNode> ensemble,
+                                                  TopologySnapshot snapshot)
+        throws BKNotEnoughBookiesException {
         WeightedRandomSelection<BookieNode> wRSelection = null;
         if (bookiesToSelectFrom == null) {
             // If the list is null, we need to select from the entire knownBookies set
-            wRSelection = this.weightedSelection;
-            bookiesToSelectFrom = new ArrayList<BookieNode>(knownBookies.values());
+            bookiesToSelectFrom = snapshot.getKnownBookies();
         }
         if (isWeighted) {
             if (CollectionUtils.subtract(bookiesToSelectFrom, excludeBookies).size() < numBookies) {
@@ -795,11 +870,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                 if (excludeBookies.contains(n)) {
                     continue;
                 }
-                if (this.bookieInfoMap.containsKey(n)) {
-                    rackMap.put(n, this.bookieInfoMap.get(n));
-                } else {
-                    rackMap.put(n, new BookieInfo());
-                }
+                rackMap.put(n, snapshot.getWeight(n));
             }
             wRSelection.updateMap(rackMap);
         } else {
@@ -1086,7 +1157,6 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         return writeSet;
     }
 
-    // this method should be called in readlock scope of 'rwlock'
     @Override
     public PlacementPolicyAdherence isEnsembleAdheringToPlacementPolicy(List<BookieId> ensembleList,
             int writeQuorumSize, int ackQuorumSize) {
@@ -1095,6 +1165,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         }
         int ensembleSize = ensembleList.size();
         int minNumRacksPerWriteQuorumForThisEnsemble = Math.min(writeQuorumSize, minNumRacksPerWriteQuorum);
+        TopologySnapshot snapshot = topologySnapshot;
         HashSet<String> racksInQuorum = new HashSet<String>();
         BookieId bookie;
         for (int i = 0; i < ensembleList.size(); i++) {
@@ -1102,8 +1173,9 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             for (int j = 0; j < writeQuorumSize; j++) {
                 bookie = ensembleList.get((i + j) % ensembleSize);
                 try {
-                    if (knownBookies.containsKey(bookie)) {
-                        racksInQuorum.add(knownBookies.get(bookie).getNetworkLocation());
+                    BookieNode node = snapshot.getBookie(bookie);
+                    if (node != null) {
+                        racksInQuorum.add(node.getNetworkLocation());
                     } else if (LOG.isDebugEnabled()) {
                         LOG.debug("bookie {} is not in the list of knownBookies", bookie);
                     }
@@ -1184,10 +1256,11 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             }
             PlacementResult<List<BookieId>> placementResult = PlacementResult.of(Collections.emptyList(),
                     PlacementPolicyAdherence.FAIL);
+            TopologySnapshot snapshot = topologySnapshot;
             int minDiffer = Integer.MAX_VALUE;
             for (int i = 0; i < currentEnsemble.size(); i++) {
                 PlacementResult<List<BookieId>> result = doReplaceToAdherePlacementPolicy(ensembleSize,
-                        writeQuorumSize, ackQuorumSize, excludeBookies, currentEnsemble, i);
+                        writeQuorumSize, ackQuorumSize, excludeBookies, currentEnsemble, i, snapshot);
                 if (PlacementPolicyAdherence.FAIL == result.getAdheringToPolicy()) {
                     continue;
                 }
@@ -1212,11 +1285,12 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             int ackQuorumSize,
             Set<BookieId> excludeBookies,
             List<BookieId> currentEnsemble,
-            int startIndex) {
+            int startIndex,
+            TopologySnapshot snapshot) {
         final List<BookieNode> provisionalEnsembleNodes = currentEnsemble.stream()
                 .map(this::convertBookieToNode).collect(Collectors.toList());
         final Set<Node> excludeNodes = convertBookiesToNodes(
-                addDefaultRackBookiesIfMinNumRacksIsEnforced(excludeBookies));
+                addDefaultRackBookiesIfMinNumRacksIsEnforced(excludeBookies, snapshot));
         int minNumRacksPerWriteQuorumForThisEnsemble = Math.min(writeQuorumSize, minNumRacksPerWriteQuorum);
         final RRTopologyAwareCoverageEnsemble ensemble =
                 new RRTopologyAwareCoverageEnsemble(
@@ -1250,7 +1324,8 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             try {
                 prevNode = replaceToAdherePlacementPolicyInternal(
                         curRack, excludeNodes, ensemble, ensemble,
-                        provisionalEnsembleNodes, index, ensembleSize, minNumRacksPerWriteQuorumForThisEnsemble);
+                        provisionalEnsembleNodes, index, ensembleSize, minNumRacksPerWriteQuorumForThisEnsemble,
+                        snapshot);
                 // got a good candidate
                 if (ensemble.addNode(prevNode)) {
                     // add the candidate to exclude set
@@ -1293,7 +1368,8 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     private BookieNode replaceToAdherePlacementPolicyInternal(
             String netPath, Set<Node> excludeBookies, Predicate<BookieNode> predicate,
             Ensemble<BookieNode> ensemble, List<BookieNode> provisionalEnsembleNodes, int ensembleIndex,
-            int ensembleSize, int minNumRacksPerWriteQuorumForThisEnsemble) throws BKNotEnoughBookiesException {
+            int ensembleSize, int minNumRacksPerWriteQuorumForThisEnsemble, TopologySnapshot snapshot)
+            throws BKNotEnoughBookiesException {
         final BookieNode currentNode = provisionalEnsembleNodes.get(ensembleIndex);
         // if the current bookie could be applied to the ensemble, apply it to minify the number of bookies replaced
         if (!excludeBookies.contains(currentNode) && predicate.apply(currentNode, ensemble)) {
@@ -1325,14 +1401,14 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         for (Pair<String, List<BookieNode>> condition : conditionList) {
             WeightedRandomSelection<BookieNode> wRSelection = null;
 
-            final List<Node> leaves = new ArrayList<>(topology.getLeaves(condition.getLeft()));
+            final List<Node> leaves = snapshot.getFreeLeaves(condition.getLeft());
             if (!isWeighted) {
                 Collections.shuffle(leaves);
             } else {
                 if (CollectionUtils.subtract(leaves, excludeBookies).size() < 1) {
                     throw new BKNotEnoughBookiesException();
                 }
-                wRSelection = prepareForWeightedSelection(leaves);
+                wRSelection = prepareForWeightedSelection(leaves, snapshot);
                 if (wRSelection == null) {
                     throw new BKNotEnoughBookiesException();
                 }
@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.NodeBase;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads the recovery reads of the replicators across the bookies that hold a copy of the data being recovered.
+ *
+ * <p>The scheduler keeps track of the number of fragments that are being recovered from each source bookie.
+ * A fragment is admitted only when all its source bookies are below {@code maxOutstandingPerBookie}, so that the
+ * ledgers replicated concurrently do not all pile up on the same surviving bookies. The recovery bandwidth taken
+ * from each source bookie can also be capped, to protect production traffic. The load of the source bookies is
+ * tracked per process, so the limits apply to all the replicators of an autorecovery daemon together.
+ *
+ * <p>The scheduler never blocks: fragments waiting for capacity are admitted, in order, when the fragments
+ * reading from the same bookies are released, and the work waiting for bandwidth is scheduled once the bandwidth
+ * is available.
+ *
+ * <p>When the replicator can choose the bookie to read from, the sources are ordered by network distance from
+ * the bookies receiving the new replicas, as known by the {@link TopologyAwareEnsemblePlacementPolicy}, and by
+ * current load.
+ */
+class RecoverySourceScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RecoverySourceScheduler.class);
+
+    private static final SourceLoads PROCESS_SOURCE_LOADS = new SourceLoads();
+
+    private final EnsemblePlacementPolicy placementPolicy;
+    private final int maxOutstandingPerBookie;
+    private final long maxBytesPerSecondPerBookie;
+    private final OpStatsLogger admissionWaitStats;
+    private final ScheduledExecutorService scheduler;
+    private final OrderedExecutor executor;
+    private final SourceLoads sourceLoads;
+
+    private final AtomicInteger totalOutstanding = new AtomicInteger();
+
+    private static class SourceLoad {
+        int outstanding = 0;
+        // time at which the bandwidth taken so far from the bookie is paid off
+        long bandwidthFreeTimeNanos = 0;
+    }
+
+    /**
+     * The load of the source bookies, shared by the schedulers of a process.
+     */
+    static class SourceLoads {
+        private final Map<BookieId, SourceLoad> loads = new HashMap<>();
+        private final Deque<PendingReservation> pendingReservations = new ArrayDeque<>();
+
+        private synchronized int getOutstanding(BookieId bookie) {
+            SourceLoad load = loads.get(bookie);
+            return load == null ? 0 : load.outstanding;
+        }
+
+        private synchronized long reserveBandwidth(BookieId bookie, long bytes, long bytesPerSecond) {
+            SourceLoad load = loads.computeIfAbsent(bookie, b -> new SourceLoad());
+            long now = MathUtils.nowInNano();
+            long start = Math.max(now, load.bandwidthFreeTimeNanos);
+            load.bandwidthFreeTimeNanos = start + (long) (bytes * (double) TimeUnit.SECONDS.toNanos(1)
+                    / bytesPerSecond);
+            return start - now;
+        }
+
+        /**
+         * Reserve the sources if they all have capacity, or queue the reservation otherwise.
+         *
+         * @return true if the reservation is admitted
+         */
+        private synchronized boolean reserveOrQueue(PendingReservation reservation) {
+            if (reservation.tryAdmit()) {
+                return true;
+            }
+            pendingReservations.add(reservation);
+            return false;
+        }
+
+        /**
+         * Release the sources of a reservation.
+         *
+         * @return the queued reservations admitted thanks to the released capacity
+         */
+        private synchronized List<PendingReservation> release(List<BookieId> sources) {
+            for (BookieId source : sources) {
+                SourceLoad load = loads.get(source);
+                load.outstanding--;
+                if (load.outstanding == 0 && load.bandwidthFreeTimeNanos <= MathUtils.nowInNano()) {
+                    loads.remove(source);
+                }
+            }
+            List<PendingReservation> admitted = new ArrayList<>();
+            Iterator<PendingReservation> iterator = pendingReservations.iterator();
+            while (iterator.hasNext()) {
+                PendingReservation pending = iterator.next();
+                if (pending.future.isDone()) {
+                    // cancelled while waiting
+                    iterator.remove();
+                } else if (pending.tryAdmit()) {
+                    iterator.remove();
+                    admitted.add(pending);
+                }
+            }
+            return admitted;
+        }
+
+        private boolean isSaturated(BookieId bookie, int maxOutstanding) {
+            return maxOutstanding > 0 && getOutstanding(bookie) >= maxOutstanding;
+        }
+    }
+
+    private class PendingReservation {
+        private final List<BookieId> sources;
+        private final CompletableFuture<Reservation> future = new CompletableFuture<>();
+        private final long startTime = MathUtils.nowInNano();
+
+        private PendingReservation(List<BookieId> sources) {
+            this.sources = sources;
+        }
+
+        // called with the lock of the source loads held
+        private boolean tryAdmit() {
+            for (BookieId source : sources) {
+                if (sourceLoads.isSaturated(source, maxOutstandingPerBookie)) {
+                    return false;
+                }
+            }
+            for (BookieId source : sources) {
+                sourceLoads.loads.computeIfAbsent(source, b -> new SourceLoad()).outstanding++;
+            }
+            totalOutstanding.addAndGet(sources.size());
+            return true;
+        }
+
+        private void complete() {
+            admissionWaitStats.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            Reservation reservation = new Reservation(sources);
+            if (!future.complete(reservation)) {
+                // the reservation was cancelled while it was being admitted
+                reservation.close();
+            }
+        }
+    }
+
+    /**
+     * Sources reserved for the recovery of a fragment, released once the fragment is recovered.
+     */
+    class Reservation implements AutoCloseable {
+        private final List<BookieId> sources;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Reservation(List<BookieId> sources) {
+            this.sources = sources;
+        }
+
+        @Override
+        public void close() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            totalOutstanding.addAndGet(-sources.size());
+            for (PendingReservation admitted : sourceLoads.release(sources)) {
+                admitted.complete();
+            }
+        }
+    }
+
+    RecoverySourceScheduler(EnsemblePlacementPolicy placementPolicy, int maxOutstandingPerBookie,
+                            long maxBytesPerSecondPerBookie, OpStatsLogger admissionWaitStats,
+                            ScheduledExecutorService scheduler, OrderedExecutor executor) {
+        this(placementPolicy, maxOutstandingPerBookie, maxBytesPerSecondPerBookie, admissionWaitStats,
+                scheduler, executor, PROCESS_SOURCE_LOADS);
+    }
+
+    RecoverySourceScheduler(EnsemblePlacementPolicy placementPolicy, int maxOutstandingPerBookie,
+                            long maxBytesPerSecondPerBookie, OpStatsLogger admissionWaitStats,
+                            ScheduledExecutorService scheduler, OrderedExecutor executor,
+                            SourceLoads sourceLoads) {
+        this.placementPolicy = placementPolicy;
+        this.maxOutstandingPerBookie = maxOutstandingPerBookie;
+        this.maxBytesPerSecondPerBookie = maxBytesPerSecondPerBookie;
+        this.admissionWaitStats = admissionWaitStats;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.sourceLoads = sourceLoads;
+    }
+
+    /**
+     * @return the number of source bookies reserved through this scheduler
+     */
+    int getTotalOutstanding() {
+        return totalOutstanding.get();
+    }
+
+    int getOutstanding(BookieId bookie) {
+        return sourceLoads.getOutstanding(bookie);
+    }
+
+    private boolean isSaturated(BookieId bookie) {
+        return sourceLoads.isSaturated(bookie, maxOutstandingPerBookie);
+    }
+
+    /**
+     * Reserve room for one more fragment recovery on every given source bookie. The returned future completes
+     * once all of them have room, which may be on the thread releasing a previous reservation. The reservation
+     * is given up if the future is cancelled before it completes.
+     */
+    CompletableFuture<Reservation> reserve(Collection<BookieId> sources) {
+        PendingReservation pending = new PendingReservation(new ArrayList<>(sources));
+        if (sourceLoads.reserveOrQueue(pending)) {
+            pending.complete();
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("Waiting for recovery capacity on source bookies {}", sources);
+        }
+        return pending.future;
+    }
+
+    /**
+     * Take the given number of bytes from the recovery bandwidth of the source bookies, split evenly among them,
+     * and run the task once the bandwidth is available. The task runs on the caller thread if the bandwidth is
+     * available right away, and is handed to the executor, ordered by ledger, otherwise.
+     */
+    void acquireBandwidth(Collection<BookieId> sources, long bytes, long ledgerId, Runnable task) {
+        if (maxBytesPerSecondPerBookie <= 0 || sources.isEmpty() || bytes <= 0) {
+            task.run();
+            return;
+        }
+        long share = Math.max(1, bytes / sources.size());
+        long delayNanos = 0;
+        for (BookieId source : sources) {
+            delayNanos = Math.max(delayNanos,
+                    sourceLoads.reserveBandwidth(source, share, maxBytesPerSecondPerBookie));
+        }
+        if (delayNanos <= 0) {
+            task.run();
+        } else {
+            scheduler.schedule(() -> executor.executeOrdered(ledgerId, task), delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Order the candidate source bookies, preferring the bookies that are not saturated, then the ones closer
+     * to the bookies receiving the new replicas, then the least loaded ones.
+     */
+    List<BookieId> orderSources(Collection<BookieId> candidates, Collection<BookieId> targets) {
+        List<String> targetLocations = new ArrayList<>(targets.size());
+        for (BookieId target : targets) {
+            targetLocations.add(getNetworkLocation(target));
+        }
+
+        List<BookieId> ordered = new ArrayList<>(candidates);
+        Map<BookieId, Integer> distances = new HashMap<>();
+        for (BookieId candidate : ordered) {
+            String location = getNetworkLocation(candidate);
+            int distance = Integer.MAX_VALUE;
+            for (String targetLocation : targetLocations) {
+                distance = Math.min(distance, networkDistance(location, targetLocation));
+            }
+            distances.put(candidate, distance);
+        }
+
+        ordered.sort(Comparator.<BookieId>comparingInt(b -> isSaturated(b) ? 1 : 0)
+                .thenComparingInt(distances::get)
+                .thenComparingInt(this::getOutstanding));
+        return ordered;
+    }
+
+    private String getNetworkLocation(BookieId bookie) {
+        if (placementPolicy instanceof TopologyAwareEnsemblePlacementPolicy) {
+            return ((TopologyAwareEnsemblePlacementPolicy) placementPolicy).getNetworkLocation(bookie);
+        }
+        return NodeBase.ROOT;
+    }
+
+    /**
+     * Distance between two network locations, as the number of path components that are not shared.
+     * The distance between two bookies of the same rack is 0, between two racks of the same region or zone is 1.
+     */
+    static int networkDistance(String location1, String location2) {
+        String[] path1 = StringUtils.split(location1, NodeBase.PATH_SEPARATOR_STR);
+        String[] path2 = StringUtils.split(location2, NodeBase.PATH_SEPARATOR_STR);
+        int common = 0;
+        while (common < path1.length && common < path2.length && path1[common].equals(path2[common])) {
+            common++;
+        }
+        return Math.max(path1.length, path2.length) - common;
+    }
+}
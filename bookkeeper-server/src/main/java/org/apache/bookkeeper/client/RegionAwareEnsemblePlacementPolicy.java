@@ -166,6 +166,9 @@ public class RegionAwareEnsemblePlacementPolicy extends RackawareEnsemblePlaceme
             }
             regionEntry.getValue().handleBookiesThatJoined(regionSet);
         }
+        if (!joinedBookies.isEmpty()) {
+            publishTopologySnapshot();
+        }
     }
 
     @Override
@@ -215,6 +218,7 @@ public class RegionAwareEnsemblePlacementPolicy extends RackawareEnsemblePlaceme
                     LOG.error("Failed to update bookie rack info: {} ", bookieAddress, e);
                 }
             });
+            publishTopologySnapshot();
         } finally {
             rwLock.writeLock().unlock();
         }
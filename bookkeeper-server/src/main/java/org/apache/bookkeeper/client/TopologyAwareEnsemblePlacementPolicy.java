@@ -70,6 +70,8 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
     protected WeightedRandomSelection<BookieNode> weightedSelection;
     // for now, we just maintain the writable bookies' topology
     protected NetworkTopology topology;
+    // lock-free view of the writable bookies, republished on every change under the write lock of 'rwLock'
+    protected volatile TopologySnapshot topologySnapshot = TopologySnapshot.EMPTY;
     protected DNSToSwitchMapping dnsResolver;
     protected BookieAddressResolver bookieAddressResolver;
     @StatsDoc(
@@ -592,6 +594,11 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
         public void reloadCachedMappings() {
             resolver.reloadCachedMappings();
         }
+
+        @Override
+        public void reloadCachedMappings(List<String> names) {
+            resolver.reloadCachedMappings(names);
+        }
     }
 
     static Set<String> getNetworkLocations(Set<Node> bookieNodes) {
@@ -706,6 +713,9 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
                 // exception anyways will be caught/logged/suppressed in the ZK's event handler
             }
         }
+        if (!leftBookies.isEmpty()) {
+            publishTopologySnapshot();
+        }
     }
 
     /*
@@ -738,6 +748,9 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
                 // exception anyways will be caught/logged/suppressed in the ZK's event handler
             }
         }
+        if (!joinedBookies.isEmpty()) {
+            publishTopologySnapshot();
+        }
     }
 
     @Override
@@ -761,11 +774,40 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
                     LOG.error("Failed to update bookie rack info: {} ", bookieAddress, e);
                 }
             });
+            publishTopologySnapshot();
         } finally {
             rwLock.writeLock().unlock();
         }
     }
 
+    /**
+     * Refresh the rack of the known bookies running on the given hosts, once their network location was
+     * resolved again.
+     *
+     * @param names the hostnames or IP addresses, as passed to the DNS resolver
+     */
+    protected void onNetworkLocationsChanged(Set<String> names) {
+        List<BookieId> bookies = new ArrayList<>();
+        rwLock.readLock().lock();
+        try {
+            for (BookieId bookieId : knownBookies.keySet()) {
+                try {
+                    BookieSocketAddress addr = bookieAddressResolver.resolve(bookieId);
+                    if (names.contains(NetUtils.getResolvedName(dnsResolver, addr))) {
+                        bookies.add(bookieId);
+                    }
+                } catch (BookieAddressResolver.BookieIdNotResolvedException err) {
+                    // keep its current rack
+                }
+            }
+        } finally {
+            rwLock.readLock().unlock();
+        }
+        if (!bookies.isEmpty()) {
+            onBookieRackChange(bookies);
+        }
+    }
+
     public static int differBetweenBookies(List<BookieId> bookiesA, List<BookieId> bookiesB) {
         if (CollectionUtils.isEmpty(bookiesA) || CollectionUtils.isEmpty(bookiesB)) {
             return Integer.MAX_VALUE;
@@ -802,6 +844,51 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
             }
             this.bookieInfoMap = map;
             this.weightedSelection.updateMap(this.bookieInfoMap);
+            publishTopologySnapshot();
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the network location of a bookie, as resolved by this placement policy.
+     *
+     * @param addr bookie id
+     * @return network location of the bookie
+     */
+    public String getNetworkLocation(BookieId addr) {
+        rwLock.readLock().lock();
+        try {
+            return convertBookieToNode(addr).getNetworkLocation();
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    /*
+     * this method should be called in writelock scope of 'rwLock'
+     */
+    protected void publishTopologySnapshot() {
+        if (topology != null) {
+            topologySnapshot = newTopologySnapshot();
+        }
+    }
+
+    /**
+     * Build a snapshot of the current writable bookies, called in writelock scope of 'rwLock'.
+     */
+    protected TopologySnapshot newTopologySnapshot() {
+        return TopologySnapshot.build(knownBookies, topology, isWeighted ? bookieInfoMap : null, -1);
+    }
+
+    /**
+     * Republish the snapshot of the writable bookies after a change of the topology that did not go through
+     * this placement policy, such as the delayed removal of a bookie from a stabilized topology.
+     */
+    protected void republishTopologySnapshot() {
+        rwLock.writeLock().lock();
+        try {
+            publishTopologySnapshot();
         } finally {
             rwLock.writeLock().unlock();
         }
@@ -839,7 +926,7 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
     }
 
     protected BookieNode convertBookieToNode(BookieId addr) {
-        BookieNode bn = knownBookies.get(addr);
+        BookieNode bn = topologySnapshot.getBookie(addr);
         if (null == bn) {
             bn = createBookieNode(addr);
         }
@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.bookkeeper.client.BookieInfoReader.BookieInfo;
+import org.apache.bookkeeper.client.WeightedRandomSelection.WeightedObject;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieNode;
+import org.apache.bookkeeper.net.NetworkTopology;
+import org.apache.bookkeeper.net.NetworkTopologyImpl;
+import org.apache.bookkeeper.net.Node;
+import org.apache.bookkeeper.net.NodeBase;
+
+/**
+ * Immutable view of the writable bookies known by a {@link TopologyAwareEnsemblePlacementPolicy}.
+ *
+ * <p>A new snapshot is built, under the write lock of the placement policy, every time the cluster membership,
+ * the racks or the bookie weights change, and published through a volatile field. Ensemble placement reads the
+ * latest snapshot without taking any lock, so that ledger creations do not contend with membership updates.
+ *
+ * <p>The bookies are indexed by every network location of the topology: each rack, and each of its ancestors
+ * (e.g. regions), maps to the array of the bookies under it. Each network location also keeps the free list of
+ * its bookies that still have free disk space, i.e. whose weight is either not known yet or positive, so that
+ * placement skips the full bookies of a rack as long as the rack has other candidates. For weighted placement,
+ * the weighted selection among the candidates of each network location is also precomputed.
+ */
+final class TopologySnapshot {
+
+    // declared before EMPTY, which is built with it
+    private static final BookieNode[] NO_BOOKIES = new BookieNode[0];
+
+    static final TopologySnapshot EMPTY = new TopologySnapshot(Collections.emptyMap(), Collections.emptyList(), 0,
+            Collections.emptyMap(), -1);
+
+    private final Map<BookieId, BookieNode> bookies;
+    private final BookieNode[] knownBookies;
+    private final BookieNode[] allBookies;
+    private final BookieNode[] freeBookies;
+    private final int numOfRacks;
+    private final Map<String, BookieNode[]> bookiesByLocation;
+    private final Map<String, BookieNode[]> freeBookiesByLocation;
+    private final Map<BookieNode, WeightedObject> weights;
+    private final Map<String, WeightedRandomSelection<BookieNode>> weightedSelectionsByLocation;
+
+    private TopologySnapshot(Map<BookieId, BookieNode> bookies, Collection<BookieNode> leaves, int numOfRacks,
+                             Map<BookieNode, WeightedObject> weights, int maxWeightMultiple) {
+        this.bookies = bookies;
+        this.knownBookies = bookies.values().toArray(NO_BOOKIES);
+        this.allBookies = leaves.toArray(NO_BOOKIES);
+        this.numOfRacks = numOfRacks;
+        this.weights = weights;
+        this.freeBookies = freeOrAll(allBookies);
+
+        Map<String, List<BookieNode>> byLocation = new HashMap<>();
+        for (BookieNode bookie : allBookies) {
+            // index the bookie under its rack and all the ancestors of its rack
+            String location = NodeBase.normalize(bookie.getNetworkLocation());
+            while (!location.isEmpty()) {
+                byLocation.computeIfAbsent(location, l -> new ArrayList<>()).add(bookie);
+                int idx = location.lastIndexOf(NodeBase.PATH_SEPARATOR);
+                location = idx <= 0 ? NodeBase.ROOT : location.substring(0, idx);
+            }
+        }
+        Map<String, BookieNode[]> bookiesByLocation = new HashMap<>(byLocation.size());
+        Map<String, BookieNode[]> freeBookiesByLocation = new HashMap<>(byLocation.size());
+        Map<String, WeightedRandomSelection<BookieNode>> selections = new HashMap<>();
+        for (Map.Entry<String, List<BookieNode>> e : byLocation.entrySet()) {
+            BookieNode[] locationBookies = e.getValue().toArray(NO_BOOKIES);
+            BookieNode[] candidates = freeOrAll(locationBookies);
+            bookiesByLocation.put(e.getKey(), locationBookies);
+            freeBookiesByLocation.put(e.getKey(), candidates);
+            if (maxWeightMultiple > 0) {
+                selections.put(e.getKey(), newWeightedSelection(Arrays.asList(candidates), maxWeightMultiple));
+            }
+        }
+        this.bookiesByLocation = bookiesByLocation;
+        this.freeBookiesByLocation = freeBookiesByLocation;
+        this.weightedSelectionsByLocation = selections;
+    }
+
+    /**
+     * Build a snapshot of the given bookies.
+     *
+     * <p>The bookies available for placement are the leaves of the topology, which might still contain bookies
+     * that left the cluster recently when the topology is stabilized.
+     *
+     * @param knownBookies the writable bookies
+     * @param topology the network topology of the writable bookies
+     * @param weights the weights of the bookies, null if the placement is not weighted
+     * @param maxWeightMultiple the max weight multiple of the precomputed weighted selections,
+     *                          no weighted selection is precomputed if it is not positive
+     */
+    static TopologySnapshot build(Map<BookieId, BookieNode> knownBookies, NetworkTopology topology,
+                                  Map<BookieNode, WeightedObject> weights, int maxWeightMultiple) {
+        List<BookieNode> leaves = new ArrayList<>();
+        for (Node node : topology.getLeaves(NodeBase.ROOT)) {
+            if (node instanceof BookieNode) {
+                leaves.add((BookieNode) node);
+            }
+        }
+        return new TopologySnapshot(Collections.unmodifiableMap(new HashMap<>(knownBookies)), leaves,
+                topology.getNumOfRacks(),
+                weights == null ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(weights)),
+                weights == null ? -1 : maxWeightMultiple);
+    }
+
+    /**
+     * Get the bookies with free disk space among the given bookies, or all of them if none has free disk space.
+     */
+    private BookieNode[] freeOrAll(BookieNode[] candidates) {
+        List<BookieNode> free = new ArrayList<>(candidates.length);
+        for (BookieNode bookie : candidates) {
+            if (isFree(bookie)) {
+                free.add(bookie);
+            }
+        }
+        return free.isEmpty() || free.size() == candidates.length ? candidates : free.toArray(NO_BOOKIES);
+    }
+
+    private boolean isFree(BookieNode bookie) {
+        WeightedObject weight = weights.get(bookie);
+        return weight == null || weight.getWeight() > 0;
+    }
+
+    private WeightedRandomSelection<BookieNode> newWeightedSelection(Collection<BookieNode> nodes,
+                                                                     int maxWeightMultiple) {
+        Map<BookieNode, WeightedObject> map = new HashMap<>(nodes.size());
+        for (BookieNode node : nodes) {
+            map.put(node, getWeight(node));
+        }
+        WeightedRandomSelection<BookieNode> selection = new WeightedRandomSelectionImpl<>(maxWeightMultiple);
+        selection.updateMap(map);
+        return selection;
+    }
+
+    BookieNode getBookie(BookieId bookieId) {
+        return bookies.get(bookieId);
+    }
+
+    boolean containsBookie(BookieId bookieId) {
+        return bookies.containsKey(bookieId);
+    }
+
+    /**
+     * @return a new mutable list of the known writable bookies
+     */
+    List<BookieNode> getKnownBookies() {
+        return new ArrayList<>(Arrays.asList(knownBookies));
+    }
+
+    int getNumOfRacks() {
+        return numOfRacks;
+    }
+
+    /**
+     * Get the weight of a bookie, a default {@link BookieInfo} if its weight is not known.
+     */
+    WeightedObject getWeight(BookieNode bookie) {
+        WeightedObject weight = weights.get(bookie);
+        return weight == null ? new BookieInfo() : weight;
+    }
+
+    /**
+     * Get the precomputed weighted selection among the bookies under the given network location.
+     *
+     * @return the weighted selection, or null if there is none for this location
+     */
+    WeightedRandomSelection<BookieNode> getWeightedSelection(String scope) {
+        if (scope.startsWith(NetworkTopologyImpl.INVERSE)) {
+            return null;
+        }
+        return weightedSelectionsByLocation.get(NodeBase.normalize(scope));
+    }
+
+    /**
+     * Get the bookies under the given scope, with the same semantic as
+     * {@link org.apache.bookkeeper.net.NetworkTopology#getLeaves(String)}: a scope starting with
+     * {@code ~} selects all the bookies but the ones under the comma separated network locations that follow.
+     *
+     * @return a new mutable list of the bookies under the scope
+     */
+    List<Node> getLeaves(String scope) {
+        if (scope.startsWith(NetworkTopologyImpl.INVERSE)) {
+            Set<Node> excluded = new HashSet<>();
+            for (String excludeScope : scope.substring(1).split(NetworkTopologyImpl.NODE_SEPARATOR)) {
+                excluded.addAll(Arrays.asList(getLeavesArray(excludeScope)));
+            }
+            List<Node> leaves = new ArrayList<>(allBookies.length);
+            for (BookieNode bookie : allBookies) {
+                if (!excluded.contains(bookie)) {
+                    leaves.add(bookie);
+                }
+            }
+            return leaves;
+        }
+        return new ArrayList<>(Arrays.asList(getLeavesArray(scope)));
+    }
+
+    /**
+     * Get the free list of the given scope: the bookies under the scope that have free disk space, or all the
+     * bookies under the scope if none of them has free disk space. The weighted selection of the scope, if any,
+     * selects among the same bookies.
+     *
+     * @return a new mutable list of the candidate bookies under the scope
+     * @see #getLeaves(String)
+     */
+    List<Node> getFreeLeaves(String scope) {
+        if (scope.startsWith(NetworkTopologyImpl.INVERSE)) {
+            List<Node> leaves = getLeaves(scope);
+            List<Node> free = new ArrayList<>(leaves.size());
+            for (Node node : leaves) {
+                if (isFree((BookieNode) node)) {
+                    free.add(node);
+                }
+            }
+            return free.isEmpty() ? leaves : free;
+        }
+        String location = NodeBase.normalize(scope);
+        BookieNode[] free = location.isEmpty() ? freeBookies : freeBookiesByLocation.get(location);
+        if (free == null) {
+            free = getLeavesArray(scope);
+        }
+        return new ArrayList<>(Arrays.asList(free));
+    }
+
+    private BookieNode[] getLeavesArray(String scope) {
+        String location = NodeBase.normalize(scope);
+        if (location.isEmpty()) {
+            return allBookies;
+        }
+        BookieNode[] leaves = bookiesByLocation.get(location);
+        if (leaves != null) {
+            return leaves;
+        }
+        // the scope might be the path of a single bookie
+        for (BookieNode bookie : allBookies) {
+            if (location.equals(NodeBase.getPath(bookie))) {
+                return new BookieNode[] { bookie };
+            }
+        }
+        return NO_BOOKIES;
+    }
+}
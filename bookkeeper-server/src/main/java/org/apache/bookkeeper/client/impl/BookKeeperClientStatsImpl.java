@@ -69,6 +69,11 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         help = "the number of read entries hitting DigestMismatch errors"
     )
     private final Counter readOpDmCounter;
+    @StatsDoc(
+        name = READ_OP_DIGEST_VERIFY,
+        help = "operation stats of verifying the digests of the entries of batch read responses"
+    )
+    private final OpStatsLogger readOpDigestVerifyLogger;
     @StatsDoc(
         name = READ_LAST_CONFIRMED_AND_ENTRY,
         help = "operation stats of read_last_confirmed_and_entry requests"
@@ -168,6 +173,7 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         this.recoverOpLogger = stats.getOpStatsLogger(RECOVER_OP);
         this.readOpLogger = stats.getOpStatsLogger(READ_OP);
         this.readOpDmCounter = stats.getCounter(READ_OP_DM);
+        this.readOpDigestVerifyLogger = stats.getOpStatsLogger(READ_OP_DIGEST_VERIFY);
         this.readLacAndEntryOpLogger = stats.getOpStatsLogger(READ_LAST_CONFIRMED_AND_ENTRY);
         this.readLacAndEntryRespLogger = stats.getOpStatsLogger(READ_LAST_CONFIRMED_AND_ENTRY_RESPONSE);
         this.addOpLogger = stats.getOpStatsLogger(ADD_OP);
@@ -249,6 +255,10 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         return readOpDmCounter;
     }
     @Override
+    public OpStatsLogger getReadOpDigestVerifyLogger() {
+        return readOpDigestVerifyLogger;
+    }
+    @Override
     public Counter getAddOpUrCounter() {
         return addOpUrCounter;
     }
@@ -84,6 +84,16 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     protected static final String METADATA_SERVICE_URI = "metadataServiceUri";
     protected static final String ZK_LEDGERS_ROOT_PATH = "zkLedgersRootPath";
     protected static final String ZK_REQUEST_RATE_LIMIT = "zkRequestRateLimit";
+    protected static final String ZK_LEDGER_METADATA_BATCH_ENABLED = "zkLedgerMetadataBatchEnabled";
+    protected static final String ZK_LEDGER_METADATA_BATCH_WINDOW_MICROS = "zkLedgerMetadataBatchWindowMicros";
+    protected static final String ZK_LEDGER_METADATA_BATCH_MAX_OPS = "zkLedgerMetadataBatchMaxOps";
+    protected static final String ZK_SUBTREE_CACHE_ENABLED = "zkSubTreeCacheEnabled";
+    protected static final String LEDGER_ID_BLOCK_SIZE = "ledgerIdBlockSize";
+    protected static final String ETCD_LEDGER_METADATA_BATCH_ENABLED = "etcdLedgerMetadataBatchEnabled";
+    protected static final String ETCD_LEDGER_METADATA_BATCH_WINDOW_MICROS = "etcdLedgerMetadataBatchWindowMicros";
+    protected static final String ETCD_LEDGER_METADATA_BATCH_MAX_OPS = "etcdLedgerMetadataBatchMaxOps";
+    protected static final String ETCD_LEDGER_LISTING_BATCH_SIZE = "etcdLedgerListingBatchSize";
+    protected static final String ETCD_LEDGER_METADATA_WATCH_MULTIPLEXED = "etcdLedgerMetadataWatchMultiplexed";
     protected static final String AVAILABLE_NODE = "available";
     protected static final String REREPLICATION_ENTRY_BATCH_SIZE = "rereplicationEntryBatchSize";
     protected static final String STORE_SYSTEMTIME_AS_LEDGER_UNDERREPLICATED_MARK_TIME =
@@ -188,6 +198,15 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     public static final String LIMIT_STATS_LOGGING = "limitStatsLogging";
 
     protected static final String REPLICATION_RATE_BY_BYTES = "replicationRateByBytes";
+    protected static final String REPLICATION_MAX_BYTES_IN_FLIGHT = "replicationMaxBytesInFlight";
+    protected static final String REPLICATION_DIRECT_COPY_ENABLED = "replicationDirectCopyEnabled";
+    protected static final String REPLICATION_DIRECT_COPY_BATCH_ENTRIES = "replicationDirectCopyBatchEntries";
+    protected static final String REPLICATION_DIRECT_COPY_TIMEOUT = "replicationDirectCopyTimeout";
+    protected static final String REPLICATION_SOURCE_SCHEDULING_ENABLED = "replicationSourceSchedulingEnabled";
+    protected static final String REPLICATION_MAX_OUTSTANDING_FRAGMENTS_PER_BOOKIE =
+            "replicationMaxOutstandingFragmentsPerBookie";
+    protected static final String REPLICATION_MAX_BYTES_PER_SECOND_PER_BOOKIE =
+            "replicationMaxBytesPerSecondPerBookie";
 
     protected AbstractConfiguration() {
         super();
@@ -467,6 +486,10 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     /**
      * Set Ledger metadata format version.
      *
+     * <p>Version 4 dictionary encodes the bookie ids of the ensembles and compresses large metadata, it can
+     * only be read by clients and bookies that support it. Existing ledgers can be migrated with
+     * {@link org.apache.bookkeeper.client.BookKeeperAdmin#migrateLedgerMetadataFormat(int)}.
+     *
      * @param metadataFormatVersion
      *          Ledger metadata format version. pass -1 to use default version
      */
@@ -577,6 +600,232 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
         setProperty(ZK_REQUEST_RATE_LIMIT, rateLimit);
     }
 
+    /**
+     * Whether the zookeeper based ledger managers batch the ledger metadata creations, updates
+     * and deletions issued concurrently into zookeeper multi operations.
+     *
+     * @return true if the ledger metadata writes are batched.
+     */
+    public boolean isZkLedgerMetadataBatchEnabled() {
+        return getBoolean(ZK_LEDGER_METADATA_BATCH_ENABLED, false);
+    }
+
+    /**
+     * Enable/Disable the batching of the ledger metadata writes into zookeeper multi operations.
+     *
+     * @param enabled
+     *          flag to enable/disable the batching of ledger metadata writes.
+     * @return configuration.
+     */
+    public T setZkLedgerMetadataBatchEnabled(boolean enabled) {
+        setProperty(ZK_LEDGER_METADATA_BATCH_ENABLED, enabled);
+        return getThis();
+    }
+
+    /**
+     * Get the time window, in microseconds, during which the ledger metadata writes are
+     * coalesced into a single zookeeper multi operation.
+     *
+     * @return the batching window in microseconds.
+     */
+    public long getZkLedgerMetadataBatchWindowMicros() {
+        return getLong(ZK_LEDGER_METADATA_BATCH_WINDOW_MICROS, 1000L);
+    }
+
+    /**
+     * Set the time window, in microseconds, during which the ledger metadata writes are
+     * coalesced into a single zookeeper multi operation.
+     *
+     * @param windowMicros
+     *          the batching window in microseconds.
+     * @return configuration.
+     */
+    public T setZkLedgerMetadataBatchWindowMicros(long windowMicros) {
+        setProperty(ZK_LEDGER_METADATA_BATCH_WINDOW_MICROS, windowMicros);
+        return getThis();
+    }
+
+    /**
+     * Get the max number of ledger metadata writes in a zookeeper multi operation. A batch is
+     * sent as soon as it is full, without waiting for the end of the batching window. A batch is
+     * also sent before its serialized size exceeds the {@code jute.maxbuffer} limit of zookeeper.
+     *
+     * @return the max number of operations in a batch.
+     */
+    public int getZkLedgerMetadataBatchMaxOps() {
+        return getInt(ZK_LEDGER_METADATA_BATCH_MAX_OPS, 100);
+    }
+
+    /**
+     * Set the max number of ledger metadata writes in a zookeeper multi operation.
+     *
+     * @param maxOps
+     *          the max number of operations in a batch.
+     * @return configuration.
+     */
+    public T setZkLedgerMetadataBatchMaxOps(int maxOps) {
+        setProperty(ZK_LEDGER_METADATA_BATCH_MAX_OPS, maxOps);
+        return getThis();
+    }
+
+    /**
+     * Whether the bookie registrations and the underreplicated ledgers are read through a children cache
+     * shared by the components using the same zookeeper client, and updated from a persistent recursive
+     * watch instead of listing the children again on every change. It requires zookeeper 3.6 or later.
+     *
+     * @return true if the zookeeper subtree cache is enabled.
+     */
+    public boolean isZkSubTreeCacheEnabled() {
+        return getBoolean(ZK_SUBTREE_CACHE_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the zookeeper subtree cache.
+     *
+     * @param enabled
+     *          whether to enable the zookeeper subtree cache.
+     * @return configuration.
+     */
+    public T setZkSubTreeCacheEnabled(boolean enabled) {
+        setProperty(ZK_SUBTREE_CACHE_ENABLED, enabled);
+        return getThis();
+    }
+
+    /**
+     * Get the number of ledger ids reserved at once by the ledger id generators. The ids of a block are
+     * reserved with a single metadata store update, and then handed out locally. 0 disables the blocks,
+     * and every ledger id is generated through the metadata store.
+     *
+     * <p>The blocks are only supported by the hierarchical ledger managers and the etcd ledger manager.
+     *
+     * @return the number of ledger ids reserved at once.
+     */
+    public int getLedgerIdBlockSize() {
+        return getInt(LEDGER_ID_BLOCK_SIZE, 0);
+    }
+
+    /**
+     * Set the number of ledger ids reserved at once by the ledger id generators.
+     *
+     * @param blockSize
+     *          the number of ledger ids reserved at once, 0 to disable the blocks.
+     * @return configuration.
+     */
+    public T setLedgerIdBlockSize(int blockSize) {
+        setProperty(LEDGER_ID_BLOCK_SIZE, blockSize);
+        return getThis();
+    }
+
+    /**
+     * Whether the etcd ledger manager batches the ledger metadata creations, updates and deletions
+     * issued concurrently into etcd transactions.
+     *
+     * @return true if the ledger metadata writes are batched.
+     */
+    public boolean isEtcdLedgerMetadataBatchEnabled() {
+        return getBoolean(ETCD_LEDGER_METADATA_BATCH_ENABLED, false);
+    }
+
+    /**
+     * Enable/Disable the batching of the ledger metadata writes into etcd transactions.
+     *
+     * @param enabled
+     *          flag to enable/disable the batching of ledger metadata writes.
+     * @return configuration.
+     */
+    public T setEtcdLedgerMetadataBatchEnabled(boolean enabled) {
+        setProperty(ETCD_LEDGER_METADATA_BATCH_ENABLED, enabled);
+        return getThis();
+    }
+
+    /**
+     * Get the time window, in microseconds, during which the ledger metadata writes are
+     * coalesced into a single etcd transaction.
+     *
+     * @return the batching window in microseconds.
+     */
+    public long getEtcdLedgerMetadataBatchWindowMicros() {
+        return getLong(ETCD_LEDGER_METADATA_BATCH_WINDOW_MICROS, 1000L);
+    }
+
+    /**
+     * Set the time window, in microseconds, during which the ledger metadata writes are
+     * coalesced into a single etcd transaction.
+     *
+     * @param windowMicros
+     *          the batching window in microseconds.
+     * @return configuration.
+     */
+    public T setEtcdLedgerMetadataBatchWindowMicros(long windowMicros) {
+        setProperty(ETCD_LEDGER_METADATA_BATCH_WINDOW_MICROS, windowMicros);
+        return getThis();
+    }
+
+    /**
+     * Get the max number of ledger metadata writes in an etcd transaction. It must not exceed the
+     * max number of operations per transaction of the etcd servers ({@code --max-txn-ops}, 128 by default).
+     *
+     * @return the max number of operations in a batch.
+     */
+    public int getEtcdLedgerMetadataBatchMaxOps() {
+        return getInt(ETCD_LEDGER_METADATA_BATCH_MAX_OPS, 128);
+    }
+
+    /**
+     * Set the max number of ledger metadata writes in an etcd transaction.
+     *
+     * @param maxOps
+     *          the max number of operations in a batch.
+     * @return configuration.
+     */
+    public T setEtcdLedgerMetadataBatchMaxOps(int maxOps) {
+        setProperty(ETCD_LEDGER_METADATA_BATCH_MAX_OPS, maxOps);
+        return getThis();
+    }
+
+    /**
+     * Get the number of ledger keys read by each ranged request when the etcd ledger manager lists the ledgers.
+     *
+     * @return the number of ledgers listed per request.
+     */
+    public int getEtcdLedgerListingBatchSize() {
+        return getInt(ETCD_LEDGER_LISTING_BATCH_SIZE, 1000);
+    }
+
+    /**
+     * Set the number of ledger keys read by each ranged request when the etcd ledger manager lists the ledgers.
+     *
+     * @param batchSize
+     *          the number of ledgers listed per request.
+     * @return configuration.
+     */
+    public T setEtcdLedgerListingBatchSize(int batchSize) {
+        setProperty(ETCD_LEDGER_LISTING_BATCH_SIZE, batchSize);
+        return getThis();
+    }
+
+    /**
+     * Whether the etcd ledger manager watches the metadata of all the ledgers with listeners through a
+     * single range watch, instead of one watch per ledger. It suits the clients watching many ledgers.
+     *
+     * @return true if the ledger metadata watches are multiplexed.
+     */
+    public boolean isEtcdLedgerMetadataWatchMultiplexed() {
+        return getBoolean(ETCD_LEDGER_METADATA_WATCH_MULTIPLEXED, false);
+    }
+
+    /**
+     * Enable/Disable the multiplexing of the ledger metadata watches onto a single etcd range watch.
+     *
+     * @param multiplexed
+     *          flag to enable/disable the multiplexing of the ledger metadata watches.
+     * @return configuration.
+     */
+    public T setEtcdLedgerMetadataWatchMultiplexed(boolean multiplexed) {
+        setProperty(ETCD_LEDGER_METADATA_WATCH_MULTIPLEXED, multiplexed);
+        return getThis();
+    }
+
     /**
      * Are z-node created with strict ACLs.
      *
@@ -1236,6 +1485,170 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
         return getThis();
     }
 
+    /**
+     * Get the max number of bytes that re-replication can have read but not yet written to the
+     * new bookies, across all the fragments being replicated concurrently.
+     * Default value is -1 which it means the bytes in flight are not bounded.
+     *
+     * @return max bytes in flight of re-replication.
+     */
+    public long getReplicationMaxBytesInFlight() {
+        return getLong(REPLICATION_MAX_BYTES_IN_FLIGHT, -1);
+    }
+
+    /**
+     * Set the max number of bytes that re-replication can have read but not yet written to the
+     * new bookies.
+     *
+     * @param maxBytesInFlight max bytes in flight of re-replication.
+     *
+     * @return ClientConfiguration
+     */
+    public T setReplicationMaxBytesInFlight(long maxBytesInFlight) {
+        this.setProperty(REPLICATION_MAX_BYTES_IN_FLIGHT, maxBytesInFlight);
+        return getThis();
+    }
+
+    /**
+     * Whether re-replication asks the new bookies to copy the fragment entries directly from
+     * the surviving replicas, instead of reading the entries in the replicator and writing
+     * them to the new bookies. Bookies that do not advertise direct copy in their bookie info
+     * are replicated to in the regular way.
+     *
+     * @return true if direct copy of ledger fragments is enabled.
+     */
+    public boolean isReplicationDirectCopyEnabled() {
+        return getBoolean(REPLICATION_DIRECT_COPY_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the direct copy of ledger fragments between bookies during re-replication.
+     *
+     * @param enabled flag to enable/disable direct copy.
+     *
+     * @return ClientConfiguration
+     */
+    public T setReplicationDirectCopyEnabled(boolean enabled) {
+        this.setProperty(REPLICATION_DIRECT_COPY_ENABLED, enabled);
+        return getThis();
+    }
+
+    /**
+     * Get the max number of entries that a bookie reads from a source bookie in a single batch
+     * when copying a ledger fragment directly.
+     *
+     * @return max number of entries per batch.
+     */
+    public int getReplicationDirectCopyBatchEntries() {
+        return getInt(REPLICATION_DIRECT_COPY_BATCH_ENTRIES, 100);
+    }
+
+    /**
+     * Set the max number of entries that a bookie reads from a source bookie in a single batch
+     * when copying a ledger fragment directly.
+     *
+     * @param batchEntries max number of entries per batch.
+     *
+     * @return ClientConfiguration
+     */
+    public T setReplicationDirectCopyBatchEntries(int batchEntries) {
+        this.setProperty(REPLICATION_DIRECT_COPY_BATCH_ENTRIES, batchEntries);
+        return getThis();
+    }
+
+    /**
+     * Get the timeout, in seconds, of a direct copy request sent to a bookie. A single request
+     * copies at most rereplicationEntryBatchSize entries, and the entries already stored on the
+     * bookie are not copied again when a timed out copy is retried.
+     *
+     * @return direct copy request timeout in seconds.
+     */
+    public int getReplicationDirectCopyTimeout() {
+        return getInt(REPLICATION_DIRECT_COPY_TIMEOUT, 120);
+    }
+
+    /**
+     * Set the timeout, in seconds, of a direct copy request sent to a bookie.
+     *
+     * @param timeout direct copy request timeout in seconds.
+     *
+     * @return ClientConfiguration
+     */
+    public T setReplicationDirectCopyTimeout(int timeout) {
+        this.setProperty(REPLICATION_DIRECT_COPY_TIMEOUT, timeout);
+        return getThis();
+    }
+
+    /**
+     * Whether re-replication schedules the fragments according to the load of the bookies they are read from.
+     * When enabled, a fragment is replicated only once all its source bookies are below
+     * {@link #getReplicationMaxOutstandingFragmentsPerBookie()}, the bandwidth taken from each source bookie is
+     * capped by {@link #getReplicationMaxBytesPerSecondPerBookie()} and, for direct copies, the sources closer
+     * to the new bookies in the network topology are preferred.
+     *
+     * @return true if recovery source scheduling is enabled.
+     */
+    public boolean isReplicationSourceSchedulingEnabled() {
+        return getBoolean(REPLICATION_SOURCE_SCHEDULING_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable recovery source scheduling.
+     *
+     * @param enabled flag to enable/disable recovery source scheduling.
+     *
+     * @return ClientConfiguration
+     */
+    public T setReplicationSourceSchedulingEnabled(boolean enabled) {
+        this.setProperty(REPLICATION_SOURCE_SCHEDULING_ENABLED, enabled);
+        return getThis();
+    }
+
+    /**
+     * Get the max number of fragments that the replicators of a process recover concurrently from the same
+     * source bookie. Default value is 2. A value less or equal to 0 means unbounded.
+     *
+     * @return max number of outstanding fragments per source bookie.
+     */
+    public int getReplicationMaxOutstandingFragmentsPerBookie() {
+        return getInt(REPLICATION_MAX_OUTSTANDING_FRAGMENTS_PER_BOOKIE, 2);
+    }
+
+    /**
+     * Set the max number of fragments that the replicators of a process recover concurrently from the same
+     * source bookie.
+     *
+     * @param maxOutstanding max number of outstanding fragments per source bookie.
+     *
+     * @return ClientConfiguration
+     */
+    public T setReplicationMaxOutstandingFragmentsPerBookie(int maxOutstanding) {
+        this.setProperty(REPLICATION_MAX_OUTSTANDING_FRAGMENTS_PER_BOOKIE, maxOutstanding);
+        return getThis();
+    }
+
+    /**
+     * Get the max number of bytes per second that the replicators of a process read from a single source bookie.
+     * Default value is -1 which means unbounded.
+     *
+     * @return max recovery bandwidth per source bookie.
+     */
+    public long getReplicationMaxBytesPerSecondPerBookie() {
+        return getLong(REPLICATION_MAX_BYTES_PER_SECOND_PER_BOOKIE, -1);
+    }
+
+    /**
+     * Set the max number of bytes per second that the replicators of a process read from a single source bookie.
+     *
+     * @param maxBytesPerSecond max recovery bandwidth per source bookie.
+     *
+     * @return ClientConfiguration
+     */
+    public T setReplicationMaxBytesPerSecondPerBookie(long maxBytesPerSecond) {
+        this.setProperty(REPLICATION_MAX_BYTES_PER_SECOND_PER_BOOKIE, maxBytesPerSecond);
+        return getThis();
+    }
+
     /**
      * Trickery to allow inheritance with fluent style.
      */
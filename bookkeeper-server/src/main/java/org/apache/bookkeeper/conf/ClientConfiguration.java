@@ -120,6 +120,10 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String OPPORTUNISTIC_STRIPING = "opportunisticStriping";
     protected static final String DELAY_ENSEMBLE_CHANGE = "delayEnsembleChange";
     protected static final String MAX_ALLOWED_ENSEMBLE_CHANGES = "maxNumEnsembleChanges";
+    protected static final String ENSEMBLE_POOL_ENABLED = "ensemblePoolEnabled";
+    protected static final String ENSEMBLE_POOL_SIZE = "ensemblePoolSize";
+    protected static final String ENSEMBLE_POOL_MAX_SHAPES = "ensemblePoolMaxShapes";
+    protected static final String ENSEMBLE_POOL_LEDGER_IDS = "ensemblePoolLedgerIds";
     // Timeout Setting
     protected static final String ADD_ENTRY_TIMEOUT_SEC = "addEntryTimeoutSec";
     protected static final String ADD_ENTRY_QUORUM_TIMEOUT_SEC = "addEntryQuorumTimeoutSec";
@@ -143,6 +147,10 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
 
     // Bookie info poll interval
     protected static final String DISK_WEIGHT_BASED_PLACEMENT_ENABLED = "diskWeightBasedPlacementEnabled";
+    protected static final String LOAD_WEIGHT_BASED_PLACEMENT_ENABLED = "loadWeightBasedPlacementEnabled";
+    protected static final String LOAD_WEIGHT_BASED_PLACEMENT_FACTOR = "loadWeightBasedPlacementFactor";
+    protected static final String LOAD_WEIGHT_SMOOTHING_FACTOR = "loadWeightSmoothingFactor";
+    protected static final String LOAD_WEIGHT_POLL_INTERVAL_SECONDS = "loadWeightPollIntervalSeconds";
     protected static final String GET_BOOKIE_INFO_INTERVAL_SECONDS = "getBookieInfoIntervalSeconds";
     protected static final String GET_BOOKIE_INFO_RETRY_INTERVAL_SECONDS = "getBookieInfoRetryIntervalSeconds";
     protected static final String BOOKIE_MAX_MULTIPLE_FOR_WEIGHTED_PLACEMENT =
@@ -158,6 +166,11 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     // Ensemble Placement Policy
     public static final String ENSEMBLE_PLACEMENT_POLICY = "ensemblePlacementPolicy";
     protected static final String NETWORK_TOPOLOGY_STABILIZE_PERIOD_SECONDS = "networkTopologyStabilizePeriodSeconds";
+    protected static final String ASYNC_RACK_RESOLUTION_ENABLED = "asyncRackResolutionEnabled";
+    protected static final String ASYNC_RACK_RESOLUTION_CACHE_FILE = "asyncRackResolutionCacheFile";
+    protected static final String ASYNC_RACK_RESOLUTION_REFRESH_INTERVAL_SECONDS =
+        "asyncRackResolutionRefreshIntervalSeconds";
+    protected static final String ASYNC_RACK_RESOLUTION_BATCH_SIZE = "asyncRackResolutionBatchSize";
     protected static final String READ_REORDER_THRESHOLD_PENDING_REQUESTS = "readReorderThresholdPendingRequests";
     protected static final String ENSEMBLE_PLACEMENT_POLICY_ORDER_SLOW_BOOKIES =
         "ensemblePlacementPolicyOrderSlowBookies";
@@ -206,6 +219,9 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     //For batch read api, it the batch read is not stable, we can fail back to single read by this config.
     protected static final String BATCH_READ_ENABLED = "batchReadEnabled";
 
+    // Tenant of the requests, for the admission control of the bookies
+    protected static final String CLIENT_TENANT = "clientTenant";
+
     /**
      * Construct a default client-side configuration.
      */
@@ -1290,6 +1306,100 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the network locations of the bookies are resolved asynchronously by the placement policy.
+     *
+     * <p>When enabled, the rack of a bookie not resolved yet is the default rack until its resolution, done
+     * in batches by a background thread, completes. If {@link #getEnforceMinNumRacksPerWriteQuorum()} is set,
+     * the bookies of the default rack are not placeable, so the bookies never resolved are resolved on the
+     * placement path instead, in batches. The resolved racks are then served from a cache and
+     * refreshed in the background once they are older than
+     * {@link #getAsyncRackResolutionRefreshIntervalSeconds()}.
+     *
+     * @return true if the network locations are resolved asynchronously.
+     */
+    public boolean isAsyncRackResolutionEnabled() {
+        return getBoolean(ASYNC_RACK_RESOLUTION_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the asynchronous resolution of the network locations of the bookies.
+     *
+     * @see #isAsyncRackResolutionEnabled()
+     * @param enabled flag to enable/disable the asynchronous rack resolution
+     * @return client configuration.
+     */
+    public ClientConfiguration setAsyncRackResolutionEnabled(boolean enabled) {
+        setProperty(ASYNC_RACK_RESOLUTION_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the file the asynchronously resolved racks are persisted to, so that they are available right
+     * after a restart. If it is not set, the racks are not persisted.
+     *
+     * @return the rack cache file, or null.
+     */
+    public String getAsyncRackResolutionCacheFile() {
+        return getString(ASYNC_RACK_RESOLUTION_CACHE_FILE, null);
+    }
+
+    /**
+     * Set the file the asynchronously resolved racks are persisted to.
+     *
+     * @see #getAsyncRackResolutionCacheFile()
+     * @param cacheFile the rack cache file
+     * @return client configuration.
+     */
+    public ClientConfiguration setAsyncRackResolutionCacheFile(String cacheFile) {
+        setProperty(ASYNC_RACK_RESOLUTION_CACHE_FILE, cacheFile);
+        return this;
+    }
+
+    /**
+     * Get the age in seconds after which an asynchronously resolved rack is resolved again. The stale rack
+     * is still used until its refresh completes. If it is zero, the racks are never refreshed.
+     *
+     * @return the rack refresh interval in seconds.
+     */
+    public int getAsyncRackResolutionRefreshIntervalSeconds() {
+        return getInt(ASYNC_RACK_RESOLUTION_REFRESH_INTERVAL_SECONDS, 600);
+    }
+
+    /**
+     * Set the age in seconds after which an asynchronously resolved rack is resolved again.
+     *
+     * @see #getAsyncRackResolutionRefreshIntervalSeconds()
+     * @param seconds the rack refresh interval in seconds
+     * @return client configuration.
+     */
+    public ClientConfiguration setAsyncRackResolutionRefreshIntervalSeconds(int seconds) {
+        setProperty(ASYNC_RACK_RESOLUTION_REFRESH_INTERVAL_SECONDS, seconds);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of hosts resolved in a single call to the underlying DNS resolver by the
+     * asynchronous rack resolution.
+     *
+     * @return the rack resolution batch size.
+     */
+    public int getAsyncRackResolutionBatchSize() {
+        return getInt(ASYNC_RACK_RESOLUTION_BATCH_SIZE, 64);
+    }
+
+    /**
+     * Set the maximum number of hosts resolved in a single call to the underlying DNS resolver.
+     *
+     * @see #getAsyncRackResolutionBatchSize()
+     * @param batchSize the rack resolution batch size
+     * @return client configuration.
+     */
+    public ClientConfiguration setAsyncRackResolutionBatchSize(int batchSize) {
+        setProperty(ASYNC_RACK_RESOLUTION_BATCH_SIZE, batchSize);
+        return this;
+    }
+
     /**
      * Whether to order slow bookies in placement policy.
      *
@@ -1590,6 +1700,103 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Return whether the weights of the disk weight based placement also account for the load of the bookies.
+     *
+     * <p>The bookies then report their journal queue length and their add and read request rates with their
+     * disk usage, every {@link #getLoadWeightPollIntervalSeconds()}. The load of a bookie is the mean of these
+     * three terms, each normalized by its average over the bookies, and the weight of a bookie is its free
+     * disk space scaled by {@code (1 + loadWeightBasedPlacementFactor)
+     * / (1 + loadWeightBasedPlacementFactor * (load / average load))}. It only applies when the disk weight
+     * based placement is enabled.
+     *
+     * @return true if the load weight based placement is enabled.
+     */
+    public boolean getLoadWeightBasedPlacementEnabled() {
+        return getBoolean(LOAD_WEIGHT_BASED_PLACEMENT_ENABLED, false);
+    }
+
+    /**
+     * Set whether the weights of the disk weight based placement also account for the load of the bookies.
+     *
+     * @see #getLoadWeightBasedPlacementEnabled()
+     * @param isEnabled - boolean indicating enabled or not
+     * @return client configuration
+     */
+    public ClientConfiguration setLoadWeightBasedPlacementEnabled(boolean isEnabled) {
+        setProperty(LOAD_WEIGHT_BASED_PLACEMENT_ENABLED, isEnabled);
+        return this;
+    }
+
+    /**
+     * Get how much the load of a bookie, relative to the average load, lowers its weight.
+     *
+     * @return the load weight factor
+     */
+    public double getLoadWeightBasedPlacementFactor() {
+        return getDouble(LOAD_WEIGHT_BASED_PLACEMENT_FACTOR, 1.0);
+    }
+
+    /**
+     * Set how much the load of a bookie, relative to the average load, lowers its weight.
+     *
+     * @see #getLoadWeightBasedPlacementFactor()
+     * @param factor the load weight factor
+     * @return client configuration
+     */
+    public ClientConfiguration setLoadWeightBasedPlacementFactor(double factor) {
+        setProperty(LOAD_WEIGHT_BASED_PLACEMENT_FACTOR, factor);
+        return this;
+    }
+
+    /**
+     * Get the smoothing factor, in (0, 1], of the load of the bookies across the bookie info polls. The load
+     * used for the weights is {@code smoothing * reported + (1 - smoothing) * previous}, so that the clients
+     * don't all move away from a bookie, and then back to it, at once.
+     *
+     * @return the load smoothing factor
+     */
+    public double getLoadWeightSmoothingFactor() {
+        return getDouble(LOAD_WEIGHT_SMOOTHING_FACTOR, 0.3);
+    }
+
+    /**
+     * Set the smoothing factor of the load of the bookies across the bookie info polls.
+     *
+     * @see #getLoadWeightSmoothingFactor()
+     * @param smoothing the load smoothing factor
+     * @return client configuration
+     */
+    public ClientConfiguration setLoadWeightSmoothingFactor(double smoothing) {
+        setProperty(LOAD_WEIGHT_SMOOTHING_FACTOR, smoothing);
+        return this;
+    }
+
+    /**
+     * Get the time interval between successive polls of the bookie info when the load weight based placement
+     * is enabled. The load changes much faster than the disk usage polled every
+     * {@link #getGetBookieInfoIntervalSeconds()}, so the bookie info is then polled at the shorter of the two
+     * intervals.
+     *
+     * @return the load poll interval in seconds
+     */
+    public int getLoadWeightPollIntervalSeconds() {
+        return getInt(LOAD_WEIGHT_POLL_INTERVAL_SECONDS, 10);
+    }
+
+    /**
+     * Set the time interval between successive polls of the bookie info when the load weight based placement
+     * is enabled.
+     *
+     * @see #getLoadWeightPollIntervalSeconds()
+     * @param pollIntervalSeconds the load poll interval in seconds
+     * @return client configuration
+     */
+    public ClientConfiguration setLoadWeightPollIntervalSeconds(int pollIntervalSeconds) {
+        setProperty(LOAD_WEIGHT_POLL_INTERVAL_SECONDS, pollIntervalSeconds);
+        return this;
+    }
+
     /**
      * Set the time interval between successive polls for bookie get info.
      *
@@ -1862,6 +2069,102 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the ensemble pool is enabled.
+     *
+     * @return true if the ensemble pool is enabled
+     */
+    public boolean isEnsemblePoolEnabled() {
+        return getBoolean(ENSEMBLE_POOL_ENABLED, false);
+    }
+
+    /**
+     * Enable/Disable the ensemble pool.
+     * <p>
+     * If set to true, the client computes placement policy compliant ensembles
+     * and reserves ledger ids in the background, so that creating a ledger only
+     * needs to write its metadata. The pooled ensembles are dropped whenever the
+     * writable bookies change. Ledgers created with custom metadata always compute
+     * their ensemble on creation, as the custom metadata might drive the placement.
+     * </p>
+     *
+     * @param enabled
+     *          flag to enable/disable the ensemble pool.
+     * @return client configuration.
+     */
+    public ClientConfiguration setEnsemblePoolEnabled(boolean enabled) {
+        setProperty(ENSEMBLE_POOL_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the number of ensembles pooled for each ensemble shape, i.e. each combination
+     * of ensemble size, write quorum size and ack quorum size.
+     *
+     * @return the number of ensembles pooled per ensemble shape
+     */
+    public int getEnsemblePoolSize() {
+        return getInt(ENSEMBLE_POOL_SIZE, 16);
+    }
+
+    /**
+     * Set the number of ensembles pooled for each ensemble shape.
+     *
+     * @param size
+     *          number of ensembles pooled per ensemble shape
+     * @return client configuration.
+     */
+    public ClientConfiguration setEnsemblePoolSize(int size) {
+        setProperty(ENSEMBLE_POOL_SIZE, size);
+        return this;
+    }
+
+    /**
+     * Get the max number of ensemble shapes tracked by the ensemble pool. The pool learns
+     * the shapes of the created ledgers, ledgers of the shapes beyond this limit are not pooled.
+     *
+     * @return the max number of ensemble shapes
+     */
+    public int getEnsemblePoolMaxShapes() {
+        return getInt(ENSEMBLE_POOL_MAX_SHAPES, 8);
+    }
+
+    /**
+     * Set the max number of ensemble shapes tracked by the ensemble pool.
+     *
+     * @param maxShapes
+     *          max number of ensemble shapes
+     * @return client configuration.
+     */
+    public ClientConfiguration setEnsemblePoolMaxShapes(int maxShapes) {
+        setProperty(ENSEMBLE_POOL_MAX_SHAPES, maxShapes);
+        return this;
+    }
+
+    /**
+     * Get the number of ledger ids reserved in advance by the ensemble pool.
+     *
+     * @return the number of reserved ledger ids
+     */
+    public int getEnsemblePoolLedgerIds() {
+        return getInt(ENSEMBLE_POOL_LEDGER_IDS, 0);
+    }
+
+    /**
+     * Set the number of ledger ids reserved in advance by the ensemble pool.
+     * If set to 0, the default, ledger ids are generated on creation. A generated
+     * ledger id cannot be given back, so the ids still reserved when the client
+     * is closed are skipped.
+     *
+     * @param numLedgerIds
+     *          number of reserved ledger ids
+     * @return client configuration.
+     */
+    public ClientConfiguration setEnsemblePoolLedgerIds(int numLedgerIds) {
+        setProperty(ENSEMBLE_POOL_LEDGER_IDS, numLedgerIds);
+        return this;
+    }
+
     /**
      * Whether to delay ensemble change or not?
      *
@@ -2107,6 +2410,29 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return getBoolean(BATCH_READ_ENABLED, true);
     }
 
+    /**
+     * Get the tenant the requests are sent for, used by the admission control of the bookies. It is only sent with
+     * the V3 wire protocol, and only used over connections that are not authenticated: the bookies use the
+     * authenticated principal of the connection otherwise.
+     *
+     * @return the tenant of the requests, or null to let the bookies use the authenticated principal
+     */
+    public String getClientTenant() {
+        return getString(CLIENT_TENANT, null);
+    }
+
+    /**
+     * Set the tenant the requests are sent for.
+     *
+     * @see #getClientTenant()
+     * @param tenant the tenant of the requests
+     * @return client configuration
+     */
+    public ClientConfiguration setClientTenant(String tenant) {
+        setProperty(CLIENT_TENANT, tenant);
+        return this;
+    }
+
     @Override
     protected ClientConfiguration getThis() {
         return this;
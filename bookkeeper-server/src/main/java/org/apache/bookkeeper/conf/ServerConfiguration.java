@@ -112,6 +112,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String GC_OVERREPLICATED_LEDGER_WAIT_TIME = "gcOverreplicatedLedgerWaitTime";
     protected static final String GC_OVERREPLICATED_LEDGER_MAX_CONCURRENT_REQUESTS =
             "gcOverreplicatedLedgerMaxConcurrentRequests";
+    protected static final String LEDGER_RANGE_SCAN_PARALLELISM = "ledgerRangeScanParallelism";
     protected static final String USE_TRANSACTIONAL_COMPACTION = "useTransactionalCompaction";
     protected static final String VERIFY_METADATA_ON_GC = "verifyMetadataOnGC";
     protected static final String GC_ENTRYLOGMETADATA_CACHE_ENABLED = "gcEntryLogMetadataCacheEnabled";
@@ -156,6 +157,13 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     // backpressure control
     protected static final String MAX_ADDS_IN_PROGRESS_LIMIT = "maxAddsInProgressLimit";
     protected static final String MAX_READS_IN_PROGRESS_LIMIT = "maxReadsInProgressLimit";
+    protected static final String REQUEST_MEMORY_BUDGET_MB = "requestMemoryBudgetMb";
+    protected static final String REQUEST_MEMORY_BUDGET_ADDS_MB = "requestMemoryBudgetAddsMb";
+    protected static final String REQUEST_MEMORY_BUDGET_READS_MB = "requestMemoryBudgetReadsMb";
+    protected static final String REQUEST_MEMORY_BUDGET_RESPONSES_MB = "requestMemoryBudgetResponsesMb";
+    protected static final String REQUEST_TRACE_SAMPLE_RATE = "requestTraceSampleRate";
+    protected static final String REQUEST_TRACE_SLOW_THRESHOLD_MS = "requestTraceSlowThresholdMs";
+    protected static final String REQUEST_TRACE_SLOW_BUFFER_SIZE = "requestTraceSlowBufferSize";
     protected static final String CLOSE_CHANNEL_ON_RESPONSE_TIMEOUT = "closeChannelOnResponseTimeout";
     protected static final String WAIT_TIMEOUT_ON_RESPONSE_BACKPRESSURE = "waitTimeoutOnResponseBackpressureMs";
 
@@ -211,6 +219,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String AUTO_RECOVERY_DAEMON_ENABLED = "autoRecoveryDaemonEnabled";
     protected static final String LOST_BOOKIE_RECOVERY_DELAY = "lostBookieRecoveryDelay";
     protected static final String RW_REREPLICATE_BACKOFF_MS = "rwRereplicateBackoffMs";
+    protected static final String RW_REREPLICATE_CONCURRENT_LEDGERS = "rwRereplicateConcurrentLedgers";
     protected static final String UNDERREPLICATED_LEDGER_RECOVERY_GRACE_PERIOD =
             "underreplicatedLedgerRecoveryGracePeriod";
     protected static final String AUDITOR_REPLICAS_CHECK_INTERVAL = "auditorReplicasCheckInterval";
@@ -219,6 +228,9 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String AUDITOR_ACQUIRE_CONCURRENT_OPEN_LEDGER_OPERATIONS_TIMEOUT_MSEC =
         "auditorAcquireConcurrentOpenLedgerOperationsTimeOutMSec";
     protected static final String IN_FLIGHT_READ_ENTRY_NUM_IN_LEDGER_CHECKER = "inFlightReadEntryNumInLedgerChecker";
+    protected static final String AUDITOR_INCREMENTAL_CHECK_ENABLED = "auditorIncrementalCheckEnabled";
+    protected static final String AUDITOR_INCREMENTAL_CHECK_FULL_PASS_INTERVAL =
+        "auditorIncrementalCheckFullPassInterval";
 
 
     // Worker Thread parameters.
@@ -229,6 +241,18 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String NUM_LONG_POLL_WORKER_THREADS = "numLongPollWorkerThreads";
     protected static final String NUM_HIGH_PRIORITY_WORKER_THREADS = "numHighPriorityWorkerThreads";
     protected static final String READ_WORKER_THREADS_THROTTLING_ENABLED = "readWorkerThreadsThrottlingEnabled";
+    protected static final String WORKER_THREADS_WORK_STEALING_ENABLED = "workerThreadsWorkStealingEnabled";
+    protected static final String READ_WORKER_VIRTUAL_THREADS_ENABLED = "readWorkerVirtualThreadsEnabled";
+    protected static final String READ_WORKER_VIRTUAL_THREADS_MAX_CONCURRENCY =
+            "readWorkerVirtualThreadsMaxConcurrency";
+    protected static final String READ_WORKER_VIRTUAL_THREADS_MAX_PENDING_REQUESTS =
+            "readWorkerVirtualThreadsMaxPendingRequests";
+
+    // Admission control parameters
+    protected static final String REQUEST_ADMISSION_CONTROLLER_CLASS = "requestAdmissionControllerClass";
+    protected static final String TENANT_QUOTA_MAX_OPS_PER_SECOND = "tenantQuotaMaxOpsPerSecond";
+    protected static final String TENANT_QUOTA_MAX_BYTES_PER_SECOND = "tenantQuotaMaxBytesPerSecond";
+    protected static final String TENANT_QUOTA_MAX_REQUESTS_IN_PROGRESS = "tenantQuotaMaxRequestsInProgress";
 
     // Long poll parameters
     protected static final String REQUEST_TIMER_TICK_DURATION_MILLISEC = "requestTimerTickDurationMs";
@@ -328,6 +352,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String AUTHORIZED_ROLES = "authorizedRoles";
 
     protected static final String DATA_INTEGRITY_CHECKING_ENABLED = "dataIntegrityChecking";
+    protected static final String DIRECT_FRAGMENT_COPY_ENABLED = "directFragmentCopyEnabled";
     protected static final String DATA_INTEGRITY_COOKIE_STAMPING_ENABLED = "dataIntegrityStampMissingCookies";
 
     // Used for default,command until or test case
@@ -479,6 +504,28 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Max number of ledger ranges fetched concurrently from the metadata store when the garbage collector
+     * and the auditor iterate over all the ledgers.
+     *
+     * @return max number of ledger ranges fetched concurrently
+     */
+    public int getLedgerRangeScanParallelism() {
+        return this.getInt(LEDGER_RANGE_SCAN_PARALLELISM, 8);
+    }
+
+    /**
+     * Max number of ledger ranges fetched concurrently from the metadata store when the garbage collector
+     * and the auditor iterate over all the ledgers. 1 fetches the ranges one by one. Default: 8
+     *
+     * @param ledgerRangeScanParallelism
+     * @return server configuration
+     */
+    public ServerConfiguration setLedgerRangeScanParallelism(int ledgerRangeScanParallelism) {
+        this.setProperty(LEDGER_RANGE_SCAN_PARALLELISM, Integer.toString(ledgerRangeScanParallelism));
+        return this;
+    }
+
     /**
      * Get whether to use transactional compaction and using a separate log for compaction or not.
      *
@@ -1072,6 +1119,159 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the direct memory budget of the requests in progress, in MB: the payloads of the add requests, the read
+     * requests and their entries, and the responses not flushed yet. The channels stop reading while it is
+     * exceeded. 0 == unlimited.
+     *
+     * @return the direct memory budget of the requests in progress, in MB.
+     */
+    public long getRequestMemoryBudgetMb() {
+        return this.getLong(REQUEST_MEMORY_BUDGET_MB, 0);
+    }
+
+    /**
+     * Set the direct memory budget of the requests in progress, in MB. 0 == unlimited.
+     *
+     * @param requestMemoryBudgetMb
+     *          the direct memory budget of the requests in progress, in MB.
+     * @return server configuration.
+     */
+    public ServerConfiguration setRequestMemoryBudgetMb(long requestMemoryBudgetMb) {
+        this.setProperty(REQUEST_MEMORY_BUDGET_MB, requestMemoryBudgetMb);
+        return this;
+    }
+
+    /**
+     * Get the part of the request memory budget the payloads of the add requests can use, in MB.
+     * 0 == bounded by the request memory budget only.
+     *
+     * @return the direct memory budget of the add requests, in MB.
+     */
+    public long getRequestMemoryBudgetAddsMb() {
+        return this.getLong(REQUEST_MEMORY_BUDGET_ADDS_MB, 0);
+    }
+
+    /**
+     * Set the part of the request memory budget the payloads of the add requests can use, in MB.
+     *
+     * @param requestMemoryBudgetAddsMb
+     *          the direct memory budget of the add requests, in MB.
+     * @return server configuration.
+     */
+    public ServerConfiguration setRequestMemoryBudgetAddsMb(long requestMemoryBudgetAddsMb) {
+        this.setProperty(REQUEST_MEMORY_BUDGET_ADDS_MB, requestMemoryBudgetAddsMb);
+        return this;
+    }
+
+    /**
+     * Get the part of the request memory budget the read requests, with the entries they read, and the read-ahead
+     * of the ledger storage can use, in MB. 0 == bounded by the request memory budget only.
+     *
+     * @return the direct memory budget of the read requests, in MB.
+     */
+    public long getRequestMemoryBudgetReadsMb() {
+        return this.getLong(REQUEST_MEMORY_BUDGET_READS_MB, 0);
+    }
+
+    /**
+     * Set the part of the request memory budget the read requests and the read-ahead can use, in MB.
+     *
+     * @param requestMemoryBudgetReadsMb
+     *          the direct memory budget of the read requests, in MB.
+     * @return server configuration.
+     */
+    public ServerConfiguration setRequestMemoryBudgetReadsMb(long requestMemoryBudgetReadsMb) {
+        this.setProperty(REQUEST_MEMORY_BUDGET_READS_MB, requestMemoryBudgetReadsMb);
+        return this;
+    }
+
+    /**
+     * Get the part of the request memory budget the responses not flushed yet can use, in MB.
+     * 0 == bounded by the request memory budget only.
+     *
+     * @return the direct memory budget of the responses, in MB.
+     */
+    public long getRequestMemoryBudgetResponsesMb() {
+        return this.getLong(REQUEST_MEMORY_BUDGET_RESPONSES_MB, 0);
+    }
+
+    /**
+     * Set the part of the request memory budget the responses not flushed yet can use, in MB.
+     *
+     * @param requestMemoryBudgetResponsesMb
+     *          the direct memory budget of the responses, in MB.
+     * @return server configuration.
+     */
+    public ServerConfiguration setRequestMemoryBudgetResponsesMb(long requestMemoryBudgetResponsesMb) {
+        this.setProperty(REQUEST_MEMORY_BUDGET_RESPONSES_MB, requestMemoryBudgetResponsesMb);
+        return this;
+    }
+
+    /**
+     * Get the rate of the add requests traced to break their latency down by stage: one request out of the rate
+     * is traced. 0 == tracing disabled.
+     *
+     * @return the sample rate of the traced add requests.
+     */
+    public int getRequestTraceSampleRate() {
+        return this.getInt(REQUEST_TRACE_SAMPLE_RATE, 0);
+    }
+
+    /**
+     * Set the rate of the add requests traced to break their latency down by stage.
+     *
+     * @param requestTraceSampleRate
+     *          trace one add request out of this rate, 0 to disable tracing.
+     * @return server configuration.
+     */
+    public ServerConfiguration setRequestTraceSampleRate(int requestTraceSampleRate) {
+        this.setProperty(REQUEST_TRACE_SAMPLE_RATE, requestTraceSampleRate);
+        return this;
+    }
+
+    /**
+     * Get the latency from which the traces of the add requests are kept as slow requests, in milliseconds.
+     *
+     * @return the slow request threshold, in milliseconds.
+     */
+    public long getRequestTraceSlowThresholdMs() {
+        return this.getLong(REQUEST_TRACE_SLOW_THRESHOLD_MS, 100);
+    }
+
+    /**
+     * Set the latency from which the traces of the add requests are kept as slow requests, in milliseconds.
+     *
+     * @param requestTraceSlowThresholdMs
+     *          the slow request threshold, in milliseconds.
+     * @return server configuration.
+     */
+    public ServerConfiguration setRequestTraceSlowThresholdMs(long requestTraceSlowThresholdMs) {
+        this.setProperty(REQUEST_TRACE_SLOW_THRESHOLD_MS, requestTraceSlowThresholdMs);
+        return this;
+    }
+
+    /**
+     * Get the number of the last slow request traces kept for the http admin api.
+     *
+     * @return the number of slow request traces kept.
+     */
+    public int getRequestTraceSlowBufferSize() {
+        return this.getInt(REQUEST_TRACE_SLOW_BUFFER_SIZE, 64);
+    }
+
+    /**
+     * Set the number of the last slow request traces kept for the http admin api.
+     *
+     * @param requestTraceSlowBufferSize
+     *          the number of slow request traces kept.
+     * @return server configuration.
+     */
+    public ServerConfiguration setRequestTraceSlowBufferSize(int requestTraceSlowBufferSize) {
+        this.setProperty(REQUEST_TRACE_SLOW_BUFFER_SIZE, requestTraceSlowBufferSize);
+        return this;
+    }
+
     /**
      * Configures action in case if server timed out sending response to the client.
      * true == close the channel and drop response
@@ -2106,6 +2306,183 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getInt(MAX_PENDING_ADD_REQUESTS_PER_THREAD, 10000);
     }
 
+    /**
+     * Whether the ledgers without pending requests can move to the least loaded add and read worker threads, instead
+     * of always going to the thread they hash to. The requests of a ledger are still processed in order.
+     *
+     * @return true if the worker threads use work stealing (default: false)
+     */
+    public boolean isWorkerThreadsWorkStealingEnabled() {
+        return getBoolean(WORKER_THREADS_WORK_STEALING_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable work stealing between the add and read worker threads.
+     *
+     * @see #isWorkerThreadsWorkStealingEnabled()
+     * @param enabled
+     * @return server configuration
+     */
+    public ServerConfiguration setWorkerThreadsWorkStealingEnabled(boolean enabled) {
+        setProperty(WORKER_THREADS_WORK_STEALING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the read and long poll requests are processed on virtual threads, instead of the read and long poll
+     * worker threads. It requires JDK 21, the worker threads are used otherwise.
+     *
+     * @return true if the read requests are processed on virtual threads (default: false)
+     */
+    public boolean isReadWorkerVirtualThreadsEnabled() {
+        return getBoolean(READ_WORKER_VIRTUAL_THREADS_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable processing the read and long poll requests on virtual threads.
+     *
+     * @see #isReadWorkerVirtualThreadsEnabled()
+     * @param enabled
+     * @return server configuration
+     */
+    public ServerConfiguration setReadWorkerVirtualThreadsEnabled(boolean enabled) {
+        setProperty(READ_WORKER_VIRTUAL_THREADS_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the max number of read and long poll requests processed at the same time on virtual threads. The read
+     * and long poll requests are not ordered, the other requests of the read worker threads, like the reads of the
+     * LAC, are still ordered per ledger over numReadWorkerThreads lanes.
+     *
+     * @return the max number of requests processed at the same time (default: 256)
+     */
+    public int getReadWorkerVirtualThreadsMaxConcurrency() {
+        return getInt(READ_WORKER_VIRTUAL_THREADS_MAX_CONCURRENCY, 256);
+    }
+
+    /**
+     * Set the max number of read and long poll requests processed at the same time on virtual threads.
+     *
+     * @see #getReadWorkerVirtualThreadsMaxConcurrency()
+     * @param maxConcurrency
+     * @return server configuration
+     */
+    public ServerConfiguration setReadWorkerVirtualThreadsMaxConcurrency(int maxConcurrency) {
+        setProperty(READ_WORKER_VIRTUAL_THREADS_MAX_CONCURRENCY, maxConcurrency);
+        return this;
+    }
+
+    /**
+     * Get the max number of read requests waiting for or being processed on virtual threads, over all the
+     * requests. The requests above the limit are rejected.
+     *
+     * @return the max number of pending requests, or a value &lt;= 0 for no limit (default: 10000)
+     */
+    public int getReadWorkerVirtualThreadsMaxPendingRequests() {
+        return getInt(READ_WORKER_VIRTUAL_THREADS_MAX_PENDING_REQUESTS, 10000);
+    }
+
+    /**
+     * Set the max number of read requests waiting for or being processed on virtual threads.
+     *
+     * @see #getReadWorkerVirtualThreadsMaxPendingRequests()
+     * @param maxPendingRequests
+     * @return server configuration
+     */
+    public ServerConfiguration setReadWorkerVirtualThreadsMaxPendingRequests(int maxPendingRequests) {
+        setProperty(READ_WORKER_VIRTUAL_THREADS_MAX_PENDING_REQUESTS, maxPendingRequests);
+        return this;
+    }
+
+    /**
+     * Get the class of the admission control of the add and read requests of the tenants, see
+     * {@link org.apache.bookkeeper.proto.RequestAdmissionController}.
+     *
+     * @return the admission controller class, or null if there is no admission control (default: null)
+     */
+    public String getRequestAdmissionControllerClass() {
+        return getString(REQUEST_ADMISSION_CONTROLLER_CLASS, null);
+    }
+
+    /**
+     * Set the class of the admission control of the add and read requests of the tenants.
+     *
+     * @see #getRequestAdmissionControllerClass()
+     * @param className
+     * @return server configuration
+     */
+    public ServerConfiguration setRequestAdmissionControllerClass(String className) {
+        setProperty(REQUEST_ADMISSION_CONTROLLER_CLASS, className);
+        return this;
+    }
+
+    /**
+     * Get the max number of add and read requests per second of each tenant, when using the
+     * {@link org.apache.bookkeeper.proto.TenantQuotaAdmissionController}.
+     *
+     * @return the max number of requests per second, 0 for no limit (default: 0)
+     */
+    public double getTenantQuotaMaxOpsPerSecond() {
+        return getDouble(TENANT_QUOTA_MAX_OPS_PER_SECOND, 0);
+    }
+
+    /**
+     * Set the max number of add and read requests per second of each tenant.
+     *
+     * @see #getTenantQuotaMaxOpsPerSecond()
+     * @param maxOpsPerSecond
+     * @return server configuration
+     */
+    public ServerConfiguration setTenantQuotaMaxOpsPerSecond(double maxOpsPerSecond) {
+        setProperty(TENANT_QUOTA_MAX_OPS_PER_SECOND, maxOpsPerSecond);
+        return this;
+    }
+
+    /**
+     * Get the max number of bytes added per second by each tenant, when using the
+     * {@link org.apache.bookkeeper.proto.TenantQuotaAdmissionController}.
+     *
+     * @return the max number of bytes per second, 0 for no limit (default: 0)
+     */
+    public double getTenantQuotaMaxBytesPerSecond() {
+        return getDouble(TENANT_QUOTA_MAX_BYTES_PER_SECOND, 0);
+    }
+
+    /**
+     * Set the max number of bytes added per second by each tenant.
+     *
+     * @see #getTenantQuotaMaxBytesPerSecond()
+     * @param maxBytesPerSecond
+     * @return server configuration
+     */
+    public ServerConfiguration setTenantQuotaMaxBytesPerSecond(double maxBytesPerSecond) {
+        setProperty(TENANT_QUOTA_MAX_BYTES_PER_SECOND, maxBytesPerSecond);
+        return this;
+    }
+
+    /**
+     * Get the max number of add and read requests of each tenant queued, processed or waiting for their response,
+     * when using the {@link org.apache.bookkeeper.proto.TenantQuotaAdmissionController}.
+     *
+     * @return the max number of requests in progress, 0 for no limit (default: 0)
+     */
+    public int getTenantQuotaMaxRequestsInProgress() {
+        return getInt(TENANT_QUOTA_MAX_REQUESTS_IN_PROGRESS, 0);
+    }
+
+    /**
+     * Set the max number of add and read requests of each tenant queued, processed or waiting for their response.
+     *
+     * @see #getTenantQuotaMaxRequestsInProgress()
+     * @param maxRequestsInProgress
+     * @return server configuration
+     */
+    public ServerConfiguration setTenantQuotaMaxRequestsInProgress(int maxRequestsInProgress) {
+        setProperty(TENANT_QUOTA_MAX_REQUESTS_IN_PROGRESS, maxRequestsInProgress);
+        return this;
+    }
+
 
 
     /**
@@ -2774,6 +3151,53 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getLong(AUDITOR_LEDGER_VERIFICATION_PERCENTAGE, 0);
     }
 
+    /**
+     * Enable incremental checkAllLedgers and replicas checks in the auditor.
+     *
+     * <p>When enabled, a check pass only re-checks the ledgers whose metadata changed, or which have a replica on a
+     * bookie that left or joined the cluster, since the ledger was last found healthy. The progress of each pass is
+     * checkpointed in the metadata store, so that a new auditor resumes the pass after a failover.
+     *
+     * @param enabled whether to enable incremental auditor checks
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setAuditorIncrementalCheckEnabled(boolean enabled) {
+        setProperty(AUDITOR_INCREMENTAL_CHECK_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether incremental auditor checks are enabled.
+     *
+     * @see #setAuditorIncrementalCheckEnabled(boolean)
+     * @return true if incremental auditor checks are enabled. Default is false.
+     */
+    public boolean isAuditorIncrementalCheckEnabled() {
+        return getBoolean(AUDITOR_INCREMENTAL_CHECK_ENABLED, false);
+    }
+
+    /**
+     * Set the number of passes of an incremental auditor check after which a full pass, checking every ledger, is
+     * done. Setting this to 0 disables the periodic full passes.
+     *
+     * @param passes number of passes between two full passes
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setAuditorIncrementalCheckFullPassInterval(int passes) {
+        setProperty(AUDITOR_INCREMENTAL_CHECK_FULL_PASS_INTERVAL, passes);
+        return this;
+    }
+
+    /**
+     * Get the number of passes of an incremental auditor check after which a full pass is done.
+     *
+     * @see #setAuditorIncrementalCheckFullPassInterval(int)
+     * @return number of passes between two full passes. Default is 10.
+     */
+    public int getAuditorIncrementalCheckFullPassInterval() {
+        return getInt(AUDITOR_INCREMENTAL_CHECK_FULL_PASS_INTERVAL, 10);
+    }
+
     /**
      * Sets that whether the auto-recovery service can start along with Bookie
      * server itself or not.
@@ -2832,6 +3256,31 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         setProperty(RW_REREPLICATE_BACKOFF_MS, backoffMs);
     }
 
+    /**
+     * Get the number of under-replicated ledgers that a replication worker can lease and
+     * replicate concurrently.
+     *
+     * <p>The default value is 1, which means that the replication worker replicates one
+     * ledger at a time.
+     *
+     * @return number of ledgers replicated concurrently by a replication worker
+     */
+    public int getRwRereplicateConcurrentLedgers() {
+        return getInt(RW_REREPLICATE_CONCURRENT_LEDGERS, 1);
+    }
+
+    /**
+     * Set the number of under-replicated ledgers that a replication worker can lease and
+     * replicate concurrently.
+     *
+     * @param concurrentLedgers number of ledgers replicated concurrently
+     * @return server configuration
+     */
+    public ServerConfiguration setRwRereplicateConcurrentLedgers(int concurrentLedgers) {
+        setProperty(RW_REREPLICATE_CONCURRENT_LEDGERS, concurrentLedgers);
+        return this;
+    }
+
     /**
      * Sets that whether force start a bookie in readonly mode.
      *
@@ -3969,6 +4418,28 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getInt(IN_FLIGHT_READ_ENTRY_NUM_IN_LEDGER_CHECKER, -1);
     }
 
+    /**
+     * Whether the bookie accepts requests to copy ledger fragments directly from other bookies.
+     * When enabled, the re-replication of a fragment can be delegated to the bookie that receives
+     * the new replica, which reads the entries from the surviving replicas and stores them locally.
+     *
+     * @return true if direct fragment copy requests are served.
+     */
+    public boolean isDirectFragmentCopyEnabled() {
+        return getBoolean(DIRECT_FRAGMENT_COPY_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable serving direct fragment copy requests.
+     *
+     * @param enabled flag to enable/disable direct fragment copy.
+     * @return server configuration
+     */
+    public ServerConfiguration setDirectFragmentCopyEnabled(boolean enabled) {
+        this.setProperty(DIRECT_FRAGMENT_COPY_ENABLED, Boolean.toString(enabled));
+        return this;
+    }
+
     /**
      * Enabled data integrity checker.
      * The data integrity checker checks that the bookie has all the entries which
@@ -27,6 +27,12 @@ import java.util.function.Supplier;
  */
 public final class BookieServiceInfo {
 
+    /**
+     * Property holding the time, in milliseconds since the epoch, at which the bookie service started. It changes
+     * every time the bookie restarts.
+     */
+    public static final String START_TIME_PROPERTY = "startTime";
+
     /**
      * Default empty implementation.
      */
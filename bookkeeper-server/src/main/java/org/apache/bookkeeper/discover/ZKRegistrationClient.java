@@ -49,6 +49,7 @@ import org.apache.bookkeeper.versioning.LongVersion;
 import org.apache.bookkeeper.versioning.Version;
 import org.apache.bookkeeper.versioning.Version.Occurred;
 import org.apache.bookkeeper.versioning.Versioned;
+import org.apache.bookkeeper.zookeeper.ZkSubTreeCache;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
@@ -106,6 +107,9 @@ public class ZKRegistrationClient implements RegistrationClient {
         }
 
         void watch() {
+            if (null != subTreeCache) {
+                subTreeCache.registerListener(this);
+            }
             scheduleWatchTask(0L);
         }
 
@@ -123,7 +127,7 @@ public class ZKRegistrationClient implements RegistrationClient {
                 return;
             }
 
-            getChildren(regPath, this)
+            (null != subTreeCache ? getCachedChildren(regPath) : getChildren(regPath, this))
                 .whenCompleteAsync(this, scheduler);
         }
 
@@ -155,14 +159,30 @@ public class ZKRegistrationClient implements RegistrationClient {
             if (EventType.None == event.getType()) {
                 if (KeeperState.Expired == event.getState()) {
                     scheduleWatchTask(ZK_CONNECT_BACKOFF_MS);
+                } else if (null != subTreeCache && KeeperState.SyncConnected == event.getState()) {
+                    // the subtree cache was dropped on disconnection, the events might have been missed
+                    scheduleWatchTask(0L);
                 }
                 return;
             }
+            if (null != subTreeCache && !isRegistrationChange(event)) {
+                // the subtree cache notifies all the events of the subtree
+                return;
+            }
 
             // re-read the bookie list
             scheduleWatchTask(0L);
         }
 
+        private boolean isRegistrationChange(WatchedEvent event) {
+            if (EventType.NodeCreated != event.getType() && EventType.NodeDeleted != event.getType()) {
+                return false;
+            }
+            String path = event.getPath();
+            return path.equals(regPath)
+                || (path.startsWith(regPath) && path.lastIndexOf('/') == regPath.length());
+        }
+
         boolean isClosed() {
             return closed;
         }
@@ -170,6 +190,9 @@ public class ZKRegistrationClient implements RegistrationClient {
         @Override
         public void close() {
             closed = true;
+            if (null != subTreeCache) {
+                subTreeCache.unregisterListener(this);
+            }
         }
     }
 
@@ -187,11 +210,21 @@ public class ZKRegistrationClient implements RegistrationClient {
     private final String bookieRegistrationPath;
     private final String bookieAllRegistrationPath;
     private final String bookieReadonlyRegistrationPath;
+    // shared cache of the registrations, null if disabled
+    private final ZkSubTreeCache subTreeCache;
 
     public ZKRegistrationClient(ZooKeeper zk,
                                 String ledgersRootPath,
                                 ScheduledExecutorService scheduler,
                                 boolean bookieAddressTracking) {
+        this(zk, ledgersRootPath, scheduler, bookieAddressTracking, false);
+    }
+
+    public ZKRegistrationClient(ZooKeeper zk,
+                                String ledgersRootPath,
+                                ScheduledExecutorService scheduler,
+                                boolean bookieAddressTracking,
+                                boolean useSubTreeCache) {
         this.zk = zk;
         this.scheduler = scheduler;
         // Following Bookie Network Address Changes is an expensive operation
@@ -204,11 +237,14 @@ public class ZKRegistrationClient implements RegistrationClient {
         this.bookieRegistrationPath = ledgersRootPath + "/" + AVAILABLE_NODE;
         this.bookieAllRegistrationPath = ledgersRootPath + "/" + COOKIE_NODE;
         this.bookieReadonlyRegistrationPath = this.bookieRegistrationPath + "/" + READONLY;
+        this.subTreeCache = useSubTreeCache ? ZkSubTreeCache.acquire(zk, bookieRegistrationPath) : null;
     }
 
     @Override
     public void close() {
-        // no-op
+        if (null != subTreeCache) {
+            subTreeCache.close();
+        }
     }
 
     public boolean isBookieAddressTracking() {
@@ -221,6 +257,9 @@ public class ZKRegistrationClient implements RegistrationClient {
 
     @Override
     public CompletableFuture<Versioned<Set<BookieId>>> getWritableBookies() {
+        if (null != subTreeCache) {
+            return getCachedChildren(bookieRegistrationPath);
+        }
         return getChildren(bookieRegistrationPath, null);
     }
 
@@ -231,6 +270,9 @@ public class ZKRegistrationClient implements RegistrationClient {
 
     @Override
     public CompletableFuture<Versioned<Set<BookieId>>> getReadOnlyBookies() {
+        if (null != subTreeCache) {
+            return getCachedChildren(bookieReadonlyRegistrationPath);
+        }
         return getChildren(bookieReadonlyRegistrationPath, null);
     }
 
@@ -353,31 +395,55 @@ public class ZKRegistrationClient implements RegistrationClient {
                 return;
             }
 
-            Version version = new LongVersion(stat.getCversion());
-            Set<BookieId> bookies = convertToBookieAddresses(children);
-            List<CompletableFuture<Versioned<BookieServiceInfo>>> bookieInfoUpdated = new ArrayList<>(bookies.size());
-            for (BookieId id : bookies) {
-                // update the cache for new bookies
-                if (!bookieServiceInfoCache.containsKey(id)) {
-                    bookieInfoUpdated.add(readBookieServiceInfoAsync(id));
-                }
-            }
-            if (bookieInfoUpdated.isEmpty()) {
-                future.complete(new Versioned<>(bookies, version));
-            } else {
-                FutureUtils
-                        .collect(bookieInfoUpdated)
-                        .whenComplete((List<Versioned<BookieServiceInfo>> info, Throwable error) -> {
-                            // we are ignoring errors intentionally
-                            // there could be bookies that publish unparseable information
-                            // or other temporary/permanent errors
-                            future.complete(new Versioned<>(bookies, version));
-                        });
-            }
+            completeWithBookies(future, children, new LongVersion(stat.getCversion()));
         }, null);
         return future;
     }
 
+    /**
+     * Reads the list of bookies at the given path from the subtree cache and eagerly caches the
+     * BookieServiceInfo structure.
+     *
+     * @param regPath the path on ZooKeeper
+     * @return an handle to the operation
+     */
+    private CompletableFuture<Versioned<Set<BookieId>>> getCachedChildren(String regPath) {
+        CompletableFuture<Versioned<Set<BookieId>>> future = FutureUtils.createFuture();
+        subTreeCache.getChildrenAsync(regPath).whenComplete((children, cause) -> {
+            if (null != cause) {
+                Throwable t = cause instanceof KeeperException ? new ZKException((KeeperException) cause) : cause;
+                future.completeExceptionally(t.fillInStackTrace());
+                return;
+            }
+            completeWithBookies(future, children.getValue(), children.getVersion());
+        });
+        return future;
+    }
+
+    private void completeWithBookies(CompletableFuture<Versioned<Set<BookieId>>> future,
+                                     List<String> children, Version version) {
+        Set<BookieId> bookies = convertToBookieAddresses(children);
+        List<CompletableFuture<Versioned<BookieServiceInfo>>> bookieInfoUpdated = new ArrayList<>(bookies.size());
+        for (BookieId id : bookies) {
+            // update the cache for new bookies
+            if (!bookieServiceInfoCache.containsKey(id)) {
+                bookieInfoUpdated.add(readBookieServiceInfoAsync(id));
+            }
+        }
+        if (bookieInfoUpdated.isEmpty()) {
+            future.complete(new Versioned<>(bookies, version));
+        } else {
+            FutureUtils
+                    .collect(bookieInfoUpdated)
+                    .whenComplete((List<Versioned<BookieServiceInfo>> info, Throwable error) -> {
+                        // we are ignoring errors intentionally
+                        // there could be bookies that publish unparseable information
+                        // or other temporary/permanent errors
+                        future.complete(new Versioned<>(bookies, version));
+                    });
+        }
+    }
+
 
     @Override
     public synchronized CompletableFuture<Void> watchWritableBookies(RegistrationListener listener) {
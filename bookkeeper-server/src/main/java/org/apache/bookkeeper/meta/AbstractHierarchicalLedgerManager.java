@@ -18,14 +18,27 @@
 package org.apache.bookkeeper.meta;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NavigableSet;
+import java.util.NoSuchElementException;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.bookkeeper.conf.AbstractConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRange;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.Processor;
 import org.apache.bookkeeper.util.StringUtils;
+import org.apache.bookkeeper.util.ZkUtils;
 import org.apache.zookeeper.AsyncCallback;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.KeeperException.Code;
@@ -170,6 +183,178 @@ public abstract class AbstractHierarchicalLedgerManager extends AbstractZkLedger
         }
     }
 
+    /**
+     * Iterates through the leaf nodes of the ledger hierarchy, listing up to {@code parallelism} leaf nodes
+     * concurrently ahead of the consumer.
+     *
+     * <p>The ranges are returned in the same order as the sequential iterators, in ascending order of ledger
+     * ids, so that the callers comparing the ranges with a sorted set of ledgers are not affected. Only the
+     * listing of the leaf nodes, which hold the ledger znodes, is pipelined; the intermediate levels, which
+     * are small, are listed on demand.
+     */
+    class ParallelLedgerRangeIterator implements LedgerRangeIterator {
+
+        /**
+         * A node of the hierarchy being visited, with its remaining children.
+         */
+        private class LevelNode {
+            final String path;
+            final int level;
+            final Iterator<String> children;
+
+            LevelNode(String path, int level) throws IOException {
+                this.path = path;
+                this.level = level;
+                this.children = getChildrenAt(path).iterator();
+            }
+        }
+
+        /**
+         * A leaf node whose children are being listed.
+         */
+        private class PendingLeaf {
+            final String path;
+            final CompletableFuture<List<String>> children = new CompletableFuture<>();
+
+            PendingLeaf(String path) {
+                this.path = path;
+                ZkUtils.getChildrenInSingleNode(zk, path, (rc, nodes) -> {
+                    if (Code.OK.intValue() == rc) {
+                        children.complete(nodes);
+                    } else if (Code.NONODE.intValue() == rc) {
+                        // raced with a recursive node removal
+                        children.complete(Collections.emptyList());
+                    } else {
+                        children.completeExceptionally(KeeperException.create(Code.get(rc), path));
+                    }
+                });
+            }
+        }
+
+        private final int leafDepth;
+        private final long zkOpTimeoutMs;
+        private final int parallelism;
+
+        // null until the iteration is bootstrapped
+        private Deque<LevelNode> levelNodes = null;
+        private final Deque<PendingLeaf> pendingLeaves = new ArrayDeque<>();
+        private LedgerRange nextRange = null;
+
+        /**
+         * @param leafDepth the depth, below the ledger root path, of the nodes holding the ledger znodes
+         * @param zkOpTimeoutMs the timeout of the listing of a node
+         * @param parallelism the max number of leaf nodes listed concurrently
+         */
+        ParallelLedgerRangeIterator(int leafDepth, long zkOpTimeoutMs, int parallelism) {
+            this.leafDepth = leafDepth;
+            this.zkOpTimeoutMs = zkOpTimeoutMs;
+            this.parallelism = Math.max(1, parallelism);
+        }
+
+        private List<String> getChildrenAt(String path) throws IOException {
+            try {
+                List<String> children = ZkUtils.getChildrenInSingleNode(zk, path, zkOpTimeoutMs);
+                Collections.sort(children);
+                return children;
+            } catch (KeeperException.NoNodeException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("NoNodeException at path {}, assumed race with deletion", path);
+                }
+                return new ArrayList<>();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading ledgers at path " + path, ie);
+            }
+        }
+
+        /**
+         * @return the path of the next leaf node in ascending order, or null if all the leaf nodes were visited
+         */
+        private String nextLeafPath() throws IOException {
+            if (levelNodes == null) {
+                levelNodes = new ArrayDeque<>();
+                levelNodes.push(new LevelNode(ledgerRootPath, 0));
+            }
+            while (!levelNodes.isEmpty()) {
+                LevelNode node = levelNodes.peek();
+                if (!node.children.hasNext()) {
+                    levelNodes.pop();
+                    continue;
+                }
+                String child = node.children.next();
+                if (node.level == 0 && !isLedgerParentNode(child)) {
+                    continue;
+                }
+                String childPath = node.path + "/" + child;
+                if (node.level + 1 == leafDepth) {
+                    return childPath;
+                }
+                levelNodes.push(new LevelNode(childPath, node.level + 1));
+            }
+            return null;
+        }
+
+        private void fillPipeline() throws IOException {
+            while (pendingLeaves.size() < parallelism) {
+                String leafPath = nextLeafPath();
+                if (leafPath == null) {
+                    return;
+                }
+                pendingLeaves.add(new PendingLeaf(leafPath));
+            }
+        }
+
+        private List<String> waitForChildren(PendingLeaf leaf) throws IOException {
+            try {
+                return zkOpTimeoutMs > 0
+                        ? leaf.children.get(zkOpTimeoutMs, TimeUnit.MILLISECONDS)
+                        : leaf.children.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading ledgers at path " + leaf.path, ie);
+            } catch (ExecutionException ee) {
+                throw new IOException("Error on getting children from node " + leaf.path, ee.getCause());
+            } catch (TimeoutException te) {
+                throw new IOException("Timeout on getting children from node " + leaf.path, te);
+            }
+        }
+
+        private void preload() throws IOException {
+            while (nextRange == null) {
+                fillPipeline();
+                PendingLeaf leaf = pendingLeaves.poll();
+                if (leaf == null) {
+                    return;
+                }
+                NavigableSet<Long> ledgerIds = ledgerListToSet(waitForChildren(leaf), leaf.path);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("All active ledgers from ZK for hash node {}: {}", leaf.path, ledgerIds);
+                }
+                if (!ledgerIds.isEmpty()) {
+                    nextRange = new LedgerRange(ledgerIds);
+                }
+            }
+            // keep listing the next leaf nodes while the caller processes this range
+            fillPipeline();
+        }
+
+        @Override
+        public synchronized boolean hasNext() throws IOException {
+            preload();
+            return nextRange != null;
+        }
+
+        @Override
+        public synchronized LedgerRange next() throws IOException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            LedgerRange r = nextRange;
+            nextRange = null;
+            return r;
+        }
+    }
+
     // get ledger from all level nodes
     long getLedgerId(String...levelNodes) throws IOException {
         return StringUtils.stringToHierarchicalLedgerId(levelNodes);
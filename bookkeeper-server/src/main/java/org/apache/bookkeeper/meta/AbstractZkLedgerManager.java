@@ -17,6 +17,8 @@
  */
 package org.apache.bookkeeper.meta;
 
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_METADATA_BATCH_SCOPE;
+
 import com.google.common.annotations.VisibleForTesting;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
@@ -43,6 +45,7 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.MultiCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.Processor;
+import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.BookKeeperConstants;
 import org.apache.bookkeeper.util.ZkUtils;
 import org.apache.bookkeeper.versioning.LongVersion;
@@ -85,6 +88,8 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
             new ConcurrentHashMap<Long, Set<LedgerMetadataListener>>();
     // we use this to prevent long stack chains from building up in callbacks
     protected ScheduledExecutorService scheduler;
+    // batches the ledger metadata writes, null if batching is disabled
+    private volatile ZkLedgerMetadataBatcher batcher;
 
     /**
      * ReadLedgerMetadataTask class.
@@ -194,6 +199,19 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
         }
     }
 
+    /**
+     * Batch the ledger metadata writes into zookeeper multi operations, if enabled in the configuration.
+     *
+     * @param statsLogger
+     *          stats logger of the ledger metadata batches
+     */
+    void initializeMetadataBatching(StatsLogger statsLogger) {
+        if (conf.isZkLedgerMetadataBatchEnabled() && batcher == null) {
+            batcher = new ZkLedgerMetadataBatcher(zk, scheduler, conf.getZkLedgerMetadataBatchWindowMicros(),
+                    conf.getZkLedgerMetadataBatchMaxOps(), statsLogger.scope(LEDGER_METADATA_BATCH_SCOPE));
+        }
+    }
+
     /**
      * Get the znode path that is used to store ledger metadata.
      *
@@ -341,8 +359,14 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
         }
 
         List<ACL> zkAcls = ZkUtils.getACLs(conf);
-        ZkUtils.asyncCreateFullPathOptimistic(zk, ledgerPath, data, zkAcls,
-                                              CreateMode.PERSISTENT, scb, null);
+        Runnable createOp = () -> ZkUtils.asyncCreateFullPathOptimistic(zk, ledgerPath, data, zkAcls,
+                                                                        CreateMode.PERSISTENT, scb, null);
+        ZkLedgerMetadataBatcher batcher = this.batcher;
+        if (batcher != null) {
+            batcher.create(ledgerPath, data, zkAcls, scb, createOp);
+        } else {
+            createOp.run();
+        }
         return promise;
     }
 
@@ -391,15 +415,27 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
             }
         };
         String ledgerZnodePath = getLedgerPath(ledgerId);
+        final int deleteVersion = znodeVersion;
+        final Runnable deleteOp;
+        final boolean deleteEmptyParents;
         if (this instanceof HierarchicalLedgerManager || this instanceof LongHierarchicalLedgerManager) {
             /*
              * do recursive deletes only for HierarchicalLedgerManager and
              * LongHierarchicalLedgerManager
              */
-            ZkUtils.asyncDeleteFullPathOptimistic(zk, ledgerZnodePath, znodeVersion, callbackForDelete,
-                    ledgerZnodePath);
+            deleteOp = () -> ZkUtils.asyncDeleteFullPathOptimistic(zk, ledgerZnodePath, deleteVersion,
+                    callbackForDelete, ledgerZnodePath);
+            // the batch only deletes the ledger znode, the empty parents are removed once per batch
+            deleteEmptyParents = true;
+        } else {
+            deleteOp = () -> zk.delete(ledgerZnodePath, deleteVersion, callbackForDelete, null);
+            deleteEmptyParents = false;
+        }
+        ZkLedgerMetadataBatcher batcher = this.batcher;
+        if (batcher != null) {
+            batcher.delete(ledgerZnodePath, deleteVersion, deleteEmptyParents, callbackForDelete, deleteOp);
         } else {
-            zk.delete(ledgerZnodePath, znodeVersion, callbackForDelete, null);
+            deleteOp.run();
         }
         return promise;
     }
@@ -526,9 +562,9 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
             promise.completeExceptionally(new BKException.BKMetadataSerializationException(ioe));
             return promise;
         }
-        zk.setData(getLedgerPath(ledgerId),
-                   data, (int) zv.getLongVersion(),
-                   new StatCallback() {
+        final String ledgerPath = getLedgerPath(ledgerId);
+        final int znodeVersion = (int) zv.getLongVersion();
+        StatCallback callbackForSetData = new StatCallback() {
             @Override
             public void processResult(int rc, String path, Object ctx, Stat stat) {
                 if (KeeperException.Code.BADVERSION.intValue() == rc) {
@@ -545,7 +581,14 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
                             new BKException.ZKException(KeeperException.create(Code.get(rc), path)));
                 }
             }
-        }, null);
+        };
+        Runnable setDataOp = () -> zk.setData(ledgerPath, data, znodeVersion, callbackForSetData, null);
+        ZkLedgerMetadataBatcher batcher = this.batcher;
+        if (batcher != null) {
+            batcher.setData(ledgerPath, data, znodeVersion, callbackForSetData, setDataOp);
+        } else {
+            setDataOp.run();
+        }
         return promise;
     }
 
@@ -632,6 +675,7 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
     public static boolean isLeadgerIdGeneratorZnode(String znode) {
         return LegacyHierarchicalLedgerManager.IDGEN_ZNODE.equals(znode)
             || LongHierarchicalLedgerManager.IDGEN_ZNODE.equals(znode)
+            || ZkBlockLedgerIdGenerator.IDGEN_ZNODE.equals(znode)
             || znode.startsWith(ZkLedgerIdGenerator.LEDGER_ID_GEN_PREFIX);
     }
 
@@ -687,6 +731,10 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
 
     @Override
     public void close() {
+        ZkLedgerMetadataBatcher batcher = this.batcher;
+        if (batcher != null) {
+            batcher.close();
+        }
         try {
             scheduler.shutdown();
         } catch (Exception e) {
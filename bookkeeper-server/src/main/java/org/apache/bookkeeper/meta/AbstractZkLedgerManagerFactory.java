@@ -29,6 +29,8 @@ import org.apache.bookkeeper.common.util.ReflectionUtils;
 import org.apache.bookkeeper.conf.AbstractConfiguration;
 import org.apache.bookkeeper.meta.LayoutManager.LedgerLayoutExistsException;
 import org.apache.bookkeeper.meta.zk.ZKMetadataDriverBase;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.ZKUtil;
@@ -42,6 +44,27 @@ import org.apache.zookeeper.ZooKeeper;
 public abstract class AbstractZkLedgerManagerFactory implements LedgerManagerFactory {
 
     protected ZooKeeper zk;
+    protected StatsLogger statsLogger = NullStatsLogger.INSTANCE;
+
+    /**
+     * Set the stats logger of the ledger managers created by this factory.
+     *
+     * @param statsLogger
+     *          stats logger
+     * @return ledger manager factory
+     */
+    public AbstractZkLedgerManagerFactory setStatsLogger(StatsLogger statsLogger) {
+        this.statsLogger = statsLogger;
+        return this;
+    }
+
+    /**
+     * Batch the ledger metadata writes of the given ledger manager, if enabled in the configuration.
+     */
+    protected LedgerManager withMetadataBatching(AbstractZkLedgerManager ledgerManager) {
+        ledgerManager.initializeMetadataBatching(statsLogger);
+        return ledgerManager;
+    }
 
     @SuppressWarnings("deprecation")
     @Override
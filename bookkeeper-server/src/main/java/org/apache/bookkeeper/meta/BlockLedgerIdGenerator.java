@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.meta;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ledger id generator handing out the ids of blocks of consecutive ids reserved in the metadata store.
+ *
+ * <p>A block is reserved with a single atomic update of a counter in the metadata store, and its ids are
+ * then handed out locally, so that the ledger creations don't need a metadata store round trip to get
+ * their id. The next block is reserved in the background once most of the current one is used.
+ *
+ * <p>On close, the blocks not used are given back if no other block was reserved after them, otherwise
+ * their remaining ids are skipped.
+ */
+public abstract class BlockLedgerIdGenerator implements LedgerIdGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BlockLedgerIdGenerator.class);
+
+    private static final long RELEASE_TIMEOUT_MS = 5000L;
+
+    /**
+     * A range [start, end) of ledger ids.
+     */
+    private static final class IdBlock {
+        final long end;
+        long next;
+
+        IdBlock(long start, long end) {
+            this.end = end;
+            this.next = start;
+        }
+
+        boolean isExhausted() {
+            return next >= end;
+        }
+    }
+
+    protected final int blockSize;
+    private final int prefetchThreshold;
+    private final Deque<GenericCallback<Long>> waiters = new ArrayDeque<>();
+    private IdBlock currentBlock = null;
+    private IdBlock nextBlock = null;
+    private boolean reserving = false;
+    private boolean closed = false;
+
+    protected BlockLedgerIdGenerator(int blockSize) {
+        checkArgument(blockSize > 0, "Invalid ledger id block size : %s", blockSize);
+        this.blockSize = blockSize;
+        // reserve the next block when 90% of the current one is used
+        this.prefetchThreshold = Math.max(1, blockSize / 10);
+    }
+
+    /**
+     * Reserve a block of {@code blockSize} consecutive ledger ids.
+     *
+     * @return the first id of the block, or a {@link BKException} if it couldn't be reserved.
+     */
+    protected abstract CompletableFuture<Long> reserveBlock();
+
+    /**
+     * Give back the remaining ids of a block, if it is still the last reserved block.
+     *
+     * @param next the first id not used
+     * @param end the end (exclusive) of the block
+     * @return a future completed once the ids are given back, or skipped.
+     */
+    protected abstract CompletableFuture<Void> releaseBlock(long next, long end);
+
+    @Override
+    public void generateLedgerId(GenericCallback<Long> cb) {
+        long ledgerId = -1L;
+        boolean reserve = false;
+        boolean isClosed;
+        synchronized (this) {
+            isClosed = closed;
+            if (!closed) {
+                if (waiters.isEmpty() && hasIdAvailable()) {
+                    ledgerId = takeId();
+                } else {
+                    waiters.add(cb);
+                }
+                reserve = startReservationIfNeeded();
+            }
+        }
+        if (isClosed) {
+            cb.operationComplete(BKException.Code.ClientClosedException, null);
+        } else if (ledgerId >= 0L) {
+            cb.operationComplete(BKException.Code.OK, ledgerId);
+        }
+        if (reserve) {
+            reserve();
+        }
+    }
+
+    // guarded by this
+    private boolean hasIdAvailable() {
+        if (currentBlock != null && !currentBlock.isExhausted()) {
+            return true;
+        }
+        if (nextBlock != null) {
+            currentBlock = nextBlock;
+            nextBlock = null;
+            return true;
+        }
+        return false;
+    }
+
+    // guarded by this
+    private long takeId() {
+        return currentBlock.next++;
+    }
+
+    // guarded by this
+    private boolean startReservationIfNeeded() {
+        if (reserving || closed || nextBlock != null) {
+            return false;
+        }
+        if (currentBlock == null || currentBlock.end - currentBlock.next <= prefetchThreshold
+                || !waiters.isEmpty()) {
+            reserving = true;
+            return true;
+        }
+        return false;
+    }
+
+    private void reserve() {
+        reserveBlock().whenComplete((start, cause) -> {
+            List<GenericCallback<Long>> failed = null;
+            List<GenericCallback<Long>> served = new ArrayList<>();
+            List<Long> ids = new ArrayList<>();
+            IdBlock unused = null;
+            boolean reserveAgain;
+            synchronized (BlockLedgerIdGenerator.this) {
+                reserving = false;
+                if (null != cause) {
+                    LOG.warn("Failed to reserve a block of {} ledger ids", blockSize, cause);
+                    failed = new ArrayList<>(waiters);
+                    waiters.clear();
+                } else if (closed) {
+                    unused = new IdBlock(start, start + blockSize);
+                } else {
+                    IdBlock block = new IdBlock(start, start + blockSize);
+                    if (currentBlock == null || currentBlock.isExhausted()) {
+                        currentBlock = block;
+                    } else {
+                        nextBlock = block;
+                    }
+                    while (!waiters.isEmpty() && hasIdAvailable()) {
+                        served.add(waiters.poll());
+                        ids.add(takeId());
+                    }
+                }
+                // after a failure, the next generation attempt reserves again
+                reserveAgain = null == cause && startReservationIfNeeded();
+            }
+            if (null != failed) {
+                int rc = BKException.getExceptionCode(cause, BKException.Code.MetaStoreException);
+                for (GenericCallback<Long> cb : failed) {
+                    cb.operationComplete(rc, null);
+                }
+            }
+            for (int i = 0; i < served.size(); i++) {
+                served.get(i).operationComplete(BKException.Code.OK, ids.get(i));
+            }
+            if (unused != null) {
+                release(unused);
+            }
+            if (reserveAgain) {
+                reserve();
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        final IdBlock current;
+        IdBlock next;
+        List<GenericCallback<Long>> pending;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            current = currentBlock;
+            next = nextBlock;
+            currentBlock = null;
+            nextBlock = null;
+            pending = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        for (GenericCallback<Long> cb : pending) {
+            cb.operationComplete(BKException.Code.ClientClosedException, null);
+        }
+        // the last reserved block first, so that both can be given back if they are contiguous
+        CompletableFuture<Void> released = next != null ? release(next) : FutureUtils.Void();
+        if (current != null && !current.isExhausted()) {
+            released = released.thenCompose(ignored -> release(current));
+        }
+        try {
+            released.get(RELEASE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while giving back the unused ledger ids");
+        } catch (TimeoutException te) {
+            LOG.warn("Timed out giving back the unused ledger ids after {} ms", RELEASE_TIMEOUT_MS);
+        } catch (ExecutionException ee) {
+            LOG.warn("Failed to give back the unused ledger ids", ee.getCause());
+        }
+    }
+
+    private CompletableFuture<Void> release(IdBlock block) {
+        return releaseBlock(block.next, block.end).exceptionally(cause -> {
+            LOG.warn("Failed to give back the ledger ids [{}, {})", block.next, block.end, cause);
+            return null;
+        });
+    }
+}
@@ -79,7 +79,7 @@ public class FlatLedgerManagerFactory extends AbstractZkLedgerManagerFactory {
 
     @Override
     public LedgerManager newLedgerManager() {
-        return new FlatLedgerManager(conf, zk);
+        return withMetadataBatching(new FlatLedgerManager(conf, zk));
     }
 
     @Override
@@ -92,6 +92,13 @@ class HierarchicalLedgerManager extends AbstractHierarchicalLedgerManager {
         return new HierarchicalLedgerRangeIterator(legacyLedgerRangeIterator, longLedgerRangeIterator);
     }
 
+    @Override
+    public LedgerRangeIterator getLedgerRanges(long zkOpTimeoutMs, int parallelism) {
+        LedgerRangeIterator legacyLedgerRangeIterator = legacyLM.getLedgerRanges(zkOpTimeoutMs, parallelism);
+        LedgerRangeIterator longLedgerRangeIterator = longLM.getLedgerRanges(zkOpTimeoutMs, parallelism);
+        return new HierarchicalLedgerRangeIterator(legacyLedgerRangeIterator, longLedgerRangeIterator);
+    }
+
     private static class HierarchicalLedgerRangeIterator implements LedgerRangeIterator {
 
         LedgerRangeIterator legacyLedgerRangeIterator;
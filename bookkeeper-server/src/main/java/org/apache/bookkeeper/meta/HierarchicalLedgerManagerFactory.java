@@ -33,6 +33,9 @@ public class HierarchicalLedgerManagerFactory extends LegacyHierarchicalLedgerMa
     public LedgerIdGenerator newLedgerIdGenerator() {
         List<ACL> zkAcls = ZkUtils.getACLs(conf);
         String zkLedgersRootPath = ZKMetadataDriverBase.resolveZkLedgersRootPath(conf);
+        if (conf.getLedgerIdBlockSize() > 0) {
+            return new ZkBlockLedgerIdGenerator(zk, zkLedgersRootPath, zkAcls, conf.getLedgerIdBlockSize());
+        }
         ZkLedgerIdGenerator subIdGenerator = new ZkLedgerIdGenerator(zk, zkLedgersRootPath,
                 LegacyHierarchicalLedgerManager.IDGEN_ZNODE, zkAcls);
         return new LongZkLedgerIdGenerator(zk, zkLedgersRootPath, LongHierarchicalLedgerManager.IDGEN_ZNODE,
@@ -41,6 +44,6 @@ public class HierarchicalLedgerManagerFactory extends LegacyHierarchicalLedgerMa
 
     @Override
     public LedgerManager newLedgerManager() {
-        return new HierarchicalLedgerManager(conf, zk);
+        return withMetadataBatching(new HierarchicalLedgerManager(conf, zk));
     }
 }
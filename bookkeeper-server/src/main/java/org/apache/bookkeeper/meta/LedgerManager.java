@@ -160,6 +160,24 @@ public interface LedgerManager extends Closeable {
      */
     LedgerRangeIterator getLedgerRanges(long zkOpTimeOutMs);
 
+    /**
+     * Loop to scan a range of metadata from metadata storage, fetching up to {@code parallelism}
+     * ranges concurrently ahead of the caller.
+     *
+     * <p>The ranges are returned in the same order as {@link #getLedgerRanges(long)}. Ledger managers
+     * that can't fetch ranges concurrently fall back to {@link #getLedgerRanges(long)}.
+     *
+     * @param zkOpTimeOutMs
+     *            Iterator considers timeout while fetching ledger-range from
+     *            zk.
+     * @param parallelism
+     *            max number of ranges fetched concurrently
+     * @return will return a iterator of the Ranges
+     */
+    default LedgerRangeIterator getLedgerRanges(long zkOpTimeOutMs, int parallelism) {
+        return getLedgerRanges(zkOpTimeOutMs);
+    }
+
     /**
      * Used to represent the Ledgers range returned from the
      * current scan.
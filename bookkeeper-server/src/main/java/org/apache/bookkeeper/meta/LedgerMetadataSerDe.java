@@ -35,10 +35,14 @@ import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 import org.apache.bookkeeper.client.LedgerMetadataBuilder;
 import org.apache.bookkeeper.client.LedgerMetadataUtils;
 import org.apache.bookkeeper.client.api.DigestType;
@@ -74,7 +78,14 @@ public class LedgerMetadataSerDe {
      */
     public static final int METADATA_FORMAT_VERSION_3 = 3;
 
-    public static final int MAXIMUM_METADATA_FORMAT_VERSION = METADATA_FORMAT_VERSION_3;
+    /**
+     * Protobuf based, serialized in binary format, with dictionary encoded bookie ids and delta encoded
+     * ensemble change entry ids. Large payloads are deflate compressed.
+     * Available from v4.17.x onwards.
+     */
+    public static final int METADATA_FORMAT_VERSION_4 = 4;
+
+    public static final int MAXIMUM_METADATA_FORMAT_VERSION = METADATA_FORMAT_VERSION_4;
     public static final int CURRENT_METADATA_FORMAT_VERSION = METADATA_FORMAT_VERSION_3;
     private static final int LOWEST_COMPAT_METADATA_FORMAT_VERSION = METADATA_FORMAT_VERSION_1;
 
@@ -89,6 +100,11 @@ public class LedgerMetadataSerDe {
     private static final String V1_CLOSED_TAG = "CLOSED";
     private static final int V1_IN_RECOVERY_ENTRY_ID = -102;
 
+    // V4 flags, written in a single byte after the header
+    private static final int V4_FLAG_DEFLATE = 0x1;
+    // V4 payloads larger than this are compressed
+    private static final int V4_COMPRESSION_THRESHOLD_BYTES = 1024;
+
     private static void writeHeader(OutputStream os, int version) throws IOException {
         os.write(VERSION_KEY_BYTES);
         os.write(String.valueOf(version).getBytes(UTF_8));
@@ -128,6 +144,9 @@ public class LedgerMetadataSerDe {
         int formatVersion = metadata.getMetadataFormatVersion();
         final byte[] serialized;
         switch (formatVersion) {
+        case METADATA_FORMAT_VERSION_4:
+            serialized = serializeVersion4(metadata);
+            break;
         case METADATA_FORMAT_VERSION_3:
             serialized = serializeVersion3(metadata);
             break;
@@ -155,49 +174,103 @@ public class LedgerMetadataSerDe {
     private static byte[] serializeVersion3(LedgerMetadata metadata) throws IOException {
         try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
             writeHeader(os, METADATA_FORMAT_VERSION_3);
-            LedgerMetadataFormat.Builder builder = LedgerMetadataFormat.newBuilder();
-            builder.setQuorumSize(metadata.getWriteQuorumSize())
-                .setAckQuorumSize(metadata.getAckQuorumSize())
-                .setEnsembleSize(metadata.getEnsembleSize())
-                .setLength(metadata.getLength())
-                .setLastEntryId(metadata.getLastEntryId());
-
-            switch (metadata.getState()) {
-            case CLOSED:
-                builder.setState(LedgerMetadataFormat.State.CLOSED);
-                break;
-            case IN_RECOVERY:
-                builder.setState(LedgerMetadataFormat.State.IN_RECOVERY);
-                break;
-            case OPEN:
-                builder.setState(LedgerMetadataFormat.State.OPEN);
-                break;
-            default:
-                checkArgument(false,
-                              String.format("Unknown state %s for protobuf serialization", metadata.getState()));
-                break;
-            }
+            toProtobufFormat(metadata, false).build().writeDelimitedTo(os);
+            return os.toByteArray();
+        }
+    }
 
-            /** Hack to get around fact that ctime was never versioned correctly */
-            if (LedgerMetadataUtils.shouldStoreCtime(metadata)) {
-                builder.setCtime(metadata.getCtime());
+    private static byte[] serializeVersion4(LedgerMetadata metadata) throws IOException {
+        byte[] payload;
+        try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
+            toProtobufFormat(metadata, true).build().writeDelimitedTo(os);
+            payload = os.toByteArray();
+        }
+        int flags = 0;
+        if (payload.length > V4_COMPRESSION_THRESHOLD_BYTES) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(payload.length / 2);
+            Deflater deflater = new Deflater();
+            try (DeflaterOutputStream dos = new DeflaterOutputStream(compressed, deflater)) {
+                dos.write(payload);
+            } finally {
+                deflater.end();
             }
+            if (compressed.size() < payload.length) {
+                payload = compressed.toByteArray();
+                flags |= V4_FLAG_DEFLATE;
+            }
+        }
+        try (ByteArrayOutputStream os = new ByteArrayOutputStream(payload.length + VERSION_KEY_BYTES.length + 3)) {
+            writeHeader(os, METADATA_FORMAT_VERSION_4);
+            os.write(flags);
+            os.write(payload);
+            return os.toByteArray();
+        }
+    }
+
+    private static LedgerMetadataFormat.Builder toProtobufFormat(LedgerMetadata metadata, boolean dictionaryEncoded) {
+        LedgerMetadataFormat.Builder builder = LedgerMetadataFormat.newBuilder();
+        builder.setQuorumSize(metadata.getWriteQuorumSize())
+            .setAckQuorumSize(metadata.getAckQuorumSize())
+            .setEnsembleSize(metadata.getEnsembleSize())
+            .setLength(metadata.getLength())
+            .setLastEntryId(metadata.getLastEntryId());
+
+        switch (metadata.getState()) {
+        case CLOSED:
+            builder.setState(LedgerMetadataFormat.State.CLOSED);
+            break;
+        case IN_RECOVERY:
+            builder.setState(LedgerMetadataFormat.State.IN_RECOVERY);
+            break;
+        case OPEN:
+            builder.setState(LedgerMetadataFormat.State.OPEN);
+            break;
+        default:
+            checkArgument(false,
+                          String.format("Unknown state %s for protobuf serialization", metadata.getState()));
+            break;
+        }
 
+        /** Hack to get around fact that ctime was never versioned correctly */
+        if (LedgerMetadataUtils.shouldStoreCtime(metadata)) {
+            builder.setCtime(metadata.getCtime());
+        }
 
-            builder.setDigestType(apiToProtoDigestType(metadata.getDigestType()));
 
-            serializePassword(metadata.getPassword(), builder);
+        builder.setDigestType(apiToProtoDigestType(metadata.getDigestType()));
 
-            Map<String, byte[]> customMetadata = metadata.getCustomMetadata();
-            if (customMetadata.size() > 0) {
-                LedgerMetadataFormat.cMetadataMapEntry.Builder cMetadataBuilder =
-                    LedgerMetadataFormat.cMetadataMapEntry.newBuilder();
-                for (Map.Entry<String, byte[]> entry : customMetadata.entrySet()) {
-                    cMetadataBuilder.setKey(entry.getKey()).setValue(ByteString.copyFrom(entry.getValue()));
-                    builder.addCustomMetadata(cMetadataBuilder.build());
-                }
+        serializePassword(metadata.getPassword(), builder);
+
+        Map<String, byte[]> customMetadata = metadata.getCustomMetadata();
+        if (customMetadata.size() > 0) {
+            LedgerMetadataFormat.cMetadataMapEntry.Builder cMetadataBuilder =
+                LedgerMetadataFormat.cMetadataMapEntry.newBuilder();
+            for (Map.Entry<String, byte[]> entry : customMetadata.entrySet()) {
+                cMetadataBuilder.setKey(entry.getKey()).setValue(ByteString.copyFrom(entry.getValue()));
+                builder.addCustomMetadata(cMetadataBuilder.build());
             }
+        }
 
+        if (dictionaryEncoded) {
+            Map<BookieId, Integer> bookieIndexes = new HashMap<>();
+            long prevFirstEntryId = 0L;
+            for (Map.Entry<Long, ? extends List<BookieId>> entry : metadata.getAllEnsembles().entrySet()) {
+                LedgerMetadataFormat.CompactSegment.Builder segmentBuilder =
+                    LedgerMetadataFormat.CompactSegment.newBuilder();
+                segmentBuilder.setFirstEntryIdDelta(entry.getKey() - prevFirstEntryId);
+                prevFirstEntryId = entry.getKey();
+                for (BookieId addr : entry.getValue()) {
+                    Integer index = bookieIndexes.get(addr);
+                    if (index == null) {
+                        index = bookieIndexes.size();
+                        bookieIndexes.put(addr, index);
+                        builder.addBookieId(addr.toString());
+                    }
+                    segmentBuilder.addEnsembleMemberIndex(index);
+                }
+                builder.addCompactSegment(segmentBuilder.build());
+            }
+        } else {
             for (Map.Entry<Long, ? extends List<BookieId>> entry : metadata.getAllEnsembles().entrySet()) {
                 LedgerMetadataFormat.Segment.Builder segmentBuilder = LedgerMetadataFormat.Segment.newBuilder();
                 segmentBuilder.setFirstEntryId(entry.getKey());
@@ -206,12 +279,10 @@ public class LedgerMetadataSerDe {
                 }
                 builder.addSegment(segmentBuilder.build());
             }
-
-            builder.setCToken(metadata.getCToken());
-
-            builder.build().writeDelimitedTo(os);
-            return os.toByteArray();
         }
+
+        builder.setCToken(metadata.getCToken());
+        return builder;
     }
 
     private static byte[] serializeVersion2(LedgerMetadata metadata) throws IOException {
@@ -353,6 +424,8 @@ public class LedgerMetadataSerDe {
             }
 
             switch (metadataFormatVersion) {
+            case METADATA_FORMAT_VERSION_4:
+                return parseVersion4Config(ledgerId, is, metadataStoreCtime);
             case METADATA_FORMAT_VERSION_3:
                 return parseVersion3Config(ledgerId, is, metadataStoreCtime);
             case METADATA_FORMAT_VERSION_2:
@@ -362,17 +435,36 @@ public class LedgerMetadataSerDe {
             default:
                 throw new IOException(
                         String.format("Metadata version not compatible. Expected between %d and %d, but got %d",
-                                      LOWEST_COMPAT_METADATA_FORMAT_VERSION, CURRENT_METADATA_FORMAT_VERSION,
+                                      LOWEST_COMPAT_METADATA_FORMAT_VERSION, MAXIMUM_METADATA_FORMAT_VERSION,
                                       metadataFormatVersion));
             }
         }
     }
 
+    private static LedgerMetadata parseVersion4Config(long ledgerId, InputStream is, Optional<Long> metadataStoreCtime)
+            throws IOException {
+        int flags = is.read();
+        if (flags < 0) {
+            throw new IOException("Ledger metadata flags missing, metadata appears corrupt");
+        }
+        if ((flags & V4_FLAG_DEFLATE) != 0) {
+            try (InputStream inflated = new InflaterInputStream(is)) {
+                return parseBinaryFormat(ledgerId, inflated, metadataStoreCtime, METADATA_FORMAT_VERSION_4);
+            }
+        }
+        return parseBinaryFormat(ledgerId, is, metadataStoreCtime, METADATA_FORMAT_VERSION_4);
+    }
+
     private static LedgerMetadata parseVersion3Config(long ledgerId, InputStream is, Optional<Long> metadataStoreCtime)
             throws IOException {
+        return parseBinaryFormat(ledgerId, is, metadataStoreCtime, METADATA_FORMAT_VERSION_3);
+    }
+
+    private static LedgerMetadata parseBinaryFormat(long ledgerId, InputStream is, Optional<Long> metadataStoreCtime,
+                                                    int metadataFormatVersion) throws IOException {
         LedgerMetadataBuilder builder = LedgerMetadataBuilder.create()
                 .withId(ledgerId)
-                .withMetadataFormatVersion(METADATA_FORMAT_VERSION_3);
+                .withMetadataFormatVersion(metadataFormatVersion);
         LedgerMetadataFormat.Builder formatBuilder = LedgerMetadataFormat.newBuilder();
         formatBuilder.mergeDelimitedFrom(is);
         LedgerMetadataFormat data = formatBuilder.build();
@@ -438,6 +530,25 @@ public class LedgerMetadataSerDe {
             builder.newEnsembleEntry(s.getFirstEntryId(), addrs);
         }
 
+        if (data.getCompactSegmentCount() > 0) {
+            List<BookieId> bookieIds = new ArrayList<>(data.getBookieIdCount());
+            for (String addr : data.getBookieIdList()) {
+                bookieIds.add(BookieId.parse(addr));
+            }
+            long firstEntryId = 0L;
+            for (LedgerMetadataFormat.CompactSegment s : data.getCompactSegmentList()) {
+                firstEntryId += s.getFirstEntryIdDelta();
+                List<BookieId> addrs = new ArrayList<>(s.getEnsembleMemberIndexCount());
+                for (int index : s.getEnsembleMemberIndexList()) {
+                    if (index < 0 || index >= bookieIds.size()) {
+                        throw new IOException("Invalid bookie index " + index + " in ledger metadata");
+                    }
+                    addrs.add(bookieIds.get(index));
+                }
+                builder.newEnsembleEntry(firstEntryId, addrs);
+            }
+        }
+
         if (data.getCustomMetadataCount() > 0) {
             builder.withCustomMetadata(data.getCustomMetadataList().stream().collect(
                                                Collectors.toMap(e -> e.getKey(),
@@ -234,6 +234,29 @@ public interface LedgerUnderreplicationManager extends AutoCloseable {
      */
     long getReplicasCheckCTime() throws ReplicationException.UnavailableException;
 
+    /**
+     * Setter for the progress of an incremental auditor check, so that a new auditor can resume the check pass
+     * after a failover.
+     *
+     * @param checkName name of the auditor check
+     * @param lastCheckedLedgerId all the ledgers up to this id have been checked in the current pass,
+     *                            -1 if there is no pass in progress
+     * @throws ReplicationException.UnavailableException
+     */
+    default void setAuditorCheckpoint(String checkName, long lastCheckedLedgerId)
+            throws ReplicationException.UnavailableException {}
+
+    /**
+     * Getter for the progress of an incremental auditor check.
+     *
+     * @param checkName name of the auditor check
+     * @return the id of the last checked ledger of the pass in progress, -1 if there is no pass in progress
+     * @throws ReplicationException.UnavailableException
+     */
+    default long getAuditorCheckpoint(String checkName) throws ReplicationException.UnavailableException {
+        return -1;
+    }
+
     /**
      * Receive notification asynchronously when the num of under-replicated ledgers  Changed.
      *
@@ -156,6 +156,15 @@ class LegacyHierarchicalLedgerManager extends AbstractHierarchicalLedgerManager
         return new LegacyHierarchicalLedgerRangeIterator(zkOpTimeoutMs);
     }
 
+    @Override
+    public LedgerRangeIterator getLedgerRanges(long zkOpTimeoutMs, int parallelism) {
+        if (parallelism <= 1) {
+            return getLedgerRanges(zkOpTimeoutMs);
+        }
+        // (ledgersRootPath) / level1 / level2 / L(level3)
+        return new ParallelLedgerRangeIterator(2, zkOpTimeoutMs, parallelism);
+    }
+
     /**
      * Iterator through each metadata bucket with hierarchical mode.
      */
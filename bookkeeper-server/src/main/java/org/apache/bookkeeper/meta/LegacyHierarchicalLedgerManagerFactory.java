@@ -86,7 +86,7 @@ public class LegacyHierarchicalLedgerManagerFactory extends AbstractZkLedgerMana
 
     @Override
     public LedgerManager newLedgerManager() {
-        return new LegacyHierarchicalLedgerManager(conf, zk);
+        return withMetadataBatching(new LegacyHierarchicalLedgerManager(conf, zk));
     }
 
     @Override
@@ -142,6 +142,15 @@ class LongHierarchicalLedgerManager extends AbstractHierarchicalLedgerManager {
         return new LongHierarchicalLedgerRangeIterator(zkOpTimeoutMs);
     }
 
+    @Override
+    public LedgerRangeIterator getLedgerRanges(long zkOpTimeoutMs, int parallelism) {
+        if (parallelism <= 1) {
+            return getLedgerRanges(zkOpTimeoutMs);
+        }
+        // (ledgersRootPath) / level0 / level1 / level2 / level3 / L(level4)
+        return new ParallelLedgerRangeIterator(4, zkOpTimeoutMs, parallelism);
+    }
+
 
     /**
      * Iterates recursively through each metadata bucket.
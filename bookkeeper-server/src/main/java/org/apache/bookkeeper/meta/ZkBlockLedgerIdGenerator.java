@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.meta;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.ACL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ZooKeeper based ledger id generator reserving blocks of ids.
+ *
+ * <p>The next id not reserved is stored in the <i>(ledgersPath)/idgen-block</i> znode, and a block is
+ * reserved by a conditional update of this znode. The blocks are allocated from {@link #FIRST_BLOCK_ID},
+ * far above the ids of the sequential znode based generators, so that the clients using blocks and the
+ * clients using {@link LongZkLedgerIdGenerator} can run against the same cluster. Since these ids don't
+ * fit in 32 bits, the blocks require a ledger manager supporting 63 bits ledger ids.
+ */
+public class ZkBlockLedgerIdGenerator extends BlockLedgerIdGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ZkBlockLedgerIdGenerator.class);
+
+    static final String IDGEN_ZNODE = "idgen-block";
+
+    /**
+     * The first id handed out in blocks, the sequential znode based generators won't reach it.
+     */
+    static final long FIRST_BLOCK_ID = 1L << 62;
+
+    private final ZooKeeper zk;
+    private final String idGenPath;
+    private final List<ACL> zkAcls;
+
+    public ZkBlockLedgerIdGenerator(ZooKeeper zk, String ledgersPath, List<ACL> zkAcls, int blockSize) {
+        super(blockSize);
+        this.zk = zk;
+        this.idGenPath = ledgersPath + "/" + IDGEN_ZNODE;
+        this.zkAcls = zkAcls;
+    }
+
+    private static byte[] toBytes(long nextId) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(nextId).array();
+    }
+
+    private static long fromBytes(byte[] data) {
+        return ByteBuffer.wrap(data).getLong();
+    }
+
+    @Override
+    protected CompletableFuture<Long> reserveBlock() {
+        CompletableFuture<Long> promise = new CompletableFuture<>();
+        reserveBlock(promise);
+        return promise;
+    }
+
+    private void reserveBlock(CompletableFuture<Long> promise) {
+        zk.getData(idGenPath, false, (rc, path, ctx, data, stat) -> {
+            if (Code.NONODE.intValue() == rc) {
+                // the first block
+                zk.create(idGenPath, toBytes(FIRST_BLOCK_ID + blockSize), zkAcls, CreateMode.PERSISTENT,
+                    (createRc, createPath, createCtx, name) -> {
+                        if (Code.OK.intValue() == createRc) {
+                            promise.complete(FIRST_BLOCK_ID);
+                        } else if (Code.NODEEXISTS.intValue() == createRc) {
+                            reserveBlock(promise);
+                        } else {
+                            fail(promise, createRc);
+                        }
+                    }, null);
+                return;
+            } else if (Code.OK.intValue() != rc) {
+                fail(promise, rc);
+                return;
+            }
+            long start = fromBytes(data);
+            if (start > Long.MAX_VALUE - blockSize) {
+                LOG.error("Ledger id blocks are exhausted, the next id is {}", start);
+                promise.completeExceptionally(new BKException.BKLedgerIdOverflowException());
+                return;
+            }
+            zk.setData(idGenPath, toBytes(start + blockSize), stat.getVersion(), (setRc, setPath, setCtx, newStat) -> {
+                if (Code.OK.intValue() == setRc) {
+                    promise.complete(start);
+                } else if (Code.BADVERSION.intValue() == setRc) {
+                    // another client reserved a block meanwhile
+                    reserveBlock(promise);
+                } else {
+                    fail(promise, setRc);
+                }
+            }, null);
+        }, null);
+    }
+
+    private void fail(CompletableFuture<Long> promise, int rc) {
+        LOG.error("Could not reserve a block of ledger ids", KeeperException.create(Code.get(rc), idGenPath));
+        promise.completeExceptionally(new BKException.ZKException());
+    }
+
+    @Override
+    protected CompletableFuture<Void> releaseBlock(long next, long end) {
+        CompletableFuture<Void> promise = new CompletableFuture<>();
+        zk.getData(idGenPath, false, (rc, path, ctx, data, stat) -> {
+            if (Code.OK.intValue() != rc || fromBytes(data) != end) {
+                // a block was reserved after this one, its remaining ids are skipped
+                promise.complete(null);
+                return;
+            }
+            zk.setData(idGenPath, toBytes(next), stat.getVersion(), (setRc, setPath, setCtx, newStat) -> {
+                if (Code.OK.intValue() == setRc && LOG.isDebugEnabled()) {
+                    LOG.debug("Gave back the ledger ids [{}, {})", next, end);
+                }
+                promise.complete(null);
+            }, null);
+        }, null);
+        return promise;
+    }
+}
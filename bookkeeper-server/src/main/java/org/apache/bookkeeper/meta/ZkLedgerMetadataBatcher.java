@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.meta;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_METADATA_BATCH_FALLBACKS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_METADATA_BATCH_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_METADATA_BATCH_SIZE;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.apache.bookkeeper.util.ZkUtils;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.AsyncCallback.StringCallback;
+import org.apache.zookeeper.AsyncCallback.VoidCallback;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.ACL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces the ledger metadata writes issued concurrently into zookeeper multi operations.
+ *
+ * <p>The operations submitted within a short window, or until the batch is full, are sent in a single
+ * {@link ZooKeeper#multi} transaction and their results are split back to their callbacks. A multi
+ * transaction is atomic: if one of its operations fails (e.g. a version conflict or a missing parent
+ * znode), none is applied and every operation of the batch is retried on its own through its fallback,
+ * which is the regular non batched write, so that each operation gets its own result.
+ *
+ * <p>A batch is also bounded by its serialized size, so that the multi request stays under the
+ * {@code jute.maxbuffer} packet size limit of zookeeper. The deletions of the hierarchical ledger managers
+ * remove the parent znodes that became empty once per batch, instead of once per deleted ledger.
+ */
+@StatsDoc(
+    name = LEDGER_METADATA_BATCH_SCOPE,
+    help = "Ledger metadata batching related stats"
+)
+class ZkLedgerMetadataBatcher implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ZkLedgerMetadataBatcher.class);
+
+    /**
+     * Callback of an operation of a batch.
+     */
+    private interface OpCallback {
+        void complete(int rc, String path, OpResult result);
+    }
+
+    private static class PendingOp {
+        final Op op;
+        final int size;
+        final OpCallback callback;
+        final Runnable fallback;
+        // parent znode to remove after the batch if it became empty, null if none
+        final String parentToClean;
+
+        PendingOp(Op op, int size, OpCallback callback, Runnable fallback, String parentToClean) {
+            this.op = op;
+            this.size = size;
+            this.callback = callback;
+            this.fallback = fallback;
+            this.parentToClean = parentToClean;
+        }
+    }
+
+    // default packet size limit of zookeeper, see ClientCnxn
+    private static final int DEFAULT_JUTE_MAX_BUFFER = 0xfffff;
+    // room left in a multi request for the request header and the per operation headers of the batch
+    private static final int MULTI_HEADER_BYTES = 1024;
+    private static final int OP_HEADER_BYTES = 32;
+
+    private final ZooKeeper zk;
+    private final ScheduledExecutorService scheduler;
+    private final long windowMicros;
+    private final int maxOps;
+    private final int maxBytes;
+
+    @StatsDoc(
+        name = LEDGER_METADATA_BATCH_SIZE,
+        help = "The distribution of the number of ledger metadata writes per zookeeper multi operation"
+    )
+    private final OpStatsLogger batchSizeStats;
+    @StatsDoc(
+        name = LEDGER_METADATA_BATCH_FALLBACKS,
+        help = "The number of batches retried as individual operations because one of their operations failed"
+    )
+    private final Counter fallbacks;
+
+    private List<PendingOp> batch = new ArrayList<>();
+    private int batchBytes = 0;
+    private boolean closed = false;
+
+    ZkLedgerMetadataBatcher(ZooKeeper zk, ScheduledExecutorService scheduler, long windowMicros, int maxOps,
+                            StatsLogger statsLogger) {
+        this.zk = zk;
+        this.scheduler = scheduler;
+        this.windowMicros = windowMicros;
+        this.maxOps = Math.max(1, maxOps);
+        this.maxBytes = Integer.getInteger("jute.maxbuffer", DEFAULT_JUTE_MAX_BUFFER) - MULTI_HEADER_BYTES;
+        this.batchSizeStats = statsLogger.getOpStatsLogger(LEDGER_METADATA_BATCH_SIZE);
+        this.fallbacks = statsLogger.getCounter(LEDGER_METADATA_BATCH_FALLBACKS);
+    }
+
+    /**
+     * Create a persistent znode in the next batch.
+     *
+     * @param fallback the individual creation, used if the batch fails
+     */
+    void create(String path, byte[] data, List<ACL> acls, StringCallback cb, Runnable fallback) {
+        int size = opSize(path, data);
+        for (ACL acl : acls) {
+            size += OP_HEADER_BYTES + acl.getId().getScheme().length() + acl.getId().getId().length();
+        }
+        add(new PendingOp(Op.create(path, data, acls, CreateMode.PERSISTENT), size,
+                (rc, opPath, result) -> cb.processResult(rc, opPath, null, opPath), fallback, null));
+    }
+
+    /**
+     * Set the data of a znode in the next batch.
+     *
+     * @param fallback the individual update, used if the batch fails
+     */
+    void setData(String path, byte[] data, int version, StatCallback cb, Runnable fallback) {
+        add(new PendingOp(Op.setData(path, data, version), opSize(path, data),
+                (rc, opPath, result) -> cb.processResult(rc, opPath, null,
+                        result instanceof OpResult.SetDataResult ? ((OpResult.SetDataResult) result).getStat() : null),
+                fallback, null));
+    }
+
+    /**
+     * Delete a znode in the next batch.
+     *
+     * @param deleteEmptyParents whether to remove the parent znodes left empty by the deletion, the callback
+     *                           is completed once they are removed
+     * @param fallback the individual deletion, used if the batch fails
+     */
+    void delete(String path, int version, boolean deleteEmptyParents, VoidCallback cb, Runnable fallback) {
+        add(new PendingOp(Op.delete(path, version), opSize(path, null),
+                (rc, opPath, result) -> cb.processResult(rc, opPath, null), fallback,
+                deleteEmptyParents ? path.substring(0, path.lastIndexOf('/')) : null));
+    }
+
+    private static int opSize(String path, byte[] data) {
+        return OP_HEADER_BYTES + path.getBytes(StandardCharsets.UTF_8).length + (data == null ? 0 : data.length);
+    }
+
+    private void add(PendingOp pendingOp) {
+        List<PendingOp> fullBatch = null;
+        List<PendingOp> toFlush = null;
+        boolean scheduleFlush = false;
+        synchronized (this) {
+            if (closed) {
+                toFlush = new ArrayList<>(1);
+                toFlush.add(pendingOp);
+            } else {
+                if (!batch.isEmpty() && batchBytes + pendingOp.size > maxBytes) {
+                    // the operation does not fit in the multi request of the pending batch
+                    fullBatch = batch;
+                    batch = new ArrayList<>();
+                    batchBytes = 0;
+                }
+                batch.add(pendingOp);
+                batchBytes += pendingOp.size;
+                if (batch.size() >= maxOps || batchBytes >= maxBytes) {
+                    toFlush = batch;
+                    batch = new ArrayList<>();
+                    batchBytes = 0;
+                } else {
+                    scheduleFlush = batch.size() == 1;
+                }
+            }
+        }
+        if (fullBatch != null) {
+            send(fullBatch);
+        }
+        if (toFlush != null) {
+            send(toFlush);
+        } else if (scheduleFlush) {
+            try {
+                scheduler.schedule(this::flush, windowMicros, TimeUnit.MICROSECONDS);
+            } catch (RejectedExecutionException ree) {
+                flush();
+            }
+        }
+    }
+
+    private void flush() {
+        List<PendingOp> toFlush;
+        synchronized (this) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            toFlush = batch;
+            batch = new ArrayList<>();
+            batchBytes = 0;
+        }
+        send(toFlush);
+    }
+
+    private void send(List<PendingOp> ops) {
+        batchSizeStats.registerSuccessfulValue(ops.size());
+        if (ops.size() == 1) {
+            // no need for a transaction
+            ops.get(0).fallback.run();
+            return;
+        }
+        List<Op> zkOps = new ArrayList<>(ops.size());
+        for (PendingOp op : ops) {
+            zkOps.add(op.op);
+        }
+        zk.multi(zkOps, (rc, path, ctx, results) -> {
+            if (rc == Code.OK.intValue()) {
+                // the callbacks of the deletions complete after their parent znode is cleaned up
+                Map<String, List<Runnable>> completionsByParent = new LinkedHashMap<>();
+                for (int i = 0; i < ops.size(); i++) {
+                    PendingOp op = ops.get(i);
+                    OpResult result = results.get(i);
+                    Runnable completion = () -> op.callback.complete(rc, op.op.getPath(), result);
+                    if (op.parentToClean == null) {
+                        completion.run();
+                    } else {
+                        completionsByParent.computeIfAbsent(op.parentToClean, p -> new ArrayList<>())
+                                .add(completion);
+                    }
+                }
+                for (Map.Entry<String, List<Runnable>> e : completionsByParent.entrySet()) {
+                    deleteIfEmpty(e.getKey(), () -> e.getValue().forEach(Runnable::run));
+                }
+            } else if (results != null && !results.isEmpty()) {
+                // one of the operations failed and none was applied, retry them individually
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Batch of {} ledger metadata writes failed : {}, retrying them individually",
+                            ops.size(), Code.get(rc));
+                }
+                fallbacks.inc();
+                for (PendingOp op : ops) {
+                    op.fallback.run();
+                }
+            } else {
+                for (PendingOp op : ops) {
+                    op.callback.complete(rc, op.op.getPath(), null);
+                }
+            }
+        }, null);
+    }
+
+    /**
+     * Remove the given znode, and its ancestors, if it has no children. The removal is best effort.
+     */
+    private void deleteIfEmpty(String path, Runnable done) {
+        zk.exists(path, false, (rc, p, ctx, stat) -> {
+            if (rc == Code.OK.intValue() && stat != null && stat.getNumChildren() == 0) {
+                ZkUtils.asyncDeleteFullPathOptimistic(zk, path, -1, (dRc, dPath, dCtx) -> done.run(), path);
+            } else {
+                done.run();
+            }
+        }, null);
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+    }
+}
@@ -37,6 +37,7 @@ import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -45,6 +46,7 @@ import org.apache.bookkeeper.conf.AbstractConfiguration;
 import org.apache.bookkeeper.meta.zk.ZKMetadataDriverBase;
 import org.apache.bookkeeper.net.DNS;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
+import org.apache.bookkeeper.proto.DataFormats.AuditorCheckpointFormat;
 import org.apache.bookkeeper.proto.DataFormats.CheckAllLedgersFormat;
 import org.apache.bookkeeper.proto.DataFormats.LedgerRereplicationLayoutFormat;
 import org.apache.bookkeeper.proto.DataFormats.LockDataFormat;
@@ -57,6 +59,7 @@ import org.apache.bookkeeper.replication.ReplicationException.UnavailableExcepti
 import org.apache.bookkeeper.util.BookKeeperConstants;
 import org.apache.bookkeeper.util.SubTreeCache;
 import org.apache.bookkeeper.util.ZkUtils;
+import org.apache.bookkeeper.zookeeper.ZkSubTreeCache;
 import org.apache.zookeeper.AddWatchMode;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
@@ -123,7 +126,19 @@ public class ZkLedgerUnderreplicationManager implements LedgerUnderreplicationMa
     private final String placementPolicyCheckCtimeZnode;
     private final String replicasCheckCtimeZnode;
     private final ZooKeeper zkc;
+    // exactly one of the caches is used, depending on whether the shared subtree cache is enabled
     private final SubTreeCache subTreeCache;
+    private final ZkSubTreeCache sharedSubTreeCache;
+    // the shared subtree cache is reference counted, it must be released only once
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /**
+     * Registration of a watcher of the underreplicated ledgers.
+     */
+    private interface SubTreeWatchGuard extends AutoCloseable {
+        @Override
+        void close();
+    }
 
     public ZkLedgerUnderreplicationManager(AbstractConfiguration conf, ZooKeeper zkc)
             throws UnavailableException, InterruptedException, ReplicationException.CompatibilityException {
@@ -140,18 +155,25 @@ public class ZkLedgerUnderreplicationManager implements LedgerUnderreplicationMa
         replicasCheckCtimeZnode = basePath + '/' + BookKeeperConstants.REPLICAS_CHECK_CTIME;
         idExtractionPattern = Pattern.compile("urL(\\d+)$");
         this.zkc = zkc;
-        this.subTreeCache = new SubTreeCache(new SubTreeCache.TreeProvider() {
-            @Override
-            public List<String> getChildren(String path, Watcher watcher) throws InterruptedException, KeeperException {
-                return zkc.getChildren(path, watcher);
-            }
-        });
-
         try {
             checkLayout();
         } catch (KeeperException ke) {
             throw ReplicationException.fromKeeperException("", ke);
         }
+
+        if (conf.isZkSubTreeCacheEnabled()) {
+            this.subTreeCache = null;
+            this.sharedSubTreeCache = ZkSubTreeCache.acquire(zkc, basePath);
+        } else {
+            this.subTreeCache = new SubTreeCache(new SubTreeCache.TreeProvider() {
+                @Override
+                public List<String> getChildren(String path, Watcher watcher)
+                        throws InterruptedException, KeeperException {
+                    return zkc.getChildren(path, watcher);
+                }
+            });
+            this.sharedSubTreeCache = null;
+        }
     }
 
     public static String getBasePath(String rootPath) {
@@ -502,12 +524,26 @@ public class ZkLedgerUnderreplicationManager implements LedgerUnderreplicationMa
         };
     }
 
+    private List<String> getCachedChildren(String path) throws KeeperException, InterruptedException {
+        if (sharedSubTreeCache != null) {
+            return sharedSubTreeCache.getChildren(path);
+        }
+        return subTreeCache.getChildren(path);
+    }
+
+    private SubTreeWatchGuard watchSubTree(Watcher watcher) {
+        if (sharedSubTreeCache != null) {
+            return sharedSubTreeCache.registerListenerWithGuard(watcher)::close;
+        }
+        return subTreeCache.registerWatcherWithGuard(watcher)::close;
+    }
+
     private long getLedgerToRereplicateFromHierarchy(String parent, long depth)
             throws KeeperException, InterruptedException {
         if (depth == 4) {
             List<String> children;
             try {
-                children = subTreeCache.getChildren(parent);
+                children = getCachedChildren(parent);
             } catch (KeeperException.NoNodeException nne) {
                 // can occur if another underreplicated ledger's
                 // hierarchy is being cleaned up
@@ -519,7 +555,7 @@ public class ZkLedgerUnderreplicationManager implements LedgerUnderreplicationMa
             while (children.size() > 0) {
                 String tryChild = children.get(0);
                 try {
-                    List<String> locks = subTreeCache.getChildren(urLockPath);
+                    List<String> locks = getCachedChildren(urLockPath);
                     if (locks.contains(tryChild)) {
                         children.remove(tryChild);
                         continue;
@@ -550,7 +586,7 @@ public class ZkLedgerUnderreplicationManager implements LedgerUnderreplicationMa
 
         List<String> children;
         try {
-            children = subTreeCache.getChildren(parent);
+            children = getCachedChildren(parent);
         } catch (KeeperException.NoNodeException nne) {
             // can occur if another underreplicated ledger's
             // hierarchy is being cleaned up
@@ -601,7 +637,7 @@ public class ZkLedgerUnderreplicationManager implements LedgerUnderreplicationMa
                     changedLatch.countDown();
                 }
             };
-            try (SubTreeCache.WatchGuard wg = subTreeCache.registerWatcherWithGuard(w)) {
+            try (SubTreeWatchGuard wg = watchSubTree(w)) {
                 waitIfLedgerReplicationDisabled();
                 long ledger = getLedgerToRereplicateFromHierarchy(urLedgerPath, 0);
                 if (ledger != -1) {
@@ -666,6 +702,10 @@ public class ZkLedgerUnderreplicationManager implements LedgerUnderreplicationMa
         } catch (InterruptedException ie) {
             Thread.currentThread().interrupt();
             throw new ReplicationException.UnavailableException("Interrupted while connecting zookeeper", ie);
+        } finally {
+            if (sharedSubTreeCache != null && closed.compareAndSet(false, true)) {
+                sharedSubTreeCache.close();
+            }
         }
     }
 
@@ -1090,4 +1130,55 @@ public class ZkLedgerUnderreplicationManager implements LedgerUnderreplicationMa
             throw new ReplicationException.UnavailableException("Error while parsing ZK protobuf binary data", ipbe);
         }
     }
+
+    private String getAuditorCheckpointZnode(String checkName) {
+        return basePath + '/' + checkName.toLowerCase() + BookKeeperConstants.AUDITOR_CHECKPOINT_SUFFIX;
+    }
+
+    @Override
+    public void setAuditorCheckpoint(String checkName, long lastCheckedLedgerId) throws UnavailableException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("setAuditorCheckpoint({}, {})", checkName, lastCheckedLedgerId);
+        }
+        String checkpointZnode = getAuditorCheckpointZnode(checkName);
+        try {
+            List<ACL> zkAcls = ZkUtils.getACLs(conf);
+            AuditorCheckpointFormat.Builder builder = AuditorCheckpointFormat.newBuilder();
+            builder.setLastCheckedLedgerId(lastCheckedLedgerId);
+            builder.setCheckpointCTime(System.currentTimeMillis());
+            byte[] checkpointFormatByteArray = builder.build().toByteArray();
+            try {
+                zkc.create(checkpointZnode, checkpointFormatByteArray, zkAcls, CreateMode.PERSISTENT);
+            } catch (KeeperException.NodeExistsException nee) {
+                // the checkpoint of a previous pass, or of another auditor
+                zkc.setData(checkpointZnode, checkpointFormatByteArray, -1);
+            }
+        } catch (KeeperException ke) {
+            throw ReplicationException.fromKeeperException("Error contacting zookeeper", ke);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ReplicationException.UnavailableException("Interrupted while contacting zookeeper", ie);
+        }
+    }
+
+    @Override
+    public long getAuditorCheckpoint(String checkName) throws UnavailableException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("getAuditorCheckpoint({})", checkName);
+        }
+        try {
+            byte[] data = zkc.getData(getAuditorCheckpointZnode(checkName), false, null);
+            AuditorCheckpointFormat checkpointFormat = AuditorCheckpointFormat.parseFrom(data);
+            return checkpointFormat.hasLastCheckedLedgerId() ? checkpointFormat.getLastCheckedLedgerId() : -1;
+        } catch (KeeperException.NoNodeException ne) {
+            return -1;
+        } catch (KeeperException ke) {
+            throw ReplicationException.fromKeeperException("Error contacting zookeeper", ke);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ReplicationException.UnavailableException("Interrupted while contacting zookeeper", ie);
+        } catch (InvalidProtocolBufferException ipbe) {
+            throw new ReplicationException.UnavailableException("Error while parsing ZK protobuf binary data", ipbe);
+        }
+    }
 }
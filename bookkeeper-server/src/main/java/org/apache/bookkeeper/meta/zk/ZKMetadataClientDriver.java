@@ -90,7 +90,8 @@ public class ZKMetadataClientDriver
     @VisibleForTesting
     ZKRegistrationClient newZKRegistrationClient(ZooKeeper zk, String ledgersRootPath,
                                                  ScheduledExecutorService scheduler, boolean bookieAddressTracking) {
-        return new ZKRegistrationClient(zk, ledgersRootPath, scheduler, bookieAddressTracking);
+        return new ZKRegistrationClient(zk, ledgersRootPath, scheduler, bookieAddressTracking,
+                clientConf.isZkSubTreeCacheEnabled());
     }
 
     @Override
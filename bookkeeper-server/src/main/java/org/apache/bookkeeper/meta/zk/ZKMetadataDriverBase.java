@@ -259,6 +259,9 @@ public class ZKMetadataDriverBase implements AutoCloseable {
                 lmFactory = AbstractZkLedgerManagerFactory.newLedgerManagerFactory(
                     conf,
                     layoutManager);
+                if (lmFactory instanceof AbstractZkLedgerManagerFactory && null != statsLogger) {
+                    ((AbstractZkLedgerManagerFactory) lmFactory).setStatsLogger(statsLogger);
+                }
             } catch (IOException e) {
                 throw new MetadataException(
                     Code.METADATA_SERVICE_ERROR, "Failed to initialized ledger manager factory", e);
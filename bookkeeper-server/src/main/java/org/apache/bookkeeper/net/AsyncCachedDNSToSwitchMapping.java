@@ -0,0 +1,390 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.net;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.RACK_RESOLUTION_BATCH_SIZE;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.RACK_RESOLUTION_CACHE_MISSES;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.RACK_RESOLUTION_LATENCY;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.RACK_RESOLUTION_STALE_HITS;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.proto.BookieAddressResolver;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link DNSToSwitchMapping} resolving the hosts off the caller thread.
+ *
+ * <p>The hosts are resolved by a background thread, in batches of at most {@code batchSize} hosts per call
+ * to the underlying mapping, so that a slow mapping (e.g. forking a script) doesn't stall the placement
+ * policy when many bookies join at once. Until a host is resolved its rack is the default rack, and the
+ * listener is notified with the hosts whose rack changed once their resolution completes. When the bookies
+ * of the default rack can't be used, e.g. the minimum number of racks per write quorum is enforced, the hosts
+ * never resolved are instead resolved on the caller thread, in batches, so that they are placeable right away.
+ *
+ * <p>The resolved racks are cached, and resolved again in the background once they are older than the
+ * refresh interval: the stale rack is served until the refresh completes. If a cache file is configured,
+ * the racks are persisted to it after every change and loaded from it on startup, as stale entries, so that
+ * a restarted client uses the known racks right away.
+ */
+public class AsyncCachedDNSToSwitchMapping implements DNSToSwitchMapping, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncCachedDNSToSwitchMapping.class);
+
+    // delay to let the hosts joining together be resolved in the same batch
+    private static final long BATCH_DELAY_MS = 10L;
+
+    private static final class CachedRack {
+        final String rack;
+        final long resolvedAtNanos;
+        // whether the rack must be resolved again on its next use, e.g. loaded from the cache file
+        final boolean stale;
+
+        CachedRack(String rack, long resolvedAtNanos, boolean stale) {
+            this.rack = rack;
+            this.resolvedAtNanos = resolvedAtNanos;
+            this.stale = stale;
+        }
+    }
+
+    private final DNSToSwitchMapping rawMapping;
+    private final Supplier<String> defaultRackSupplier;
+    private final File cacheFile;
+    private final long refreshIntervalNanos;
+    private final int batchSize;
+    private final boolean resolveMissesSynchronously;
+    private final ScheduledExecutorService executor;
+    private final Map<String, CachedRack> cache = new ConcurrentHashMap<>();
+    // the hosts waiting for their resolution, guarded by this
+    private final Set<String> pending = new LinkedHashSet<>();
+    private boolean resolutionScheduled = false;
+    private volatile Consumer<Set<String>> listener = null;
+
+    @StatsDoc(
+        name = RACK_RESOLUTION_LATENCY,
+        help = "The latency of resolving a batch of hosts to their racks by the underlying DNS resolver"
+    )
+    private final OpStatsLogger resolutionLatency;
+    @StatsDoc(
+        name = RACK_RESOLUTION_BATCH_SIZE,
+        help = "The distribution of the number of hosts resolved per call to the underlying DNS resolver"
+    )
+    private final OpStatsLogger resolutionBatchSize;
+    @StatsDoc(
+        name = RACK_RESOLUTION_CACHE_MISSES,
+        help = "The number of hosts not resolved yet, served the default rack or resolved on the caller thread"
+    )
+    private final Counter cacheMisses;
+    @StatsDoc(
+        name = RACK_RESOLUTION_STALE_HITS,
+        help = "The number of stale racks served while they are resolved again"
+    )
+    private final Counter staleHits;
+
+    public AsyncCachedDNSToSwitchMapping(DNSToSwitchMapping rawMapping,
+                                         Supplier<String> defaultRackSupplier,
+                                         String cacheFile,
+                                         int refreshIntervalSeconds,
+                                         int batchSize,
+                                         boolean resolveMissesSynchronously,
+                                         StatsLogger statsLogger) {
+        this.rawMapping = checkNotNull(rawMapping, "Raw mapping cannot be null");
+        this.defaultRackSupplier = checkNotNull(defaultRackSupplier, "defaultRackSupplier should not be null");
+        this.cacheFile = null == cacheFile || cacheFile.isEmpty() ? null : new File(cacheFile);
+        this.refreshIntervalNanos = TimeUnit.SECONDS.toNanos(refreshIntervalSeconds);
+        this.batchSize = Math.max(1, batchSize);
+        this.resolveMissesSynchronously = resolveMissesSynchronously;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("RackResolver"));
+        this.resolutionLatency = statsLogger.getOpStatsLogger(RACK_RESOLUTION_LATENCY);
+        this.resolutionBatchSize = statsLogger.getOpStatsLogger(RACK_RESOLUTION_BATCH_SIZE);
+        this.cacheMisses = statsLogger.getCounter(RACK_RESOLUTION_CACHE_MISSES);
+        this.staleHits = statsLogger.getCounter(RACK_RESOLUTION_STALE_HITS);
+        loadCacheFile();
+    }
+
+    /**
+     * Set the listener notified, from the resolver thread, with the hosts whose rack changed.
+     */
+    public void setRackChangeListener(Consumer<Set<String>> listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void setBookieAddressResolver(BookieAddressResolver bookieAddressResolver) {
+        rawMapping.setBookieAddressResolver(bookieAddressResolver);
+    }
+
+    @Override
+    public boolean useHostName() {
+        return rawMapping.useHostName();
+    }
+
+    @Override
+    public List<String> resolve(List<String> names) {
+        if (resolveMissesSynchronously) {
+            resolveMisses(names);
+        }
+        List<String> racks = new ArrayList<>(names.size());
+        List<String> toResolve = null;
+        long now = MathUtils.nowInNano();
+        for (String name : names) {
+            CachedRack cached = cache.get(name);
+            if (null == cached) {
+                if (!resolveMissesSynchronously) {
+                    // otherwise counted by resolveMisses
+                    cacheMisses.inc();
+                }
+                racks.add(defaultRackSupplier.get());
+            } else {
+                racks.add(cached.rack);
+                if (!cached.stale
+                        && (refreshIntervalNanos <= 0 || now - cached.resolvedAtNanos < refreshIntervalNanos)) {
+                    continue;
+                }
+                staleHits.inc();
+            }
+            if (null == toResolve) {
+                toResolve = new ArrayList<>();
+            }
+            toResolve.add(name);
+        }
+        if (null != toResolve) {
+            enqueue(toResolve);
+        }
+        return racks;
+    }
+
+    /**
+     * Resolve the hosts never resolved on the caller thread, in batches.
+     */
+    private void resolveMisses(List<String> names) {
+        List<String> misses = null;
+        for (String name : names) {
+            if (!cache.containsKey(name)) {
+                if (null == misses) {
+                    misses = new ArrayList<>();
+                }
+                misses.add(name);
+            }
+        }
+        if (null == misses) {
+            return;
+        }
+        cacheMisses.addCount(misses.size());
+        Set<String> changed = new HashSet<>();
+        for (int i = 0; i < misses.size(); i += batchSize) {
+            resolveBatch(misses.subList(i, Math.min(misses.size(), i + batchSize)), changed);
+        }
+        if (!changed.isEmpty()) {
+            // the caller gets the resolved racks, only the cache file needs an update
+            try {
+                executor.execute(this::persistCacheFile);
+            } catch (RejectedExecutionException ree) {
+                // closed
+            }
+        }
+    }
+
+    private void enqueue(List<String> names) {
+        synchronized (this) {
+            pending.addAll(names);
+            if (resolutionScheduled || pending.isEmpty()) {
+                return;
+            }
+            resolutionScheduled = true;
+        }
+        try {
+            executor.schedule(this::resolvePending, BATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ree) {
+            // closed, the hosts keep their current rack
+            synchronized (this) {
+                pending.clear();
+                resolutionScheduled = false;
+            }
+        }
+    }
+
+    private void resolvePending() {
+        Set<String> changed = new HashSet<>();
+        while (true) {
+            List<String> batch = new ArrayList<>(batchSize);
+            synchronized (this) {
+                Iterator<String> iter = pending.iterator();
+                while (iter.hasNext() && batch.size() < batchSize) {
+                    batch.add(iter.next());
+                    iter.remove();
+                }
+                if (batch.isEmpty()) {
+                    resolutionScheduled = false;
+                    break;
+                }
+            }
+            resolveBatch(batch, changed);
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        persistCacheFile();
+        Consumer<Set<String>> l = listener;
+        if (null != l) {
+            try {
+                l.accept(changed);
+            } catch (RuntimeException re) {
+                LOG.warn("Failed to notify the rack change of the hosts {}", changed, re);
+            }
+        }
+    }
+
+    private void resolveBatch(List<String> batch, Set<String> changed) {
+        List<String> refreshed = null;
+        for (String name : batch) {
+            if (cache.containsKey(name)) {
+                if (null == refreshed) {
+                    refreshed = new ArrayList<>();
+                }
+                refreshed.add(name);
+            }
+        }
+        long startNanos = MathUtils.nowInNano();
+        List<String> racks;
+        try {
+            if (null != refreshed) {
+                // the underlying mapping may cache the racks itself, drop them to really resolve again
+                rawMapping.reloadCachedMappings(refreshed);
+            }
+            racks = rawMapping.resolve(batch);
+        } catch (RuntimeException re) {
+            LOG.warn("Failed to resolve the racks of the hosts {}", batch, re);
+            racks = null;
+        }
+        long resolvedAtNanos = MathUtils.nowInNano();
+        if (null == racks || racks.size() != batch.size()) {
+            // the cached racks are kept, the hosts are resolved again on their next use
+            LOG.warn("Failed to resolve the racks of the hosts {}, got {}", batch, racks);
+            resolutionLatency.registerFailedEvent(resolvedAtNanos - startNanos, TimeUnit.NANOSECONDS);
+            return;
+        }
+        resolutionLatency.registerSuccessfulEvent(resolvedAtNanos - startNanos, TimeUnit.NANOSECONDS);
+        resolutionBatchSize.registerSuccessfulValue(batch.size());
+        String defaultRack = defaultRackSupplier.get();
+        for (int i = 0; i < batch.size(); i++) {
+            String name = batch.get(i);
+            String rack = racks.get(i);
+            if (null == rack) {
+                continue;
+            }
+            CachedRack previous = cache.put(name, new CachedRack(rack, resolvedAtNanos, false));
+            String previousRack = null == previous ? defaultRack : previous.rack;
+            if (!rack.equals(previousRack)) {
+                changed.add(name);
+            }
+        }
+    }
+
+    private void loadCacheFile() {
+        if (null == cacheFile || !cacheFile.exists()) {
+            return;
+        }
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(cacheFile.toPath())) {
+            props.load(in);
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.warn("Failed to load the rack cache file {}, starting with an empty cache", cacheFile, e);
+            return;
+        }
+        for (String name : props.stringPropertyNames()) {
+            // resolved again on their first use
+            cache.put(name, new CachedRack(props.getProperty(name), 0L, true));
+        }
+        LOG.info("Loaded the racks of {} hosts from {}", cache.size(), cacheFile);
+    }
+
+    private void persistCacheFile() {
+        if (null == cacheFile) {
+            return;
+        }
+        Properties props = new Properties();
+        for (Map.Entry<String, CachedRack> entry : new HashMap<>(cache).entrySet()) {
+            props.setProperty(entry.getKey(), entry.getValue().rack);
+        }
+        File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmpFile.toPath())) {
+                props.store(out, "Resolved racks of the bookies");
+            }
+            Files.move(tmpFile.toPath(), cacheFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Failed to persist the rack cache file {}", cacheFile, e);
+        }
+    }
+
+    /**
+     * Resolve all the cached hosts again in the background, their current racks are served meanwhile.
+     */
+    @Override
+    public void reloadCachedMappings() {
+        enqueue(new ArrayList<>(cache.keySet()));
+    }
+
+    /**
+     * Resolve the given hosts again in the background, their current racks are served meanwhile.
+     */
+    @Override
+    public void reloadCachedMappings(List<String> names) {
+        enqueue(new ArrayList<>(names));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "async cached switch mapping relaying to " + rawMapping;
+    }
+}
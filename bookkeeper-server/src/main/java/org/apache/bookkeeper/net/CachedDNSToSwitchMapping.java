@@ -155,4 +155,11 @@ public class CachedDNSToSwitchMapping extends AbstractDNSToSwitchMapping {
   public void reloadCachedMappings() {
     cache.clear();
   }
+
+  @Override
+  public void reloadCachedMappings(List<String> names) {
+    for (String name : NetUtils.normalizeHostNames(names)) {
+      cache.remove(name);
+    }
+  }
 }
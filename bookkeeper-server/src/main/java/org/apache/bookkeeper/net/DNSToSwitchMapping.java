@@ -57,6 +57,18 @@ public interface DNSToSwitchMapping {
      */
     void reloadCachedMappings();
 
+    /**
+     * Reload the cached mappings of the given hosts.
+     *
+     * <p>If there is a cache, the mappings of the given hosts are removed from it, so that their next
+     * resolution sees the new data. The default implementation reloads all the cached mappings.
+     *
+     * @param names the hosts whose mappings are reloaded
+     */
+    default void reloadCachedMappings(List<String> names) {
+        reloadCachedMappings();
+    }
+
     /**
      * Hints what to use with implementation when InetSocketAddress is converted
      * to String:
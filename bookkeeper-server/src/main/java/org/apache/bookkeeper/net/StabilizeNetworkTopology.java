@@ -67,6 +67,8 @@ public class StabilizeNetworkTopology implements NetworkTopology {
     protected final ConcurrentMap<Node, NodeStatus> nodeStatuses;
     // stabilize period seconds
     protected final long stabilizePeriodMillis;
+    // notified when a node is eventually removed from the topology
+    private volatile Runnable nodeRemovedListener;
 
     private class RemoveNodeTask implements TimerTask {
 
@@ -85,6 +87,7 @@ public class StabilizeNetworkTopology implements NetworkTopology {
             if (null == status) {
                 // no status of this node, remove this node from topology
                 impl.remove(node);
+                notifyNodeRemoved();
             } else if (status.isTentativeToRemove()) {
                 long millisSinceLastSeen = System.currentTimeMillis() - status.getLastPresentTime();
                 if (millisSinceLastSeen >= stabilizePeriodMillis) {
@@ -92,6 +95,7 @@ public class StabilizeNetworkTopology implements NetworkTopology {
                             node, status.getLastPresentTime(), millisSinceLastSeen);
                     impl.remove(node);
                     nodeStatuses.remove(node, status);
+                    notifyNodeRemoved();
                 }
             }
         }
@@ -105,6 +109,20 @@ public class StabilizeNetworkTopology implements NetworkTopology {
         this.stabilizePeriodMillis = TimeUnit.SECONDS.toMillis(stabilizePeriodSeconds);
     }
 
+    /**
+     * Set the listener notified when a node is eventually removed from the topology, after the stabilize period.
+     */
+    public void setNodeRemovedListener(Runnable listener) {
+        this.nodeRemovedListener = listener;
+    }
+
+    private void notifyNodeRemoved() {
+        Runnable listener = nodeRemovedListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
     void updateNode(Node node, boolean tentativeToRemove) {
         NodeStatus ns = nodeStatuses.get(node);
         if (null == ns) {
@@ -27,6 +27,7 @@ import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.CopyLedgerFragmentCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
@@ -272,6 +273,28 @@ public interface BookieClient {
     CompletableFuture<AvailabilityOfEntriesOfLedger> getListOfEntriesOfLedger(BookieId address,
             long ledgerId);
 
+    /**
+     * Ask the bookie at {@code address} to copy the entries [firstEntryId, lastEntryId] of a ledger
+     * directly from the given source bookies into its own storage.
+     *
+     * <p>Only the bookies advertising the
+     * {@link org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoResponse.Feature#DIRECT_FRAGMENT_COPY}
+     * feature in their bookie info serve the request.
+     *
+     * @param address address of the bookie that stores the copy
+     * @param ledgerId ledger id
+     * @param masterKey master key of the ledger
+     * @param firstEntryId first entry to copy
+     * @param lastEntryId last entry to copy
+     * @param sourceBookies bookies to read the entries from, in order of preference
+     * @param maxBatchEntries max number of entries to read from a source bookie in one batch
+     * @param cb the callback notified when the copy completes
+     * @param ctx a context object passed to the callback on completion
+     */
+    void copyLedgerFragment(BookieId address, long ledgerId, byte[] masterKey,
+                            long firstEntryId, long lastEntryId, List<BookieId> sourceBookies,
+                            int maxBatchEntries, CopyLedgerFragmentCallback cb, Object ctx);
+
     /**
      * @return whether bookie client object has been closed
      */
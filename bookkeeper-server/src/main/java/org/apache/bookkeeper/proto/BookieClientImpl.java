@@ -55,6 +55,7 @@ import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.CopyLedgerFragmentCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.FutureGetListOfEntriesOfLedger;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
@@ -340,6 +341,34 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         return futureResult;
     }
 
+    @Override
+    public void copyLedgerFragment(final BookieId address, final long ledgerId, final byte[] masterKey,
+                                   final long firstEntryId, final long lastEntryId,
+                                   final List<BookieId> sourceBookies, final int maxBatchEntries,
+                                   final CopyLedgerFragmentCallback cb, final Object ctx) {
+        final PerChannelBookieClientPool client = lookupClient(address);
+        if (client == null) {
+            cb.copyLedgerFragmentComplete(getRc(BKException.Code.BookieHandleNotAvailableException),
+                    ledgerId, BookieProtocol.INVALID_ENTRY_ID, ctx);
+            return;
+        }
+        client.obtain((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                try {
+                    executor.executeOrdered(ledgerId, () ->
+                            cb.copyLedgerFragmentComplete(rc, ledgerId, BookieProtocol.INVALID_ENTRY_ID, ctx)
+                    );
+                } catch (RejectedExecutionException re) {
+                    cb.copyLedgerFragmentComplete(getRc(BKException.Code.InterruptedException),
+                            ledgerId, BookieProtocol.INVALID_ENTRY_ID, ctx);
+                }
+            } else {
+                pcbc.copyLedgerFragment(ledgerId, masterKey, firstEntryId, lastEntryId, sourceBookies,
+                        maxBatchEntries, cb, ctx);
+            }
+        }, ledgerId);
+    }
+
     private void completeRead(final int rc,
                               final long ledgerId,
                               final long entryId,
@@ -188,8 +188,12 @@ class BookieNettyServer {
     @VisibleForTesting
     void suspendProcessing() {
         synchronized (suspensionLock) {
+            if (suspended) {
+                return;
+            }
             suspended = true;
             for (Channel channel : allChannels) {
+                ChannelReadPauses.pause(channel);
                 // To suspend processing in the bookie, submit a task
                 // that keeps the event loop busy until resume is
                 // explicitly invoked
@@ -209,9 +213,13 @@ class BookieNettyServer {
     @VisibleForTesting
     void resumeProcessing() {
         synchronized (suspensionLock) {
+            if (!suspended) {
+                return;
+            }
             suspended = false;
             for (Channel channel : allChannels) {
-                channel.config().setAutoRead(true);
+                // only the pause of the suspension is released, the channel may be paused for other reasons
+                ChannelReadPauses.resume(channel);
             }
             suspensionLock.notifyAll();
         }
@@ -341,6 +349,7 @@ class BookieNettyServer {
                     pipeline.addLast("consolidation", new FlushConsolidationHandler(1024, true));
 
                     pipeline.addLast("bytebufList", ByteBufList.ENCODER);
+                    addResponseMemoryHandler(pipeline);
 
                     pipeline.addLast("lengthbaseddecoder", new LengthFieldBasedFrameDecoder(maxFrameSize, 0, 4, 0, 4));
 
@@ -408,6 +417,7 @@ class BookieNettyServer {
                         new BookieSideConnectionPeerContextHandler();
                     ChannelPipeline pipeline = ch.pipeline();
 
+                    addResponseMemoryHandler(pipeline);
                     pipeline.addLast("lengthbaseddecoder", new LengthFieldBasedFrameDecoder(maxFrameSize, 0, 4, 0, 4));
 
                     pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry));
@@ -430,6 +440,18 @@ class BookieNettyServer {
         }
     }
 
+    /**
+     * Account the encoded responses in the request memory budget, if any, until they are flushed.
+     */
+    private void addResponseMemoryHandler(ChannelPipeline pipeline) {
+        if (requestProcessor instanceof BookieRequestProcessor) {
+            RequestMemoryBudget budget = ((BookieRequestProcessor) requestProcessor).getRequestMemoryBudget();
+            if (budget != null) {
+                pipeline.addLast("responseMemoryBudget", budget.getResponseMemoryHandler());
+            }
+        }
+    }
+
     void start() throws InterruptedException {
         isRunning.set(true);
     }
@@ -41,6 +41,7 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
     private final ChannelGroup allChannels;
 
     private ChannelHandlerContext ctx;
+    private BookieNettyServer.BookieSideConnectionPeerContextHandler connectionPeerContextHandler;
 
     private ByteBuf pendingSendResponses = null;
     private int maxPendingResponsesSize = DEFAULT_PENDING_RESPONSE_SIZE;
@@ -54,6 +55,18 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
         return ctx;
     }
 
+    /**
+     * @return the handler of the connection peer of the channel, looked up in the pipeline once
+     */
+    BookieNettyServer.BookieSideConnectionPeerContextHandler getConnectionPeerContextHandler() {
+        BookieNettyServer.BookieSideConnectionPeerContextHandler handler = connectionPeerContextHandler;
+        if (null == handler) {
+            handler = ctx.pipeline().get(BookieNettyServer.BookieSideConnectionPeerContextHandler.class);
+            connectionPeerContextHandler = handler;
+        }
+        return handler;
+    }
+
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         log.info("Channel connected {}", ctx.channel());
@@ -45,11 +45,17 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import org.apache.bookkeeper.auth.AuthProviderFactoryFactory;
 import org.apache.bookkeeper.auth.AuthToken;
+import org.apache.bookkeeper.auth.BookKeeperPrincipal;
 import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorage;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.ReflectionUtils;
+import org.apache.bookkeeper.common.util.VirtualThreadOrderedExecutor;
 import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.processor.RequestProcessor;
+import org.apache.bookkeeper.proto.RequestAdmissionController.Operation;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.tls.SecurityException;
 import org.apache.bookkeeper.tls.SecurityHandlerFactory;
@@ -81,7 +87,8 @@ public class BookieRequestProcessor implements RequestProcessor {
     final Bookie bookie;
 
     /**
-     * The threadpool used to execute all read entry requests issued to this server.
+     * The threadpool used to execute all read entry requests issued to this server, or the virtual threads
+     * executor, also used for the long poll requests, when they are enabled.
      */
     private final OrderedExecutor readThreadPool;
 
@@ -120,6 +127,23 @@ public class BookieRequestProcessor implements RequestProcessor {
     final Semaphore addsSemaphore;
     final Semaphore readsSemaphore;
 
+    /**
+     * Admission control of the requests of the tenants, null if disabled.
+     */
+    private final RequestAdmissionController admissionController;
+
+    /**
+     * Direct memory budget of the requests in progress, null if disabled.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final RequestMemoryBudget requestMemoryBudget;
+
+    /**
+     * Tracer of the stages of a sample of the add requests, null if disabled.
+     */
+    @Getter
+    private final RequestTracer requestTracer;
+
     final ChannelGroup allChannels;
 
     // to temporary blacklist channels
@@ -130,6 +154,14 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private final boolean throttleReadResponses;
 
+    /**
+     * Client used to read entries from other bookies when serving direct fragment copy requests,
+     * null if the bookie does not serve them, and ledger manager to check their source bookies.
+     */
+    private volatile BookieClient fragmentCopyClient;
+    private volatile LedgerManager fragmentCopyLedgerManager;
+    private volatile boolean fragmentCopyBatchReadEnabled;
+
     public BookieRequestProcessor(ServerConfiguration serverCfg, Bookie bookie, StatsLogger statsLogger,
                                   SecurityHandlerFactory shFactory, ByteBufAllocator allocator,
                                   ChannelGroup allChannels) throws SecurityException {
@@ -140,17 +172,41 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.preserveMdcForTaskExecution = serverCfg.getPreserveMdcForTaskExecution();
         this.bookie = bookie;
         this.throttleReadResponses = serverCfg.isReadWorkerThreadsThrottlingEnabled();
-        this.readThreadPool = createExecutor(
-                this.serverCfg.getNumReadWorkerThreads(),
-                "BookieReadThreadPool",
-                serverCfg.getMaxPendingReadRequestPerThread(),
-                statsLogger);
+        boolean useVirtualThreads = serverCfg.isReadWorkerVirtualThreadsEnabled();
+        if (useVirtualThreads && !VirtualThreadOrderedExecutor.isSupported()) {
+            LOG.warn("Virtual threads are not supported by this JVM, processing the read requests on the read"
+                    + " worker threads");
+            useVirtualThreads = false;
+        }
+        if (useVirtualThreads) {
+            int maxConcurrency = serverCfg.getReadWorkerVirtualThreadsMaxConcurrency();
+            LOG.info("Processing the read and long poll requests on virtual threads, up to {} at the same time",
+                    maxConcurrency);
+            // the lanes only order the few requests needing it, the reads themselves are not ordered
+            this.readThreadPool = VirtualThreadOrderedExecutor.newVirtualThreadBuilder()
+                    .maxConcurrency(maxConcurrency)
+                    .numThreads(Math.max(1, serverCfg.getNumReadWorkerThreads()))
+                    .name("BookieReadVirtualThreads")
+                    .traceTaskExecution(serverCfg.getEnableTaskExecutionStats())
+                    .preserveMdcForTaskExecution(serverCfg.getPreserveMdcForTaskExecution())
+                    .statsLogger(statsLogger)
+                    .maxTasksInQueue(serverCfg.getReadWorkerVirtualThreadsMaxPendingRequests())
+                    .build();
+        } else {
+            this.readThreadPool = createExecutor(
+                    this.serverCfg.getNumReadWorkerThreads(),
+                    "BookieReadThreadPool",
+                    serverCfg.getMaxPendingReadRequestPerThread(),
+                    serverCfg.isWorkerThreadsWorkStealingEnabled(),
+                    statsLogger);
+        }
         this.writeThreadPool = createExecutor(
                 this.serverCfg.getNumAddWorkerThreads(),
                 "BookieWriteThreadPool",
                 serverCfg.getMaxPendingAddRequestPerThread(),
+                serverCfg.isWorkerThreadsWorkStealingEnabled(),
                 statsLogger);
-        if (serverCfg.getNumLongPollWorkerThreads() <= 0 && readThreadPool != null) {
+        if ((useVirtualThreads || serverCfg.getNumLongPollWorkerThreads() <= 0) && readThreadPool != null) {
             this.longPollThreadPool = this.readThreadPool;
         } else {
             int numThreads = this.serverCfg.getNumLongPollWorkerThreads();
@@ -160,12 +216,12 @@ public class BookieRequestProcessor implements RequestProcessor {
             this.longPollThreadPool = createExecutor(
                 numThreads,
                 "BookieLongPollThread",
-                OrderedExecutor.NO_TASK_LIMIT, statsLogger);
+                OrderedExecutor.NO_TASK_LIMIT, false, statsLogger);
         }
         this.highPriorityThreadPool = createExecutor(
                 this.serverCfg.getNumHighPriorityWorkerThreads(),
                 "BookieHighPriorityThread",
-                OrderedExecutor.NO_TASK_LIMIT, statsLogger);
+                OrderedExecutor.NO_TASK_LIMIT, false, statsLogger);
         this.shFactory = shFactory;
         if (shFactory != null) {
             shFactory.init(NodeType.Server, serverCfg, allocator);
@@ -204,46 +260,95 @@ public class BookieRequestProcessor implements RequestProcessor {
 
         int maxReads = serverCfg.getMaxReadsInProgressLimit();
         readsSemaphore = maxReads > 0 ? new Semaphore(maxReads, true) : null;
+
+        String admissionControllerClass = serverCfg.getRequestAdmissionControllerClass();
+        if (admissionControllerClass != null && !admissionControllerClass.isEmpty()) {
+            LOG.info("Using {} for the admission control of the requests", admissionControllerClass);
+            admissionController = ReflectionUtils.newInstance(admissionControllerClass,
+                    RequestAdmissionController.class);
+            admissionController.initialize(serverCfg, statsLogger);
+        } else {
+            admissionController = null;
+        }
+
+        long memoryBudgetMb = serverCfg.getRequestMemoryBudgetMb();
+        if (memoryBudgetMb > 0) {
+            requestMemoryBudget = new RequestMemoryBudget(memoryBudgetMb * 1024 * 1024,
+                    serverCfg.getRequestMemoryBudgetAddsMb() * 1024 * 1024,
+                    serverCfg.getRequestMemoryBudgetReadsMb() * 1024 * 1024,
+                    serverCfg.getRequestMemoryBudgetResponsesMb() * 1024 * 1024,
+                    statsLogger);
+            if (bookie != null && bookie.getLedgerStorage() instanceof DbLedgerStorage) {
+                ((DbLedgerStorage) bookie.getLedgerStorage())
+                        .setReadAheadMemoryLimiter(requestMemoryBudget.getReadAheadMemory());
+            }
+        } else {
+            requestMemoryBudget = null;
+        }
+
+        int traceSampleRate = serverCfg.getRequestTraceSampleRate();
+        if (traceSampleRate > 0) {
+            requestTracer = new RequestTracer(traceSampleRate, serverCfg.getRequestTraceSlowThresholdMs(),
+                    serverCfg.getRequestTraceSlowBufferSize(), statsLogger);
+        } else {
+            requestTracer = null;
+        }
+    }
+
+    /**
+     * @return the trace of the add request, null if it is not traced
+     */
+    RequestTrace startAddRequestTrace(long ledgerId, long entryId) {
+        return requestTracer != null ? requestTracer.startTrace(ledgerId, entryId) : null;
     }
 
-    protected void onAddRequestStart(Channel channel) {
+    protected void onAddRequestStart(Channel channel, long entrySize) {
         if (addsSemaphore != null) {
             if (!addsSemaphore.tryAcquire()) {
                 final long throttlingStartTimeNanos = MathUtils.nowInNano();
-                channel.config().setAutoRead(false);
+                ChannelReadPauses.pause(channel);
                 LOG.info("Too many add requests in progress, disabling autoread on channel {}", channel);
                 requestStats.blockAddRequest();
                 addsSemaphore.acquireUninterruptibly();
-                channel.config().setAutoRead(true);
+                ChannelReadPauses.resume(channel);
                 final long delayNanos = MathUtils.elapsedNanos(throttlingStartTimeNanos);
                 LOG.info("Re-enabled autoread on channel {} after AddRequest delay of {} nanos", channel, delayNanos);
                 requestStats.unblockAddRequest(delayNanos);
             }
         }
+        if (requestMemoryBudget != null) {
+            requestMemoryBudget.reserveAddMemory(channel, entrySize);
+        }
         requestStats.trackAddRequest();
     }
 
-    protected void onAddRequestFinish() {
+    protected void onAddRequestFinish(long entrySize) {
         requestStats.untrackAddRequest();
         if (addsSemaphore != null) {
             addsSemaphore.release();
         }
+        if (requestMemoryBudget != null) {
+            requestMemoryBudget.releaseAddMemory(entrySize);
+        }
     }
 
     protected void onReadRequestStart(Channel channel) {
         if (readsSemaphore != null) {
             if (!readsSemaphore.tryAcquire()) {
                 final long throttlingStartTimeNanos = MathUtils.nowInNano();
-                channel.config().setAutoRead(false);
+                ChannelReadPauses.pause(channel);
                 LOG.info("Too many read requests in progress, disabling autoread on channel {}", channel);
                 requestStats.blockReadRequest();
                 readsSemaphore.acquireUninterruptibly();
-                channel.config().setAutoRead(true);
+                ChannelReadPauses.resume(channel);
                 final long delayNanos = MathUtils.elapsedNanos(throttlingStartTimeNanos);
                 LOG.info("Re-enabled autoread on channel {} after ReadRequest delay of {} nanos", channel, delayNanos);
                 requestStats.unblockReadRequest(delayNanos);
             }
         }
+        if (requestMemoryBudget != null) {
+            requestMemoryBudget.reserveReadMemory(channel, RequestMemoryBudget.READ_REQUEST_BYTES);
+        }
         requestStats.trackReadRequest();
     }
 
@@ -252,6 +357,24 @@ public class BookieRequestProcessor implements RequestProcessor {
         if (readsSemaphore != null) {
             readsSemaphore.release();
         }
+        if (requestMemoryBudget != null) {
+            requestMemoryBudget.releaseReadMemory(RequestMemoryBudget.READ_REQUEST_BYTES);
+        }
+    }
+
+    /**
+     * Account the entries read by a read request, until its response is written to the channel.
+     */
+    protected void onReadEntriesStart(Channel channel, long bytes) {
+        if (requestMemoryBudget != null) {
+            requestMemoryBudget.reserveReadMemory(channel, bytes);
+        }
+    }
+
+    protected void onReadEntriesFinish(long bytes) {
+        if (requestMemoryBudget != null) {
+            requestMemoryBudget.releaseReadMemory(bytes);
+        }
     }
 
     @VisibleForTesting
@@ -264,12 +387,32 @@ public class BookieRequestProcessor implements RequestProcessor {
         return requestStats.maxReadsInProgressCount();
     }
 
+    /**
+     * Set the client used to read entries from other bookies when serving direct fragment copy requests.
+     *
+     * @param client bookie client, or null to stop serving direct fragment copies
+     * @param ledgerManager ledger manager used to check that the source bookies store the copied fragments
+     * @param batchReadEnabled whether the client can use batch reads
+     */
+    public void setFragmentCopyClient(BookieClient client, LedgerManager ledgerManager, boolean batchReadEnabled) {
+        this.fragmentCopyBatchReadEnabled = batchReadEnabled;
+        this.fragmentCopyLedgerManager = ledgerManager;
+        this.fragmentCopyClient = client;
+    }
+
+    /**
+     * @return whether the bookie serves direct fragment copy requests, which it advertises to clients
+     */
+    boolean isFragmentCopyEnabled() {
+        return fragmentCopyClient != null;
+    }
+
     @Override
     public void close() {
         LOG.info("Closing RequestProcessor");
         shutdownExecutor(writeThreadPool);
         shutdownExecutor(readThreadPool);
-        if (serverCfg.getNumLongPollWorkerThreads() > 0 || readThreadPool == null) {
+        if (longPollThreadPool != readThreadPool) {
             shutdownExecutor(longPollThreadPool);
         }
         shutdownExecutor(highPriorityThreadPool);
@@ -281,6 +424,7 @@ public class BookieRequestProcessor implements RequestProcessor {
             int numThreads,
             String nameFormat,
             int maxTasksInQueue,
+            boolean enableWorkStealing,
             StatsLogger statsLogger) {
         if (numThreads <= 0) {
             return null;
@@ -293,6 +437,7 @@ public class BookieRequestProcessor implements RequestProcessor {
                     .statsLogger(statsLogger)
                     .maxTasksInQueue(maxTasksInQueue)
                     .enableThreadScopedMetrics(true)
+                    .enableWorkStealing(enableWorkStealing)
                     .build();
         }
     }
@@ -353,6 +498,9 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case GET_LIST_OF_ENTRIES_OF_LEDGER:
                         processGetListOfEntriesOfLedgerProcessorV3(r, requestHandler);
                         break;
+                    case COPY_LEDGER_FRAGMENT:
+                        processCopyLedgerFragmentRequestV3(r, requestHandler);
+                        break;
                     default:
                         LOG.info("Unknown operation type {}", header.getOperation());
                         final BookkeeperProtocol.Response response =
@@ -449,11 +597,13 @@ public class BookieRequestProcessor implements RequestProcessor {
             threadPool = writeThreadPool;
         }
 
-        if (null == threadPool) {
+        String tenant = RequestUtils.isHighPriority(r) ? null : getTenant(r, requestHandler);
+        if (null == threadPool && null == tenant) {
             write.run();
         } else {
             try {
-                threadPool.executeOrdered(r.getAddRequest().getLedgerId(), write);
+                executeRequest(threadPool, r.getAddRequest().getLedgerId(), tenant, Operation.ADD,
+                        r.getAddRequest().getBody().size(), write);
             } catch (RejectedExecutionException e) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to add entry at {}:{}. Too many pending requests",
@@ -539,11 +689,14 @@ public class BookieRequestProcessor implements RequestProcessor {
             }
         }
 
-        if (null == threadPool) {
+        String tenant = RequestUtils.isHighPriority(r)
+                || hasFlag(r.getReadRequest(), BookkeeperProtocol.ReadRequest.Flag.FENCE_LEDGER)
+                ? null : getTenant(r, requestHandler);
+        if (null == threadPool && null == tenant) {
             read.run();
         } else {
             try {
-                threadPool.executeOrdered(r.getReadRequest().getLedgerId(), read);
+                executeRequest(threadPool, r.getReadRequest().getLedgerId(), tenant, Operation.READ, 0, read);
             } catch (RejectedExecutionException e) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests",
@@ -643,6 +796,18 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processCopyLedgerFragmentRequestV3(final BookkeeperProtocol.Request r,
+                                                    final BookieRequestHandler requestHandler) {
+        CopyLedgerFragmentProcessorV3 copyLedgerFragment = new CopyLedgerFragmentProcessorV3(r, requestHandler,
+                this, fragmentCopyClient, fragmentCopyLedgerManager, fragmentCopyBatchReadEnabled);
+        // the processor only issues the first reads, the copy continues on the client and journal callbacks
+        if (null == readThreadPool) {
+            copyLedgerFragment.run();
+        } else {
+            readThreadPool.executeOrdered(r.getCopyLedgerFragmentRequest().getLedgerId(), copyLedgerFragment);
+        }
+    }
+
     private void processAddRequest(final BookieProtocol.ParsedAddRequest r, final BookieRequestHandler requestHandler) {
         WriteEntryProcessor write = WriteEntryProcessor.create(r, requestHandler, this);
 
@@ -655,11 +820,12 @@ public class BookieRequestProcessor implements RequestProcessor {
             threadPool = writeThreadPool;
         }
 
-        if (null == threadPool) {
+        String tenant = r.isHighPriority() ? null : getTenant(requestHandler);
+        if (null == threadPool && null == tenant) {
             write.run();
         } else {
             try {
-                threadPool.executeOrdered(r.getLedgerId(), write);
+                executeRequest(threadPool, r.getLedgerId(), tenant, Operation.ADD, r.getData().readableBytes(), write);
             } catch (RejectedExecutionException e) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to add entry at {}:{}. Too many pending requests", r.ledgerId,
@@ -697,11 +863,12 @@ public class BookieRequestProcessor implements RequestProcessor {
             threadPool = readThreadPool;
         }
 
-        if (null == threadPool) {
+        String tenant = r.isHighPriority() || r.isFencing() ? null : getTenant(requestHandler);
+        if (null == threadPool && null == tenant) {
             read.run();
         } else {
             try {
-                threadPool.executeOrdered(r.getLedgerId(), read);
+                executeRequest(threadPool, r.getLedgerId(), tenant, Operation.READ, 0, read);
             } catch (RejectedExecutionException e) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests", r.ledgerId,
@@ -718,6 +885,113 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    /**
+     * @return the tenant of a request, or null if there is no admission control
+     */
+    private String getTenant(BookkeeperProtocol.Request r, BookieRequestHandler requestHandler) {
+        if (null == admissionController) {
+            return null;
+        }
+        // an authenticated client can't claim the quotas of another tenant
+        String principal = getAuthenticatedPrincipal(requestHandler);
+        if (null != principal) {
+            return principal;
+        }
+        for (BookkeeperProtocol.ContextPair pair : r.getRequestContextList()) {
+            if (RequestAdmissionController.TENANT_REQUEST_CONTEXT_KEY.equals(pair.getKey())) {
+                return pair.getValue();
+            }
+        }
+        return RequestAdmissionController.DEFAULT_TENANT;
+    }
+
+    private String getTenant(BookieRequestHandler requestHandler) {
+        if (null == admissionController) {
+            return null;
+        }
+        String principal = getAuthenticatedPrincipal(requestHandler);
+        return null != principal ? principal : RequestAdmissionController.DEFAULT_TENANT;
+    }
+
+    private static String getAuthenticatedPrincipal(BookieRequestHandler requestHandler) {
+        BookieNettyServer.BookieSideConnectionPeerContextHandler contextHandler =
+                requestHandler.getConnectionPeerContextHandler();
+        if (null != contextHandler) {
+            BookKeeperPrincipal principal = contextHandler.getConnectionPeer().getAuthorizedId();
+            if (null != principal && !BookKeeperPrincipal.ANONYMOUS.equals(principal)) {
+                return principal.getName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Execute a request on the thread pool, or on the current thread if there is no thread pool, once admitted.
+     *
+     * @param tenant the tenant of the request, null to bypass the admission control
+     * @throws RejectedExecutionException if the request is not admitted or the thread pool is full
+     */
+    private void executeRequest(OrderedExecutor threadPool, long ledgerId, String tenant, Operation operation,
+                                long bytes, AdmittedProcessor processor) {
+        if (null == tenant) {
+            dispatch(threadPool, ledgerId, processor);
+            return;
+        }
+        RequestAdmissionController.Admission admission = admissionController.tryAdmit(tenant, operation, bytes);
+        if (null == admission) {
+            throw new QuotaExceededException(tenant);
+        }
+        // the adds and the reads are in progress until their response is sent, not only while on a worker thread
+        processor.setAdmission(admission);
+        if (null == threadPool) {
+            processor.run();
+            return;
+        }
+        try {
+            dispatch(threadPool, ledgerId, processor);
+        } catch (RejectedExecutionException e) {
+            processor.completeAdmission(false);
+            throw e;
+        }
+    }
+
+    private void dispatch(OrderedExecutor threadPool, long ledgerId, Runnable processor) {
+        if (threadPool == readThreadPool && readThreadPool instanceof VirtualThreadOrderedExecutor) {
+            // the reads don't need to be ordered, each one runs on its own virtual thread
+            threadPool.execute(processor);
+        } else {
+            threadPool.executeOrdered(ledgerId, processor);
+        }
+    }
+
+    /**
+     * A request processor holding the admission of its request, completed once the response is sent.
+     */
+    interface AdmittedProcessor extends Runnable {
+
+        void setAdmission(RequestAdmissionController.Admission admission);
+
+        /**
+         * Complete the admission of the request, if any, only once.
+         *
+         * @param processed false if the request was rejected by the worker threads
+         */
+        void completeAdmission(boolean processed);
+    }
+
+    private static class QuotaExceededException extends RejectedExecutionException {
+
+        private QuotaExceededException(String tenant) {
+            super("Tenant " + tenant + " is over its quotas");
+        }
+
+        @Override
+        public Throwable fillInStackTrace() {
+            // the rejections are expected when a tenant is over its quotas, the stack trace is not needed
+            return this;
+        }
+    }
+
     public long getWaitTimeoutOnBackpressureMillis() {
         return waitTimeoutOnBackpressureMillis;
     }
@@ -115,6 +115,13 @@ public class BookkeeperInternalCallbacks {
                 AvailabilityOfEntriesOfLedger availabilityOfEntriesOfLedger);
     }
 
+    /**
+     * A callback interface for CopyLedgerFragment command.
+     */
+    public interface CopyLedgerFragmentCallback {
+        void copyLedgerFragmentComplete(int rc, long ledgerId, long lastCopiedEntryId, Object ctx);
+    }
+
     /**
      * Handle the Response Code and transform it to a BKException.
      *
@@ -0,0 +1,75 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+/**
+ * Counts the pauses of the reads of a channel, so that the throttling of the requests in progress, the request
+ * memory budget and the suspension of the bookie can stop the reads of the same channel independently: the
+ * autoread of the channel is disabled by the first pause, and enabled again by the last resume only.
+ */
+final class ChannelReadPauses {
+
+    private static final AttributeKey<ChannelReadPauses> PAUSES = AttributeKey.valueOf("bookieChannelReadPauses");
+
+    private int pauses;
+
+    private ChannelReadPauses() {
+    }
+
+    private static ChannelReadPauses get(Channel channel) {
+        ChannelReadPauses readPauses = channel.attr(PAUSES).get();
+        if (readPauses == null) {
+            ChannelReadPauses newReadPauses = new ChannelReadPauses();
+            readPauses = channel.attr(PAUSES).setIfAbsent(newReadPauses);
+            if (readPauses == null) {
+                readPauses = newReadPauses;
+            }
+        }
+        return readPauses;
+    }
+
+    /**
+     * Stop reading from the channel until {@link #resume(Channel)} is called for this pause.
+     */
+    static void pause(Channel channel) {
+        ChannelReadPauses readPauses = get(channel);
+        synchronized (readPauses) {
+            if (readPauses.pauses++ == 0) {
+                channel.config().setAutoRead(false);
+            }
+        }
+    }
+
+    /**
+     * Release a pause of the channel, which reads again once all its pauses are released.
+     */
+    static void resume(Channel channel) {
+        ChannelReadPauses readPauses = get(channel);
+        synchronized (readPauses) {
+            if (readPauses.pauses > 0 && --readPauses.pauses == 0) {
+                channel.config().setAutoRead(true);
+            }
+        }
+    }
+}
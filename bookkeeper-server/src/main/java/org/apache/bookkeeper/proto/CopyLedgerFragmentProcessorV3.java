@@ -0,0 +1,368 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyLedgerFragmentRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyLedgerFragmentResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A processor class for v3 copy ledger fragment packets.
+ *
+ * <p>The source bookies must belong to the ensembles of the ledger covering the fragment, according
+ * to the ledger metadata, so that a client cannot make the bookie connect to arbitrary addresses.
+ *
+ * <p>The entries of the fragment are read in batches from the source bookies and stored through the
+ * recovery add path of the local bookie, so they are journaled like the entries written by the
+ * replicator. The entries are stored, and the completions of the writes are handled, from the write
+ * thread pool, ordered by ledger, rather than from the client and journal callback threads. A batch
+ * is requested only once the previous one has been persisted, which bounds the memory used by a copy
+ * to a single batch. When a source bookie fails, the rest of the fragment is read from the next
+ * source bookie.
+ */
+public class CopyLedgerFragmentProcessorV3 extends PacketProcessorBaseV3 {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CopyLedgerFragmentProcessorV3.class);
+
+    private static final int DEFAULT_MAX_BATCH_ENTRIES = 100;
+    private static final long MAX_BATCH_BYTES = 5 * 1024 * 1024;
+
+    private final CopyLedgerFragmentRequest copyRequest;
+    private final long ledgerId;
+    private final byte[] masterKey;
+    private final long lastEntryId;
+    private final int maxBatchEntries;
+    private final BookieClient bookieClient;
+    private final LedgerManager ledgerManager;
+    private final boolean batchReadEnabled;
+    private final long startTimeNanos;
+
+    private List<BookieId> sourceBookies;
+    private int sourceIndex = 0;
+    private long nextEntryId;
+    private long copiedEntries = 0;
+    private long copiedBytes = 0;
+
+    public CopyLedgerFragmentProcessorV3(Request request, BookieRequestHandler requestHandler,
+                                         BookieRequestProcessor requestProcessor,
+                                         BookieClient bookieClient, LedgerManager ledgerManager,
+                                         boolean batchReadEnabled) {
+        super(request, requestHandler, requestProcessor);
+        this.copyRequest = request.getCopyLedgerFragmentRequest();
+        this.ledgerId = copyRequest.getLedgerId();
+        this.masterKey = copyRequest.getMasterKey().toByteArray();
+        this.nextEntryId = copyRequest.getFirstEntryId();
+        this.lastEntryId = copyRequest.getLastEntryId();
+        this.maxBatchEntries = copyRequest.getMaxBatchEntries() > 0
+                ? copyRequest.getMaxBatchEntries() : DEFAULT_MAX_BATCH_ENTRIES;
+        this.bookieClient = bookieClient;
+        this.ledgerManager = ledgerManager;
+        this.batchReadEnabled = batchReadEnabled;
+        this.startTimeNanos = MathUtils.nowInNano();
+    }
+
+    @Override
+    public void run() {
+        if (!isVersionCompatible()) {
+            sendCopyResponse(StatusCode.EBADVERSION);
+            return;
+        }
+
+        if (null == bookieClient || null == ledgerManager) {
+            // the bookie doesn't advertise direct copies, clients are not expected to send them
+            sendCopyResponse(StatusCode.EBADREQ);
+            return;
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Received new copyLedgerFragment request: {}", request);
+        }
+
+        sourceBookies = new ArrayList<>(copyRequest.getSourceBookiesCount());
+        try {
+            for (String source : copyRequest.getSourceBookiesList()) {
+                sourceBookies.add(BookieId.parse(source));
+            }
+        } catch (IllegalArgumentException e) {
+            LOG.error("Invalid source bookie in copyLedgerFragment request for ledger {}", ledgerId, e);
+            sendCopyResponse(StatusCode.EBADREQ);
+            return;
+        }
+
+        if (sourceBookies.isEmpty() || nextEntryId < 0 || nextEntryId > lastEntryId) {
+            sendCopyResponse(StatusCode.EBADREQ);
+            return;
+        }
+
+        ledgerManager.readLedgerMetadata(ledgerId).whenComplete((metadata, cause) -> executeOrdered(() -> {
+            if (cause != null) {
+                int rc = BKException.getExceptionCode(cause, BKException.Code.MetaStoreException);
+                LOG.warn("Failed to read the metadata of ledger {} to copy a fragment: {}", ledgerId,
+                        BKException.getMessage(rc));
+                sendCopyResponse(rc == BKException.Code.NoSuchLedgerExistsOnMetadataServerException
+                        ? StatusCode.ENOLEDGER : StatusCode.EIO);
+                return;
+            }
+            List<BookieId> unknownSources = new ArrayList<>(sourceBookies);
+            unknownSources.removeAll(getFragmentBookies(metadata.getValue()));
+            if (!unknownSources.isEmpty()) {
+                LOG.error("Rejecting the copy of entries {} - {} of ledger {} from bookies {}, which don't store them",
+                        nextEntryId, lastEntryId, ledgerId, unknownSources);
+                sendCopyResponse(StatusCode.EUA);
+                return;
+            }
+            copyNextBatch();
+        }));
+    }
+
+    /**
+     * @return the bookies of the ensembles of the ledger covering the fragment to copy
+     */
+    private Set<BookieId> getFragmentBookies(LedgerMetadata metadata) {
+        Set<BookieId> bookies = new HashSet<>();
+        NavigableMap<Long, ? extends List<BookieId>> ensembles = metadata.getAllEnsembles();
+        for (Map.Entry<Long, ? extends List<BookieId>> ensemble : ensembles.entrySet()) {
+            Long nextEnsembleFirstEntryId = ensembles.higherKey(ensemble.getKey());
+            if (ensemble.getKey() <= lastEntryId
+                    && (nextEnsembleFirstEntryId == null || nextEnsembleFirstEntryId > nextEntryId)) {
+                bookies.addAll(ensemble.getValue());
+            }
+        }
+        return bookies;
+    }
+
+    private void executeOrdered(Runnable task) {
+        OrderedExecutor writeThreadPool = requestProcessor.getWriteThreadPool();
+        if (null == writeThreadPool) {
+            task.run();
+        } else {
+            writeThreadPool.executeOrdered(ledgerId, task);
+        }
+    }
+
+    private void copyNextBatch() {
+        if (nextEntryId > lastEntryId) {
+            LOG.info("Copied entries {} - {} of ledger {} ({} bytes)", copyRequest.getFirstEntryId(), lastEntryId,
+                    ledgerId, copiedBytes);
+            sendCopyResponse(StatusCode.EOK);
+            return;
+        }
+
+        final BookieId source = sourceBookies.get(sourceIndex);
+        final long batchFirstEntryId = nextEntryId;
+        final int batchSize = (int) Math.min(maxBatchEntries, lastEntryId - batchFirstEntryId + 1);
+        readBatch(source, batchFirstEntryId, batchSize, (rc, entries) -> {
+            if (rc != BKException.Code.OK) {
+                LOG.warn("Failed to read entries {} - {} of ledger {} from bookie {}: {}", batchFirstEntryId,
+                        batchFirstEntryId + batchSize - 1, ledgerId, source, BKException.getMessage(rc));
+                if (++sourceIndex >= sourceBookies.size()) {
+                    sendCopyResponse(rc == BKException.Code.NoSuchEntryException
+                            || rc == BKException.Code.NoSuchLedgerExistsException
+                            ? StatusCode.ENOENTRY : StatusCode.EIO);
+                } else {
+                    copyNextBatch();
+                }
+                return;
+            }
+            // store the entries from the write thread pool rather than from the client callback thread
+            executeOrdered(() -> writeBatch(entries));
+        });
+    }
+
+    private void readBatch(BookieId source, long firstEntryId, int count,
+                           BiConsumer<Integer, List<ByteBuf>> cb) {
+        if (batchReadEnabled) {
+            bookieClient.batchReadEntries(source, ledgerId, firstEntryId, count, MAX_BATCH_BYTES,
+                    (rc, ledgerId1, startEntryId, bufList, ctx) -> {
+                        if (rc != BKException.Code.OK) {
+                            cb.accept(rc, null);
+                            return;
+                        }
+                        List<ByteBuf> entries = new ArrayList<>(bufList.size());
+                        for (int i = 0; i < bufList.size(); i++) {
+                            entries.add(bufList.getBuffer(i).retain());
+                        }
+                        if (entries.isEmpty()) {
+                            cb.accept(BKException.Code.NoSuchEntryException, null);
+                        } else {
+                            cb.accept(BKException.Code.OK, entries);
+                        }
+                    }, null, BookieProtocol.FLAG_NONE);
+            return;
+        }
+
+        // issue the reads of the batch in parallel and hand over the entries in order once all of them are back
+        final ByteBuf[] entries = new ByteBuf[count];
+        final AtomicInteger pending = new AtomicInteger(count);
+        final AtomicInteger firstError = new AtomicInteger(BKException.Code.OK);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            bookieClient.readEntry(source, ledgerId, firstEntryId + i,
+                    (rc, ledgerId1, entryId, buffer, ctx) -> {
+                        if (rc == BKException.Code.OK) {
+                            entries[index] = buffer.retain();
+                        } else {
+                            firstError.compareAndSet(BKException.Code.OK, rc);
+                        }
+                        if (pending.decrementAndGet() == 0) {
+                            if (firstError.get() != BKException.Code.OK) {
+                                for (ByteBuf entry : entries) {
+                                    ReferenceCountUtil.release(entry);
+                                }
+                                cb.accept(firstError.get(), null);
+                            } else {
+                                List<ByteBuf> result = new ArrayList<>(count);
+                                for (ByteBuf entry : entries) {
+                                    result.add(entry);
+                                }
+                                cb.accept(BKException.Code.OK, result);
+                            }
+                        }
+                    }, null, BookieProtocol.FLAG_NONE);
+        }
+    }
+
+    private void writeBatch(List<ByteBuf> entries) {
+        final long batchFirstEntryId = nextEntryId;
+        final int batchSize = entries.size();
+        long batchBytes = 0;
+
+        for (int i = 0; i < batchSize; i++) {
+            ByteBuf entry = entries.get(i);
+            if (entry.getLong(entry.readerIndex()) != ledgerId
+                    || entry.getLong(entry.readerIndex() + 8) != batchFirstEntryId + i) {
+                LOG.error("Unexpected entry ({}, {}) read while copying entry {} of ledger {}",
+                        entry.getLong(entry.readerIndex()), entry.getLong(entry.readerIndex() + 8),
+                        batchFirstEntryId + i, ledgerId);
+                entries.forEach(ReferenceCountUtil::release);
+                sendCopyResponse(StatusCode.EIO);
+                return;
+            }
+            batchBytes += entry.readableBytes();
+        }
+
+        final long writtenBytes = batchBytes;
+        final AtomicInteger pendingWrites = new AtomicInteger(batchSize);
+        final AtomicInteger firstError = new AtomicInteger(BKException.Code.OK);
+        final WriteCallback writeCallback = (rc, ledgerId1, entryId, addr, ctx) -> {
+            if (rc != BKException.Code.OK) {
+                LOG.error("Error storing entry {} of ledger {} while copying fragment: {}", entryId, ledgerId,
+                        BKException.getMessage(rc));
+                firstError.compareAndSet(BKException.Code.OK, rc);
+            }
+            if (pendingWrites.decrementAndGet() == 0) {
+                // the journal completes the writes from its own threads, move back to the ordered thread
+                executeOrdered(() -> {
+                    if (firstError.get() != BKException.Code.OK) {
+                        sendCopyResponse(StatusCode.EIO);
+                    } else {
+                        copiedEntries += batchSize;
+                        copiedBytes += writtenBytes;
+                        nextEntryId = batchFirstEntryId + batchSize;
+                        copyNextBatch();
+                    }
+                });
+            }
+        };
+
+        for (int i = 0; i < batchSize; i++) {
+            ByteBuf entry = entries.get(i);
+            try {
+                // the bookie releases the reference it is given, whether it stores the entry or not, and the
+                // processor releases its own reference once the bookie returns
+                requestProcessor.getBookie().recoveryAddEntry(entry.retain(), writeCallback, null, masterKey);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                releaseRemaining(entries, i + 1);
+                failPendingWrites(writeCallback, batchSize - i, batchFirstEntryId + i);
+                return;
+            } catch (Exception e) {
+                LOG.error("Error storing entry {} of ledger {} while copying fragment", batchFirstEntryId + i,
+                        ledgerId, e);
+                releaseRemaining(entries, i + 1);
+                failPendingWrites(writeCallback, batchSize - i, batchFirstEntryId + i);
+                return;
+            } finally {
+                ReferenceCountUtil.release(entry);
+            }
+        }
+    }
+
+    private static void releaseRemaining(List<ByteBuf> entries, int from) {
+        for (int i = from; i < entries.size(); i++) {
+            ReferenceCountUtil.release(entries.get(i));
+        }
+    }
+
+    private void failPendingWrites(WriteCallback writeCallback, int count, long entryId) {
+        for (int i = 0; i < count; i++) {
+            writeCallback.writeComplete(BKException.Code.WriteException, ledgerId, entryId + i, null, null);
+        }
+    }
+
+    private void sendCopyResponse(StatusCode status) {
+        long lastCopiedEntryId = copiedEntries > 0 ? nextEntryId - 1 : BookieProtocol.INVALID_ENTRY_ID;
+        CopyLedgerFragmentResponse copyResponse = CopyLedgerFragmentResponse.newBuilder()
+                .setStatus(status)
+                .setLedgerId(ledgerId)
+                .setLastCopiedEntryId(lastCopiedEntryId)
+                .setCopiedEntries(copiedEntries)
+                .setCopiedBytes(copiedBytes)
+                .build();
+
+        if (status == StatusCode.EOK) {
+            requestProcessor.getRequestStats().getCopyLedgerFragmentStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        } else {
+            requestProcessor.getRequestStats().getCopyLedgerFragmentStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        }
+
+        Response response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(status)
+                .setCopyLedgerFragmentResponse(copyResponse)
+                .build();
+        sendResponse(status, response, requestProcessor.getRequestStats().getCopyLedgerFragmentRequestStats());
+    }
+}
@@ -70,6 +70,16 @@ public class GetBookieInfoProcessorV3 extends PacketProcessorBaseV3 implements R
                 totalDiskSpace = requestProcessor.getBookie().getTotalDiskSpace();
                 getBookieInfoResponse.setTotalDiskCapacity(totalDiskSpace);
             }
+            if ((requested & GetBookieInfoRequest.Flags.LOAD_VALUE) != 0) {
+                setLoad(getBookieInfoResponse);
+            }
+            if ((requested & GetBookieInfoRequest.Flags.FEATURES_VALUE) != 0) {
+                long features = 0L;
+                if (requestProcessor.isFragmentCopyEnabled()) {
+                    features |= GetBookieInfoResponse.Feature.DIRECT_FRAGMENT_COPY_VALUE;
+                }
+                getBookieInfoResponse.setFeatures(features);
+            }
             if (LOG.isDebugEnabled()) {
                 LOG.debug("FreeDiskSpace info is " + freeDiskSpace + " totalDiskSpace is: " + totalDiskSpace);
             }
@@ -86,6 +96,20 @@ public class GetBookieInfoProcessorV3 extends PacketProcessorBaseV3 implements R
         return getBookieInfoResponse.build();
     }
 
+    private void setLoad(GetBookieInfoResponse.Builder getBookieInfoResponse) throws IOException {
+        RequestStats requestStats = requestProcessor.getRequestStats();
+        getBookieInfoResponse.setJournalQueueLength(requestProcessor.getBookie().getJournalQueueLength())
+            .setAddRate(requestStats.addRequestRate())
+            .setReadRate(requestStats.readRequestRate());
+        long totalDiskSpace = getBookieInfoResponse.hasTotalDiskCapacity()
+            ? getBookieInfoResponse.getTotalDiskCapacity() : requestProcessor.getBookie().getTotalDiskSpace();
+        long freeDiskSpace = getBookieInfoResponse.hasFreeDiskSpace()
+            ? getBookieInfoResponse.getFreeDiskSpace() : requestProcessor.getBookie().getTotalFreeSpace();
+        if (totalDiskSpace > 0) {
+            getBookieInfoResponse.setDiskUtilization(1.0 - (double) freeDiskSpace / totalDiskSpace);
+        }
+    }
+
     @Override
     public void run() {
         GetBookieInfoResponse getBookieInfoResponse = getGetBookieInfoResponse();
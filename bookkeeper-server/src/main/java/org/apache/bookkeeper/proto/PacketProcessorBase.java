@@ -32,12 +32,15 @@ import org.slf4j.LoggerFactory;
 /**
  * A base class for bookeeper packet processors.
  */
-abstract class PacketProcessorBase<T extends Request> implements Runnable {
+abstract class PacketProcessorBase<T extends Request> implements BookieRequestProcessor.AdmittedProcessor {
     private static final Logger logger = LoggerFactory.getLogger(PacketProcessorBase.class);
     T request;
     BookieRequestHandler requestHandler;
     BookieRequestProcessor requestProcessor;
     long enqueueNanos;
+    // the admission of the request by the admission controller, null if the request isn't subject to it
+    RequestAdmissionController.Admission admission;
+    long admittedNanos;
 
     protected void init(T request, BookieRequestHandler requestHandler, BookieRequestProcessor requestProcessor) {
         this.request = request;
@@ -51,6 +54,22 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
         requestHandler = null;
         requestProcessor = null;
         enqueueNanos = -1;
+        // all the paths of the request end with the recycling of its processor, once the response is sent
+        completeAdmission(true);
+    }
+
+    @Override
+    public void setAdmission(RequestAdmissionController.Admission admission) {
+        this.admission = admission;
+        this.admittedNanos = MathUtils.nowInNano();
+    }
+
+    @Override
+    public void completeAdmission(boolean processed) {
+        if (null != admission) {
+            admission.complete(MathUtils.elapsedNanos(admittedNanos), processed);
+            admission = null;
+        }
     }
 
     protected boolean isVersionCompatible() {
@@ -68,7 +87,14 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
 
     protected void sendWriteReqResponse(int rc, Object response, OpStatsLogger statsLogger) {
         sendResponse(rc, response, statsLogger);
-        requestProcessor.onAddRequestFinish();
+        requestProcessor.onAddRequestFinish(getAddRequestSize());
+    }
+
+    /**
+     * @return the size of the payload of the add request processed, 0 for the other requests
+     */
+    protected int getAddRequestSize() {
+        return 0;
     }
 
     protected void sendReadReqResponse(int rc, Object response, OpStatsLogger statsLogger, boolean throttle) {
@@ -195,8 +221,9 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
             if (request instanceof BookieProtocol.ParsedAddRequest) {
                 ((BookieProtocol.ParsedAddRequest) request).release();
                 request.recycle();
-                requestProcessor.onAddRequestFinish();
+                requestProcessor.onAddRequestFinish(getAddRequestSize());
             }
+            completeAdmission(true);
             return;
         }
         processPacket();
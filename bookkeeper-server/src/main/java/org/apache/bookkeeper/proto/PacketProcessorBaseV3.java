@@ -37,12 +37,15 @@ import org.apache.bookkeeper.util.StringUtils;
  * A base class for bookkeeper protocol v3 packet processors.
  */
 @Slf4j
-public abstract class PacketProcessorBaseV3 implements Runnable {
+public abstract class PacketProcessorBaseV3 implements BookieRequestProcessor.AdmittedProcessor {
 
     final Request request;
     final BookieRequestHandler requestHandler;
     final BookieRequestProcessor requestProcessor;
     final long enqueueNanos;
+    // the admission of the request by the admission controller, null if the request isn't subject to it
+    private volatile RequestAdmissionController.Admission admission;
+    private long admittedNanos;
 
     public PacketProcessorBaseV3(Request request, BookieRequestHandler requestHandler,
                                  BookieRequestProcessor requestProcessor) {
@@ -52,8 +55,31 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
         this.enqueueNanos = MathUtils.nowInNano();
     }
 
+    @Override
+    public void setAdmission(RequestAdmissionController.Admission admission) {
+        this.admittedNanos = MathUtils.nowInNano();
+        this.admission = admission;
+    }
+
+    @Override
+    public void completeAdmission(boolean processed) {
+        RequestAdmissionController.Admission admission = this.admission;
+        if (null != admission) {
+            this.admission = null;
+            admission.complete(MathUtils.elapsedNanos(admittedNanos), processed);
+        }
+    }
+
+    /**
+     * @return the trace of the request processed, null if it is not traced
+     */
+    protected RequestTrace getRequestTrace() {
+        return null;
+    }
+
     protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
         final long writeNanos = MathUtils.nowInNano();
+        final RequestTrace trace = getRequestTrace();
 
         Channel channel = requestHandler.ctx().channel();
         final long timeOut = requestProcessor.getWaitTimeoutOnBackpressureMillis();
@@ -83,12 +109,18 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
                 requestProcessor.getRequestStats().getChannelWriteStats()
                         .registerFailedEvent(MathUtils.elapsedNanos(writeNanos), TimeUnit.NANOSECONDS);
                 statsLogger.registerFailedEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+                if (trace != null) {
+                    trace.finish();
+                }
                 return;
             } else {
                 requestProcessor.invalidateBlacklist(channel);
             }
         }
         if (channel.isActive()) {
+            if (trace != null) {
+                trace.mark(RequestTrace.Stage.RESPONSE_WRITTEN);
+            }
             channel.writeAndFlush(response).addListener(new ChannelFutureListener() {
                 @Override
                 public void operationComplete(ChannelFuture future) throws Exception {
@@ -105,11 +137,18 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
                     } else {
                         statsLogger.registerFailedEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
                     }
+                    if (trace != null) {
+                        trace.mark(RequestTrace.Stage.RESPONSE_FLUSHED);
+                        trace.finish();
+                    }
                 }
             });
         } else {
             log.debug("Netty channel {} is inactive, "
                     + "hence bypassing netty channel writeAndFlush during sendResponse", channel);
+            if (trace != null) {
+                trace.finish();
+            }
         }
     }
 
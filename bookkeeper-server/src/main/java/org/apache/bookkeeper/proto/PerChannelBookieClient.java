@@ -103,6 +103,7 @@ import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.CopyLedgerFragmentCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
@@ -116,6 +117,8 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyLedgerFragmentRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyLedgerFragmentResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoRequest;
@@ -185,6 +188,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     final long readEntryTimeoutNanos;
     final int maxFrameSize;
     final long getBookieInfoTimeoutNanos;
+    final long copyLedgerFragmentTimeoutNanos;
     final int startTLSTimeout;
 
     private final ConcurrentOpenHashMap<CompletionKey, CompletionValue> completionObjects =
@@ -273,6 +277,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     private final OpStatsLogger connectTimer;
     private final OpStatsLogger getListOfEntriesOfLedgerCompletionOpLogger;
     private final OpStatsLogger getListOfEntriesOfLedgerCompletionTimeoutOpLogger;
+    private final OpStatsLogger copyLedgerFragmentOpLogger;
+    private final OpStatsLogger copyLedgerFragmentTimeoutOpLogger;
     @StatsDoc(
         name = BookKeeperClientStats.NETTY_EXCEPTION_CNT,
         help = "the number of exceptions received from this channel"
@@ -317,6 +323,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
     private final boolean useV2WireProtocol;
     private final boolean preserveMdcForTaskExecution;
+    // request context carrying the tenant of the requests, null if not set
+    private final BookkeeperProtocol.ContextPair tenantContext;
 
     /**
      * The following member variables do not need to be concurrent, or volatile
@@ -401,9 +409,15 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         this.addEntryTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getAddEntryTimeout());
         this.readEntryTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getReadEntryTimeout());
         this.getBookieInfoTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getBookieInfoTimeout());
+        this.copyLedgerFragmentTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getReplicationDirectCopyTimeout());
         this.startTLSTimeout = conf.getStartTLSTimeout();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
         this.preserveMdcForTaskExecution = conf.getPreserveMdcForTaskExecution();
+        String tenant = conf.getClientTenant();
+        this.tenantContext = tenant == null || tenant.isEmpty() ? null : BookkeeperProtocol.ContextPair.newBuilder()
+                .setKey(RequestAdmissionController.TENANT_REQUEST_CONTEXT_KEY)
+                .setValue(tenant)
+                .build();
 
         this.authProviderFactory = authProviderFactory;
         this.extRegistry = extRegistry;
@@ -433,6 +447,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         startTLSTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_START_TLS_OP);
         getListOfEntriesOfLedgerCompletionTimeoutOpLogger = statsLogger
                 .getOpStatsLogger(BookKeeperClientStats.TIMEOUT_GET_LIST_OF_ENTRIES_OF_LEDGER);
+        copyLedgerFragmentOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.COPY_LEDGER_FRAGMENT_OP);
+        copyLedgerFragmentTimeoutOpLogger = statsLogger
+                .getOpStatsLogger(BookKeeperClientStats.TIMEOUT_COPY_LEDGER_FRAGMENT);
         exceptionCounter = statsLogger.getCounter(BookKeeperClientStats.NETTY_EXCEPTION_CNT);
         connectTimer = statsLogger.getOpStatsLogger(BookKeeperClientStats.CLIENT_CONNECT_TIMER);
         addEntryOutstanding = statsLogger.getCounter(BookKeeperClientStats.ADD_OP_OUTSTANDING);
@@ -900,6 +917,37 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         writeAndFlush(channel, completionKey, getListOfEntriesOfLedgerRequest);
     }
 
+    public void copyLedgerFragment(final long ledgerId, final byte[] masterKey,
+                                   final long firstEntryId, final long lastEntryId,
+                                   final List<BookieId> sourceBookies, final int maxBatchEntries,
+                                   CopyLedgerFragmentCallback cb, Object ctx) {
+        final long txnId = getTxnId();
+        final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.COPY_LEDGER_FRAGMENT);
+        completionObjects.put(completionKey,
+                new CopyLedgerFragmentCompletion(completionKey, cb, ctx, ledgerId, firstEntryId));
+
+        // Build the request.
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder().setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.COPY_LEDGER_FRAGMENT).setTxnId(txnId);
+
+        CopyLedgerFragmentRequest.Builder copyLedgerFragmentRequestBuilder = CopyLedgerFragmentRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
+                .setFirstEntryId(firstEntryId)
+                .setLastEntryId(lastEntryId)
+                .setMaxBatchEntries(maxBatchEntries);
+        for (BookieId source : sourceBookies) {
+            copyLedgerFragmentRequestBuilder.addSourceBookies(source.toString());
+        }
+
+        final Request copyLedgerFragmentRequest = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setCopyLedgerFragmentRequest(copyLedgerFragmentRequestBuilder)
+                .build();
+
+        writeAndFlush(channel, completionKey, copyLedgerFragmentRequest);
+    }
+
     /**
      * Long Poll Reads.
      */
@@ -2202,9 +2250,20 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
 
             int rc = convertStatus(status, BKException.Code.ReadException);
-            cb.getBookieInfoComplete(rc,
-                                     new BookieInfo(totalDiskSpace,
-                                                    freeDiskSpace), ctx);
+            BookieInfo bookieInfo;
+            if (getBookieInfoResponse.hasJournalQueueLength()) {
+                bookieInfo = new BookieInfo(totalDiskSpace, freeDiskSpace,
+                                            getBookieInfoResponse.getJournalQueueLength(),
+                                            getBookieInfoResponse.getAddRate(),
+                                            getBookieInfoResponse.getReadRate(),
+                                            getBookieInfoResponse.getDiskUtilization());
+            } else {
+                bookieInfo = new BookieInfo(totalDiskSpace, freeDiskSpace);
+            }
+            if (getBookieInfoResponse.hasFeatures()) {
+                bookieInfo = bookieInfo.withFeatures(getBookieInfoResponse.getFeatures());
+            }
+            cb.getBookieInfoComplete(rc, bookieInfo, ctx);
         }
     }
 
@@ -2263,6 +2322,62 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    class CopyLedgerFragmentCompletion extends CompletionValue {
+        final CopyLedgerFragmentCallback cb;
+
+        public CopyLedgerFragmentCompletion(final CompletionKey key,
+                                            final CopyLedgerFragmentCallback origCallback,
+                                            final Object origCtx, final long ledgerId, final long firstEntryId) {
+            super("CopyLedgerFragment", origCtx, ledgerId, firstEntryId, copyLedgerFragmentOpLogger,
+                    copyLedgerFragmentTimeoutOpLogger);
+            this.cb = new CopyLedgerFragmentCallback() {
+                @Override
+                public void copyLedgerFragmentComplete(int rc, long ledgerId, long lastCopiedEntryId, Object ctx) {
+                    logOpResult(rc);
+                    origCallback.copyLedgerFragmentComplete(rc, ledgerId, lastCopiedEntryId, ctx);
+                    key.release();
+                }
+            };
+        }
+
+        @Override
+        boolean maybeTimeout() {
+            if (MathUtils.elapsedNanos(startTime) >= copyLedgerFragmentTimeoutNanos) {
+                timeout();
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(
+                    () -> cb.copyLedgerFragmentComplete(rc, ledgerId, BookieProtocol.INVALID_ENTRY_ID, ctx));
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            CopyLedgerFragmentResponse copyLedgerFragmentResponse = response.getCopyLedgerFragmentResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK ? copyLedgerFragmentResponse.getStatus()
+                    : response.getStatus();
+            long lastCopiedEntryId = copyLedgerFragmentResponse.hasLastCopiedEntryId()
+                    ? copyLedgerFragmentResponse.getLastCopiedEntryId() : BookieProtocol.INVALID_ENTRY_ID;
+
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledgerId", ledgerId, "lastCopiedEntryId", lastCopiedEntryId);
+            }
+
+            int rc = convertStatus(status, BKException.Code.WriteException);
+            cb.copyLedgerFragmentComplete(rc, ledgerId, lastCopiedEntryId, ctx);
+        }
+    }
+
     private final Recycler<AddCompletion> addCompletionRecycler = new Recycler<AddCompletion>() {
             @Override
             protected AddCompletion newObject(Recycler.Handle<AddCompletion> handle) {
@@ -2526,6 +2641,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     }
 
     Request.Builder withRequestContext(Request.Builder builder) {
+        if (tenantContext != null) {
+            builder.addRequestContext(tenantContext);
+        }
         if (preserveMdcForTaskExecution) {
             return appendRequestContext(builder);
         }
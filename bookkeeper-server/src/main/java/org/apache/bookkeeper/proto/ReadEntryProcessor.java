@@ -32,6 +32,7 @@ import org.apache.bookkeeper.bookie.BookieException;
 import org.apache.bookkeeper.common.concurrent.FutureEventListener;
 import org.apache.bookkeeper.proto.BookieProtocol.ReadRequest;
 import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.MathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +43,8 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
 
     protected ExecutorService fenceThreadPool;
     protected boolean throttleReadResponses;
+    // the bytes read, accounted in the request memory budget until the response is written
+    private long readEntriesBytes;
 
     public static ReadEntryProcessor create(ReadRequest request,
                                             BookieRequestHandler requestHandler,
@@ -87,6 +90,9 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
                 }
             }
             data = readData();
+            readEntriesBytes = data instanceof ByteBuf ? ((ByteBuf) data).readableBytes()
+                    : data instanceof ByteBufList ? ((ByteBufList) data).readableBytes() : 0;
+            requestProcessor.onReadEntriesStart(requestHandler.ctx().channel(), readEntriesBytes);
             if (LOG.isDebugEnabled()) {
                 LOG.debug("##### Read entry ##### -- ref-count: {}",  data.refCnt());
             }
@@ -147,6 +153,8 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
         }
 
         sendReadReqResponse(errorCode, response, stats.getReadRequestStats(), throttleReadResponses);
+        requestProcessor.onReadEntriesFinish(readEntriesBytes);
+        readEntriesBytes = 0;
         recycle();
     }
 
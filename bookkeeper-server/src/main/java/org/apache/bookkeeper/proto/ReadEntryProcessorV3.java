@@ -47,6 +47,8 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
     private final ExecutorService fenceThreadPool;
 
     private CompletableFuture<Boolean> fenceResult = null;
+    // the bytes of the entry read by a fence read, accounted in the request memory budget until the fence completes
+    private long fenceReadBytes;
 
     protected final ReadRequest readRequest;
     protected final long ledgerId;
@@ -172,6 +174,9 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
         throws IOException, BookieException {
         ByteBuf entryBody = requestProcessor.getBookie().readEntry(ledgerId, entryId);
         if (null != fenceResult) {
+            // the entry is held until the ledger is fenced
+            fenceReadBytes = entryBody.readableBytes();
+            requestProcessor.onReadEntriesStart(requestHandler.ctx().channel(), fenceReadBytes);
             handleReadResultForFenceRead(entryBody, readResponseBuilder, entryId, startTimeSw);
             return null;
         } else {
@@ -255,6 +260,7 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                 LOG.debug("Dropping read request for closed channel: {}", requestHandler.ctx().channel());
             }
             requestProcessor.onReadRequestFinish();
+            completeAdmission(true);
             return;
         }
 
@@ -293,6 +299,7 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
 
         if (null != entryBody) {
             ReferenceCountUtil.release(entryBody);
+            requestProcessor.onReadEntriesFinish(fenceReadBytes);
         }
 
         readResponse.setStatus(status);
@@ -328,6 +335,7 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                      response.build(),
                      reqStats);
         requestProcessor.onReadRequestFinish();
+        completeAdmission(true);
     }
 
     //
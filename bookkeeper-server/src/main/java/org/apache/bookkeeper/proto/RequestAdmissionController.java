@@ -0,0 +1,77 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.StatsLogger;
+
+/**
+ * Admission control of the add and read requests of the tenants of a bookie.
+ *
+ * <p>The tenant of a request is the name of the principal the connection is authenticated as, else the value of
+ * the {@link #TENANT_REQUEST_CONTEXT_KEY} request context of the V3 requests, else {@link #DEFAULT_TENANT}. The
+ * high priority requests, used by the recovery, are always admitted.
+ *
+ * <p>Each admitted request is completed by a call to {@link Admission#complete}, once its response is sent or once
+ * rejected by the worker threads.
+ */
+public interface RequestAdmissionController {
+
+    /**
+     * The key of the request context carrying the tenant of a request.
+     */
+    String TENANT_REQUEST_CONTEXT_KEY = "bk-tenant";
+
+    /**
+     * The tenant of the requests without request context nor authenticated principal.
+     */
+    String DEFAULT_TENANT = "default";
+
+    /**
+     * The operations subject to admission control.
+     */
+    enum Operation {
+        ADD,
+        READ
+    }
+
+    /**
+     * An admitted request.
+     */
+    interface Admission {
+
+        /**
+         * @param elapsedNanos the time from the admission to the response of the request
+         * @param processed false if the request was rejected by the worker threads
+         */
+        void complete(long elapsedNanos, boolean processed);
+    }
+
+    void initialize(ServerConfiguration conf, StatsLogger statsLogger);
+
+    /**
+     * @param tenant the tenant of the request
+     * @param operation the operation of the request
+     * @param bytes the size of the payload of the request, 0 for the reads
+     * @return the admission of the request, or null if the request is not admitted
+     */
+    Admission tryAdmit(String tenant, Operation operation, long bytes);
+}
@@ -0,0 +1,263 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Direct memory budget of the requests in progress on a bookie, split between the payloads of the add requests,
+ * from their receipt to their response, the read requests, from their receipt to the write of their response,
+ * and the responses, from their write to their flush to the socket.
+ *
+ * <p>The memory is accounted once allocated, so it is never refused: when the budget of a consumer or the total
+ * budget is exceeded, the channel the memory was allocated for stops reading, until the usage is back under
+ * {@link #RESUME_USAGE_RATIO} of the budgets. The read-ahead of the ledger storage isn't done for a channel: it is
+ * charged to the reads, and skipped while the budget is exceeded.
+ */
+@StatsDoc(
+    name = SERVER_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Request memory budget stats, labeled by consumer"
+)
+class RequestMemoryBudget {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestMemoryBudget.class);
+
+    static final double RESUME_USAGE_RATIO = 0.8;
+    /**
+     * The memory charged for each read request in progress besides the entries it read: the long poll reads hold
+     * no entry while they wait for the last add confirmed to move, but still can't pile up for free.
+     */
+    static final long READ_REQUEST_BYTES = 1024;
+
+    private final MemoryLimitController totalMemory;
+    private final MemoryLimitController addsMemory;
+    private final MemoryLimitController readsMemory;
+    private final MemoryLimitController readAheadMemory;
+    private final MemoryLimitController responsesMemory;
+    // the paused channels, with the listeners removing them once closed
+    private final Map<Channel, ChannelFutureListener> pausedChannels = new ConcurrentHashMap<>();
+    private final ResponseMemoryHandler responseMemoryHandler = new ResponseMemoryHandler();
+
+    @StatsDoc(
+        name = "REQUEST_MEMORY_CHANNEL_PAUSED",
+        help = "the number of times a channel stopped reading because the request memory budget was exceeded"
+    )
+    private final Counter channelPausedCounter;
+
+    /**
+     * @param totalBytes the budget of all the consumers
+     * @param addsBytes the budget of the add requests, 0 to only bound them by the total budget
+     * @param readsBytes the budget of the read requests and of the read-ahead, 0 to only bound them by the total
+     *                   budget
+     * @param responsesBytes the budget of the responses, 0 to only bound them by the total budget
+     */
+    RequestMemoryBudget(long totalBytes, long addsBytes, long readsBytes, long responsesBytes,
+                        StatsLogger statsLogger) {
+        this.totalMemory = new MemoryLimitController(totalBytes);
+        this.addsMemory = new MemoryLimitController(addsBytes, totalMemory);
+        this.readsMemory = new MemoryLimitController(readsBytes, totalMemory);
+        this.readAheadMemory = new MemoryLimitController(0, readsMemory);
+        this.responsesMemory = new MemoryLimitController(responsesBytes, totalMemory);
+
+        registerUsageGauge(statsLogger, "total", totalMemory);
+        registerUsageGauge(statsLogger, "adds", addsMemory);
+        registerUsageGauge(statsLogger, "reads", readsMemory);
+        registerUsageGauge(statsLogger, "read-ahead", readAheadMemory);
+        registerUsageGauge(statsLogger, "responses", responsesMemory);
+        statsLogger.registerGauge("REQUEST_MEMORY_PAUSED_CHANNELS", new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return pausedChannels.size();
+            }
+        });
+        this.channelPausedCounter = statsLogger.getCounter("REQUEST_MEMORY_CHANNEL_PAUSED");
+    }
+
+    private static void registerUsageGauge(StatsLogger statsLogger, String consumer,
+                                           MemoryLimitController memory) {
+        statsLogger.scopeLabel("consumer", consumer).registerGauge("REQUEST_MEMORY_USAGE", new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return memory.currentUsage();
+            }
+        });
+    }
+
+    void reserveAddMemory(Channel channel, long bytes) {
+        reserve(addsMemory, channel, bytes);
+    }
+
+    void releaseAddMemory(long bytes) {
+        release(addsMemory, bytes);
+    }
+
+    void reserveReadMemory(Channel channel, long bytes) {
+        reserve(readsMemory, channel, bytes);
+    }
+
+    void releaseReadMemory(long bytes) {
+        release(readsMemory, bytes);
+    }
+
+    /**
+     * @return the controller charged with the entries read ahead by the ledger storage, which stops reading ahead
+     *         while it is over budget
+     */
+    MemoryLimitController getReadAheadMemory() {
+        return readAheadMemory;
+    }
+
+    @VisibleForTesting
+    int getNumPausedChannels() {
+        return pausedChannels.size();
+    }
+
+    /**
+     * @return the handler accounting the responses written to a channel, to add to the pipeline after the
+     *         encoders of the responses
+     */
+    ChannelOutboundHandlerAdapter getResponseMemoryHandler() {
+        return responseMemoryHandler;
+    }
+
+    private void reserve(MemoryLimitController memory, Channel channel, long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        if (!memory.forceReserveMemory(bytes) && channel.isOpen() && pause(channel)) {
+            channelPausedCounter.inc();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Request memory budget exceeded, disabling autoread on channel {}", channel);
+            }
+            // the usage may have dropped before the channel was added, and no release would resume it
+            resumeChannelsIfUnderBudget();
+        }
+    }
+
+    // synchronized with the resume, so that a channel can't be resumed before it is paused
+    private synchronized boolean pause(Channel channel) {
+        ChannelFutureListener closeListener = future -> pausedChannels.remove(channel);
+        if (pausedChannels.putIfAbsent(channel, closeListener) != null) {
+            return false;
+        }
+        ChannelReadPauses.pause(channel);
+        // a closed channel is never resumed, it is dropped at once if it closed already
+        channel.closeFuture().addListener(closeListener);
+        return true;
+    }
+
+    private void release(MemoryLimitController memory, long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        memory.releaseMemory(bytes);
+        resumeChannelsIfUnderBudget();
+    }
+
+    private void resumeChannelsIfUnderBudget() {
+        if (pausedChannels.isEmpty()
+                || !addsMemory.isUsageUnder(RESUME_USAGE_RATIO)
+                || !readsMemory.isUsageUnder(RESUME_USAGE_RATIO)
+                || !responsesMemory.isUsageUnder(RESUME_USAGE_RATIO)) {
+            return;
+        }
+        resumeChannels();
+    }
+
+    private synchronized void resumeChannels() {
+        Iterator<Map.Entry<Channel, ChannelFutureListener>> iterator = pausedChannels.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Channel, ChannelFutureListener> pausedChannel = iterator.next();
+            Channel channel = pausedChannel.getKey();
+            iterator.remove();
+            channel.closeFuture().removeListener(pausedChannel.getValue());
+            ChannelReadPauses.resume(channel);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Request memory usage back under budget, re-enabled autoread on channel {}", channel);
+            }
+        }
+    }
+
+    /**
+     * Accounts the encoded responses until they are flushed to the socket or failed.
+     */
+    @Sharable
+    private class ResponseMemoryHandler extends ChannelOutboundHandlerAdapter {
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            final long bytes;
+            if (msg instanceof ByteBuf) {
+                bytes = ((ByteBuf) msg).readableBytes();
+            } else if (msg instanceof ByteBufList) {
+                bytes = ((ByteBufList) msg).readableBytes();
+            } else {
+                bytes = 0;
+            }
+            if (bytes == 0) {
+                ctx.write(msg, promise);
+                return;
+            }
+
+            reserve(responsesMemory, ctx.channel(), bytes);
+            // a void promise can't be listened to, its failures are fired through the pipeline instead
+            final boolean voidPromise = promise.isVoid();
+            ChannelPromise writePromise = voidPromise ? ctx.newPromise() : promise;
+            writePromise.addListener(future -> {
+                release(responsesMemory, bytes);
+                if (voidPromise && !future.isSuccess()) {
+                    ctx.fireExceptionCaught(future.cause());
+                }
+            });
+            ctx.write(msg, writePromise);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.bookkeeper.common.util.MathUtils;
+
+/**
+ * Exponentially weighted moving average of the rate of requests.
+ *
+ * <p>The requests are only counted on the request path, the average is updated lazily when the rate is read:
+ * the previous average decays for the time elapsed since the last read, and the requests counted since then are
+ * added, each weighing {@code 1 / DECAY}. The rate thus decays towards zero on every read when no request comes.
+ */
+class RequestRate {
+
+    // time constant of the average
+    private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final double DECAY_SECONDS = DECAY_NANOS / TimeUnit.SECONDS.toNanos(1);
+
+    private final LongAdder count = new LongAdder();
+    private long lastCount = 0L;
+    private long lastUpdateNanos = MathUtils.nowInNano();
+    private double rate = 0.0;
+
+    void record() {
+        count.increment();
+    }
+
+    /**
+     * @return the average number of requests per second.
+     */
+    synchronized double getRate() {
+        long now = MathUtils.nowInNano();
+        long currentCount = count.sum();
+        rate = rate * Math.exp(-(now - lastUpdateNanos) / DECAY_NANOS) + (currentCount - lastCount) / DECAY_SECONDS;
+        lastCount = currentCount;
+        lastUpdateNanos = now;
+        return rate;
+    }
+}
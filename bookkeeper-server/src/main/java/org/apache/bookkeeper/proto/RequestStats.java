@@ -27,6 +27,8 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_REJEC
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_WRITE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.COPY_LEDGER_FRAGMENT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.COPY_LEDGER_FRAGMENT_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_BOOKIE_INFO;
@@ -81,6 +83,8 @@ public class RequestStats {
     final AtomicInteger readsInProgress = new AtomicInteger(0);
     final AtomicInteger readsBlocked = new AtomicInteger(0);
     final AtomicInteger maxReadsInProgress = new AtomicInteger(0);
+    final RequestRate addRate = new RequestRate();
+    final RequestRate readRate = new RequestRate();
 
     @StatsDoc(
         name = ADD_ENTRY_REQUEST,
@@ -246,6 +250,17 @@ public class RequestStats {
             parent = GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST
     )
     final OpStatsLogger getListOfEntriesOfLedgerStats;
+    @StatsDoc(
+            name = COPY_LEDGER_FRAGMENT_REQUEST,
+            help = "request stats of CopyLedgerFragment on a bookie"
+    )
+    final OpStatsLogger copyLedgerFragmentRequestStats;
+    @StatsDoc(
+            name = COPY_LEDGER_FRAGMENT,
+            help = "operation stats of CopyLedgerFragment, from the first read to the last entry persisted",
+            parent = COPY_LEDGER_FRAGMENT_REQUEST
+    )
+    final OpStatsLogger copyLedgerFragmentStats;
 
     public RequestStats(StatsLogger statsLogger) {
         this.addEntryStats = statsLogger.getThreadScopedOpStatsLogger(ADD_ENTRY);
@@ -280,6 +295,8 @@ public class RequestStats {
         this.getListOfEntriesOfLedgerStats = statsLogger.getOpStatsLogger(GET_LIST_OF_ENTRIES_OF_LEDGER);
         this.getListOfEntriesOfLedgerRequestStats =
                 statsLogger.getOpStatsLogger(GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST);
+        this.copyLedgerFragmentStats = statsLogger.getOpStatsLogger(COPY_LEDGER_FRAGMENT);
+        this.copyLedgerFragmentRequestStats = statsLogger.getOpStatsLogger(COPY_LEDGER_FRAGMENT_REQUEST);
 
         statsLogger.registerGauge(ADD_ENTRY_IN_PROGRESS, new Gauge<Number>() {
             @Override
@@ -344,6 +361,7 @@ public class RequestStats {
     }
 
     void trackAddRequest() {
+        addRate.record();
         final int curr = addsInProgress.incrementAndGet();
         maxAddsInProgress.accumulateAndGet(curr, Integer::max);
     }
@@ -356,6 +374,10 @@ public class RequestStats {
         return maxAddsInProgress.get();
     }
 
+    double addRequestRate() {
+        return addRate.getRate();
+    }
+
     //
     // Read requests
     //
@@ -370,6 +392,7 @@ public class RequestStats {
     }
 
     void trackReadRequest() {
+        readRate.record();
         final int curr = readsInProgress.incrementAndGet();
         maxReadsInProgress.accumulateAndGet(curr, Integer::max);
     }
@@ -382,4 +405,8 @@ public class RequestStats {
         return maxReadsInProgress.get();
     }
 
+    double readRequestRate() {
+        return readRate.getRate();
+    }
+
 }
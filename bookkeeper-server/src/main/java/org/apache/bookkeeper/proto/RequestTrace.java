@@ -0,0 +1,120 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.bookkeeper.util.MathUtils;
+
+/**
+ * The timestamps of the stages of a sampled add request, in a slot preallocated by the {@link RequestTracer}.
+ *
+ * <p>The stages are marked by the threads processing the request in turn, the trace is owned by the request until
+ * {@link #finish()} returns it to the tracer, and must not be marked anymore afterwards.
+ */
+public final class RequestTrace {
+
+    /**
+     * The stages of an add request, in processing order.
+     */
+    public enum Stage {
+        /** The request was decoded and handed to the request processor. */
+        RECEIVED(null),
+        /** A write thread started to process the request. */
+        WRITE_THREAD_STARTED("write_thread_queue"),
+        /** The entry was added to the ledger storage and queued to the journal. */
+        JOURNAL_ENQUEUED("ledger_storage_add"),
+        /** The journal thread dequeued the entry. */
+        JOURNAL_DEQUEUED("journal_queue"),
+        /** The journal thread wrote the batch of the entry to the journal file. */
+        JOURNAL_WRITTEN("journal_write"),
+        /** The journal acknowledged the entry, after the fsync unless the entry is acknowledged before it. */
+        JOURNAL_SYNCED("journal_sync"),
+        /** The response was written to the channel, or to the pending responses of the v2 protocol. */
+        RESPONSE_WRITTEN("response_write"),
+        /** The response was flushed to the socket, only for the v3 protocol. */
+        RESPONSE_FLUSHED("response_flush");
+
+        private final String interval;
+
+        Stage(String interval) {
+            this.interval = interval;
+        }
+
+        /**
+         * @return the name of the interval between the previous stage and this one, null for the first stage
+         */
+        public String getInterval() {
+            return interval;
+        }
+    }
+
+    /**
+     * A request processing object which may carry the trace of its request, such as the write callback of an add.
+     */
+    public interface Carrier {
+        /**
+         * @return the trace of the request, null if it is not traced
+         */
+        RequestTrace getRequestTrace();
+    }
+
+    static final Stage[] STAGES = Stage.values();
+    static final long NOT_REACHED = Long.MIN_VALUE;
+
+    private final RequestTracer tracer;
+    final AtomicBoolean inUse = new AtomicBoolean(false);
+    final long[] stageNanos = new long[STAGES.length];
+    long ledgerId;
+    long entryId;
+
+    RequestTrace(RequestTracer tracer) {
+        this.tracer = tracer;
+        reset();
+    }
+
+    /**
+     * Mark that the request reached a stage now.
+     */
+    public void mark(Stage stage) {
+        stageNanos[stage.ordinal()] = MathUtils.nowInNano();
+    }
+
+    /**
+     * Mark that the request reached a stage at a time, to share a timestamp between the requests of a batch.
+     */
+    public void mark(Stage stage, long nanos) {
+        stageNanos[stage.ordinal()] = nanos;
+    }
+
+    /**
+     * Record the latencies of the stages reached and return the trace to the tracer.
+     */
+    public void finish() {
+        tracer.finish(this);
+    }
+
+    void reset() {
+        Arrays.fill(stageNanos, NOT_REACHED);
+        ledgerId = -1L;
+        entryId = -1L;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
+import static org.apache.bookkeeper.proto.RequestTrace.NOT_REACHED;
+import static org.apache.bookkeeper.proto.RequestTrace.STAGES;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * Traces the stages of a sample of the add requests, to break their latency down.
+ *
+ * <p>The traces are preallocated in a ring, a sampled request takes the next trace of the ring and is not traced
+ * if this trace is still in use, so that tracing never allocates. The latencies of the intervals between the stages
+ * are recorded in histograms labeled by interval when a trace is finished, and the traces of the requests slower
+ * than a threshold are copied to another preallocated ring, to be dumped through the http admin api.
+ */
+@StatsDoc(
+    name = SERVER_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Sampled add request traces stats, labeled by interval between stages"
+)
+public class RequestTracer {
+
+    static final int NUM_TRACES = 1024;
+
+    private final int sampleRate;
+    private final long slowThresholdNanos;
+    private final RequestTrace[] traces = new RequestTrace[NUM_TRACES];
+    private final AtomicLong nextTrace = new AtomicLong();
+
+    // the ring of the slow traces, only accessed under the lock of the tracer
+    private final long[][] slowStageNanos;
+    private final long[] slowLedgerIds;
+    private final long[] slowEntryIds;
+    private final long[] slowFinishTimes;
+    private long numSlowTraces = 0;
+
+    @StatsDoc(
+        name = "REQUEST_TRACE_STAGE_LATENCY",
+        help = "latency of the interval between two stages of the traced add requests"
+    )
+    private final OpStatsLogger[] stageLatencies = new OpStatsLogger[STAGES.length];
+    @StatsDoc(
+        name = "REQUEST_TRACE_LATENCY",
+        help = "latency of the traced add requests, from their receipt to their last stage"
+    )
+    private final OpStatsLogger traceLatency;
+    @StatsDoc(
+        name = "REQUEST_TRACE_SLOW_REQUESTS",
+        help = "the number of traced add requests slower than the slow request threshold"
+    )
+    private final Counter slowRequestsCounter;
+    @StatsDoc(
+        name = "REQUEST_TRACE_SKIPPED",
+        help = "the number of sampled add requests not traced because all the traces were in use"
+    )
+    private final Counter skippedCounter;
+
+    /**
+     * @param sampleRate trace one add request out of sampleRate
+     * @param slowThresholdMs the latency from which the traces are kept as slow requests
+     * @param slowBufferSize the number of slow request traces kept
+     */
+    RequestTracer(int sampleRate, long slowThresholdMs, int slowBufferSize, StatsLogger statsLogger) {
+        this.sampleRate = sampleRate;
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+        for (int i = 0; i < NUM_TRACES; i++) {
+            traces[i] = new RequestTrace(this);
+        }
+        int slowTraces = Math.max(1, slowBufferSize);
+        this.slowStageNanos = new long[slowTraces][STAGES.length];
+        this.slowLedgerIds = new long[slowTraces];
+        this.slowEntryIds = new long[slowTraces];
+        this.slowFinishTimes = new long[slowTraces];
+
+        for (RequestTrace.Stage stage : STAGES) {
+            if (stage.getInterval() != null) {
+                stageLatencies[stage.ordinal()] = statsLogger.scopeLabel("interval", stage.getInterval())
+                        .getOpStatsLogger("REQUEST_TRACE_STAGE_LATENCY");
+            }
+        }
+        this.traceLatency = statsLogger.getOpStatsLogger("REQUEST_TRACE_LATENCY");
+        this.slowRequestsCounter = statsLogger.getCounter("REQUEST_TRACE_SLOW_REQUESTS");
+        this.skippedCounter = statsLogger.getCounter("REQUEST_TRACE_SKIPPED");
+    }
+
+    /**
+     * Start the trace of an add request if it is sampled, marking it as {@link RequestTrace.Stage#RECEIVED}.
+     *
+     * @return the trace of the request, null if it is not traced
+     */
+    RequestTrace startTrace(long ledgerId, long entryId) {
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return null;
+        }
+        RequestTrace trace = traces[(int) (nextTrace.getAndIncrement() & (NUM_TRACES - 1))];
+        if (!trace.inUse.compareAndSet(false, true)) {
+            skippedCounter.inc();
+            return null;
+        }
+        trace.ledgerId = ledgerId;
+        trace.entryId = entryId;
+        trace.mark(RequestTrace.Stage.RECEIVED);
+        return trace;
+    }
+
+    void finish(RequestTrace trace) {
+        long[] stageNanos = trace.stageNanos;
+        long receivedNanos = stageNanos[RequestTrace.Stage.RECEIVED.ordinal()];
+        long previousNanos = receivedNanos;
+        for (int i = 1; i < stageNanos.length; i++) {
+            if (stageNanos[i] != NOT_REACHED) {
+                stageLatencies[i].registerSuccessfulEvent(stageNanos[i] - previousNanos, TimeUnit.NANOSECONDS);
+                previousNanos = stageNanos[i];
+            }
+        }
+        long latencyNanos = previousNanos - receivedNanos;
+        traceLatency.registerSuccessfulEvent(latencyNanos, TimeUnit.NANOSECONDS);
+        if (latencyNanos >= slowThresholdNanos) {
+            slowRequestsCounter.inc();
+            recordSlowTrace(trace);
+        }
+        trace.reset();
+        trace.inUse.set(false);
+    }
+
+    private synchronized void recordSlowTrace(RequestTrace trace) {
+        int index = (int) (numSlowTraces++ % slowLedgerIds.length);
+        System.arraycopy(trace.stageNanos, 0, slowStageNanos[index], 0, STAGES.length);
+        slowLedgerIds[index] = trace.ledgerId;
+        slowEntryIds[index] = trace.entryId;
+        slowFinishTimes[index] = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the traces of the last slow requests, the most recent first
+     */
+    public synchronized List<SlowRequest> getSlowRequests() {
+        int count = (int) Math.min(numSlowTraces, slowLedgerIds.length);
+        List<SlowRequest> slowRequests = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            int index = (int) ((numSlowTraces - i) % slowLedgerIds.length);
+            long[] stageNanos = slowStageNanos[index];
+            long previousNanos = stageNanos[RequestTrace.Stage.RECEIVED.ordinal()];
+            long receivedNanos = previousNanos;
+            Map<String, Long> intervalMicros = new LinkedHashMap<>();
+            for (int stage = 1; stage < STAGES.length; stage++) {
+                if (stageNanos[stage] != NOT_REACHED) {
+                    intervalMicros.put(STAGES[stage].getInterval(),
+                            TimeUnit.NANOSECONDS.toMicros(stageNanos[stage] - previousNanos));
+                    previousNanos = stageNanos[stage];
+                }
+            }
+            slowRequests.add(new SlowRequest(slowLedgerIds[index], slowEntryIds[index], slowFinishTimes[index],
+                    TimeUnit.NANOSECONDS.toMicros(previousNanos - receivedNanos), intervalMicros));
+        }
+        return slowRequests;
+    }
+
+    /**
+     * The trace of a slow add request.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class SlowRequest {
+        private final long ledgerId;
+        private final long entryId;
+        /** The wall clock time the trace was finished at, in milliseconds. */
+        private final long finishTimeMillis;
+        private final long latencyMicros;
+        /** The latencies of the intervals between the stages reached, in processing order. */
+        private final Map<String, Long> intervalLatenciesMicros;
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * Gives the same quotas to each tenant: token buckets of requests and of written bytes per second, and a max
+ * number of requests in progress, so that a tenant can't take all the worker threads nor the journal.
+ *
+ * <p>The requests over the quotas are rejected with a too many requests error. The clients read the entries from
+ * the other bookies of the ensemble, and send the adds again to the same bookie after a backoff.
+ *
+ * <p>The tenants are supplied by the clients, so they are bounded: the quotas of the tenants idle for
+ * {@link #TENANT_IDLE_NANOS} are dropped, and the tenants seen while {@link #MAX_TENANTS} tenants are active share
+ * the quotas of the {@link #OTHER_TENANTS} tenant. The stats, which the stats providers can't drop, are labeled
+ * with the first {@link #MAX_TENANTS} tenants only, the other ones are recorded under {@link #OTHER_TENANTS}.
+ */
+public class TenantQuotaAdmissionController implements RequestAdmissionController {
+
+    static final int MAX_TENANTS = 1024;
+    static final String OTHER_TENANTS = "other";
+    // The token buckets of a quota idle for more than a second are full again, so an evicted quota can be created
+    // again at no cost. The quotas are only evicted after a minute, not to create them again for each request.
+    static final long TENANT_IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long EVICTION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final ConcurrentHashMap<String, TenantQuota> tenants = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, TenantStats> tenantStats = new ConcurrentHashMap<>();
+    private final AtomicLong lastEvictionNanos = new AtomicLong(MathUtils.nowInNano());
+    private double maxOpsPerSecond;
+    private double maxBytesPerSecond;
+    private int maxRequestsInProgress;
+    private StatsLogger statsLogger;
+
+    @Override
+    public void initialize(ServerConfiguration conf, StatsLogger statsLogger) {
+        this.maxOpsPerSecond = conf.getTenantQuotaMaxOpsPerSecond();
+        this.maxBytesPerSecond = conf.getTenantQuotaMaxBytesPerSecond();
+        this.maxRequestsInProgress = conf.getTenantQuotaMaxRequestsInProgress();
+        this.statsLogger = statsLogger;
+    }
+
+    @Override
+    public Admission tryAdmit(String tenant, Operation operation, long bytes) {
+        while (true) {
+            TenantQuota quota = getQuota(tenant);
+            int inProgress = quota.acquire();
+            if (inProgress > 0) {
+                return quota.tryAdmit(operation, bytes, inProgress);
+            }
+            // the quota was evicted meanwhile
+        }
+    }
+
+    int getNumTenants() {
+        return tenants.size();
+    }
+
+    private TenantQuota getQuota(String tenant) {
+        TenantQuota quota = tenants.get(tenant);
+        if (quota != null) {
+            return quota;
+        }
+        evictIdleTenants();
+        if (tenants.size() >= MAX_TENANTS) {
+            tenant = OTHER_TENANTS;
+        }
+        return tenants.computeIfAbsent(tenant, TenantQuota::new);
+    }
+
+    private void evictIdleTenants() {
+        long nowNanos = MathUtils.nowInNano();
+        long lastNanos = lastEvictionNanos.get();
+        if (nowNanos - lastNanos < EVICTION_INTERVAL_NANOS || !lastEvictionNanos.compareAndSet(lastNanos, nowNanos)) {
+            return;
+        }
+        tenants.forEach((tenant, quota) -> {
+            if (nowNanos - quota.lastAdmissionNanos > TENANT_IDLE_NANOS && quota.evict()) {
+                tenants.remove(tenant, quota);
+            }
+        });
+    }
+
+    private TenantStats getStats(String tenant) {
+        TenantStats stats = tenantStats.get(tenant);
+        if (stats != null) {
+            return stats;
+        }
+        if (tenantStats.size() >= MAX_TENANTS) {
+            tenant = OTHER_TENANTS;
+        }
+        return tenantStats.computeIfAbsent(tenant, TenantStats::new);
+    }
+
+    @StatsDoc(
+        name = SERVER_SCOPE,
+        category = CATEGORY_SERVER,
+        help = "Per tenant request stats, labeled by tenant"
+    )
+    private class TenantStats {
+        private final AtomicInteger requestsInProgress = new AtomicInteger();
+
+        @StatsDoc(
+            name = "TENANT_ADD_ENTRY_REQUEST",
+            help = "time from the admission to the response of the add requests"
+        )
+        private final OpStatsLogger addRequestStats;
+        @StatsDoc(
+            name = "TENANT_READ_ENTRY_REQUEST",
+            help = "time from the admission to the response of the read requests"
+        )
+        private final OpStatsLogger readRequestStats;
+        @StatsDoc(
+            name = "TENANT_ADD_ENTRY_REJECTED",
+            help = "the number of add requests rejected because the tenant is over its quotas"
+        )
+        private final Counter addRejectedCounter;
+        @StatsDoc(
+            name = "TENANT_READ_ENTRY_REJECTED",
+            help = "the number of read requests rejected because the tenant is over its quotas"
+        )
+        private final Counter readRejectedCounter;
+
+        TenantStats(String tenant) {
+            StatsLogger tenantStatsLogger = statsLogger.scopeLabel("tenant", tenant);
+            this.addRequestStats = tenantStatsLogger.getOpStatsLogger("TENANT_ADD_ENTRY_REQUEST");
+            this.readRequestStats = tenantStatsLogger.getOpStatsLogger("TENANT_READ_ENTRY_REQUEST");
+            this.addRejectedCounter = tenantStatsLogger.getCounter("TENANT_ADD_ENTRY_REJECTED");
+            this.readRejectedCounter = tenantStatsLogger.getCounter("TENANT_READ_ENTRY_REJECTED");
+            tenantStatsLogger.registerGauge("TENANT_REQUESTS_IN_PROGRESS", new Gauge<Number>() {
+                @Override
+                public Number getDefaultValue() {
+                    return 0;
+                }
+
+                @Override
+                public Number getSample() {
+                    return requestsInProgress.get();
+                }
+            });
+        }
+    }
+
+    private class TenantQuota {
+        private final TokenBucket opsBucket;
+        private final TokenBucket bytesBucket;
+        private final TenantStats stats;
+        // negative once the quota is evicted
+        private final AtomicInteger requestsInProgress = new AtomicInteger();
+        private volatile long lastAdmissionNanos = MathUtils.nowInNano();
+        private final Admission addAdmission = (elapsedNanos, processed) ->
+                complete(Operation.ADD, elapsedNanos, processed);
+        private final Admission readAdmission = (elapsedNanos, processed) ->
+                complete(Operation.READ, elapsedNanos, processed);
+
+        TenantQuota(String tenant) {
+            this.opsBucket = maxOpsPerSecond > 0 ? new TokenBucket(maxOpsPerSecond) : null;
+            this.bytesBucket = maxBytesPerSecond > 0 ? new TokenBucket(maxBytesPerSecond) : null;
+            this.stats = getStats(tenant);
+        }
+
+        /**
+         * Count a new request in progress, unless the quota was evicted.
+         *
+         * @return the number of requests in progress with the new one, or -1 if the quota was evicted
+         */
+        int acquire() {
+            while (true) {
+                int inProgress = requestsInProgress.get();
+                if (inProgress < 0) {
+                    return -1;
+                }
+                if (requestsInProgress.compareAndSet(inProgress, inProgress + 1)) {
+                    return inProgress + 1;
+                }
+            }
+        }
+
+        boolean evict() {
+            return requestsInProgress.compareAndSet(0, -1);
+        }
+
+        Admission tryAdmit(Operation operation, long bytes, int inProgress) {
+            lastAdmissionNanos = MathUtils.nowInNano();
+            boolean admitted = maxRequestsInProgress <= 0 || inProgress <= maxRequestsInProgress;
+            if (admitted && opsBucket != null) {
+                admitted = opsBucket.tryAcquire(1);
+            }
+            if (admitted && bytesBucket != null && bytes > 0 && !bytesBucket.tryAcquire(bytes)) {
+                // the request is not processed, it doesn't consume its operation
+                if (opsBucket != null) {
+                    opsBucket.release(1);
+                }
+                admitted = false;
+            }
+            if (!admitted) {
+                requestsInProgress.decrementAndGet();
+                if (operation == Operation.ADD) {
+                    stats.addRejectedCounter.inc();
+                } else {
+                    stats.readRejectedCounter.inc();
+                }
+                return null;
+            }
+            stats.requestsInProgress.incrementAndGet();
+            return operation == Operation.ADD ? addAdmission : readAdmission;
+        }
+
+        private void complete(Operation operation, long elapsedNanos, boolean processed) {
+            requestsInProgress.decrementAndGet();
+            stats.requestsInProgress.decrementAndGet();
+            OpStatsLogger requestStats = operation == Operation.ADD ? stats.addRequestStats : stats.readRequestStats;
+            if (processed) {
+                requestStats.registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+            } else {
+                requestStats.registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * A token bucket holding up to a second of tokens, whose tokens can be given back.
+     *
+     * <p>A request needing more tokens than a second worth is admitted once the bucket is full, and leaves it in
+     * debt, like the Guava RateLimiter which can't give the tokens back.
+     */
+    static class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefillNanos;
+
+        TokenBucket(double tokensPerSecond) {
+            this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = tokensPerSecond;
+            this.tokens = tokensPerSecond;
+            this.lastRefillNanos = MathUtils.nowInNano();
+        }
+
+        synchronized boolean tryAcquire(long permits) {
+            long nowNanos = MathUtils.nowInNano();
+            tokens = Math.min(capacity, tokens + (nowNanos - lastRefillNanos) * tokensPerNano);
+            lastRefillNanos = nowNanos;
+            if (tokens < Math.min(permits, capacity)) {
+                return false;
+            }
+            tokens -= permits;
+            return true;
+        }
+
+        synchronized void release(long permits) {
+            tokens = Math.min(capacity, tokens + permits);
+        }
+    }
+}
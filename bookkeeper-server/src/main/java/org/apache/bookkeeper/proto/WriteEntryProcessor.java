@@ -34,28 +34,53 @@ import org.slf4j.LoggerFactory;
 /**
  * Processes add entry requests.
  */
-class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implements WriteCallback {
+class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest>
+        implements WriteCallback, RequestTrace.Carrier {
 
     private static final Logger LOG = LoggerFactory.getLogger(WriteEntryProcessor.class);
 
     long startTimeNanos;
+    // the payload size accounted in the request memory budget, the payload may be released before the response
+    int entrySize;
+    RequestTrace trace;
 
     @Override
     protected void reset() {
         super.reset();
         startTimeNanos = -1L;
+        entrySize = 0;
+        // all the paths of the request end with the recycling of its processor
+        if (trace != null) {
+            trace.finish();
+            trace = null;
+        }
     }
 
     public static WriteEntryProcessor create(ParsedAddRequest request, BookieRequestHandler requestHandler,
                                              BookieRequestProcessor requestProcessor) {
         WriteEntryProcessor wep = RECYCLER.get();
         wep.init(request, requestHandler, requestProcessor);
-        requestProcessor.onAddRequestStart(requestHandler.ctx().channel());
+        wep.entrySize = request.getData().readableBytes();
+        wep.trace = requestProcessor.startAddRequestTrace(request.getLedgerId(), request.getEntryId());
+        requestProcessor.onAddRequestStart(requestHandler.ctx().channel(), wep.entrySize);
         return wep;
     }
 
+    @Override
+    protected int getAddRequestSize() {
+        return entrySize;
+    }
+
+    @Override
+    public RequestTrace getRequestTrace() {
+        return trace;
+    }
+
     @Override
     protected void processPacket() {
+        if (trace != null) {
+            trace.mark(RequestTrace.Stage.WRITE_THREAD_STARTED);
+        }
         if (requestProcessor.getBookie().isReadOnly()
             && !(request.isHighPriority() && requestProcessor.getBookie().isAvailableForHighPriorityWrites())) {
             LOG.warn("BookieServer is running in readonly mode,"
@@ -126,7 +151,10 @@ class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implemen
         }
 
         requestHandler.prepareSendResponseV2(rc, request);
-        requestProcessor.onAddRequestFinish();
+        if (trace != null) {
+            trace.mark(RequestTrace.Stage.RESPONSE_WRITTEN);
+        }
+        requestProcessor.onAddRequestFinish(entrySize);
 
         request.recycle();
         recycle();
@@ -42,10 +42,22 @@ import org.slf4j.LoggerFactory;
 class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
     private static final Logger logger = LoggerFactory.getLogger(WriteEntryProcessorV3.class);
 
+    private final int entrySize;
+    private final RequestTrace trace;
+
+    /**
+     * A write callback carrying the trace of the request to the journal.
+     */
+    private interface TracedWriteCallback extends BookkeeperInternalCallbacks.WriteCallback, RequestTrace.Carrier {
+    }
+
     public WriteEntryProcessorV3(Request request, BookieRequestHandler requestHandler,
                                  BookieRequestProcessor requestProcessor) {
         super(request, requestHandler, requestProcessor);
-        requestProcessor.onAddRequestStart(requestHandler.ctx().channel());
+        this.entrySize = request.getAddRequest().getBody().size();
+        this.trace = requestProcessor.startAddRequestTrace(request.getAddRequest().getLedgerId(),
+                request.getAddRequest().getEntryId());
+        requestProcessor.onAddRequestStart(requestHandler.ctx().channel(), entrySize);
     }
 
     // Returns null if there is no exception thrown
@@ -72,7 +84,12 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
             return addResponse.build();
         }
 
-        BookkeeperInternalCallbacks.WriteCallback wcb = new BookkeeperInternalCallbacks.WriteCallback() {
+        TracedWriteCallback wcb = new TracedWriteCallback() {
+            @Override
+            public RequestTrace getRequestTrace() {
+                return trace;
+            }
+
             @Override
             public void writeComplete(int rc, long ledgerId, long entryId,
                                       BookieId addr, Object ctx) {
@@ -162,6 +179,9 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
 
     @Override
     public void run() {
+        if (trace != null) {
+            trace.mark(RequestTrace.Stage.WRITE_THREAD_STARTED);
+        }
         requestProcessor.getRequestStats().getWriteThreadQueuedLatency()
                 .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
         AddResponse addResponse = getAddResponse();
@@ -177,10 +197,16 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
         }
     }
 
+    @Override
+    protected RequestTrace getRequestTrace() {
+        return trace;
+    }
+
     @Override
     protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
         super.sendResponse(code, response, statsLogger);
-        requestProcessor.onAddRequestFinish();
+        requestProcessor.onAddRequestFinish(entrySize);
+        completeAdmission(true);
     }
 
     /**
@@ -22,17 +22,37 @@ import com.scurrilous.circe.checksum.Crc32cIntChecksum;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.client.LedgerHandle;
 
 @Slf4j
 class CRC32CDigestManager extends DigestManager {
 
+    private static final int DIGEST_LENGTH = 4;
+    // digests the entries received by the bookies, the digest manager itself is stateless
+    private static final CRC32CDigestManager ENTRY_DIGEST_MANAGER =
+            new CRC32CDigestManager(LedgerHandle.INVALID_LEDGER_ID, false, ByteBufAllocator.DEFAULT);
+
     public CRC32CDigestManager(long ledgerId, boolean useV2Protocol, ByteBufAllocator allocator) {
         super(ledgerId, useV2Protocol, allocator);
     }
 
+    static long verifyEntryDigest(ByteBuf entry) {
+        int index = entry.readerIndex();
+        int dataOffset = METADATA_LENGTH + DIGEST_LENGTH;
+        if (entry.readableBytes() < dataOffset) {
+            return NO_CRC32C_DIGEST;
+        }
+        int digest = ENTRY_DIGEST_MANAGER.update(0, entry, index, METADATA_LENGTH);
+        digest = ENTRY_DIGEST_MANAGER.update(digest, entry, index + dataOffset, entry.readableBytes() - dataOffset);
+        if (digest != entry.getInt(index + METADATA_LENGTH)) {
+            return NO_CRC32C_DIGEST;
+        }
+        return Integer.toUnsignedLong(digest);
+    }
+
     @Override
     int getMacCodeLength() {
-        return 4;
+        return DIGEST_LENGTH;
     }
 
     @Override
@@ -55,6 +75,11 @@ class CRC32CDigestManager extends DigestManager {
         return Crc32cIntChecksum.resumeChecksum(digest, buffer, offset, len);
     }
 
+    @Override
+    int updateAndCopy(int digest, ByteBuf buffer, int offset, int len, ByteBuf dst) {
+        return Crc32cIntChecksum.resumeChecksumAndCopy(digest, buffer, offset, len, dst);
+    }
+
     @Override
     boolean acceptsMemoryAddressBuffer() {
         return Crc32cIntChecksum.acceptsMemoryAddressBuffer();
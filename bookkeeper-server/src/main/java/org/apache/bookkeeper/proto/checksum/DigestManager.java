@@ -48,6 +48,7 @@ public abstract class DigestManager {
 
     public static final int METADATA_LENGTH = 32;
     public static final int LAC_METADATA_LENGTH = 16;
+    public static final long NO_CRC32C_DIGEST = -1L;
 
     final long ledgerId;
     final boolean useV2Protocol;
@@ -72,6 +73,15 @@ public abstract class DigestManager {
         }
     }
 
+    /**
+     * Update the digest with {@code len} bytes of a buffer and append them to another buffer.
+     */
+    int updateAndCopy(int digest, ByteBuf buffer, int offset, int len, ByteBuf dst) {
+        digest = update(digest, buffer, offset, len);
+        dst.writeBytes(buffer, offset, len);
+        return digest;
+    }
+
     abstract void populateValueAndReset(int digest, ByteBuf buffer);
 
     abstract boolean isInt32Digest();
@@ -151,6 +161,21 @@ public abstract class DigestManager {
 
         // Compute checksum over the headers
         int digest = update(0, buf, buf.readerIndex(), buf.readableBytes());
+
+        if (isSmallEntry) {
+            // the payload is copied after the digest while it is computed, the digest is written last
+            int digestIndex = buf.writerIndex();
+            buf.writerIndex(digestIndex + macCodeLength);
+            digest = updateAndCopy(digest, data, data.readerIndex(), data.readableBytes(), buf);
+            int endIndex = buf.writerIndex();
+            buf.writerIndex(digestIndex);
+            populateValueAndReset(digest, buf);
+            buf.writerIndex(endIndex);
+            buf.readerIndex(0);
+            data.release();
+            return buf;
+        }
+
         digest = update(digest, data, data.readerIndex(), data.readableBytes());
 
         populateValueAndReset(digest, buf);
@@ -158,13 +183,7 @@ public abstract class DigestManager {
         // Reset the reader index to the beginning
         buf.readerIndex(0);
 
-        if (isSmallEntry) {
-            buf.writeBytes(data, data.readerIndex(), data.readableBytes());
-            data.release();
-            return buf;
-        } else {
-            return ByteBufList.get(buf, data);
-        }
+        return ByteBufList.get(buf, data);
     }
 
     private ByteBufList computeDigestAndPackageForSendingV3(long entryId, long lastAddConfirmed, long length,
@@ -326,6 +345,19 @@ public abstract class DigestManager {
         return dataReceived;
     }
 
+    /**
+     * Verify the CRC32C digest of an entry as received by the bookies, with its metadata, digest and data.
+     *
+     * <p>The bookies don't know the digest type of the ledgers, so an entry not matching its CRC32C digest can
+     * either be corrupted or belong to a ledger using another digest type.
+     *
+     * @param entry the entry, between its reader and writer indexes
+     * @return the digest of the entry as an unsigned int if it matches, {@link #NO_CRC32C_DIGEST} otherwise
+     */
+    public static long verifyCrc32cDigest(ByteBuf entry) {
+        return CRC32CDigestManager.verifyEntryDigest(entry);
+    }
+
     /**
      * A representation of RecoveryData.
      */
@@ -27,8 +27,12 @@ import com.google.common.util.concurrent.SettableFuture;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
@@ -39,8 +43,11 @@ import java.util.function.BiConsumer;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.BookKeeper;
 import org.apache.bookkeeper.client.BookKeeperAdmin;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.discover.BookieServiceInfo;
+import org.apache.bookkeeper.discover.RegistrationClient;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.meta.LedgerManagerFactory;
 import org.apache.bookkeeper.meta.LedgerUnderreplicationManager;
@@ -51,6 +58,7 @@ import org.apache.bookkeeper.replication.ReplicationException.CompatibilityExcep
 import org.apache.bookkeeper.replication.ReplicationException.UnavailableException;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.versioning.Versioned;
 import org.apache.commons.collections4.CollectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -76,6 +84,8 @@ public class Auditor implements AutoCloseable {
     private LedgerUnderreplicationManager ledgerUnderreplicationManager;
     private final ScheduledExecutorService executor;
     private List<String> knownBookies = new ArrayList<String>();
+    // start time advertised by the known bookies, to detect the bookies that restarted between two audits
+    private final Map<String, String> knownBookieStartTimes = new HashMap<>();
     private final String bookieIdentifier;
     protected volatile Future<?> auditTask;
     private final Set<String> bookiesToBeAudited = Sets.newHashSet();
@@ -256,6 +266,10 @@ public class Auditor implements AutoCloseable {
                 Collection<String> newBookies = CollectionUtils.subtract(
                         availableBookies, knownBookies);
                 knownBookies.addAll(newBookies);
+                notifyBookiesChanged(newBookies);
+                if (conf.isAuditorIncrementalCheckEnabled()) {
+                    notifyBookiesChanged(getRestartedBookies(availableBookies));
+                }
                 if (!bookiesToBeAudited.isEmpty() && knownBookies.containsAll(bookiesToBeAudited)) {
                     // the bookie, which went down earlier and had an audit scheduled for,
                     // has come up. So let us stop tracking it and cancel the audit. Since
@@ -270,7 +284,9 @@ public class Auditor implements AutoCloseable {
                 }
 
                 // find lost bookies(if any)
-                bookiesToBeAudited.addAll(CollectionUtils.subtract(knownBookies, availableBookies));
+                Collection<String> lostBookies = CollectionUtils.subtract(knownBookies, availableBookies);
+                notifyBookiesChanged(lostBookies);
+                bookiesToBeAudited.addAll(lostBookies);
                 if (bookiesToBeAudited.size() == 0) {
                     return;
                 }
@@ -454,6 +470,11 @@ public class Auditor implements AutoCloseable {
                 initialDelay = durationSinceLastExecutionInSecs > interval ? 0
                         : (interval - durationSinceLastExecutionInSecs);
             }
+            if (conf.isAuditorIncrementalCheckEnabled()
+                    && auditorCheckAllLedgersTask.getCheckpoint(AuditorCheckAllLedgersTask.CHECK_NAME) >= 0) {
+                // resume the pass interrupted by the previous auditor right away
+                initialDelay = 0;
+            }
             LOG.info(
                     "checkAllLedgers scheduling info.  checkAllLedgersLastExecutedCTime: {} "
                             + "durationSinceLastExecutionInSecs: {} initialDelay: {} interval: {}",
@@ -543,6 +564,11 @@ public class Auditor implements AutoCloseable {
             initialDelay = durationSinceLastExecutionInSecs > interval ? 0
                     : (interval - durationSinceLastExecutionInSecs);
         }
+        if (conf.isAuditorIncrementalCheckEnabled()
+                && auditorReplicasCheckTask.getCheckpoint(AuditorReplicasCheckTask.CHECK_NAME) >= 0) {
+            // resume the pass interrupted by the previous auditor right away
+            initialDelay = 0;
+        }
         LOG.info(
                 "replicasCheck scheduling info. replicasCheckLastExecutedCTime: {} "
                         + "durationSinceLastExecutionInSecs: {} initialDelay: {} interval: {}",
@@ -591,6 +617,53 @@ public class Auditor implements AutoCloseable {
         return availableBookies;
     }
 
+    /**
+     * Find the available bookies whose start time changed since the previous audit, they restarted without the
+     * auditor noticing they left the cluster. The bookies that do not advertise a start time are never found.
+     *
+     * <p>The service infos of all the bookies are requested at once, most of them being served by the cache of the
+     * registration client, which is only refreshed when a bookie registration changes.
+     */
+    @VisibleForTesting
+    Collection<String> getRestartedBookies(List<String> availableBookies) {
+        List<String> restartedBookies = new ArrayList<>();
+        knownBookieStartTimes.keySet().retainAll(availableBookies);
+        RegistrationClient registrationClient = bkc.getMetadataClientDriver().getRegistrationClient();
+        Map<String, CompletableFuture<Versioned<BookieServiceInfo>>> serviceInfos = new LinkedHashMap<>();
+        for (String bookie : availableBookies) {
+            serviceInfos.put(bookie, registrationClient.getBookieServiceInfo(BookieId.parse(bookie)));
+        }
+        for (Map.Entry<String, CompletableFuture<Versioned<BookieServiceInfo>>> e : serviceInfos.entrySet()) {
+            String bookie = e.getKey();
+            String startTime;
+            try {
+                startTime = FutureUtils.result(e.getValue(), BKException.HANDLER).getValue().getProperties()
+                        .get(BookieServiceInfo.START_TIME_PROPERTY);
+            } catch (BKException bke) {
+                LOG.warn("Failed to read the service info of bookie {}", bookie, bke);
+                continue;
+            }
+            if (startTime == null) {
+                continue;
+            }
+            String previousStartTime = knownBookieStartTimes.put(bookie, startTime);
+            if (previousStartTime != null && !previousStartTime.equals(startTime)) {
+                LOG.info("Bookie {} restarted at {}", bookie, startTime);
+                restartedBookies.add(bookie);
+            }
+        }
+        return restartedBookies;
+    }
+
+    private void notifyBookiesChanged(Collection<String> bookies) {
+        if (bookies.isEmpty()) {
+            return;
+        }
+        for (AuditorTask task : allAuditorTasks) {
+            task.bookiesChanged(bookies);
+        }
+    }
+
     private void watchBookieChanges() throws BKException {
         admin.watchWritableBookiesChanged(bookies -> submitAuditTask());
         admin.watchReadOnlyBookiesChanged(bookies -> submitAuditTask());
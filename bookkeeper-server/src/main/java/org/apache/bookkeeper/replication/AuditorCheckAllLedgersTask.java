@@ -20,6 +20,8 @@ package org.apache.bookkeeper.replication;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.Sets;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
@@ -36,13 +38,16 @@ import org.apache.bookkeeper.client.BookKeeperAdmin;
 import org.apache.bookkeeper.client.LedgerChecker;
 import org.apache.bookkeeper.client.LedgerFragment;
 import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.meta.LedgerUnderreplicationManager;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.MultiCallback;
 import org.apache.bookkeeper.replication.ReplicationException.UnavailableException;
+import org.apache.bookkeeper.versioning.Versioned;
 import org.apache.zookeeper.AsyncCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,9 +55,14 @@ import org.slf4j.LoggerFactory;
 public class AuditorCheckAllLedgersTask extends AuditorTask {
     private static final Logger LOG = LoggerFactory.getLogger(AuditorBookieCheckTask.class);
 
+    static final String CHECK_NAME = "checkAllLedgers";
+
     private final Semaphore openLedgerNoRecoverySemaphore;
     private final int openLedgerNoRecoverySemaphoreWaitTimeoutMSec;
     private final ExecutorService ledgerCheckerExecutor;
+    private final int zkOpTimeoutMs;
+    // null if incremental checks are disabled
+    private final IncrementalCheckState incrementalCheckState;
 
     AuditorCheckAllLedgersTask(ServerConfiguration conf,
                                AuditorStats auditorStats,
@@ -79,6 +89,9 @@ public class AuditorCheckAllLedgersTask extends AuditorTask {
         }
         this.openLedgerNoRecoverySemaphoreWaitTimeoutMSec =
                 conf.getAuditorAcquireConcurrentOpenLedgerOperationsTimeoutMSec();
+        this.zkOpTimeoutMs = conf.getZkTimeout() * 2;
+        this.incrementalCheckState = conf.isAuditorIncrementalCheckEnabled()
+                ? new IncrementalCheckState(CHECK_NAME, conf.getAuditorIncrementalCheckFullPassInterval()) : null;
 
         this.ledgerCheckerExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
             @Override
@@ -135,6 +148,13 @@ public class AuditorCheckAllLedgersTask extends AuditorTask {
         }
     }
 
+    @Override
+    void bookiesChanged(Collection<String> bookies) {
+        if (incrementalCheckState != null) {
+            incrementalCheckState.bookiesChanged(bookies);
+        }
+    }
+
     @Override
     public void shutdown() {
         LOG.info("Shutting down AuditorCheckAllLedgersTask");
@@ -161,90 +181,170 @@ public class AuditorCheckAllLedgersTask extends AuditorTask {
         try {
             final LedgerChecker checker = new LedgerChecker(localClient, conf.getInFlightReadEntryNumInLedgerChecker());
 
-            final CompletableFuture<Void> processFuture = new CompletableFuture<>();
-
-            BookkeeperInternalCallbacks.Processor<Long> checkLedgersProcessor = (ledgerId, callback) -> {
-                try {
-                    if (!ledgerUnderreplicationManager.isLedgerReplicationEnabled()) {
-                        LOG.info("Ledger rereplication has been disabled, aborting periodic check");
-                        FutureUtils.complete(processFuture, null);
-                        return;
-                    }
-                } catch (ReplicationException.NonRecoverableReplicationException nre) {
-                    LOG.error("Non Recoverable Exception while reading from ZK", nre);
-                    submitShutdownTask();
-                    return;
-                } catch (ReplicationException.UnavailableException ue) {
-                    LOG.error("Underreplication manager unavailable running periodic check", ue);
-                    FutureUtils.complete(processFuture, null);
-                    return;
-                }
+            if (incrementalCheckState != null) {
+                checkLedgersIncrementally(localAdmin, checker);
+            } else {
+                final CompletableFuture<Void> processFuture = new CompletableFuture<>();
+                BookkeeperInternalCallbacks.Processor<Long> checkLedgersProcessor =
+                        newCheckLedgerProcessor(localAdmin, checker, processFuture);
+                ledgerManager.asyncProcessLedgers(checkLedgersProcessor,
+                        (rc, path, ctx) -> {
+                            if (BKException.Code.OK == rc) {
+                                FutureUtils.complete(processFuture, null);
+                            } else {
+                                FutureUtils.completeExceptionally(processFuture, BKException.create(rc));
+                            }
+                        }, null, BKException.Code.OK, BKException.Code.ReadException);
+                FutureUtils.result(processFuture, BKException.HANDLER);
+            }
+            try {
+                ledgerUnderreplicationManager.setCheckAllLedgersCTime(System.currentTimeMillis());
+            } catch (ReplicationException.NonRecoverableReplicationException nre) {
+                LOG.error("Non Recoverable Exception while reading from ZK", nre);
+                submitShutdownTask();
+            } catch (ReplicationException.UnavailableException ue) {
+                LOG.error("Got exception while trying to set checkAllLedgersCTime", ue);
+            }
+        } finally {
+            localAdmin.close();
+            localClient.close();
+        }
+    }
 
-                try {
-                    if (!openLedgerNoRecoverySemaphore.tryAcquire(openLedgerNoRecoverySemaphoreWaitTimeoutMSec,
-                            TimeUnit.MILLISECONDS)) {
-                        LOG.warn("Failed to acquire semaphore for {} ms, ledgerId: {}",
-                                openLedgerNoRecoverySemaphoreWaitTimeoutMSec, ledgerId);
-                        FutureUtils.complete(processFuture, null);
-                        return;
-                    }
-                } catch (InterruptedException e) {
-                    LOG.error("Unable to acquire open ledger operation semaphore ", e);
-                    Thread.currentThread().interrupt();
-                    FutureUtils.complete(processFuture, null);
-                    return;
-                }
+    /**
+     * Check the ledgers that changed since the previous pass, range by range, checkpointing the progress after
+     * each range of ledgers.
+     */
+    private void checkLedgersIncrementally(BookKeeperAdmin localAdmin, LedgerChecker checker)
+            throws BKException, IOException, InterruptedException {
+        final String checkName = incrementalCheckState.getCheckName();
+        final long checkpoint = getCheckpoint(checkName);
+        if (checkpoint >= 0) {
+            LOG.info("Resuming interrupted checkAllLedgers pass after ledger {}", checkpoint);
+        }
+        incrementalCheckState.startPass();
 
-                localAdmin.asyncOpenLedgerNoRecovery(ledgerId, (rc, lh, ctx) -> {
-                    openLedgerNoRecoverySemaphore.release();
-                    if (BKException.Code.OK == rc) {
-                        // BookKeeperClientWorker-OrderedExecutor threads should not execute LedgerChecker#checkLedger
-                        // as this can lead to deadlocks
-                        ledgerCheckerExecutor.execute(() -> {
-                            checker.checkLedger(lh,
-                                    // the ledger handle will be closed after checkLedger is done.
-                                    new ProcessLostFragmentsCb(lh, callback),
-                                    conf.getAuditorLedgerVerificationPercentage());
-                            // we collect the following stats to get a measure of the
-                            // distribution of a single ledger within the bk cluster
-                            // the higher the number of fragments/bookies, the more distributed it is
-                            auditorStats.getNumFragmentsPerLedger().registerSuccessfulValue(lh.getNumFragments());
-                            auditorStats.getNumBookiesPerLedger().registerSuccessfulValue(lh.getNumBookies());
-                            auditorStats.getNumLedgersChecked().inc();
-                        });
-                    } else if (BKException.Code.NoSuchLedgerExistsOnMetadataServerException == rc) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Ledger {} was deleted before we could check it", ledgerId);
-                        }
-                        callback.processResult(BKException.Code.OK, null, null);
-                    } else {
-                        LOG.error("Couldn't open ledger {} to check : {}", ledgerId, BKException.getMessage(rc));
-                        callback.processResult(rc, null, null);
-                    }
-                }, null);
-            };
+        final CompletableFuture<Void> abortFuture = new CompletableFuture<>();
+        BookkeeperInternalCallbacks.Processor<Long> checkLedgersProcessor =
+                newCheckLedgerProcessor(localAdmin, checker, abortFuture);
+        LedgerManager.LedgerRangeIterator ledgerRangeIterator = ledgerManager.getLedgerRanges(zkOpTimeoutMs,
+                conf.getLedgerRangeScanParallelism());
+        while (ledgerRangeIterator.hasNext()) {
+            List<Long> ledgersInRange = ledgerRangeIterator.next().getLedgers().stream()
+                    .filter(ledgerId -> ledgerId > checkpoint)
+                    .collect(Collectors.toList());
+            if (ledgersInRange.isEmpty()) {
+                continue;
+            }
 
-            ledgerManager.asyncProcessLedgers(checkLedgersProcessor,
+            final CompletableFuture<Void> rangeFuture = new CompletableFuture<>();
+            MultiCallback mcbForThisLedgerRange = new MultiCallback(ledgersInRange.size(),
                     (rc, path, ctx) -> {
                         if (BKException.Code.OK == rc) {
-                            FutureUtils.complete(processFuture, null);
+                            FutureUtils.complete(rangeFuture, null);
                         } else {
-                            FutureUtils.completeExceptionally(processFuture, BKException.create(rc));
+                            FutureUtils.completeExceptionally(rangeFuture, BKException.create(rc));
                         }
                     }, null, BKException.Code.OK, BKException.Code.ReadException);
-            FutureUtils.result(processFuture, BKException.HANDLER);
+            for (Long ledgerId : ledgersInRange) {
+                if (abortFuture.isDone()) {
+                    break;
+                }
+                checkLedgersProcessor.process(ledgerId, mcbForThisLedgerRange);
+            }
+            FutureUtils.result(CompletableFuture.anyOf(rangeFuture, abortFuture), BKException.HANDLER);
+            if (abortFuture.isDone()) {
+                LOG.info("checkAllLedgers pass aborted, it will be resumed from the last checkpoint");
+                return;
+            }
+            setCheckpoint(checkName, ledgersInRange.get(ledgersInRange.size() - 1));
+        }
+
+        incrementalCheckState.completePass(checkpoint < 0);
+        setCheckpoint(checkName, -1);
+    }
+
+    private BookkeeperInternalCallbacks.Processor<Long> newCheckLedgerProcessor(BookKeeperAdmin localAdmin,
+                                                                               LedgerChecker checker,
+                                                                               CompletableFuture<Void> processFuture) {
+        return (ledgerId, callback) -> {
             try {
-                ledgerUnderreplicationManager.setCheckAllLedgersCTime(System.currentTimeMillis());
+                if (!ledgerUnderreplicationManager.isLedgerReplicationEnabled()) {
+                    LOG.info("Ledger rereplication has been disabled, aborting periodic check");
+                    FutureUtils.complete(processFuture, null);
+                    return;
+                }
             } catch (ReplicationException.NonRecoverableReplicationException nre) {
                 LOG.error("Non Recoverable Exception while reading from ZK", nre);
                 submitShutdownTask();
+                return;
             } catch (ReplicationException.UnavailableException ue) {
-                LOG.error("Got exception while trying to set checkAllLedgersCTime", ue);
+                LOG.error("Underreplication manager unavailable running periodic check", ue);
+                FutureUtils.complete(processFuture, null);
+                return;
             }
-        } finally {
-            localAdmin.close();
-            localClient.close();
-        }
+
+            try {
+                if (!openLedgerNoRecoverySemaphore.tryAcquire(openLedgerNoRecoverySemaphoreWaitTimeoutMSec,
+                        TimeUnit.MILLISECONDS)) {
+                    LOG.warn("Failed to acquire semaphore for {} ms, ledgerId: {}",
+                            openLedgerNoRecoverySemaphoreWaitTimeoutMSec, ledgerId);
+                    FutureUtils.complete(processFuture, null);
+                    return;
+                }
+            } catch (InterruptedException e) {
+                LOG.error("Unable to acquire open ledger operation semaphore ", e);
+                Thread.currentThread().interrupt();
+                FutureUtils.complete(processFuture, null);
+                return;
+            }
+
+            if (incrementalCheckState == null) {
+                openAndCheckLedger(localAdmin, checker, ledgerId, null, callback);
+                return;
+            }
+            ledgerManager.readLedgerMetadata(ledgerId).whenComplete((metadata, exception) -> {
+                if (exception == null && !incrementalCheckState.needsCheck(ledgerId, metadata)) {
+                    openLedgerNoRecoverySemaphore.release();
+                    auditorStats.getNumLedgersSkippedByIncrementalCheck().inc();
+                    callback.processResult(BKException.Code.OK, null, null);
+                } else {
+                    // let the open report the metadata errors, such as the ledger being deleted
+                    openAndCheckLedger(localAdmin, checker, ledgerId, exception == null ? metadata : null, callback);
+                }
+            });
+        };
+    }
+
+    private void openAndCheckLedger(BookKeeperAdmin localAdmin, LedgerChecker checker, long ledgerId,
+                                    Versioned<LedgerMetadata> metadata, AsyncCallback.VoidCallback callback) {
+        localAdmin.asyncOpenLedgerNoRecovery(ledgerId, (rc, lh, ctx) -> {
+            openLedgerNoRecoverySemaphore.release();
+            if (BKException.Code.OK == rc) {
+                // BookKeeperClientWorker-OrderedExecutor threads should not execute LedgerChecker#checkLedger
+                // as this can lead to deadlocks
+                ledgerCheckerExecutor.execute(() -> {
+                    checker.checkLedger(lh,
+                            // the ledger handle will be closed after checkLedger is done.
+                            new ProcessLostFragmentsCb(lh, metadata, callback),
+                            conf.getAuditorLedgerVerificationPercentage());
+                    // we collect the following stats to get a measure of the
+                    // distribution of a single ledger within the bk cluster
+                    // the higher the number of fragments/bookies, the more distributed it is
+                    auditorStats.getNumFragmentsPerLedger().registerSuccessfulValue(lh.getNumFragments());
+                    auditorStats.getNumBookiesPerLedger().registerSuccessfulValue(lh.getNumBookies());
+                    auditorStats.getNumLedgersChecked().inc();
+                });
+            } else if (BKException.Code.NoSuchLedgerExistsOnMetadataServerException == rc) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Ledger {} was deleted before we could check it", ledgerId);
+                }
+                callback.processResult(BKException.Code.OK, null, null);
+            } else {
+                LOG.error("Couldn't open ledger {} to check : {}", ledgerId, BKException.getMessage(rc));
+                callback.processResult(rc, null, null);
+            }
+        }, null);
     }
 
     /**
@@ -252,10 +352,13 @@ public class AuditorCheckAllLedgersTask extends AuditorTask {
      */
     private class ProcessLostFragmentsCb implements BookkeeperInternalCallbacks.GenericCallback<Set<LedgerFragment>> {
         final LedgerHandle lh;
+        final Versioned<LedgerMetadata> metadata;
         final AsyncCallback.VoidCallback callback;
 
-        ProcessLostFragmentsCb(LedgerHandle lh, AsyncCallback.VoidCallback callback) {
+        ProcessLostFragmentsCb(LedgerHandle lh, Versioned<LedgerMetadata> metadata,
+                               AsyncCallback.VoidCallback callback) {
             this.lh = lh;
+            this.metadata = metadata;
             this.callback = callback;
         }
 
@@ -268,8 +371,14 @@ public class AuditorCheckAllLedgersTask extends AuditorTask {
                 }
                 if (bookies.isEmpty()) {
                     // no missing fragments
+                    if (incrementalCheckState != null && metadata != null) {
+                        incrementalCheckState.ledgerHealthy(lh.getId(), metadata);
+                    }
                     callback.processResult(BKException.Code.OK, null, null);
                 } else {
+                    if (incrementalCheckState != null) {
+                        incrementalCheckState.ledgerUnhealthy(lh.getId());
+                    }
                     publishSuspectedLedgersAsync(bookies.stream().map(BookieId::toString).collect(Collectors.toList()),
                             Sets.newHashSet(lh.getId())
                     ).whenComplete((result, cause) -> {
@@ -23,6 +23,7 @@ import com.google.common.collect.Multiset;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -30,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
@@ -37,6 +39,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.BookKeeperAdmin;
 import org.apache.bookkeeper.client.RoundRobinDistributionSchedule;
@@ -60,12 +63,19 @@ public class AuditorReplicasCheckTask extends AuditorTask {
     private static final int REPLICAS_CHECK_TIMEOUT_IN_SECS = 120;
     private static final BitSet EMPTY_BITSET = new BitSet();
 
+    static final String CHECK_NAME = "replicasCheck";
+
     private final int zkOpTimeoutMs;
 
     private final AtomicInteger numLedgersFoundHavingNoReplicaOfAnEntry;
     private final AtomicInteger numLedgersFoundHavingLessThanAQReplicasOfAnEntry;
     private final AtomicInteger numLedgersFoundHavingLessThanWQReplicasOfAnEntry;
 
+    // null if incremental checks are disabled
+    private final IncrementalCheckState incrementalCheckState;
+    // ledgers of the current range checked by an incremental check
+    private final ConcurrentHashMap<Long, Versioned<LedgerMetadata>> ledgersCheckedInRange;
+
     AuditorReplicasCheckTask(ServerConfiguration conf,
                              AuditorStats auditorStats, BookKeeperAdmin admin,
                              LedgerManager ledgerManager,
@@ -78,6 +88,9 @@ public class AuditorReplicasCheckTask extends AuditorTask {
         this.numLedgersFoundHavingNoReplicaOfAnEntry = new AtomicInteger(0);
         this.numLedgersFoundHavingLessThanAQReplicasOfAnEntry = new AtomicInteger(0);
         this.numLedgersFoundHavingLessThanWQReplicasOfAnEntry = new AtomicInteger(0);
+        this.incrementalCheckState = conf.isAuditorIncrementalCheckEnabled()
+                ? new IncrementalCheckState(CHECK_NAME, conf.getAuditorIncrementalCheckFullPassInterval()) : null;
+        this.ledgersCheckedInRange = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -158,6 +171,13 @@ public class AuditorReplicasCheckTask extends AuditorTask {
         }
     }
 
+    @Override
+    void bookiesChanged(Collection<String> bookies) {
+        if (incrementalCheckState != null) {
+            incrementalCheckState.bookiesChanged(bookies);
+        }
+    }
+
     @Override
     public void shutdown() {
 
@@ -168,7 +188,18 @@ public class AuditorReplicasCheckTask extends AuditorTask {
                 new ConcurrentHashMap<Long, MissingEntriesInfoOfLedger>();
         ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithUnavailableBookies =
                 new ConcurrentHashMap<Long, MissingEntriesInfoOfLedger>();
-        LedgerManager.LedgerRangeIterator ledgerRangeIterator = ledgerManager.getLedgerRanges(zkOpTimeoutMs);
+        final long checkpoint;
+        if (incrementalCheckState != null) {
+            checkpoint = getCheckpoint(CHECK_NAME);
+            if (checkpoint >= 0) {
+                LOG.info("Resuming interrupted replicasCheck pass after ledger {}", checkpoint);
+            }
+            incrementalCheckState.startPass();
+        } else {
+            checkpoint = -1;
+        }
+        LedgerManager.LedgerRangeIterator ledgerRangeIterator = ledgerManager.getLedgerRanges(zkOpTimeoutMs,
+                conf.getLedgerRangeScanParallelism());
         final Semaphore maxConcurrentSemaphore = new Semaphore(MAX_CONCURRENT_REPLICAS_CHECK_LEDGER_REQUESTS);
         while (true) {
             LedgerManager.LedgerRange ledgerRange = null;
@@ -188,7 +219,16 @@ public class AuditorReplicasCheckTask extends AuditorTask {
             numLedgersFoundHavingNoReplicaOfAnEntry.set(0);
             numLedgersFoundHavingLessThanAQReplicasOfAnEntry.set(0);
             numLedgersFoundHavingLessThanWQReplicasOfAnEntry.set(0);
+            ledgersCheckedInRange.clear();
             Set<Long> ledgersInRange = ledgerRange.getLedgers();
+            if (checkpoint >= 0) {
+                ledgersInRange = ledgersInRange.stream()
+                        .filter(ledgerId -> ledgerId > checkpoint)
+                        .collect(Collectors.toCollection(TreeSet::new));
+                if (ledgersInRange.isEmpty()) {
+                    continue;
+                }
+            }
             int numOfLedgersInRange = ledgersInRange.size();
             // Final result after processing all the ledgers
             final AtomicInteger resultCode = new AtomicInteger();
@@ -264,6 +304,21 @@ public class AuditorReplicasCheckTask extends AuditorTask {
                 throw new ReplicationException.BKAuditException("Exception while doing replicas check",
                         BKException.create(resultCodeIntValue));
             }
+            if (incrementalCheckState != null) {
+                ledgersCheckedInRange.forEach((ledgerId, metadata) -> {
+                    if (ledgersWithMissingEntries.containsKey(ledgerId)
+                            || ledgersWithUnavailableBookies.containsKey(ledgerId)) {
+                        incrementalCheckState.ledgerUnhealthy(ledgerId);
+                    } else {
+                        incrementalCheckState.ledgerHealthy(ledgerId, metadata);
+                    }
+                });
+                setCheckpoint(CHECK_NAME, ledgerRange.end());
+            }
+        }
+        if (incrementalCheckState != null) {
+            incrementalCheckState.completePass(checkpoint < 0);
+            setCheckpoint(CHECK_NAME, -1);
         }
         try {
             ledgerUnderreplicationManager.setReplicasCheckCTime(System.currentTimeMillis());
@@ -409,6 +464,15 @@ public class AuditorReplicasCheckTask extends AuditorTask {
                 return;
             }
 
+            if (incrementalCheckState != null) {
+                if (!incrementalCheckState.needsCheck(ledgerInRange, metadataVer)) {
+                    auditorStats.getNumLedgersSkippedByIncrementalCheck().inc();
+                    mcbForThisLedgerRange.processResult(BKException.Code.OK, null, null);
+                    return;
+                }
+                ledgersCheckedInRange.put(ledgerInRange, metadataVer);
+            }
+
             int writeQuorumSize = metadata.getWriteQuorumSize();
             int ackQuorumSize = metadata.getAckQuorumSize();
             int ensembleSize = metadata.getEnsembleSize();
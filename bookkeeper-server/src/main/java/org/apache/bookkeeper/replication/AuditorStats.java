@@ -30,6 +30,7 @@ import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_HAV
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_HAVING_LESS_THAN_WQ_REPLICAS_OF_AN_ENTRY;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_HAVING_NO_REPLICA_OF_AN_ENTRY;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_NOT_ADHERING_TO_PLACEMENT_POLICY;
+import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_SKIPPED_BY_INCREMENTAL_CHECK;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_SOFTLY_ADHERING_TO_PLACEMENT_POLICY;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_SKIPPING_CHECK_TASK_TIMES;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_UNDERREPLICATED_LEDGERS_ELAPSED_RECOVERY_GRACE_PERIOD;
@@ -165,6 +166,12 @@ public class AuditorStats {
             help = "the times of auditor check task skipped"
     )
     private final Counter numSkippingCheckTaskTimes;
+    @StatsDoc(
+            name = NUM_LEDGERS_SKIPPED_BY_INCREMENTAL_CHECK,
+            help = "the number of ledgers skipped by incremental auditor checks, as they did not change"
+                    + " since they were last found healthy"
+    )
+    private final Counter numLedgersSkippedByIncrementalCheck;
 
     public AuditorStats(StatsLogger statsLogger) {
         this.statsLogger = statsLogger;
@@ -192,6 +199,7 @@ public class AuditorStats {
         numDelayedBookieAuditsCancelled = this.statsLogger
                 .getCounter(ReplicationStats.NUM_DELAYED_BOOKIE_AUDITS_DELAYES_CANCELLED);
         numSkippingCheckTaskTimes = this.statsLogger.getCounter(NUM_SKIPPING_CHECK_TASK_TIMES);
+        numLedgersSkippedByIncrementalCheck = this.statsLogger.getCounter(NUM_LEDGERS_SKIPPED_BY_INCREMENTAL_CHECK);
         numLedgersNotAdheringToPlacementPolicy = new Gauge<Integer>() {
             @Override
             public Integer getDefaultValue() {
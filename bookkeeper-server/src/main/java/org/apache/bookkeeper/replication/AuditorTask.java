@@ -106,6 +106,38 @@ abstract class AuditorTask implements Runnable {
         );
     }
 
+    /**
+     * Notify the task of bookies that left or joined the cluster.
+     */
+    void bookiesChanged(Collection<String> bookies) {
+    }
+
+    /**
+     * Get the id of the last ledger checked by the interrupted pass of the given check, -1 if there is none.
+     */
+    protected long getCheckpoint(String checkName) {
+        try {
+            return ledgerUnderreplicationManager.getAuditorCheckpoint(checkName);
+        } catch (ReplicationException.NonRecoverableReplicationException nre) {
+            LOG.error("Non Recoverable Exception while reading from ZK", nre);
+            submitShutdownTask();
+        } catch (ReplicationException.UnavailableException ue) {
+            LOG.error("Got exception while trying to get {} checkpoint", checkName, ue);
+        }
+        return -1;
+    }
+
+    protected void setCheckpoint(String checkName, long lastCheckedLedgerId) {
+        try {
+            ledgerUnderreplicationManager.setAuditorCheckpoint(checkName, lastCheckedLedgerId);
+        } catch (ReplicationException.NonRecoverableReplicationException nre) {
+            LOG.error("Non Recoverable Exception while reading from ZK", nre);
+            submitShutdownTask();
+        } catch (ReplicationException.UnavailableException ue) {
+            LOG.error("Got exception while trying to set {} checkpoint", checkName, ue);
+        }
+    }
+
     protected List<String> getAvailableBookies() throws BKException {
         // Get the available bookies
         Collection<BookieId> availableBkAddresses = admin.getAvailableBookies();
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.replication;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * State of an incremental auditor check, telling which ledgers need to be checked in a check pass.
+ *
+ * <p>The state remembers the metadata version of each ledger at the time it was last found healthy, and is fed with
+ * the bookies that left, joined or restarted. A ledger needs to be checked again if its metadata changed, or if one
+ * of the bookies of its ensembles left, joined or restarted since the previous pass started, as a restarted bookie
+ * might have lost some data. Restarts are detected from the start time advertised by the bookies, so that a bookie
+ * restarting between two audits is not missed. Every {@code fullPassInterval} passes, all the ledgers are checked.
+ *
+ * <p>The state is kept in memory only, the first pass run by a new auditor is always a full pass.
+ */
+class IncrementalCheckState {
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalCheckState.class);
+
+    private final String checkName;
+    private final int fullPassInterval;
+
+    // metadata version of the ledgers when they were last found healthy
+    private final ConcurrentLongLongHashMap healthyLedgerVersions = ConcurrentLongLongHashMap.newBuilder().build();
+    // ledgers seen during the current pass, to forget the deleted ledgers
+    private final ConcurrentLongHashSet ledgersInPass = ConcurrentLongHashSet.newBuilder().build();
+
+    // bookies that left or joined the cluster since the current pass started
+    private final Set<String> changedBookies = ConcurrentHashMap.newKeySet();
+    // bookies that left or joined the cluster before the current pass started, and after the previous one did
+    private volatile Set<String> changedBookiesInPass = Collections.emptySet();
+
+    private volatile boolean fullPass = true;
+    private int passesSinceFullPass = 0;
+
+    IncrementalCheckState(String checkName, int fullPassInterval) {
+        this.checkName = checkName;
+        this.fullPassInterval = fullPassInterval;
+    }
+
+    String getCheckName() {
+        return checkName;
+    }
+
+    /**
+     * Record bookies that left or joined the cluster.
+     */
+    void bookiesChanged(Collection<String> bookies) {
+        changedBookies.addAll(bookies);
+    }
+
+    /**
+     * Start a new check pass.
+     */
+    synchronized void startPass() {
+        Set<String> changed = new HashSet<>(changedBookies);
+        changedBookies.removeAll(changed);
+        // if the previous pass did not complete, its ledgers might not have been checked yet
+        changed.addAll(changedBookiesInPass);
+        changedBookiesInPass = changed;
+
+        ledgersInPass.clear();
+        fullPass = healthyLedgerVersions.isEmpty()
+                || (fullPassInterval > 0 && passesSinceFullPass + 1 >= fullPassInterval);
+        if (fullPass) {
+            passesSinceFullPass = 0;
+        } else {
+            passesSinceFullPass++;
+        }
+        LOG.info("Starting {} {} pass, bookies changed since previous pass: {}",
+                fullPass ? "full" : "incremental", checkName, changed);
+    }
+
+    /**
+     * Complete the current check pass.
+     *
+     * @param fromStart whether the pass went through all the ledgers, rather than resuming from a checkpoint
+     */
+    synchronized void completePass(boolean fromStart) {
+        if (fromStart) {
+            int removed = healthyLedgerVersions.removeIf((ledgerId, version) -> !ledgersInPass.contains(ledgerId));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Forgot {} deleted ledgers in {} state", removed, checkName);
+            }
+        }
+        ledgersInPass.clear();
+        // the bookies that changed during this pass are still in changedBookies, for the next pass
+        changedBookiesInPass = Collections.emptySet();
+    }
+
+    /**
+     * Whether the given ledger needs to be checked in the current pass.
+     */
+    boolean needsCheck(long ledgerId, Versioned<LedgerMetadata> metadata) {
+        ledgersInPass.add(ledgerId);
+        if (fullPass || !(metadata.getVersion() instanceof LongVersion)) {
+            return true;
+        }
+
+        long version = ((LongVersion) metadata.getVersion()).getLongVersion();
+        if (healthyLedgerVersions.get(ledgerId) != version) {
+            return true;
+        }
+
+        Set<String> changed = changedBookiesInPass;
+        if (!changed.isEmpty()) {
+            for (List<BookieId> ensemble : metadata.getValue().getAllEnsembles().values()) {
+                for (BookieId bookie : ensemble) {
+                    if (changed.contains(bookie.toString())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record that the given ledger was found healthy.
+     */
+    void ledgerHealthy(long ledgerId, Versioned<LedgerMetadata> metadata) {
+        if (metadata.getVersion() instanceof LongVersion) {
+            healthyLedgerVersions.put(ledgerId, ((LongVersion) metadata.getVersion()).getLongVersion());
+        }
+    }
+
+    /**
+     * Record that the given ledger was not found healthy, so that it is checked again in the next pass.
+     */
+    void ledgerUnhealthy(long ledgerId) {
+        healthyLedgerVersions.remove(ledgerId);
+    }
+}
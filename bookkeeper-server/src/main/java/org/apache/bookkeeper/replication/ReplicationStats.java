@@ -61,9 +61,17 @@ public interface ReplicationStats {
     String NUM_BYTES_WRITTEN = "NUM_BYTES_WRITTEN";
     String READ_DATA_LATENCY = "READ_DATA_LATENCY";
     String WRITE_DATA_LATENCY = "WRITE_DATA_LATENCY";
+    String DIRECT_COPY_LATENCY = "DIRECT_COPY_LATENCY";
+    String RECOVERY_SOURCE_ADMISSION_WAIT = "RECOVERY_SOURCE_ADMISSION_WAIT";
+    String RECOVERY_SOURCES_OUTSTANDING = "RECOVERY_SOURCES_OUTSTANDING";
+    String REPLICATION_BYTES_IN_FLIGHT = "REPLICATION_BYTES_IN_FLIGHT";
+    String NUM_LEDGERS_REPLICATING = "NUM_LEDGERS_REPLICATING";
+    String REPLICATED_LEDGERS_PER_MINUTE = "REPLICATED_LEDGERS_PER_MINUTE";
+    String REPLICATION_ETA_SECONDS = "REPLICATION_ETA_SECONDS";
     String REPLICATE_EXCEPTION = "exceptions";
     String NUM_DEFER_LEDGER_LOCK_RELEASE_OF_FAILED_LEDGER = "NUM_DEFER_LEDGER_LOCK_RELEASE_OF_FAILED_LEDGER";
     String NUM_ENTRIES_UNABLE_TO_READ_FOR_REPLICATION = "NUM_ENTRIES_UNABLE_TO_READ_FOR_REPLICATION";
     String NUM_NOT_ADHERING_PLACEMENT_LEDGERS_REPLICATED = "NUM_NOT_ADHERING_PLACEMENT_LEDGERS_REPLICATED";
     String NUM_SKIPPING_CHECK_TASK_TIMES = "NUM_SKIPPING_CHECK_TASK_TIMES";
+    String NUM_LEDGERS_SKIPPED_BY_INCREMENTAL_CHECK = "NUM_LEDGERS_SKIPPED_BY_INCREMENTAL_CHECK";
 }
@@ -22,8 +22,11 @@ package org.apache.bookkeeper.replication;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_DEFER_LEDGER_LOCK_RELEASE_OF_FAILED_LEDGER;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_ENTRIES_UNABLE_TO_READ_FOR_REPLICATION;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_FULL_OR_PARTIAL_LEDGERS_REPLICATED;
+import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_REPLICATING;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_NOT_ADHERING_PLACEMENT_LEDGERS_REPLICATED;
+import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATED_LEDGERS_PER_MINUTE;
 import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATE_EXCEPTION;
+import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATION_ETA_SECONDS;
 import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATION_WORKER_SCOPE;
 import static org.apache.bookkeeper.replication.ReplicationStats.REREPLICATE_OP;
 
@@ -33,12 +36,13 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
@@ -48,10 +52,17 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import org.apache.bookkeeper.bookie.BookieThread;
 import org.apache.bookkeeper.client.BKException;
@@ -69,15 +80,18 @@ import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.meta.LedgerUnderreplicationManager;
+import org.apache.bookkeeper.meta.UnderreplicatedLedger;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.replication.ReplicationException.CompatibilityException;
 import org.apache.bookkeeper.replication.ReplicationException.UnavailableException;
 import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.versioning.Versioned;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -85,6 +99,9 @@ import org.slf4j.LoggerFactory;
 /**
  * ReplicationWorker will take the fragments one by one from
  * ZKLedgerUnderreplicationManager and replicates to it.
+ *
+ * <p>When {@link ServerConfiguration#getRwRereplicateConcurrentLedgers()} is greater than 1,
+ * the worker leases up to that many ledgers and replicates them concurrently.
  */
 @StatsDoc(
     name = REPLICATION_WORKER_SCOPE,
@@ -95,6 +112,9 @@ public class ReplicationWorker implements Runnable {
             .getLogger(ReplicationWorker.class);
     private static final int REPLICATED_FAILED_LEDGERS_MAXSIZE = 2000;
     public static final int NUM_OF_EXPONENTIAL_BACKOFF_RETRIALS = 5;
+    private static final long THROUGHPUT_UPDATE_INTERVAL_SECONDS = 10;
+    private static final long PENDING_LEDGERS_COUNT_INTERVAL_SECONDS = 300;
+    private static final double THROUGHPUT_EWMA_ALPHA = 0.2;
 
     private final LedgerUnderreplicationManager underreplicationManager;
     private final ServerConfiguration conf;
@@ -112,6 +132,24 @@ public class ReplicationWorker implements Runnable {
     private final BiConsumer<Long, Long> onReadEntryFailureCallback;
     private final LedgerManager ledgerManager;
 
+    // Concurrent replication of multiple ledgers, only used if more than 1 ledger can be leased at a time
+    private final int concurrentLedgers;
+    private final Semaphore concurrentLedgersPermits;
+    private final ExecutorService rereplicationExecutor;
+    // The threads of the rereplication executor, a replication task shutting down the worker cannot wait for
+    // itself to complete
+    private final Set<Thread> rereplicationThreads = ConcurrentHashMap.newKeySet();
+
+    // Throughput and ETA tracking, the throughput is updated when sampled and the pending ledgers are
+    // counted in background, only for concurrent workers
+    private final ScheduledExecutorService statsExecutor;
+    private final AtomicInteger numLedgersReplicating = new AtomicInteger();
+    private final AtomicLong numLedgersSuccessfullyReplicated = new AtomicLong();
+    private long lastNumLedgersSuccessfullyReplicated = 0;
+    private long lastThroughputUpdateNanos = MathUtils.nowInNano();
+    private double replicatedLedgersPerMinute = 0;
+    private final AtomicLong pendingLedgersToReplicate = new AtomicLong(-1);
+
     // Expose Stats
     private final StatsLogger statsLogger;
     @StatsDoc(
@@ -144,6 +182,22 @@ public class ReplicationWorker implements Runnable {
             help = "the number of not adhering placement policy ledgers re-replicated"
     )
     private final Counter numNotAdheringPlacementLedgersReplicated;
+    @StatsDoc(
+            name = NUM_LEDGERS_REPLICATING,
+            help = "the number of ledgers currently being re-replicated by this worker"
+    )
+    private final Gauge<Integer> numLedgersReplicatingGauge;
+    @StatsDoc(
+            name = REPLICATED_LEDGERS_PER_MINUTE,
+            help = "the smoothed rate of ledgers successfully re-replicated by this worker"
+    )
+    private final Gauge<Double> replicatedLedgersPerMinuteGauge;
+    @StatsDoc(
+            name = REPLICATION_ETA_SECONDS,
+            help = "the estimated time to replicate all the pending under-replicated ledgers at the rate of this"
+                    + " worker, -1 if unknown"
+    )
+    private final Gauge<Long> replicationEtaSecondsGauge;
     private final Map<String, Counter> exceptionCounters;
     final LoadingCache<Long, AtomicInteger> replicationFailedLedgers;
     final LoadingCache<Long, ConcurrentSkipListSet<Long>> unableToReadEntriesForReplication;
@@ -200,6 +254,29 @@ public class ReplicationWorker implements Runnable {
                 / (long) (Math.pow(2, NUM_OF_EXPONENTIAL_BACKOFF_RETRIALS));
         this.rwRereplicateBackoffMs = conf.getRwRereplicateBackoffMs();
         this.pendingReplicationTimer = new Timer("PendingReplicationTimer");
+        this.concurrentLedgers = Math.max(1, conf.getRwRereplicateConcurrentLedgers());
+        if (concurrentLedgers > 1) {
+            this.concurrentLedgersPermits = new Semaphore(concurrentLedgers);
+            ThreadFactory threadFactory = new DefaultThreadFactory("ReplicationWorker-rereplicate");
+            this.rereplicationExecutor = Executors.newFixedThreadPool(concurrentLedgers,
+                    task -> threadFactory.newThread(() -> {
+                        rereplicationThreads.add(Thread.currentThread());
+                        try {
+                            task.run();
+                        } finally {
+                            rereplicationThreads.remove(Thread.currentThread());
+                        }
+                    }));
+        } else {
+            this.concurrentLedgersPermits = null;
+            this.rereplicationExecutor = null;
+        }
+        if (concurrentLedgers > 1) {
+            this.statsExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new DefaultThreadFactory("ReplicationWorker-stats"));
+        } else {
+            this.statsExecutor = null;
+        }
         this.replicationFailedLedgers = CacheBuilder.newBuilder().maximumSize(REPLICATED_FAILED_LEDGERS_MAXSIZE)
                 .build(new CacheLoader<Long, AtomicInteger>() {
                     @Override
@@ -227,7 +304,43 @@ public class ReplicationWorker implements Runnable {
                 .getCounter(NUM_ENTRIES_UNABLE_TO_READ_FOR_REPLICATION);
         this.numNotAdheringPlacementLedgersReplicated = this.statsLogger
                 .getCounter(NUM_NOT_ADHERING_PLACEMENT_LEDGERS_REPLICATED);
-        this.exceptionCounters = new HashMap<String, Counter>();
+        this.numLedgersReplicatingGauge = new Gauge<Integer>() {
+            @Override
+            public Integer getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Integer getSample() {
+                return numLedgersReplicating.get();
+            }
+        };
+        this.statsLogger.registerGauge(NUM_LEDGERS_REPLICATING, numLedgersReplicatingGauge);
+        this.replicatedLedgersPerMinuteGauge = new Gauge<Double>() {
+            @Override
+            public Double getDefaultValue() {
+                return 0.0;
+            }
+
+            @Override
+            public Double getSample() {
+                return getReplicatedLedgersPerMinute();
+            }
+        };
+        this.statsLogger.registerGauge(REPLICATED_LEDGERS_PER_MINUTE, replicatedLedgersPerMinuteGauge);
+        this.replicationEtaSecondsGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return -1L;
+            }
+
+            @Override
+            public Long getSample() {
+                return getReplicationEtaSeconds();
+            }
+        };
+        this.statsLogger.registerGauge(REPLICATION_ETA_SECONDS, replicationEtaSecondsGauge);
+        this.exceptionCounters = new ConcurrentHashMap<String, Counter>();
         this.onReadEntryFailureCallback = (ledgerid, entryid) -> {
             numEntriesUnableToReadForReplication.inc();
             unableToReadEntriesForReplication.getUnchecked(ledgerid).add(entryid);
@@ -238,6 +351,15 @@ public class ReplicationWorker implements Runnable {
      * Start the replication worker.
      */
     public void start() {
+        if (statsExecutor != null) {
+            // counting the pending ledgers walks through the whole under-replication tree, one getChildren per
+            // hash level node and one getData per under-replicated ledger, by every worker of the cluster. The
+            // ledgers are marked under-replicated by the Auditor and replicated by all the workers, so the count
+            // cannot be tracked locally: it is only refreshed in background, every 5 minutes, for the workers
+            // configured to replicate many ledgers at a time, and decremented by each ledger replicated in between
+            this.statsExecutor.scheduleWithFixedDelay(this::updatePendingLedgersToReplicate,
+                    0, PENDING_LEDGERS_COUNT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
         this.workerThread.start();
     }
 
@@ -246,7 +368,9 @@ public class ReplicationWorker implements Runnable {
         workerRunning = true;
         while (workerRunning) {
             try {
-                if (!rereplicate()) {
+                if (concurrentLedgers > 1) {
+                    leaseAndSubmitLedger();
+                } else if (!rereplicate()) {
                     LOG.warn("failed while replicating fragments");
                     waitBackOffTime(rwRereplicateBackoffMs);
                 }
@@ -278,6 +402,92 @@ public class ReplicationWorker implements Runnable {
         LOG.info("ReplicationWorker exited loop!");
     }
 
+    /**
+     * Lease a new under-replicated ledger as soon as there is room for one more concurrent replication,
+     * and replicate it in background.
+     */
+    private void leaseAndSubmitLedger() throws InterruptedException, UnavailableException {
+        concurrentLedgersPermits.acquire();
+        long ledgerIdToReplicate;
+        try {
+            ledgerIdToReplicate = underreplicationManager.getLedgerToRereplicate();
+        } catch (Throwable t) {
+            concurrentLedgersPermits.release();
+            throw t;
+        }
+
+        rereplicationExecutor.execute(() -> {
+            try {
+                if (!rereplicateAndRecordStats(ledgerIdToReplicate)) {
+                    LOG.warn("failed while replicating fragments of ledger {}", ledgerIdToReplicate);
+                    waitBackOffTime(rwRereplicateBackoffMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (BKException e) {
+                LOG.error("BKException while replicating fragments of ledger {}", ledgerIdToReplicate, e);
+                waitBackOffTime(rwRereplicateBackoffMs);
+            } catch (ReplicationException.NonRecoverableReplicationException nre) {
+                LOG.error("NonRecoverableReplicationException while replicating fragments of ledger {}",
+                        ledgerIdToReplicate, nre);
+                shutdown();
+            } catch (UnavailableException e) {
+                LOG.error("UnavailableException while replicating fragments of ledger {}", ledgerIdToReplicate, e);
+                waitBackOffTime(rwRereplicateBackoffMs);
+            } catch (Throwable t) {
+                // make sure the lease is not held forever if an unexpected error happened
+                LOG.error("Unexpected error while replicating fragments of ledger {}", ledgerIdToReplicate, t);
+                try {
+                    underreplicationManager.releaseUnderreplicatedLedger(ledgerIdToReplicate);
+                } catch (UnavailableException e) {
+                    LOG.error("UnavailableException while releasing the underreplicated lock for ledger {}:",
+                            ledgerIdToReplicate, e);
+                }
+            } finally {
+                concurrentLedgersPermits.release();
+            }
+        });
+    }
+
+    private synchronized double getReplicatedLedgersPerMinute() {
+        long elapsedNanos = MathUtils.elapsedNanos(lastThroughputUpdateNanos);
+        if (elapsedNanos >= TimeUnit.SECONDS.toNanos(THROUGHPUT_UPDATE_INTERVAL_SECONDS)) {
+            long replicated = numLedgersSuccessfullyReplicated.get();
+            double currentRate = (replicated - lastNumLedgersSuccessfullyReplicated)
+                    * (double) TimeUnit.MINUTES.toNanos(1) / elapsedNanos;
+            lastNumLedgersSuccessfullyReplicated = replicated;
+            lastThroughputUpdateNanos += elapsedNanos;
+            replicatedLedgersPerMinute = THROUGHPUT_EWMA_ALPHA * currentRate
+                    + (1 - THROUGHPUT_EWMA_ALPHA) * replicatedLedgersPerMinute;
+        }
+        return replicatedLedgersPerMinute;
+    }
+
+    private void updatePendingLedgersToReplicate() {
+        try {
+            long count = 0;
+            Iterator<UnderreplicatedLedger> iter = underreplicationManager.listLedgersToRereplicate(null);
+            while (iter.hasNext()) {
+                iter.next();
+                count++;
+            }
+            pendingLedgersToReplicate.set(count);
+        } catch (Throwable t) {
+            LOG.warn("Failed to count the under-replicated ledgers", t);
+            pendingLedgersToReplicate.set(-1);
+        }
+    }
+
+    private long getReplicationEtaSeconds() {
+        // the pending count is only refreshed in background, never by the scrapes
+        long pending = pendingLedgersToReplicate.get();
+        double ratePerMinute = getReplicatedLedgersPerMinute();
+        if (pending < 0 || ratePerMinute <= 0) {
+            return -1;
+        }
+        return (long) (pending * 60 / ratePerMinute);
+    }
+
     private static void waitBackOffTime(long backoffMs) {
         try {
             Thread.sleep(backoffMs);
@@ -294,14 +504,23 @@ public class ReplicationWorker implements Runnable {
             UnavailableException {
         long ledgerIdToReplicate = underreplicationManager
                 .getLedgerToRereplicate();
+        return rereplicateAndRecordStats(ledgerIdToReplicate);
+    }
 
+    private boolean rereplicateAndRecordStats(long ledgerIdToReplicate) throws InterruptedException, BKException,
+            UnavailableException {
         Stopwatch stopwatch = Stopwatch.createStarted();
         boolean success = false;
+        numLedgersReplicating.incrementAndGet();
         try {
             success = rereplicate(ledgerIdToReplicate);
         } finally {
+            numLedgersReplicating.decrementAndGet();
             long latencyMillis = stopwatch.stop().elapsed(TimeUnit.MILLISECONDS);
             if (success) {
+                numLedgersSuccessfullyReplicated.incrementAndGet();
+                // keep the cached pending count accurate until the next background count
+                pendingLedgersToReplicate.updateAndGet(pending -> pending > 0 ? pending - 1 : pending);
                 rereplicateOpStats.registerSuccessfulEvent(latencyMillis, TimeUnit.MILLISECONDS);
             } else {
                 rereplicateOpStats.registerFailedEvent(latencyMillis, TimeUnit.MILLISECONDS);
@@ -439,8 +658,9 @@ public class ReplicationWorker implements Runnable {
         return placementNotAdheringFragments;
     }
 
+    @VisibleForTesting
     @SuppressFBWarnings("RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE")
-    private boolean rereplicate(long ledgerIdToReplicate) throws InterruptedException, BKException,
+    boolean rereplicate(long ledgerIdToReplicate) throws InterruptedException, BKException,
             UnavailableException {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Going to replicate the fragments of the ledger: {}", ledgerIdToReplicate);
@@ -765,9 +985,19 @@ public class ReplicationWorker implements Runnable {
         }
         LOG.info("Shutting down ReplicationWorker");
         this.pendingReplicationTimer.cancel();
+        if (statsExecutor != null) {
+            statsExecutor.shutdownNow();
+        }
         try {
             this.workerThread.interrupt();
             this.workerThread.join();
+            if (rereplicationExecutor != null) {
+                rereplicationExecutor.shutdownNow();
+                if (!rereplicationThreads.contains(Thread.currentThread())
+                        && !rereplicationExecutor.awaitTermination(rwRereplicateBackoffMs, TimeUnit.MILLISECONDS)) {
+                    LOG.warn("Timed out waiting for the ledgers being replicated to complete");
+                }
+            }
         } catch (InterruptedException e) {
             LOG.error("Interrupted during shutting down replication worker : ",
                     e);
@@ -824,12 +1054,7 @@ public class ReplicationWorker implements Runnable {
     }
 
     private Counter getExceptionCounter(String name) {
-        Counter counter = this.exceptionCounters.get(name);
-        if (counter == null) {
-            counter = this.exceptionLogger.getCounter(name);
-            this.exceptionCounters.put(name, counter);
-        }
-        return counter;
+        return this.exceptionCounters.computeIfAbsent(name, this.exceptionLogger::getCounter);
     }
 
 }
@@ -364,13 +364,20 @@ public class EmbeddedServer {
             LedgerStorage storage = null;
             DataIntegrityCheck integCheck = null;
 
-            if (conf.getServerConf().isDataIntegrityCheckingEnabled()) {
-                StatsLogger clientStats = bookieStats.scope(CLIENT_SCOPE);
-                ClientConfiguration clientConfiguration = new ClientConfiguration(conf.getServerConf());
+            // client used to read entries from other bookies, by the data integrity checker and
+            // to serve direct fragment copies
+            StatsLogger clientStats = bookieStats.scope(CLIENT_SCOPE);
+            ClientConfiguration clientConfiguration = null;
+            BookKeeper bkc = null;
+            if (conf.getServerConf().isDataIntegrityCheckingEnabled()
+                    || conf.getServerConf().isDirectFragmentCopyEnabled()) {
+                clientConfiguration = new ClientConfiguration(conf.getServerConf());
                 clientConfiguration.setClientRole(ClientConfiguration.CLIENT_ROLE_SYSTEM);
-                BookKeeper bkc = BookKeeper.forConfig(clientConfiguration).statsLogger(clientStats).build();
+                bkc = BookKeeper.forConfig(clientConfiguration).statsLogger(clientStats).build();
                 serverBuilder.addComponent(new AutoCloseableLifecycleComponent("bkc", bkc));
+            }
 
+            if (conf.getServerConf().isDataIntegrityCheckingEnabled()) {
                 BookieId bookieId = BookieImpl.getBookieId(conf.getServerConf());
                 ExecutorService rxExecutor = Executors.newFixedThreadPool(
                         2, new ThreadFactoryBuilder().setNameFormat("rx-schedule-%d")
@@ -386,7 +393,7 @@ public class EmbeddedServer {
                         ledgerDirsManager, indexDirsManager, bookieStats, allocator);
 
                 EntryCopier copier = new EntryCopierImpl(bookieId,
-                        ((org.apache.bookkeeper.client.BookKeeper) bkc).getClientCtx().getBookieClient(),
+                        bkc.getClientCtx().getBookieClient(),
                         storage, Ticker.systemTicker());
 
                 integCheck = new DataIntegrityCheckImpl(bookieId,
@@ -434,6 +441,13 @@ public class EmbeddedServer {
             serverBuilder.addComponent(bookieService);
             log.info("Load lifecycle component : {}", bookieService.getName());
 
+            if (conf.getServerConf().isDirectFragmentCopyEnabled()) {
+                bookieService.getServer().getBookieRequestProcessor().setFragmentCopyClient(
+                        bkc.getClientCtx().getBookieClient(), ledgerManager,
+                        clientConfiguration.getUseV2WireProtocol() && clientConfiguration.isBatchReadEnabled());
+                log.info("Direct fragment copy requests are served by this bookie");
+            }
+
             if (conf.getServerConf().isLocalScrubEnabled()) {
                 serverBuilder.addComponent(
                         new ScrubberService(
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.server.http.service;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.apache.bookkeeper.common.util.JsonUtil;
+import org.apache.bookkeeper.http.HttpServer;
+import org.apache.bookkeeper.http.service.HttpEndpointService;
+import org.apache.bookkeeper.http.service.HttpServiceRequest;
+import org.apache.bookkeeper.http.service.HttpServiceResponse;
+import org.apache.bookkeeper.proto.BookieServer;
+import org.apache.bookkeeper.proto.RequestTracer;
+
+/**
+ * HttpEndpointService that dumps the traces of the last slow add requests, the most recent first.
+ *
+ * <p>The add requests are traced when requestTraceSampleRate is set, the output would be like:
+ *        [ {
+ *           "ledgerId" : 1,
+ *           "entryId" : 42,
+ *           "finishTimeMillis" : 1544578144944,
+ *           "latencyMicros" : 152034,
+ *           "intervalLatenciesMicros" : {
+ *             "write_thread_queue" : 12,
+ *             "ledger_storage_add" : 30,
+ *             "journal_queue" : 150021,
+ *             "journal_write" : 1203,
+ *             "journal_sync" : 720,
+ *             "response_write" : 25,
+ *             "response_flush" : 23
+ *           }
+ *         } ]
+ */
+public class SlowRequestsService implements HttpEndpointService {
+
+    private final BookieServer bookieServer;
+
+    public SlowRequestsService(BookieServer bookieServer) {
+        this.bookieServer = checkNotNull(bookieServer);
+    }
+
+    @Override
+    public HttpServiceResponse handle(HttpServiceRequest request) throws Exception {
+        HttpServiceResponse response = new HttpServiceResponse();
+
+        if (HttpServer.Method.GET != request.getMethod()) {
+            response.setCode(HttpServer.StatusCode.NOT_FOUND);
+            response.setBody("Only GET is supported.");
+            return response;
+        }
+
+        RequestTracer tracer = bookieServer.getBookieRequestProcessor().getRequestTracer();
+        if (tracer == null) {
+            response.setCode(HttpServer.StatusCode.NOT_FOUND);
+            response.setBody("Request tracing is disabled, set requestTraceSampleRate to enable it.");
+            return response;
+        }
+
+        response.setBody(JsonUtil.toJson(tracer.getSlowRequests()));
+        response.setCode(HttpServer.StatusCode.OK);
+        return response;
+    }
+}
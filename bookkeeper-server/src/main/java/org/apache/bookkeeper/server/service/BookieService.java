@@ -30,6 +30,7 @@ import org.apache.bookkeeper.bookie.UncleanShutdownDetection;
 import org.apache.bookkeeper.common.allocator.ByteBufAllocatorWithOomHandler;
 import org.apache.bookkeeper.common.component.ComponentInfoPublisher;
 import org.apache.bookkeeper.common.component.ComponentInfoPublisher.EndpointInfo;
+import org.apache.bookkeeper.discover.BookieServiceInfo;
 import org.apache.bookkeeper.net.BookieSocketAddress;
 import org.apache.bookkeeper.proto.BookieServer;
 import org.apache.bookkeeper.server.component.ServerLifecycleComponent;
@@ -115,6 +116,8 @@ public class BookieService extends ServerLifecycleComponent {
                     localAddress.getHostName(),
                     "bookie-rpc", null, extensions);
             componentInfoPublisher.publishEndpoint(endpoint);
+            componentInfoPublisher.publishProperty(BookieServiceInfo.START_TIME_PROPERTY,
+                    String.valueOf(System.currentTimeMillis()));
 
         } catch (UnknownHostException err) {
             log.error("Cannot compute local address", err);
@@ -46,6 +46,7 @@ public class BookKeeperConstants {
     public static final String CHECK_ALL_LEDGERS_CTIME = "checkallledgersctime";
     public static final String PLACEMENT_POLICY_CHECK_CTIME = "placementpolicycheckctime";
     public static final String REPLICAS_CHECK_CTIME = "replicascheckctime";
+    public static final String AUDITOR_CHECKPOINT_SUFFIX = "checkpoint";
     public static final String DEFAULT_ZK_LEDGERS_ROOT_PATH = "/ledgers";
     public static final String LAYOUT_ZNODE = "LAYOUT";
     public static final String INSTANCEID = "INSTANCEID";
@@ -53,7 +53,7 @@ import java.util.concurrent.locks.StampedLock;
  * When concurrent updates are involved, the results of these methods reflect transient states
  * that may be suitable for monitoring or estimation purposes, but not for program control.
  */
-public class ConcurrentLongLongPairHashMap {
+public class ConcurrentLongLongPairHashMap implements LongLongPairHashMap {
 
     private static final long EmptyKey = -1L;
     private static final long DeletedKey = -2L;
@@ -191,6 +191,7 @@ public class ConcurrentLongLongPairHashMap {
         }
     }
 
+    @Override
     public long size() {
         long size = 0;
         for (Section s : sections) {
@@ -199,6 +200,7 @@ public class ConcurrentLongLongPairHashMap {
         return size;
     }
 
+    @Override
     public long sizeInBytes() {
         long size = 0;
         for (Section s : sections) {
@@ -207,6 +209,7 @@ public class ConcurrentLongLongPairHashMap {
         return size;
     }
 
+    @Override
     public long capacity() {
         long capacity = 0;
         for (Section s : sections) {
@@ -215,6 +218,7 @@ public class ConcurrentLongLongPairHashMap {
         return capacity;
     }
 
+    @Override
     public boolean isEmpty() {
         for (Section s : sections) {
             if (s.size != 0) {
@@ -238,16 +242,19 @@ public class ConcurrentLongLongPairHashMap {
      * @param key
      * @return the value or -1 if the key was not present
      */
+    @Override
     public LongPair get(long key1, long key2) {
         checkBiggerEqualZero(key1);
         long h = hash(key1, key2);
         return getSection(h).get(key1, key2, (int) h);
     }
 
+    @Override
     public boolean containsKey(long key1, long key2) {
         return get(key1, key2) != null;
     }
 
+    @Override
     public boolean put(long key1, long key2, long value1, long value2) {
         checkBiggerEqualZero(key1);
         checkBiggerEqualZero(value1);
@@ -255,6 +262,7 @@ public class ConcurrentLongLongPairHashMap {
         return getSection(h).put(key1, key2, value1, value2, (int) h, false);
     }
 
+    @Override
     public boolean putIfAbsent(long key1, long key2, long value1, long value2) {
         checkBiggerEqualZero(key1);
         checkBiggerEqualZero(value1);
@@ -268,12 +276,14 @@ public class ConcurrentLongLongPairHashMap {
      * @param key
      * @return the value associated with the key or -1 if key was not present
      */
+    @Override
     public boolean remove(long key1, long key2) {
         checkBiggerEqualZero(key1);
         long h = hash(key1, key2);
         return getSection(h).remove(key1, key2, ValueNotFound, ValueNotFound, (int) h);
     }
 
+    @Override
     public boolean remove(long key1, long key2, long value1, long value2) {
         checkBiggerEqualZero(key1);
         checkBiggerEqualZero(value1);
@@ -287,6 +297,7 @@ public class ConcurrentLongLongPairHashMap {
         return sections[sectionIdx];
     }
 
+    @Override
     public void clear() {
         for (Section s : sections) {
             s.clear();
@@ -299,6 +310,7 @@ public class ConcurrentLongLongPairHashMap {
      * <b>Warning: Do Not Guarantee Thread-Safety.</b>
      * @param processor the processor to process the elements.
      */
+    @Override
     public void forEach(BiConsumerLongPair processor) {
         for (Section s : sections) {
             s.forEach(processor);
@@ -308,18 +320,21 @@ public class ConcurrentLongLongPairHashMap {
     /**
      * @return a new list of all keys (makes a copy)
      */
+    @Override
     public List<LongPair> keys() {
         List<LongPair> keys = Lists.newArrayList();
         forEach((key1, key2, value1, value2) -> keys.add(new LongPair(key1, key2)));
         return keys;
     }
 
+    @Override
     public List<LongPair> values() {
         List<LongPair> values = Lists.newArrayList();
         forEach((key1, key2, value1, value2) -> values.add(new LongPair(value1, value2)));
         return values;
     }
 
+    @Override
     public Map<LongPair, LongPair> asMap() {
         Map<LongPair, LongPair> map = Maps.newHashMap();
         forEach((key1, key2, value1, value2) -> map.put(new LongPair(key1, key2), new LongPair(value1, value2)));
@@ -0,0 +1,824 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util.collections;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.BiConsumerLongPair;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+
+/**
+ * Concurrent hash map where both keys and values are composed of pairs of longs, stored off heap.
+ *
+ * <p>(long,long) --&gt; (long,long)
+ *
+ * <p>Like {@link ConcurrentLongLongPairHashMap}, it is an open hash map with linear probing split in sections, but the
+ * tables of the sections are allocated out of the heap, optionally from huge pages, so that big maps don't weigh on
+ * the GC, and they are resized incrementally: when a section is expanded, its entries are migrated to the new table
+ * by steps of {@link #MigrationBucketsPerWrite} buckets, by each write to the section, instead of rehashing the whole
+ * section while holding its lock. The new table is allocated and filled by the writer which crossed the resize
+ * threshold, without holding the lock of the section.
+ *
+ * <p>The readers don't take the lock of the section, they read optimistically and fall back to the read lock if the
+ * section was written meanwhile, looking the keys up in both tables during the migration. The tables replaced by a
+ * resize are freed once the readers which may still be probing them are done.
+ *
+ * <p>The tables are accounted as direct memory, they count towards the direct memory limit of Netty, or of the JVM
+ * when Netty can't allocate without cleaners.
+ *
+ * <p>Keys <strong>MUST</strong> be &gt;= 0.
+ *
+ * <p>The map doesn't shrink, and must be closed to release its memory. Once closed, its operations throw
+ * {@link IllegalStateException}.
+ */
+public class ConcurrentOffHeapLongLongPairHashMap implements LongLongPairHashMap {
+
+    private static final long EmptyKey = -1L;
+    private static final long DeletedKey = -2L;
+
+    private static final long ValueNotFound = -1L;
+
+    private static final int DefaultExpectedItems = 256;
+    private static final int DefaultConcurrencyLevel = 16;
+
+    private static final float DefaultMapFillFactor = 0.66f;
+    private static final float DefaultExpandFactor = 2;
+
+    private static final long DefaultHugePageSize = 2 * 1024 * 1024;
+
+    // Buckets of the table being resized migrated by each write, enough to complete the migration
+    // before the new table is filled up, with the default fill and expand factors
+    static final int MigrationBucketsPerWrite = 16;
+
+    private final Section[] sections;
+    private final TableReclaimer reclaimer = new TableReclaimer();
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder of ConcurrentOffHeapLongLongPairHashMap.
+     */
+    public static class Builder {
+        int expectedItems = DefaultExpectedItems;
+        int concurrencyLevel = DefaultConcurrencyLevel;
+        float mapFillFactor = DefaultMapFillFactor;
+        float expandFactor = DefaultExpandFactor;
+        String hugePagesPath = null;
+        long hugePageSize = DefaultHugePageSize;
+
+        public Builder expectedItems(int expectedItems) {
+            this.expectedItems = expectedItems;
+            return this;
+        }
+
+        public Builder concurrencyLevel(int concurrencyLevel) {
+            this.concurrencyLevel = concurrencyLevel;
+            return this;
+        }
+
+        public Builder mapFillFactor(float mapFillFactor) {
+            this.mapFillFactor = mapFillFactor;
+            return this;
+        }
+
+        public Builder expandFactor(float expandFactor) {
+            this.expandFactor = expandFactor;
+            return this;
+        }
+
+        /**
+         * Back the tables of the map by huge pages, by mapping them from files created under a hugetlbfs mount.
+         *
+         * @param hugePagesPath the path of the hugetlbfs mount, null to allocate the tables from the native memory
+         */
+        public Builder hugePagesPath(String hugePagesPath) {
+            this.hugePagesPath = hugePagesPath;
+            return this;
+        }
+
+        public Builder hugePageSize(long hugePageSize) {
+            this.hugePageSize = hugePageSize;
+            return this;
+        }
+
+        public ConcurrentOffHeapLongLongPairHashMap build() {
+            return new ConcurrentOffHeapLongLongPairHashMap(expectedItems, concurrencyLevel,
+                    mapFillFactor, expandFactor, hugePagesPath, hugePageSize);
+        }
+    }
+
+    private ConcurrentOffHeapLongLongPairHashMap(int expectedItems, int concurrencyLevel,
+                                                 float mapFillFactor, float expandFactor,
+                                                 String hugePagesPath, long hugePageSize) {
+        checkArgument(expectedItems > 0);
+        checkArgument(concurrencyLevel > 0);
+        checkArgument(expectedItems >= concurrencyLevel);
+        checkArgument(mapFillFactor > 0 && mapFillFactor < 1);
+        checkArgument(expandFactor > 1);
+        checkArgument(hugePageSize > 0);
+
+        LongFunction<OffHeapLongArray> allocator =
+                length -> OffHeapLongArray.allocate(length, hugePagesPath, hugePageSize);
+        int numSections = concurrencyLevel;
+        int perSectionExpectedItems = expectedItems / numSections;
+        int perSectionCapacity = (int) (perSectionExpectedItems / mapFillFactor);
+        this.sections = new Section[numSections];
+
+        for (int i = 0; i < numSections; i++) {
+            sections[i] = new Section(perSectionCapacity, mapFillFactor, expandFactor, allocator, reclaimer);
+        }
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Section s : sections) {
+            size += s.size;
+        }
+        return size;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        long size = 0;
+        for (Section s : sections) {
+            size += s.sizeInBytes();
+        }
+        return size;
+    }
+
+    @Override
+    public long capacity() {
+        long capacity = 0;
+        for (Section s : sections) {
+            capacity += s.capacity;
+        }
+        return capacity;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Section s : sections) {
+            if (s.size != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the number of sections whose table is being resized
+     */
+    long getResizingSectionCount() {
+        long resizing = 0;
+        for (Section s : sections) {
+            if (s.oldTable != null) {
+                resizing++;
+            }
+        }
+        return resizing;
+    }
+
+    @Override
+    public LongPair get(long key1, long key2) {
+        checkBiggerEqualZero(key1);
+        long h = hash(key1, key2);
+        return getSection(h).get(key1, key2, (int) h);
+    }
+
+    @Override
+    public boolean containsKey(long key1, long key2) {
+        return get(key1, key2) != null;
+    }
+
+    @Override
+    public boolean put(long key1, long key2, long value1, long value2) {
+        checkBiggerEqualZero(key1);
+        checkBiggerEqualZero(value1);
+        long h = hash(key1, key2);
+        return getSection(h).put(key1, key2, value1, value2, (int) h, false);
+    }
+
+    @Override
+    public boolean putIfAbsent(long key1, long key2, long value1, long value2) {
+        checkBiggerEqualZero(key1);
+        checkBiggerEqualZero(value1);
+        long h = hash(key1, key2);
+        return getSection(h).put(key1, key2, value1, value2, (int) h, true);
+    }
+
+    @Override
+    public boolean remove(long key1, long key2) {
+        checkBiggerEqualZero(key1);
+        long h = hash(key1, key2);
+        return getSection(h).remove(key1, key2, ValueNotFound, ValueNotFound, (int) h);
+    }
+
+    @Override
+    public boolean remove(long key1, long key2, long value1, long value2) {
+        checkBiggerEqualZero(key1);
+        checkBiggerEqualZero(value1);
+        long h = hash(key1, key2);
+        return getSection(h).remove(key1, key2, value1, value2, (int) h);
+    }
+
+    private Section getSection(long hash) {
+        // Use 32 msb out of long to get the section
+        final int sectionIdx = (int) (hash >>> 32) & (sections.length - 1);
+        return sections[sectionIdx];
+    }
+
+    @Override
+    public void clear() {
+        for (Section s : sections) {
+            s.clear();
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumerLongPair processor) {
+        for (Section s : sections) {
+            s.forEach(processor);
+        }
+    }
+
+    /**
+     * @return a new list of all keys (makes a copy)
+     */
+    @Override
+    public List<LongPair> keys() {
+        List<LongPair> keys = Lists.newArrayList();
+        forEach((key1, key2, value1, value2) -> keys.add(new LongPair(key1, key2)));
+        return keys;
+    }
+
+    @Override
+    public List<LongPair> values() {
+        List<LongPair> values = Lists.newArrayList();
+        forEach((key1, key2, value1, value2) -> values.add(new LongPair(value1, value2)));
+        return values;
+    }
+
+    @Override
+    public Map<LongPair, LongPair> asMap() {
+        Map<LongPair, LongPair> map = Maps.newHashMap();
+        forEach((key1, key2, value1, value2) -> map.put(new LongPair(key1, key2), new LongPair(value1, value2)));
+        return map;
+    }
+
+    @Override
+    public void close() {
+        for (Section s : sections) {
+            s.close();
+        }
+        // the readers which looked the tables up before the close may still be reading them
+        reclaimer.awaitReclaim();
+    }
+
+    // A section is a portion of the hash map that is covered by a single lock
+    @SuppressWarnings("serial")
+    private static final class Section extends StampedLock {
+        // Keys and values are stored interleaved in the tables, the buckets are the offsets of the keys. The masks
+        // of the tables are derived from their length, so that a reader always probes a table within its bounds.
+        // The table is null once the section is closed.
+        private OffHeapLongArray table;
+        // The table being migrated to the new one, null if the section is not being resized
+        private OffHeapLongArray oldTable;
+        private long migratedBuckets;
+
+        private volatile int capacity;
+        private volatile int size;
+        private int usedBuckets;
+        private int resizeThresholdUp;
+        // Beyond it, the writers don't wait for the writer allocating the new table, they expand the table
+        private int resizeThresholdHard;
+        private final AtomicBoolean expanding = new AtomicBoolean();
+        private final float mapFillFactor;
+        private final float expandFactor;
+        private final LongFunction<OffHeapLongArray> allocator;
+        private final TableReclaimer reclaimer;
+
+        Section(int capacity, float mapFillFactor, float expandFactor, LongFunction<OffHeapLongArray> allocator,
+                TableReclaimer reclaimer) {
+            this.allocator = allocator;
+            this.reclaimer = reclaimer;
+            this.mapFillFactor = mapFillFactor;
+            this.expandFactor = expandFactor;
+            this.capacity = alignToPowerOfTwo(capacity);
+            this.table = newTable(this.capacity);
+            this.size = 0;
+            this.usedBuckets = 0;
+            updateResizeThresholds();
+        }
+
+        private OffHeapLongArray newTable(int capacity) {
+            OffHeapLongArray newTable = allocator.apply(4L * capacity);
+            newTable.fill(EmptyKey);
+            return newTable;
+        }
+
+        private void updateResizeThresholds() {
+            resizeThresholdUp = (int) (capacity * mapFillFactor);
+            resizeThresholdHard = Math.min(capacity - 1, (int) (capacity * (1 + mapFillFactor) / 2));
+        }
+
+        private void checkOpen() {
+            if (table == null) {
+                throw new IllegalStateException("The map is closed");
+            }
+        }
+
+        long sizeInBytes() {
+            long stamp = readLock();
+            try {
+                checkOpen();
+                return table.sizeInBytes() + (oldTable != null ? oldTable.sizeInBytes() : 0);
+            } finally {
+                unlockRead(stamp);
+            }
+        }
+
+        LongPair get(long key1, long key2, int keyHash) {
+            // The tables replaced meanwhile are not freed until the reader exits its epoch
+            long epoch = reclaimer.enter();
+            try {
+                long stamp = tryOptimisticRead();
+                if (stamp != 0) {
+                    OffHeapLongArray table = this.table;
+                    OffHeapLongArray oldTable = this.oldTable;
+                    if (table != null) {
+                        LongPair value = get(table, oldTable, key1, key2, keyHash);
+                        if (validate(stamp)) {
+                            return value;
+                        }
+                    }
+                }
+
+                // Fallback to the read lock, the section is being written
+                stamp = readLock();
+                try {
+                    checkOpen();
+                    return get(table, oldTable, key1, key2, keyHash);
+                } finally {
+                    unlockRead(stamp);
+                }
+            } finally {
+                reclaimer.exit(epoch);
+            }
+        }
+
+        private static LongPair get(OffHeapLongArray table, OffHeapLongArray oldTable, long key1, long key2,
+                                    int keyHash) {
+            long bucket = find(table, key1, key2, keyHash);
+            if (bucket != -1) {
+                return new LongPair(table.getLong(bucket + 2), table.getLong(bucket + 3));
+            }
+            if (oldTable != null) {
+                bucket = find(oldTable, key1, key2, keyHash);
+                if (bucket != -1) {
+                    return new LongPair(oldTable.getLong(bucket + 2), oldTable.getLong(bucket + 3));
+                }
+            }
+            return null;
+        }
+
+        boolean put(long key1, long key2, long value1, long value2, int keyHash, boolean onlyIfAbsent) {
+            boolean expand;
+            long stamp = writeLock();
+            try {
+                checkOpen();
+                long bucket = findForUpdate(key1, key2, keyHash);
+                if (bucket != -1) {
+                    if (onlyIfAbsent) {
+                        return false;
+                    }
+                    // Over written an old value for same key
+                    table.putLong(bucket + 2, value1);
+                    table.putLong(bucket + 3, value2);
+                    return true;
+                }
+
+                insertAbsent(key1, key2, value1, value2, keyHash);
+                ++size;
+                if (usedBuckets > resizeThresholdHard) {
+                    // The new table wasn't allocated in time, don't let the table fill up
+                    expand(newTable(alignToPowerOfTwo((int) (capacity * expandFactor))));
+                }
+                expand = usedBuckets > resizeThresholdUp;
+            } finally {
+                unlockWrite(stamp);
+                reclaimer.tryReclaim();
+            }
+
+            if (expand) {
+                allocateAndExpand();
+            }
+            return true;
+        }
+
+        private boolean remove(long key1, long key2, long value1, long value2, int keyHash) {
+            long stamp = writeLock();
+            try {
+                checkOpen();
+                long bucket = findForUpdate(key1, key2, keyHash);
+                if (bucket == -1) {
+                    // Key wasn't found
+                    return false;
+                }
+                if (value1 == ValueNotFound
+                        || (value1 == table.getLong(bucket + 2) && value2 == table.getLong(bucket + 3))) {
+                    --size;
+                    cleanBucket(bucket);
+                    return true;
+                } else {
+                    return false;
+                }
+            } finally {
+                unlockWrite(stamp);
+                reclaimer.tryReclaim();
+            }
+        }
+
+        /**
+         * Migrate the next buckets of the table being resized, then find a key in the table, moving it from the
+         * table being resized if it was not migrated yet.
+         *
+         * @return the bucket of the key in the table, -1 if not found
+         */
+        private long findForUpdate(long key1, long key2, int keyHash) {
+            migrateStep();
+            long bucket = find(table, key1, key2, keyHash);
+            if (bucket == -1 && oldTable != null) {
+                long oldBucket = find(oldTable, key1, key2, keyHash);
+                if (oldBucket != -1) {
+                    bucket = insertAbsent(key1, key2, oldTable.getLong(oldBucket + 2),
+                            oldTable.getLong(oldBucket + 3), keyHash);
+                    markDeleted(oldTable, oldBucket);
+                }
+            }
+            return bucket;
+        }
+
+        /**
+         * Insert a key which is in none of the tables into the table.
+         *
+         * @return the bucket of the key
+         */
+        private long insertAbsent(long key1, long key2, long value1, long value2, int keyHash) {
+            long tableMask = table.length() - 1;
+            long bucket = startBucket(keyHash, tableMask);
+            while (true) {
+                long storedKey1 = table.getLong(bucket);
+                if (storedKey1 == EmptyKey || storedKey1 == DeletedKey) {
+                    if (storedKey1 == EmptyKey) {
+                        ++usedBuckets;
+                    }
+                    table.putLong(bucket, key1);
+                    table.putLong(bucket + 1, key2);
+                    table.putLong(bucket + 2, value1);
+                    table.putLong(bucket + 3, value2);
+                    return bucket;
+                }
+
+                bucket = (bucket + 4) & tableMask;
+            }
+        }
+
+        private void migrateStep() {
+            if (oldTable == null) {
+                return;
+            }
+            long end = Math.min(migratedBuckets + 4L * MigrationBucketsPerWrite, oldTable.length());
+            for (long bucket = migratedBuckets; bucket < end; bucket += 4) {
+                long storedKey1 = oldTable.getLong(bucket);
+                if (storedKey1 != EmptyKey && storedKey1 != DeletedKey) {
+                    long storedKey2 = oldTable.getLong(bucket + 1);
+                    insertAbsent(storedKey1, storedKey2, oldTable.getLong(bucket + 2),
+                            oldTable.getLong(bucket + 3), (int) hash(storedKey1, storedKey2));
+                    // The migrated buckets stay deleted, so that the keys further in their probe sequence are found
+                    markDeleted(oldTable, bucket);
+                }
+            }
+            migratedBuckets = end;
+            if (migratedBuckets == oldTable.length()) {
+                reclaimer.retire(oldTable);
+                oldTable = null;
+            }
+        }
+
+        /**
+         * Allocate and fill the new table without holding the lock of the section, then expand the table if no
+         * other writer did meanwhile.
+         */
+        private void allocateAndExpand() {
+            if (!expanding.compareAndSet(false, true)) {
+                // Another writer is allocating the new table
+                return;
+            }
+            try {
+                int currentCapacity = capacity;
+                OffHeapLongArray newTable = newTable(alignToPowerOfTwo((int) (currentCapacity * expandFactor)));
+                long stamp = writeLock();
+                try {
+                    if (table != null && capacity == currentCapacity && usedBuckets > resizeThresholdUp) {
+                        expand(newTable);
+                        newTable = null;
+                    }
+                } finally {
+                    unlockWrite(stamp);
+                }
+                if (newTable != null) {
+                    // The table was expanded, cleared or closed meanwhile, the new table was never published
+                    newTable.close();
+                }
+            } finally {
+                expanding.set(false);
+            }
+        }
+
+        private void expand(OffHeapLongArray newTable) {
+            // The table filled up before the end of the previous resize, complete it first
+            while (oldTable != null) {
+                migrateStep();
+            }
+            oldTable = table;
+            migratedBuckets = 0;
+            table = newTable;
+            usedBuckets = 0;
+            capacity = (int) (newTable.length() / 4);
+            updateResizeThresholds();
+        }
+
+        private void cleanBucket(long bucket) {
+            long tableMask = table.length() - 1;
+            long nextInArray = (bucket + 4) & tableMask;
+            if (table.getLong(nextInArray) == EmptyKey) {
+                markEmpty(bucket);
+                --usedBuckets;
+
+                // Cleanup all the buckets that were in `DeletedKey` state,
+                // so that we can reduce unnecessary expansions
+                bucket = (bucket - 4) & tableMask;
+                while (table.getLong(bucket) == DeletedKey) {
+                    markEmpty(bucket);
+                    --usedBuckets;
+
+                    bucket = (bucket - 4) & tableMask;
+                }
+            } else {
+                markDeleted(table, bucket);
+            }
+        }
+
+        private void markEmpty(long bucket) {
+            table.putLong(bucket, EmptyKey);
+            table.putLong(bucket + 1, EmptyKey);
+            table.putLong(bucket + 2, ValueNotFound);
+            table.putLong(bucket + 3, ValueNotFound);
+        }
+
+        private static void markDeleted(OffHeapLongArray table, long bucket) {
+            table.putLong(bucket, DeletedKey);
+            table.putLong(bucket + 1, DeletedKey);
+            table.putLong(bucket + 2, ValueNotFound);
+            table.putLong(bucket + 3, ValueNotFound);
+        }
+
+        void clear() {
+            long stamp = writeLock();
+
+            try {
+                checkOpen();
+                if (oldTable != null) {
+                    reclaimer.retire(oldTable);
+                    oldTable = null;
+                }
+                table.fill(EmptyKey);
+                this.size = 0;
+                this.usedBuckets = 0;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        void close() {
+            long stamp = writeLock();
+
+            try {
+                if (oldTable != null) {
+                    reclaimer.retire(oldTable);
+                    oldTable = null;
+                }
+                if (table != null) {
+                    reclaimer.retire(table);
+                    table = null;
+                }
+                this.size = 0;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        public void forEach(BiConsumerLongPair processor) {
+            long stamp = readLock();
+
+            try {
+                checkOpen();
+                forEach(table, processor);
+                if (oldTable != null) {
+                    forEach(oldTable, processor);
+                }
+            } finally {
+                unlockRead(stamp);
+            }
+        }
+
+        private static void forEach(OffHeapLongArray table, BiConsumerLongPair processor) {
+            // Go through all the buckets for this table
+            for (long bucket = 0; bucket < table.length(); bucket += 4) {
+                long storedKey1 = table.getLong(bucket);
+                if (storedKey1 != DeletedKey && storedKey1 != EmptyKey) {
+                    processor.accept(storedKey1, table.getLong(bucket + 1),
+                            table.getLong(bucket + 2), table.getLong(bucket + 3));
+                }
+            }
+        }
+
+        private static long find(OffHeapLongArray table, long key1, long key2, int keyHash) {
+            long tableMask = table.length() - 1;
+            long bucket = startBucket(keyHash, tableMask);
+            // The probes are bounded by the table: a reader not holding the lock may see a table being written
+            for (long probes = 0; probes <= tableMask; probes += 4) {
+                long storedKey1 = table.getLong(bucket);
+                if (key1 == storedKey1 && key2 == table.getLong(bucket + 1)) {
+                    return bucket;
+                } else if (storedKey1 == EmptyKey) {
+                    // Not found
+                    return -1;
+                }
+
+                bucket = (bucket + 4) & tableMask;
+            }
+            return -1;
+        }
+
+        private static long startBucket(int keyHash, long tableMask) {
+            return ((long) keyHash << 2) & tableMask;
+        }
+    }
+
+    /**
+     * Frees the tables replaced by the resizes, the clears and the close of the sections once no reader can be
+     * reading them anymore: the readers don't hold the locks of the sections, they may still be probing a table
+     * looked up before it was replaced.
+     *
+     * <p>The readers enter the current epoch, counted in stripes keyed by thread id. The epoch is only moved
+     * forward once the readers of the previous one exited, so the readers are in the current or the previous epoch,
+     * and a table retired in an epoch is freed two epochs later.
+     */
+    private static final class TableReclaimer {
+        private static final int NUM_STRIPES = Math.min(64,
+                Integer.highestOneBit(Math.max(1, 2 * Runtime.getRuntime().availableProcessors() - 1)) << 1);
+        // 8 longs per counter, the counters don't share cache lines
+        private static final int COUNTER_SHIFT = 3;
+
+        private final AtomicLong epoch = new AtomicLong();
+        // The readers of the even and of the odd epochs, in stripes
+        private final AtomicLongArray readers = new AtomicLongArray((NUM_STRIPES * 2) << COUNTER_SHIFT);
+        // The retired tables, with the epoch they were retired in, only accessed under the lock of the reclaimer
+        private final ArrayDeque<OffHeapLongArray> retiredTables = new ArrayDeque<>();
+        private final ArrayDeque<Long> retiredEpochs = new ArrayDeque<>();
+        private volatile boolean hasRetiredTables;
+
+        private static int counterOf(long epoch) {
+            int stripe = (int) (Thread.currentThread().getId() & (NUM_STRIPES - 1));
+            return (stripe * 2 + (int) (epoch & 1)) << COUNTER_SHIFT;
+        }
+
+        /**
+         * @return the epoch entered, to exit once the reader doesn't access the tables anymore
+         */
+        long enter() {
+            long current = epoch.get();
+            readers.getAndIncrement(counterOf(current));
+            return current;
+        }
+
+        void exit(long entered) {
+            readers.getAndDecrement(counterOf(entered));
+        }
+
+        /**
+         * Free a table once the readers which may have looked it up exited, it must not be reachable anymore.
+         */
+        synchronized void retire(OffHeapLongArray table) {
+            retiredTables.add(table);
+            retiredEpochs.add(epoch.get());
+            hasRetiredTables = true;
+            reclaim();
+        }
+
+        void tryReclaim() {
+            if (hasRetiredTables) {
+                synchronized (this) {
+                    reclaim();
+                }
+            }
+        }
+
+        /**
+         * Wait for all the retired tables to be freed.
+         */
+        void awaitReclaim() {
+            while (true) {
+                synchronized (this) {
+                    reclaim();
+                    if (retiredTables.isEmpty()) {
+                        return;
+                    }
+                }
+                Thread.yield();
+            }
+        }
+
+        private void reclaim() {
+            // the readers are in the current or in the previous epoch, which parity is the one of the next epoch
+            for (int i = 0; i < 2 && !retiredTables.isEmpty(); i++) {
+                long current = epoch.get();
+                if (!hasExited(current - 1)) {
+                    break;
+                }
+                epoch.set(current + 1);
+                while (!retiredTables.isEmpty() && retiredEpochs.peek() + 2 <= current + 1) {
+                    retiredTables.poll().close();
+                    retiredEpochs.poll();
+                }
+            }
+            hasRetiredTables = !retiredTables.isEmpty();
+        }
+
+        private boolean hasExited(long exitedEpoch) {
+            int parity = (int) (exitedEpoch & 1);
+            for (int stripe = 0; stripe < NUM_STRIPES; stripe++) {
+                if (readers.get((stripe * 2 + parity) << COUNTER_SHIFT) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final long HashMixer = 0xc6a4a7935bd1e995L;
+    private static final int R = 47;
+
+    static final long hash(long key1, long key2) {
+        long hash = key1 * HashMixer;
+        hash ^= hash >>> R;
+        hash *= HashMixer;
+        hash += 31 + (key2 * HashMixer);
+        hash ^= hash >>> R;
+        hash *= HashMixer;
+        return hash;
+    }
+
+    private static int alignToPowerOfTwo(int n) {
+        return (int) Math.pow(2, 32 - Integer.numberOfLeadingZeros(n - 1));
+    }
+
+    private static void checkBiggerEqualZero(long n) {
+        if (n < 0L) {
+            throw new IllegalArgumentException("Keys and values must be >= 0");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util.collections;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import io.netty.util.internal.PlatformDependent;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An array of longs allocated out of the heap, from the direct memory or, when a huge pages path is given, from a
+ * file mapped from this path, which should be a hugetlbfs mount so that the array is backed by huge pages.
+ *
+ * <p>The arrays allocated from the direct memory are counted like the Netty direct buffers, in the Netty direct
+ * memory counter when Netty allocates its buffers without cleaners, in the JDK one otherwise, so they are bounded by
+ * the max direct memory and show up in the direct memory usage of the bookie.
+ *
+ * <p>The accesses are not bounds checked nor thread safe, and the array must be closed to release its memory.
+ */
+final class OffHeapLongArray implements AutoCloseable {
+
+    private final long address;
+    private final long length;
+    private final ByteBuffer buffer;
+    // whether the buffer was allocated without cleaner, and must be freed as such
+    private final boolean noCleaner;
+
+    private OffHeapLongArray(long length, ByteBuffer buffer, boolean noCleaner) {
+        this.address = PlatformDependent.directBufferAddress(buffer);
+        this.length = length;
+        this.buffer = buffer;
+        this.noCleaner = noCleaner;
+    }
+
+    /**
+     * @param length the number of longs of the array
+     * @param hugePagesPath the path of the hugetlbfs mount to map the array from, null to allocate it from the
+     *                      native memory
+     * @param hugePageSize the size of the huge pages, the size of the mapped file is rounded up to
+     */
+    static OffHeapLongArray allocate(long length, String hugePagesPath, long hugePageSize) {
+        checkState(PlatformDependent.hasUnsafe(), "Off heap arrays require sun.misc.Unsafe");
+        checkArgument(length > 0);
+        long bytes = length * Long.BYTES;
+        if (hugePagesPath == null) {
+            checkArgument(bytes <= Integer.MAX_VALUE, "Off heap arrays are limited to 2GB, got %s bytes", bytes);
+            if (PlatformDependent.useDirectBufferNoCleaner()) {
+                return new OffHeapLongArray(length, PlatformDependent.allocateDirectNoCleaner((int) bytes), true);
+            } else {
+                return new OffHeapLongArray(length, ByteBuffer.allocateDirect((int) bytes), false);
+            }
+        }
+
+        long mappedBytes = (bytes + hugePageSize - 1) / hugePageSize * hugePageSize;
+        checkArgument(mappedBytes <= Integer.MAX_VALUE,
+                "Arrays backed by huge pages are limited to 2GB, got %s bytes", mappedBytes);
+        try {
+            File file = File.createTempFile("bk-offheap-", ".array", new File(hugePagesPath));
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(mappedBytes);
+                // the mapping outlives the file, which is only needed to create it
+                ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mappedBytes);
+                return new OffHeapLongArray(length, buffer, false);
+            } finally {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map an array of " + mappedBytes + " bytes from "
+                    + hugePagesPath, e);
+        }
+    }
+
+    long length() {
+        return length;
+    }
+
+    long sizeInBytes() {
+        return length * Long.BYTES;
+    }
+
+    long getLong(long index) {
+        return PlatformDependent.getLong(address + (index << 3));
+    }
+
+    void putLong(long index, long value) {
+        PlatformDependent.putLong(address + (index << 3), value);
+    }
+
+    void fill(long value) {
+        if (value == 0L || value == -1L) {
+            // all the bytes of the value are the same
+            PlatformDependent.setMemory(address, length * Long.BYTES, (byte) value);
+        } else {
+            for (long i = 0; i < length; i++) {
+                putLong(i, value);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (noCleaner) {
+            PlatformDependent.freeDirectNoCleaner(buffer);
+        } else {
+            PlatformDependent.freeDirectBuffer(buffer);
+        }
+    }
+}
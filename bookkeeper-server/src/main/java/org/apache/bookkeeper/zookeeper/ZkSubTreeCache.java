@@ -0,0 +1,340 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.zookeeper;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.apache.zookeeper.AddWatchMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Children cache of a znode subtree, kept up to date from the events of a single persistent recursive watch.
+ *
+ * <p>The cache is shared by all the components using the same {@link ZooKeeperClient} and the same subtree,
+ * and lives as long as the client: it is obtained with {@link #acquire(ZooKeeper, String)} and released with
+ * {@link #close()}. The other zookeeper handles get a cache of their own. The children of a
+ * znode are read from zookeeper the first time they are requested, and then updated from the creation and
+ * deletion events of the subtree, so that they are not listed again on every change.
+ *
+ * <p>The events received while the client is disconnected are lost, so the cache is dropped on disconnection
+ * and on session expiration, and the watch is added again to the new session. The listeners receive all the
+ * events of the subtree, including the connection state changes, after the cache was updated.
+ *
+ * <p>Persistent recursive watches require zookeeper 3.6 or later.
+ */
+public class ZkSubTreeCache implements Watcher, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ZkSubTreeCache.class);
+
+    private enum WatchState {
+        NONE,
+        PENDING,
+        ESTABLISHED
+    }
+
+    private static class CachedNode {
+        final Set<String> children;
+        int cversion;
+
+        CachedNode(List<String> children, int cversion) {
+            this.children = new HashSet<>(children);
+            this.cversion = cversion;
+        }
+    }
+
+    private static class PendingLoad {
+        final CompletableFuture<Versioned<List<String>>> future = new CompletableFuture<>();
+        // whether the children may be cached once loaded
+        boolean cacheable;
+
+        PendingLoad(boolean cacheable) {
+            this.cacheable = cacheable;
+        }
+    }
+
+    private final ZooKeeper zk;
+    private final String rootPath;
+    // the caches sharing this cache, by subtree
+    private final Map<String, ZkSubTreeCache> caches;
+    private final Set<Watcher> listeners = new CopyOnWriteArraySet<>();
+    private final Map<String, CachedNode> cachedNodes = new HashMap<>();
+    private final Map<String, PendingLoad> pendingLoads = new HashMap<>();
+    private WatchState watchState = WatchState.NONE;
+    private boolean closed = false;
+    // guarded by the caches lock
+    private int refCount = 0;
+
+    /**
+     * Get the shared cache of the given subtree, creating it if needed.
+     *
+     * <p>Every call must be paired with a call to {@link #close()}.
+     */
+    public static ZkSubTreeCache acquire(ZooKeeper zk, String rootPath) {
+        Map<String, ZkSubTreeCache> caches = zk instanceof ZooKeeperClient
+                ? ((ZooKeeperClient) zk).getSubTreeCaches() : new HashMap<>();
+        synchronized (caches) {
+            ZkSubTreeCache cache = caches.computeIfAbsent(rootPath, path -> new ZkSubTreeCache(zk, path, caches));
+            cache.refCount++;
+            return cache;
+        }
+    }
+
+    private ZkSubTreeCache(ZooKeeper zk, String rootPath, Map<String, ZkSubTreeCache> caches) {
+        this.zk = zk;
+        this.rootPath = rootPath;
+        this.caches = caches;
+    }
+
+    public String getRootPath() {
+        return rootPath;
+    }
+
+    /**
+     * Get the children of a znode of the subtree.
+     *
+     * @return the children, and the children version (cversion) of the znode
+     */
+    public CompletableFuture<Versioned<List<String>>> getChildrenAsync(String path) {
+        checkArgument(path.equals(rootPath) || path.startsWith(rootPath + "/"),
+                "%s is not in the subtree %s", path, rootPath);
+        PendingLoad load;
+        boolean addWatch = false;
+        synchronized (this) {
+            CachedNode node = cachedNodes.get(path);
+            if (node != null) {
+                return CompletableFuture.completedFuture(
+                        new Versioned<>(new ArrayList<>(node.children), new LongVersion(node.cversion)));
+            }
+            load = pendingLoads.get(path);
+            if (load == null) {
+                // the children read before the watch is established might miss events
+                load = new PendingLoad(!closed && watchState == WatchState.ESTABLISHED);
+                pendingLoads.put(path, load);
+                if (!closed && watchState == WatchState.NONE) {
+                    watchState = WatchState.PENDING;
+                    addWatch = true;
+                }
+            } else {
+                return copyOf(load.future);
+            }
+        }
+        if (addWatch) {
+            zk.addWatch(rootPath, this, AddWatchMode.PERSISTENT_RECURSIVE, (rc, p, ctx) -> {
+                synchronized (ZkSubTreeCache.this) {
+                    if (watchState == WatchState.PENDING) {
+                        watchState = Code.OK.intValue() == rc ? WatchState.ESTABLISHED : WatchState.NONE;
+                    }
+                }
+                if (Code.OK.intValue() != rc) {
+                    LOG.warn("Failed to watch the subtree {}, its children are not cached : {}",
+                            rootPath, KeeperException.Code.get(rc));
+                }
+            }, null);
+        }
+        final PendingLoad pendingLoad = load;
+        zk.getChildren(path, false, (rc, p, ctx, children, stat) -> {
+            synchronized (ZkSubTreeCache.this) {
+                pendingLoads.remove(path, pendingLoad);
+                if (Code.OK.intValue() == rc && pendingLoad.cacheable && !closed) {
+                    cachedNodes.put(path, new CachedNode(children, stat.getCversion()));
+                }
+            }
+            if (Code.OK.intValue() == rc) {
+                pendingLoad.future.complete(new Versioned<>(children, new LongVersion(stat.getCversion())));
+            } else {
+                pendingLoad.future.completeExceptionally(KeeperException.create(Code.get(rc), path));
+            }
+        }, null);
+        return copyOf(load.future);
+    }
+
+    private static CompletableFuture<Versioned<List<String>>> copyOf(
+            CompletableFuture<Versioned<List<String>>> future) {
+        return future.thenApply(children -> new Versioned<>(new ArrayList<>(children.getValue()),
+                children.getVersion()));
+    }
+
+    /**
+     * Get the children of a znode of the subtree.
+     *
+     * <p>It must not be called from the zookeeper event thread.
+     */
+    public List<String> getChildren(String path) throws KeeperException, InterruptedException {
+        try {
+            return getChildrenAsync(path).get().getValue();
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof KeeperException) {
+                throw (KeeperException) ee.getCause();
+            }
+            throw new IllegalStateException("Failed to get the children of " + path, ee.getCause());
+        }
+    }
+
+    @Override
+    public void process(WatchedEvent event) {
+        String path = event.getPath();
+        synchronized (this) {
+            switch (event.getType()) {
+            case None:
+                if (event.getState() == KeeperState.Disconnected || event.getState() == KeeperState.Expired) {
+                    // the events are lost until the client reconnects
+                    invalidateAll();
+                }
+                if (event.getState() == KeeperState.Expired) {
+                    // the watch is added again to the new session
+                    watchState = WatchState.NONE;
+                }
+                break;
+            case PersistentWatchRemoved:
+                invalidateAll();
+                watchState = WatchState.NONE;
+                break;
+            case NodeCreated:
+                onChildChanged(path, true);
+                break;
+            case NodeDeleted:
+                onChildChanged(path, false);
+                cachedNodes.keySet().removeIf(p -> p.equals(path) || p.startsWith(path + "/"));
+                invalidatePendingLoad(path);
+                break;
+            default:
+                break;
+            }
+        }
+        for (Watcher listener : listeners) {
+            try {
+                listener.process(event);
+            } catch (RuntimeException re) {
+                LOG.warn("Listener of the subtree {} failed to process {}", rootPath, event, re);
+            }
+        }
+    }
+
+    private void onChildChanged(String path, boolean created) {
+        int idx = path.lastIndexOf('/');
+        String parent = idx <= 0 ? "/" : path.substring(0, idx);
+        String child = path.substring(idx + 1);
+        CachedNode node = cachedNodes.get(parent);
+        if (node != null && (created ? node.children.add(child) : node.children.remove(child))) {
+            // the children version is bumped on every creation and deletion of a child
+            node.cversion++;
+        }
+        invalidatePendingLoad(parent);
+    }
+
+    private void invalidatePendingLoad(String path) {
+        PendingLoad load = pendingLoads.get(path);
+        if (load != null) {
+            load.cacheable = false;
+        }
+    }
+
+    private void invalidateAll() {
+        cachedNodes.clear();
+        for (PendingLoad load : pendingLoads.values()) {
+            load.cacheable = false;
+        }
+    }
+
+    /**
+     * Register a listener of the events of the subtree.
+     */
+    public void registerListener(Watcher listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregister a listener (noop if not registered).
+     */
+    public void unregisterListener(Watcher listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * A listener guard.
+     */
+    public class ListenerGuard implements AutoCloseable {
+        final Watcher listener;
+
+        ListenerGuard(Watcher listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void close() {
+            unregisterListener(listener);
+        }
+    }
+
+    /**
+     * Register a listener and get a guard object which unregisters it, to be used with try-with-resources.
+     */
+    public ListenerGuard registerListenerWithGuard(Watcher listener) {
+        registerListener(listener);
+        return new ListenerGuard(listener);
+    }
+
+    /**
+     * Release the cache, the watch is removed once all the components using it released it.
+     */
+    @Override
+    public void close() {
+        synchronized (caches) {
+            if (--refCount > 0) {
+                return;
+            }
+            caches.remove(rootPath, this);
+        }
+        boolean removeWatch;
+        synchronized (this) {
+            closed = true;
+            removeWatch = watchState != WatchState.NONE;
+            watchState = WatchState.NONE;
+            invalidateAll();
+        }
+        listeners.clear();
+        if (removeWatch) {
+            zk.removeWatches(rootPath, this, WatcherType.Any, true, (rc, path, ctx) -> {
+                if (Code.OK.intValue() != rc && Code.NOWATCHER.intValue() != rc) {
+                    LOG.warn("Failed to remove the watch of the subtree {} : {}", rootPath, Code.get(rc));
+                }
+            }, null);
+        }
+    }
+}
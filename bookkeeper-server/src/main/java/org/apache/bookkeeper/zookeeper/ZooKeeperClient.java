@@ -27,7 +27,9 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.RateLimiter;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -49,6 +51,7 @@ import org.apache.zookeeper.AsyncCallback.MultiCallback;
 import org.apache.zookeeper.AsyncCallback.StatCallback;
 import org.apache.zookeeper.AsyncCallback.StringCallback;
 import org.apache.zookeeper.AsyncCallback.VoidCallback;
+import org.apache.zookeeper.AddWatchMode;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.Op;
@@ -58,6 +61,7 @@ import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.Watcher.Event.EventType;
 import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.Watcher.WatcherType;
 import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.data.ACL;
 import org.apache.zookeeper.data.Stat;
@@ -104,8 +108,13 @@ public class ZooKeeperClient extends ZooKeeper implements Watcher, AutoCloseable
     private final OpStatsLogger getACLStats;
     private final OpStatsLogger setACLStats;
     private final OpStatsLogger syncStats;
+    private final OpStatsLogger addWatchStats;
+    private final OpStatsLogger removeWatchesStats;
     private final OpStatsLogger createClientStats;
 
+    // the subtree caches shared by the components using this client, by root path
+    private final Map<String, ZkSubTreeCache> subTreeCaches = new HashMap<>();
+
     private final Callable<ZooKeeper> clientCreator = new Callable<ZooKeeper>() {
 
         @Override
@@ -313,6 +322,8 @@ public class ZooKeeperClient extends ZooKeeper implements Watcher, AutoCloseable
         getACLStats = scopedStatsLogger.getOpStatsLogger("get_acl");
         setACLStats = scopedStatsLogger.getOpStatsLogger("set_acl");
         syncStats = scopedStatsLogger.getOpStatsLogger("sync");
+        addWatchStats = scopedStatsLogger.getOpStatsLogger("add_watch");
+        removeWatchesStats = scopedStatsLogger.getOpStatsLogger("remove_watches");
     }
 
     @Override
@@ -681,6 +692,89 @@ public class ZooKeeperClient extends ZooKeeper implements Watcher, AutoCloseable
         proc.run();
     }
 
+    @Override
+    public void addWatch(final String basePath, final Watcher watcher, final AddWatchMode mode,
+                         final VoidCallback cb, final Object context) {
+        final Runnable proc = new ZkRetryRunnable(operationRetryPolicy, rateLimiter, addWatchStats) {
+
+            final VoidCallback vCb = new VoidCallback() {
+
+                @Override
+                public void processResult(int rc, String path, Object ctx) {
+                    ZooWorker worker = (ZooWorker) ctx;
+                    if (allowRetry(worker, rc)) {
+                        backOffAndRetry(that, worker.nextRetryWaitTime());
+                    } else {
+                        cb.processResult(rc, path, context);
+                    }
+                }
+
+            };
+
+            @Override
+            public String toString() {
+                return String.format("addWatch (%s, mode = %s)", basePath, mode);
+            }
+
+            @Override
+            void zkRun() {
+                ZooKeeper zkHandle = zk.get();
+                if (null == zkHandle) {
+                    ZooKeeperClient.super.addWatch(basePath, watcher, mode, vCb, worker);
+                } else {
+                    zkHandle.addWatch(basePath, watcher, mode, vCb, worker);
+                }
+            }
+        };
+        // execute it immediately
+        proc.run();
+    }
+
+    @Override
+    public void removeWatches(final String path, final Watcher watcher, final WatcherType watcherType,
+                              final boolean local, final VoidCallback cb, final Object context) {
+        final Runnable proc = new ZkRetryRunnable(operationRetryPolicy, rateLimiter, removeWatchesStats) {
+
+            final VoidCallback vCb = new VoidCallback() {
+
+                @Override
+                public void processResult(int rc, String path, Object ctx) {
+                    ZooWorker worker = (ZooWorker) ctx;
+                    if (allowRetry(worker, rc)) {
+                        backOffAndRetry(that, worker.nextRetryWaitTime());
+                    } else {
+                        cb.processResult(rc, path, context);
+                    }
+                }
+
+            };
+
+            @Override
+            public String toString() {
+                return String.format("removeWatches (%s, type = %s)", path, watcherType);
+            }
+
+            @Override
+            void zkRun() {
+                ZooKeeper zkHandle = zk.get();
+                if (null == zkHandle) {
+                    ZooKeeperClient.super.removeWatches(path, watcher, watcherType, local, vCb, worker);
+                } else {
+                    zkHandle.removeWatches(path, watcher, watcherType, local, vCb, worker);
+                }
+            }
+        };
+        // execute it immediately
+        proc.run();
+    }
+
+    /**
+     * Get the subtree caches shared by the components using this client, guarded by the returned map.
+     */
+    Map<String, ZkSubTreeCache> getSubTreeCaches() {
+        return subTreeCaches;
+    }
+
     @Override
     public States getState() {
         ZooKeeper zkHandle = zk.get();
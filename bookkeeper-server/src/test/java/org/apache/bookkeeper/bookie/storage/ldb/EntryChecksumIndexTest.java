@@ -0,0 +1,168 @@
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.apache.bookkeeper.bookie.LedgerStorage;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EntryChecksumIndexTest {
+
+    private static final byte[] PASSWORD = "password".getBytes();
+
+    private File baseDir;
+    private ServerConfiguration conf;
+    private StatsLogger statsLogger;
+    private OpStatsLogger verifyStats;
+    private Counter otherDigestEntries;
+
+    @Before
+    public void setUp() throws IOException {
+        baseDir = Files.createTempDirectory("checksums").toFile();
+        conf = new ServerConfiguration();
+        verifyStats = mock(OpStatsLogger.class);
+        otherDigestEntries = mock(Counter.class);
+        statsLogger = mock(StatsLogger.class);
+        when(statsLogger.getOpStatsLogger(eq("verify-entry-checksum"))).thenReturn(verifyStats);
+        when(statsLogger.getCounter(eq("checksum-skipped-entries"))).thenReturn(mock(Counter.class));
+        when(statsLogger.getCounter(eq("checksum-other-digest-entries"))).thenReturn(otherDigestEntries);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    private EntryChecksumIndex newIndex(LongPredicate ledgerExists) throws IOException {
+        return new EntryChecksumIndex(conf, KeyValueStorageRocksDB.factory, baseDir.getAbsolutePath(),
+                statsLogger, 1, 100, ledgerExists);
+    }
+
+    private static ByteBuf newEntry(DigestType digestType, long ledgerId, long entryId) throws Exception {
+        DigestManager digestManager = DigestManager.instantiate(ledgerId, PASSWORD, digestType,
+                ByteBufAllocator.DEFAULT, false);
+        ByteBufList packet = (ByteBufList) digestManager.computeDigestAndPackageForSending(entryId, entryId - 1,
+                entryId + 1, Unpooled.wrappedBuffer(("entry-" + entryId).getBytes()), PASSWORD, 0);
+        try {
+            return ByteBufList.coalesce(packet);
+        } finally {
+            packet.release();
+        }
+    }
+
+    private long getChecksum(long ledgerId, long entryId) throws IOException {
+        // closing the index waits for the verifications and flushes them
+        try (EntryChecksumIndex index = newIndex(ledgerId1 -> true)) {
+            return index.getChecksum(ledgerId, entryId);
+        }
+    }
+
+    @Test
+    public void testIndexCrc32cEntries() throws Exception {
+        ByteBuf entry = newEntry(DigestType.CRC32C, 1L, 0L);
+        long expectedChecksum = DigestManager.verifyCrc32cDigest(entry);
+        Assert.assertNotEquals(DigestManager.NO_CRC32C_DIGEST, expectedChecksum);
+
+        try (EntryChecksumIndex index = newIndex(ledgerId -> true)) {
+            index.verifyAsync(1L, 0L, entry);
+        }
+        entry.release();
+
+        Assert.assertEquals(expectedChecksum, getChecksum(1L, 0L));
+        Assert.assertEquals(LedgerStorage.NO_ENTRY_CHECKSUM, getChecksum(1L, 1L));
+    }
+
+    @Test
+    public void testSkipEntriesOfOtherDigestTypes() throws Exception {
+        ByteBuf macEntry = newEntry(DigestType.HMAC, 1L, 0L);
+        ByteBuf crc32Entry = newEntry(DigestType.CRC32, 2L, 0L);
+
+        try (EntryChecksumIndex index = newIndex(ledgerId -> true)) {
+            index.verifyAsync(1L, 0L, macEntry);
+            index.verifyAsync(2L, 0L, crc32Entry);
+        }
+        macEntry.release();
+        crc32Entry.release();
+
+        verify(otherDigestEntries, times(2)).inc();
+        verify(verifyStats, never()).registerFailedEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        Assert.assertEquals(LedgerStorage.NO_ENTRY_CHECKSUM, getChecksum(1L, 0L));
+        Assert.assertEquals(LedgerStorage.NO_ENTRY_CHECKSUM, getChecksum(2L, 0L));
+    }
+
+    @Test
+    public void testIndexMismatchOfCrc32cLedgers() throws Exception {
+        ByteBuf entry0 = newEntry(DigestType.CRC32C, 1L, 0L);
+        ByteBuf entry1 = newEntry(DigestType.CRC32C, 1L, 1L);
+        // corrupt the payload of the second entry
+        int lastIndex = entry1.writerIndex() - 1;
+        entry1.setByte(lastIndex, entry1.getByte(lastIndex) ^ 0xff);
+
+        try (EntryChecksumIndex index = newIndex(ledgerId -> true)) {
+            index.verifyAsync(1L, 0L, entry0);
+            index.verifyAsync(1L, 1L, entry1);
+        }
+        entry0.release();
+        entry1.release();
+
+        verify(otherDigestEntries, never()).inc();
+        verify(verifyStats).registerFailedEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        Assert.assertEquals(LedgerStorage.MISMATCHED_ENTRY_CHECKSUM, getChecksum(1L, 1L));
+    }
+
+    @Test
+    public void testDropDigestsOfDeletedLedgers() throws Exception {
+        ByteBuf entry = newEntry(DigestType.CRC32C, 1L, 0L);
+
+        // the ledger is deleted, and removed from the indexes, before its entry is verified
+        EntryChecksumIndex index = newIndex(ledgerId -> ledgerId != 1L);
+        index.delete(1L);
+        index.removeDeletedLedgers();
+        index.verifyAsync(1L, 0L, entry);
+        index.close();
+        entry.release();
+
+        Assert.assertEquals(LedgerStorage.NO_ENTRY_CHECKSUM, getChecksum(1L, 0L));
+    }
+
+    @Test
+    public void testRemoveDeletedLedgers() throws Exception {
+        ByteBuf entry = newEntry(DigestType.CRC32C, 1L, 0L);
+        try (EntryChecksumIndex index = newIndex(ledgerId -> true)) {
+            index.verifyAsync(1L, 0L, entry);
+        }
+        entry.release();
+        Assert.assertNotEquals(LedgerStorage.NO_ENTRY_CHECKSUM, getChecksum(1L, 0L));
+
+        try (EntryChecksumIndex index = newIndex(ledgerId -> ledgerId != 1L)) {
+            index.delete(1L);
+            index.removeDeletedLedgers();
+        }
+        Assert.assertEquals(LedgerStorage.NO_ENTRY_CHECKSUM, getChecksum(1L, 0L));
+    }
+}
@@ -0,0 +1,137 @@
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LedgerEntryFilterTest {
+
+    private static final int RANGE_BITS = 4;
+
+    private static LedgerMetadataIndex ledgerIndex(Long... ledgerIds) throws IOException {
+        LedgerMetadataIndex ledgerIndex = mock(LedgerMetadataIndex.class);
+        when(ledgerIndex.getActiveLedgersInRange(0, Long.MAX_VALUE)).thenReturn(Arrays.asList(ledgerIds));
+        return ledgerIndex;
+    }
+
+    @Test
+    public void testNotReadyBeforeFirstBuild() {
+        LedgerEntryFilter filter = new LedgerEntryFilter(1024, RANGE_BITS);
+        Assert.assertFalse(filter.isReady());
+        // the entries flushed before the first build are not recorded, everything might be present
+        filter.add(1L, 0L);
+        Assert.assertTrue(filter.mightContain(2L, 0L));
+        Assert.assertFalse(filter.isSaturated());
+    }
+
+    @Test
+    public void testRebuildFromIndexes() throws Exception {
+        LedgerMetadataIndex ledgerIndex = ledgerIndex(1L, 2L);
+        EntryLocationIndex entryLocationIndex = mock(EntryLocationIndex.class);
+        when(entryLocationIndex.getLastEntryInLedger(1L)).thenReturn(100L);
+        when(entryLocationIndex.getLastEntryInLedger(2L)).thenThrow(new Bookie.NoEntryException(2L, -1L));
+
+        LedgerEntryFilter filter = new LedgerEntryFilter(1024, RANGE_BITS);
+        filter.rebuild(ledgerIndex, entryLocationIndex);
+        Assert.assertTrue(filter.isReady());
+
+        for (long entryId = 0; entryId <= 100; entryId++) {
+            Assert.assertTrue(filter.mightContain(1L, entryId));
+        }
+
+        // the ledgers and ranges not in the indexes are filtered out, but for the false positives
+        int falsePositives = 0;
+        for (long ledgerId = 1000; ledgerId < 2000; ledgerId++) {
+            if (filter.mightContain(ledgerId, 0L)) {
+                falsePositives++;
+            }
+        }
+        for (long rangeId = 100; rangeId < 1100; rangeId++) {
+            if (filter.mightContain(1L, rangeId << RANGE_BITS)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("Too many false positives: " + falsePositives, falsePositives < 100);
+
+        // the entries flushed after the build are recorded
+        filter.add(2L, 5L);
+        Assert.assertTrue(filter.mightContain(2L, 5L));
+    }
+
+    @Test
+    public void testEntriesAddedDuringRebuild() throws Exception {
+        LedgerEntryFilter filter = new LedgerEntryFilter(1024, RANGE_BITS);
+        LedgerMetadataIndex ledgerIndex = mock(LedgerMetadataIndex.class);
+        // a flush of the write cache happens while the ledgers are scanned
+        when(ledgerIndex.getActiveLedgersInRange(0, Long.MAX_VALUE)).thenAnswer(invocation -> {
+            filter.add(3L, 7L);
+            return Collections.singletonList(1L);
+        });
+        EntryLocationIndex entryLocationIndex = mock(EntryLocationIndex.class);
+        when(entryLocationIndex.getLastEntryInLedger(anyLong())).thenReturn(0L);
+
+        filter.rebuild(ledgerIndex, entryLocationIndex);
+        Assert.assertTrue(filter.mightContain(1L, 0L));
+        Assert.assertTrue(filter.mightContain(3L, 7L));
+    }
+
+    @Test
+    public void testFailedRebuildKeepsPreviousFilter() throws Exception {
+        LedgerEntryFilter filter = new LedgerEntryFilter(1024, RANGE_BITS);
+        EntryLocationIndex entryLocationIndex = mock(EntryLocationIndex.class);
+        when(entryLocationIndex.getLastEntryInLedger(1L)).thenReturn(0L);
+        filter.rebuild(ledgerIndex(1L), entryLocationIndex);
+
+        when(entryLocationIndex.getLastEntryInLedger(2L)).thenThrow(new IOException("failed"));
+        try {
+            filter.rebuild(ledgerIndex(1L, 2L), entryLocationIndex);
+            Assert.fail("The rebuild should have failed");
+        } catch (IOException e) {
+            // expected
+        }
+        Assert.assertTrue(filter.isReady());
+        Assert.assertTrue(filter.mightContain(1L, 0L));
+
+        // another rebuild can run after the failure
+        doReturn(0L).when(entryLocationIndex).getLastEntryInLedger(2L);
+        filter.rebuild(ledgerIndex(1L, 2L), entryLocationIndex);
+        Assert.assertTrue(filter.mightContain(2L, 0L));
+    }
+
+    @Test
+    public void testRebuildTriggers() throws Exception {
+        LedgerEntryFilter filter = new LedgerEntryFilter(1024, RANGE_BITS);
+        // no rebuild is requested before the first build
+        Assert.assertFalse(filter.ledgerDeleted());
+
+        EntryLocationIndex entryLocationIndex = mock(EntryLocationIndex.class);
+        when(entryLocationIndex.getLastEntryInLedger(anyLong())).thenReturn(0L);
+        Long[] ledgerIds = new Long[100];
+        for (int i = 0; i < ledgerIds.length; i++) {
+            ledgerIds[i] = (long) i;
+        }
+        filter.rebuild(ledgerIndex(ledgerIds), entryLocationIndex);
+
+        // a rebuild is requested once more than a quarter of the keys belong to deleted ledgers
+        int deletions = 1;
+        while (!filter.ledgerDeleted()) {
+            deletions++;
+        }
+        Assert.assertTrue(deletions > 20 && deletions <= 26);
+
+        // the filter is saturated beyond its expected keys
+        Assert.assertFalse(filter.isSaturated());
+        for (long ledgerId = 1000; ledgerId < 3000; ledgerId++) {
+            filter.add(ledgerId, 0L);
+        }
+        Assert.assertTrue(filter.isSaturated());
+    }
+}
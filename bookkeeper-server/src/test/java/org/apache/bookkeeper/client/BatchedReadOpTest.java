@@ -0,0 +1,123 @@
+package org.apache.bookkeeper.client;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchedReadOpTest {
+
+    private static final BookieId BOOKIE = BookieId.parse("bookie1:3181");
+
+    private DigestManager digestManager;
+    private LedgerHandle lh;
+    private ClientContext clientCtx;
+    private BookieClient bookieClient;
+    private OpStatsLogger digestVerifyLogger;
+    private Counter digestMismatches;
+
+    @Before
+    public void setUp() throws Exception {
+        digestManager = DigestManager.instantiate(0L, new byte[0], DigestType.CRC32C,
+                UnpooledByteBufAllocator.DEFAULT, false);
+        LedgerMetadata metadata = mock(LedgerMetadata.class);
+        when(metadata.getEnsembleSize()).thenReturn(1);
+        when(metadata.getWriteQuorumSize()).thenReturn(1);
+        when(metadata.getAckQuorumSize()).thenReturn(1);
+        lh = mock(LedgerHandle.class);
+        when(lh.getLedgerMetadata()).thenReturn(metadata);
+        DistributionSchedule.WriteSet writeSet = mock(DistributionSchedule.WriteSet.class);
+        when(lh.getWriteSetForReadOperation(anyLong())).thenReturn(writeSet);
+        Field macManager = LedgerHandle.class.getDeclaredField("macManager");
+        macManager.setAccessible(true);
+        macManager.set(lh, digestManager);
+
+        BookKeeperClientStats clientStats = mock(BookKeeperClientStats.class);
+        digestVerifyLogger = mock(OpStatsLogger.class);
+        digestMismatches = mock(Counter.class);
+        when(clientStats.getReadOpDigestVerifyLogger()).thenReturn(digestVerifyLogger);
+        when(clientStats.getReadOpDmCounter()).thenReturn(digestMismatches);
+        bookieClient = mock(BookieClient.class);
+        clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.defaultValues());
+        when(clientCtx.getClientStats()).thenReturn(clientStats);
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        EnsemblePlacementPolicy placementPolicy = mock(EnsemblePlacementPolicy.class);
+        when(placementPolicy.reorderReadSequence(any(), any(), any())).thenReturn(writeSet);
+        when(clientCtx.getPlacementPolicy()).thenReturn(placementPolicy);
+    }
+
+    private ByteBuf packageEntry(long entryId, String data) {
+        ByteBuf payload = Unpooled.wrappedBuffer(data.getBytes(StandardCharsets.UTF_8));
+        ByteBufList packaged = (ByteBufList) digestManager.computeDigestAndPackageForSending(entryId, entryId - 1,
+                payload.readableBytes(), payload, null, 0);
+        ByteBuf entry = ByteBufList.coalesce(packaged);
+        packaged.release();
+        return entry;
+    }
+
+    private BatchedReadOp.BatchedLedgerEntryRequest newRequest(BatchedReadOp op) {
+        List<BookieId> ensemble = Collections.singletonList(BOOKIE);
+        return op.new SequenceReadRequest(ensemble, 0L, 0L, 2, 1024L);
+    }
+
+    @Test
+    public void testDigestVerificationRecorded() {
+        BatchedReadOp op = new BatchedReadOp(lh, clientCtx, 0L, 2, 1024L, false);
+        BatchedReadOp.BatchedLedgerEntryRequest request = newRequest(op);
+        ByteBufList entries = ByteBufList.get(packageEntry(0L, "entry-0"), packageEntry(1L, "entry-1"));
+
+        Assert.assertTrue(request.complete(0, BOOKIE, entries));
+        Assert.assertEquals(2, request.entries.size());
+        Assert.assertEquals("entry-1",
+                new String(request.entries.get(1).getEntryBytes(), StandardCharsets.UTF_8));
+        // a single event for the whole batch
+        verify(digestVerifyLogger).registerSuccessfulEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        verify(digestVerifyLogger, never()).registerFailedEvent(anyLong(), any(TimeUnit.class));
+        verify(digestMismatches, never()).inc();
+        entries.release();
+    }
+
+    @Test
+    public void testDigestMismatchRecorded() {
+        BatchedReadOp op = new BatchedReadOp(lh, clientCtx, 0L, 2, 1024L, false);
+        BatchedReadOp.BatchedLedgerEntryRequest request = newRequest(op);
+        ByteBuf corrupted = packageEntry(1L, "entry-1");
+        int last = corrupted.writerIndex() - 1;
+        corrupted.setByte(last, corrupted.getByte(last) ^ 0xff);
+        ByteBufList entries = ByteBufList.get(packageEntry(0L, "entry-0"), corrupted);
+
+        Assert.assertFalse(request.complete(0, BOOKIE, entries));
+        verify(digestVerifyLogger).registerFailedEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        verify(digestVerifyLogger, never()).registerSuccessfulEvent(anyLong(), any(TimeUnit.class));
+        verify(digestMismatches).inc();
+        // the entries are read again
+        verify(bookieClient).batchReadEntries(eq(BOOKIE), eq(0L), eq(0L), eq(2), eq(1024L), eq(op), any(),
+                anyInt());
+        entries.release();
+    }
+}
@@ -0,0 +1,125 @@
+package org.apache.bookkeeper.client;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerMetadataSerDe;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BookKeeperAdminTest {
+
+    private LedgerManager ledgerManager;
+    private BookKeeperAdmin admin;
+    // the metadata stored for each ledger
+    private final Map<Long, Versioned<LedgerMetadata>> ledgers = new ConcurrentHashMap<>();
+    private final List<Long> conflicts = new ArrayList<>();
+
+    private static LedgerMetadata metadata(long ledgerId, int formatVersion) {
+        return LedgerMetadataBuilder.create()
+                .withId(ledgerId)
+                .withMetadataFormatVersion(formatVersion)
+                .withEnsembleSize(1).withWriteQuorumSize(1).withAckQuorumSize(1)
+                .newEnsembleEntry(0L, Arrays.asList(BookieId.parse("bookie:3181")))
+                .withCToken(ledgerId * 10)
+                .build();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.getLedgerRanges(anyLong())).thenAnswer(invocation -> {
+            LedgerManager.LedgerRangeIterator iterator = mock(LedgerManager.LedgerRangeIterator.class);
+            when(iterator.hasNext()).thenReturn(true, false);
+            when(iterator.next()).thenReturn(new LedgerManager.LedgerRange(new TreeSet<>(ledgers.keySet())));
+            return iterator;
+        });
+        when(ledgerManager.readLedgerMetadata(anyLong())).thenAnswer(invocation -> {
+            Versioned<LedgerMetadata> metadata = ledgers.get(invocation.<Long>getArgument(0));
+            return metadata == null
+                    ? FutureUtils.exception(new BKException.BKNoSuchLedgerExistsOnMetadataServerException())
+                    : CompletableFuture.completedFuture(metadata);
+        });
+        when(ledgerManager.writeLedgerMetadata(anyLong(), any(), any())).thenAnswer(invocation -> {
+            long ledgerId = invocation.getArgument(0);
+            Versioned<LedgerMetadata> current = ledgers.get(ledgerId);
+            if (current == null) {
+                return FutureUtils.exception(new BKException.BKNoSuchLedgerExistsOnMetadataServerException());
+            }
+            if (conflicts.remove(Long.valueOf(ledgerId))) {
+                // the metadata is modified concurrently
+                ledgers.put(ledgerId, new Versioned<>(current.getValue(),
+                        new LongVersion(((LongVersion) current.getVersion()).getLongVersion() + 1)));
+                return FutureUtils.exception(new BKException.BKMetadataVersionException());
+            }
+            if (!current.getVersion().equals(invocation.getArgument(2))) {
+                return FutureUtils.exception(new BKException.BKMetadataVersionException());
+            }
+            Versioned<LedgerMetadata> written = new Versioned<>(invocation.getArgument(1),
+                    new LongVersion(((LongVersion) current.getVersion()).getLongVersion() + 1));
+            ledgers.put(ledgerId, written);
+            return CompletableFuture.completedFuture(written);
+        });
+        BookKeeper bkc = mock(BookKeeper.class);
+        when(bkc.getLedgerManager()).thenReturn(ledgerManager);
+        admin = new BookKeeperAdmin(bkc);
+    }
+
+    @Test
+    public void testMigrateLedgerMetadataFormat() throws Exception {
+        ledgers.put(1L, new Versioned<>(metadata(1L, LedgerMetadataSerDe.METADATA_FORMAT_VERSION_3),
+                new LongVersion(0)));
+        ledgers.put(2L, new Versioned<>(metadata(2L, LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4),
+                new LongVersion(0)));
+        ledgers.put(3L, new Versioned<>(metadata(3L, LedgerMetadataSerDe.METADATA_FORMAT_VERSION_3),
+                new LongVersion(0)));
+        // the metadata of ledger 3 is modified concurrently with its first migration
+        conflicts.add(3L);
+
+        Assert.assertEquals(2L, admin.migrateLedgerMetadataFormat(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4));
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            LedgerMetadata migrated = ledgers.get(ledgerId).getValue();
+            Assert.assertEquals(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4, migrated.getMetadataFormatVersion());
+            // nothing but the format version changed
+            Assert.assertEquals(ledgerId * 10, migrated.getCToken());
+            Assert.assertEquals(metadata(ledgerId, LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4), migrated);
+        }
+        verify(ledgerManager, never()).writeLedgerMetadata(eq(2L), any(), any());
+    }
+
+    @Test
+    public void testRejectLossyMigration() throws Exception {
+        ledgers.put(1L, new Versioned<>(metadata(1L, LedgerMetadataSerDe.METADATA_FORMAT_VERSION_3),
+                new LongVersion(0)));
+        for (int version : new int[] {LedgerMetadataSerDe.METADATA_FORMAT_VERSION_1,
+                LedgerMetadataSerDe.METADATA_FORMAT_VERSION_2,
+                LedgerMetadataSerDe.MAXIMUM_METADATA_FORMAT_VERSION + 1}) {
+            try {
+                admin.migrateLedgerMetadataFormat(version);
+                Assert.fail("The migration to format version " + version + " should have been rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        verify(ledgerManager, never()).writeLedgerMetadata(anyLong(), any(), any());
+    }
+}
@@ -0,0 +1,110 @@
+package org.apache.bookkeeper.client;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.bookkeeper.client.BookieInfoReader.BookieInfo;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BookieInfoReaderTest {
+
+    private static final BookieId BOOKIE1 = BookieId.parse("bookie1:3181");
+    private static final BookieId BOOKIE2 = BookieId.parse("bookie2:3181");
+    private static final BookieId BOOKIE3 = BookieId.parse("bookie3:3181");
+
+    private static BookieInfoReader newReader(double factor, double smoothing) {
+        ClientConfiguration conf = new ClientConfiguration()
+                .setLoadWeightBasedPlacementEnabled(true)
+                .setLoadWeightBasedPlacementFactor(factor)
+                .setLoadWeightSmoothingFactor(smoothing);
+        return new BookieInfoReader(null, conf, null);
+    }
+
+    private static BookieInfo load(long freeDiskSpace, double addRate, double readRate, int journalQueueLength) {
+        return new BookieInfo(2 * freeDiskSpace, freeDiskSpace, journalQueueLength, addRate, readRate, 0.5);
+    }
+
+    private static Map<BookieId, BookieInfo> infos(BookieInfo info1, BookieInfo info2) {
+        Map<BookieId, BookieInfo> infos = new HashMap<>();
+        infos.put(BOOKIE1, info1);
+        infos.put(BOOKIE2, info2);
+        return infos;
+    }
+
+    @Test
+    public void testAverageLoadKeepsTheFreeDiskSpace() {
+        BookieInfoReader reader = newReader(1.0, 1.0);
+        Map<BookieId, BookieInfo> weighted = reader.applyLoadWeights(
+                infos(load(1000L, 10.0, 5.0, 2), load(2000L, 10.0, 5.0, 2)));
+        Assert.assertEquals(1000L, weighted.get(BOOKIE1).getWeight());
+        Assert.assertEquals(2000L, weighted.get(BOOKIE2).getWeight());
+        Assert.assertEquals(1000L, weighted.get(BOOKIE1).getFreeDiskSpace());
+    }
+
+    @Test
+    public void testLoadedBookiesWeighLess() {
+        BookieInfoReader reader = newReader(1.0, 1.0);
+        // only the add rate differs, the bookies are at half and 1.5 times the average load
+        Map<BookieId, BookieInfo> weighted = reader.applyLoadWeights(
+                infos(load(1000L, 10.0, 0.0, 0), load(1000L, 30.0, 0.0, 0)));
+        Assert.assertEquals(1333L, weighted.get(BOOKIE1).getWeight());
+        Assert.assertEquals(800L, weighted.get(BOOKIE2).getWeight());
+
+        // the terms are normalized separately then averaged
+        weighted = newReader(1.0, 1.0).applyLoadWeights(
+                infos(load(1000L, 10.0, 100.0, 0), load(1000L, 30.0, 100.0, 0)));
+        Assert.assertEquals(1142L, weighted.get(BOOKIE1).getWeight());
+        Assert.assertEquals(888L, weighted.get(BOOKIE2).getWeight());
+    }
+
+    @Test
+    public void testLoadFactor() {
+        // without factor, the load is ignored
+        Map<BookieId, BookieInfo> weighted = newReader(0.0, 1.0).applyLoadWeights(
+                infos(load(1000L, 10.0, 0.0, 0), load(1000L, 30.0, 0.0, 0)));
+        Assert.assertEquals(1000L, weighted.get(BOOKIE1).getWeight());
+        Assert.assertEquals(1000L, weighted.get(BOOKIE2).getWeight());
+
+        weighted = newReader(3.0, 1.0).applyLoadWeights(
+                infos(load(1000L, 10.0, 0.0, 0), load(1000L, 30.0, 0.0, 0)));
+        Assert.assertEquals(1600L, weighted.get(BOOKIE1).getWeight());
+        Assert.assertEquals(727L, weighted.get(BOOKIE2).getWeight());
+    }
+
+    @Test
+    public void testBookiesWithoutLoad() {
+        BookieInfoReader reader = newReader(1.0, 1.0);
+        Map<BookieId, BookieInfo> infos = infos(load(1000L, 10.0, 0.0, 0), load(1000L, 30.0, 0.0, 0));
+        infos.put(BOOKIE3, new BookieInfo(2000L, 1000L));
+        Map<BookieId, BookieInfo> weighted = reader.applyLoadWeights(infos);
+        // the bookie not reporting its load keeps its free disk space, and isn't part of the average
+        Assert.assertEquals(1000L, weighted.get(BOOKIE3).getWeight());
+        Assert.assertEquals(1333L, weighted.get(BOOKIE1).getWeight());
+        Assert.assertEquals(800L, weighted.get(BOOKIE2).getWeight());
+
+        // no load at all
+        infos = infos(load(1000L, 0.0, 0.0, 0), new BookieInfo(2000L, 1000L));
+        Assert.assertSame(infos, reader.applyLoadWeights(infos));
+    }
+
+    @Test
+    public void testLoadSmoothing() {
+        BookieInfoReader reader = newReader(1.0, 0.5);
+        reader.applyLoadWeights(infos(load(1000L, 10.0, 0.0, 0), load(1000L, 30.0, 0.0, 0)));
+        // the add rates are smoothed to 20 and 30
+        Map<BookieId, BookieInfo> weighted = reader.applyLoadWeights(
+                infos(load(1000L, 30.0, 0.0, 0), load(1000L, 30.0, 0.0, 0)));
+        Assert.assertEquals(1111L, weighted.get(BOOKIE1).getWeight());
+        Assert.assertEquals(909L, weighted.get(BOOKIE2).getWeight());
+
+        // the load of a bookie which left is forgotten
+        Map<BookieId, BookieInfo> infos = new HashMap<>();
+        infos.put(BOOKIE2, load(1000L, 30.0, 0.0, 0));
+        reader.applyLoadWeights(infos);
+        weighted = reader.applyLoadWeights(infos(load(1000L, 30.0, 0.0, 0), load(1000L, 30.0, 0.0, 0)));
+        Assert.assertEquals(1000L, weighted.get(BOOKIE1).getWeight());
+        Assert.assertEquals(1000L, weighted.get(BOOKIE2).getWeight());
+    }
+}
@@ -0,0 +1,220 @@
+package org.apache.bookkeeper.client;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.EnsemblePlacementPolicy.PlacementPolicyAdherence;
+import org.apache.bookkeeper.client.EnsemblePlacementPolicy.PlacementResult;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerIdGenerator;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class EnsemblePoolTest {
+
+    private static final BookieId BOOKIE1 = BookieId.parse("bookie1:3181");
+    private static final BookieId BOOKIE2 = BookieId.parse("bookie2:3181");
+    private static final BookieId BOOKIE3 = BookieId.parse("bookie3:3181");
+
+    private BookieWatcherImpl bookieWatcher;
+    private EnsemblePlacementPolicy placementPolicy;
+    private LedgerIdGenerator ledgerIdGenerator;
+    private ExecutorService executor;
+    // the refills scheduled on the executor, run by the tests
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final AtomicInteger computedEnsembles = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        bookieWatcher = mock(BookieWatcherImpl.class);
+        when(bookieWatcher.isBookieAvailableForNewEnsemble(any())).thenReturn(true);
+        when(bookieWatcher.getQuarantinedBookies()).thenReturn(Collections.emptySet());
+        placementPolicy = mock(EnsemblePlacementPolicy.class);
+        when(placementPolicy.newEnsemble(anyInt(), anyInt(), anyInt(), anyMap(), anySet())).thenAnswer(invocation -> {
+            computedEnsembles.incrementAndGet();
+            List<BookieId> ensemble = Arrays.asList(BOOKIE1, BOOKIE2, BOOKIE3)
+                    .subList(0, invocation.<Integer>getArgument(0));
+            return PlacementResult.of(ensemble, PlacementPolicyAdherence.MEETS_STRICT);
+        });
+        when(placementPolicy.isEnsembleAdheringToPlacementPolicy(any(), anyInt(), anyInt()))
+                .thenReturn(PlacementPolicyAdherence.MEETS_STRICT);
+        ledgerIdGenerator = mock(LedgerIdGenerator.class);
+        executor = mock(ExecutorService.class);
+        doAnswer(invocation -> scheduled.add(invocation.getArgument(0))).when(executor).execute(any());
+    }
+
+    private EnsemblePool newPool(int poolSize, int maxShapes, int numLedgerIds) {
+        ClientConfiguration conf = new ClientConfiguration()
+                .setEnsemblePoolSize(poolSize)
+                .setEnsemblePoolMaxShapes(maxShapes)
+                .setEnsemblePoolLedgerIds(numLedgerIds);
+        return new EnsemblePool(conf, bookieWatcher, placementPolicy, ledgerIdGenerator, executor,
+                NullStatsLogger.INSTANCE);
+    }
+
+    private void runScheduled() {
+        List<Runnable> tasks = new ArrayList<>(scheduled);
+        scheduled.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    private Runnable bookiesChangedListener() {
+        ArgumentCaptor<Runnable> listener = ArgumentCaptor.forClass(Runnable.class);
+        verify(bookieWatcher).registerBookiesChangedListener(listener.capture());
+        return listener.getValue();
+    }
+
+    @Test
+    public void testPoolLearnsShapes() {
+        EnsemblePool pool = newPool(2, 1, 0);
+        runScheduled();
+        Assert.assertEquals(0, computedEnsembles.get());
+
+        // the first creation of a shape computes its ensemble, the pool is refilled for the next ones
+        Assert.assertNull(pool.pollEnsemble(3, 2, 2));
+        runScheduled();
+        Assert.assertEquals(2, computedEnsembles.get());
+        Assert.assertEquals(Arrays.asList(BOOKIE1, BOOKIE2, BOOKIE3), pool.pollEnsemble(3, 2, 2));
+        Assert.assertNotNull(pool.pollEnsemble(3, 2, 2));
+        Assert.assertNull(pool.pollEnsemble(3, 2, 2));
+        runScheduled();
+        Assert.assertEquals(4, computedEnsembles.get());
+
+        // the pool is already tracking as many shapes as allowed
+        Assert.assertNull(pool.pollEnsemble(2, 2, 2));
+        runScheduled();
+        Assert.assertNull(pool.pollEnsemble(2, 2, 2));
+        Assert.assertEquals(4, computedEnsembles.get());
+        pool.close();
+    }
+
+    @Test
+    public void testDiscardUnusableEnsembles() {
+        EnsemblePool pool = newPool(2, 4, 0);
+        pool.pollEnsemble(2, 2, 2);
+        runScheduled();
+
+        // a bookie of the pooled ensembles is no longer writable
+        when(bookieWatcher.isBookieAvailableForNewEnsemble(BOOKIE2)).thenReturn(false);
+        Assert.assertNull(pool.pollEnsemble(2, 2, 2));
+        runScheduled();
+
+        // the bookies are writable again, but one of them moved to the rack of the other one
+        when(bookieWatcher.isBookieAvailableForNewEnsemble(BOOKIE2)).thenReturn(true);
+        when(placementPolicy.isEnsembleAdheringToPlacementPolicy(any(), anyInt(), anyInt()))
+                .thenReturn(PlacementPolicyAdherence.FAIL);
+        Assert.assertNull(pool.pollEnsemble(2, 2, 2));
+        pool.close();
+    }
+
+    @Test
+    public void testOnlyPoolCompliantEnsembles() throws Exception {
+        when(placementPolicy.newEnsemble(anyInt(), anyInt(), anyInt(), anyMap(), anySet())).thenReturn(
+                PlacementResult.of(Arrays.asList(BOOKIE1, BOOKIE2), PlacementPolicyAdherence.FAIL));
+        EnsemblePool pool = newPool(2, 4, 0);
+        pool.pollEnsemble(2, 2, 2);
+        runScheduled();
+        Assert.assertNull(pool.pollEnsemble(2, 2, 2));
+
+        doThrow(new BKException.BKNotEnoughBookiesException())
+                .when(placementPolicy).newEnsemble(anyInt(), anyInt(), anyInt(), anyMap(), anySet());
+        runScheduled();
+        Assert.assertNull(pool.pollEnsemble(2, 2, 2));
+        pool.close();
+    }
+
+    @Test
+    public void testBookieChangesDropPooledEnsembles() throws Exception {
+        EnsemblePool pool = newPool(2, 4, 0);
+        Runnable bookiesChanged = bookiesChangedListener();
+        pool.pollEnsemble(2, 2, 2);
+        runScheduled();
+
+        bookiesChanged.run();
+        Assert.assertNull(pool.pollEnsemble(2, 2, 2));
+
+        // the bookies change while the refill computes an ensemble, it is not pooled
+        when(placementPolicy.newEnsemble(anyInt(), anyInt(), anyInt(), anyMap(), anySet())).thenAnswer(invocation -> {
+            bookiesChanged.run();
+            return PlacementResult.of(Arrays.asList(BOOKIE1, BOOKIE2), PlacementPolicyAdherence.MEETS_STRICT);
+        });
+        runScheduled();
+        Assert.assertNull(pool.pollEnsemble(2, 2, 2));
+        pool.close();
+    }
+
+    @Test
+    public void testReserveLedgerIds() {
+        List<GenericCallback<Long>> requests = new ArrayList<>();
+        doAnswer(invocation -> requests.add(invocation.getArgument(0))).when(ledgerIdGenerator).generateLedgerId(any());
+        EnsemblePool pool = newPool(2, 4, 2);
+        runScheduled();
+        Assert.assertEquals(2, requests.size());
+
+        // no more ids are requested while the reservations are in flight
+        Assert.assertEquals(-1L, pool.pollLedgerId());
+        runScheduled();
+        Assert.assertEquals(2, requests.size());
+
+        requests.get(0).operationComplete(BKException.Code.OK, 10L);
+        requests.get(1).operationComplete(BKException.Code.ZKException, null);
+        Assert.assertEquals(10L, pool.pollLedgerId());
+        runScheduled();
+        Assert.assertEquals(4, requests.size());
+
+        // the ids reserved after the close are skipped
+        pool.close();
+        requests.get(2).operationComplete(BKException.Code.OK, 11L);
+        Assert.assertEquals(-1L, pool.pollLedgerId());
+        Assert.assertNull(pool.pollEnsemble(2, 2, 2));
+    }
+
+    @Test
+    public void testNoLedgerIdReservedByDefault() {
+        EnsemblePool pool = newPool(2, 4, 0);
+        runScheduled();
+        Assert.assertEquals(-1L, pool.pollLedgerId());
+        runScheduled();
+        verify(ledgerIdGenerator, never()).generateLedgerId(any());
+        pool.close();
+    }
+
+    @Test
+    public void testRejectedRefill() throws Exception {
+        EnsemblePool pool = newPool(2, 4, 0);
+        runScheduled();
+        doThrow(new RejectedExecutionException()).when(executor).execute(any());
+        Assert.assertNull(pool.pollEnsemble(2, 2, 2));
+
+        // a rejected refill doesn't prevent the next ones
+        doAnswer(invocation -> scheduled.add(invocation.getArgument(0))).when(executor).execute(any());
+        Assert.assertNull(pool.pollEnsemble(2, 2, 2));
+        verify(executor, times(3)).execute(any());
+        runScheduled();
+        Assert.assertNotNull(pool.pollEnsemble(2, 2, 2));
+        verify(placementPolicy, times(2)).newEnsemble(eq(2), eq(2), eq(2), anyMap(), anySet());
+        pool.close();
+    }
+}
@@ -0,0 +1,191 @@
+package org.apache.bookkeeper.client;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.NodeBase;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class RecoverySourceSchedulerTest {
+
+    private static final BookieId BOOKIE1 = BookieId.parse("bookie1:3181");
+    private static final BookieId BOOKIE2 = BookieId.parse("bookie2:3181");
+    private static final BookieId BOOKIE3 = BookieId.parse("bookie3:3181");
+
+    private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    private final OrderedExecutor executor = mock(OrderedExecutor.class);
+
+    private RecoverySourceScheduler newScheduler(EnsemblePlacementPolicy placementPolicy, int maxOutstanding,
+                                                 long maxBytesPerSecond,
+                                                 RecoverySourceScheduler.SourceLoads sourceLoads) {
+        return new RecoverySourceScheduler(placementPolicy, maxOutstanding, maxBytesPerSecond,
+                NullStatsLogger.INSTANCE.getOpStatsLogger("admission-wait"), scheduler, executor, sourceLoads);
+    }
+
+    @Test
+    public void testAdmitQueuedReservationsInOrder() throws Exception {
+        RecoverySourceScheduler sourceScheduler = newScheduler(null, 1, 0, new RecoverySourceScheduler.SourceLoads());
+
+        CompletableFuture<RecoverySourceScheduler.Reservation> first =
+                sourceScheduler.reserve(Arrays.asList(BOOKIE1, BOOKIE2));
+        Assert.assertTrue(first.isDone());
+        Assert.assertEquals(2, sourceScheduler.getTotalOutstanding());
+
+        // both wait for bookie1, the second one doesn't overtake the first one
+        CompletableFuture<RecoverySourceScheduler.Reservation> second =
+                sourceScheduler.reserve(Collections.singletonList(BOOKIE1));
+        CompletableFuture<RecoverySourceScheduler.Reservation> third =
+                sourceScheduler.reserve(Collections.singletonList(BOOKIE1));
+        // bookie3 has capacity, it is admitted right away
+        CompletableFuture<RecoverySourceScheduler.Reservation> other =
+                sourceScheduler.reserve(Collections.singletonList(BOOKIE3));
+        Assert.assertFalse(second.isDone());
+        Assert.assertFalse(third.isDone());
+        Assert.assertTrue(other.isDone());
+
+        first.get().close();
+        Assert.assertTrue(second.isDone());
+        Assert.assertFalse(third.isDone());
+        Assert.assertEquals(0, sourceScheduler.getOutstanding(BOOKIE2));
+
+        // releasing twice doesn't release the capacity of another reservation
+        first.get().close();
+        Assert.assertFalse(third.isDone());
+
+        second.get().close();
+        Assert.assertTrue(third.isDone());
+        third.get().close();
+        other.get().close();
+        Assert.assertEquals(0, sourceScheduler.getTotalOutstanding());
+        Assert.assertEquals(0, sourceScheduler.getOutstanding(BOOKIE1));
+    }
+
+    @Test
+    public void testCancelledReservationIsSkipped() throws Exception {
+        RecoverySourceScheduler sourceScheduler = newScheduler(null, 1, 0, new RecoverySourceScheduler.SourceLoads());
+        RecoverySourceScheduler.Reservation first = sourceScheduler.reserve(Collections.singletonList(BOOKIE1)).get();
+        CompletableFuture<RecoverySourceScheduler.Reservation> cancelled =
+                sourceScheduler.reserve(Collections.singletonList(BOOKIE1));
+        CompletableFuture<RecoverySourceScheduler.Reservation> waiting =
+                sourceScheduler.reserve(Collections.singletonList(BOOKIE1));
+        cancelled.cancel(false);
+
+        first.close();
+        Assert.assertTrue(waiting.isDone());
+        Assert.assertEquals(1, sourceScheduler.getOutstanding(BOOKIE1));
+    }
+
+    @Test
+    public void testLimitsSharedBySchedulers() throws Exception {
+        RecoverySourceScheduler.SourceLoads sourceLoads = new RecoverySourceScheduler.SourceLoads();
+        RecoverySourceScheduler scheduler1 = newScheduler(null, 2, 0, sourceLoads);
+        RecoverySourceScheduler scheduler2 = newScheduler(null, 2, 0, sourceLoads);
+
+        RecoverySourceScheduler.Reservation first = scheduler1.reserve(Collections.singletonList(BOOKIE1)).get();
+        RecoverySourceScheduler.Reservation second = scheduler2.reserve(Collections.singletonList(BOOKIE1)).get();
+        CompletableFuture<RecoverySourceScheduler.Reservation> third =
+                scheduler1.reserve(Collections.singletonList(BOOKIE1));
+        Assert.assertFalse(third.isDone());
+        Assert.assertEquals(1, scheduler1.getTotalOutstanding());
+        Assert.assertEquals(2, scheduler2.getOutstanding(BOOKIE1));
+
+        // the capacity released by a scheduler admits the reservations of the other ones
+        second.close();
+        Assert.assertTrue(third.isDone());
+        Assert.assertEquals(2, scheduler1.getTotalOutstanding());
+        first.close();
+        third.get().close();
+    }
+
+    @Test
+    public void testBandwidth() {
+        RecoverySourceScheduler sourceScheduler =
+                newScheduler(null, 0, 1000, new RecoverySourceScheduler.SourceLoads());
+        AtomicInteger ran = new AtomicInteger();
+
+        // the bandwidth is available, the task runs right away
+        sourceScheduler.acquireBandwidth(Arrays.asList(BOOKIE1, BOOKIE2), 2000, 5L, ran::incrementAndGet);
+        Assert.assertEquals(1, ran.get());
+
+        // each bookie gave a second of bandwidth, the next task waits for it
+        sourceScheduler.acquireBandwidth(Collections.singletonList(BOOKIE1), 500, 5L, ran::incrementAndGet);
+        Assert.assertEquals(1, ran.get());
+        ArgumentCaptor<Runnable> scheduled = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(scheduler).schedule(scheduled.capture(), delay.capture(), eq(TimeUnit.NANOSECONDS));
+        Assert.assertTrue(delay.getValue() > TimeUnit.MILLISECONDS.toNanos(500));
+        Assert.assertTrue(delay.getValue() <= TimeUnit.SECONDS.toNanos(1));
+
+        // the delayed task runs on the executor, ordered by ledger
+        scheduled.getValue().run();
+        verify(executor).executeOrdered(eq(5L), any(Runnable.class));
+
+        // bookie3 was not used, its bandwidth is available
+        sourceScheduler.acquireBandwidth(Collections.singletonList(BOOKIE3), 500, 6L, ran::incrementAndGet);
+        Assert.assertEquals(2, ran.get());
+    }
+
+    @Test
+    public void testOrderSources() throws Exception {
+        TopologyAwareEnsemblePlacementPolicy placementPolicy = mock(TopologyAwareEnsemblePlacementPolicy.class);
+        BookieId target = BookieId.parse("target:3181");
+        BookieId remote = BookieId.parse("remote:3181");
+        when(placementPolicy.getNetworkLocation(target)).thenReturn("/region1/rack1");
+        when(placementPolicy.getNetworkLocation(BOOKIE1)).thenReturn("/region1/rack2");
+        when(placementPolicy.getNetworkLocation(BOOKIE2)).thenReturn("/region1/rack1");
+        when(placementPolicy.getNetworkLocation(BOOKIE3)).thenReturn("/region1/rack1");
+        when(placementPolicy.getNetworkLocation(remote)).thenReturn("/region2/rack1");
+        RecoverySourceScheduler sourceScheduler =
+                newScheduler(placementPolicy, 2, 0, new RecoverySourceScheduler.SourceLoads());
+
+        // bookie2 and bookie3 are in the rack of the target, bookie2 is more loaded
+        sourceScheduler.reserve(Collections.singletonList(BOOKIE2)).get();
+        List<BookieId> ordered = sourceScheduler.orderSources(Arrays.asList(remote, BOOKIE1, BOOKIE2, BOOKIE3),
+                Collections.singletonList(target));
+        Assert.assertEquals(Arrays.asList(BOOKIE3, BOOKIE2, BOOKIE1, remote), ordered);
+
+        // the saturated bookies come last
+        sourceScheduler.reserve(Collections.singletonList(BOOKIE3)).get();
+        sourceScheduler.reserve(Collections.singletonList(BOOKIE3)).get();
+        ordered = sourceScheduler.orderSources(Arrays.asList(remote, BOOKIE1, BOOKIE2, BOOKIE3),
+                Collections.singletonList(target));
+        Assert.assertEquals(Arrays.asList(BOOKIE2, BOOKIE1, remote, BOOKIE3), ordered);
+    }
+
+    @Test
+    public void testNetworkDistance() {
+        Assert.assertEquals(0, RecoverySourceScheduler.networkDistance("/region1/rack1", "/region1/rack1"));
+        Assert.assertEquals(1, RecoverySourceScheduler.networkDistance("/region1/rack1", "/region1/rack2"));
+        Assert.assertEquals(2, RecoverySourceScheduler.networkDistance("/region1/rack1", "/region2/rack1"));
+        Assert.assertEquals(1, RecoverySourceScheduler.networkDistance(NodeBase.ROOT, "/rack1"));
+    }
+
+    @Test
+    public void testBandwidthUnlimited() {
+        RecoverySourceScheduler sourceScheduler = newScheduler(null, 0, 0, new RecoverySourceScheduler.SourceLoads());
+        AtomicInteger ran = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            sourceScheduler.acquireBandwidth(Collections.singletonList(BOOKIE1), Long.MAX_VALUE, 1L,
+                    ran::incrementAndGet);
+        }
+        Assert.assertEquals(10, ran.get());
+        verify(scheduler, never()).schedule(any(Runnable.class), anyLong(), any());
+    }
+}
@@ -0,0 +1,203 @@
+package org.apache.bookkeeper.client;
+
+import io.netty.util.HashedWheelTimer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.apache.bookkeeper.client.BookieInfoReader.BookieInfo;
+import org.apache.bookkeeper.client.WeightedRandomSelection.WeightedObject;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieNode;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.net.DNSToSwitchMapping;
+import org.apache.bookkeeper.net.NetworkTopology;
+import org.apache.bookkeeper.net.NetworkTopologyImpl;
+import org.apache.bookkeeper.net.Node;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TopologySnapshotTest {
+
+    private final NetworkTopology topology = new NetworkTopologyImpl();
+    private final Map<BookieId, BookieNode> bookies = new HashMap<>();
+
+    private BookieNode addBookie(String host, String rack) {
+        BookieId bookieId = BookieId.parse(host + ":3181");
+        BookieNode node = new BookieNode(bookieId, rack);
+        topology.add(node);
+        bookies.put(bookieId, node);
+        return node;
+    }
+
+    private BookieNode bookie(String host) {
+        return bookies.get(BookieId.parse(host + ":3181"));
+    }
+
+    private static Set<Node> asSet(Iterable<? extends Node> nodes) {
+        Set<Node> set = new HashSet<>();
+        nodes.forEach(set::add);
+        return set;
+    }
+
+    @Before
+    public void setUp() {
+        addBookie("bookie1", "/region1/rack1");
+        addBookie("bookie2", "/region1/rack1");
+        addBookie("bookie3", "/region1/rack2");
+        addBookie("bookie4", "/region2/rack3");
+        addBookie("bookie5", "/region2/rack3");
+    }
+
+    @Test
+    public void testLeavesMatchTheTopology() {
+        TopologySnapshot snapshot = TopologySnapshot.build(bookies, topology, null, 0);
+        Assert.assertEquals(3, snapshot.getNumOfRacks());
+
+        for (String scope : Arrays.asList("", "/", "/region1", "/region1/rack1", "/region1/rack2", "/region2",
+                "/region2/rack3", "/region3", "/region1/rack1/bookie1:3181", "~/region1",
+                "~/region1/rack1", "~/region1/rack1,/region2/rack3", "~/region3")) {
+            Assert.assertEquals("Leaves of " + scope, asSet(topology.getLeaves(scope)),
+                    asSet(snapshot.getLeaves(scope)));
+        }
+        Assert.assertEquals(Collections.singleton(bookie("bookie1")),
+                asSet(snapshot.getLeaves("/region1/rack1/bookie1:3181")));
+        Assert.assertTrue(snapshot.getLeaves("/region3").isEmpty());
+    }
+
+    @Test
+    public void testSnapshotIsImmutable() {
+        TopologySnapshot snapshot = TopologySnapshot.build(bookies, topology, null, 0);
+
+        // the changes of the topology are not seen by the snapshot built before them
+        BookieNode bookie6 = addBookie("bookie6", "/region1/rack1");
+        topology.remove(bookie("bookie4"));
+        Assert.assertFalse(snapshot.containsBookie(bookie6.getAddr()));
+        Assert.assertEquals(2, snapshot.getLeaves("/region1/rack1").size());
+        Assert.assertEquals(2, snapshot.getLeaves("/region2/rack3").size());
+        Assert.assertEquals(5, snapshot.getKnownBookies().size());
+
+        // the lists returned by the snapshot are copies
+        List<Node> leaves = snapshot.getLeaves("/region1");
+        leaves.clear();
+        snapshot.getKnownBookies().clear();
+        Assert.assertEquals(3, snapshot.getLeaves("/region1").size());
+        Assert.assertEquals(5, snapshot.getKnownBookies().size());
+    }
+
+    @Test
+    public void testFreeLeaves() {
+        Map<BookieNode, WeightedObject> weights = new HashMap<>();
+        weights.put(bookie("bookie1"), new BookieInfo(100L, 0L));
+        weights.put(bookie("bookie2"), new BookieInfo(100L, 50L));
+        weights.put(bookie("bookie4"), new BookieInfo(100L, 0L));
+        weights.put(bookie("bookie5"), new BookieInfo(100L, 0L));
+        // bookie3 has no known weight yet, it is a candidate
+        TopologySnapshot snapshot = TopologySnapshot.build(bookies, topology, weights, 0);
+
+        Assert.assertEquals(Collections.singleton(bookie("bookie2")), asSet(snapshot.getFreeLeaves("/region1/rack1")));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(bookie("bookie2"), bookie("bookie3"))),
+                asSet(snapshot.getFreeLeaves("/region1")));
+        // none of the bookies of the rack has free disk space, they are all candidates
+        Assert.assertEquals(new HashSet<>(Arrays.asList(bookie("bookie4"), bookie("bookie5"))),
+                asSet(snapshot.getFreeLeaves("/region2/rack3")));
+        Assert.assertEquals(Collections.singleton(bookie("bookie3")), asSet(snapshot.getFreeLeaves("~/region1/rack1")));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(bookie("bookie2"), bookie("bookie3"))),
+                asSet(snapshot.getFreeLeaves("")));
+
+        Assert.assertEquals(50L, snapshot.getWeight(bookie("bookie2")).getWeight());
+        Assert.assertEquals(0L, snapshot.getWeight(bookie("bookie3")).getWeight());
+    }
+
+    @Test
+    public void testWeightedSelections() {
+        TopologySnapshot unweighted = TopologySnapshot.build(bookies, topology, null, 3);
+        Assert.assertNull(unweighted.getWeightedSelection("/region1"));
+
+        Map<BookieNode, WeightedObject> weights = new HashMap<>();
+        weights.put(bookie("bookie1"), new BookieInfo(100L, 0L));
+        weights.put(bookie("bookie2"), new BookieInfo(100L, 50L));
+        TopologySnapshot snapshot = TopologySnapshot.build(bookies, topology, weights, 3);
+        Assert.assertNull(snapshot.getWeightedSelection("~/region1"));
+        Assert.assertNull(snapshot.getWeightedSelection("/region3"));
+
+        // the weighted selection of a rack selects among its free list
+        WeightedRandomSelection<BookieNode> selection = snapshot.getWeightedSelection("/region1/rack1");
+        Assert.assertNotNull(selection);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(bookie("bookie2"), selection.getNextRandom());
+        }
+        selection = snapshot.getWeightedSelection("/region2");
+        Set<BookieNode> selected = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            selected.add(selection.getNextRandom());
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList(bookie("bookie4"), bookie("bookie5"))), selected);
+    }
+
+    @Test
+    public void testPlacementUsesPublishedSnapshot() throws Exception {
+        Map<String, String> racks = new HashMap<>();
+        racks.put("127.0.0.1", "/rack1");
+        racks.put("127.0.0.2", "/rack1");
+        racks.put("127.0.0.3", "/rack2");
+        racks.put("127.0.0.4", "/rack2");
+        DNSToSwitchMapping dnsResolver = new DNSToSwitchMapping() {
+            @Override
+            public List<String> resolve(List<String> names) {
+                List<String> resolved = new ArrayList<>(names.size());
+                for (String name : names) {
+                    resolved.add(racks.get(name));
+                }
+                return resolved;
+            }
+
+            @Override
+            public void reloadCachedMappings() {
+            }
+        };
+        HashedWheelTimer timer = new HashedWheelTimer();
+        RackawareEnsemblePlacementPolicy policy = new RackawareEnsemblePlacementPolicy();
+        try {
+            policy.initialize(new ClientConfiguration(), Optional.of(dnsResolver), timer,
+                    SettableFeatureProvider.DISABLE_ALL, NullStatsLogger.INSTANCE,
+                    BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+            Set<BookieId> writableBookies = new HashSet<>();
+            for (String host : racks.keySet()) {
+                writableBookies.add(BookieId.parse(host + ":3181"));
+            }
+            policy.onClusterChanged(writableBookies, Collections.emptySet());
+            TopologySnapshot snapshot = policy.topologySnapshot;
+            Assert.assertEquals(2, snapshot.getNumOfRacks());
+            Assert.assertEquals(4, snapshot.getKnownBookies().size());
+
+            List<BookieId> ensemble = policy.newEnsemble(2, 2, 2, null, new HashSet<>()).getResult();
+            // the bookies of an ensemble are on different racks
+            Assert.assertNotEquals(policy.getNetworkLocation(ensemble.get(0)),
+                    policy.getNetworkLocation(ensemble.get(1)));
+
+            // a membership change publishes a new snapshot, the previous one is unchanged
+            BookieId removed = BookieId.parse("127.0.0.1:3181");
+            writableBookies.remove(removed);
+            policy.onClusterChanged(writableBookies, Collections.emptySet());
+            Assert.assertNotSame(snapshot, policy.topologySnapshot);
+            Assert.assertTrue(snapshot.containsBookie(removed));
+            Assert.assertFalse(policy.topologySnapshot.containsBookie(removed));
+            for (int i = 0; i < 20; i++) {
+                Assert.assertFalse(policy.newEnsemble(3, 3, 3, null, new HashSet<>()).getResult().contains(removed));
+            }
+        } finally {
+            policy.uninitalize();
+            timer.stop();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.apache.bookkeeper.meta;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LedgerMetadataSerDeTest {
+
+    private static final long LEDGER_ID = 1234L;
+    private static final byte[] PASSWORD = "password".getBytes(UTF_8);
+
+    private final LedgerMetadataSerDe serDe = new LedgerMetadataSerDe();
+
+    private static List<BookieId> ensemble(int... bookies) {
+        List<BookieId> ensemble = new ArrayList<>(bookies.length);
+        for (int bookie : bookies) {
+            ensemble.add(BookieId.parse("bookie-" + bookie + ".example.com:3181"));
+        }
+        return ensemble;
+    }
+
+    private static LedgerMetadataBuilder newBuilder(int formatVersion) {
+        return LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withMetadataFormatVersion(formatVersion)
+                .withEnsembleSize(3).withWriteQuorumSize(2).withAckQuorumSize(2)
+                .withPassword(PASSWORD).withDigestType(DigestType.CRC32C)
+                .withCreationTime(123456789L).storingCreationTime(true)
+                .withCToken(42L);
+    }
+
+    private LedgerMetadata roundTrip(LedgerMetadata metadata) throws IOException {
+        byte[] serialized = serDe.serialize(metadata);
+        String header = "BookieMetadataFormatVersion\t" + metadata.getMetadataFormatVersion() + "\n";
+        Assert.assertEquals(header, new String(serialized, 0, header.length(), UTF_8));
+        LedgerMetadata parsed = serDe.parseConfig(serialized, LEDGER_ID, Optional.empty());
+        Assert.assertEquals(metadata, parsed);
+        return parsed;
+    }
+
+    @Test
+    public void testClosedLedgerV4() throws Exception {
+        LedgerMetadata metadata = newBuilder(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4)
+                .newEnsembleEntry(0L, ensemble(1, 2, 3))
+                .withClosedState().withLastEntryId(100L).withLength(10000L)
+                .build();
+        LedgerMetadata parsed = roundTrip(metadata);
+        Assert.assertEquals(LedgerMetadata.State.CLOSED, parsed.getState());
+        Assert.assertEquals(100L, parsed.getLastEntryId());
+        Assert.assertEquals(10000L, parsed.getLength());
+        Assert.assertEquals(42L, parsed.getCToken());
+        Assert.assertEquals(123456789L, parsed.getCtime());
+        Assert.assertArrayEquals(PASSWORD, parsed.getPassword());
+    }
+
+    @Test
+    public void testOpenLedgerV4() throws Exception {
+        LedgerMetadata metadata = newBuilder(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4)
+                .newEnsembleEntry(0L, ensemble(1, 2, 3))
+                .build();
+        Assert.assertEquals(LedgerMetadata.State.OPEN, roundTrip(metadata).getState());
+
+        metadata = newBuilder(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4)
+                .newEnsembleEntry(0L, ensemble(1, 2, 3))
+                .withInRecoveryState()
+                .build();
+        Assert.assertEquals(LedgerMetadata.State.IN_RECOVERY, roundTrip(metadata).getState());
+    }
+
+    @Test
+    public void testCustomMetadataV4() throws Exception {
+        Map<String, byte[]> customMetadata = new HashMap<>();
+        customMetadata.put("application", "test".getBytes(UTF_8));
+        customMetadata.put("empty", new byte[0]);
+        LedgerMetadata metadata = newBuilder(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4)
+                .newEnsembleEntry(0L, ensemble(1, 2, 3))
+                .withCustomMetadata(customMetadata)
+                .build();
+        byte[] serialized = serDe.serialize(metadata);
+        LedgerMetadata parsed = serDe.parseConfig(serialized, LEDGER_ID, Optional.empty());
+
+        // the custom metadata values are arrays, they are compared one by one
+        Assert.assertEquals(customMetadata.keySet(), parsed.getCustomMetadata().keySet());
+        for (Map.Entry<String, byte[]> e : customMetadata.entrySet()) {
+            Assert.assertArrayEquals(e.getValue(), parsed.getCustomMetadata().get(e.getKey()));
+        }
+        Assert.assertEquals(metadata.getAllEnsembles(), parsed.getAllEnsembles());
+        Assert.assertEquals(metadata.getCToken(), parsed.getCToken());
+    }
+
+    @Test
+    public void testMultipleEnsemblesV4() throws Exception {
+        LedgerMetadata metadata = newBuilder(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4)
+                .newEnsembleEntry(0L, ensemble(1, 2, 3))
+                .newEnsembleEntry(10L, ensemble(1, 4, 3))
+                .newEnsembleEntry(1000L, ensemble(5, 4, 3))
+                .newEnsembleEntry(1001L, ensemble(5, 4, 1))
+                .withClosedState().withLastEntryId(2000L).withLength(20000L)
+                .build();
+        LedgerMetadata parsed = roundTrip(metadata);
+        Assert.assertEquals(Arrays.asList(0L, 10L, 1000L, 1001L), new ArrayList<>(parsed.getAllEnsembles().keySet()));
+        Assert.assertEquals(ensemble(5, 4, 1), parsed.getAllEnsembles().get(1001L));
+
+        // each bookie is stored once
+        LedgerMetadata v3 = LedgerMetadataBuilder.from(metadata)
+                .withMetadataFormatVersion(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_3).build();
+        Assert.assertTrue(serDe.serialize(metadata).length < serDe.serialize(v3).length);
+    }
+
+    @Test
+    public void testCompressedV4() throws Exception {
+        LedgerMetadataBuilder builder = newBuilder(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4);
+        for (int i = 0; i < 200; i++) {
+            builder.newEnsembleEntry(i * 100L, ensemble(i, i + 1, i + 2));
+        }
+        LedgerMetadata metadata = builder.withClosedState().withLastEntryId(20000L).withLength(200000L).build();
+        byte[] serialized = serDe.serialize(metadata);
+        LedgerMetadata v3 = LedgerMetadataBuilder.from(metadata)
+                .withMetadataFormatVersion(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_3).build();
+        Assert.assertTrue(serialized.length < serDe.serialize(v3).length / 2);
+        Assert.assertEquals(metadata, roundTrip(metadata));
+    }
+
+    @Test
+    public void testMigrateV3ToV4() throws Exception {
+        LedgerMetadata v3 = newBuilder(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_3)
+                .newEnsembleEntry(0L, ensemble(1, 2, 3))
+                .newEnsembleEntry(10L, ensemble(1, 4, 3))
+                .build();
+        LedgerMetadata parsedV3 = roundTrip(v3);
+        LedgerMetadata v4 = LedgerMetadataBuilder.from(parsedV3)
+                .withMetadataFormatVersion(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4)
+                .withCToken(parsedV3.getCToken()).build();
+        LedgerMetadata parsedV4 = roundTrip(v4);
+        Assert.assertEquals(parsedV3.getAllEnsembles(), parsedV4.getAllEnsembles());
+        Assert.assertEquals(parsedV3.getCtime(), parsedV4.getCtime());
+        Assert.assertEquals(parsedV3.getCToken(), parsedV4.getCToken());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedV4() throws Exception {
+        byte[] header = "BookieMetadataFormatVersion\t4\n".getBytes(UTF_8);
+        serDe.parseConfig(header, LEDGER_ID, Optional.empty());
+    }
+}
@@ -0,0 +1,228 @@
+package org.apache.bookkeeper.meta;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
+import org.apache.bookkeeper.util.StringUtils;
+import org.apache.zookeeper.AsyncCallback.ChildrenCallback;
+import org.apache.zookeeper.AsyncCallback.VoidCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelLedgerRangeIteratorTest {
+
+    private static final String ROOT = "/ledgers";
+
+    private ZooKeeper zk;
+    // the children of each znode
+    private final Map<String, Set<String>> tree = new TreeMap<>();
+    // the znodes whose async listing fails, with the error code
+    private final Map<String, Integer> failures = new ConcurrentHashMap<>();
+    private final List<String> asyncListings = new CopyOnWriteArrayList<>();
+
+    private void addZnode(String path) {
+        int idx = path.lastIndexOf('/');
+        String parent = path.substring(0, idx);
+        tree.computeIfAbsent(path, p -> new HashSet<>());
+        tree.computeIfAbsent(parent, p -> new HashSet<>()).add(path.substring(idx + 1));
+        if (!parent.equals(ROOT)) {
+            addZnode(parent);
+        }
+    }
+
+    private void addLegacyLedger(long ledgerId) {
+        addZnode(ROOT + StringUtils.getShortHierarchicalLedgerPath(ledgerId));
+    }
+
+    private void addLongLedger(long ledgerId) {
+        addZnode(ROOT + StringUtils.getLongHierarchicalLedgerPath(ledgerId));
+    }
+
+    private List<String> children(String path) throws KeeperException {
+        Set<String> children = tree.get(path);
+        if (children == null) {
+            throw new KeeperException.NoNodeException(path);
+        }
+        return new ArrayList<>(children);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        zk = mock(ZooKeeper.class);
+        tree.put(ROOT, new HashSet<>());
+        // the znodes under the root that are not ledger parents
+        for (String znode : Arrays.asList("available", "LAYOUT", "underreplication", "idgen", "INSTANCEID")) {
+            addZnode(ROOT + "/" + znode);
+        }
+
+        doAnswer(invocation -> {
+            invocation.<VoidCallback>getArgument(1).processResult(Code.OK.intValue(), invocation.getArgument(0),
+                    invocation.getArgument(2));
+            return null;
+        }).when(zk).sync(anyString(), any(VoidCallback.class), any());
+        doAnswer(invocation -> {
+            String path = invocation.getArgument(0);
+            asyncListings.add(path);
+            ChildrenCallback cb = invocation.getArgument(2);
+            Integer failure = failures.get(path);
+            if (failure != null) {
+                cb.processResult(failure, path, invocation.getArgument(3), null);
+            } else if (!tree.containsKey(path)) {
+                cb.processResult(Code.NONODE.intValue(), path, invocation.getArgument(3), null);
+            } else {
+                cb.processResult(Code.OK.intValue(), path, invocation.getArgument(3), children(path));
+            }
+            return null;
+        }).when(zk).getChildren(anyString(), eq(false), any(ChildrenCallback.class), any());
+        when(zk.getChildren(anyString(), nullable(Watcher.class)))
+                .thenAnswer(invocation -> children(invocation.getArgument(0)));
+    }
+
+    private static List<Set<Long>> ranges(LedgerRangeIterator iterator) throws IOException {
+        List<Set<Long>> ranges = new ArrayList<>();
+        while (iterator.hasNext()) {
+            ranges.add(iterator.next().getLedgers());
+        }
+        return ranges;
+    }
+
+    private static List<Long> flatten(List<Set<Long>> ranges) {
+        List<Long> ledgers = new ArrayList<>();
+        ranges.forEach(ledgers::addAll);
+        return ledgers;
+    }
+
+    @Test
+    public void testLegacySameRangesAsSequentialScan() throws Exception {
+        for (long ledgerId : new long[] {0L, 1L, 9999L, 10000L, 10001L, 123456789L, 123456790L, 1999999999L}) {
+            addLegacyLedger(ledgerId);
+        }
+        // an empty leaf node
+        addZnode(ROOT + "/00/0005");
+        LegacyHierarchicalLedgerManager lm = new LegacyHierarchicalLedgerManager(new ServerConfiguration(), zk);
+        try {
+            List<Set<Long>> sequential = ranges(lm.getLedgerRanges(0));
+            for (int parallelism : new int[] {2, 3, 16}) {
+                Assert.assertEquals(sequential, ranges(lm.getLedgerRanges(0, parallelism)));
+            }
+            Assert.assertEquals(Arrays.asList(0L, 1L, 9999L, 10000L, 10001L, 123456789L, 123456790L, 1999999999L),
+                    flatten(sequential));
+        } finally {
+            lm.close();
+        }
+    }
+
+    @Test
+    public void testLongSameRangesAsSequentialScan() throws Exception {
+        for (long ledgerId : new long[] {1L, 10000L, 1L << 32, (1L << 32) + 1, Long.MAX_VALUE - 1}) {
+            addLongLedger(ledgerId);
+        }
+        LongHierarchicalLedgerManager lm = new LongHierarchicalLedgerManager(new ServerConfiguration(), zk);
+        try {
+            List<Set<Long>> sequential = ranges(lm.getLedgerRanges(0));
+            Assert.assertEquals(sequential, ranges(lm.getLedgerRanges(0, 4)));
+            Assert.assertEquals(Arrays.asList(1L, 10000L, 1L << 32, (1L << 32) + 1, Long.MAX_VALUE - 1),
+                    flatten(sequential));
+        } finally {
+            lm.close();
+        }
+    }
+
+    @Test
+    public void testListLeavesAhead() throws Exception {
+        for (long ledgerId = 0; ledgerId < 10; ledgerId++) {
+            addLegacyLedger(ledgerId * 10000L);
+        }
+        LegacyHierarchicalLedgerManager lm = new LegacyHierarchicalLedgerManager(new ServerConfiguration(), zk);
+        try {
+            LedgerRangeIterator iterator = lm.getLedgerRanges(0, 3);
+            Assert.assertTrue(asyncListings.isEmpty());
+
+            // the first range is returned while the next leaves are listed
+            Assert.assertTrue(iterator.hasNext());
+            Assert.assertEquals(Collections.singleton(0L), iterator.next().getLedgers());
+            Assert.assertEquals(Arrays.asList("/ledgers/00/0000", "/ledgers/00/0001", "/ledgers/00/0002",
+                    "/ledgers/00/0003"), leafListings());
+
+            Assert.assertTrue(iterator.hasNext());
+            Assert.assertEquals(Collections.singleton(10000L), iterator.next().getLedgers());
+            Assert.assertEquals(5, leafListings().size());
+            Assert.assertEquals(10, ranges(iterator).size() + 2);
+        } finally {
+            lm.close();
+        }
+    }
+
+    private List<String> leafListings() {
+        List<String> leaves = new ArrayList<>();
+        for (String path : asyncListings) {
+            // the intermediate levels are synced and listed too
+            if (path.split("/").length == 4) {
+                leaves.add(path);
+            }
+        }
+        return leaves;
+    }
+
+    @Test
+    public void testLeafRemovedConcurrently() throws Exception {
+        addLegacyLedger(1L);
+        addLegacyLedger(20000L);
+        addLegacyLedger(30000L);
+        // a leaf removed after its parent was listed
+        tree.get("/ledgers/00").add("0001");
+        LegacyHierarchicalLedgerManager lm = new LegacyHierarchicalLedgerManager(new ServerConfiguration(), zk);
+        try {
+            List<Set<Long>> ranges = ranges(lm.getLedgerRanges(0, 2));
+            Assert.assertTrue(asyncListings.contains("/ledgers/00/0001"));
+            Assert.assertEquals(Arrays.asList(Collections.singleton(1L), Collections.singleton(20000L),
+                    Collections.singleton(30000L)), ranges);
+        } finally {
+            lm.close();
+        }
+    }
+
+    @Test
+    public void testListingFailure() throws Exception {
+        addLegacyLedger(1L);
+        addLegacyLedger(20000L);
+        failures.put("/ledgers/00/0002", Code.CONNECTIONLOSS.intValue());
+        LegacyHierarchicalLedgerManager lm = new LegacyHierarchicalLedgerManager(new ServerConfiguration(), zk);
+        try {
+            LedgerRangeIterator iterator = lm.getLedgerRanges(0, 2);
+            Assert.assertTrue(iterator.hasNext());
+            Assert.assertEquals(Collections.singleton(1L), iterator.next().getLedgers());
+            try {
+                iterator.hasNext();
+                Assert.fail("The listing failure should have been reported");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            lm.close();
+        }
+    }
+}
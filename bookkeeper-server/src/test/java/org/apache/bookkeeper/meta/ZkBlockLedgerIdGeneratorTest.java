@@ -0,0 +1,249 @@
+package org.apache.bookkeeper.meta;
+
+import static org.apache.bookkeeper.meta.ZkBlockLedgerIdGenerator.FIRST_BLOCK_ID;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.AsyncCallback.StringCallback;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZkBlockLedgerIdGeneratorTest {
+
+    private static final String LEDGERS_PATH = "/ledgers";
+    private static final String IDGEN_PATH = LEDGERS_PATH + "/" + ZkBlockLedgerIdGenerator.IDGEN_ZNODE;
+
+    private ZooKeeper zk;
+    // the idgen znode, null until created
+    private byte[] data = null;
+    private int version = 0;
+    // the reads not answered yet, when held
+    private boolean holdReads = false;
+    private final List<Runnable> heldReads = new ArrayList<>();
+    private int failReadsRc = Code.OK.intValue();
+    private Runnable beforeSetData = null;
+
+    @Before
+    public void setUp() {
+        zk = mock(ZooKeeper.class);
+        doAnswer(invocation -> {
+            DataCallback cb = invocation.getArgument(2);
+            Runnable read = () -> {
+                if (failReadsRc != Code.OK.intValue()) {
+                    cb.processResult(failReadsRc, IDGEN_PATH, null, null, null);
+                } else if (data == null) {
+                    cb.processResult(Code.NONODE.intValue(), IDGEN_PATH, null, null, null);
+                } else {
+                    Stat stat = new Stat();
+                    stat.setVersion(version);
+                    cb.processResult(Code.OK.intValue(), IDGEN_PATH, null, data.clone(), stat);
+                }
+            };
+            if (holdReads) {
+                heldReads.add(read);
+            } else {
+                read.run();
+            }
+            return null;
+        }).when(zk).getData(eq(IDGEN_PATH), anyBoolean(), any(DataCallback.class), any());
+        doAnswer(invocation -> {
+            StringCallback cb = invocation.getArgument(4);
+            if (data != null) {
+                cb.processResult(Code.NODEEXISTS.intValue(), IDGEN_PATH, null, null);
+            } else {
+                data = invocation.getArgument(1);
+                version = 0;
+                cb.processResult(Code.OK.intValue(), IDGEN_PATH, null, IDGEN_PATH);
+            }
+            return null;
+        }).when(zk).create(eq(IDGEN_PATH), any(byte[].class), any(), any(CreateMode.class),
+                any(StringCallback.class), any());
+        doAnswer(invocation -> {
+            if (beforeSetData != null) {
+                Runnable hook = beforeSetData;
+                beforeSetData = null;
+                hook.run();
+            }
+            StatCallback cb = invocation.getArgument(3);
+            if (data == null || version != invocation.<Integer>getArgument(2)) {
+                cb.processResult(Code.BADVERSION.intValue(), IDGEN_PATH, null, null);
+            } else {
+                data = invocation.getArgument(1);
+                version++;
+                cb.processResult(Code.OK.intValue(), IDGEN_PATH, null, new Stat());
+            }
+            return null;
+        }).when(zk).setData(anyString(), any(byte[].class), anyInt(), any(StatCallback.class), any());
+    }
+
+    private ZkBlockLedgerIdGenerator newGenerator(int blockSize) {
+        return new ZkBlockLedgerIdGenerator(zk, LEDGERS_PATH, Ids.OPEN_ACL_UNSAFE, blockSize);
+    }
+
+    private long nextIdToReserve() {
+        return ByteBuffer.wrap(data).getLong();
+    }
+
+    private void setNextIdToReserve(long nextId) {
+        data = ByteBuffer.allocate(Long.BYTES).putLong(nextId).array();
+        version++;
+    }
+
+    private static long generate(LedgerIdGenerator generator) {
+        List<Long> ids = new ArrayList<>();
+        List<Integer> rcs = new ArrayList<>();
+        generator.generateLedgerId((rc, id) -> {
+            rcs.add(rc);
+            ids.add(id);
+        });
+        Assert.assertEquals(1, rcs.size());
+        Assert.assertEquals(BKException.Code.OK, (int) rcs.get(0));
+        return ids.get(0);
+    }
+
+    @Test
+    public void testReserveBlocks() throws Exception {
+        ZkBlockLedgerIdGenerator generator = newGenerator(10);
+        Assert.assertEquals(FIRST_BLOCK_ID, generate(generator));
+        Assert.assertEquals(FIRST_BLOCK_ID + 10, nextIdToReserve());
+        for (int i = 1; i < 8; i++) {
+            Assert.assertEquals(FIRST_BLOCK_ID + i, generate(generator));
+        }
+        Assert.assertEquals(FIRST_BLOCK_ID + 10, nextIdToReserve());
+
+        // the next block is reserved ahead once 90% of the current one is used
+        Assert.assertEquals(FIRST_BLOCK_ID + 8, generate(generator));
+        Assert.assertEquals(FIRST_BLOCK_ID + 20, nextIdToReserve());
+        for (int i = 9; i < 15; i++) {
+            Assert.assertEquals(FIRST_BLOCK_ID + i, generate(generator));
+        }
+        Assert.assertEquals(FIRST_BLOCK_ID + 20, nextIdToReserve());
+        generator.close();
+    }
+
+    @Test
+    public void testWaitForTheReservation() throws Exception {
+        ZkBlockLedgerIdGenerator generator = newGenerator(10);
+        holdReads = true;
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            generator.generateLedgerId((rc, id) -> ids.add(id));
+        }
+        // a single reservation serves all the waiting generations, in order
+        Assert.assertEquals(1, heldReads.size());
+        Assert.assertTrue(ids.isEmpty());
+        holdReads = false;
+        heldReads.remove(0).run();
+        Assert.assertEquals(3, ids.size());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(FIRST_BLOCK_ID + i, (long) ids.get(i));
+        }
+        Assert.assertTrue(heldReads.isEmpty());
+        generator.close();
+    }
+
+    @Test
+    public void testReservationRace() throws Exception {
+        setNextIdToReserve(FIRST_BLOCK_ID);
+        ZkBlockLedgerIdGenerator generator = newGenerator(10);
+        // another client reserves a block between the read and the update of the znode
+        beforeSetData = () -> setNextIdToReserve(FIRST_BLOCK_ID + 10);
+        Assert.assertEquals(FIRST_BLOCK_ID + 10, generate(generator));
+        Assert.assertEquals(FIRST_BLOCK_ID + 20, nextIdToReserve());
+        generator.close();
+    }
+
+    @Test
+    public void testReservationFailure() throws Exception {
+        ZkBlockLedgerIdGenerator generator = newGenerator(10);
+        failReadsRc = Code.CONNECTIONLOSS.intValue();
+        List<Integer> rcs = new ArrayList<>();
+        generator.generateLedgerId((rc, id) -> rcs.add(rc));
+        generator.generateLedgerId((rc, id) -> rcs.add(rc));
+        Assert.assertEquals(2, rcs.size());
+        Assert.assertEquals(BKException.Code.ZKException, (int) rcs.get(0));
+        Assert.assertEquals(BKException.Code.ZKException, (int) rcs.get(1));
+
+        // the next generation reserves again
+        failReadsRc = Code.OK.intValue();
+        Assert.assertEquals(FIRST_BLOCK_ID, generate(generator));
+        generator.close();
+    }
+
+    @Test
+    public void testReleaseTheLastBlock() throws Exception {
+        ZkBlockLedgerIdGenerator generator = newGenerator(10);
+        for (int i = 0; i < 3; i++) {
+            generate(generator);
+        }
+        generator.close();
+        // the ids not used are handed out again by the next block
+        Assert.assertEquals(FIRST_BLOCK_ID + 3, nextIdToReserve());
+
+        ZkBlockLedgerIdGenerator other = newGenerator(10);
+        Assert.assertEquals(FIRST_BLOCK_ID + 3, generate(other));
+        other.close();
+        Assert.assertEquals(FIRST_BLOCK_ID + 4, nextIdToReserve());
+
+        // the generations after close fail
+        List<Integer> rcs = new ArrayList<>();
+        generator.generateLedgerId((rc, id) -> rcs.add(rc));
+        Assert.assertEquals(BKException.Code.ClientClosedException, (int) rcs.get(0));
+    }
+
+    @Test
+    public void testReleaseThePrefetchedBlock() throws Exception {
+        ZkBlockLedgerIdGenerator generator = newGenerator(10);
+        for (int i = 0; i < 9; i++) {
+            generate(generator);
+        }
+        Assert.assertEquals(FIRST_BLOCK_ID + 20, nextIdToReserve());
+        // both blocks are contiguous, they are given back together
+        generator.close();
+        Assert.assertEquals(FIRST_BLOCK_ID + 9, nextIdToReserve());
+    }
+
+    @Test
+    public void testSkipTheBlocksNotLast() throws Exception {
+        ZkBlockLedgerIdGenerator generator1 = newGenerator(10);
+        ZkBlockLedgerIdGenerator generator2 = newGenerator(10);
+        Assert.assertEquals(FIRST_BLOCK_ID, generate(generator1));
+        Assert.assertEquals(FIRST_BLOCK_ID + 10, generate(generator2));
+
+        // a block was reserved after the block of generator1, its ids are skipped
+        generator1.close();
+        Assert.assertEquals(FIRST_BLOCK_ID + 20, nextIdToReserve());
+        generator2.close();
+        Assert.assertEquals(FIRST_BLOCK_ID + 11, nextIdToReserve());
+    }
+
+    @Test
+    public void testCloseInterrupted() throws Exception {
+        ZkBlockLedgerIdGenerator generator = newGenerator(10);
+        generate(generator);
+        holdReads = true;
+        Thread.currentThread().interrupt();
+        generator.close();
+        // close doesn't wait for the release, and keeps the interrupt
+        Assert.assertTrue(Thread.interrupted());
+        Assert.assertEquals(1, heldReads.size());
+        Assert.assertEquals(FIRST_BLOCK_ID + 10, nextIdToReserve());
+    }
+}
@@ -0,0 +1,258 @@
+package org.apache.bookkeeper.meta;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.MultiCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.AsyncCallback.VoidCallback;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class ZkLedgerMetadataBatcherTest {
+
+    private ZooKeeper zk;
+    private ScheduledExecutorService scheduler;
+    // the multi operations sent to zookeeper, completed by the tests
+    private final List<List<Op>> multis = new ArrayList<>();
+    private final List<MultiCallback> multiCallbacks = new ArrayList<>();
+    private final List<String> fallbacks = new ArrayList<>();
+    private final List<Integer> results = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        zk = mock(ZooKeeper.class);
+        doAnswer(invocation -> {
+            List<Op> ops = new ArrayList<>();
+            invocation.<Iterable<Op>>getArgument(0).forEach(ops::add);
+            multis.add(ops);
+            multiCallbacks.add(invocation.getArgument(1));
+            return null;
+        }).when(zk).multi(any(), any(MultiCallback.class), any());
+        scheduler = mock(ScheduledExecutorService.class);
+    }
+
+    private ZkLedgerMetadataBatcher newBatcher(int maxOps) {
+        return new ZkLedgerMetadataBatcher(zk, scheduler, 100, maxOps, NullStatsLogger.INSTANCE);
+    }
+
+    private Runnable scheduledFlush(int times) {
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, times(times)).schedule(flush.capture(), eq(100L), eq(TimeUnit.MICROSECONDS));
+        return flush.getValue();
+    }
+
+    private void setData(ZkLedgerMetadataBatcher batcher, String path, byte[] data) {
+        batcher.setData(path, data, 1, (rc, p, ctx, stat) -> results.add(rc), () -> fallbacks.add(path));
+    }
+
+    private void create(ZkLedgerMetadataBatcher batcher, String path) {
+        batcher.create(path, new byte[10], Ids.OPEN_ACL_UNSAFE, (rc, p, ctx, name) -> results.add(rc),
+                () -> fallbacks.add(path));
+    }
+
+    private void delete(ZkLedgerMetadataBatcher batcher, String path) {
+        batcher.delete(path, 1, true, (rc, p, ctx) -> results.add(rc), () -> fallbacks.add(path));
+    }
+
+    private static List<String> paths(List<Op> ops) {
+        List<String> paths = new ArrayList<>();
+        for (Op op : ops) {
+            paths.add(op.getPath());
+        }
+        return paths;
+    }
+
+    @Test
+    public void testBatchWithinWindow() {
+        ZkLedgerMetadataBatcher batcher = newBatcher(10);
+        create(batcher, "/ledgers/L1");
+        setData(batcher, "/ledgers/L2", new byte[10]);
+        create(batcher, "/ledgers/L3");
+        Assert.assertTrue(multis.isEmpty());
+
+        // the flush is scheduled once, by the first operation of the batch
+        scheduledFlush(1).run();
+        Assert.assertEquals(1, multis.size());
+        Assert.assertEquals(Arrays.asList("/ledgers/L1", "/ledgers/L2", "/ledgers/L3"), paths(multis.get(0)));
+
+        Stat stat = new Stat();
+        multiCallbacks.get(0).processResult(Code.OK.intValue(), null, null, Arrays.asList(
+                new OpResult.CreateResult("/ledgers/L1"), new OpResult.SetDataResult(stat),
+                new OpResult.CreateResult("/ledgers/L3")));
+        Assert.assertEquals(Arrays.asList(0, 0, 0), results);
+        Assert.assertTrue(fallbacks.isEmpty());
+
+        // the next operation starts a new batch
+        create(batcher, "/ledgers/L4");
+        scheduledFlush(2);
+    }
+
+    @Test
+    public void testSingleOperationSkipsTheTransaction() {
+        ZkLedgerMetadataBatcher batcher = newBatcher(10);
+        create(batcher, "/ledgers/L1");
+        scheduledFlush(1).run();
+        Assert.assertTrue(multis.isEmpty());
+        Assert.assertEquals(Collections.singletonList("/ledgers/L1"), fallbacks);
+    }
+
+    @Test
+    public void testFullBatchIsSentRightAway() {
+        ZkLedgerMetadataBatcher batcher = newBatcher(2);
+        create(batcher, "/ledgers/L1");
+        create(batcher, "/ledgers/L2");
+        Assert.assertEquals(1, multis.size());
+        create(batcher, "/ledgers/L3");
+        Assert.assertEquals(1, multis.size());
+
+        // the flush scheduled for the first batch finds the ops of the next batch
+        scheduledFlush(2).run();
+        Assert.assertEquals(Collections.singletonList("/ledgers/L3"), fallbacks);
+    }
+
+    @Test
+    public void testBatchBoundedBySize() {
+        ZkLedgerMetadataBatcher batcher = newBatcher(10);
+        setData(batcher, "/ledgers/L1", new byte[600 * 1024]);
+        setData(batcher, "/ledgers/L2", new byte[100]);
+        // the third operation does not fit in the multi request, the batch is sent before adding it
+        setData(batcher, "/ledgers/L3", new byte[600 * 1024]);
+        Assert.assertEquals(1, multis.size());
+        Assert.assertEquals(Arrays.asList("/ledgers/L1", "/ledgers/L2"), paths(multis.get(0)));
+
+        // an operation larger than the limit is sent on its own
+        setData(batcher, "/ledgers/L4", new byte[1024 * 1024]);
+        Assert.assertEquals(Arrays.asList("/ledgers/L3", "/ledgers/L4"), fallbacks);
+    }
+
+    @Test
+    public void testFallbackWhenAnOperationFails() {
+        ZkLedgerMetadataBatcher batcher = newBatcher(10);
+        setData(batcher, "/ledgers/L1", new byte[10]);
+        setData(batcher, "/ledgers/L2", new byte[10]);
+        scheduledFlush(1).run();
+
+        // a version conflict on L2 rolls back the whole transaction
+        multiCallbacks.get(0).processResult(Code.BADVERSION.intValue(), null, null, Arrays.asList(
+                new OpResult.ErrorResult(Code.RUNTIMEINCONSISTENCY.intValue()),
+                new OpResult.ErrorResult(Code.BADVERSION.intValue())));
+        Assert.assertEquals(Arrays.asList("/ledgers/L1", "/ledgers/L2"), fallbacks);
+        Assert.assertTrue(results.isEmpty());
+    }
+
+    @Test
+    public void testFailureWithoutResults() {
+        ZkLedgerMetadataBatcher batcher = newBatcher(10);
+        setData(batcher, "/ledgers/L1", new byte[10]);
+        setData(batcher, "/ledgers/L2", new byte[10]);
+        scheduledFlush(1).run();
+
+        // the transaction did not reach zookeeper, the operations complete with its error
+        multiCallbacks.get(0).processResult(Code.CONNECTIONLOSS.intValue(), null, null, null);
+        Assert.assertEquals(Arrays.asList(Code.CONNECTIONLOSS.intValue(), Code.CONNECTIONLOSS.intValue()), results);
+        Assert.assertTrue(fallbacks.isEmpty());
+    }
+
+    @Test
+    public void testDeleteEmptyParentsOncePerBatch() {
+        // the parents are empty, their own parent is not
+        doAnswer(invocation -> {
+            Stat stat = new Stat();
+            stat.setNumChildren(0);
+            invocation.<StatCallback>getArgument(2).processResult(Code.OK.intValue(), invocation.getArgument(0),
+                    null, stat);
+            return null;
+        }).when(zk).exists(anyString(), anyBoolean(), any(StatCallback.class), any());
+        doAnswer(invocation -> {
+            invocation.<VoidCallback>getArgument(2).processResult(Code.OK.intValue(), invocation.getArgument(0),
+                    invocation.getArgument(3));
+            return null;
+        }).when(zk).delete(anyString(), anyInt(), any(VoidCallback.class), any());
+        doAnswer(invocation -> {
+            Stat stat = new Stat();
+            stat.setNumChildren(1);
+            invocation.<DataCallback>getArgument(2).processResult(Code.OK.intValue(), invocation.getArgument(0),
+                    null, new byte[0], stat);
+            return null;
+        }).when(zk).getData(anyString(), anyBoolean(), any(DataCallback.class), any());
+
+        ZkLedgerMetadataBatcher batcher = newBatcher(10);
+        delete(batcher, "/ledgers/00/0000/L0001");
+        delete(batcher, "/ledgers/00/0000/L0002");
+        delete(batcher, "/ledgers/00/0001/L0003");
+        scheduledFlush(1).run();
+
+        multiCallbacks.get(0).processResult(Code.OK.intValue(), null, null, Arrays.asList(
+                new OpResult.DeleteResult(), new OpResult.DeleteResult(), new OpResult.DeleteResult()));
+        Assert.assertEquals(Arrays.asList(0, 0, 0), results);
+        verify(zk).exists(eq("/ledgers/00/0000"), eq(false), any(StatCallback.class), any());
+        verify(zk).exists(eq("/ledgers/00/0001"), eq(false), any(StatCallback.class), any());
+        verify(zk, times(2)).exists(anyString(), anyBoolean(), any(StatCallback.class), any());
+        verify(zk).delete(eq("/ledgers/00/0000"), eq(-1), any(VoidCallback.class), any());
+        verify(zk).delete(eq("/ledgers/00/0001"), eq(-1), any(VoidCallback.class), any());
+        verify(zk, never()).delete(eq("/ledgers/00"), anyInt(), any(VoidCallback.class), any());
+    }
+
+    @Test
+    public void testDeletionsCompleteAfterTheParentCleanup() {
+        List<StatCallback> existsCallbacks = new ArrayList<>();
+        doAnswer(invocation -> existsCallbacks.add(invocation.getArgument(2)))
+                .when(zk).exists(anyString(), anyBoolean(), any(StatCallback.class), any());
+
+        ZkLedgerMetadataBatcher batcher = newBatcher(10);
+        delete(batcher, "/ledgers/00/0000/L0001");
+        create(batcher, "/ledgers/00/0000/L0002");
+        scheduledFlush(1).run();
+        multiCallbacks.get(0).processResult(Code.OK.intValue(), null, null, Arrays.asList(
+                new OpResult.DeleteResult(), new OpResult.CreateResult("/ledgers/00/0000/L0002")));
+        // the creation completed, the deletion waits for the parent check
+        Assert.assertEquals(Collections.singletonList(0), results);
+
+        Stat stat = new Stat();
+        stat.setNumChildren(1);
+        existsCallbacks.get(0).processResult(Code.OK.intValue(), "/ledgers/00/0000", null, stat);
+        Assert.assertEquals(Arrays.asList(0, 0), results);
+        verify(zk, never()).delete(anyString(), anyInt(), any(VoidCallback.class), any());
+    }
+
+    @Test
+    public void testClose() {
+        ZkLedgerMetadataBatcher batcher = newBatcher(10);
+        setData(batcher, "/ledgers/L1", new byte[10]);
+        setData(batcher, "/ledgers/L2", new byte[10]);
+
+        // the pending batch is sent on close, the next operations are not batched
+        batcher.close();
+        Assert.assertEquals(1, multis.size());
+        setData(batcher, "/ledgers/L3", new byte[10]);
+        Assert.assertEquals(Collections.singletonList("/ledgers/L3"), fallbacks);
+        verify(scheduler, times(1)).schedule(any(Runnable.class), anyLong(), any());
+    }
+}
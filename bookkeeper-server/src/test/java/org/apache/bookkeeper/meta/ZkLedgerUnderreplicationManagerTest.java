@@ -0,0 +1,82 @@
+package org.apache.bookkeeper.meta;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.DataFormats.AuditorCheckpointFormat;
+import org.apache.bookkeeper.replication.ReplicationException;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class ZkLedgerUnderreplicationManagerTest {
+
+    private static final String CHECKPOINT_ZNODE = "/ledgers/underreplication/checkallledgerscheckpoint";
+
+    private ZooKeeper zkc;
+    private ZkLedgerUnderreplicationManager underreplicationManager;
+
+    @Before
+    public void setUp() throws Exception {
+        zkc = mock(ZooKeeper.class);
+        // the layout is created by the manager
+        when(zkc.exists(anyString(), anyBoolean())).thenReturn(null);
+        underreplicationManager = new ZkLedgerUnderreplicationManager(new ServerConfiguration(), zkc);
+    }
+
+    @Test
+    public void testCreateCheckpoint() throws Exception {
+        underreplicationManager.setAuditorCheckpoint("checkAllLedgers", 10L);
+
+        ArgumentCaptor<byte[]> data = ArgumentCaptor.forClass(byte[].class);
+        verify(zkc).create(eq(CHECKPOINT_ZNODE), data.capture(), any(), eq(CreateMode.PERSISTENT));
+        verify(zkc, never()).setData(anyString(), any(), anyInt());
+        Assert.assertEquals(10L, AuditorCheckpointFormat.parseFrom(data.getValue()).getLastCheckedLedgerId());
+    }
+
+    @Test
+    public void testUpdateExistingCheckpoint() throws Exception {
+        when(zkc.create(eq(CHECKPOINT_ZNODE), any(), any(), any()))
+                .thenThrow(new KeeperException.NodeExistsException(CHECKPOINT_ZNODE));
+        underreplicationManager.setAuditorCheckpoint("checkAllLedgers", 20L);
+
+        ArgumentCaptor<byte[]> data = ArgumentCaptor.forClass(byte[].class);
+        verify(zkc).setData(eq(CHECKPOINT_ZNODE), data.capture(), eq(-1));
+        Assert.assertEquals(20L, AuditorCheckpointFormat.parseFrom(data.getValue()).getLastCheckedLedgerId());
+    }
+
+    @Test
+    public void testGetCheckpoint() throws Exception {
+        when(zkc.getData(eq(CHECKPOINT_ZNODE), anyBoolean(), any()))
+                .thenThrow(new KeeperException.NoNodeException(CHECKPOINT_ZNODE));
+        Assert.assertEquals(-1L, underreplicationManager.getAuditorCheckpoint("checkAllLedgers"));
+
+        when(zkc.getData(eq(CHECKPOINT_ZNODE), anyBoolean(), any())).thenReturn(
+                AuditorCheckpointFormat.newBuilder().setLastCheckedLedgerId(30L).build().toByteArray());
+        Assert.assertEquals(30L, underreplicationManager.getAuditorCheckpoint("checkAllLedgers"));
+    }
+
+    @Test
+    public void testCheckpointFailure() throws Exception {
+        when(zkc.create(eq(CHECKPOINT_ZNODE), any(), any(), any()))
+                .thenThrow(new KeeperException.ConnectionLossException());
+        try {
+            underreplicationManager.setAuditorCheckpoint("checkAllLedgers", 10L);
+            Assert.fail("The checkpoint should have failed");
+        } catch (ReplicationException.UnavailableException e) {
+            // expected
+        }
+    }
+}
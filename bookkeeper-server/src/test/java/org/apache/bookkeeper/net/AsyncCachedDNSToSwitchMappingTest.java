@@ -0,0 +1,247 @@
+package org.apache.bookkeeper.net;
+
+import static org.apache.bookkeeper.client.BookKeeperClientStats.RACK_RESOLUTION_BATCH_SIZE;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.RACK_RESOLUTION_CACHE_MISSES;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.RACK_RESOLUTION_LATENCY;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.RACK_RESOLUTION_STALE_HITS;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsyncCachedDNSToSwitchMappingTest {
+
+    private static final String DEFAULT_RACK = "/default-rack";
+
+    /**
+     * Resolves the hosts to the racks set by the test, recording the batches.
+     */
+    private static class TestMapping implements DNSToSwitchMapping {
+        final Map<String, String> racks = new HashMap<>();
+        final List<List<String>> batches = new ArrayList<>();
+        final List<String> reloaded = new ArrayList<>();
+        volatile boolean fail = false;
+
+        @Override
+        public synchronized List<String> resolve(List<String> names) {
+            batches.add(new ArrayList<>(names));
+            if (fail) {
+                throw new RuntimeException("script failed");
+            }
+            List<String> resolved = new ArrayList<>();
+            for (String name : names) {
+                resolved.add(racks.getOrDefault(name, "/rack-" + name));
+            }
+            return resolved;
+        }
+
+        @Override
+        public synchronized void reloadCachedMappings() {
+        }
+
+        @Override
+        public synchronized void reloadCachedMappings(List<String> names) {
+            reloaded.addAll(names);
+        }
+
+        synchronized List<List<String>> getBatches() {
+            return new ArrayList<>(batches);
+        }
+
+        synchronized List<String> getReloaded() {
+            return new ArrayList<>(reloaded);
+        }
+    }
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private TestMapping rawMapping;
+    private StatsLogger statsLogger;
+    private OpStatsLogger latency;
+    private OpStatsLogger batchSizes;
+    private Counter cacheMisses;
+    private Counter staleHits;
+    private final BlockingQueue<Set<String>> changes = new LinkedBlockingQueue<>();
+    private final List<AsyncCachedDNSToSwitchMapping> mappings = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        rawMapping = new TestMapping();
+        statsLogger = mock(StatsLogger.class);
+        latency = mock(OpStatsLogger.class);
+        batchSizes = mock(OpStatsLogger.class);
+        cacheMisses = mock(Counter.class);
+        staleHits = mock(Counter.class);
+        when(statsLogger.getOpStatsLogger(RACK_RESOLUTION_LATENCY)).thenReturn(latency);
+        when(statsLogger.getOpStatsLogger(RACK_RESOLUTION_BATCH_SIZE)).thenReturn(batchSizes);
+        when(statsLogger.getCounter(RACK_RESOLUTION_CACHE_MISSES)).thenReturn(cacheMisses);
+        when(statsLogger.getCounter(RACK_RESOLUTION_STALE_HITS)).thenReturn(staleHits);
+    }
+
+    @After
+    public void tearDown() {
+        mappings.forEach(AsyncCachedDNSToSwitchMapping::close);
+    }
+
+    private AsyncCachedDNSToSwitchMapping newMapping(String cacheFile, int batchSize,
+                                                     boolean resolveMissesSynchronously) {
+        AsyncCachedDNSToSwitchMapping mapping = new AsyncCachedDNSToSwitchMapping(rawMapping, () -> DEFAULT_RACK,
+                cacheFile, 0, batchSize, resolveMissesSynchronously, statsLogger);
+        mapping.setRackChangeListener(changes::add);
+        mappings.add(mapping);
+        return mapping;
+    }
+
+    private Set<String> nextChange() throws Exception {
+        Set<String> changed = changes.poll(10, TimeUnit.SECONDS);
+        Assert.assertNotNull("the rack change wasn't notified", changed);
+        return changed;
+    }
+
+    private static Properties loadCacheFile(File file) throws Exception {
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            props.load(in);
+        }
+        return props;
+    }
+
+    @Test
+    public void testResolveInBackground() throws Exception {
+        AsyncCachedDNSToSwitchMapping mapping = newMapping(null, 10, false);
+        // the hosts are placed in the default rack until they are resolved
+        Assert.assertEquals(Arrays.asList(DEFAULT_RACK, DEFAULT_RACK), mapping.resolve(Arrays.asList("h1", "h2")));
+        verify(cacheMisses, times(2)).inc();
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("h1", "h2")), nextChange());
+        Assert.assertEquals(Collections.singletonList(Arrays.asList("h1", "h2")), rawMapping.getBatches());
+        Assert.assertEquals(Arrays.asList("/rack-h1", "/rack-h2"), mapping.resolve(Arrays.asList("h1", "h2")));
+        verify(batchSizes).registerSuccessfulValue(2L);
+        verify(latency).registerSuccessfulEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+
+        // the hosts resolved to the default rack don't change
+        rawMapping.racks.put("h3", DEFAULT_RACK);
+        mapping.resolve(Arrays.asList("h3", "h4"));
+        Assert.assertEquals(Collections.singleton("h4"), nextChange());
+        Assert.assertEquals(2, rawMapping.getBatches().size());
+    }
+
+    @Test
+    public void testResolveInBatches() throws Exception {
+        AsyncCachedDNSToSwitchMapping mapping = newMapping(null, 2, false);
+        mapping.resolve(Arrays.asList("h1", "h2", "h3", "h4", "h5"));
+        // the listener is notified once for all the batches
+        Assert.assertEquals(new HashSet<>(Arrays.asList("h1", "h2", "h3", "h4", "h5")), nextChange());
+        Assert.assertEquals(Arrays.asList(Arrays.asList("h1", "h2"), Arrays.asList("h3", "h4"),
+                Collections.singletonList("h5")), rawMapping.getBatches());
+    }
+
+    @Test
+    public void testResolveMissesSynchronously() throws Exception {
+        AsyncCachedDNSToSwitchMapping mapping = newMapping(null, 2, true);
+        Assert.assertEquals(Arrays.asList("/rack-h1", "/rack-h2", "/rack-h3"),
+                mapping.resolve(Arrays.asList("h1", "h2", "h3")));
+        Assert.assertEquals(Arrays.asList(Arrays.asList("h1", "h2"), Collections.singletonList("h3")),
+                rawMapping.getBatches());
+        verify(cacheMisses).addCount(3L);
+
+        // the cached hosts aren't resolved again
+        Assert.assertEquals(Arrays.asList("/rack-h3", "/rack-h4"), mapping.resolve(Arrays.asList("h3", "h4")));
+        Assert.assertEquals(Collections.singletonList("h4"), rawMapping.getBatches().get(2));
+        Assert.assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void testFailedResolution() throws Exception {
+        AsyncCachedDNSToSwitchMapping mapping = newMapping(null, 10, false);
+        rawMapping.fail = true;
+        mapping.resolve(Collections.singletonList("h1"));
+        verify(latency, timeout(10000)).registerFailedEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        Assert.assertTrue(changes.isEmpty());
+
+        // the host is resolved again on its next use
+        rawMapping.fail = false;
+        Assert.assertEquals(Collections.singletonList(DEFAULT_RACK), mapping.resolve(Collections.singletonList("h1")));
+        Assert.assertEquals(Collections.singleton("h1"), nextChange());
+        Assert.assertEquals(Collections.singletonList("/rack-h1"), mapping.resolve(Collections.singletonList("h1")));
+    }
+
+    @Test
+    public void testReloadCachedMappings() throws Exception {
+        AsyncCachedDNSToSwitchMapping mapping = newMapping(null, 10, true);
+        mapping.resolve(Arrays.asList("h1", "h2"));
+
+        // the current rack is served until the host is resolved again
+        rawMapping.racks.put("h1", "/rack-moved");
+        mapping.reloadCachedMappings(Collections.singletonList("h1"));
+        Assert.assertEquals(Collections.singleton("h1"), nextChange());
+        Assert.assertEquals(Collections.singletonList("h1"), rawMapping.getReloaded());
+        Assert.assertEquals(Arrays.asList("/rack-moved", "/rack-h2"), mapping.resolve(Arrays.asList("h1", "h2")));
+    }
+
+    @Test
+    public void testPersistCacheFile() throws Exception {
+        File cacheFile = new File(tmpDir.getRoot(), "racks.cache");
+        AsyncCachedDNSToSwitchMapping mapping = newMapping(cacheFile.getPath(), 10, false);
+        mapping.resolve(Arrays.asList("h1", "h2"));
+        nextChange();
+
+        // the file is written aside and moved in place
+        Properties props = loadCacheFile(cacheFile);
+        Assert.assertEquals(2, props.size());
+        Assert.assertEquals("/rack-h1", props.getProperty("h1"));
+        Assert.assertEquals("/rack-h2", props.getProperty("h2"));
+        Assert.assertFalse(new File(cacheFile.getPath() + ".tmp").exists());
+        mapping.close();
+
+        // a restarted client serves the persisted racks right away, and resolves them again
+        rawMapping.racks.put("h2", "/rack-moved");
+        AsyncCachedDNSToSwitchMapping restarted = newMapping(cacheFile.getPath(), 10, true);
+        Assert.assertEquals(Arrays.asList("/rack-h1", "/rack-h2"), restarted.resolve(Arrays.asList("h1", "h2")));
+        verify(staleHits, times(2)).inc();
+        Assert.assertEquals(Collections.singleton("h2"), nextChange());
+        Assert.assertEquals(Arrays.asList("h1", "h2"), rawMapping.getReloaded());
+        Assert.assertEquals(Arrays.asList("/rack-h1", "/rack-moved"), restarted.resolve(Arrays.asList("h1", "h2")));
+        Assert.assertEquals("/rack-moved", loadCacheFile(cacheFile).getProperty("h2"));
+    }
+
+    @Test
+    public void testCorruptedCacheFile() throws Exception {
+        File cacheFile = new File(tmpDir.getRoot(), "racks.cache");
+        Files.write(cacheFile.toPath(), "h1=\\uZZZZ\n".getBytes(StandardCharsets.UTF_8));
+        // the client starts with an empty cache
+        AsyncCachedDNSToSwitchMapping mapping = newMapping(cacheFile.getPath(), 10, true);
+        Assert.assertEquals(Collections.singletonList("/rack-h1"), mapping.resolve(Collections.singletonList("h1")));
+        Assert.assertEquals(1, rawMapping.getBatches().size());
+    }
+}
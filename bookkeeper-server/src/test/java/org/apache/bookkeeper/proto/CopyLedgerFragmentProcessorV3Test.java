@@ -0,0 +1,190 @@
+package org.apache.bookkeeper.proto;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyLedgerFragmentRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyLedgerFragmentResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CopyLedgerFragmentProcessorV3Test {
+
+    private static final long LEDGER_ID = 10L;
+    private static final byte[] MASTER_KEY = "key".getBytes();
+    private static final BookieId SOURCE = BookieId.parse("source-bookie:3181");
+
+    private EmbeddedChannel channel;
+    private BookieRequestHandler requestHandler;
+    private BookieRequestProcessor requestProcessor;
+    private Bookie bookie;
+    private BookieClient bookieClient;
+    private LedgerManager ledgerManager;
+    // the entries read from the source bookie
+    private final List<ByteBuf> readEntries = new ArrayList<>();
+    private final List<Long> storedEntries = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        channel = new EmbeddedChannel();
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+
+        bookie = mock(Bookie.class);
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        when(requestProcessor.getWaitTimeoutOnBackpressureMillis()).thenReturn(-1L);
+
+        bookieClient = mock(BookieClient.class);
+        doAnswer(invocation -> {
+            long entryId = invocation.getArgument(2);
+            ReadEntryCallback cb = invocation.getArgument(3);
+            ByteBuf entry = Unpooled.buffer();
+            entry.writeLong(LEDGER_ID);
+            entry.writeLong(entryId);
+            entry.writeBytes(("entry-" + entryId).getBytes());
+            readEntries.add(entry);
+            cb.readEntryComplete(BKException.Code.OK, LEDGER_ID, entryId, entry, invocation.getArgument(4));
+            // the client releases the entries once they are handed over
+            entry.release();
+            return null;
+        }).when(bookieClient).readEntry(eq(SOURCE), eq(LEDGER_ID), anyLong(), any(), any(), anyInt());
+
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withEnsembleSize(1).withWriteQuorumSize(1).withAckQuorumSize(1)
+                .newEnsembleEntry(0L, Collections.singletonList(SOURCE))
+                .build();
+        ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.readLedgerMetadata(LEDGER_ID))
+                .thenReturn(CompletableFuture.completedFuture(new Versioned<>(metadata, new LongVersion(0))));
+    }
+
+    // mimics the bookie, which releases the entries it is given
+    private void storeEntries(long failingEntryId) throws Exception {
+        doAnswer(invocation -> {
+            ByteBuf entry = invocation.getArgument(0);
+            WriteCallback cb = invocation.getArgument(1);
+            try {
+                long entryId = entry.getLong(8);
+                if (entryId == failingEntryId) {
+                    throw new IOException("failed to store entry " + entryId);
+                }
+                storedEntries.add(entryId);
+                cb.writeComplete(BKException.Code.OK, LEDGER_ID, entryId, null, invocation.getArgument(2));
+            } finally {
+                entry.release();
+            }
+            return null;
+        }).when(bookie).recoveryAddEntry(any(), any(), any(), any());
+    }
+
+    private Response copy(long firstEntryId, long lastEntryId, int maxBatchEntries) {
+        Request request = Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.COPY_LEDGER_FRAGMENT)
+                        .setTxnId(1L))
+                .setCopyLedgerFragmentRequest(CopyLedgerFragmentRequest.newBuilder()
+                        .setLedgerId(LEDGER_ID)
+                        .setMasterKey(ByteString.copyFrom(MASTER_KEY))
+                        .setFirstEntryId(firstEntryId)
+                        .setLastEntryId(lastEntryId)
+                        .addSourceBookies(SOURCE.toString())
+                        .setMaxBatchEntries(maxBatchEntries))
+                .build();
+        new CopyLedgerFragmentProcessorV3(request, requestHandler, requestProcessor, bookieClient, ledgerManager,
+                false).run();
+        Response response = channel.readOutbound();
+        Assert.assertNotNull(response);
+        return response;
+    }
+
+    private void assertEntriesReleased() {
+        for (ByteBuf entry : readEntries) {
+            Assert.assertEquals(0, entry.refCnt());
+        }
+    }
+
+    @Test
+    public void testCopyFragment() throws Exception {
+        storeEntries(-1L);
+        Response response = copy(0L, 9L, 4);
+
+        Assert.assertEquals(StatusCode.EOK, response.getStatus());
+        CopyLedgerFragmentResponse copyResponse = response.getCopyLedgerFragmentResponse();
+        Assert.assertEquals(StatusCode.EOK, copyResponse.getStatus());
+        Assert.assertEquals(10L, copyResponse.getCopiedEntries());
+        Assert.assertEquals(9L, copyResponse.getLastCopiedEntryId());
+        for (long entryId = 0; entryId < 10; entryId++) {
+            Assert.assertEquals(entryId, storedEntries.get((int) entryId).longValue());
+        }
+        assertEntriesReleased();
+    }
+
+    @Test
+    public void testFailureInTheMiddleOfABatch() throws Exception {
+        storeEntries(5L);
+        Response response = copy(0L, 9L, 4);
+
+        Assert.assertEquals(StatusCode.EIO, response.getStatus());
+        CopyLedgerFragmentResponse copyResponse = response.getCopyLedgerFragmentResponse();
+        // only the first batch was entirely stored
+        Assert.assertEquals(4L, copyResponse.getCopiedEntries());
+        Assert.assertEquals(3L, copyResponse.getLastCopiedEntryId());
+        Assert.assertEquals(5, storedEntries.size());
+        // no batch is read after the failure
+        Assert.assertEquals(8, readEntries.size());
+        assertEntriesReleased();
+    }
+
+    @Test
+    public void testRejectSourceOutOfTheEnsembles() throws Exception {
+        when(ledgerManager.readLedgerMetadata(LEDGER_ID)).thenReturn(CompletableFuture.completedFuture(
+                new Versioned<>(LedgerMetadataBuilder.create()
+                        .withId(LEDGER_ID)
+                        .withEnsembleSize(1).withWriteQuorumSize(1).withAckQuorumSize(1)
+                        .newEnsembleEntry(0L, Collections.singletonList(BookieId.parse("other-bookie:3181")))
+                        .build(), new LongVersion(0))));
+        Response response = copy(0L, 9L, 4);
+
+        Assert.assertEquals(StatusCode.EUA, response.getStatus());
+        Assert.assertTrue(readEntries.isEmpty());
+    }
+}
@@ -0,0 +1,58 @@
+package org.apache.bookkeeper.proto;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RequestMemoryBudgetTest {
+
+    private static RequestMemoryBudget newBudget() {
+        return new RequestMemoryBudget(1000, 0, 500, 0, NullStatsLogger.INSTANCE);
+    }
+
+    @Test
+    public void testPauseChannelOverBudget() {
+        RequestMemoryBudget budget = newBudget();
+        EmbeddedChannel channel = new EmbeddedChannel();
+        budget.reserveAddMemory(channel, 800);
+        Assert.assertTrue(channel.config().isAutoRead());
+        budget.reserveReadMemory(channel, 300);
+        Assert.assertFalse(channel.config().isAutoRead());
+
+        // 900 bytes are still over 80% of the budget
+        budget.releaseReadMemory(200);
+        Assert.assertFalse(channel.config().isAutoRead());
+        budget.releaseAddMemory(800);
+        Assert.assertTrue(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void testResumeOnlyReleasesTheBudgetPause() {
+        RequestMemoryBudget budget = newBudget();
+        EmbeddedChannel channel = new EmbeddedChannel();
+        // paused by the throttling of the requests in progress as well
+        ChannelReadPauses.pause(channel);
+        budget.reserveReadMemory(channel, 600);
+        budget.releaseReadMemory(600);
+        Assert.assertFalse(channel.config().isAutoRead());
+
+        ChannelReadPauses.resume(channel);
+        Assert.assertTrue(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void testDropClosedChannels() throws Exception {
+        RequestMemoryBudget budget = newBudget();
+        EmbeddedChannel channel = new EmbeddedChannel();
+        budget.reserveAddMemory(channel, 2000);
+        Assert.assertEquals(1, budget.getNumPausedChannels());
+        channel.close().sync();
+        Assert.assertEquals(0, budget.getNumPausedChannels());
+
+        // a closed channel is not paused again
+        budget.reserveAddMemory(channel, 10);
+        Assert.assertEquals(0, budget.getNumPausedChannels());
+        budget.releaseAddMemory(2010);
+    }
+}
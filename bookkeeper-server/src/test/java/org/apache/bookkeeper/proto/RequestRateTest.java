@@ -0,0 +1,46 @@
+package org.apache.bookkeeper.proto;
+
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RequestRateTest {
+
+    @Test
+    public void testRate() {
+        RequestRate rate = new RequestRate();
+        Assert.assertEquals(0.0, rate.getRate(), 0.0);
+
+        // each request weighs 1/30 of a request per second
+        for (int i = 0; i < 30; i++) {
+            rate.record();
+        }
+        double first = rate.getRate();
+        Assert.assertEquals(1.0, first, 0.01);
+
+        // without request the rate decays, the requests are counted once
+        double second = rate.getRate();
+        Assert.assertTrue(second <= first);
+        Assert.assertEquals(1.0, second, 0.01);
+
+        for (int i = 0; i < 60; i++) {
+            rate.record();
+        }
+        Assert.assertEquals(3.0, rate.getRate(), 0.03);
+    }
+
+    @Test
+    public void testRequestStatsRates() {
+        RequestStats stats = new RequestStats(NullStatsLogger.INSTANCE);
+        for (int i = 0; i < 30; i++) {
+            stats.trackAddRequest();
+            stats.untrackAddRequest();
+        }
+        for (int i = 0; i < 60; i++) {
+            stats.trackReadRequest();
+            stats.untrackReadRequest();
+        }
+        Assert.assertEquals(1.0, stats.addRequestRate(), 0.01);
+        Assert.assertEquals(2.0, stats.readRequestRate(), 0.02);
+    }
+}
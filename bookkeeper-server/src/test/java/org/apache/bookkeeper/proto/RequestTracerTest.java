@@ -0,0 +1,167 @@
+package org.apache.bookkeeper.proto;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.proto.RequestTrace.Stage;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestTracerTest {
+
+    private StatsLogger statsLogger;
+    private final Map<String, OpStatsLogger> stageLatencies = new HashMap<>();
+    private OpStatsLogger traceLatency;
+    private Counter slowRequests;
+    private Counter skipped;
+
+    @Before
+    public void setUp() {
+        statsLogger = mock(StatsLogger.class);
+        when(statsLogger.scopeLabel(eq("interval"), anyString())).thenAnswer(invocation -> {
+            OpStatsLogger stageLatency = mock(OpStatsLogger.class);
+            stageLatencies.put(invocation.getArgument(1), stageLatency);
+            StatsLogger intervalLogger = mock(StatsLogger.class);
+            when(intervalLogger.getOpStatsLogger("REQUEST_TRACE_STAGE_LATENCY")).thenReturn(stageLatency);
+            return intervalLogger;
+        });
+        traceLatency = mock(OpStatsLogger.class);
+        slowRequests = mock(Counter.class);
+        skipped = mock(Counter.class);
+        when(statsLogger.getOpStatsLogger("REQUEST_TRACE_LATENCY")).thenReturn(traceLatency);
+        when(statsLogger.getCounter("REQUEST_TRACE_SLOW_REQUESTS")).thenReturn(slowRequests);
+        when(statsLogger.getCounter("REQUEST_TRACE_SKIPPED")).thenReturn(skipped);
+    }
+
+    // a trace through the stages of a v2 add, the intervals between the stages are given in microseconds
+    private static void traceV2Add(RequestTrace trace, long... intervalMicros) {
+        long nanos = 0;
+        trace.mark(Stage.RECEIVED, nanos);
+        for (int i = 0; i < intervalMicros.length; i++) {
+            nanos += TimeUnit.MICROSECONDS.toNanos(intervalMicros[i]);
+            trace.mark(RequestTrace.STAGES[i + 1], nanos);
+        }
+        trace.finish();
+    }
+
+    @Test
+    public void testStageLatencies() {
+        RequestTracer tracer = new RequestTracer(1, 1000, 4, statsLogger);
+        Assert.assertEquals(7, stageLatencies.size());
+        traceV2Add(tracer.startTrace(1L, 2L), 1, 2, 3, 4, 5, 6);
+
+        verify(stageLatencies.get("write_thread_queue")).registerSuccessfulEvent(1000L, TimeUnit.NANOSECONDS);
+        verify(stageLatencies.get("ledger_storage_add")).registerSuccessfulEvent(2000L, TimeUnit.NANOSECONDS);
+        verify(stageLatencies.get("journal_queue")).registerSuccessfulEvent(3000L, TimeUnit.NANOSECONDS);
+        verify(stageLatencies.get("journal_write")).registerSuccessfulEvent(4000L, TimeUnit.NANOSECONDS);
+        verify(stageLatencies.get("journal_sync")).registerSuccessfulEvent(5000L, TimeUnit.NANOSECONDS);
+        verify(stageLatencies.get("response_write")).registerSuccessfulEvent(6000L, TimeUnit.NANOSECONDS);
+        // the v2 responses aren't traced up to their flush
+        verify(stageLatencies.get("response_flush"), never())
+                .registerSuccessfulEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        verify(traceLatency).registerSuccessfulEvent(21000L, TimeUnit.NANOSECONDS);
+        verify(slowRequests, never()).inc();
+        Assert.assertTrue(tracer.getSlowRequests().isEmpty());
+    }
+
+    @Test
+    public void testSkippedStages() {
+        RequestTracer tracer = new RequestTracer(1, 1000, 4, statsLogger);
+        RequestTrace trace = tracer.startTrace(1L, 2L);
+        trace.mark(Stage.RECEIVED, 0L);
+        // the interval of a stage not reached is merged into the next one
+        trace.mark(Stage.JOURNAL_ENQUEUED, 5000L);
+        trace.finish();
+        verify(stageLatencies.get("write_thread_queue"), never())
+                .registerSuccessfulEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        verify(stageLatencies.get("ledger_storage_add")).registerSuccessfulEvent(5000L, TimeUnit.NANOSECONDS);
+        verify(traceLatency).registerSuccessfulEvent(5000L, TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void testTracesInUseAreSkipped() {
+        RequestTracer tracer = new RequestTracer(1, 1000, 4, statsLogger);
+        List<RequestTrace> traces = new ArrayList<>();
+        for (int i = 0; i < RequestTracer.NUM_TRACES; i++) {
+            RequestTrace trace = tracer.startTrace(1L, i);
+            Assert.assertNotNull(trace);
+            traces.add(trace);
+        }
+        // all the traces are in use
+        Assert.assertNull(tracer.startTrace(1L, RequestTracer.NUM_TRACES));
+        verify(skipped).inc();
+
+        // the next trace of the ring is still in use, even though another one was finished
+        traceV2Add(traces.get(0), 1);
+        Assert.assertNull(tracer.startTrace(1L, RequestTracer.NUM_TRACES));
+        verify(skipped, times(2)).inc();
+
+        // a finished trace is reused, reset
+        traceV2Add(traces.get(2), 1, 2, 3);
+        RequestTrace trace = tracer.startTrace(3L, 4L);
+        Assert.assertSame(traces.get(2), trace);
+        Assert.assertEquals(3L, trace.ledgerId);
+        Assert.assertEquals(4L, trace.entryId);
+        Assert.assertNotEquals(RequestTrace.NOT_REACHED, trace.stageNanos[Stage.RECEIVED.ordinal()]);
+        for (int stage = 1; stage < RequestTrace.STAGES.length; stage++) {
+            Assert.assertEquals(RequestTrace.NOT_REACHED, trace.stageNanos[stage]);
+        }
+    }
+
+    @Test
+    public void testSampling() {
+        RequestTracer tracer = new RequestTracer(4, 1000, 4, statsLogger);
+        int traced = 0;
+        for (int i = 0; i < 4000; i++) {
+            RequestTrace trace = tracer.startTrace(1L, i);
+            if (trace != null) {
+                traced++;
+                trace.finish();
+            }
+        }
+        Assert.assertTrue("traced " + traced + " requests", traced > 700 && traced < 1300);
+        verify(skipped, never()).inc();
+    }
+
+    @Test
+    public void testSlowRequests() {
+        RequestTracer tracer = new RequestTracer(1, 2, 2, statsLogger);
+        traceV2Add(tracer.startTrace(1L, 0L), 1000, 1000, 1000);
+        traceV2Add(tracer.startTrace(1L, 1L), 1000, 1000, 1000, 1000, 1000, 1000);
+        // faster than the threshold
+        traceV2Add(tracer.startTrace(1L, 2L), 100, 100);
+        traceV2Add(tracer.startTrace(2L, 3L), 500, 1500);
+        verify(slowRequests, times(3)).inc();
+
+        // the last slow requests, the most recent first
+        List<RequestTracer.SlowRequest> slow = tracer.getSlowRequests();
+        Assert.assertEquals(2, slow.size());
+        Assert.assertEquals(2L, slow.get(0).getLedgerId());
+        Assert.assertEquals(3L, slow.get(0).getEntryId());
+        Assert.assertEquals(2000L, slow.get(0).getLatencyMicros());
+        Assert.assertEquals(Arrays.asList("write_thread_queue", "ledger_storage_add"),
+                new ArrayList<>(slow.get(0).getIntervalLatenciesMicros().keySet()));
+        Assert.assertEquals(1500L, slow.get(0).getIntervalLatenciesMicros().get("ledger_storage_add").longValue());
+
+        Assert.assertEquals(1L, slow.get(1).getEntryId());
+        Assert.assertEquals(6000L, slow.get(1).getLatencyMicros());
+        Assert.assertEquals(6, slow.get(1).getIntervalLatenciesMicros().size());
+        Assert.assertTrue(slow.get(1).getFinishTimeMillis() <= slow.get(0).getFinishTimeMillis());
+    }
+}
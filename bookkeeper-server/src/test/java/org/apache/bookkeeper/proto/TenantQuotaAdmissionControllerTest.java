@@ -0,0 +1,60 @@
+package org.apache.bookkeeper.proto;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TenantQuotaAdmissionControllerTest {
+
+    private static TenantQuotaAdmissionController newController(double maxOpsPerSecond, double maxBytesPerSecond,
+                                                                int maxRequestsInProgress) {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setTenantQuotaMaxOpsPerSecond(maxOpsPerSecond);
+        conf.setTenantQuotaMaxBytesPerSecond(maxBytesPerSecond);
+        conf.setTenantQuotaMaxRequestsInProgress(maxRequestsInProgress);
+        TenantQuotaAdmissionController controller = new TenantQuotaAdmissionController();
+        controller.initialize(conf, NullStatsLogger.INSTANCE);
+        return controller;
+    }
+
+    @Test
+    public void testRequestsInProgressQuota() {
+        TenantQuotaAdmissionController controller = newController(0, 0, 2);
+        RequestAdmissionController.Admission first =
+                controller.tryAdmit("tenant", RequestAdmissionController.Operation.ADD, 10);
+        RequestAdmissionController.Admission second =
+                controller.tryAdmit("tenant", RequestAdmissionController.Operation.READ, 0);
+        Assert.assertNotNull(first);
+        Assert.assertNotNull(second);
+        Assert.assertNull(controller.tryAdmit("tenant", RequestAdmissionController.Operation.READ, 0));
+        // the quotas are per tenant
+        Assert.assertNotNull(controller.tryAdmit("other-tenant", RequestAdmissionController.Operation.READ, 0));
+
+        first.complete(1000, true);
+        Assert.assertNotNull(controller.tryAdmit("tenant", RequestAdmissionController.Operation.READ, 0));
+    }
+
+    @Test
+    public void testBytesRejectionRefundsTheOperation() {
+        // the buckets hold a second of tokens, and barely refill during the test
+        TenantQuotaAdmissionController controller = newController(2, 100, 0);
+        Assert.assertNotNull(controller.tryAdmit("tenant", RequestAdmissionController.Operation.ADD, 100));
+        for (int i = 0; i < 10; i++) {
+            Assert.assertNull(controller.tryAdmit("tenant", RequestAdmissionController.Operation.ADD, 100));
+        }
+        // the rejected adds gave back their operation
+        Assert.assertNotNull(controller.tryAdmit("tenant", RequestAdmissionController.Operation.READ, 0));
+        Assert.assertNull(controller.tryAdmit("tenant", RequestAdmissionController.Operation.READ, 0));
+    }
+
+    @Test
+    public void testTokenBucketDebt() {
+        TenantQuotaAdmissionController.TokenBucket bucket = new TenantQuotaAdmissionController.TokenBucket(10);
+        // more than a second worth of tokens needs a full bucket, and leaves it in debt
+        Assert.assertTrue(bucket.tryAcquire(25));
+        Assert.assertFalse(bucket.tryAcquire(1));
+        bucket.release(16);
+        Assert.assertTrue(bucket.tryAcquire(1));
+    }
+}
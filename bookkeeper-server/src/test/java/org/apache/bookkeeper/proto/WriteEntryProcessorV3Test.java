@@ -0,0 +1,122 @@
+package org.apache.bookkeeper.proto;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.protobuf.ByteString;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteEntryProcessorV3Test {
+
+    private EmbeddedChannel channel;
+    private BookieRequestHandler requestHandler;
+    private BookieRequestProcessor requestProcessor;
+    private Bookie bookie;
+    private RequestAdmissionController.Admission admission;
+    private final List<WriteCallback> journalCallbacks = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        channel = new EmbeddedChannel();
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+
+        bookie = mock(Bookie.class);
+        // the entries are acknowledged by the journal once the test calls back
+        doAnswer(invocation -> {
+            journalCallbacks.add(invocation.getArgument(2));
+            return null;
+        }).when(bookie).addEntry(any(), anyBoolean(), any(), any(), any());
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        when(requestProcessor.getWaitTimeoutOnBackpressureMillis()).thenReturn(-1L);
+        admission = mock(RequestAdmissionController.Admission.class);
+    }
+
+    private WriteEntryProcessorV3 newProcessor() {
+        Request request = Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.ADD_ENTRY)
+                        .setTxnId(1L))
+                .setAddRequest(AddRequest.newBuilder()
+                        .setLedgerId(1L)
+                        .setEntryId(0L)
+                        .setMasterKey(ByteString.copyFromUtf8("key"))
+                        .setBody(ByteString.copyFromUtf8("entry")))
+                .build();
+        WriteEntryProcessorV3 processor = new WriteEntryProcessorV3(request, requestHandler, requestProcessor);
+        processor.setAdmission(admission);
+        return processor;
+    }
+
+    @Test
+    public void testAdmissionCompletedOnJournalAck() {
+        WriteEntryProcessorV3 processor = newProcessor();
+        processor.run();
+        // the add is still in progress once off the worker thread
+        verify(admission, never()).complete(anyLong(), anyBoolean());
+        Assert.assertNull(channel.readOutbound());
+
+        Assert.assertEquals(1, journalCallbacks.size());
+        journalCallbacks.get(0).writeComplete(BookieProtocol.EOK, 1L, 0L, null, null);
+        Response response = channel.readOutbound();
+        Assert.assertEquals(StatusCode.EOK, response.getStatus());
+        verify(admission).complete(anyLong(), eq(true));
+        verify(requestProcessor).onAddRequestFinish(5);
+
+        // the admission is completed once
+        processor.completeAdmission(false);
+        verify(admission).complete(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void testAdmissionCompletedOnErrorResponse() throws Exception {
+        doThrow(new IOException("disk failure")).when(bookie).addEntry(any(), anyBoolean(), any(), any(), any());
+        newProcessor().run();
+        Response response = channel.readOutbound();
+        Assert.assertEquals(StatusCode.EIO, response.getStatus());
+        verify(admission).complete(anyLong(), eq(true));
+    }
+
+    @Test
+    public void testAdmissionCompletedOnRejection() {
+        WriteEntryProcessorV3 processor = newProcessor();
+        // rejected by the worker threads, the response sent afterwards doesn't complete it again
+        processor.completeAdmission(false);
+        processor.sendResponse(StatusCode.ETOOMANYREQUESTS, Response.newBuilder()
+                .setHeader(processor.getHeader())
+                .setStatus(StatusCode.ETOOMANYREQUESTS)
+                .build(), requestProcessor.getRequestStats().getAddRequestStats());
+        verify(admission).complete(anyLong(), eq(false));
+        verify(admission).complete(anyLong(), anyBoolean());
+    }
+}
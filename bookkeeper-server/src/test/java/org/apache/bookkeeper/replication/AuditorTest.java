@@ -0,0 +1,117 @@
+package org.apache.bookkeeper.replication;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.client.BookKeeperAdmin;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.discover.BookieServiceInfo;
+import org.apache.bookkeeper.discover.RegistrationClient;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManagerFactory;
+import org.apache.bookkeeper.meta.LedgerUnderreplicationManager;
+import org.apache.bookkeeper.meta.MetadataClientDriver;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AuditorTest {
+
+    private static final String BOOKIE1 = "bookie1:3181";
+    private static final String BOOKIE2 = "bookie2:3181";
+    private static final String BOOKIE3 = "bookie3:3181";
+
+    private RegistrationClient registrationClient;
+    private Auditor auditor;
+
+    @Before
+    public void setUp() throws Exception {
+        LedgerUnderreplicationManager underreplicationManager = mock(LedgerUnderreplicationManager.class);
+        when(underreplicationManager.initializeLostBookieRecoveryDelay(anyInt())).thenReturn(false);
+        LedgerManagerFactory ledgerManagerFactory = mock(LedgerManagerFactory.class);
+        when(ledgerManagerFactory.newLedgerUnderreplicationManager()).thenReturn(underreplicationManager);
+        when(ledgerManagerFactory.newLedgerManager()).thenReturn(mock(LedgerManager.class));
+        registrationClient = mock(RegistrationClient.class);
+        MetadataClientDriver metadataClientDriver = mock(MetadataClientDriver.class);
+        when(metadataClientDriver.getRegistrationClient()).thenReturn(registrationClient);
+        BookKeeper bkc = mock(BookKeeper.class);
+        when(bkc.getLedgerManagerFactory()).thenReturn(ledgerManagerFactory);
+        when(bkc.getMetadataClientDriver()).thenReturn(metadataClientDriver);
+        BookKeeperAdmin admin = mock(BookKeeperAdmin.class);
+        when(admin.getConf()).thenReturn(new ClientConfiguration());
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setAuditorIncrementalCheckEnabled(true);
+        auditor = new Auditor("auditor", conf, bkc, false, admin, false, NullStatsLogger.INSTANCE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        auditor.close();
+    }
+
+    private void advertise(String bookie, String startTime) {
+        Map<String, String> properties = new HashMap<>();
+        if (startTime != null) {
+            properties.put(BookieServiceInfo.START_TIME_PROPERTY, startTime);
+        }
+        when(registrationClient.getBookieServiceInfo(BookieId.parse(bookie))).thenReturn(
+                CompletableFuture.completedFuture(new Versioned<>(
+                        new BookieServiceInfo(properties, Collections.emptyList()), new LongVersion(0))));
+    }
+
+    @Test
+    public void testRestartedBookies() {
+        advertise(BOOKIE1, "1000");
+        advertise(BOOKIE2, "1000");
+        advertise(BOOKIE3, null);
+
+        // the bookies seen for the first time did not restart
+        Assert.assertTrue(auditor.getRestartedBookies(Arrays.asList(BOOKIE1, BOOKIE2, BOOKIE3)).isEmpty());
+        Assert.assertTrue(auditor.getRestartedBookies(Arrays.asList(BOOKIE1, BOOKIE2, BOOKIE3)).isEmpty());
+
+        advertise(BOOKIE2, "2000");
+        advertise(BOOKIE3, "2000");
+        Assert.assertEquals(Collections.singletonList(BOOKIE2),
+                auditor.getRestartedBookies(Arrays.asList(BOOKIE1, BOOKIE2, BOOKIE3)));
+
+        // a bookie that left is forgotten, it is not found restarted when it comes back
+        Assert.assertTrue(auditor.getRestartedBookies(Arrays.asList(BOOKIE2, BOOKIE3)).isEmpty());
+        advertise(BOOKIE1, "3000");
+        Assert.assertTrue(auditor.getRestartedBookies(Arrays.asList(BOOKIE1, BOOKIE2, BOOKIE3)).isEmpty());
+    }
+
+    @Test
+    public void testFailedServiceInfoRead() {
+        advertise(BOOKIE1, "1000");
+        advertise(BOOKIE2, "1000");
+        auditor.getRestartedBookies(Arrays.asList(BOOKIE1, BOOKIE2));
+
+        // the failure to read the service info of a bookie doesn't prevent finding the other restarted bookies
+        when(registrationClient.getBookieServiceInfo(BookieId.parse(BOOKIE1))).thenReturn(
+                FutureUtils.exception(new BKException.ZKException()));
+        advertise(BOOKIE2, "2000");
+        Assert.assertEquals(Collections.singletonList(BOOKIE2),
+                auditor.getRestartedBookies(Arrays.asList(BOOKIE1, BOOKIE2)));
+
+        // the start time of the bookie is still known once it can be read again
+        advertise(BOOKIE1, "2000");
+        Assert.assertEquals(Collections.singletonList(BOOKIE1),
+                auditor.getRestartedBookies(Arrays.asList(BOOKIE1, BOOKIE2)));
+    }
+}
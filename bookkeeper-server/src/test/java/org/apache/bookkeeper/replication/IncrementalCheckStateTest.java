@@ -0,0 +1,148 @@
+package org.apache.bookkeeper.replication;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IncrementalCheckStateTest {
+
+    private static final BookieId BOOKIE1 = BookieId.parse("bookie1:3181");
+    private static final BookieId BOOKIE2 = BookieId.parse("bookie2:3181");
+    private static final BookieId BOOKIE3 = BookieId.parse("bookie3:3181");
+
+    private static Versioned<LedgerMetadata> metadata(long ledgerId, long version, BookieId... ensemble) {
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(ledgerId)
+                .withEnsembleSize(ensemble.length).withWriteQuorumSize(ensemble.length)
+                .withAckQuorumSize(ensemble.length)
+                .newEnsembleEntry(0L, Arrays.asList(ensemble))
+                .build();
+        return new Versioned<>(metadata, new LongVersion(version));
+    }
+
+    @SafeVarargs
+    private static void healthyPass(IncrementalCheckState state, Versioned<LedgerMetadata>... ledgers) {
+        state.startPass();
+        for (Versioned<LedgerMetadata> ledger : ledgers) {
+            long ledgerId = ledger.getValue().getLedgerId();
+            if (state.needsCheck(ledgerId, ledger)) {
+                state.ledgerHealthy(ledgerId, ledger);
+            }
+        }
+        state.completePass(true);
+    }
+
+    @Test
+    public void testCheckChangedLedgers() {
+        IncrementalCheckState state = new IncrementalCheckState("test", 0);
+        Versioned<LedgerMetadata> ledger1 = metadata(1L, 0L, BOOKIE1, BOOKIE2);
+        Versioned<LedgerMetadata> ledger2 = metadata(2L, 0L, BOOKIE2, BOOKIE3);
+        Versioned<LedgerMetadata> ledger3 = metadata(3L, 0L, BOOKIE1, BOOKIE3);
+
+        // the first pass checks every ledger
+        state.startPass();
+        Assert.assertTrue(state.needsCheck(1L, ledger1));
+        state.ledgerHealthy(1L, ledger1);
+        Assert.assertTrue(state.needsCheck(2L, ledger2));
+        state.ledgerHealthy(2L, ledger2);
+        Assert.assertTrue(state.needsCheck(3L, ledger3));
+        state.ledgerUnhealthy(3L);
+        state.completePass(true);
+
+        state.startPass();
+        Assert.assertFalse(state.needsCheck(1L, ledger1));
+        // the metadata of the ledger changed
+        Assert.assertTrue(state.needsCheck(2L, metadata(2L, 1L, BOOKIE2, BOOKIE3)));
+        // the ledger was not found healthy
+        Assert.assertTrue(state.needsCheck(3L, ledger3));
+        state.completePass(true);
+    }
+
+    @Test
+    public void testCheckLedgersOfChangedBookies() {
+        IncrementalCheckState state = new IncrementalCheckState("test", 0);
+        Versioned<LedgerMetadata> ledger1 = metadata(1L, 0L, BOOKIE1, BOOKIE2);
+        Versioned<LedgerMetadata> ledger2 = metadata(2L, 0L, BOOKIE2, BOOKIE3);
+        healthyPass(state, ledger1, ledger2);
+
+        state.bookiesChanged(Collections.singletonList(BOOKIE1.toString()));
+        state.startPass();
+        Assert.assertTrue(state.needsCheck(1L, ledger1));
+        Assert.assertFalse(state.needsCheck(2L, ledger2));
+        // a bookie changing during the pass is taken into account by the next pass
+        state.bookiesChanged(Collections.singletonList(BOOKIE3.toString()));
+        Assert.assertFalse(state.needsCheck(2L, ledger2));
+        state.ledgerHealthy(1L, ledger1);
+        state.completePass(true);
+
+        state.startPass();
+        Assert.assertFalse(state.needsCheck(1L, ledger1));
+        Assert.assertTrue(state.needsCheck(2L, ledger2));
+        state.ledgerHealthy(2L, ledger2);
+        state.completePass(true);
+
+        state.startPass();
+        Assert.assertFalse(state.needsCheck(1L, ledger1));
+        Assert.assertFalse(state.needsCheck(2L, ledger2));
+    }
+
+    @Test
+    public void testInterruptedPassKeepsChangedBookies() {
+        IncrementalCheckState state = new IncrementalCheckState("test", 0);
+        Versioned<LedgerMetadata> ledger1 = metadata(1L, 0L, BOOKIE1, BOOKIE2);
+        healthyPass(state, ledger1);
+
+        state.bookiesChanged(Collections.singletonList(BOOKIE1.toString()));
+        state.startPass();
+        // the pass is interrupted before checking the ledger, the next pass still checks it
+        state.startPass();
+        Assert.assertTrue(state.needsCheck(1L, ledger1));
+    }
+
+    @Test
+    public void testFullPassInterval() {
+        IncrementalCheckState state = new IncrementalCheckState("test", 3);
+        Versioned<LedgerMetadata> ledger1 = metadata(1L, 0L, BOOKIE1, BOOKIE2);
+        healthyPass(state, ledger1);
+
+        state.startPass();
+        Assert.assertFalse(state.needsCheck(1L, ledger1));
+        state.completePass(true);
+        state.startPass();
+        Assert.assertFalse(state.needsCheck(1L, ledger1));
+        state.completePass(true);
+        // every third pass is a full pass
+        state.startPass();
+        Assert.assertTrue(state.needsCheck(1L, ledger1));
+        state.completePass(true);
+        state.startPass();
+        Assert.assertFalse(state.needsCheck(1L, ledger1));
+    }
+
+    @Test
+    public void testForgetDeletedLedgers() {
+        IncrementalCheckState state = new IncrementalCheckState("test", 0);
+        Versioned<LedgerMetadata> ledger1 = metadata(1L, 0L, BOOKIE1, BOOKIE2);
+        Versioned<LedgerMetadata> ledger2 = metadata(2L, 0L, BOOKIE2, BOOKIE3);
+        healthyPass(state, ledger1, ledger2);
+
+        // a pass resumed from a checkpoint did not see all the ledgers, it doesn't forget any
+        state.startPass();
+        Assert.assertFalse(state.needsCheck(2L, ledger2));
+        state.completePass(false);
+        state.startPass();
+        Assert.assertFalse(state.needsCheck(1L, ledger1));
+        state.completePass(true);
+
+        // ledger 2 was not seen by the complete pass, it is checked if it shows up again
+        state.startPass();
+        Assert.assertFalse(state.needsCheck(1L, ledger1));
+        Assert.assertTrue(state.needsCheck(2L, ledger2));
+    }
+}
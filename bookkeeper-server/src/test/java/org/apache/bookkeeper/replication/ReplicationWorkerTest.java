@@ -0,0 +1,136 @@
+package org.apache.bookkeeper.replication;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManagerFactory;
+import org.apache.bookkeeper.meta.LedgerUnderreplicationManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReplicationWorkerTest {
+
+    private LedgerUnderreplicationManager underreplicationManager;
+    private BookKeeper bkc;
+    // the ledgers leased by the worker, in order
+    private final BlockingQueue<Long> ledgersToReplicate = new LinkedBlockingQueue<>();
+    private ReplicationWorker worker;
+
+    @Before
+    public void setUp() throws Exception {
+        underreplicationManager = mock(LedgerUnderreplicationManager.class);
+        when(underreplicationManager.getLedgerToRereplicate()).thenAnswer(invocation -> ledgersToReplicate.take());
+        LedgerManagerFactory ledgerManagerFactory = mock(LedgerManagerFactory.class);
+        when(ledgerManagerFactory.newLedgerUnderreplicationManager()).thenReturn(underreplicationManager);
+        when(ledgerManagerFactory.newLedgerManager()).thenReturn(mock(LedgerManager.class));
+        bkc = mock(BookKeeper.class);
+        when(bkc.getLedgerManagerFactory()).thenReturn(ledgerManagerFactory);
+    }
+
+    @After
+    public void tearDown() {
+        if (worker != null) {
+            worker.shutdown();
+        }
+    }
+
+    private static ServerConfiguration newConf(int concurrentLedgers) {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setRwRereplicateConcurrentLedgers(concurrentLedgers);
+        // long enough for the test to time out if the shutdown waited for the task shutting it down
+        conf.setRwRereplicateBackoffMs(60000);
+        return conf;
+    }
+
+    @Test
+    public void testReplicateLedgersConcurrently() throws Exception {
+        AtomicInteger replicating = new AtomicInteger();
+        AtomicInteger maxReplicating = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> replicated = new CopyOnWriteArrayList<>();
+        worker = new ReplicationWorker(newConf(3), bkc, false, NullStatsLogger.INSTANCE) {
+            @Override
+            boolean rereplicate(long ledgerId) throws InterruptedException {
+                maxReplicating.accumulateAndGet(replicating.incrementAndGet(), Math::max);
+                try {
+                    release.await();
+                } finally {
+                    replicating.decrementAndGet();
+                }
+                replicated.add(ledgerId);
+                return true;
+            }
+        };
+        for (long ledgerId = 0; ledgerId < 10; ledgerId++) {
+            ledgersToReplicate.add(ledgerId);
+        }
+        worker.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (replicating.get() < 3 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(3, replicating.get());
+        // no more ledger is leased until one of the replications completes
+        Thread.sleep(100);
+        Assert.assertEquals(7, ledgersToReplicate.size());
+
+        release.countDown();
+        while (replicated.size() < 10 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(10, replicated.size());
+        Assert.assertEquals(3, maxReplicating.get());
+    }
+
+    @Test
+    public void testShutdownFromReplicationTask() throws Exception {
+        worker = new ReplicationWorker(newConf(2), bkc, false, NullStatsLogger.INSTANCE) {
+            @Override
+            boolean rereplicate(long ledgerId) throws ReplicationException.UnavailableException {
+                throw new ReplicationException.NonRecoverableReplicationException("failed");
+            }
+        };
+        ledgersToReplicate.add(1L);
+        worker.start();
+
+        // the task shutting down the worker doesn't wait for itself for the backoff time
+        verify(underreplicationManager, timeout(10000)).close();
+        Assert.assertFalse(worker.isRunning());
+    }
+
+    @Test
+    public void testReleaseLeaseOfUnexpectedFailures() throws Exception {
+        CountDownLatch attempts = new CountDownLatch(2);
+        worker = new ReplicationWorker(newConf(2), bkc, false, NullStatsLogger.INSTANCE) {
+            @Override
+            boolean rereplicate(long ledgerId) {
+                attempts.countDown();
+                throw new IllegalStateException("unexpected");
+            }
+        };
+        ledgersToReplicate.add(1L);
+        ledgersToReplicate.add(2L);
+        worker.start();
+
+        Assert.assertTrue(attempts.await(10, TimeUnit.SECONDS));
+        verify(underreplicationManager, timeout(10000)).releaseUnderreplicatedLedger(1L);
+        verify(underreplicationManager, timeout(10000)).releaseUnderreplicatedLedger(2L);
+        Assert.assertTrue(worker.isRunning());
+    }
+}
@@ -0,0 +1,167 @@
+package org.apache.bookkeeper.util.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentOffHeapLongLongPairHashMapTest {
+
+    private static ConcurrentOffHeapLongLongPairHashMap newMap(int concurrencyLevel) {
+        return ConcurrentOffHeapLongLongPairHashMap.newBuilder()
+                .expectedItems(16)
+                .concurrencyLevel(concurrencyLevel)
+                .build();
+    }
+
+    @Test
+    public void testIncrementalMigration() {
+        try (ConcurrentOffHeapLongLongPairHashMap map = newMap(1)) {
+            long initialCapacity = map.capacity();
+            boolean sawMigration = false;
+            for (long key = 0; key < 1000; key++) {
+                Assert.assertTrue(map.put(key, key + 1, key * 2, key * 3));
+                sawMigration |= map.getResizingSectionCount() > 0;
+
+                // the keys not migrated yet are found in the table being resized
+                for (long other = 0; other <= key; other++) {
+                    Assert.assertEquals(new LongPair(other * 2, other * 3), map.get(other, other + 1));
+                }
+            }
+            Assert.assertTrue(sawMigration);
+            Assert.assertTrue(map.capacity() > initialCapacity);
+            Assert.assertEquals(1000, map.size());
+            Assert.assertEquals(1000, map.keys().size());
+
+            for (long key = 0; key < 1000; key += 2) {
+                Assert.assertTrue(map.remove(key, key + 1));
+            }
+            Assert.assertEquals(500, map.size());
+            for (long key = 0; key < 1000; key++) {
+                LongPair value = map.get(key, key + 1);
+                if (key % 2 == 0) {
+                    Assert.assertNull(value);
+                } else {
+                    Assert.assertEquals(new LongPair(key * 2, key * 3), value);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentMigration() throws Exception {
+        int numWriters = 4;
+        int numReaders = 4;
+        int keysPerWriter = 20000;
+        AtomicBoolean writersDone = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+
+        try (ConcurrentOffHeapLongLongPairHashMap map = newMap(2)) {
+            for (int w = 0; w < numWriters; w++) {
+                long firstKey = (long) w * keysPerWriter;
+                writers.add(new Thread(() -> {
+                    try {
+                        start.await();
+                        for (long key = firstKey; key < firstKey + keysPerWriter; key++) {
+                            map.put(key, 1, key * 2, 0);
+                            // the keys divisible by 3 are removed again, while the section may be migrating
+                            if (key % 3 == 0 && key - 3 >= firstKey) {
+                                Assert.assertTrue(map.remove(key - 3, 1));
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }));
+            }
+            for (int r = 0; r < numReaders; r++) {
+                readers.add(new Thread(() -> {
+                    try {
+                        start.await();
+                        long maxKey = (long) numWriters * keysPerWriter;
+                        while (!writersDone.get()) {
+                            long key = ThreadLocalRandom.current().nextLong(maxKey);
+                            LongPair value = map.get(key, 1);
+                            if (value != null) {
+                                Assert.assertEquals(key * 2, value.first);
+                                Assert.assertEquals(0, value.second);
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }));
+            }
+            writers.forEach(Thread::start);
+            readers.forEach(Thread::start);
+            start.countDown();
+            for (Thread writer : writers) {
+                writer.join(TimeUnit.SECONDS.toMillis(60));
+            }
+            writersDone.set(true);
+            for (Thread reader : readers) {
+                reader.join(TimeUnit.SECONDS.toMillis(60));
+            }
+            if (failure.get() != null) {
+                throw new AssertionError(failure.get());
+            }
+
+            long expectedSize = 0;
+            for (int w = 0; w < numWriters; w++) {
+                long firstKey = (long) w * keysPerWriter;
+                for (long key = firstKey; key < firstKey + keysPerWriter; key++) {
+                    // the last key divisible by 3 of each writer is not removed
+                    boolean present = key % 3 != 0 || key + 3 >= firstKey + keysPerWriter;
+                    LongPair value = map.get(key, 1);
+                    if (present) {
+                        expectedSize++;
+                        Assert.assertEquals(new LongPair(key * 2, 0), value);
+                    } else {
+                        Assert.assertNull(value);
+                    }
+                }
+            }
+            Assert.assertEquals(expectedSize, map.size());
+        }
+    }
+
+    @Test
+    public void testClosedMap() {
+        ConcurrentOffHeapLongLongPairHashMap map = newMap(1);
+        for (long key = 0; key < 100; key++) {
+            map.put(key, 0, key, 0);
+        }
+        map.close();
+
+        try {
+            map.get(1, 0);
+            Assert.fail("The map is closed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            map.put(1, 0, 1, 0);
+            Assert.fail("The map is closed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            map.sizeInBytes();
+            Assert.fail("The map is closed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        // closing again is a no-op
+        map.close();
+        Assert.assertEquals(0, map.size());
+    }
+}
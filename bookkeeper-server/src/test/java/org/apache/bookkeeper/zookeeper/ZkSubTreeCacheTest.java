@@ -0,0 +1,207 @@
+package org.apache.bookkeeper.zookeeper;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.apache.zookeeper.AddWatchMode;
+import org.apache.zookeeper.AsyncCallback.Children2Callback;
+import org.apache.zookeeper.AsyncCallback.VoidCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.Watcher.WatcherType;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZkSubTreeCacheTest {
+
+    private static final String ROOT = "/ledgers/available";
+
+    private ZooKeeperClient zk;
+    private final Map<String, ZkSubTreeCache> subTreeCaches = new HashMap<>();
+    // the children of each znode, and their children version
+    private final Map<String, Set<String>> tree = new HashMap<>();
+    private final Map<String, Integer> cversions = new HashMap<>();
+    private final List<VoidCallback> addWatchCallbacks = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        zk = mock(ZooKeeperClient.class);
+        when(zk.getSubTreeCaches()).thenReturn(subTreeCaches);
+        tree.put(ROOT, new HashSet<>(Arrays.asList("bookie1:3181", "readonly")));
+        tree.put(ROOT + "/readonly", new HashSet<>());
+        doAnswer(invocation -> {
+            addWatchCallbacks.add(invocation.getArgument(3));
+            return null;
+        }).when(zk).addWatch(eq(ROOT), any(Watcher.class), eq(AddWatchMode.PERSISTENT_RECURSIVE),
+                any(VoidCallback.class), any());
+        doAnswer(invocation -> {
+            String path = invocation.getArgument(0);
+            Children2Callback cb = invocation.getArgument(2);
+            Set<String> children = tree.get(path);
+            if (children == null) {
+                cb.processResult(Code.NONODE.intValue(), path, invocation.getArgument(3), null, null);
+            } else {
+                Stat stat = new Stat();
+                stat.setCversion(cversions.getOrDefault(path, 0));
+                cb.processResult(Code.OK.intValue(), path, invocation.getArgument(3), new ArrayList<>(children),
+                        stat);
+            }
+            return null;
+        }).when(zk).getChildren(anyString(), anyBoolean(), any(Children2Callback.class), any());
+    }
+
+    private void establishWatch() {
+        for (VoidCallback cb : addWatchCallbacks) {
+            cb.processResult(Code.OK.intValue(), ROOT, null);
+        }
+        addWatchCallbacks.clear();
+    }
+
+    private static Set<String> childrenOf(ZkSubTreeCache cache, String path) throws Exception {
+        return new HashSet<>(cache.getChildren(path));
+    }
+
+    private static WatchedEvent event(EventType type, String path) {
+        return new WatchedEvent(type, KeeperState.SyncConnected, path);
+    }
+
+    @Test
+    public void testChildrenCachedOnceWatched() throws Exception {
+        ZkSubTreeCache cache = ZkSubTreeCache.acquire(zk, ROOT);
+        // the children read before the watch is established are not cached
+        Assert.assertEquals(tree.get(ROOT), childrenOf(cache, ROOT));
+        Assert.assertEquals(1, addWatchCallbacks.size());
+        Assert.assertEquals(tree.get(ROOT), childrenOf(cache, ROOT));
+        verify(zk, times(2)).getChildren(eq(ROOT), eq(false), any(Children2Callback.class), any());
+
+        establishWatch();
+        Assert.assertEquals(tree.get(ROOT), childrenOf(cache, ROOT));
+        Assert.assertEquals(tree.get(ROOT), childrenOf(cache, ROOT));
+        verify(zk, times(3)).getChildren(eq(ROOT), eq(false), any(Children2Callback.class), any());
+        // the watch is added once
+        verify(zk, times(1)).addWatch(eq(ROOT), any(Watcher.class), any(AddWatchMode.class),
+                any(VoidCallback.class), any());
+        cache.close();
+    }
+
+    @Test
+    public void testUpdatedFromEvents() throws Exception {
+        cversions.put(ROOT, 5);
+        ZkSubTreeCache cache = ZkSubTreeCache.acquire(zk, ROOT);
+        List<WatchedEvent> received = new ArrayList<>();
+        cache.registerListener(received::add);
+        cache.getChildren(ROOT);
+        establishWatch();
+        Assert.assertEquals(new LongVersion(5), cache.getChildrenAsync(ROOT).get().getVersion());
+        Assert.assertEquals(Collections.emptyList(), cache.getChildren(ROOT + "/readonly"));
+
+        cache.process(event(EventType.NodeCreated, ROOT + "/bookie2:3181"));
+        cache.process(event(EventType.NodeCreated, ROOT + "/readonly/bookie1:3181"));
+        cache.process(event(EventType.NodeDeleted, ROOT + "/bookie1:3181"));
+        // data changes don't change the children
+        cache.process(event(EventType.NodeDataChanged, ROOT + "/bookie2:3181"));
+
+        Versioned<List<String>> children = cache.getChildrenAsync(ROOT).get();
+        Assert.assertEquals(new HashSet<>(Arrays.asList("bookie2:3181", "readonly")),
+                new HashSet<>(children.getValue()));
+        Assert.assertEquals(new LongVersion(7), children.getVersion());
+        Assert.assertEquals(Collections.singletonList("bookie1:3181"), cache.getChildren(ROOT + "/readonly"));
+        // the updated children are served from the cache
+        verify(zk, times(3)).getChildren(anyString(), eq(false), any(Children2Callback.class), any());
+        // the listeners receive all the events
+        Assert.assertEquals(4, received.size());
+
+        // the deletion of a znode drops the cached children of its subtree
+        cache.process(event(EventType.NodeDeleted, ROOT + "/readonly"));
+        tree.remove(ROOT + "/readonly");
+        try {
+            cache.getChildren(ROOT + "/readonly");
+            Assert.fail("The node was deleted");
+        } catch (KeeperException.NoNodeException e) {
+            // expected
+        }
+        cache.close();
+    }
+
+    @Test
+    public void testDroppedOnDisconnectionAndRewatchedOnExpiration() throws Exception {
+        ZkSubTreeCache cache = ZkSubTreeCache.acquire(zk, ROOT);
+        cache.getChildren(ROOT);
+        establishWatch();
+        cache.getChildren(ROOT);
+        verify(zk, times(2)).getChildren(eq(ROOT), eq(false), any(Children2Callback.class), any());
+
+        // the events are lost while disconnected, the children are listed again
+        cache.process(new WatchedEvent(EventType.None, KeeperState.Disconnected, null));
+        tree.get(ROOT).add("bookie2:3181");
+        Assert.assertTrue(cache.getChildren(ROOT).contains("bookie2:3181"));
+        Assert.assertTrue(cache.getChildren(ROOT).contains("bookie2:3181"));
+        verify(zk, times(3)).getChildren(eq(ROOT), eq(false), any(Children2Callback.class), any());
+
+        // the watch of the expired session is added again to the new session
+        cache.process(new WatchedEvent(EventType.None, KeeperState.Expired, null));
+        cache.getChildren(ROOT);
+        Assert.assertEquals(1, addWatchCallbacks.size());
+        cache.close();
+    }
+
+    @Test
+    public void testSharedByTheClient() throws Exception {
+        ZkSubTreeCache cache1 = ZkSubTreeCache.acquire(zk, ROOT);
+        ZkSubTreeCache cache2 = ZkSubTreeCache.acquire(zk, ROOT);
+        Assert.assertSame(cache1, cache2);
+        Assert.assertSame(cache1, subTreeCaches.get(ROOT));
+        Assert.assertNotSame(cache1, ZkSubTreeCache.acquire(zk, "/ledgers/underreplication"));
+
+        // another client has its own caches
+        ZooKeeperClient otherZk = mock(ZooKeeperClient.class);
+        when(otherZk.getSubTreeCaches()).thenReturn(new HashMap<>());
+        Assert.assertNotSame(cache1, ZkSubTreeCache.acquire(otherZk, ROOT));
+        // the other handles aren't shared
+        ZooKeeper plainZk = mock(ZooKeeper.class);
+        Assert.assertNotSame(ZkSubTreeCache.acquire(plainZk, ROOT), ZkSubTreeCache.acquire(plainZk, ROOT));
+
+        cache1.getChildren(ROOT);
+        establishWatch();
+
+        // the watch is removed once the cache is released by all the components using it
+        cache1.close();
+        verify(zk, never()).removeWatches(anyString(), any(Watcher.class), any(WatcherType.class), anyBoolean(),
+                any(VoidCallback.class), any());
+        Assert.assertSame(cache1, subTreeCaches.get(ROOT));
+        cache2.close();
+        verify(zk).removeWatches(eq(ROOT), eq(cache1), eq(WatcherType.Any), eq(true), any(VoidCallback.class),
+                any());
+        Assert.assertNull(subTreeCaches.get(ROOT));
+
+        // a new cache is created by the next acquisition
+        ZkSubTreeCache cache3 = ZkSubTreeCache.acquire(zk, ROOT);
+        Assert.assertNotSame(cache1, cache3);
+        cache3.close();
+    }
+}
@@ -31,7 +31,7 @@ public class Crc32cIntChecksum {
         } else if (Java9IntHash.HAS_JAVA9_CRC32C) {
             CRC32C_HASH = new Java9IntHash();
         } else {
-            CRC32C_HASH = new Java8IntHash();
+            CRC32C_HASH = new SlicingIntHash();
         }
     }
 
@@ -94,6 +94,22 @@ public class Crc32cIntChecksum {
         return CRC32C_HASH.resume(previousChecksum, payload, offset, len);
     }
 
+    /**
+     * Computes incremental checksum of the payload while appending it to another buffer, in a single pass over
+     * the payload.
+     *
+     * @param previousChecksum the previously computed checksum
+     * @param payload the data for which the checksum is to be computed
+     * @param offset the starting position in the payload
+     * @param len the number of bytes to include in the checksum computation
+     * @param dst the buffer the bytes are appended to
+     * @return the updated checksum
+     */
+    public static int resumeChecksumAndCopy(int previousChecksum, ByteBuf payload, int offset, int len,
+                                            ByteBuf dst) {
+        return CRC32C_HASH.resumeAndCopy(previousChecksum, payload, offset, len, dst);
+    }
+
     public static boolean acceptsMemoryAddressBuffer() {
         return CRC32C_HASH.acceptsMemoryAddressBuffer();
     }
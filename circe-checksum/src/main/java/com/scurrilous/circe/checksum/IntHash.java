@@ -32,4 +32,27 @@ public interface IntHash {
     int resume(int current, byte[] buffer, int offset, int len);
 
     boolean acceptsMemoryAddressBuffer();
+
+    /**
+     * Resume the checksum of {@code len} bytes of a buffer and append them to another buffer, in a single pass:
+     * the bytes are checksummed and copied by chunks small enough to still be in the CPU cache when copied.
+     *
+     * @param current the checksum of the previous bytes
+     * @param src the buffer to checksum and copy
+     * @param offset the index of the first byte in {@code src}
+     * @param len the number of bytes
+     * @param dst the buffer the bytes are appended to
+     * @return the updated checksum
+     */
+    default int resumeAndCopy(int current, ByteBuf src, int offset, int len, ByteBuf dst) {
+        final int chunkLength = 4096;
+        dst.ensureWritable(len);
+        final int end = offset + len;
+        for (int index = offset; index < end; index += chunkLength) {
+            int length = Math.min(chunkLength, end - index);
+            current = resume(current, src, index, length);
+            dst.writeBytes(src, index, length);
+        }
+        return current;
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.scurrilous.circe.checksum;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Pure Java CRC32C, without JNI nor JDK 9.
+ *
+ * <p>The large buffers are split in blocks of three streams of {@link #STREAM_LENGTH} bytes, whose CRCs are
+ * computed in the same loop, 8 bytes at a time with slicing-by-8 tables, so that the table lookups of the three
+ * streams are independent. The CRCs of the streams are then folded together by multiplying them by
+ * x^(8 * {@link #STREAM_LENGTH}) modulo the CRC polynomial, with precomputed tables, the same way as the
+ * native implementation does with carry-less multiplications.
+ */
+public class SlicingIntHash implements IntHash {
+
+    // reflected CRC32C (Castagnoli) polynomial
+    private static final int POLY = 0x82F63B78;
+
+    static final int STREAM_LENGTH = 512;
+    private static final int BLOCK_LENGTH = 3 * STREAM_LENGTH;
+
+    // slicing-by-8 tables, T[k][b] is the CRC of the byte b followed by k zero bytes
+    private static final int[][] T = new int[8][256];
+    // SHIFT[k][b] is the CRC register (b << 8k) shifted by STREAM_LENGTH zero bytes
+    private static final int[][] SHIFT = new int[4][256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            int crc = b;
+            for (int i = 0; i < 8; i++) {
+                crc = (crc >>> 1) ^ ((crc & 1) != 0 ? POLY : 0);
+            }
+            T[0][b] = crc;
+        }
+        for (int k = 1; k < 8; k++) {
+            for (int b = 0; b < 256; b++) {
+                int prev = T[k - 1][b];
+                T[k][b] = (prev >>> 8) ^ T[0][prev & 0xff];
+            }
+        }
+        for (int k = 0; k < 4; k++) {
+            for (int b = 0; b < 256; b++) {
+                int crc = b << (8 * k);
+                for (int i = 0; i < STREAM_LENGTH; i++) {
+                    crc = (crc >>> 8) ^ T[0][crc & 0xff];
+                }
+                SHIFT[k][b] = crc;
+            }
+        }
+    }
+
+    @Override
+    public int calculate(ByteBuf buffer) {
+        return resume(0, buffer);
+    }
+
+    @Override
+    public int calculate(ByteBuf buffer, int offset, int len) {
+        return resume(0, buffer, offset, len);
+    }
+
+    @Override
+    public int resume(int current, ByteBuf buffer) {
+        return resume(current, buffer, buffer.readerIndex(), buffer.readableBytes());
+    }
+
+    @Override
+    public int resume(int current, ByteBuf buffer, int offset, int len) {
+        // the input is complemented to get the CRC register, and the register is complemented back on return
+        return ~update(~current, buffer, offset, len);
+    }
+
+    @Override
+    public int resume(int current, byte[] buffer, int offset, int len) {
+        return ~update(~current, Unpooled.wrappedBuffer(buffer, offset, len), 0, len);
+    }
+
+    @Override
+    public boolean acceptsMemoryAddressBuffer() {
+        return true;
+    }
+
+    private static int update(int crc, ByteBuf buf, int index, int len) {
+        final int end = index + len;
+        while (end - index >= BLOCK_LENGTH) {
+            int crc1 = crc;
+            int crc2 = 0;
+            int crc3 = 0;
+            final int blockEnd = index + STREAM_LENGTH;
+            for (; index < blockEnd; index += 8) {
+                crc1 = update8(crc1, buf.getLongLE(index));
+                crc2 = update8(crc2, buf.getLongLE(index + STREAM_LENGTH));
+                crc3 = update8(crc3, buf.getLongLE(index + 2 * STREAM_LENGTH));
+            }
+            crc = shift(shift(crc1) ^ crc2) ^ crc3;
+            index += 2 * STREAM_LENGTH;
+        }
+        for (; end - index >= 8; index += 8) {
+            crc = update8(crc, buf.getLongLE(index));
+        }
+        for (; index < end; index++) {
+            crc = (crc >>> 8) ^ T[0][(crc ^ buf.getByte(index)) & 0xff];
+        }
+        return crc;
+    }
+
+    private static int update8(int crc, long value) {
+        int lo = (int) value ^ crc;
+        int hi = (int) (value >>> 32);
+        return T[7][lo & 0xff] ^ T[6][(lo >>> 8) & 0xff] ^ T[5][(lo >>> 16) & 0xff] ^ T[4][lo >>> 24]
+            ^ T[3][hi & 0xff] ^ T[2][(hi >>> 8) & 0xff] ^ T[1][(hi >>> 16) & 0xff] ^ T[0][hi >>> 24];
+    }
+
+    /**
+     * Shift a CRC register by {@link #STREAM_LENGTH} zero bytes.
+     */
+    private static int shift(int crc) {
+        return SHIFT[0][crc & 0xff] ^ SHIFT[1][(crc >>> 8) & 0xff] ^ SHIFT[2][(crc >>> 16) & 0xff]
+            ^ SHIFT[3][crc >>> 24];
+    }
+}
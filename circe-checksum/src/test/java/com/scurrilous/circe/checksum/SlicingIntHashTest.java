@@ -0,0 +1,139 @@
+package com.scurrilous.circe.checksum;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SlicingIntHashTest {
+
+    private static final int BLOCK_LENGTH = 3 * SlicingIntHash.STREAM_LENGTH;
+    // lengths around the 8 bytes words and the blocks of three streams, with unaligned tails
+    private static final int[] LENGTHS = {
+        0, 1, 7, 8, 9, 63, 511, 512, 513, BLOCK_LENGTH - 1, BLOCK_LENGTH, BLOCK_LENGTH + 1, BLOCK_LENGTH + 7,
+        BLOCK_LENGTH + 8, 2 * BLOCK_LENGTH - 3, 2 * BLOCK_LENGTH, 3 * BLOCK_LENGTH + 5, 4096, 4097, 10000, 65536 + 3
+    };
+
+    private final Random random = new Random(0x5eed);
+    private final IntHash slicing = new SlicingIntHash();
+    private final IntHash reference = new Java8IntHash();
+
+    private ByteBuf randomBuffer(int length, boolean direct) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        ByteBuf buf = direct ? Unpooled.directBuffer(length) : Unpooled.buffer(length);
+        return buf.writeBytes(bytes);
+    }
+
+    @Test
+    public void testKnownValue() {
+        byte[] bytes = "123456789".getBytes(StandardCharsets.US_ASCII);
+        Assert.assertEquals(0xE3069283, slicing.calculate(Unpooled.wrappedBuffer(bytes)));
+        Assert.assertEquals(0xE3069283, slicing.resume(0, bytes, 0, bytes.length));
+        Assert.assertEquals(0, slicing.calculate(Unpooled.EMPTY_BUFFER));
+    }
+
+    private void checkCalculate(boolean direct) {
+        for (int length : LENGTHS) {
+            int offset = random.nextInt(16);
+            ByteBuf buf = randomBuffer(offset + length + random.nextInt(16), direct);
+            try {
+                Assert.assertEquals("length " + length + " at " + offset,
+                    reference.calculate(buf, offset, length), slicing.calculate(buf, offset, length));
+            } finally {
+                buf.release();
+            }
+        }
+        for (int i = 0; i < 200; i++) {
+            int length = random.nextInt(4 * BLOCK_LENGTH);
+            int offset = random.nextInt(64);
+            ByteBuf buf = randomBuffer(offset + length, direct);
+            try {
+                buf.readerIndex(offset);
+                Assert.assertEquals("length " + length + " at " + offset,
+                    reference.calculate(buf), slicing.calculate(buf));
+                Assert.assertEquals(offset, buf.readerIndex());
+            } finally {
+                buf.release();
+            }
+        }
+    }
+
+    @Test
+    public void testCalculateHeap() {
+        checkCalculate(false);
+    }
+
+    @Test
+    public void testCalculateDirect() {
+        checkCalculate(true);
+    }
+
+    private void checkResume(boolean direct) {
+        for (int i = 0; i < 200; i++) {
+            int length = i < LENGTHS.length ? LENGTHS[i] : random.nextInt(4 * BLOCK_LENGTH);
+            int offset = random.nextInt(16);
+            int split = random.nextInt(length + 1);
+            ByteBuf buf = randomBuffer(offset + length, direct);
+            try {
+                int expected = reference.calculate(buf, offset, length);
+                int first = slicing.calculate(buf, offset, split);
+                Assert.assertEquals("length " + length + " split at " + split,
+                    expected, slicing.resume(first, buf, offset + split, length - split));
+                Assert.assertEquals(expected, reference.resume(first, buf, offset + split, length - split));
+
+                byte[] bytes = new byte[offset + length];
+                buf.getBytes(0, bytes);
+                Assert.assertEquals(expected, slicing.resume(first, bytes, offset + split, length - split));
+            } finally {
+                buf.release();
+            }
+        }
+    }
+
+    @Test
+    public void testResumeHeap() {
+        checkResume(false);
+    }
+
+    @Test
+    public void testResumeDirect() {
+        checkResume(true);
+    }
+
+    private void checkResumeAndCopy(boolean direct) {
+        for (int i = 0; i < 100; i++) {
+            int length = i < LENGTHS.length ? LENGTHS[i] : random.nextInt(5 * 4096);
+            int offset = random.nextInt(16);
+            ByteBuf src = randomBuffer(offset + length, direct);
+            ByteBuf dst = direct ? Unpooled.directBuffer(16) : Unpooled.buffer(16);
+            try {
+                int current = random.nextInt();
+                dst.writeInt(current);
+                Assert.assertEquals("length " + length,
+                    reference.resume(current, src, offset, length),
+                    slicing.resumeAndCopy(current, src, offset, length, dst));
+                // the bytes are appended to the destination, the source is unchanged
+                Assert.assertEquals(4 + length, dst.readableBytes());
+                Assert.assertEquals(current, dst.readInt());
+                Assert.assertEquals(src.slice(offset, length), dst);
+                Assert.assertEquals(0, src.readerIndex());
+            } finally {
+                src.release();
+                dst.release();
+            }
+        }
+    }
+
+    @Test
+    public void testResumeAndCopyHeap() {
+        checkResumeAndCopy(false);
+    }
+
+    @Test
+    public void testResumeAndCopyDirect() {
+        checkResumeAndCopy(true);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.metadata.etcd;
+
+import static org.apache.bookkeeper.metadata.etcd.Etcd64bitIdGenerator.BUCKET_ID_MASK;
+import static org.apache.bookkeeper.metadata.etcd.Etcd64bitIdGenerator.BUCKET_ID_SHIFT;
+import static org.apache.bookkeeper.metadata.etcd.Etcd64bitIdGenerator.MAX_ID_PER_BUCKET;
+import static org.apache.bookkeeper.metadata.etcd.Etcd64bitIdGenerator.NUM_BUCKETS;
+
+import io.etcd.jetcd.ByteSequence;
+import io.etcd.jetcd.KV;
+import io.etcd.jetcd.KeyValue;
+import io.etcd.jetcd.kv.TxnResponse;
+import io.etcd.jetcd.op.Cmp;
+import io.etcd.jetcd.op.CmpTarget;
+import io.etcd.jetcd.options.PutOption;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.meta.BlockLedgerIdGenerator;
+
+/**
+ * Etcd based ledger id generator reserving blocks of ids.
+ *
+ * <p>The ids keep the layout of {@link Etcd64bitIdGenerator}: the 7 high bits are a bucket id and the
+ * low 56 bits an id in the bucket. The blocks are reserved round robin over the buckets, by a conditional
+ * update of the next id stored under <i>(bucket)/blocks</i>. They are allocated from the upper half of
+ * the ids of a bucket, which the version based ids of {@link Etcd64bitIdGenerator} never reach, so that
+ * both generators can run against the same cluster.
+ */
+@Slf4j
+class EtcdBlockLedgerIdGenerator extends BlockLedgerIdGenerator {
+
+    static final String BLOCKS_NODE = "blocks";
+
+    /**
+     * The first id in a bucket handed out in blocks.
+     */
+    static final long FIRST_BLOCK_ID_IN_BUCKET = 1L << (BUCKET_ID_SHIFT - 1);
+
+    private final String scope;
+    private final KV kvClient;
+    private final AtomicInteger nextBucketId;
+
+    EtcdBlockLedgerIdGenerator(KV kvClient, String scope, int blockSize) {
+        super(blockSize);
+        this.kvClient = kvClient;
+        this.scope = scope;
+        this.nextBucketId = new AtomicInteger(ThreadLocalRandom.current().nextInt(NUM_BUCKETS));
+    }
+
+    private ByteSequence getBlocksKey(int bucketId) {
+        return ByteSequence.from(
+            String.format("%s/%s", EtcdUtils.getBucketPath(scope, bucketId), BLOCKS_NODE),
+            StandardCharsets.UTF_8);
+    }
+
+    private static long toLedgerId(int bucketId, long idInBucket) {
+        return ((((long) bucketId) << BUCKET_ID_SHIFT) & BUCKET_ID_MASK) | idInBucket;
+    }
+
+    @Override
+    protected CompletableFuture<Long> reserveBlock() {
+        CompletableFuture<Long> promise = new CompletableFuture<>();
+        reserveBlock(Math.floorMod(nextBucketId.getAndIncrement(), NUM_BUCKETS), 0, promise);
+        return promise;
+    }
+
+    private void reserveBlock(int bucketId, int numFullBuckets, CompletableFuture<Long> promise) {
+        if (numFullBuckets >= NUM_BUCKETS) {
+            log.error("Ledger id blocks are exhausted in all the buckets");
+            promise.completeExceptionally(new BKException.BKLedgerIdOverflowException());
+            return;
+        }
+        ByteSequence key = getBlocksKey(bucketId);
+        kvClient.get(key).thenAccept(getResp -> {
+            final long start;
+            final long modRevision;
+            if (getResp.getCount() <= 0) {
+                // the first block of the bucket
+                start = FIRST_BLOCK_ID_IN_BUCKET;
+                modRevision = 0L;
+            } else {
+                KeyValue kv = getResp.getKvs().get(0);
+                start = EtcdUtils.toLong(kv.getValue().getBytes(), 0);
+                modRevision = kv.getModRevision();
+            }
+            if (start + blockSize - 1 > MAX_ID_PER_BUCKET) {
+                log.warn("Ledger id blocks are exhausted in bucket {}, moving to the next bucket", bucketId);
+                reserveBlock((bucketId + 1) % NUM_BUCKETS, numFullBuckets + 1, promise);
+                return;
+            }
+            updateNextId(key, modRevision, start + blockSize)
+                .thenAccept(updated -> {
+                    if (updated) {
+                        promise.complete(toLedgerId(bucketId, start));
+                    } else {
+                        // another client reserved a block meanwhile
+                        reserveBlock(bucketId, numFullBuckets, promise);
+                    }
+                })
+                .exceptionally(cause -> {
+                    promise.completeExceptionally(new BKException.MetaStoreException(cause));
+                    return null;
+                });
+        }).exceptionally(cause -> {
+            promise.completeExceptionally(new BKException.MetaStoreException(cause));
+            return null;
+        });
+    }
+
+    @Override
+    protected CompletableFuture<Void> releaseBlock(long next, long end) {
+        int bucketId = Etcd64bitIdGenerator.getBucketId(next);
+        long nextInBucket = Etcd64bitIdGenerator.getIdInBucket(next);
+        long endInBucket = end - toLedgerId(bucketId, 0L);
+        ByteSequence key = getBlocksKey(bucketId);
+        return kvClient.get(key).thenCompose(getResp -> {
+            if (getResp.getCount() <= 0) {
+                return FutureUtils.Void();
+            }
+            KeyValue kv = getResp.getKvs().get(0);
+            if (EtcdUtils.toLong(kv.getValue().getBytes(), 0) != endInBucket) {
+                // a block was reserved after this one, its remaining ids are skipped
+                return FutureUtils.Void();
+            }
+            return updateNextId(key, kv.getModRevision(), nextInBucket).thenAccept(updated -> {
+                if (updated && log.isDebugEnabled()) {
+                    log.debug("Gave back the ledger ids [{}, {})", next, end);
+                }
+            });
+        });
+    }
+
+    /**
+     * Store the next id not reserved in a bucket, if its key wasn't modified since it was read.
+     *
+     * @param key the blocks key of the bucket
+     * @param modRevision the revision the key was last modified at when read, 0 if it didn't exist
+     * @param nextId the next id in the bucket
+     * @return true if the key was updated, false if it was modified meanwhile.
+     */
+    CompletableFuture<Boolean> updateNextId(ByteSequence key, long modRevision, long nextId) {
+        CmpTarget<Long> target = modRevision > 0L
+            ? CmpTarget.modRevision(modRevision) : CmpTarget.createRevision(0L);
+        return kvClient.txn()
+            .If(new Cmp(key, Cmp.Op.EQUAL, target))
+            .Then(io.etcd.jetcd.op.Op.put(key, ByteSequence.from(EtcdUtils.toBytes(nextId)), PutOption.DEFAULT))
+            .commit()
+            .thenApply(TxnResponse::isSucceeded);
+    }
+}
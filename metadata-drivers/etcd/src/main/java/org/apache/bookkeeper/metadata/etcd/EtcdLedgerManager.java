@@ -18,12 +18,13 @@
  */
 package org.apache.bookkeeper.metadata.etcd;
 
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_METADATA_BATCH_SCOPE;
+
 import com.google.common.collect.Sets;
 import io.etcd.jetcd.ByteSequence;
 import io.etcd.jetcd.Client;
 import io.etcd.jetcd.KV;
 import io.etcd.jetcd.KeyValue;
-import io.etcd.jetcd.Txn;
 import io.etcd.jetcd.common.exception.ClosedClientException;
 import io.etcd.jetcd.kv.GetResponse;
 import io.etcd.jetcd.op.Cmp;
@@ -31,6 +32,7 @@ import io.etcd.jetcd.op.CmpTarget;
 import io.etcd.jetcd.options.DeleteOption;
 import io.etcd.jetcd.options.GetOption;
 import io.etcd.jetcd.options.PutOption;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
@@ -40,10 +42,13 @@ import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.conf.AbstractConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.meta.LedgerMetadataSerDe;
 import org.apache.bookkeeper.metadata.etcd.helpers.KeyIterator;
@@ -51,6 +56,8 @@ import org.apache.bookkeeper.metadata.etcd.helpers.KeyStream;
 import org.apache.bookkeeper.metadata.etcd.helpers.ValueStream;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.Processor;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
 import org.apache.bookkeeper.versioning.LongVersion;
 import org.apache.bookkeeper.versioning.Version;
@@ -59,10 +66,15 @@ import org.apache.zookeeper.AsyncCallback.VoidCallback;
 
 /**
  * Etcd ledger manager.
+ *
+ * <p>The ledger metadata writes can be batched into etcd transactions, and the ledger metadata
+ * listeners can share a single range watch, see {@link AbstractConfiguration}.
  */
 @Slf4j
 class EtcdLedgerManager implements LedgerManager {
 
+    private static final int DEFAULT_LISTING_BATCH_SIZE = 1000;
+
     private final LedgerMetadataSerDe serDe = new LedgerMetadataSerDe();
 
     private final String scope;
@@ -73,15 +85,63 @@ class EtcdLedgerManager implements LedgerManager {
             ConcurrentLongHashMap.<ValueStream<LedgerMetadata>>newBuilder().build();
     private final ConcurrentMap<LedgerMetadataListener, LedgerMetadataConsumer> listeners =
         new ConcurrentHashMap<>();
+    private final int listingBatchSize;
+    private final EtcdLedgerMetadataWatchMux watchMux;
+    private final ScheduledExecutorService batchScheduler;
+    private final EtcdLedgerMetadataBatcher batcher;
 
     private volatile boolean closed = false;
 
     EtcdLedgerManager(Client client,
                       String scope) {
+        this(client, scope, null, NullStatsLogger.INSTANCE);
+    }
+
+    EtcdLedgerManager(Client client,
+                      String scope,
+                      AbstractConfiguration<?> conf,
+                      StatsLogger statsLogger) {
         this.client = client;
         this.kvClient = client.getKVClient();
         this.scope = scope;
         this.watchClient = new EtcdWatchClient(client);
+        if (null != conf) {
+            this.listingBatchSize = conf.getEtcdLedgerListingBatchSize();
+        } else {
+            this.listingBatchSize = DEFAULT_LISTING_BATCH_SIZE;
+        }
+        if (null != conf && conf.isEtcdLedgerMetadataWatchMultiplexed()) {
+            this.watchMux = new EtcdLedgerMetadataWatchMux(kvClient, watchClient, scope,
+                (lid, bs) -> parseLedgerMetadata(lid, bs));
+        } else {
+            this.watchMux = null;
+        }
+        if (null != conf && conf.isEtcdLedgerMetadataBatchEnabled()) {
+            this.batchScheduler = Executors.newSingleThreadScheduledExecutor(
+                new DefaultThreadFactory("etcd-ledger-metadata-batcher"));
+            this.batcher = new EtcdLedgerMetadataBatcher(kvClient, batchScheduler,
+                conf.getEtcdLedgerMetadataBatchWindowMicros(), conf.getEtcdLedgerMetadataBatchMaxOps(),
+                statsLogger.scope(LEDGER_METADATA_BATCH_SCOPE));
+        } else {
+            this.batchScheduler = null;
+            this.batcher = null;
+        }
+    }
+
+    private LedgerMetadata parseLedgerMetadata(long ledgerId, ByteSequence bs) {
+        try {
+            return serDe.parseConfig(
+                    bs.getBytes(),
+                    ledgerId,
+                    Optional.empty()
+            );
+        } catch (IOException ioe) {
+            log.error("Could not parse ledger metadata : {}",
+                    bs.toString(StandardCharsets.UTF_8), ioe);
+            throw new RuntimeException(
+                    "Could not parse ledger metadata : "
+                            + bs.toString(StandardCharsets.UTF_8), ioe);
+        }
     }
 
     private boolean isClosed() {
@@ -107,6 +167,24 @@ class EtcdLedgerManager implements LedgerManager {
             promise.completeExceptionally(new BKException.BKMetadataSerializationException(ioe));
             return promise;
         }
+        if (null != batcher) {
+            batcher.submit(
+                ledgerKeyBs,
+                new Cmp(ledgerKeyBs, Cmp.Op.EQUAL, CmpTarget.createRevision(0L)),
+                io.etcd.jetcd.op.Op.put(ledgerKeyBs, valueBs, PutOption.DEFAULT),
+                revision -> promise.complete(new Versioned<>(metadata, new LongVersion(revision))),
+                cause -> promise.completeExceptionally(new BKException.MetaStoreException()),
+                () -> createLedgerMetadata(ledgerKeyBs, valueBs, metadata, promise));
+        } else {
+            createLedgerMetadata(ledgerKeyBs, valueBs, metadata, promise);
+        }
+        return promise;
+    }
+
+    private void createLedgerMetadata(ByteSequence ledgerKeyBs,
+                                      ByteSequence valueBs,
+                                      LedgerMetadata metadata,
+                                      CompletableFuture<Versioned<LedgerMetadata>> promise) {
         kvClient.txn()
             .If(new Cmp(
                 ledgerKeyBs,
@@ -141,7 +219,6 @@ class EtcdLedgerManager implements LedgerManager {
                     promise.completeExceptionally(new BKException.MetaStoreException());
                     return null;
                 });
-        return promise;
     }
 
     @Override
@@ -164,21 +241,41 @@ class EtcdLedgerManager implements LedgerManager {
 
         String ledgerKey = EtcdUtils.getLedgerKey(scope, ledgerId);
         ByteSequence ledgerKeyBs = ByteSequence.from(ledgerKey, StandardCharsets.UTF_8);
-        Txn txn = kvClient.txn();
+        final Cmp cmp;
         if (revision == -0xabcd) {
-            txn = txn.If(new Cmp(
+            cmp = new Cmp(
                 ledgerKeyBs,
                 Cmp.Op.GREATER,
                 CmpTarget.createRevision(0L)
-            ));
+            );
         } else {
-            txn = txn.If(new Cmp(
+            cmp = new Cmp(
                 ledgerKeyBs,
                 Cmp.Op.EQUAL,
                 CmpTarget.modRevision(revision)
-            ));
+            );
+        }
+        if (null != batcher) {
+            batcher.submit(
+                ledgerKeyBs,
+                cmp,
+                io.etcd.jetcd.op.Op.delete(ledgerKeyBs, DeleteOption.DEFAULT),
+                ignored -> promise.complete(null),
+                cause -> promise.completeExceptionally(new BKException.MetaStoreException()),
+                () -> removeLedgerMetadata(ledgerId, ledgerKey, cmp, promise));
+        } else {
+            removeLedgerMetadata(ledgerId, ledgerKey, cmp, promise);
         }
-        txn
+        return promise;
+    }
+
+    private void removeLedgerMetadata(long ledgerId,
+                                      String ledgerKey,
+                                      Cmp cmp,
+                                      CompletableFuture<Void> promise) {
+        ByteSequence ledgerKeyBs = ByteSequence.from(ledgerKey, StandardCharsets.UTF_8);
+        kvClient.txn()
+            .If(cmp)
             .Then(io.etcd.jetcd.op.Op.delete(
                 ledgerKeyBs,
                 DeleteOption.DEFAULT
@@ -206,7 +303,6 @@ class EtcdLedgerManager implements LedgerManager {
                     promise.completeExceptionally(new BKException.MetaStoreException());
                     return null;
                 });
-        return promise;
     }
 
     @Override
@@ -259,6 +355,25 @@ class EtcdLedgerManager implements LedgerManager {
             return promise;
         }
 
+        if (null != batcher) {
+            batcher.submit(
+                ledgerKeyBs,
+                new Cmp(ledgerKeyBs, Cmp.Op.EQUAL, CmpTarget.modRevision(lv.getLongVersion())),
+                io.etcd.jetcd.op.Op.put(ledgerKeyBs, valueBs, PutOption.DEFAULT),
+                revision -> promise.complete(new Versioned<>(metadata, new LongVersion(revision))),
+                cause -> promise.completeExceptionally(new BKException.MetaStoreException()),
+                () -> writeLedgerMetadata(ledgerKeyBs, valueBs, metadata, lv, promise));
+        } else {
+            writeLedgerMetadata(ledgerKeyBs, valueBs, metadata, lv, promise);
+        }
+        return promise;
+    }
+
+    private void writeLedgerMetadata(ByteSequence ledgerKeyBs,
+                                     ByteSequence valueBs,
+                                     LedgerMetadata metadata,
+                                     LongVersion lv,
+                                     CompletableFuture<Versioned<LedgerMetadata>> promise) {
         kvClient.txn()
             .If(new Cmp(
                 ledgerKeyBs,
@@ -291,7 +406,6 @@ class EtcdLedgerManager implements LedgerManager {
                     promise.completeExceptionally(new BKException.MetaStoreException());
                     return null;
                 });
-        return promise;
     }
 
     private LedgerMetadataConsumer listenerToConsumer(long ledgerId,
@@ -310,25 +424,16 @@ class EtcdLedgerManager implements LedgerManager {
             return;
         }
 
+        if (null != watchMux) {
+            registerMultiplexedLedgerMetadataListener(ledgerId, listener);
+            return;
+        }
+
         ValueStream<LedgerMetadata> lmStream = watchers.computeIfAbsent(
             ledgerId, (lid) -> new ValueStream<>(
                 client,
                 watchClient,
-                        bs -> {
-                            try {
-                                return serDe.parseConfig(
-                                        bs.getBytes(),
-                                        lid,
-                                        Optional.empty()
-                                );
-                            } catch (IOException ioe) {
-                                log.error("Could not parse ledger metadata : {}",
-                                        bs.toString(StandardCharsets.UTF_8), ioe);
-                                throw new RuntimeException(
-                                        "Could not parse ledger metadata : "
-                                                + bs.toString(StandardCharsets.UTF_8), ioe);
-                            }
-    },
+                bs -> parseLedgerMetadata(lid, bs),
                 ByteSequence.from(EtcdUtils.getLedgerKey(scope, ledgerId), StandardCharsets.UTF_8))
         );
         LedgerMetadataConsumer lmConsumer = listenerToConsumer(ledgerId, listener,
@@ -352,9 +457,35 @@ class EtcdLedgerManager implements LedgerManager {
         }
     }
 
+    private void registerMultiplexedLedgerMetadataListener(long ledgerId, LedgerMetadataListener listener) {
+        LedgerMetadataConsumer lmConsumer = listenerToConsumer(ledgerId, listener, (lid) -> {
+            watchMux.remove(lid);
+            log.info("Stopped watching ledger {} metadata on ledger deletion.", lid);
+        });
+        if (null != listeners.putIfAbsent(listener, lmConsumer)) {
+            return;
+        }
+        watchMux.watch(ledgerId, lmConsumer)
+            .whenComplete((ignored, cause) -> {
+                if (null != cause && !(cause instanceof ClosedClientException) && !isClosed()) {
+                    // fail to register ledger metadata listener, re-attempt it
+                    watchMux.unwatch(ledgerId, lmConsumer);
+                    if (listeners.remove(listener, lmConsumer)) {
+                        registerLedgerMetadataListener(ledgerId, listener);
+                    }
+                }
+            });
+    }
+
     @Override
     public void unregisterLedgerMetadataListener(long ledgerId, LedgerMetadataListener listener) {
         LedgerMetadataConsumer lmConsumer = listeners.remove(listener);
+        if (null != watchMux) {
+            if (null != lmConsumer) {
+                watchMux.unwatch(ledgerId, lmConsumer);
+            }
+            return;
+        }
         unregisterLedgerMetadataListener(ledgerId, lmConsumer);
     }
 
@@ -387,17 +518,26 @@ class EtcdLedgerManager implements LedgerManager {
                                     Object context,
                                     int successRc,
                                     int failureRc) {
-        KeyStream<Long> ks = new KeyStream<>(
+        KeyStream<Long> ks = newLedgerKeyStream();
+        processLedgers(
+            ks, processor, finalCb, context, successRc, failureRc);
+    }
+
+    /**
+     * Stream the ids of the ledgers in ranged batches, all read at the revision of the first batch.
+     */
+    private KeyStream<Long> newLedgerKeyStream() {
+        return new KeyStream<>(
             kvClient,
             ByteSequence.from(EtcdUtils.getLedgerKey(scope, 0L), StandardCharsets.UTF_8),
             ByteSequence.from(EtcdUtils.getLedgerKey(scope, Long.MAX_VALUE), StandardCharsets.UTF_8),
             bs -> {
                 UUID uuid = EtcdUtils.parseLedgerKey(bs.toString(StandardCharsets.UTF_8));
                 return uuid.getLeastSignificantBits();
-            }
+            },
+            listingBatchSize,
+            true
         );
-        processLedgers(
-            ks, processor, finalCb, context, successRc, failureRc);
     }
 
     private void processLedgers(KeyStream<Long> ks,
@@ -422,15 +562,7 @@ class EtcdLedgerManager implements LedgerManager {
 
     @Override
     public LedgerRangeIterator getLedgerRanges(long opTimeOutMs) {
-        KeyStream<Long> ks = new KeyStream<>(
-            kvClient,
-            ByteSequence.from(EtcdUtils.getLedgerKey(scope, 0L), StandardCharsets.UTF_8),
-            ByteSequence.from(EtcdUtils.getLedgerKey(scope, Long.MAX_VALUE), StandardCharsets.UTF_8),
-            bs -> {
-                UUID uuid = EtcdUtils.parseLedgerKey(bs.toString(StandardCharsets.UTF_8));
-                return uuid.getLeastSignificantBits();
-            }
-        );
+        KeyStream<Long> ks = newLedgerKeyStream();
         KeyIterator<Long> ki = new KeyIterator<>(ks);
         return new LedgerRangeIterator() {
             @Override
@@ -472,6 +604,13 @@ class EtcdLedgerManager implements LedgerManager {
             }
             closed = true;
         }
+        if (null != batcher) {
+            batcher.close();
+            batchScheduler.shutdown();
+        }
+        if (null != watchMux) {
+            watchMux.close();
+        }
         watchClient.close();
     }
 }
@@ -32,6 +32,8 @@ import org.apache.bookkeeper.meta.LedgerManagerFactory;
 import org.apache.bookkeeper.meta.LedgerUnderreplicationManager;
 import org.apache.bookkeeper.replication.ReplicationException;
 import org.apache.bookkeeper.replication.ReplicationException.CompatibilityException;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.zookeeper.KeeperException;
 
@@ -44,6 +46,16 @@ class EtcdLedgerManagerFactory implements LedgerManagerFactory {
 
     private String scope;
     private Client client;
+    private AbstractConfiguration<?> conf;
+    private StatsLogger statsLogger = NullStatsLogger.INSTANCE;
+
+    /**
+     * Set the stats logger of the ledger managers created by this factory.
+     */
+    EtcdLedgerManagerFactory setStatsLogger(StatsLogger statsLogger) {
+        this.statsLogger = statsLogger;
+        return this;
+    }
 
     @Override
     public int getCurrentVersion() {
@@ -68,6 +80,7 @@ class EtcdLedgerManagerFactory implements LedgerManagerFactory {
             throw new IOException("Invalid metadata service uri", e);
         }
         this.client = etcdLayoutManager.getClient();
+        this.conf = conf;
         return this;
     }
 
@@ -79,12 +92,15 @@ class EtcdLedgerManagerFactory implements LedgerManagerFactory {
 
     @Override
     public LedgerIdGenerator newLedgerIdGenerator() {
+        if (null != conf && conf.getLedgerIdBlockSize() > 0) {
+            return new EtcdBlockLedgerIdGenerator(client.getKVClient(), scope, conf.getLedgerIdBlockSize());
+        }
         return new Etcd64bitIdGenerator(client.getKVClient(), scope);
     }
 
     @Override
     public LedgerManager newLedgerManager() {
-        return new EtcdLedgerManager(client, scope);
+        return new EtcdLedgerManager(client, scope, conf, statsLogger);
     }
 
     @Override
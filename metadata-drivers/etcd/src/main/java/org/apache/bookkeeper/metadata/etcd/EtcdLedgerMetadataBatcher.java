@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.metadata.etcd;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_METADATA_BATCH_FALLBACKS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_METADATA_BATCH_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_METADATA_BATCH_SIZE;
+
+import io.etcd.jetcd.ByteSequence;
+import io.etcd.jetcd.KV;
+import io.etcd.jetcd.op.Cmp;
+import io.etcd.jetcd.op.Op;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * Coalesces the ledger metadata writes issued concurrently into etcd transactions.
+ *
+ * <p>The operations submitted within a short window, or until the batch is full, are sent in a single
+ * transaction whose condition is the conjunction of the conditions of the operations. The transaction
+ * is atomic: if one of the conditions doesn't hold (e.g. a version conflict or an existing ledger), none
+ * of the operations is applied and every operation of the batch is retried on its own through its fallback,
+ * which is the regular non batched write, so that each operation gets its own result.
+ *
+ * <p>etcd rejects the transactions writing the same key twice, so an operation on a key already in the
+ * pending batch sends that batch first.
+ */
+@StatsDoc(
+    name = LEDGER_METADATA_BATCH_SCOPE,
+    help = "Ledger metadata batching related stats"
+)
+@Slf4j
+class EtcdLedgerMetadataBatcher implements AutoCloseable {
+
+    private static class PendingOp {
+        final ByteSequence key;
+        final Cmp cmp;
+        final Op op;
+        final LongConsumer onCommitted;
+        final Consumer<Throwable> onFailure;
+        final Runnable fallback;
+
+        PendingOp(ByteSequence key, Cmp cmp, Op op, LongConsumer onCommitted,
+                  Consumer<Throwable> onFailure, Runnable fallback) {
+            this.key = key;
+            this.cmp = cmp;
+            this.op = op;
+            this.onCommitted = onCommitted;
+            this.onFailure = onFailure;
+            this.fallback = fallback;
+        }
+    }
+
+    private final KV kvClient;
+    private final ScheduledExecutorService scheduler;
+    private final long windowMicros;
+    private final int maxOps;
+
+    @StatsDoc(
+        name = LEDGER_METADATA_BATCH_SIZE,
+        help = "The distribution of the number of ledger metadata writes per etcd transaction"
+    )
+    private final OpStatsLogger batchSizeStats;
+    @StatsDoc(
+        name = LEDGER_METADATA_BATCH_FALLBACKS,
+        help = "The number of batches retried as individual operations because one of their conditions failed"
+    )
+    private final Counter fallbacks;
+
+    private List<PendingOp> batch = new ArrayList<>();
+    private final Set<ByteSequence> batchKeys = new HashSet<>();
+    private boolean closed = false;
+
+    EtcdLedgerMetadataBatcher(KV kvClient, ScheduledExecutorService scheduler, long windowMicros, int maxOps,
+                              StatsLogger statsLogger) {
+        this.kvClient = kvClient;
+        this.scheduler = scheduler;
+        this.windowMicros = windowMicros;
+        this.maxOps = Math.max(1, maxOps);
+        this.batchSizeStats = statsLogger.getOpStatsLogger(LEDGER_METADATA_BATCH_SIZE);
+        this.fallbacks = statsLogger.getCounter(LEDGER_METADATA_BATCH_FALLBACKS);
+    }
+
+    /**
+     * Apply an operation in the next batch.
+     *
+     * @param key the key written by the operation
+     * @param cmp the condition of the operation
+     * @param op the operation applied if the condition holds
+     * @param onCommitted called with the revision of the transaction once the operation is applied
+     * @param onFailure called if the transaction couldn't be sent
+     * @param fallback the individual operation, used if the condition of any operation of the batch failed
+     */
+    void submit(ByteSequence key, Cmp cmp, Op op, LongConsumer onCommitted, Consumer<Throwable> onFailure,
+                Runnable fallback) {
+        PendingOp pendingOp = new PendingOp(key, cmp, op, onCommitted, onFailure, fallback);
+        List<PendingOp> toSend = null;
+        List<PendingOp> toSendFirst = null;
+        boolean scheduleFlush = false;
+        synchronized (this) {
+            if (closed) {
+                toSend = new ArrayList<>(1);
+                toSend.add(pendingOp);
+            } else {
+                if (batchKeys.contains(key)) {
+                    toSendFirst = takeBatch();
+                }
+                batch.add(pendingOp);
+                batchKeys.add(key);
+                if (batch.size() >= maxOps) {
+                    toSend = takeBatch();
+                } else {
+                    scheduleFlush = batch.size() == 1;
+                }
+            }
+        }
+        if (toSendFirst != null) {
+            send(toSendFirst);
+        }
+        if (toSend != null) {
+            send(toSend);
+        } else if (scheduleFlush) {
+            try {
+                scheduler.schedule(this::flush, windowMicros, TimeUnit.MICROSECONDS);
+            } catch (RejectedExecutionException ree) {
+                flush();
+            }
+        }
+    }
+
+    private List<PendingOp> takeBatch() {
+        List<PendingOp> taken = batch;
+        batch = new ArrayList<>();
+        batchKeys.clear();
+        return taken;
+    }
+
+    private void flush() {
+        List<PendingOp> toSend;
+        synchronized (this) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            toSend = takeBatch();
+        }
+        send(toSend);
+    }
+
+    private void send(List<PendingOp> ops) {
+        batchSizeStats.registerSuccessfulValue(ops.size());
+        if (ops.size() == 1) {
+            // no need to combine the conditions
+            ops.get(0).fallback.run();
+            return;
+        }
+        Cmp[] cmps = new Cmp[ops.size()];
+        Op[] thenOps = new Op[ops.size()];
+        for (int i = 0; i < ops.size(); i++) {
+            cmps[i] = ops.get(i).cmp;
+            thenOps[i] = ops.get(i).op;
+        }
+        kvClient.txn()
+            .If(cmps)
+            .Then(thenOps)
+            .commit()
+            .whenComplete((resp, cause) -> {
+                if (null != cause) {
+                    for (PendingOp op : ops) {
+                        op.onFailure.accept(cause);
+                    }
+                } else if (resp.isSucceeded()) {
+                    long revision = resp.getHeader().getRevision();
+                    for (PendingOp op : ops) {
+                        op.onCommitted.accept(revision);
+                    }
+                } else {
+                    // one of the conditions failed and no operation was applied, retry them individually
+                    if (log.isDebugEnabled()) {
+                        log.debug("Batch of {} ledger metadata writes failed, retrying them individually",
+                            ops.size());
+                    }
+                    fallbacks.inc();
+                    for (PendingOp op : ops) {
+                        op.fallback.run();
+                    }
+                }
+            });
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.metadata.etcd;
+
+import io.etcd.jetcd.ByteSequence;
+import io.etcd.jetcd.KV;
+import io.etcd.jetcd.KeyValue;
+import io.etcd.jetcd.common.exception.ClosedClientException;
+import io.etcd.jetcd.common.exception.EtcdExceptionFactory;
+import io.etcd.jetcd.options.WatchOption;
+import io.etcd.jetcd.watch.WatchEvent;
+import io.etcd.jetcd.watch.WatchResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+
+/**
+ * Watches the metadata of many ledgers through a single range watch over the ledgers keys.
+ *
+ * <p>The range watch is created when the first ledger is watched and closed when the last one is
+ * unwatched. A ledger is read once its watch is registered, after the range watch is established, and
+ * then updated from the events of its key. The reads and the events are ordered by their revision, so
+ * that a read that completes after an event doesn't overwrite it with an older value.
+ *
+ * <p>The consumers are notified outside of the lock of the mux, so that they can watch or unwatch ledgers, or
+ * block, without stalling the dispatch of the range watch. The notifications are queued under the lock, in the
+ * order of the revisions, and delivered in that order by one thread at a time.
+ *
+ * <p>If the range watch fails (e.g. the watched revision was compacted), it is created again and all the
+ * watched ledgers are read again.
+ */
+@Slf4j
+class EtcdLedgerMetadataWatchMux implements AutoCloseable {
+
+    /**
+     * Decodes the metadata of a ledger.
+     */
+    interface MetadataDecoder {
+        LedgerMetadata decode(long ledgerId, ByteSequence value);
+    }
+
+    private static class LedgerWatch {
+        final Set<Consumer<Versioned<LedgerMetadata>>> consumers = new LinkedHashSet<>();
+        // the revision of the last read or event applied, or -1 until the ledger is read
+        long revision = -1L;
+        Versioned<LedgerMetadata> value = null;
+    }
+
+    private final KV kvClient;
+    private final EtcdWatchClient watchClient;
+    private final String scope;
+    private final MetadataDecoder decoder;
+    private final Map<Long, LedgerWatch> ledgers = new HashMap<>();
+    private CompletableFuture<EtcdWatcher> watchFuture = null;
+    // identifies the current range watch, the failures of the previous ones are ignored
+    private long watchGeneration = 0L;
+    private boolean closed = false;
+    // notifications queued under the lock, delivered outside of it
+    private final Queue<Runnable> notifications = new ArrayDeque<>();
+    private boolean notifying = false;
+
+    EtcdLedgerMetadataWatchMux(KV kvClient,
+                               EtcdWatchClient watchClient,
+                               String scope,
+                               MetadataDecoder decoder) {
+        this.kvClient = kvClient;
+        this.watchClient = watchClient;
+        this.scope = scope;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Watch the metadata of a ledger.
+     *
+     * <p>The consumer is notified with the current metadata once read, and then on every change. It is
+     * notified with a null value if the ledger doesn't exist or is deleted.
+     */
+    CompletableFuture<Void> watch(long ledgerId, Consumer<Versioned<LedgerMetadata>> consumer) {
+        CompletableFuture<EtcdWatcher> wf = null;
+        synchronized (this) {
+            if (closed) {
+                return FutureUtils.exception(EtcdExceptionFactory.newClosedWatchClientException());
+            }
+            LedgerWatch lw = ledgers.computeIfAbsent(ledgerId, lid -> new LedgerWatch());
+            if (!lw.consumers.add(consumer)) {
+                return FutureUtils.Void();
+            }
+            if (lw.revision >= 0L) {
+                // the ledger is already read and kept up to date by the range watch
+                Versioned<LedgerMetadata> value = currentValue(lw);
+                notifications.add(() -> consumer.accept(value));
+            } else {
+                wf = getOrCreateWatch();
+            }
+        }
+        if (wf == null) {
+            deliverNotifications();
+            return FutureUtils.Void();
+        }
+        // read the ledger once the range watch is established, so that no change is missed
+        return wf.thenCompose(watcher -> read(ledgerId, consumer));
+    }
+
+    /**
+     * Unwatch the metadata of a ledger.
+     */
+    void unwatch(long ledgerId, Consumer<Versioned<LedgerMetadata>> consumer) {
+        synchronized (this) {
+            LedgerWatch lw = ledgers.get(ledgerId);
+            if (lw == null || !lw.consumers.remove(consumer) || !lw.consumers.isEmpty()) {
+                return;
+            }
+            ledgers.remove(ledgerId);
+            if (ledgers.isEmpty()) {
+                closeWatch();
+            }
+        }
+    }
+
+    /**
+     * Stop watching a ledger, dropping all its consumers.
+     */
+    void remove(long ledgerId) {
+        synchronized (this) {
+            if (ledgers.remove(ledgerId) != null && ledgers.isEmpty()) {
+                closeWatch();
+            }
+        }
+    }
+
+    // guarded by this
+    private CompletableFuture<EtcdWatcher> getOrCreateWatch() {
+        if (watchFuture == null) {
+            WatchOption option = WatchOption.newBuilder()
+                .withRange(ByteSequence.from(
+                    EtcdUtils.getLedgerKey(scope, Long.MAX_VALUE), StandardCharsets.UTF_8))
+                .build();
+            final long generation = ++watchGeneration;
+            CompletableFuture<EtcdWatcher> wf = watchClient.watch(
+                ByteSequence.from(EtcdUtils.getLedgerKey(scope, 0L), StandardCharsets.UTF_8),
+                option,
+                (response, cause) -> {
+                    if (null != cause) {
+                        onWatchError(generation, cause);
+                    } else {
+                        processWatchResponse(response);
+                    }
+                });
+            watchFuture = wf;
+            wf.whenComplete((watcher, cause) -> {
+                if (null != cause) {
+                    synchronized (EtcdLedgerMetadataWatchMux.this) {
+                        if (watchFuture == wf) {
+                            watchFuture = null;
+                        }
+                    }
+                }
+            });
+        }
+        return watchFuture;
+    }
+
+    // guarded by this
+    private void closeWatch() {
+        CompletableFuture<EtcdWatcher> wf = watchFuture;
+        watchFuture = null;
+        if (wf != null) {
+            wf.thenCompose(EtcdWatcher::closeAsync);
+        }
+    }
+
+    /**
+     * Read the metadata of a ledger, notifying the given consumer even if the ledger was updated in the meantime.
+     */
+    private CompletableFuture<Void> read(long ledgerId, Consumer<Versioned<LedgerMetadata>> consumer) {
+        ByteSequence key = ByteSequence.from(EtcdUtils.getLedgerKey(scope, ledgerId), StandardCharsets.UTF_8);
+        return kvClient.get(key).thenAccept(getResp -> {
+            Versioned<LedgerMetadata> value = null;
+            if (getResp.getCount() > 0) {
+                KeyValue kv = getResp.getKvs().get(0);
+                value = new Versioned<>(decoder.decode(ledgerId, kv.getValue()),
+                    new LongVersion(kv.getModRevision()));
+            }
+            synchronized (this) {
+                LedgerWatch lw = ledgers.get(ledgerId);
+                if (lw != null) {
+                    if (lw.revision < getResp.getHeader().getRevision()) {
+                        update(lw, getResp.getHeader().getRevision(), value);
+                    } else if (consumer != null && lw.consumers.contains(consumer)) {
+                        // a newer event was applied before the read completed
+                        Versioned<LedgerMetadata> current = currentValue(lw);
+                        notifications.add(() -> consumer.accept(current));
+                    }
+                }
+            }
+            deliverNotifications();
+        });
+    }
+
+    // guarded by this
+    private void update(LedgerWatch lw, long revision, Versioned<LedgerMetadata> value) {
+        lw.revision = revision;
+        lw.value = value;
+        notifyConsumers(lw);
+    }
+
+    // guarded by this
+    private void notifyConsumers(LedgerWatch lw) {
+        // the consumers may unwatch the ledger when it is deleted
+        Versioned<LedgerMetadata> value = currentValue(lw);
+        for (Consumer<Versioned<LedgerMetadata>> consumer : new ArrayList<>(lw.consumers)) {
+            notifications.add(() -> consumer.accept(value));
+        }
+    }
+
+    /**
+     * Deliver the queued notifications, outside of the lock. Only one thread delivers at a time, so that the
+     * consumers see the changes in the order of their revisions; a thread that finds another one delivering
+     * leaves its notifications to it.
+     */
+    private void deliverNotifications() {
+        synchronized (this) {
+            if (notifying) {
+                return;
+            }
+            notifying = true;
+        }
+        while (true) {
+            Runnable notification;
+            synchronized (this) {
+                notification = notifications.poll();
+                if (notification == null) {
+                    notifying = false;
+                    return;
+                }
+            }
+            try {
+                notification.run();
+            } catch (RuntimeException re) {
+                log.warn("Failed to notify a ledger metadata consumer", re);
+            }
+        }
+    }
+
+    private static Versioned<LedgerMetadata> currentValue(LedgerWatch lw) {
+        return lw.value == null ? new Versioned<>(null, new LongVersion(lw.revision)) : lw.value;
+    }
+
+    private void processWatchResponse(WatchResponse response) {
+        synchronized (this) {
+            for (WatchEvent event : response.getEvents()) {
+                KeyValue kv = event.getKeyValue();
+                long ledgerId;
+                try {
+                    ledgerId = EtcdUtils.parseLedgerKey(kv.getKey().toString(StandardCharsets.UTF_8))
+                        .getLeastSignificantBits();
+                } catch (IllegalArgumentException iae) {
+                    log.warn("Ignoring the event of the unexpected key {} in the ledgers range",
+                        kv.getKey().toString(StandardCharsets.UTF_8));
+                    continue;
+                }
+                LedgerWatch lw = ledgers.get(ledgerId);
+                if (lw == null || lw.revision >= kv.getModRevision()) {
+                    continue;
+                }
+                try {
+                    switch (event.getEventType()) {
+                        case PUT:
+                            update(lw, kv.getModRevision(), new Versioned<>(
+                                decoder.decode(ledgerId, kv.getValue()), new LongVersion(kv.getModRevision())));
+                            break;
+                        case DELETE:
+                            update(lw, kv.getModRevision(), null);
+                            break;
+                        default:
+                            // ignore
+                            break;
+                    }
+                } catch (RuntimeException re) {
+                    log.warn("Failed to process the metadata change of ledger {}", ledgerId, re);
+                }
+            }
+        }
+        deliverNotifications();
+    }
+
+    private void onWatchError(long generation, Throwable cause) {
+        List<Long> toRead;
+        CompletableFuture<EtcdWatcher> wf;
+        final long newGeneration;
+        synchronized (this) {
+            if (generation != watchGeneration) {
+                // a previous range watch, already replaced
+                return;
+            }
+            closeWatch();
+            if (closed || cause instanceof ClosedClientException || ledgers.isEmpty()) {
+                return;
+            }
+            log.warn("Ledger metadata range watch failed, watching again {} ledgers : {}",
+                ledgers.size(), cause.getMessage());
+            toRead = new ArrayList<>(ledgers.keySet());
+            wf = getOrCreateWatch();
+            newGeneration = watchGeneration;
+        }
+        // the changes missed since the failure are caught up by reading the ledgers again
+        wf.whenComplete((watcher, watchCause) -> {
+            if (null != watchCause) {
+                onWatchError(newGeneration, watchCause);
+            } else {
+                toRead.forEach(lid -> read(lid, null).exceptionally(readCause -> {
+                    log.warn("Failed to read the metadata of ledger {} after watching it again", lid, readCause);
+                    return null;
+                }));
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            ledgers.clear();
+            notifications.clear();
+            closeWatch();
+        }
+    }
+}
@@ -29,6 +29,7 @@ import org.apache.bookkeeper.meta.LayoutManager;
 import org.apache.bookkeeper.meta.LedgerManagerFactory;
 import org.apache.bookkeeper.meta.exceptions.Code;
 import org.apache.bookkeeper.meta.exceptions.MetadataException;
+import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.commons.configuration.ConfigurationException;
 
@@ -105,7 +106,8 @@ class EtcdMetadataDriverBase implements AutoCloseable {
             throws MetadataException {
         if (null == lmFactory) {
             try {
-                lmFactory = new EtcdLedgerManagerFactory();
+                lmFactory = new EtcdLedgerManagerFactory()
+                    .setStatsLogger(null != statsLogger ? statsLogger : NullStatsLogger.INSTANCE);
                 lmFactory.initialize(conf, layoutManager, EtcdLedgerManagerFactory.VERSION);
             } catch (IOException ioe) {
                 throw new MetadataException(
@@ -24,10 +24,14 @@ import com.google.common.primitives.UnsignedBytes;
 import io.etcd.jetcd.ByteSequence;
 import io.etcd.jetcd.KV;
 import io.etcd.jetcd.KeyValue;
+import io.etcd.jetcd.common.exception.ErrorCode;
+import io.etcd.jetcd.common.exception.EtcdException;
+import io.etcd.jetcd.kv.GetResponse;
 import io.etcd.jetcd.options.GetOption;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
@@ -35,6 +39,10 @@ import org.apache.bookkeeper.common.concurrent.FutureUtils;
 
 /**
  * Read a range of key/value pairs in a streaming way.
+ *
+ * <p>When reading a snapshot, all the batches are read at the revision of the first one, so that
+ * the keys added or removed during the scan neither show up nor go missing half way. If the revision of the
+ * snapshot is compacted during the scan, the scan continues from its current key at the current revision.
  */
 @Slf4j
 public class KeyStream<T> {
@@ -44,9 +52,12 @@ public class KeyStream<T> {
     private final ByteSequence endKey;
     private final Function<ByteSequence, T> encoder;
     private final int batchSize;
+    private final boolean snapshot;
     private ByteSequence nextKey;
     private ByteSequence lastKey = null;
     private boolean hasMore = true;
+    // the revision of the snapshot, or 0 until the first batch is read
+    private long revision = 0L;
 
     public KeyStream(KV kvClient,
                      ByteSequence startKey,
@@ -60,17 +71,37 @@ public class KeyStream<T> {
                      ByteSequence endKey,
                      Function<ByteSequence, T> encoder,
                      int batchSize) {
+        this(kvClient, startKey, endKey, encoder, batchSize, false);
+    }
+
+    public KeyStream(KV kvClient,
+                     ByteSequence startKey,
+                     ByteSequence endKey,
+                     Function<ByteSequence, T> encoder,
+                     int batchSize,
+                     boolean snapshot) {
         this.kvClient = kvClient;
         this.startKey = startKey;
         this.endKey = endKey;
         this.nextKey = startKey;
         this.encoder = encoder;
         this.batchSize = batchSize;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Get the revision of the snapshot read by this stream.
+     *
+     * @return the revision of the snapshot, or 0 if no batch was read yet or the stream doesn't read a snapshot.
+     */
+    public synchronized long getRevision() {
+        return revision;
     }
 
     public CompletableFuture<List<T>> readNext() {
         ByteSequence beginKey;
         int batchSize = this.batchSize;
+        long readRevision;
         synchronized (this) {
             if (!hasMore) {
                 return FutureUtils.value(Collections.emptyList());
@@ -81,40 +112,73 @@ public class KeyStream<T> {
                 // read one more in since we are including last key.
                 batchSize += 1;
             }
+            readRevision = revision;
         }
         if (log.isTraceEnabled()) {
             log.trace("Read keys between {} and {}", beginKey.toString(UTF_8), endKey.toString(UTF_8));
         }
+        GetOption.Builder optionBuilder = GetOption.newBuilder()
+            .withRange(endKey)
+            .withKeysOnly(true)
+            .withLimit(batchSize)
+            .withSortField(GetOption.SortTarget.KEY)
+            .withSortOrder(GetOption.SortOrder.ASCEND);
+        if (readRevision > 0L) {
+            optionBuilder.withRevision(readRevision);
+        }
         return kvClient.get(
             beginKey,
-            GetOption.newBuilder()
-                .withRange(endKey)
-                .withKeysOnly(true)
-                .withLimit(batchSize)
-                .withSortField(GetOption.SortTarget.KEY)
-                .withSortOrder(GetOption.SortOrder.ASCEND)
-                .build()
-        ).thenApply(getResp -> {
-            List<KeyValue> kvs = getResp.getKvs();
-            ByteSequence lkey;
-            synchronized (KeyStream.this) {
-                hasMore = getResp.isMore();
-                lkey = lastKey;
-                if (kvs.size() > 0) {
-                    lastKey = nextKey = kvs.get(kvs.size() - 1).getKey();
+            optionBuilder.build()
+        ).handle((getResp, cause) -> {
+            if (null == cause) {
+                return FutureUtils.value(toKeys(getResp));
+            }
+            if (readRevision > 0L && isCompacted(cause)) {
+                log.warn("The revision {} of the snapshot of keys between {} and {} was compacted,"
+                        + " continuing at the current revision", readRevision,
+                        startKey.toString(UTF_8), endKey.toString(UTF_8));
+                synchronized (KeyStream.this) {
+                    if (revision == readRevision) {
+                        revision = 0L;
+                    }
                 }
+                return readNext();
+            }
+            return FutureUtils.<List<T>>exception(cause);
+        }).thenCompose(keys -> keys);
+    }
+
+    private static boolean isCompacted(Throwable cause) {
+        if (cause instanceof CompletionException && null != cause.getCause()) {
+            cause = cause.getCause();
+        }
+        return cause instanceof EtcdException
+            && ((EtcdException) cause).getErrorCode() == ErrorCode.OUT_OF_RANGE;
+    }
+
+    private List<T> toKeys(GetResponse getResp) {
+        List<KeyValue> kvs = getResp.getKvs();
+        ByteSequence lkey;
+        synchronized (this) {
+            if (snapshot && revision == 0L) {
+                revision = getResp.getHeader().getRevision();
             }
-            if (null != lkey
-                && kvs.size() > 0
-                && UnsignedBytes.lexicographicalComparator().compare(
-                    lkey.getBytes(),
-                    kvs.get(0).getKey().getBytes()) == 0) {
-                kvs.remove(0);
+            hasMore = getResp.isMore();
+            lkey = lastKey;
+            if (kvs.size() > 0) {
+                lastKey = nextKey = kvs.get(kvs.size() - 1).getKey();
             }
-            return kvs.stream()
-                .map(kv -> encoder.apply(kv.getKey()))
-                .collect(Collectors.toList());
-        });
+        }
+        if (null != lkey
+            && kvs.size() > 0
+            && UnsignedBytes.lexicographicalComparator().compare(
+                lkey.getBytes(),
+                kvs.get(0).getKey().getBytes()) == 0) {
+            kvs.remove(0);
+        }
+        return kvs.stream()
+            .map(kv -> encoder.apply(kv.getKey()))
+            .collect(Collectors.toList());
     }
 
 }
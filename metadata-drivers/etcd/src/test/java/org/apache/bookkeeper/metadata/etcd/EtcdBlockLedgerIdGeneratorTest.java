@@ -0,0 +1,197 @@
+package org.apache.bookkeeper.metadata.etcd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.bookkeeper.metadata.etcd.EtcdBlockLedgerIdGenerator.BLOCKS_NODE;
+import static org.apache.bookkeeper.metadata.etcd.EtcdBlockLedgerIdGenerator.FIRST_BLOCK_ID_IN_BUCKET;
+
+import io.etcd.jetcd.ByteSequence;
+import io.etcd.jetcd.kv.GetResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.meta.LedgerIdGenerator;
+import org.apache.bookkeeper.metadata.etcd.testing.InMemoryEtcd;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EtcdBlockLedgerIdGeneratorTest {
+
+    private static final String SCOPE = "/bookkeeper";
+
+    private InMemoryEtcd etcd;
+    // run before the next update of a blocks key
+    private Runnable beforeUpdate = null;
+    private boolean failUpdates = false;
+
+    /**
+     * Applies the conditional updates of the blocks keys to the in-memory store.
+     */
+    private class TestBlockLedgerIdGenerator extends EtcdBlockLedgerIdGenerator {
+
+        TestBlockLedgerIdGenerator(int blockSize) {
+            super(etcd.kv(), SCOPE, blockSize);
+        }
+
+        @Override
+        CompletableFuture<Boolean> updateNextId(ByteSequence key, long modRevision, long nextId) {
+            if (beforeUpdate != null) {
+                Runnable hook = beforeUpdate;
+                beforeUpdate = null;
+                hook.run();
+            }
+            if (failUpdates) {
+                return FutureUtils.exception(new Exception("etcd unavailable"));
+            }
+            String k = key.toString(UTF_8);
+            if (etcd.modRevision(k) != modRevision) {
+                return FutureUtils.value(false);
+            }
+            etcd.put(k, EtcdUtils.toBytes(nextId));
+            return FutureUtils.value(true);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        etcd = new InMemoryEtcd();
+    }
+
+    private static String blocksKey(int bucketId) {
+        return EtcdUtils.getBucketPath(SCOPE, bucketId) + "/" + BLOCKS_NODE;
+    }
+
+    private static long ledgerId(int bucketId, long idInBucket) {
+        return ((long) bucketId << Etcd64bitIdGenerator.BUCKET_ID_SHIFT) | idInBucket;
+    }
+
+    private static int nextBucket(int bucketId) {
+        return (bucketId + 1) % Etcd64bitIdGenerator.NUM_BUCKETS;
+    }
+
+    private long nextIdToReserve(int bucketId) throws Exception {
+        GetResponse response = etcd.kv().get(ByteSequence.from(blocksKey(bucketId), UTF_8)).get();
+        Assert.assertEquals(1L, response.getCount());
+        return EtcdUtils.toLong(response.getKvs().get(0).getValue().getBytes(), 0);
+    }
+
+    private void setNextIdToReserve(int bucketId, long nextId) {
+        etcd.put(blocksKey(bucketId), EtcdUtils.toBytes(nextId));
+    }
+
+    private static long generate(LedgerIdGenerator generator) {
+        List<Long> ids = new ArrayList<>();
+        List<Integer> rcs = new ArrayList<>();
+        generator.generateLedgerId((rc, id) -> {
+            rcs.add(rc);
+            ids.add(id);
+        });
+        Assert.assertEquals(1, rcs.size());
+        Assert.assertEquals(BKException.Code.OK, (int) rcs.get(0));
+        return ids.get(0);
+    }
+
+    private static int generateFailure(LedgerIdGenerator generator) {
+        List<Integer> rcs = new ArrayList<>();
+        generator.generateLedgerId((rc, id) -> rcs.add(rc));
+        Assert.assertEquals(1, rcs.size());
+        return rcs.get(0);
+    }
+
+    @Test
+    public void testReserveBlocks() throws Exception {
+        TestBlockLedgerIdGenerator generator = new TestBlockLedgerIdGenerator(10);
+        long firstId = generate(generator);
+        int bucketId = Etcd64bitIdGenerator.getBucketId(firstId);
+        Assert.assertEquals(ledgerId(bucketId, FIRST_BLOCK_ID_IN_BUCKET), firstId);
+        Assert.assertEquals(FIRST_BLOCK_ID_IN_BUCKET + 10, nextIdToReserve(bucketId));
+        for (int i = 1; i < 8; i++) {
+            Assert.assertEquals(firstId + i, generate(generator));
+        }
+
+        // the next block is reserved ahead once 90% of the current one is used, in the next bucket
+        Assert.assertEquals(firstId + 8, generate(generator));
+        Assert.assertEquals(FIRST_BLOCK_ID_IN_BUCKET + 10, nextIdToReserve(nextBucket(bucketId)));
+        Assert.assertEquals(firstId + 9, generate(generator));
+        Assert.assertEquals(ledgerId(nextBucket(bucketId), FIRST_BLOCK_ID_IN_BUCKET), generate(generator));
+        Assert.assertEquals(FIRST_BLOCK_ID_IN_BUCKET + 10, nextIdToReserve(bucketId));
+        generator.close();
+    }
+
+    @Test
+    public void testReservationRace() throws Exception {
+        TestBlockLedgerIdGenerator generator = new TestBlockLedgerIdGenerator(10);
+        // another client reserves the first block of the bucket between the read and the update of its key
+        beforeUpdate = () -> {
+            for (int i = 0; i < Etcd64bitIdGenerator.NUM_BUCKETS; i++) {
+                setNextIdToReserve(i, FIRST_BLOCK_ID_IN_BUCKET + 10);
+            }
+        };
+        long id = generate(generator);
+        int bucketId = Etcd64bitIdGenerator.getBucketId(id);
+        Assert.assertEquals(ledgerId(bucketId, FIRST_BLOCK_ID_IN_BUCKET + 10), id);
+        Assert.assertEquals(FIRST_BLOCK_ID_IN_BUCKET + 20, nextIdToReserve(bucketId));
+        generator.close();
+    }
+
+    @Test
+    public void testBucketsExhausted() throws Exception {
+        long exhausted = Etcd64bitIdGenerator.MAX_ID_PER_BUCKET - 5;
+        for (int i = 0; i < Etcd64bitIdGenerator.NUM_BUCKETS; i++) {
+            if (i != 7) {
+                setNextIdToReserve(i, exhausted);
+            }
+        }
+        // the reservation moves to the next bucket with ids left
+        TestBlockLedgerIdGenerator generator = new TestBlockLedgerIdGenerator(10);
+        Assert.assertEquals(ledgerId(7, FIRST_BLOCK_ID_IN_BUCKET), generate(generator));
+        generator.close();
+
+        setNextIdToReserve(7, exhausted);
+        generator = new TestBlockLedgerIdGenerator(10);
+        Assert.assertEquals(BKException.Code.LedgerIdOverflowException, generateFailure(generator));
+        generator.close();
+    }
+
+    @Test
+    public void testReservationFailure() throws Exception {
+        TestBlockLedgerIdGenerator generator = new TestBlockLedgerIdGenerator(10);
+        failUpdates = true;
+        Assert.assertEquals(BKException.Code.MetaStoreException, generateFailure(generator));
+
+        // the next generation reserves again
+        failUpdates = false;
+        long id = generate(generator);
+        Assert.assertEquals(FIRST_BLOCK_ID_IN_BUCKET, Etcd64bitIdGenerator.getIdInBucket(id));
+        generator.close();
+    }
+
+    @Test
+    public void testReleaseTheLastBlocks() throws Exception {
+        TestBlockLedgerIdGenerator generator = new TestBlockLedgerIdGenerator(10);
+        long firstId = generate(generator);
+        int bucketId = Etcd64bitIdGenerator.getBucketId(firstId);
+        for (int i = 1; i < 9; i++) {
+            generate(generator);
+        }
+        Assert.assertEquals(FIRST_BLOCK_ID_IN_BUCKET + 10, nextIdToReserve(nextBucket(bucketId)));
+
+        // both blocks are still the last ones of their bucket, their remaining ids are given back
+        generator.close();
+        Assert.assertEquals(FIRST_BLOCK_ID_IN_BUCKET + 9, nextIdToReserve(bucketId));
+        Assert.assertEquals(FIRST_BLOCK_ID_IN_BUCKET, nextIdToReserve(nextBucket(bucketId)));
+        Assert.assertEquals(BKException.Code.ClientClosedException, generateFailure(generator));
+    }
+
+    @Test
+    public void testSkipTheBlocksNotLast() throws Exception {
+        TestBlockLedgerIdGenerator generator = new TestBlockLedgerIdGenerator(10);
+        int bucketId = Etcd64bitIdGenerator.getBucketId(generate(generator));
+        // another client reserves the next block of the bucket
+        setNextIdToReserve(bucketId, FIRST_BLOCK_ID_IN_BUCKET + 20);
+        generator.close();
+        Assert.assertEquals(FIRST_BLOCK_ID_IN_BUCKET + 20, nextIdToReserve(bucketId));
+    }
+}
@@ -0,0 +1,164 @@
+package org.apache.bookkeeper.metadata.etcd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_METADATA_BATCH_FALLBACKS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LEDGER_METADATA_BATCH_SIZE;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.etcd.jetcd.ByteSequence;
+import io.etcd.jetcd.op.Cmp;
+import io.etcd.jetcd.op.CmpTarget;
+import io.etcd.jetcd.op.Op;
+import io.etcd.jetcd.options.PutOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.metadata.etcd.testing.InMemoryEtcd;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EtcdLedgerMetadataBatcherTest {
+
+    private InMemoryEtcd etcd;
+    private ScheduledExecutorService scheduler;
+    // the flushes scheduled by the batcher
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private Counter fallbacks;
+    private OpStatsLogger batchSizes;
+    private EtcdLedgerMetadataBatcher batcher;
+    // the outcome of each operation, in order
+    private final List<String> outcomes = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        etcd = new InMemoryEtcd();
+        scheduler = mock(ScheduledExecutorService.class);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            scheduled.add(invocation.getArgument(0));
+            return null;
+        });
+        StatsLogger statsLogger = mock(StatsLogger.class);
+        fallbacks = mock(Counter.class);
+        batchSizes = mock(OpStatsLogger.class);
+        when(statsLogger.getCounter(LEDGER_METADATA_BATCH_FALLBACKS)).thenReturn(fallbacks);
+        when(statsLogger.getOpStatsLogger(LEDGER_METADATA_BATCH_SIZE)).thenReturn(batchSizes);
+        batcher = new EtcdLedgerMetadataBatcher(etcd.kv(), scheduler, 100L, 3, statsLogger);
+    }
+
+    private void runScheduled() {
+        List<Runnable> toRun = new ArrayList<>(scheduled);
+        scheduled.clear();
+        toRun.forEach(Runnable::run);
+    }
+
+    private static ByteSequence key(String key) {
+        return ByteSequence.from(key, UTF_8);
+    }
+
+    private static Cmp cmp(String key) {
+        return new Cmp(key(key), Cmp.Op.EQUAL, CmpTarget.version(0L));
+    }
+
+    private static Op op(String key) {
+        return Op.put(key(key), key("metadata"), PutOption.DEFAULT);
+    }
+
+    private void submit(String key, Cmp cmp, String name) {
+        batcher.submit(key(key), cmp, op(key),
+            revision -> outcomes.add(name + " committed at " + revision),
+            cause -> outcomes.add(name + " failed"),
+            () -> outcomes.add(name + " fell back"));
+    }
+
+    @Test
+    public void testBatchCommitted() {
+        submit("ledger-1", cmp("ledger-1"), "op1");
+        submit("ledger-2", cmp("ledger-2"), "op2");
+        Assert.assertTrue(outcomes.isEmpty());
+        verify(scheduler).schedule(any(Runnable.class), eq(100L), eq(TimeUnit.MICROSECONDS));
+
+        runScheduled();
+        long revision = etcd.revision();
+        Assert.assertEquals(Arrays.asList("op1 committed at " + revision, "op2 committed at " + revision),
+            outcomes);
+        Assert.assertEquals(1, etcd.getTxnConditions().size());
+        Assert.assertEquals(2, etcd.getTxnOps().get(0).size());
+        verify(batchSizes).registerSuccessfulValue(2L);
+        verify(fallbacks, never()).inc();
+    }
+
+    @Test
+    public void testSingleOperationSentOnItsOwn() {
+        submit("ledger-1", cmp("ledger-1"), "op1");
+        runScheduled();
+        // a batch of one operation is the regular write
+        Assert.assertEquals(Collections.singletonList("op1 fell back"), outcomes);
+        Assert.assertTrue(etcd.getTxnConditions().isEmpty());
+        verify(fallbacks, never()).inc();
+    }
+
+    @Test
+    public void testFallbackWhenAConditionFails() {
+        Cmp conflicting = cmp("ledger-2");
+        etcd.failCondition(conflicting);
+        submit("ledger-1", cmp("ledger-1"), "op1");
+        submit("ledger-2", conflicting, "op2");
+        // the batch is full, it is sent right away
+        submit("ledger-3", cmp("ledger-3"), "op3");
+
+        // the transaction is atomic, every operation is retried individually to get its own result
+        Assert.assertEquals(Arrays.asList("op1 fell back", "op2 fell back", "op3 fell back"), outcomes);
+        Assert.assertEquals(1, etcd.getTxnConditions().size());
+        Assert.assertEquals(3, etcd.getTxnConditions().get(0).size());
+        verify(fallbacks).inc();
+
+        // the flush scheduled for the first operation finds no pending operation
+        runScheduled();
+        Assert.assertEquals(1, etcd.getTxnConditions().size());
+    }
+
+    @Test
+    public void testDuplicateKeyInPendingBatch() {
+        submit("ledger-1", cmp("ledger-1"), "op1");
+        submit("ledger-2", cmp("ledger-2"), "op2");
+        // etcd rejects the transactions writing a key twice, the pending batch is sent first
+        submit("ledger-1", cmp("ledger-1"), "op3");
+        Assert.assertEquals(1, etcd.getTxnConditions().size());
+        Assert.assertEquals(2, etcd.getTxnOps().get(0).size());
+        long revision = etcd.revision();
+        Assert.assertEquals(Arrays.asList("op1 committed at " + revision, "op2 committed at " + revision),
+            outcomes);
+
+        // the second write of the key is in the next batch
+        submit("ledger-2", cmp("ledger-2"), "op4");
+        runScheduled();
+        Assert.assertEquals(2, etcd.getTxnConditions().size());
+        Assert.assertEquals(2, etcd.getTxnConditions().get(1).size());
+        Assert.assertEquals(Arrays.asList("op1 committed at " + revision, "op2 committed at " + revision,
+            "op3 committed at " + etcd.revision(), "op4 committed at " + etcd.revision()), outcomes);
+    }
+
+    @Test
+    public void testSentOnItsOwnOnceClosed() {
+        submit("ledger-1", cmp("ledger-1"), "op1");
+        batcher.close();
+        // the pending operation is flushed by the close
+        Assert.assertEquals(Collections.singletonList("op1 fell back"), outcomes);
+        submit("ledger-2", cmp("ledger-2"), "op2");
+        Assert.assertEquals(Arrays.asList("op1 fell back", "op2 fell back"), outcomes);
+        Assert.assertTrue(etcd.getTxnConditions().isEmpty());
+    }
+}
@@ -0,0 +1,144 @@
+package org.apache.bookkeeper.metadata.etcd;
+
+import static org.mockito.Mockito.mock;
+
+import io.etcd.jetcd.common.exception.ErrorCode;
+import io.etcd.jetcd.common.exception.EtcdExceptionFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.metadata.etcd.testing.InMemoryEtcd;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EtcdLedgerMetadataWatchMuxTest {
+
+    private static final String SCOPE = "/bookkeeper";
+
+    private InMemoryEtcd etcd;
+    private final LedgerMetadata metadata = mock(LedgerMetadata.class);
+    private EtcdLedgerMetadataWatchMux watchMux;
+
+    @Before
+    public void setUp() {
+        etcd = new InMemoryEtcd();
+        watchMux = new EtcdLedgerMetadataWatchMux(etcd.kv(), etcd.watchClient(), SCOPE,
+            (ledgerId, value) -> metadata);
+    }
+
+    @After
+    public void tearDown() {
+        watchMux.close();
+    }
+
+    private static String ledgerKey(long ledgerId) {
+        return EtcdUtils.getLedgerKey(SCOPE, ledgerId);
+    }
+
+    private static void assertUpdate(List<Versioned<LedgerMetadata>> updates, int index, boolean exists,
+                                     long revision) {
+        Versioned<LedgerMetadata> update = updates.get(index);
+        Assert.assertEquals(exists, update.getValue() != null);
+        Assert.assertEquals(new LongVersion(revision), update.getVersion());
+    }
+
+    @Test
+    public void testWatchLedgers() throws Exception {
+        long revision = etcd.put(ledgerKey(1L), "v1");
+        List<Versioned<LedgerMetadata>> updates1 = new ArrayList<>();
+        Consumer<Versioned<LedgerMetadata>> consumer1 = updates1::add;
+        watchMux.watch(1L, consumer1).get();
+        Assert.assertEquals(1, updates1.size());
+        assertUpdate(updates1, 0, true, revision);
+
+        revision = etcd.put(ledgerKey(1L), "v2");
+        assertUpdate(updates1, 1, true, revision);
+        // the changes of the ledgers not watched are ignored
+        etcd.put(ledgerKey(2L), "v1");
+        Assert.assertEquals(2, updates1.size());
+
+        // the other ledgers share the range watch
+        List<Versioned<LedgerMetadata>> updates2 = new ArrayList<>();
+        Consumer<Versioned<LedgerMetadata>> consumer2 = updates2::add;
+        watchMux.watch(2L, consumer2).get();
+        Assert.assertEquals(1, updates2.size());
+        Assert.assertEquals(1, etcd.getNumWatches());
+
+        revision = etcd.delete(ledgerKey(1L));
+        Assert.assertEquals(3, updates1.size());
+        assertUpdate(updates1, 2, false, revision);
+        Assert.assertEquals(1, updates2.size());
+
+        // the range watch is closed with the last watched ledger
+        watchMux.unwatch(1L, consumer1);
+        Assert.assertEquals(0, etcd.getNumClosedWatches());
+        watchMux.unwatch(2L, consumer2);
+        Assert.assertEquals(1, etcd.getNumClosedWatches());
+    }
+
+    @Test
+    public void testResyncAfterWatchError() throws Exception {
+        etcd.put(ledgerKey(1L), "v1");
+        etcd.put(ledgerKey(2L), "v1");
+        List<Versioned<LedgerMetadata>> updates1 = new ArrayList<>();
+        List<Versioned<LedgerMetadata>> updates2 = new ArrayList<>();
+        watchMux.watch(1L, updates1::add).get();
+        watchMux.watch(2L, updates2::add).get();
+        Assert.assertEquals(1, updates1.size());
+        Assert.assertEquals(1, updates2.size());
+
+        // the range watch breaks, it is closed and created again
+        etcd.holdWatches(true);
+        etcd.failWatches(EtcdExceptionFactory.newEtcdException(ErrorCode.UNAVAILABLE, "watch stream broken"));
+        Assert.assertEquals(2, etcd.getNumWatches());
+        Assert.assertEquals(1, etcd.getNumClosedWatches());
+
+        // the changes made until the new watch is established are missed by the watches
+        long revision = etcd.put(ledgerKey(1L), "v2");
+        etcd.delete(ledgerKey(2L));
+        Assert.assertEquals(1, updates1.size());
+        Assert.assertEquals(1, updates2.size());
+
+        // the ledgers are read again once the new watch is established
+        etcd.establishPendingWatches();
+        Assert.assertEquals(2, updates1.size());
+        assertUpdate(updates1, 1, true, revision);
+        Assert.assertEquals(2, updates2.size());
+        assertUpdate(updates2, 1, false, etcd.revision());
+
+        // and the next changes are delivered by the new watch
+        revision = etcd.put(ledgerKey(1L), "v3");
+        Assert.assertEquals(3, updates1.size());
+        assertUpdate(updates1, 2, true, revision);
+        Assert.assertEquals(2, etcd.getNumWatches());
+    }
+
+    @Test
+    public void testWatchErrorWhileWatchingAgain() throws Exception {
+        long revision = etcd.put(ledgerKey(1L), "v1");
+        List<Versioned<LedgerMetadata>> updates = new ArrayList<>();
+        watchMux.watch(1L, updates::add).get();
+
+        etcd.holdWatches(true);
+        etcd.failWatches(EtcdExceptionFactory.newEtcdException(ErrorCode.UNAVAILABLE, "watch stream broken"));
+        etcd.establishPendingWatches();
+        // the second watch breaks too
+        etcd.failWatches(EtcdExceptionFactory.newEtcdException(ErrorCode.UNAVAILABLE, "watch stream broken"));
+        Assert.assertEquals(3, etcd.getNumWatches());
+        Assert.assertEquals(2, etcd.getNumClosedWatches());
+
+        etcd.holdWatches(false);
+        etcd.establishPendingWatches();
+        // nothing changed, the consumer isn't notified again
+        Assert.assertEquals(1, updates.size());
+        assertUpdate(updates, 0, true, revision);
+        revision = etcd.put(ledgerKey(1L), "v2");
+        Assert.assertEquals(2, updates.size());
+        assertUpdate(updates, 1, true, revision);
+    }
+}
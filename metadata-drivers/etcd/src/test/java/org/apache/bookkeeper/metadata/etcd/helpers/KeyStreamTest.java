@@ -0,0 +1,110 @@
+package org.apache.bookkeeper.metadata.etcd.helpers;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.etcd.jetcd.ByteSequence;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.metadata.etcd.testing.InMemoryEtcd;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyStreamTest {
+
+    private InMemoryEtcd etcd;
+
+    @Before
+    public void setUp() {
+        etcd = new InMemoryEtcd();
+        // a key out of the range
+        etcd.put("other", "value");
+        for (int i = 0; i < 10; i++) {
+            etcd.put(key(i), "value-" + i);
+        }
+    }
+
+    private static String key(int i) {
+        return String.format("keys/%03d", i);
+    }
+
+    private KeyStream<String> newStream(boolean snapshot) {
+        return new KeyStream<>(etcd.kv(), ByteSequence.from("keys/", UTF_8), ByteSequence.from("keys0", UTF_8),
+            key -> key.toString(UTF_8), 3, snapshot);
+    }
+
+    private static List<String> readAll(KeyStream<String> stream, List<String> keys) throws Exception {
+        while (true) {
+            List<String> batch = stream.readNext().get();
+            if (batch.isEmpty()) {
+                return keys;
+            }
+            keys.addAll(batch);
+        }
+    }
+
+    private static List<String> keys(int... ids) {
+        List<String> keys = new ArrayList<>();
+        for (int id : ids) {
+            keys.add(key(id));
+        }
+        return keys;
+    }
+
+    @Test
+    public void testListKeys() throws Exception {
+        KeyStream<String> stream = newStream(false);
+        Assert.assertEquals(keys(0, 1, 2), stream.readNext().get());
+        // the changes made while listing are seen
+        etcd.delete(key(5));
+        Assert.assertEquals(keys(0, 1, 2, 3, 4, 6, 7, 8, 9), readAll(stream, keys(0, 1, 2)));
+        Assert.assertEquals(0L, stream.getRevision());
+    }
+
+    @Test
+    public void testListSnapshot() throws Exception {
+        KeyStream<String> stream = newStream(true);
+        long revision = etcd.revision();
+        Assert.assertEquals(keys(0, 1, 2), stream.readNext().get());
+        Assert.assertEquals(revision, stream.getRevision());
+
+        // the changes made after the first batch are not seen
+        etcd.delete(key(5));
+        etcd.put(key(10), "value-10");
+        Assert.assertEquals(keys(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), readAll(stream, keys(0, 1, 2)));
+        Assert.assertEquals(revision, stream.getRevision());
+    }
+
+    @Test
+    public void testListSnapshotAcrossCompaction() throws Exception {
+        KeyStream<String> stream = newStream(true);
+        long revision = etcd.revision();
+        Assert.assertEquals(keys(0, 1, 2), stream.readNext().get());
+
+        // the snapshot is compacted away, the listing continues at the current revision
+        etcd.delete(key(5));
+        etcd.put(key(10), "value-10");
+        etcd.compact();
+        Assert.assertEquals(keys(3, 4, 6), stream.readNext().get());
+        Assert.assertEquals(etcd.revision(), stream.getRevision());
+        Assert.assertTrue(stream.getRevision() > revision);
+        Assert.assertEquals(keys(0, 1, 2, 3, 4, 6, 7, 8, 9, 10),
+            readAll(stream, keys(0, 1, 2, 3, 4, 6)));
+    }
+
+    @Test
+    public void testCompactionAtTheSnapshotRevision() throws Exception {
+        KeyStream<String> stream = newStream(true);
+        long revision = etcd.revision();
+        stream.readNext().get();
+        // the snapshot revision itself is still readable
+        etcd.compact();
+        Assert.assertEquals(keys(3, 4, 5), stream.readNext().get());
+        Assert.assertEquals(revision, stream.getRevision());
+
+        etcd.put(key(10), "value-10");
+        etcd.compact();
+        Assert.assertEquals(keys(6, 7, 8), stream.readNext().get());
+        Assert.assertEquals(revision + 1, stream.getRevision());
+    }
+}
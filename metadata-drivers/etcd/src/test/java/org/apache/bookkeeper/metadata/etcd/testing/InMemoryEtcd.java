@@ -0,0 +1,383 @@
+package org.apache.bookkeeper.metadata.etcd.testing;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.etcd.jetcd.ByteSequence;
+import io.etcd.jetcd.KV;
+import io.etcd.jetcd.KeyValue;
+import io.etcd.jetcd.Txn;
+import io.etcd.jetcd.common.exception.ErrorCode;
+import io.etcd.jetcd.common.exception.EtcdExceptionFactory;
+import io.etcd.jetcd.kv.GetResponse;
+import io.etcd.jetcd.kv.TxnResponse;
+import io.etcd.jetcd.op.Cmp;
+import io.etcd.jetcd.op.Op;
+import io.etcd.jetcd.options.GetOption;
+import io.etcd.jetcd.options.WatchOption;
+import io.etcd.jetcd.watch.WatchEvent;
+import io.etcd.jetcd.watch.WatchResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.metadata.etcd.EtcdWatchClient;
+import org.apache.bookkeeper.metadata.etcd.EtcdWatcher;
+
+/**
+ * An in-memory stand-in of an etcd server, exposed through mocked {@link KV} and {@link EtcdWatchClient} clients.
+ *
+ * <p>It keeps the history of the keys, so that the reads at a past revision see the snapshot of that revision
+ * until it is compacted, and delivers the changes to the range watches. The transactions are recorded and
+ * succeed unless one of their conditions was made to fail with {@link #failCondition(Cmp)}; their operations
+ * are not applied. All the operations complete synchronously, in the calling thread.
+ */
+public class InMemoryEtcd {
+
+    private static class Version {
+        final long modRevision;
+        final long createRevision;
+        final long version;
+        // null for a deletion
+        final byte[] value;
+
+        Version(long modRevision, long createRevision, long version, byte[] value) {
+            this.modRevision = modRevision;
+            this.createRevision = createRevision;
+            this.version = version;
+            this.value = value;
+        }
+    }
+
+    private class Watch {
+        final String key;
+        final String endKey;
+        final BiConsumer<WatchResponse, Throwable> consumer;
+        final EtcdWatcher watcher = mock(EtcdWatcher.class);
+        final CompletableFuture<EtcdWatcher> future = new CompletableFuture<>();
+        boolean closed = false;
+
+        Watch(String key, String endKey, BiConsumer<WatchResponse, Throwable> consumer) {
+            this.key = key;
+            this.endKey = endKey;
+            this.consumer = consumer;
+            when(watcher.closeAsync()).thenAnswer(invocation -> {
+                synchronized (InMemoryEtcd.this) {
+                    closed = true;
+                    activeWatches.remove(this);
+                }
+                return FutureUtils.Void();
+            });
+        }
+
+        boolean covers(String k) {
+            return endKey == null ? key.equals(k) : key.compareTo(k) <= 0 && k.compareTo(endKey) < 0;
+        }
+    }
+
+    private final KV kv = mock(KV.class);
+    private final EtcdWatchClient watchClient = mock(EtcdWatchClient.class);
+    private final TreeMap<String, List<Version>> keys = new TreeMap<>();
+    private long revision = 1L;
+    private long compactRevision = 0L;
+
+    private final Set<Cmp> failingConditions = new HashSet<>();
+    private final List<List<Cmp>> txnConditions = new ArrayList<>();
+    private final List<List<Op>> txnOps = new ArrayList<>();
+
+    private final List<Watch> watches = new ArrayList<>();
+    private final List<Watch> activeWatches = new ArrayList<>();
+    private final List<Watch> pendingWatches = new ArrayList<>();
+    private boolean holdWatches = false;
+
+    public InMemoryEtcd() {
+        when(kv.get(any(ByteSequence.class)))
+            .thenAnswer(invocation -> get(invocation.getArgument(0), GetOption.DEFAULT));
+        when(kv.get(any(ByteSequence.class), any(GetOption.class)))
+            .thenAnswer(invocation -> get(invocation.getArgument(0), invocation.getArgument(1)));
+        when(kv.txn()).thenAnswer(invocation -> newTxn());
+        when(watchClient.watch(any(ByteSequence.class), any(WatchOption.class), any()))
+            .thenAnswer(invocation -> watch(invocation.getArgument(0), invocation.getArgument(1),
+                invocation.getArgument(2)));
+    }
+
+    public KV kv() {
+        return kv;
+    }
+
+    public EtcdWatchClient watchClient() {
+        return watchClient;
+    }
+
+    public synchronized long revision() {
+        return revision;
+    }
+
+    /**
+     * Put a key, and notify the watches covering it.
+     *
+     * @return the revision of the change
+     */
+    public long put(String key, String value) {
+        return change(key, value.getBytes(UTF_8));
+    }
+
+    /**
+     * Put a key with a binary value, and notify the watches covering it.
+     *
+     * @return the revision of the change
+     */
+    public long put(String key, byte[] value) {
+        return change(key, value.clone());
+    }
+
+    /**
+     * Delete a key, and notify the watches covering it.
+     *
+     * @return the revision of the change
+     */
+    public long delete(String key) {
+        return change(key, null);
+    }
+
+    private long change(String key, byte[] value) {
+        List<Watch> toNotify = new ArrayList<>();
+        Version version;
+        synchronized (this) {
+            List<Version> history = keys.computeIfAbsent(key, k -> new ArrayList<>());
+            Version last = history.isEmpty() ? null : history.get(history.size() - 1);
+            boolean exists = last != null && last.value != null;
+            if (value == null && !exists) {
+                return revision;
+            }
+            revision++;
+            version = value == null
+                ? new Version(revision, 0L, 0L, null)
+                : new Version(revision, exists ? last.createRevision : revision, exists ? last.version + 1 : 1L,
+                    value);
+            history.add(version);
+            for (Watch watch : activeWatches) {
+                if (watch.covers(key)) {
+                    toNotify.add(watch);
+                }
+            }
+        }
+        for (Watch watch : toNotify) {
+            watch.consumer.accept(newWatchResponse(key, version), null);
+        }
+        return version.modRevision;
+    }
+
+    /**
+     * @return the revision a key was last modified at, 0 if it doesn't exist
+     */
+    public synchronized long modRevision(String key) {
+        List<Version> history = keys.get(key);
+        if (history == null || history.isEmpty()) {
+            return 0L;
+        }
+        Version last = history.get(history.size() - 1);
+        return last.value == null ? 0L : last.modRevision;
+    }
+
+    /**
+     * Compact the history of the keys at the current revision.
+     */
+    public synchronized void compact() {
+        compactRevision = revision;
+    }
+
+    /**
+     * Make the transactions with the given condition fail.
+     */
+    public synchronized void failCondition(Cmp cmp) {
+        failingConditions.add(cmp);
+    }
+
+    /**
+     * @return the conditions of the transactions committed so far, in order
+     */
+    public synchronized List<List<Cmp>> getTxnConditions() {
+        return new ArrayList<>(txnConditions);
+    }
+
+    /**
+     * @return the operations of the transactions committed so far, in order
+     */
+    public synchronized List<List<Op>> getTxnOps() {
+        return new ArrayList<>(txnOps);
+    }
+
+    /**
+     * Hold the establishment of the new watches until {@link #establishPendingWatches()} is called.
+     */
+    public synchronized void holdWatches(boolean hold) {
+        this.holdWatches = hold;
+    }
+
+    /**
+     * Establish the watches held so far.
+     */
+    public void establishPendingWatches() {
+        List<Watch> toEstablish;
+        synchronized (this) {
+            toEstablish = new ArrayList<>(pendingWatches);
+            pendingWatches.clear();
+            activeWatches.addAll(toEstablish);
+        }
+        for (Watch watch : toEstablish) {
+            watch.future.complete(watch.watcher);
+        }
+    }
+
+    /**
+     * Fail the established watches, as the watch client does when its stream breaks.
+     */
+    public void failWatches(Throwable cause) {
+        List<Watch> toFail;
+        synchronized (this) {
+            toFail = new ArrayList<>(activeWatches);
+            activeWatches.clear();
+        }
+        for (Watch watch : toFail) {
+            watch.consumer.accept(null, cause);
+        }
+    }
+
+    /**
+     * @return the number of watches created so far
+     */
+    public synchronized int getNumWatches() {
+        return watches.size();
+    }
+
+    /**
+     * @return the number of watches closed by their user
+     */
+    public synchronized int getNumClosedWatches() {
+        return (int) watches.stream().filter(watch -> watch.closed).count();
+    }
+
+    private CompletableFuture<EtcdWatcher> watch(ByteSequence key, WatchOption option,
+                                                 BiConsumer<WatchResponse, Throwable> consumer) {
+        Watch watch = new Watch(key.toString(UTF_8), option.getEndKey().map(k -> k.toString(UTF_8)).orElse(null),
+            consumer);
+        synchronized (this) {
+            watches.add(watch);
+            if (holdWatches) {
+                pendingWatches.add(watch);
+                return watch.future;
+            }
+            activeWatches.add(watch);
+        }
+        watch.future.complete(watch.watcher);
+        return watch.future;
+    }
+
+    private synchronized CompletableFuture<GetResponse> get(ByteSequence key, GetOption option) {
+        if (option.getRevision() > 0L && option.getRevision() < compactRevision) {
+            return FutureUtils.exception(EtcdExceptionFactory.newEtcdException(ErrorCode.OUT_OF_RANGE,
+                "etcdserver: mvcc: required revision has been compacted"));
+        }
+        long readRevision = option.getRevision() > 0L ? option.getRevision() : revision;
+        String begin = key.toString(UTF_8);
+        Optional<ByteSequence> end = option.getEndKey();
+        Map<String, List<Version>> range = end.isPresent()
+            ? keys.subMap(begin, true, end.get().toString(UTF_8), false)
+            : keys.subMap(begin, true, begin, true);
+        List<KeyValue> kvs = new ArrayList<>();
+        for (Map.Entry<String, List<Version>> entry : range.entrySet()) {
+            Version version = null;
+            for (Version v : entry.getValue()) {
+                if (v.modRevision <= readRevision) {
+                    version = v;
+                }
+            }
+            if (version != null && version.value != null) {
+                kvs.add(newKeyValue(entry.getKey(), version));
+            }
+        }
+        int count = kvs.size();
+        boolean more = option.getLimit() > 0L && count > option.getLimit();
+        if (more) {
+            kvs = new ArrayList<>(kvs.subList(0, (int) option.getLimit()));
+        }
+        GetResponse response = mock(GetResponse.class, RETURNS_DEEP_STUBS);
+        when(response.getKvs()).thenReturn(kvs);
+        when(response.getCount()).thenReturn((long) count);
+        when(response.isMore()).thenReturn(more);
+        when(response.getHeader().getRevision()).thenReturn(revision);
+        return FutureUtils.value(response);
+    }
+
+    private Txn newTxn() {
+        List<Cmp> cmps = new ArrayList<>();
+        List<Op> ops = new ArrayList<>();
+        return mock(Txn.class, invocation -> {
+            switch (invocation.getMethod().getName()) {
+                case "If":
+                    for (Object cmp : invocation.getArguments()) {
+                        cmps.add((Cmp) cmp);
+                    }
+                    return invocation.getMock();
+                case "Then":
+                    for (Object op : invocation.getArguments()) {
+                        ops.add((Op) op);
+                    }
+                    return invocation.getMock();
+                case "Else":
+                    return invocation.getMock();
+                case "commit":
+                    return commit(cmps, ops);
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private synchronized CompletableFuture<TxnResponse> commit(List<Cmp> cmps, List<Op> ops) {
+        txnConditions.add(Collections.unmodifiableList(cmps));
+        txnOps.add(Collections.unmodifiableList(ops));
+        boolean succeeded = Collections.disjoint(cmps, failingConditions);
+        if (succeeded) {
+            revision++;
+        }
+        TxnResponse response = mock(TxnResponse.class, RETURNS_DEEP_STUBS);
+        when(response.isSucceeded()).thenReturn(succeeded);
+        when(response.getHeader().getRevision()).thenReturn(revision);
+        return FutureUtils.value(response);
+    }
+
+    private static KeyValue newKeyValue(String key, Version version) {
+        KeyValue kv = mock(KeyValue.class);
+        when(kv.getKey()).thenReturn(ByteSequence.from(key, UTF_8));
+        when(kv.getValue()).thenReturn(version.value == null
+            ? ByteSequence.EMPTY : ByteSequence.from(version.value));
+        when(kv.getModRevision()).thenReturn(version.modRevision);
+        when(kv.getCreateRevision()).thenReturn(version.createRevision);
+        when(kv.getVersion()).thenReturn(version.version);
+        return kv;
+    }
+
+    private static WatchResponse newWatchResponse(String key, Version version) {
+        KeyValue kv = newKeyValue(key, version);
+        WatchEvent event = mock(WatchEvent.class);
+        when(event.getKeyValue()).thenReturn(kv);
+        when(event.getEventType())
+            .thenReturn(version.value == null ? WatchEvent.EventType.DELETE : WatchEvent.EventType.PUT);
+        WatchResponse response = mock(WatchResponse.class, RETURNS_DEEP_STUBS);
+        when(response.getEvents()).thenReturn(Collections.singletonList(event));
+        when(response.getHeader().getRevision()).thenReturn(version.modRevision);
+        return response;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import io.netty.util.HashedWheelTimer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.net.DNSToSwitchMapping;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks of the ensemble placement of the rack aware placement policy,
+ * with and without concurrent bookie membership changes.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class PlacementPolicyBenchmark {
+
+    private static final int NUM_RACKS = 10;
+
+    /**
+     * Resolves the bookie 10.0.r.b to the rack /rack-r.
+     */
+    static class StaticRackResolver implements DNSToSwitchMapping {
+        @Override
+        public List<String> resolve(List<String> names) {
+            List<String> racks = new ArrayList<>(names.size());
+            for (String name : names) {
+                String[] parts = name.split("\\.");
+                racks.add(parts.length == 4 ? "/rack-" + parts[2] : "/default-rack");
+            }
+            return racks;
+        }
+
+        @Override
+        public void reloadCachedMappings() {
+        }
+
+        @Override
+        public boolean useHostName() {
+            return false;
+        }
+    }
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+        @Param({"100", "1000"})
+        private int numBookies;
+
+        @Param({"3"})
+        private int ensembleSize;
+
+        private HashedWheelTimer timer;
+        private RackawareEnsemblePlacementPolicy policy;
+        private List<BookieId> bookies;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            ClientConfiguration conf = new ClientConfiguration();
+            timer = new HashedWheelTimer();
+            policy = new RackawareEnsemblePlacementPolicy();
+            policy.initialize(conf, Optional.of(new StaticRackResolver()), timer,
+                    SettableFeatureProvider.DISABLE_ALL, NullStatsLogger.INSTANCE,
+                    BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+
+            bookies = new ArrayList<>(numBookies);
+            for (int i = 0; i < numBookies; i++) {
+                bookies.add(BookieId.parse("10.0." + (i % NUM_RACKS) + "." + (i / NUM_RACKS) + ":3181"));
+            }
+            policy.onClusterChanged(new HashSet<>(bookies), Collections.emptySet());
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            policy.uninitalize();
+            timer.stop();
+        }
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object newEnsemble(TestState s) throws Exception {
+        return s.policy.newEnsemble(s.ensembleSize, s.ensembleSize, s.ensembleSize,
+                Collections.emptyMap(), Collections.emptySet());
+    }
+
+    @Benchmark
+    @Group("withMembershipChanges")
+    @GroupThreads(15)
+    public Object newEnsembleWithMembershipChanges(TestState s) throws Exception {
+        return s.policy.newEnsemble(s.ensembleSize, s.ensembleSize, s.ensembleSize,
+                Collections.emptyMap(), Collections.emptySet());
+    }
+
+    @Benchmark
+    @Group("withMembershipChanges")
+    @GroupThreads(1)
+    public Object membershipChanges(TestState s) {
+        // a random bookie leaves the cluster and comes back
+        Set<BookieId> writableBookies = new HashSet<>(s.bookies);
+        writableBookies.remove(s.bookies.get(ThreadLocalRandom.current().nextInt(s.bookies.size())));
+        s.policy.onClusterChanged(writableBookies, Collections.emptySet());
+        return s.policy.onClusterChanged(new HashSet<>(s.bookies), Collections.emptySet());
+    }
+}
@@ -25,6 +25,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import lombok.SneakyThrows;
 import org.apache.bookkeeper.common.collections.BatchedArrayBlockingQueue;
+import org.apache.bookkeeper.common.collections.GrowableMpScArrayConsumerBlockingQueue;
+import org.jctools.queues.MpscArrayQueue;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
@@ -63,6 +65,11 @@ public class MpScQueueBenchmark {
 
         private BatchedArrayBlockingQueue batchedArrayBlockingQueue = new BatchedArrayBlockingQueue<>(QUEUE_SIZE);
 
+        private GrowableMpScArrayConsumerBlockingQueue<Integer> growableMpScQueue =
+                new GrowableMpScArrayConsumerBlockingQueue<>();
+
+        private MpscArrayQueue<Integer> mpscArrayQueue = new MpscArrayQueue<>(QUEUE_SIZE);
+
         private final Integer[] batchArray = new Integer[1000];
 
         private final ExecutorService executor = Executors.newCachedThreadPool();
@@ -75,6 +82,8 @@ public class MpScQueueBenchmark {
 
             executor.execute(this::consumeABQ);
             executor.execute(this::consumeBAABQ);
+            executor.execute(this::consumeGrowableMpScQueue);
+            executor.execute(this::consumeMpscArrayQueue);
         }
 
         @SneakyThrows
@@ -105,6 +114,32 @@ public class MpScQueueBenchmark {
             }
         }
 
+        @SneakyThrows
+        private void consumeGrowableMpScQueue() {
+            ArrayList<Integer> localList = new ArrayList<>();
+
+            try {
+                while (true) {
+                    growableMpScQueue.drainTo(localList);
+                    if (localList.isEmpty()) {
+                        growableMpScQueue.take();
+                    }
+                    localList.clear();
+                }
+            } catch (InterruptedException ie) {
+            }
+        }
+
+        private void consumeMpscArrayQueue() {
+            // drain in batches, like the MpscSingleThreadExecutor does
+            while (!Thread.currentThread().isInterrupted()) {
+                if (mpscArrayQueue.drain(i -> {
+                }, 128) == 0) {
+                    Thread.yield();
+                }
+            }
+        }
+
         @TearDown(Level.Trial)
         public void teardown() {
             executor.shutdownNow();
@@ -126,6 +161,18 @@ public class MpScQueueBenchmark {
         s.batchedArrayBlockingQueue.put(1);
     }
 
+    @Benchmark
+    public void growableMpScArrayConsumerBlockingQueue(TestState s) throws Exception {
+        s.growableMpScQueue.put(1);
+    }
+
+    @Benchmark
+    public void mpscArrayQueue(TestState s) throws Exception {
+        while (!s.mpscArrayQueue.offer(1)) {
+            Thread.yield();
+        }
+    }
+
     @Benchmark
     @OperationsPerInvocation(1000)
     public void batchAwareArrayBlockingQueueBatch(TestState s) throws Exception {
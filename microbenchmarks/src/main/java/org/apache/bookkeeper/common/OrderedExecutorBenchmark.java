@@ -22,8 +22,10 @@ import com.google.common.collect.ImmutableMap;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
+import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.common.util.OrderedScheduler;
 import org.openjdk.jmh.annotations.Benchmark;
@@ -38,6 +40,7 @@ import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
 
 /**
  * Microbenchmarks for different executors providers.
@@ -52,14 +55,19 @@ public class OrderedExecutorBenchmark {
     private static Map<String, Supplier<ExecutorService>> providers = ImmutableMap.of(
             "JDK-ThreadPool", () -> Executors.newFixedThreadPool(1),
             "OrderedExecutor", () -> OrderedExecutor.newBuilder().numThreads(1).build(),
-            "OrderedScheduler", () -> OrderedScheduler.newSchedulerBuilder().numThreads(1).build());
+            "OrderedScheduler", () -> OrderedScheduler.newSchedulerBuilder().numThreads(1).build(),
+            "WorkStealingOrderedExecutor",
+            () -> OrderedExecutor.newBuilder().numThreads(1).enableWorkStealing(true).build());
+
+    private static final int SKEWED_NUM_THREADS = 4;
+    private static final int SKEWED_NUM_KEYS = 64;
 
     /**
      * State holder of the test.
     */
     @State(Scope.Benchmark)
     public static class TestState {
-        @Param({"JDK-ThreadPool", "OrderedExecutor", "OrderedScheduler"})
+        @Param({"JDK-ThreadPool", "OrderedExecutor", "OrderedScheduler", "WorkStealingOrderedExecutor"})
         private String executorName;
 
         private ExecutorService executor;
@@ -75,9 +83,51 @@ public class OrderedExecutorBenchmark {
         }
     }
 
+    /**
+     * State holder of the test with ordering keys which all hash to the same thread.
+     */
+    @State(Scope.Benchmark)
+    public static class SkewedKeysState {
+        @Param({"false", "true"})
+        private boolean workStealing;
+
+        @Param({"1000"})
+        private int taskCpuTokens;
+
+        private OrderedExecutor executor;
+        private final long[] keys = new long[SKEWED_NUM_KEYS];
+
+        @Setup(Level.Trial)
+        public void setup() {
+            executor = OrderedExecutor.newBuilder()
+                    .numThreads(SKEWED_NUM_THREADS)
+                    .enableWorkStealing(workStealing)
+                    .build();
+            for (long key = 0, i = 0; i < SKEWED_NUM_KEYS; key++) {
+                if (MathUtils.signSafeMod(key >>> 1, SKEWED_NUM_THREADS) == 0) {
+                    keys[(int) i++] = key;
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            executor.shutdown();
+        }
+    }
+
     @Benchmark
     public void submitAndWait(TestState s) throws Exception {
         s.executor.submit(() -> {
         }).get();
     }
+
+    @Benchmark
+    public void submitOrderedSkewedKeysAndWait(SkewedKeysState s) throws Exception {
+        long key = s.keys[ThreadLocalRandom.current().nextInt(SKEWED_NUM_KEYS)];
+        s.executor.submitOrdered(key, () -> {
+            Blackhole.consumeCPU(s.taskCpuTokens);
+            return null;
+        }).get();
+    }
 }
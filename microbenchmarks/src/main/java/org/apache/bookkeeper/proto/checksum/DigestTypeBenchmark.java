@@ -19,6 +19,12 @@
 
 package org.apache.bookkeeper.proto.checksum;
 
+import com.scurrilous.circe.checksum.IntHash;
+import com.scurrilous.circe.checksum.Java8IntHash;
+import com.scurrilous.circe.checksum.Java9IntHash;
+import com.scurrilous.circe.checksum.JniIntHash;
+import com.scurrilous.circe.checksum.SlicingIntHash;
+import com.scurrilous.circe.crc.Sse42Crc32C;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.CompositeByteBuf;
@@ -73,6 +79,16 @@ public class DigestTypeBenchmark {
         CRC32_C,
     }
 
+    /**
+     * CRC32C implementation.
+     */
+    public enum Crc32cProvider {
+        JNI_SSE42,
+        JAVA9,
+        JAVA_SLICING,
+        JAVA8
+    }
+
     static byte[] randomBytes(int sz) {
         byte[] b = new byte[sz];
         ThreadLocalRandom.current().nextBytes(b);
@@ -162,6 +178,115 @@ public class DigestTypeBenchmark {
         }
     }
 
+    /**
+     * ProviderState.
+     */
+    @State(Scope.Thread)
+    public static class ProviderState {
+
+        @Param
+        public BufferType bufferType;
+        @Param
+        public Crc32cProvider provider;
+        @Param({"64", "1024", "4086", "8192", "16384", "65536"})
+        public int entrySize;
+
+        public IntHash hash;
+        public ByteBuf buffer;
+        public ByteBuf copyBuf;
+
+        @Setup(Level.Trial)
+        public void doSetup() throws Exception {
+            switch (bufferType) {
+                case ARRAY_BACKED:
+                    buffer = Unpooled.wrappedBuffer(randomBytes(entrySize));
+                    break;
+                case NOT_ARRAY_BACKED:
+                    CompositeByteBuf composite = new CompositeByteBuf(ByteBufAllocator.DEFAULT, true, 2);
+                    composite.addComponent(true, Unpooled.wrappedBuffer(randomBytes(entrySize / 2)));
+                    composite.addComponent(true, Unpooled.wrappedBuffer(randomBytes(entrySize - entrySize / 2)));
+                    buffer = composite;
+                    break;
+                case BYTE_BUF_DEFAULT_ALLOC:
+                    buffer = ByteBufAllocator.DEFAULT.buffer(entrySize, entrySize);
+                    buffer.writeBytes(randomBytes(entrySize));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown buffer type " + bufferType);
+            }
+            copyBuf = ByteBufAllocator.DEFAULT.directBuffer(entrySize, entrySize);
+
+            switch (provider) {
+                case JNI_SSE42:
+                    if (!Sse42Crc32C.isSupported()) {
+                        throw new IllegalStateException("SSE4.2 CRC32C native library is not available");
+                    }
+                    hash = new JniIntHash();
+                    break;
+                case JAVA9:
+                    hash = new Java9IntHash();
+                    break;
+                case JAVA_SLICING:
+                    hash = new SlicingIntHash();
+                    break;
+                case JAVA8:
+                    hash = new Java8IntHash();
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown provider " + provider);
+            }
+            // also fails if the provider can't be used on this JVM, e.g. JAVA9 without --add-opens
+            if (hash.calculate(buffer) != new SlicingIntHash().calculate(buffer)) {
+                throw new IllegalStateException("provider " + provider + " computed a wrong checksum");
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() {
+            buffer.release();
+            copyBuf.release();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Threads(2)
+    @Fork(value = 1, warmups = 1)
+    public int crc32cProvider(ProviderState state) {
+        return state.hash.calculate(state.buffer);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Threads(2)
+    @Fork(value = 1, warmups = 1)
+    public int crc32cThenCopy(ProviderState state) {
+        final ByteBuf buff = state.buffer;
+        state.copyBuf.clear();
+        int checksum = state.hash.calculate(buff);
+        state.copyBuf.writeBytes(buff, buff.readerIndex(), buff.readableBytes());
+        return checksum;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Threads(2)
+    @Fork(value = 1, warmups = 1)
+    public int crc32cAndCopy(ProviderState state) {
+        final ByteBuf buff = state.buffer;
+        state.copyBuf.clear();
+        return state.hash.resumeAndCopy(0, buff, buff.readerIndex(), buff.readableBytes(), state.copyBuf);
+    }
+
     @Benchmark
     @BenchmarkMode(Mode.Throughput)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
@@ -65,6 +65,8 @@ public class StatsLoggerBenchmark {
 
         private Counter counter;
         private OpStatsLogger opStats;
+        private Counter threadScopedCounter;
+        private OpStatsLogger threadScopedOpStats;
 
         private long startTime = System.nanoTime();
 
@@ -74,6 +76,8 @@ public class StatsLoggerBenchmark {
             StatsLogger logger = provider.getStatsLogger("test");
             counter = logger.getCounter("counter");
             opStats = logger.getOpStatsLogger("opstats");
+            threadScopedCounter = logger.getThreadScopedCounter("thread_scoped_counter");
+            threadScopedOpStats = logger.getThreadScopedOpStatsLogger("thread_scoped_opstats");
         }
     }
 
@@ -86,4 +90,38 @@ public class StatsLoggerBenchmark {
     public void recordLatency(LoggerState s) {
         s.opStats.registerSuccessfulValue(System.nanoTime() - s.startTime);
     }
+
+    @Benchmark
+    public void recordEvent(LoggerState s) {
+        s.opStats.registerSuccessfulEvent(System.nanoTime() - s.startTime, TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    public void threadScopedCounterIncrement(LoggerState s) {
+        s.threadScopedCounter.inc();
+    }
+
+    @Benchmark
+    public void threadScopedRecordEvent(LoggerState s) {
+        s.threadScopedOpStats.registerSuccessfulEvent(System.nanoTime() - s.startTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Single threaded baseline of {@link #recordEvent}, the difference is the cost of the contention of the
+     * recording threads.
+     */
+    @Benchmark
+    @Threads(1)
+    public void recordEventSingleThread(LoggerState s) {
+        s.opStats.registerSuccessfulEvent(System.nanoTime() - s.startTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Single threaded baseline of {@link #counterIncrement}.
+     */
+    @Benchmark
+    @Threads(1)
+    public void counterIncrementSingleThread(LoggerState s) {
+        s.counter.inc();
+    }
 }
@@ -16,6 +16,7 @@
  */
 package org.apache.bookkeeper.stats.codahale;
 
+import com.codahale.metrics.Timer;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -48,7 +49,10 @@ public class TimerBenchmark {
      * Type of Timer.
      */
     public enum TimerType {
+        // Codahale timer on a StripedReservoir, as created by the CodahaleMetricsProvider
         CodahaleTimer,
+        // Codahale timer on its default, exponentially decaying, reservoir
+        DecayingCodahaleTimer,
         FastTimer
     }
 
@@ -81,6 +85,9 @@ public class TimerBenchmark {
                 case FastTimer:
                     logger = new FastCodahaleMetricsProvider().getStatsLogger("test");
                     break;
+                case DecayingCodahaleTimer:
+                    logger = new CodahaleMetricsProvider().getStatsLogger("test");
+                    break;
             }
 
             synchronized (MyState.class) {
@@ -89,7 +96,9 @@ public class TimerBenchmark {
                 if (timers == null) {
                     timers = new OpStatsLogger[timersPerThread];
                     for (int i = 0; i < timersPerThread; i++) {
-                        timers[i] = logger.getOpStatsLogger("test-timer-" + i);
+                        timers[i] = timerType == TimerType.DecayingCodahaleTimer
+                                ? new CodahaleOpStatsLogger(new Timer(), new Timer())
+                                : logger.getOpStatsLogger("test-timer-" + i);
                     }
 
                     // just a bunch of random response times to not always hit the same bucket
@@ -141,6 +150,22 @@ public class TimerBenchmark {
         state.getTimer().registerSuccessfulEvent(state.getTime(), TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Tests the performance of timer updates by many threads at the same time,
+     * to compare the cost of recording into shared and striped state.
+     * @param state
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Threads(16)
+    @Fork(value = 1, warmups = 1)
+    public void timerTestContended(MyState state) {
+        state.getTimer().registerSuccessfulEvent(state.getTime(), TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Tests the performance of (concurrent) timer updates with
      * the creation of snapshots. We expect snapshot creation to
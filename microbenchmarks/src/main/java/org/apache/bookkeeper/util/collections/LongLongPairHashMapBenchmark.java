@@ -0,0 +1,163 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.util.collections;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks of the on heap and off heap long pair hash maps, as used by the indexes of the write and read
+ * caches of the DbLedgerStorage.
+ *
+ * <p>The get and put benchmarks run against maps filled up front, while the insert benchmark samples the latency of
+ * inserting new keys in a map growing from a small capacity, whose tail shows the cost of the resizes. The tables of
+ * the 100M entries maps take 8GB, from the heap or from the native memory.
+ */
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = {"-Xms20g", "-Xmx20g"})
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class LongLongPairHashMapBenchmark {
+
+    // Entries per ledger of the keys, which are (ledgerId, entryId) pairs
+    private static final int ENTRIES_PER_LEDGER = 1000;
+
+    private static LongLongPairHashMap newMap(String mapType, int expectedItems) {
+        switch (mapType) {
+        case "onHeap":
+            return ConcurrentLongLongPairHashMap.newBuilder()
+                    .expectedItems(expectedItems)
+                    .concurrencyLevel(16)
+                    .build();
+        case "offHeap":
+            return ConcurrentOffHeapLongLongPairHashMap.newBuilder()
+                    .expectedItems(expectedItems)
+                    .concurrencyLevel(16)
+                    .build();
+        default:
+            throw new IllegalArgumentException("Unknown map type " + mapType);
+        }
+    }
+
+    /**
+     * State holder of the map filled up front.
+     */
+    @State(Scope.Benchmark)
+    public static class FilledMapState {
+
+        @Param({"onHeap", "offHeap"})
+        private String mapType;
+
+        @Param({"1000000", "100000000"})
+        private int entries;
+
+        private LongLongPairHashMap map;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            map = newMap(mapType, entries);
+            for (int i = 0; i < entries; i++) {
+                map.put(i / ENTRIES_PER_LEDGER, i % ENTRIES_PER_LEDGER, i, i);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            map.close();
+        }
+    }
+
+    /**
+     * State holder of the map growing from a small capacity.
+     */
+    @State(Scope.Thread)
+    public static class GrowingMapState {
+
+        @Param({"onHeap", "offHeap"})
+        private String mapType;
+
+        @Param({"1000000", "100000000"})
+        private int entries;
+
+        private LongLongPairHashMap map;
+        private long nextKey;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            map = newMap(mapType, 4096);
+            nextKey = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void teardown() {
+            map.close();
+        }
+
+        long nextKey() {
+            if (nextKey == entries) {
+                // Start over from a small map, to keep measuring the resizes
+                map.close();
+                map = newMap(mapType, 4096);
+                nextKey = 0;
+            }
+            return nextKey++;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public LongPair get(FilledMapState s) {
+        long key = ThreadLocalRandom.current().nextInt(s.entries);
+        return s.map.get(key / ENTRIES_PER_LEDGER, key % ENTRIES_PER_LEDGER);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public boolean put(FilledMapState s) {
+        long key = ThreadLocalRandom.current().nextInt(s.entries);
+        return s.map.put(key / ENTRIES_PER_LEDGER, key % ENTRIES_PER_LEDGER, key, key);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @Threads(1)
+    public boolean insert(GrowingMapState s) {
+        long key = s.nextKey();
+        return s.map.put(key / ENTRIES_PER_LEDGER, key % ENTRIES_PER_LEDGER, key, key);
+    }
+}
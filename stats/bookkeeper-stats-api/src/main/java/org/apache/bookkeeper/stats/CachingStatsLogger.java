@@ -28,6 +28,8 @@ public class CachingStatsLogger implements StatsLogger {
     protected final ConcurrentMap<String, Counter> counters;
     protected final ConcurrentMap<String, OpStatsLogger> opStatsLoggers;
     protected final ConcurrentMap<String, StatsLogger> scopeStatsLoggers;
+    protected final ConcurrentMap<String, Counter> threadScopedCounters;
+    protected final ConcurrentMap<String, OpStatsLogger> threadScopedOpStatsLoggers;
 
     @SuppressFBWarnings("EI_EXPOSE_REP2")
     public CachingStatsLogger(StatsLogger statsLogger) {
@@ -35,6 +37,8 @@ public class CachingStatsLogger implements StatsLogger {
         this.counters = new ConcurrentHashMap<String, Counter>();
         this.opStatsLoggers = new ConcurrentHashMap<String, OpStatsLogger>();
         this.scopeStatsLoggers = new ConcurrentHashMap<String, StatsLogger>();
+        this.threadScopedCounters = new ConcurrentHashMap<String, Counter>();
+        this.threadScopedOpStatsLoggers = new ConcurrentHashMap<String, OpStatsLogger>();
     }
 
     @Override
@@ -104,19 +108,25 @@ public class CachingStatsLogger implements StatsLogger {
         scopeStatsLoggers.remove(name, statsLogger);
     }
 
-    /**
-     Thread-scoped stats not currently supported.
-     */
     @Override
     public OpStatsLogger getThreadScopedOpStatsLogger(String name) {
-        return getOpStatsLogger(name);
+        OpStatsLogger opStatsLogger = threadScopedOpStatsLoggers.get(name);
+        if (null == opStatsLogger) {
+            OpStatsLogger newOpStatsLogger = underlying.getThreadScopedOpStatsLogger(name);
+            OpStatsLogger oldOpStatsLogger = threadScopedOpStatsLoggers.putIfAbsent(name, newOpStatsLogger);
+            opStatsLogger = (null == oldOpStatsLogger) ? newOpStatsLogger : oldOpStatsLogger;
+        }
+        return opStatsLogger;
     }
 
-    /**
-     Thread-scoped stats not currently supported.
-     */
     @Override
     public Counter getThreadScopedCounter(String name) {
-        return getCounter(name);
+        Counter counter = threadScopedCounters.get(name);
+        if (null == counter) {
+            Counter newCounter = underlying.getThreadScopedCounter(name);
+            Counter oldCounter = threadScopedCounters.putIfAbsent(name, newCounter);
+            counter = (null == oldCounter) ? newCounter : oldCounter;
+        }
+        return counter;
     }
 }
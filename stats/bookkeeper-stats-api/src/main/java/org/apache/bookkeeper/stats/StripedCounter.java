@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.bookkeeper.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link Counter} updated in stripes summed on {@link #get()}, like a {@link java.util.concurrent.atomic.LongAdder}
+ * but with the stripe of a thread picked from its id: the threads don't register, and don't leave state behind when
+ * they terminate, so that any number of short lived threads, like virtual threads, can update the counter.
+ *
+ * <p>There are {@link #NUM_STRIPES} stripes, twice the number of processors rounded up to a power of two, each on
+ * its own cache line, so that the running threads rarely update the same stripe.
+ */
+public class StripedCounter implements Counter {
+
+    static final int NUM_STRIPES = numStripes(Runtime.getRuntime().availableProcessors());
+    // 8 longs per stripe, the stripes don't share cache lines
+    private static final int STRIPE_SHIFT = 3;
+
+    private final AtomicLongArray stripes = new AtomicLongArray(NUM_STRIPES << STRIPE_SHIFT);
+    // the value at the last clear
+    private long base = 0;
+
+    static int numStripes(int processors) {
+        return Math.min(64, Integer.highestOneBit(Math.max(1, 2 * processors - 1)) << 1);
+    }
+
+    /**
+     * @return the stripe of the current thread, hashing threads to stripes is cheaper than thread locals
+     */
+    static int stripeOfCurrentThread() {
+        return (int) (Thread.currentThread().getId() & (NUM_STRIPES - 1));
+    }
+
+    @Override
+    public synchronized void clear() {
+        base -= get();
+    }
+
+    @Override
+    public void inc() {
+        add(1);
+    }
+
+    @Override
+    public void dec() {
+        add(-1);
+    }
+
+    @Override
+    public void addCount(long delta) {
+        add(delta);
+    }
+
+    @Override
+    public void addLatency(long eventLatency, TimeUnit unit) {
+        add(unit.toMillis(eventLatency));
+    }
+
+    private void add(long delta) {
+        stripes.getAndAdd(stripeOfCurrentThread() << STRIPE_SHIFT, delta);
+    }
+
+    @Override
+    public synchronized Long get() {
+        long sum = base;
+        for (int stripe = 0; stripe < NUM_STRIPES; stripe++) {
+            sum += stripes.get(stripe << STRIPE_SHIFT);
+        }
+        return sum;
+    }
+}
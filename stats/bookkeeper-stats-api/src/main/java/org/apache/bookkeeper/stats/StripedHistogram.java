@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.bookkeeper.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A histogram of positive long values, recorded into stripes of buckets merged on {@link #snapshot()}. The stripe
+ * of a thread is picked from its id like the ones of a {@link StripedCounter}, so that the running threads rarely
+ * update the same buckets, and that any number of short lived threads, like virtual threads, can record values
+ * without registering.
+ *
+ * <p>A stripe of buckets weighs far more than a stripe of a counter, and there is a histogram per timer: there are
+ * at most {@link #MAX_STRIPES} stripes, allocated when a thread of the stripe first records a value, so that the
+ * histograms which are rarely updated, like the ones of the failed operations, only hold a stripe or two.
+ *
+ * <p>The buckets are log-linear, like HdrHistogram ones: the values under {@link #SUB_BUCKETS} have a bucket each,
+ * and each power of two range above is split into {@link #SUB_BUCKETS} buckets, which bounds the relative error of
+ * the quantiles to 1/{@link #SUB_BUCKETS}. The buckets of a stripe are allocated by ranges of values, when a value
+ * of the range is first recorded, so the recording is allocation free once the ranges of the values are allocated.
+ */
+public class StripedHistogram {
+
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // a range for the values under SUB_BUCKETS, then one per power of two up to Long.MAX_VALUE
+    static final int NUM_RANGES = 64 - SUB_BUCKET_BITS;
+    static final int MAX_STRIPES = 8;
+    static final int NUM_STRIPES = Math.min(StripedCounter.NUM_STRIPES, MAX_STRIPES);
+
+    private static final int SUM = 0;
+    private static final int MIN = 1;
+    private static final int MAX = 2;
+
+    private final AtomicReferenceArray<Stripe> stripes = new AtomicReferenceArray<>(NUM_STRIPES);
+
+    /**
+     * Record a value, the negative values are recorded as 0.
+     */
+    public void record(long value) {
+        // both numbers of stripes are powers of two
+        int index = StripedCounter.stripeOfCurrentThread() & (NUM_STRIPES - 1);
+        Stripe stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new Stripe());
+            stripe = stripes.get(index);
+        }
+        stripe.record(Math.max(value, 0));
+    }
+
+    /**
+     * @return the values recorded since the creation of the histogram
+     */
+    public Snapshot snapshot() {
+        long[][] buckets = new long[NUM_RANGES][];
+        long[] stats = new long[] { 0, Long.MAX_VALUE, Long.MIN_VALUE };
+        for (int index = 0; index < NUM_STRIPES; index++) {
+            Stripe stripe = stripes.get(index);
+            if (stripe != null) {
+                stripe.mergeInto(buckets, stats);
+            }
+        }
+        return new Snapshot(buckets, stats[SUM], stats[MIN], stats[MAX]);
+    }
+
+    static int rangeOf(long value) {
+        return value < SUB_BUCKETS ? 0 : NUM_RANGES - Long.numberOfLeadingZeros(value);
+    }
+
+    static int bucketOf(long value, int range) {
+        return range == 0 ? (int) value : (int) (value >>> (range - 1)) - SUB_BUCKETS;
+    }
+
+    static long lowestValueOf(int range, int bucket) {
+        return range == 0 ? bucket : ((long) (bucket + SUB_BUCKETS)) << (range - 1);
+    }
+
+    static long highestValueOf(int range, int bucket) {
+        return range == 0 ? bucket : lowestValueOf(range, bucket) + (1L << (range - 1)) - 1;
+    }
+
+    /**
+     * The buckets of a stripe, updated atomically by the threads of the stripe.
+     */
+    private static final class Stripe {
+        private final AtomicReferenceArray<AtomicLongArray> ranges = new AtomicReferenceArray<>(NUM_RANGES);
+        private final AtomicLongArray stats = new AtomicLongArray(new long[] { 0, Long.MAX_VALUE, Long.MIN_VALUE });
+
+        void record(long value) {
+            int range = rangeOf(value);
+            AtomicLongArray buckets = ranges.get(range);
+            if (buckets == null) {
+                ranges.compareAndSet(range, null, new AtomicLongArray(SUB_BUCKETS));
+                buckets = ranges.get(range);
+            }
+            buckets.getAndIncrement(bucketOf(value, range));
+            stats.getAndAdd(SUM, value);
+            long min;
+            while (value < (min = stats.get(MIN)) && !stats.compareAndSet(MIN, min, value)) {
+                // retry, another thread recorded a value meanwhile
+            }
+            long max;
+            while (value > (max = stats.get(MAX)) && !stats.compareAndSet(MAX, max, value)) {
+                // retry, another thread recorded a value meanwhile
+            }
+        }
+
+        void mergeInto(long[][] toBuckets, long[] toStats) {
+            for (int range = 0; range < NUM_RANGES; range++) {
+                AtomicLongArray buckets = ranges.get(range);
+                if (buckets != null) {
+                    if (toBuckets[range] == null) {
+                        toBuckets[range] = new long[SUB_BUCKETS];
+                    }
+                    for (int bucket = 0; bucket < SUB_BUCKETS; bucket++) {
+                        toBuckets[range][bucket] += buckets.get(bucket);
+                    }
+                }
+            }
+            toStats[SUM] += stats.get(SUM);
+            toStats[MIN] = Math.min(toStats[MIN], stats.get(MIN));
+            toStats[MAX] = Math.max(toStats[MAX], stats.get(MAX));
+        }
+    }
+
+    /**
+     * The values recorded in a histogram up to a point in time.
+     */
+    public static final class Snapshot {
+        private final long[][] buckets;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        Snapshot(long[][] buckets, long sum, long min, long max) {
+            this.buckets = buckets;
+            this.sum = sum;
+            long count = 0;
+            for (long[] rangeBuckets : buckets) {
+                if (rangeBuckets != null) {
+                    for (long bucketCount : rangeBuckets) {
+                        count += bucketCount;
+                    }
+                }
+            }
+            this.count = count;
+            this.min = count > 0 ? min : 0;
+            this.max = count > 0 ? max : 0;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count > 0 ? (double) sum / count : 0;
+        }
+
+        public double getStdDev() {
+            if (count < 2) {
+                return 0;
+            }
+            double mean = getMean();
+            double variance = 0;
+            for (int range = 0; range < NUM_RANGES; range++) {
+                if (buckets[range] != null) {
+                    for (int bucket = 0; bucket < SUB_BUCKETS; bucket++) {
+                        double delta = medianValueOf(range, bucket) - mean;
+                        variance += buckets[range][bucket] * delta * delta;
+                    }
+                }
+            }
+            return Math.sqrt(variance / count);
+        }
+
+        /**
+         * @param quantile a quantile, between 0 and 1
+         * @return the highest value of the bucket of the quantile, bounded by the max value
+         */
+        public long getValueAtQuantile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int range = 0; range < NUM_RANGES; range++) {
+                if (buckets[range] != null) {
+                    for (int bucket = 0; bucket < SUB_BUCKETS; bucket++) {
+                        seen += buckets[range][bucket];
+                        if (seen >= rank) {
+                            return Math.max(min, Math.min(max, highestValueOf(range, bucket)));
+                        }
+                    }
+                }
+            }
+            return max;
+        }
+
+        /**
+         * @return the values recorded between an older snapshot of the same histogram and this one
+         */
+        public Snapshot minus(Snapshot older) {
+            long[][] delta = new long[NUM_RANGES][];
+            long deltaMin = Long.MAX_VALUE;
+            long deltaMax = Long.MIN_VALUE;
+            for (int range = 0; range < NUM_RANGES; range++) {
+                if (buckets[range] != null) {
+                    delta[range] = buckets[range].clone();
+                    for (int bucket = 0; bucket < SUB_BUCKETS; bucket++) {
+                        if (older.buckets[range] != null) {
+                            delta[range][bucket] -= older.buckets[range][bucket];
+                        }
+                        if (delta[range][bucket] > 0) {
+                            deltaMin = Math.min(deltaMin, lowestValueOf(range, bucket));
+                            deltaMax = Math.max(deltaMax, highestValueOf(range, bucket));
+                        }
+                    }
+                }
+            }
+            // the exact extremes of the interval are unknown, bound them by the ones of the buckets
+            return new Snapshot(delta, sum - older.sum, Math.max(min, deltaMin), Math.min(max, deltaMax));
+        }
+
+        private static double medianValueOf(int range, int bucket) {
+            // halved first, not to overflow in the highest range
+            return lowestValueOf(range, bucket) / 2.0 + highestValueOf(range, bucket) / 2.0;
+        }
+    }
+}
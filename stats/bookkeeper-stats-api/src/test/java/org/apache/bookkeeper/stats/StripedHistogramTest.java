@@ -0,0 +1,157 @@
+package org.apache.bookkeeper.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StripedHistogramTest {
+
+    private static final double PRECISION = 1.0 / StripedHistogram.SUB_BUCKETS;
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        Assert.assertTrue("expected " + expected + " but was " + actual,
+                actual >= expected && actual <= expected * (1 + PRECISION));
+    }
+
+    @Test
+    public void testBucketsCoverAllTheValues() {
+        long expectedLowest = 0;
+        for (int range = 0; range < StripedHistogram.NUM_RANGES; range++) {
+            for (int bucket = 0; bucket < StripedHistogram.SUB_BUCKETS; bucket++) {
+                long lowest = StripedHistogram.lowestValueOf(range, bucket);
+                long highest = StripedHistogram.highestValueOf(range, bucket);
+                // the buckets are contiguous
+                Assert.assertEquals(expectedLowest, lowest);
+                Assert.assertTrue(highest >= lowest);
+                // the width of a bucket is bounded by the relative precision
+                Assert.assertTrue(highest - lowest <= lowest * PRECISION);
+                for (long value : new long[] { lowest, lowest + (highest - lowest) / 2, highest }) {
+                    Assert.assertEquals(range, StripedHistogram.rangeOf(value));
+                    Assert.assertEquals(bucket, StripedHistogram.bucketOf(value, range));
+                }
+                expectedLowest = highest + 1;
+            }
+        }
+        // the last bucket ends at the max value
+        Assert.assertEquals(Long.MIN_VALUE, expectedLowest);
+    }
+
+    @Test
+    public void testEmptySnapshot() {
+        StripedHistogram.Snapshot snapshot = new StripedHistogram().snapshot();
+        Assert.assertEquals(0, snapshot.getCount());
+        Assert.assertEquals(0, snapshot.getMin());
+        Assert.assertEquals(0, snapshot.getMax());
+        Assert.assertEquals(0.0, snapshot.getMean(), 0.0);
+        Assert.assertEquals(0.0, snapshot.getStdDev(), 0.0);
+        Assert.assertEquals(0, snapshot.getValueAtQuantile(0.99));
+    }
+
+    @Test
+    public void testQuantiles() {
+        StripedHistogram histogram = new StripedHistogram();
+        for (long value = 10000; value > 0; value--) {
+            histogram.record(value);
+        }
+        StripedHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(10000, snapshot.getCount());
+        Assert.assertEquals(50005000, snapshot.getSum());
+        Assert.assertEquals(1, snapshot.getMin());
+        Assert.assertEquals(10000, snapshot.getMax());
+        Assert.assertEquals(5000.5, snapshot.getMean(), 0.0);
+
+        // the highest value of the bucket of the quantile, bounded by the extremes
+        Assert.assertEquals(1, snapshot.getValueAtQuantile(0.0));
+        Assert.assertEquals(31, snapshot.getValueAtQuantile(0.0031));
+        assertWithinPrecision(5000, snapshot.getValueAtQuantile(0.5));
+        assertWithinPrecision(9900, snapshot.getValueAtQuantile(0.99));
+        Assert.assertEquals(10000, snapshot.getValueAtQuantile(0.9999));
+        Assert.assertEquals(10000, snapshot.getValueAtQuantile(1.0));
+    }
+
+    @Test
+    public void testStdDev() {
+        StripedHistogram histogram = new StripedHistogram();
+        // the values under the number of sub buckets are exact
+        for (int i = 0; i < 50; i++) {
+            histogram.record(2);
+            histogram.record(4);
+        }
+        StripedHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(3.0, snapshot.getMean(), 0.0);
+        Assert.assertEquals(1.0, snapshot.getStdDev(), 0.0);
+    }
+
+    @Test
+    public void testNegativeValues() {
+        StripedHistogram histogram = new StripedHistogram();
+        histogram.record(-5);
+        StripedHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(1, snapshot.getCount());
+        Assert.assertEquals(0, snapshot.getMin());
+        Assert.assertEquals(0, snapshot.getMax());
+    }
+
+    @Test
+    public void testExtremeValues() {
+        StripedHistogram histogram = new StripedHistogram();
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(0);
+        StripedHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(0, snapshot.getValueAtQuantile(0.5));
+        Assert.assertEquals(Long.MAX_VALUE, snapshot.getValueAtQuantile(1.0));
+        Assert.assertEquals(Long.MAX_VALUE / 2.0, snapshot.getStdDev(), Long.MAX_VALUE * PRECISION);
+    }
+
+    @Test
+    public void testMinus() {
+        StripedHistogram histogram = new StripedHistogram();
+        for (long value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        StripedHistogram.Snapshot older = histogram.snapshot();
+        Assert.assertEquals(0, older.minus(older).getCount());
+        Assert.assertEquals(0, older.minus(older).getMax());
+
+        for (long value = 1000; value < 1100; value++) {
+            histogram.record(value);
+        }
+        StripedHistogram.Snapshot delta = histogram.snapshot().minus(older);
+        Assert.assertEquals(100, delta.getCount());
+        Assert.assertEquals(104950, delta.getSum());
+        // the extremes of the interval are bounded by the buckets of the values recorded in the interval
+        Assert.assertTrue(delta.getMin() <= 1000 && delta.getMin() >= 1000 * (1 - PRECISION));
+        Assert.assertEquals(1099, delta.getMax());
+        assertWithinPrecision(1049, delta.getValueAtQuantile(0.5));
+
+        // the ranges first allocated after the older snapshot
+        histogram.record(1L << 40);
+        delta = histogram.snapshot().minus(older);
+        Assert.assertEquals(101, delta.getCount());
+        Assert.assertEquals(1L << 40, delta.getMax());
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        StripedHistogram histogram = new StripedHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Thread thread = new Thread(() -> {
+                for (long value = 1; value <= 10000; value++) {
+                    histogram.record(value);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        StripedHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(160000, snapshot.getCount());
+        Assert.assertEquals(16 * 50005000L, snapshot.getSum());
+        Assert.assertEquals(1, snapshot.getMin());
+        Assert.assertEquals(10000, snapshot.getMax());
+    }
+}
@@ -30,6 +30,8 @@ import org.apache.bookkeeper.stats.StatsLogger;
  * A {@link StatsLogger} implemented based on <i>Codahale</i> metrics library.
  */
 public class CodahaleStatsLogger implements StatsLogger {
+    static final int TIMER_WINDOW_SECONDS = 60;
+
     protected final String basename;
     final MetricRegistry metrics;
 
@@ -40,11 +42,16 @@ public class CodahaleStatsLogger implements StatsLogger {
 
     @Override
     public OpStatsLogger getOpStatsLogger(String statName) {
-        Timer success = metrics.timer(name(basename, statName));
-        Timer failure = metrics.timer(name(basename, statName + "-fail"));
+        Timer success = metrics.timer(name(basename, statName), CodahaleStatsLogger::newTimer);
+        Timer failure = metrics.timer(name(basename, statName + "-fail"), CodahaleStatsLogger::newTimer);
         return new CodahaleOpStatsLogger(success, failure);
     }
 
+    private static Timer newTimer() {
+        // record the events on striped histograms, rather than on a reservoir locked by the threads
+        return new Timer(new StripedReservoir(TIMER_WINDOW_SECONDS));
+    }
+
     @Override
     public Counter getCounter(String statName) {
         final com.codahale.metrics.Counter c = metrics.counter(name(basename, statName));
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.bookkeeper.stats.codahale;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.stats.StripedHistogram;
+
+/**
+ * A {@link Reservoir} recording the values into a {@link StripedHistogram}, instead of sampling them under a
+ * lock like the default exponentially decaying reservoir of the Codahale timers.
+ *
+ * <p>The snapshots cover the values recorded over the last one to two time windows. The windows are rolled by the
+ * first update or snapshot after the end of the current one, so the updates only read the clock on the hot path.
+ */
+class StripedReservoir implements Reservoir {
+
+    private final StripedHistogram histogram = new StripedHistogram();
+    private final long windowNanos;
+
+    private StripedHistogram.Snapshot previousWindowStart;
+    private StripedHistogram.Snapshot currentWindowStart;
+    private long currentWindowStartNanos;
+    private volatile long nextRollNanos;
+
+    StripedReservoir(int timeWindowSeconds) {
+        this.windowNanos = TimeUnit.SECONDS.toNanos(timeWindowSeconds);
+        this.previousWindowStart = histogram.snapshot();
+        this.currentWindowStart = previousWindowStart;
+        this.currentWindowStartNanos = getNanoTime();
+        this.nextRollNanos = currentWindowStartNanos + windowNanos;
+    }
+
+    /**
+     * Returns the current time, in nanoseconds.
+     * @return the current time, in nanoseconds
+     */
+    protected long getNanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public synchronized int size() {
+        roll(getNanoTime());
+        return (int) Math.min(Integer.MAX_VALUE, histogram.snapshot().minus(previousWindowStart).getCount());
+    }
+
+    @Override
+    public void update(long value) {
+        long now = getNanoTime();
+        if (now - nextRollNanos >= 0) {
+            roll(now);
+        }
+        histogram.record(value);
+    }
+
+    @Override
+    public synchronized Snapshot getSnapshot() {
+        roll(getNanoTime());
+        return new HistogramSnapshot(histogram.snapshot().minus(previousWindowStart));
+    }
+
+    private synchronized void roll(long now) {
+        long elapsedNanos = now - currentWindowStartNanos;
+        if (elapsedNanos < windowNanos) {
+            // another thread rolled the windows meanwhile
+            return;
+        }
+        StripedHistogram.Snapshot current = histogram.snapshot();
+        // the current window would have been rolled by any update after its end: if it ended more than a window
+        // ago, all its values are older than a window too
+        previousWindowStart = elapsedNanos < 2 * windowNanos ? currentWindowStart : current;
+        currentWindowStart = current;
+        currentWindowStartNanos = now;
+        nextRollNanos = now + windowNanos;
+    }
+
+    /**
+     * A Codahale snapshot of a {@link StripedHistogram}.
+     */
+    private static class HistogramSnapshot extends Snapshot {
+        private static final long[] EMPTY_VALUES = new long[] {};
+
+        private final StripedHistogram.Snapshot snapshot;
+
+        HistogramSnapshot(StripedHistogram.Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            return snapshot.getValueAtQuantile(quantile);
+        }
+
+        @Override
+        public long[] getValues() {
+            return EMPTY_VALUES; // values in this snapshot are bucketed, there are no discrete values
+        }
+
+        @Override
+        public int size() {
+            return 0; // values in this snapshot are bucketed, there are no discrete values
+        }
+
+        @Override
+        public long getMax() {
+            return snapshot.getMax();
+        }
+
+        @Override
+        public double getMean() {
+            return snapshot.getMean();
+        }
+
+        @Override
+        public long getMin() {
+            return snapshot.getMin();
+        }
+
+        @Override
+        public double getStdDev() {
+            return snapshot.getStdDev();
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            // values in this snapshot are bucketed, there are no discrete values
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.apache.bookkeeper.stats.codahale;
+
+import com.codahale.metrics.Snapshot;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StripedReservoirTest {
+
+    private static class TestReservoir extends StripedReservoir {
+        private long nanoTime;
+
+        TestReservoir() {
+            super(60);
+        }
+
+        @Override
+        protected long getNanoTime() {
+            return nanoTime;
+        }
+
+        void setTime(int seconds) {
+            nanoTime = TimeUnit.SECONDS.toNanos(seconds);
+        }
+    }
+
+    private static void update(StripedReservoir reservoir, long from, long to) {
+        for (long value = from; value <= to; value++) {
+            reservoir.update(value);
+        }
+    }
+
+    @Test
+    public void testSnapshot() {
+        TestReservoir reservoir = new TestReservoir();
+        Assert.assertEquals(0, reservoir.size());
+        Assert.assertEquals(0, reservoir.getSnapshot().getMax());
+
+        update(reservoir, 1, 20);
+        reservoir.setTime(30);
+        Snapshot snapshot = reservoir.getSnapshot();
+        Assert.assertEquals(20, reservoir.size());
+        Assert.assertEquals(1, snapshot.getMin());
+        Assert.assertEquals(20, snapshot.getMax());
+        Assert.assertEquals(10.5, snapshot.getMean(), 0.0);
+        Assert.assertEquals(10.0, snapshot.getMedian(), 0.0);
+        Assert.assertEquals(20.0, snapshot.get99thPercentile(), 0.0);
+    }
+
+    @Test
+    public void testWindowsRolledOnUpdate() {
+        TestReservoir reservoir = new TestReservoir();
+        update(reservoir, 1, 10);
+
+        // no snapshot taken, the first window is rolled by the update after its end
+        reservoir.setTime(61);
+        update(reservoir, 100, 104);
+        reservoir.setTime(90);
+        Assert.assertEquals(15, reservoir.size());
+
+        reservoir.setTime(125);
+        update(reservoir, 200, 201);
+        // the values of the first window are over two windows old
+        reservoir.setTime(150);
+        Snapshot snapshot = reservoir.getSnapshot();
+        Assert.assertEquals(7, reservoir.size());
+        Assert.assertEquals(100, snapshot.getMin());
+        Assert.assertEquals(201, snapshot.getMax());
+    }
+
+    @Test
+    public void testWindowsRolledAfterIdle() {
+        TestReservoir reservoir = new TestReservoir();
+        update(reservoir, 1, 10);
+
+        // the current window ended more than a window ago, its values are older than a window
+        reservoir.setTime(1000);
+        Assert.assertEquals(0, reservoir.size());
+        Assert.assertEquals(0, reservoir.getSnapshot().getMax());
+
+        update(reservoir, 100, 101);
+        Assert.assertEquals(2, reservoir.size());
+        Assert.assertEquals(100, reservoir.getSnapshot().getMin());
+    }
+}
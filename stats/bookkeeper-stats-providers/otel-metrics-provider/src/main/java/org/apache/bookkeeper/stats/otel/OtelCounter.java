@@ -16,49 +16,51 @@
  */
 package org.apache.bookkeeper.stats.otel;
 
-import io.opentelemetry.api.common.Attributes;
-import io.opentelemetry.api.metrics.LongUpDownCounter;
 import io.opentelemetry.api.metrics.Meter;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.StripedCounter;
 
+/**
+ * A counter updated in stripes, observed by an asynchronous up-down counter on collection: the
+ * synchronous counters look up the aggregation of their attributes on each update.
+ */
  class OtelCounter implements Counter {
-    private final LongUpDownCounter counter;
-    private final Attributes attributes;
+    private final StripedCounter counter = new StripedCounter();
 
     OtelCounter(Meter meter, ScopeContext sc) {
-        this.counter = meter.upDownCounterBuilder(sc.getName()).build();
-        this.attributes = sc.getAttributes();
+        meter.upDownCounterBuilder(sc.getName())
+                .buildWithCallback(observableLongMeasurement ->
+                        observableLongMeasurement.record(counter.get(), sc.getAttributes()));
     }
 
     @Override
     public void clear() {
-        // no-op
+        counter.clear();
     }
 
     @Override
     public void inc() {
-        counter.add(1, attributes);
+        counter.inc();
     }
 
     @Override
     public void dec() {
-        counter.add(-1, attributes);
+        counter.dec();
     }
 
     @Override
     public void addCount(long delta) {
-        counter.add(delta, attributes);
+        counter.addCount(delta);
     }
 
     @Override
     public void addLatency(long eventLatency, TimeUnit unit) {
-        long valueMillis = unit.toMillis(eventLatency);
-        counter.add(valueMillis);
+        counter.addLatency(eventLatency, unit);
     }
 
     @Override
     public Long get() {
-        return -1L;
+        return counter.get();
     }
 }